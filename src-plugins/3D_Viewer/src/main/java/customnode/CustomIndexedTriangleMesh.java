@@ -5,6 +5,10 @@
 import ij.plugin.Duplicator;
 import ij.process.StackConverter;
 
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 
 import javax.media.j3d.Appearance;
@@ -16,9 +20,11 @@
 import javax.media.j3d.TransparencyAttributes;
 import javax.media.j3d.TriangleArray;
 import javax.vecmath.Color3f;
+import javax.vecmath.Point3d;
 import javax.vecmath.Point3f;
 import javax.vecmath.Vector3f;
 
+import isosurface.MeshProperties;
 import vib.InterpolatedImage;
 
 public class CustomIndexedTriangleMesh extends CustomMesh {
@@ -28,9 +34,26 @@ public class CustomIndexedTriangleMesh extends CustomMesh {
 	protected int[] faces;
 	protected int nFaces;
 	protected int nVertices;
+	// computed when asked for
+	protected float volume = Float.NaN;
 
+	/**
+	 * Creates an indexed mesh from a triangle list as used by
+	 * CustomTriangleMesh, merging identical vertices.
+	 */
 	public CustomIndexedTriangleMesh(List<Point3f> mesh) {
-		// TODO
+		this(mesh, DEFAULT_COLOR, 0);
+	}
+
+	public CustomIndexedTriangleMesh(List<Point3f> mesh, Color3f color, float transp) {
+		if(color != null)
+			this.color = color;
+		this.transparency = transp;
+		this.setCapability(ALLOW_GEOMETRY_READ);
+		this.setCapability(ALLOW_GEOMETRY_WRITE);
+		this.setCapability(ALLOW_APPEARANCE_READ);
+		this.setCapability(ALLOW_APPEARANCE_WRITE);
+		setMesh(mesh);
 	}
 
 	public CustomIndexedTriangleMesh(Point3f[] vertices, int[] faces) {
@@ -52,6 +75,42 @@ public CustomIndexedTriangleMesh(Point3f[] vertices, int[] faces, Color3f color,
 		update();
 	}
 
+	/**
+	 * Replaces the vertices and triangles of this mesh. Per-vertex
+	 * colors are reset to the color of the mesh.
+	 */
+	public void setMesh(Point3f[] vertices, int[] faces) {
+		this.nVertices = vertices.length;
+		this.nFaces = faces.length;
+		this.vertices = vertices;
+		this.faces = faces;
+		this.volume = Float.NaN;
+		this.colors = null;
+		setColor(color);
+		update();
+	}
+
+	/**
+	 * Replaces the vertices and triangles of this mesh by those of a
+	 * triangle list as used by CustomTriangleMesh.
+	 */
+	public void setMesh(List<Point3f> mesh) {
+		HashMap<Point3f, Integer> indices = new HashMap<Point3f, Integer>();
+		List<Point3f> v = new ArrayList<Point3f>();
+		int[] f = new int[mesh.size()];
+		for(int i = 0; i < f.length; i++) {
+			Point3f p = mesh.get(i);
+			Integer index = indices.get(p);
+			if(index == null) {
+				index = v.size();
+				v.add(new Point3f(p));
+				indices.put(p, index);
+			}
+			f[i] = index;
+		}
+		setMesh(v.toArray(new Point3f[v.size()]), f);
+	}
+
 	@Override
 	public String getFile() {
 		return loadedFromFile;
@@ -69,14 +128,36 @@ public boolean hasChanged() {
 
 	@Override
 	public void update() {
+		volume = Float.NaN;
 		this.setGeometry(createGeometry());
 		this.setAppearance(createAppearance());
 		changed = true;
 	}
 
+	/**
+	 * Returns the triangles as a list of their vertices, three per
+	 * triangle, as CustomTriangleMesh does. The list is a view: its
+	 * elements are the vertices of this mesh, so that a vertex shared by
+	 * several triangles appears several times. Changed vertices show up
+	 * after calling update().
+	 */
 	@Override
 	public List getMesh() {
-		return mesh;
+		if(vertices == null)
+			return null;
+		return new AbstractList<Point3f>() {
+			@Override
+			public Point3f get(int i) {
+				if(i >= nFaces)
+					throw new IndexOutOfBoundsException("" + i);
+				return vertices[faces[i]];
+			}
+
+			@Override
+			public int size() {
+				return nFaces;
+			}
+		};
 	}
 
 	@Override
@@ -133,7 +214,12 @@ public void calculateMinMaxCenterPoint(Point3f min,
 
 	@Override
 	public float getVolume() {
-		throw new IllegalArgumentException("Not supported yet");
+		if(vertices == null)
+			return 0;
+		if(Float.isNaN(volume))
+			volume = (float)MeshProperties.compute(getMesh(),
+				new Point3d(), new double[3][3]);
+		return volume;
 	}
 
 	// private int[] valid = new int[1];
@@ -168,6 +254,7 @@ public int vertexIndexOfPoint(Point3f p) {
 	@Override
 	public void setCoordinate(int i, Point3f p) {
 		changed = true;
+		volume = Float.NaN;
 		vertices[i].set(p);
 		((GeometryArray)getGeometry()).setCoordinate(i, p);
 	}
@@ -175,6 +262,7 @@ public void setCoordinate(int i, Point3f p) {
 	@Override
 	public void setCoordinates(int[] indices, Point3f p) {
 		changed = true;
+		volume = Float.NaN;
 		GeometryArray ga = (GeometryArray)getGeometry();
 		for(int i = 0; i < indices.length; i++) {
 			ga.setCoordinate(indices[i], p);
@@ -324,17 +412,36 @@ protected Appearance createAppearance () {
 
 	@Override
 	public void restoreDisplayedData(String path, String name) {
-		throw new RuntimeException("CustomIndexedTriangleMesh does not support swapping data.");
+		HashMap<String, CustomMesh> contents = null;
+		try {
+			contents = WavefrontLoader.load(path);
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		if(contents != null && contents.containsKey(name))
+			setMesh((List<Point3f>)contents.get(name).getMesh());
 	}
 
 	@Override
 	public void swapDisplayedData(String path, String name) {
-		throw new RuntimeException("CustomIndexedTriangleMesh does not support swapping data.");
+		HashMap<String, CustomMesh> contents =
+			new HashMap<String, CustomMesh>();
+		contents.put(name, this);
+		try {
+			WavefrontExporter.save(
+				contents,
+				path + ".obj");
+			clearDisplayedData();
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
 	}
 
 	@Override
 	public void clearDisplayedData() {
-		throw new RuntimeException("CustomIndexedTriangleMesh does not support swapping data.");
+		this.vertices = null;
+		this.faces = null;
+		this.colors = null;
 	}
 
 	@Override
@@ -24,6 +24,7 @@
 import javax.vecmath.Point3f;
 import javax.vecmath.Vector3f;
 
+import customnode.CustomMesh;
 import customnode.CustomMeshNode;
 import customnode.CustomTriangleMesh;
 
@@ -88,8 +89,12 @@ public static void export(Image3DUniverse univ, String path) throws IOException
 			if(cn instanceof CustomMeshNode) {
 				ctm = (CustomTriangleMesh)((CustomMeshNode)cn).getMesh();
 			} else if(cn instanceof MeshGroup) {
-				if(((MeshGroup)cn).getMesh() instanceof CustomTriangleMesh)
-					ctm = ((MeshGroup)cn).getMesh();
+				// Mesh writes the triangles of a TriangleArray
+				CustomMesh cm = ((MeshGroup)cn).getMesh();
+				if(cm.getMesh() != null && !cm.getMesh().isEmpty())
+					ctm = new CustomTriangleMesh(
+						new ArrayList<Point3f>(cm.getMesh()),
+						cm.getColor(), cm.getTransparency());
 			}
 
 			if(ctm != null) {
@@ -45,6 +45,7 @@ public class Content extends BranchGroup implements UniverseListener, ContentCon
 	private boolean showPointList = false;
 
 	private final boolean swapTimelapseData;
+	private final TimelineLoader loader;
 
 	public Content(String name) {
 		this(name, 0);
@@ -53,6 +54,7 @@ public Content(String name) {
 	public Content(String name, int tp) {
 		this.name = name;
 		this.swapTimelapseData = false;
+		this.loader = null;
 		setCapability(BranchGroup.ALLOW_DETACH);
 		setCapability(BranchGroup.ENABLE_PICK_REPORTING);
 		timepointToSwitchIndex = new HashMap<Integer, Integer>();
@@ -74,8 +76,21 @@ public Content(String name, TreeMap<Integer, ContentInstant> contents) {
 	}
 
 	public Content(String name, TreeMap<Integer, ContentInstant> contents, boolean swapTimelapseData) {
+		this(name, contents, swapTimelapseData, null);
+	}
+
+	/**
+	 * Creates a Content whose instants are built on demand by the
+	 * specified loader, see TimelineLoader.
+	 */
+	public Content(String name, TreeMap<Integer, ContentInstant> contents, TimelineLoader loader) {
+		this(name, contents, false, loader);
+	}
+
+	private Content(String name, TreeMap<Integer, ContentInstant> contents, boolean swapTimelapseData, TimelineLoader loader) {
 		this.name = name;
 		this.swapTimelapseData = swapTimelapseData;
+		this.loader = loader;
 		setCapability(BranchGroup.ALLOW_DETACH);
 		setCapability(BranchGroup.ENABLE_PICK_REPORTING);
 		this.contents = contents;
@@ -133,6 +148,14 @@ public TreeMap<Integer, ContentInstant> getInstants() {
 		return contents;
 	}
 
+	/**
+	 * Returns the loader which builds the instants on demand, or null
+	 * if all instants are built up front.
+	 */
+	public TimelineLoader getTimelineLoader() {
+		return loader;
+	}
+
 	public void showTimepoint(int tp) {
 		showTimepoint(tp, false);
 	}
@@ -157,6 +180,8 @@ public void showTimepoint(int tp, boolean force) {
 		ContentInstant next = getCurrent();
 		if(next != null && swapTimelapseData)
 				next.restoreDisplayedData();
+		if(loader != null)
+			loader.show(tp);
 
 		Integer idx = timepointToSwitchIndex.get(tp);
 		if(idx == null)
@@ -205,6 +230,10 @@ public int getEndTime() {
 	// ContentInstants.
 	//
 	public void displayAs(int type) {
+		if(loader != null) {
+			loader.displayAs(type);
+			return;
+		}
 		for(ContentInstant c : contents.values())
 			c.displayAs(type);
 	}
@@ -534,6 +563,8 @@ public void contentRemoved(Content c) {
 		for(ContentInstant co : contents.values()) {
 			co.contentRemoved(c);
 		}
+		if(c == this && loader != null)
+			loader.close();
 	}
 	public void canvasResized() {}
 	public void contentSelected(Content c) {}
@@ -543,6 +574,8 @@ public void universeClosed() {
 		for(ContentInstant c : contents.values()) {
 			c.universeClosed();
 		}
+		if(loader != null)
+			loader.close();
 	}
 
 	public void transformationUpdated(View view) {
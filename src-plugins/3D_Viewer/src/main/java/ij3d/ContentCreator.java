@@ -10,6 +10,7 @@
 
 import java.io.File;
 import java.util.TreeMap;
+import java.util.HashMap;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -74,6 +75,9 @@ public static Content createContent(
 				int thresh,
 				boolean[] channels) {
 
+		if(UniverseSettings.loadTimelapseOnDemand && file.isDirectory())
+			return createLazyContent(name, getFiles(file),
+				type, resf, tp, color, thresh, channels);
 		return createContent(name, getImages(file),
 			type, resf, tp, color, thresh, channels);
 	}
@@ -88,6 +92,9 @@ public static Content createContent(
 				int thresh,
 				boolean[] channels) {
 
+		if(UniverseSettings.loadTimelapseOnDemand && images.length > 1)
+			return createLazyContent(name, images,
+				type, resf, tp, color, thresh, channels);
 		TreeMap<Integer, ContentInstant> instants =
 			new TreeMap<Integer, ContentInstant>();
 		boolean timelapse = images.length > 1;
@@ -113,6 +120,48 @@ public static Content createContent(
 		return new Content(name, instants, shouldSwap);
 	}
 
+	/**
+	 * Creates a timelapse Content whose instants are built on demand,
+	 * see TimelineLoader. Each element of <code>sources</code> is either
+	 * an ImagePlus or a File from which the image is read. The instant
+	 * of the first timepoint is built right away.
+	 */
+	public static Content createLazyContent(
+				String name,
+				Object[] sources,
+				int type,
+				int resf,
+				int tp,
+				Color3f color,
+				int thresh,
+				boolean[] channels) {
+
+		TreeMap<Integer, ContentInstant> instants =
+			new TreeMap<Integer, ContentInstant>();
+		HashMap<Integer, File> files = new HashMap<Integer, File>();
+		for(Object source : sources) {
+			ContentInstant content = new ContentInstant(name);
+			if(source instanceof File)
+				files.put(tp, (File)source);
+			else
+				content.image = (ImagePlus)source;
+			content.type = type;
+			content.color = color;
+			content.threshold = thresh;
+			content.channels = channels;
+			content.resamplingF = resf;
+			content.timepoint = tp;
+			content.showCoordinateSystem(UniverseSettings.
+					showLocalCoordinateSystemsByDefault);
+			instants.put(tp++, content);
+		}
+		TimelineLoader loader = new TimelineLoader(instants, files,
+			(long)UniverseSettings.timelapseMemoryBudget << 20);
+		if(!instants.isEmpty())
+			loader.load(instants.firstKey());
+		return new Content(name, instants, loader);
+	}
+
 	public static Content createContent(CustomMesh mesh, String name) {
 		return createContent(mesh, name, 0);
 	}
@@ -176,6 +225,18 @@ public static ImagePlus[] getImages(File file) {
 		return images.toArray(new ImagePlus[] {});
 	}
 
+	/**
+	 * Returns the files in the given directory, sorted alphabetically.
+	 */
+	public static File[] getFiles(File dir) {
+		String[] names = dir.list();
+		Arrays.sort(names);
+		File[] files = new File[names.length];
+		for(int i = 0; i < names.length; i++)
+			files[i] = new File(dir, names[i]);
+		return files;
+	}
+
 	public static void convert(ImagePlus image) {
 		int imaget = image.getType();
 		if(imaget == ImagePlus.GRAY8 || imaget == ImagePlus.COLOR_256)
@@ -82,6 +82,9 @@ public class ContentInstant extends BranchGroup implements UniverseListener, Con
 
 	protected TransformGroup localRotate;
 	protected TransformGroup localTranslate;
+	// transformation set while there is no content node,
+	// applied as soon as one is displayed
+	private Transform3D pendingTransform = null;
 
 	private boolean available = true;
 
@@ -219,6 +222,25 @@ public void display(ContentNode node) {
 
 		// update type
 		this.type = CUSTOM;
+
+		// the rotation center depends on the content node
+		synchronized(this) {
+			if(pendingTransform != null)
+				setTransform(pendingTransform);
+		}
+	}
+
+	/**
+	 * Removes the displayed data of this instant, keeping its type,
+	 * so that displayAs(getType()) creates it again.
+	 */
+	void unload() {
+		for(@SuppressWarnings("rawtypes")
+		Enumeration e = ordered.getAllChildren(); e.hasMoreElements(); ) {
+			Switch s = (Switch)e.nextElement();
+			s.removeAllChildren();
+		}
+		contentNode = null;
 	}
 
 	private void setSwitch(int which, boolean on) {
@@ -480,26 +502,36 @@ public void applyTransform(double[] matrix) {
 		applyTransform(new Transform3D(matrix));
 	}
 
-	public void applyTransform(Transform3D transform) {
+	public synchronized void applyTransform(Transform3D transform) {
 		Transform3D t1 = new Transform3D();
-		localTranslate.getTransform(t1);
-		Transform3D t2 = new Transform3D();
-		localRotate.getTransform(t2);
-		t1.mul(t2);
+		if(pendingTransform != null) {
+			t1.set(pendingTransform);
+		} else {
+			localTranslate.getTransform(t1);
+			Transform3D t2 = new Transform3D();
+			localRotate.getTransform(t2);
+			t1.mul(t2);
+		}
 
 		t1.mul(transform, t1);
 		setTransform(t1);
 	}
 
 	public void setTransform(double[] matrix) {
-		if(contentNode == null)
-			return;
 		setTransform(new Transform3D(matrix));
 	}
 
-	public void setTransform(Transform3D transform) {
-		if(contentNode == null)
+	/**
+	 * Sets the transformation of this instant. If the instant is not
+	 * displayed yet (see TimelineLoader), the transformation is kept
+	 * and applied once it is.
+	 */
+	public synchronized void setTransform(Transform3D transform) {
+		if(contentNode == null) {
+			pendingTransform = new Transform3D(transform);
 			return;
+		}
+		pendingTransform = null;
 		Transform3D t = new Transform3D();
 		Point3d c = new Point3d(); contentNode.getCenter(c);
 
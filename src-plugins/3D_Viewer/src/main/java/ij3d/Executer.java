@@ -651,19 +651,14 @@ public void decimateMesh() {
 		Content c = univ.getSelected();
 		if(c == null)
 			return;
-		CustomTriangleMesh ctm;
 		ContentNode n = c.getContent();
 		if(n instanceof CustomMeshNode) {
 			if(((CustomMeshNode)n).getMesh() instanceof CustomTriangleMesh)
-				ctm = (CustomTriangleMesh)((CustomMeshNode) n).getMesh();
-			else
-				return;
+				new InteractiveMeshDecimation().run(
+					(CustomTriangleMesh)((CustomMeshNode) n).getMesh());
 		} else if (n instanceof MeshGroup) {
-			ctm = ((MeshGroup)n).getMesh();
-		} else {
-			return;
+			new InteractiveMeshDecimation().run(((MeshGroup)n).getMesh());
 		}
-		new InteractiveMeshDecimation().run(ctm);
 	}
 
 	/* ----------------------------------------------------------
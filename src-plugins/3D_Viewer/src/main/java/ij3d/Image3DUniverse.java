@@ -744,6 +744,7 @@ public void removeOctree() {
 		if(octree != null) {
 			this.removeUniverseListener(octree);
 			scene.removeChild(octree.getRootBranchGroup());
+			octree.close();
 			octree = null;
 		}
 	}
@@ -0,0 +1,277 @@
+package ij3d;
+
+import ij.IJ;
+import ij.ImagePlus;
+
+import java.io.File;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Builds the instants of a timelapse Content on demand.
+ *
+ * The instants are created without displayed data. show() builds the
+ * instant of the given timepoint, if necessary, and requests the
+ * neighbouring timepoints, which are built by a background thread.
+ * The built instants are kept in least-recently-used order; as soon as
+ * their estimated size exceeds the memory budget, the oldest ones are
+ * unloaded again. Images which are given as files are read when their
+ * instant is built, and released when it is unloaded. An instant which
+ * could not be built is tried again the next time it is requested.
+ *
+ * When all timepoints are shown at once, only the built instants are
+ * visible.
+ */
+public class TimelineLoader {
+
+	public static final int DEFAULT_PREFETCH = 1;
+
+	private final TreeMap<Integer, ContentInstant> instants;
+	private final Map<Integer, File> files;
+
+	private long memoryBudget;
+	private int prefetch = DEFAULT_PREFETCH;
+
+	/* the built timepoints, least recently used first, with their sizes */
+	private final LinkedHashMap<Integer, Long> loaded =
+		new LinkedHashMap<Integer, Long>(16, 0.75f, true);
+	private long used = 0;
+	private final Set<Integer> loading = new HashSet<Integer>();
+	private final LinkedList<Integer> pending = new LinkedList<Integer>();
+	private int current;
+	private Thread thread;
+
+	/**
+	 * @param instants the instants of the Content, which have their
+	 *        type set, but are not displayed yet.
+	 * @param files the files from which the images of the instants
+	 *        without an image are read; may be null.
+	 * @param memoryBudget the memory in bytes which the built instants
+	 *        may occupy.
+	 */
+	public TimelineLoader(TreeMap<Integer, ContentInstant> instants,
+			Map<Integer, File> files, long memoryBudget) {
+		this.instants = instants;
+		this.files = files != null ? files : new HashMap<Integer, File>();
+		this.memoryBudget = memoryBudget;
+		if(!instants.isEmpty())
+			current = instants.firstKey();
+	}
+
+	public synchronized long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	public synchronized void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+		evict();
+	}
+
+	public synchronized long getUsedMemory() {
+		return used;
+	}
+
+	public synchronized int getPrefetch() {
+		return prefetch;
+	}
+
+	/**
+	 * Set the number of timepoints before and after the shown one
+	 * which are built in the background.
+	 */
+	public synchronized void setPrefetch(int prefetch) {
+		this.prefetch = Math.max(0, prefetch);
+	}
+
+	public synchronized boolean isLoaded(int tp) {
+		return loaded.containsKey(tp);
+	}
+
+	/**
+	 * Builds the instant of the given timepoint, unless it is built
+	 * already, and requests its neighbours.
+	 */
+	public void show(int tp) {
+		synchronized(this) {
+			current = tp;
+			pending.clear();
+			for(int i = 1; i <= prefetch; i++) {
+				request(tp + i);
+				request(tp - i);
+			}
+		}
+		load(tp);
+		synchronized(this) {
+			if(!pending.isEmpty()) {
+				startThread();
+				notifyAll();
+			}
+		}
+	}
+
+	private void request(int tp) {
+		if(instants.containsKey(tp) && !loaded.containsKey(tp)
+				&& !loading.contains(tp))
+			pending.add(tp);
+	}
+
+	/**
+	 * Builds the instant of the given timepoint, waiting if it is
+	 * being built by another thread.
+	 */
+	public void load(int tp) {
+		ContentInstant ci = instants.get(tp);
+		if(ci == null)
+			return;
+		synchronized(this) {
+			try {
+				while(loading.contains(tp))
+					wait();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			// get() marks it as recently used
+			if(loaded.get(tp) != null)
+				return;
+			loading.add(tp);
+		}
+		long size = -1;
+		try {
+			size = build(tp, ci);
+		} finally {
+			synchronized(this) {
+				loading.remove(tp);
+				// a failed build is tried again on the next request
+				if(size >= 0) {
+					loaded.put(tp, size);
+					used += size;
+					evict();
+				}
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Changes the type of all instants. The built instants are
+	 * unloaded and the current one is built again.
+	 */
+	public void displayAs(int type) {
+		int tp;
+		synchronized(this) {
+			pending.clear();
+			try {
+				while(!loading.isEmpty())
+					wait();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			for(ContentInstant ci : instants.values())
+				ci.type = type;
+			for(int t : loaded.keySet())
+				unload(t);
+			loaded.clear();
+			used = 0;
+			tp = current;
+		}
+		show(tp);
+	}
+
+	/** Stops the background thread. */
+	public synchronized void close() {
+		pending.clear();
+		if(thread == null)
+			return;
+		thread.interrupt();
+		thread = null;
+	}
+
+	/**
+	 * Displays the given instant, reading its image first if
+	 * necessary. Returns the estimated size of the instant, or -1 if
+	 * its image could not be read.
+	 */
+	private long build(int tp, ContentInstant ci) {
+		File file = files.get(tp);
+		if(ci.image == null) {
+			if(file == null)
+				return -1;
+			ImagePlus imp = IJ.openImage(file.getAbsolutePath());
+			if(imp == null)
+				return -1;
+			ContentCreator.convert(imp);
+			ci.image = imp;
+		}
+		ImagePlus imp = ci.image;
+		ci.displayAs(ci.getType());
+
+		// the displayed data is roughly the size of the resampled
+		// image; images read from file are held as well
+		long bytes = (long)imp.getWidth() * imp.getHeight() *
+			imp.getStackSize() * imp.getBytesPerPixel();
+		long r = ci.getResamplingFactor();
+		return bytes / (r * r * r) + (file != null ? bytes : 0);
+	}
+
+	private void unload(int tp) {
+		ContentInstant ci = instants.get(tp);
+		ci.unload();
+		if(files.containsKey(tp))
+			ci.image = null;
+	}
+
+	/** Unloads the least recently used instants except the current one */
+	private synchronized void evict() {
+		Iterator<Map.Entry<Integer, Long>> it =
+			loaded.entrySet().iterator();
+		while(used > memoryBudget && it.hasNext()) {
+			Map.Entry<Integer, Long> e = it.next();
+			int tp = e.getKey();
+			if(tp == current)
+				continue;
+			it.remove();
+			used -= e.getValue();
+			unload(tp);
+		}
+	}
+
+	private synchronized int next() throws InterruptedException {
+		while(pending.isEmpty())
+			wait();
+		return pending.removeFirst();
+	}
+
+	private synchronized void startThread() {
+		if(thread != null)
+			return;
+		thread = new Thread("TimelineLoader") {
+			public void run() {
+				while(!isInterrupted()) {
+					int tp;
+					try {
+						tp = next();
+					} catch(InterruptedException e) {
+						return;
+					}
+					try {
+						load(tp);
+					} catch(Throwable e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+}
@@ -37,6 +37,8 @@ protected static String getPrefsDir() {
 	public static boolean showScalebar                         = false;
 	public static boolean showSelectionBox                     = true;
 	public static Color3f defaultBackground                    = new Color3f();
+	public static boolean loadTimelapseOnDemand                = false;
+	public static int timelapseMemoryBudget                    = (int)(Runtime.getRuntime().maxMemory() / 2 / (1 << 20));
 	public static final HashMap<String, String> shortcuts      = new HashMap<String, String>();
 
 	public static void save() {
@@ -48,6 +50,8 @@ public static void save() {
 		properties.put("Show_Local_Coordinate_System_When_Adding_Content", str(showLocalCoordinateSystemsByDefault));
 		properties.put("Show_Scalebar", str(showScalebar));
 		properties.put("Background", str(defaultBackground));
+		properties.put("Load_Timelapse_On_Demand", str(loadTimelapseOnDemand));
+		properties.put("Timelapse_Memory_Budget", str(timelapseMemoryBudget));
 		for(String key : shortcuts.keySet())
 			properties.put("shortcut." + key, shortcuts.get(key));
 		try {
@@ -84,6 +88,8 @@ public static void load() {
 			showLocalCoordinateSystemsByDefault = bool(properties.getProperty("Show_Local_Coordinate_System_When_Adding_Content", str(showLocalCoordinateSystemsByDefault)));
 			showScalebar = bool(properties.getProperty("Show_Scalebar", str(showScalebar)));
 			defaultBackground = col(properties.getProperty("Background", str(defaultBackground)));
+			loadTimelapseOnDemand = bool(properties.getProperty("Load_Timelapse_On_Demand", str(loadTimelapseOnDemand)));
+			timelapseMemoryBudget = integer(properties.getProperty("Timelapse_Memory_Budget", str(timelapseMemoryBudget)));
 			shortcuts.clear();
 			for(Object o : properties.keySet()) {
 				String key = (String)o;
@@ -124,6 +130,8 @@ public static void initFromDialog(Image3DUniverse univ) {
 		gd.addMessage("The following options are applied immediately:");
 
 		gd.addCheckbox("Show local coordinate system by default", showLocalCoordinateSystemsByDefault);
+		gd.addCheckbox("Load timelapse data on demand", loadTimelapseOnDemand);
+		gd.addNumericField("Timelapse memory budget", timelapseMemoryBudget, 0, 6, "MB");
 
 		gd.showDialog();
 		if(gd.wasCanceled())
@@ -139,6 +147,8 @@ public static void initFromDialog(Image3DUniverse univ) {
 		boolean apply = gd.getNextBoolean();
 
 		showLocalCoordinateSystemsByDefault = gd.getNextBoolean();
+		loadTimelapseOnDemand = gd.getNextBoolean();
+		timelapseMemoryBudget = (int)gd.getNextNumber();
 
 		save();
 		if(apply)
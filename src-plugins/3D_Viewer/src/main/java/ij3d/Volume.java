@@ -641,9 +641,10 @@ protected AverageByteLoader(Img imp) {
 		}
 
 		private int[] color = new int[3];
+		// does not use the shared color array, so that the
+		// volume can be read from several threads at once
 		public final int load(int x, int y, int z) {
-			image.get(x, y, z, color);
-			return (color[0] + color[1] + color[2]) / 3;
+			return image.getAverage(x, y, z) & 0xff;
 		}
 
 		public final int loadWithLUT(int x, int y, int z) {
@@ -11,6 +11,7 @@
 import ij3d.ContentCreator;
 import ij3d.Image3DUniverse;
 import ij3d.ColorTable;
+import ij3d.UniverseSettings;
 
 import javax.swing.JFileChooser;
 import javax.swing.filechooser.*;
@@ -158,6 +159,14 @@ protected String getUniqueContentLabel(Image3DUniverse univ, String name) {
 	}
 
 	private Content createContent() {
+		// the images are read (and converted) when they are shown
+		if(file != null && file.isDirectory() &&
+				UniverseSettings.loadTimelapseOnDemand)
+			return ContentCreator.createContent(
+				name, file, type, resamplingFactor,
+				timepoint, color, threshold,
+				channels);
+
 		ImagePlus[] imps = file != null ?
 			ContentCreator.getImages(file) :
 			ContentCreator.getImages(image);
@@ -10,14 +10,24 @@
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 
+import customnode.CustomIndexedTriangleMesh;
+import customnode.CustomMesh;
 import customnode.CustomTriangleMesh;
 import customnode.EdgeContraction;
 import customnode.FullInfoMesh;
 
 public class InteractiveMeshDecimation {
 	public void run(final CustomTriangleMesh ctm) {
+		run((CustomMesh)ctm);
+	}
+
+	public void run(final CustomIndexedTriangleMesh citm) {
+		run((CustomMesh)citm);
+	}
+
+	private void run(final CustomMesh mesh) {
 		@SuppressWarnings("unchecked")
-		final FullInfoMesh fim = new FullInfoMesh(ctm.getMesh());
+		final FullInfoMesh fim = new FullInfoMesh(mesh.getMesh());
 		final EdgeContraction ec = new EdgeContraction(fim, false);
 		@SuppressWarnings("serial")
 		final GenericDialog gd = new GenericDialog(
@@ -49,7 +59,10 @@ public void actionPerformed(ActionEvent e) {
 					public void run() {
 						int v = simplify(ec, n);
 						gd.setEnabled(true);
-						ctm.setMesh(fim.getMesh());
+						if(mesh instanceof CustomIndexedTriangleMesh)
+							((CustomIndexedTriangleMesh)mesh).setMesh(fim.getMesh());
+						else
+							((CustomTriangleMesh)mesh).setMesh(fim.getMesh());
 						label.setText(v + " remaining vertices");
 					}
 				}.start();
@@ -6,20 +6,19 @@
 import ij3d.ContentNode;
 
 import java.awt.Color;
-import java.util.List;
-
 import javax.media.j3d.View;
 import javax.vecmath.Color3f;
 import javax.vecmath.Point3f;
 import javax.vecmath.Tuple3d;
 
+import marchingcubes.IndexedMesh;
 import marchingcubes.MCTriangulator;
-import customnode.CustomTriangleMesh;
+import customnode.CustomIndexedTriangleMesh;
 
 public class MeshGroup extends ContentNode {
 
-	private CustomTriangleMesh mesh;
-	private Triangulator triangulator = new MCTriangulator();
+	private CustomIndexedTriangleMesh mesh;
+	private MCTriangulator triangulator = new MCTriangulator();
 	private ContentInstant c;
 	private Point3f min, max, center;
 
@@ -31,7 +30,7 @@ public MeshGroup (ContentInstant c) {
 		super();
 		this.c = c;
 		Color3f color = c.getColor();
-		List tri = triangulator.getTriangles(c.getImage(),
+		IndexedMesh indexed = triangulator.getIndexedMesh(c.getImage(),
 			c.getThreshold(), c.getChannels(),
 			c.getResamplingFactor());
 		if(color == null) {
@@ -39,12 +38,12 @@ public MeshGroup (ContentInstant c) {
 				getColorModel().getRGB(c.getThreshold());
 			color = new Color3f(new Color(value));
 		}
-		mesh = new CustomTriangleMesh(tri, color, c.getTransparency());
+		mesh = indexed.createCustomMesh(color, c.getTransparency());
 		calculateMinMaxCenterPoint();
 		addChild(mesh);
 	}
 
-	public CustomTriangleMesh getMesh() {
+	public CustomIndexedTriangleMesh getMesh() {
 		return mesh;
 	}
 
@@ -70,10 +69,14 @@ public void thresholdUpdated(int threshold) {
 				"image. Can't change threshold");
 			return;
 		}
-		List tri = triangulator.getTriangles(c.getImage(),
-				c.getThreshold(), c.getChannels(),
-				c.getResamplingFactor());
-		mesh.setMesh(tri);
+		updateMesh();
+	}
+
+	private void updateMesh() {
+		IndexedMesh indexed = triangulator.getIndexedMesh(c.getImage(),
+			c.getThreshold(), c.getChannels(),
+			c.getResamplingFactor());
+		mesh.setMesh(indexed.getPoints(), indexed.getFaces());
 	}
 
 	public void lutUpdated(int[] r, int[] g, int[] b, int[] a) {
@@ -86,10 +89,7 @@ public void channelsUpdated(boolean[] channels) {
 				"image. Can't change channels");
 			return;
 		}
-		List tri = triangulator.getTriangles(c.getImage(),
-			c.getThreshold(), c.getChannels(),
-			c.getResamplingFactor());
-		mesh.setMesh(tri);
+		updateMesh();
 	}
 
 	public void calculateMinMaxCenterPoint() {
@@ -0,0 +1,596 @@
+package marchingcubes;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.vecmath.Point3f;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.measure.Calibration;
+import ij3d.ImgLibVolume;
+import ij3d.Volume;
+
+import mpicbg.imglib.container.shapelist.ShapeList;
+
+/**
+ * Marching cubes producing an indexed mesh.
+ *
+ * The cubes are the same as those of MCCube, and so are the triangles,
+ * but each vertex is stored only once: vertices are cached per cube edge
+ * and shared by all triangles cutting that edge. The volume is split
+ * into slabs along z, which are triangulated in parallel and merged
+ * afterwards, including the vertices on the planes where two slabs meet.
+ *
+ * Each thread reads only the two image planes it is working on, so an
+ * ImagePlus can be triangulated straight from its stack, which may be a
+ * virtual stack that does not fit into memory.
+ */
+public final class IndexedMCCube {
+
+	/** Default number of cube layers per slab. */
+	public static final int DEFAULT_SLAB_DEPTH = 32;
+
+	/**
+	 * Receives the mesh of a volume slab by slab, see
+	 * {@link IndexedMCCube#streamMesh(Volume, int, int, int, MeshConsumer)}.
+	 */
+	public interface MeshConsumer {
+		/**
+		 * @param chunk the vertices added by the current slab, and the
+		 * triangles of the current slab. Triangle indices are global:
+		 * the vertices of this chunk have the indices firstVertex to
+		 * firstVertex + chunk.getVertexCount() - 1, smaller indices
+		 * refer to vertices of previous chunks.
+		 * @param firstVertex the global index of the first vertex of
+		 * this chunk.
+		 */
+		void consume(IndexedMesh chunk, int firstVertex);
+	}
+
+	// the 8 cube vertices, as in MCCube.init()
+	private static final int[] VX = {0, 1, 1, 0, 0, 1, 1, 0};
+	private static final int[] VY = {0, 0, 1, 1, 0, 0, 1, 1};
+	private static final int[] VZ = {0, 0, 0, 0, 1, 1, 1, 1};
+
+	// the 12 cube edges, as in MCCube.computeEdges()
+	private static final int[] EA = {0, 1, 2, 3, 4, 5, 6, 7, 0, 1, 3, 2};
+	private static final int[] EB = {1, 2, 3, 0, 5, 6, 7, 4, 4, 5, 7, 6};
+
+	// edge direction (0: x, 1: y, 2: z) and lower end point
+	private static final int[] EAXIS = new int[12];
+	private static final int[] EX = new int[12];
+	private static final int[] EY = new int[12];
+	private static final int[] EZ = new int[12];
+	static {
+		for(int e = 0; e < 12; e++) {
+			int a = EA[e], b = EB[e];
+			EAXIS[e] = VX[a] != VX[b] ? 0 : VY[a] != VY[b] ? 1 : 2;
+			EX[e] = Math.min(VX[a], VX[b]);
+			EY[e] = Math.min(VY[a], VY[b]);
+			EZ[e] = Math.min(VZ[a], VZ[b]);
+		}
+	}
+
+	private IndexedMCCube() {}
+
+	/**
+	 * Create an indexed mesh from the specified image data and the given
+	 * isovalue, using as many threads as there are processors.
+	 */
+	public static IndexedMesh getMesh(Volume volume, int thresh) {
+		return getMesh(volume, thresh,
+			Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create an indexed mesh from the specified image data and the given
+	 * isovalue, using nThreads threads.
+	 */
+	public static IndexedMesh getMesh(Volume volume, int thresh, int nThreads) {
+		if(isShapeList(volume))
+			return index(MCCube.getTriangles(volume, thresh));
+		return collect(new VolumeSource(volume), thresh,
+			volumeThreads(volume, nThreads));
+	}
+
+	/**
+	 * Create an indexed mesh from the given 8-bit or RGB image and
+	 * isovalue, using nThreads threads. The planes of the image are read
+	 * when they are needed, so that this works on virtual stacks. RGB
+	 * values are averaged, as by a Volume with setAverage(true).
+	 */
+	public static IndexedMesh getMesh(ImagePlus image, int thresh, int nThreads) {
+		return collect(new StackSource(image), thresh, nThreads);
+	}
+
+	private static IndexedMesh collect(Source source, int thresh, int nThreads) {
+		final IndexedMesh mesh = new IndexedMesh();
+		run(source, thresh, nThreads, DEFAULT_SLAB_DEPTH, false,
+				new MeshConsumer() {
+			public void consume(IndexedMesh chunk, int firstVertex) {
+				float[] v = chunk.getVertices();
+				for(int i = 0; i < v.length; i += 3)
+					mesh.addVertex(v[i], v[i + 1], v[i + 2]);
+				int[] f = chunk.getFaces();
+				for(int i = 0; i < f.length; i += 3)
+					mesh.addTriangle(f[i], f[i + 1], f[i + 2]);
+			}
+		});
+		return mesh;
+	}
+
+	/**
+	 * Triangulate the specified image data slab by slab, handing the
+	 * mesh over to the given consumer in chunks, in z order. At most
+	 * nThreads slabs of slabDepth cube layers are held in memory at a
+	 * time, which allows to triangulate volumes whose mesh does not fit
+	 * into memory, e.g. by writing each chunk to a file.
+	 */
+	public static void streamMesh(Volume volume, int thresh, int nThreads,
+			int slabDepth, MeshConsumer consumer) {
+		if(isShapeList(volume)) {
+			consumer.consume(index(MCCube.getTriangles(volume, thresh)), 0);
+			return;
+		}
+		run(new VolumeSource(volume), thresh,
+			volumeThreads(volume, nThreads), slabDepth, true, consumer);
+	}
+
+	/**
+	 * Triangulate the given 8-bit or RGB image slab by slab, like
+	 * {@link #streamMesh(Volume, int, int, int, MeshConsumer)}. Only the
+	 * image planes of the slabs being triangulated are read, so with a
+	 * virtual stack neither the image nor the mesh need to fit into
+	 * memory. RGB values are averaged, as by a Volume with
+	 * setAverage(true).
+	 */
+	public static void streamMesh(ImagePlus image, int thresh, int nThreads,
+			int slabDepth, MeshConsumer consumer) {
+		run(new StackSource(image), thresh, nThreads, slabDepth, true,
+			consumer);
+	}
+
+	/**
+	 * Merge the identical vertices of a triangle list as returned by
+	 * MCCube.getTriangles().
+	 */
+	public static IndexedMesh index(List<Point3f> triangles) {
+		IndexedMesh mesh = new IndexedMesh(
+			triangles.size() / 6, triangles.size());
+		Map<Point3f, Integer> indices = new HashMap<Point3f, Integer>();
+		int[] tri = new int[3];
+		for(int i = 0; i < triangles.size(); i++) {
+			Point3f p = triangles.get(i);
+			Integer index = indices.get(p);
+			if(index == null) {
+				index = mesh.addVertex(p.x, p.y, p.z);
+				indices.put(p, index);
+			}
+			tri[i % 3] = index;
+			if(i % 3 == 2)
+				mesh.addTriangle(tri[0], tri[1], tri[2]);
+		}
+		return mesh;
+	}
+
+	private static boolean isShapeList(Volume volume) {
+		return volume instanceof ImgLibVolume && ((ImgLibVolume)volume)
+			.getImage().getContainer() instanceof ShapeList;
+	}
+
+	private static int volumeThreads(Volume volume, int nThreads) {
+		// ImgLibVolume reads through a single cursor
+		return volume instanceof ImgLibVolume ? 1 : nThreads;
+	}
+
+	private static void run(final Source source, final int thresh,
+			int nThreads, int slabDepth, boolean stream,
+			MeshConsumer consumer) {
+		if(slabDepth < 1)
+			throw new IllegalArgumentException("slab depth < 1");
+		nThreads = Math.max(1, nThreads);
+
+		// cube layers z = -1 .. d, as in MCCube
+		final int nLayers = source.d + 2;
+		final int nSlabs = (nLayers + slabDepth - 1) / slabDepth;
+		final int batchSize = stream ? nThreads : nSlabs;
+
+		final Slab[] slabs = new Slab[nSlabs];
+		for(int s = 0; s < nSlabs; s++)
+			slabs[s] = new Slab(-1 + s * slabDepth,
+				Math.min(source.d + 1, -1 + (s + 1) * slabDepth));
+
+		final Worker[] workers = new Worker[Math.min(nThreads, batchSize)];
+		long[] prevLast = new long[0];
+		int nVertices = 0;
+		for(int first = 0; first < nSlabs; first += batchSize) {
+			final int last = Math.min(nSlabs, first + batchSize);
+			triangulate(source, thresh, slabs, first, last, workers);
+
+			for(int s = first; s < last; s++) {
+				Slab slab = slabs[s];
+				int[] remap = new int[slab.mesh.getVertexCount()];
+				Arrays.fill(remap, -1);
+				for(int i = 0; i < slab.firstKeys.size; i++) {
+					int k = find(prevLast, slab.firstKeys.data[i]);
+					if(k >= 0)
+						remap[slab.firstIndices.data[i]] =
+							(int)prevLast[k];
+				}
+				IndexedMesh chunk = new IndexedMesh(
+					slab.mesh.getVertexCount(),
+					slab.mesh.getIndexCount());
+				int[] index = chunk.append(slab.mesh, remap, nVertices);
+
+				prevLast = new long[slab.lastKeys.size];
+				for(int i = 0; i < prevLast.length; i++)
+					prevLast[i] = ((long)slab.lastKeys.data[i] << 32) |
+						index[slab.lastIndices.data[i]];
+				Arrays.sort(prevLast);
+
+				slabs[s] = null;
+				consumer.consume(chunk, nVertices);
+				nVertices += chunk.getVertexCount();
+				IJ.showProgress(s + 1, nSlabs);
+			}
+		}
+	}
+
+	private static int find(long[] keys, int key) {
+		int lo = 0, hi = keys.length - 1;
+		while(lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int k = (int)(keys[mid] >>> 32);
+			if(k < key)
+				lo = mid + 1;
+			else if(k > key)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	private static void triangulate(final Source source, final int thresh,
+			final Slab[] slabs, final int first, final int last,
+			final Worker[] workers) {
+		final AtomicInteger ai = new AtomicInteger(first);
+		final Throwable[] failure = new Throwable[1];
+		final Thread[] threads = new Thread[Math.min(workers.length, last - first)];
+		for(int i = 0; i < threads.length; i++) {
+			if(workers[i] == null)
+				workers[i] = new Worker(source, thresh + 0.5f);
+			final Worker worker = workers[i];
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for(int s = ai.getAndIncrement(); s < last;
+								s = ai.getAndIncrement())
+							worker.triangulate(slabs[s]);
+					} catch(Throwable t) {
+						synchronized(failure) {
+							if(failure[0] == null)
+								failure[0] = t;
+						}
+					}
+				}
+			};
+		}
+		if(threads.length == 1) {
+			threads[0].run();
+		} else {
+			for(int i = 0; i < threads.length; i++)
+				threads[i].start();
+			try {
+				for(int i = 0; i < threads.length; i++)
+					threads[i].join();
+			} catch(InterruptedException e) {
+				for(int i = 0; i < threads.length; i++)
+					threads[i].interrupt();
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+		}
+		synchronized(failure) {
+			if(failure[0] instanceof RuntimeException)
+				throw (RuntimeException)failure[0];
+			if(failure[0] instanceof Error)
+				throw (Error)failure[0];
+			if(failure[0] != null)
+				throw new RuntimeException(failure[0]);
+		}
+	}
+
+	/** The dimensions and calibration of a volume, and its voxels. */
+	private static abstract class Source {
+		final int w, h, d;
+		final double pw, ph, pd;
+		final double ox, oy, oz;
+
+		Source(int w, int h, int d, double pw, double ph, double pd,
+				double ox, double oy, double oz) {
+			this.w = w;
+			this.h = h;
+			this.d = d;
+			this.pw = pw;
+			this.ph = ph;
+			this.pd = pd;
+			this.ox = ox;
+			this.oy = oy;
+			this.oz = oz;
+		}
+
+		/** Read the voxels of the plane z, 0 <= z < d, row by row. */
+		abstract void load(int z, int[] plane);
+	}
+
+	private static final class VolumeSource extends Source {
+		private final Volume volume;
+
+		VolumeSource(Volume volume) {
+			super(volume.xDim, volume.yDim, volume.zDim,
+				volume.pw, volume.ph, volume.pd, volume.minCoord.x,
+				volume.minCoord.y, volume.minCoord.z);
+			this.volume = volume;
+		}
+
+		@Override
+		void load(int z, int[] plane) {
+			for(int y = 0, i = 0; y < h; y++)
+				for(int x = 0; x < w; x++, i++)
+					plane[i] = volume.load(x, y, z);
+		}
+	}
+
+	/**
+	 * Reads the planes of an image stack, with the values of an averaging
+	 * Volume: bytes are unsigned, RGB values are the mean of r, g and b.
+	 */
+	private static final class StackSource extends Source {
+		private final ImageStack stack;
+
+		StackSource(ImagePlus image) {
+			this(image.getStack(), image.getCalibration());
+			int type = image.getType();
+			if(type != ImagePlus.GRAY8 && type != ImagePlus.COLOR_256 &&
+					type != ImagePlus.COLOR_RGB)
+				throw new IllegalArgumentException("Unsupported image type");
+		}
+
+		private StackSource(ImageStack stack, Calibration c) {
+			super(stack.getWidth(), stack.getHeight(), stack.getSize(),
+				c.pixelWidth, c.pixelHeight, c.pixelDepth,
+				c.xOrigin, c.yOrigin, c.zOrigin);
+			this.stack = stack;
+		}
+
+		@Override
+		void load(int z, int[] plane) {
+			Object pixels;
+			// virtual stacks are not thread safe
+			synchronized(stack) {
+				pixels = stack.getPixels(z + 1);
+			}
+			int n = w * h;
+			if(pixels instanceof byte[]) {
+				byte[] b = (byte[])pixels;
+				for(int i = 0; i < n; i++)
+					plane[i] = b[i] & 0xff;
+			} else {
+				int[] rgb = (int[])pixels;
+				for(int i = 0; i < n; i++) {
+					int v = rgb[i];
+					plane[i] = (((v & 0xff0000) >> 16) +
+						((v & 0xff00) >> 8) + (v & 0xff)) / 3;
+				}
+			}
+		}
+	}
+
+	/** The cube layers z0 .. z1 - 1 and their mesh. */
+	private static final class Slab {
+		final int z0, z1;
+		IndexedMesh mesh;
+		// vertices on the x and y edges of the planes z0 and z1
+		final IntList firstKeys = new IntList(), firstIndices = new IntList();
+		final IntList lastKeys = new IntList(), lastIndices = new IntList();
+
+		Slab(int z0, int z1) {
+			this.z0 = z0;
+			this.z1 = z1;
+		}
+	}
+
+	/**
+	 * Triangulates slabs, re-using its buffers from one slab to the
+	 * next. Edge caches are indexed by the lower end point of the edge,
+	 * shifted by one to account for the cubes at x = -1 and y = -1; the
+	 * x and y edges of a plane are interleaved.
+	 */
+	private static final class Worker {
+		private final Source source;
+		private final float threshold;
+		private final int w, h, d, vw;
+
+		// voxel values of the planes z and z + 1
+		private int[] lo, hi;
+		// vertex indices of the x/y edges in the planes z and z + 1,
+		// and of the z edges in between
+		private int[] bottom, top, zEdges;
+		private IntList bottomUsed = new IntList();
+		private IntList topUsed = new IntList();
+		private final IntList zEdgesUsed = new IntList();
+
+		private final int[] iv = new int[8];
+		private IndexedMesh mesh;
+
+		Worker(Source source, float threshold) {
+			this.source = source;
+			this.threshold = threshold;
+			this.w = source.w;
+			this.h = source.h;
+			this.d = source.d;
+			this.vw = w + 3;
+		}
+
+		void triangulate(Slab slab) {
+			if(lo == null) {
+				lo = new int[w * h];
+				hi = new int[w * h];
+				bottom = new int[2 * vw * (h + 3)];
+				top = new int[2 * vw * (h + 3)];
+				zEdges = new int[vw * (h + 3)];
+				Arrays.fill(bottom, -1);
+				Arrays.fill(top, -1);
+				Arrays.fill(zEdges, -1);
+			}
+			mesh = new IndexedMesh();
+			load(slab.z0, hi);
+			for(int z = slab.z0; z < slab.z1; z++) {
+				int[] tmp = lo;
+				lo = hi;
+				hi = tmp;
+				load(z + 1, hi);
+
+				for(int x = -1; x < w + 1; x++)
+					for(int y = -1; y < h + 1; y++)
+						cube(x, y, z);
+
+				if(z == slab.z0)
+					record(bottom, bottomUsed, slab.firstKeys, slab.firstIndices);
+				if(z == slab.z1 - 1)
+					record(top, topUsed, slab.lastKeys, slab.lastIndices);
+
+				reset(bottom, bottomUsed);
+				reset(zEdges, zEdgesUsed);
+				tmp = bottom;
+				bottom = top;
+				top = tmp;
+				IntList tmpUsed = bottomUsed;
+				bottomUsed = topUsed;
+				topUsed = tmpUsed;
+			}
+			reset(bottom, bottomUsed);
+			slab.mesh = mesh;
+			mesh = null;
+		}
+
+		private void load(int z, int[] plane) {
+			if(z < 0 || z >= d) {
+				Arrays.fill(plane, 0);
+				return;
+			}
+			source.load(z, plane);
+		}
+
+		private int value(int[] plane, int x, int y) {
+			if(x < 0 || y < 0 || x >= w || y >= h)
+				return 0;
+			return plane[y * w + x];
+		}
+
+		private void cube(int x, int y, int z) {
+			iv[0] = value(lo, x,     y);
+			iv[1] = value(lo, x + 1, y);
+			iv[2] = value(lo, x + 1, y + 1);
+			iv[3] = value(lo, x,     y + 1);
+			iv[4] = value(hi, x,     y);
+			iv[5] = value(hi, x + 1, y);
+			iv[6] = value(hi, x + 1, y + 1);
+			iv[7] = value(hi, x,     y + 1);
+
+			int cn = 0;
+			for(int i = 0; i < 8; i++)
+				if(iv[i] - threshold > 0)
+					cn |= 1 << i;
+			if(cn == 0 || cn == 255)
+				return;
+
+			int offset = cn * 15;
+			for(int index = 0; index < 5; index++) {
+				if(MCCube.faces[offset] != -1)
+					mesh.addTriangle(
+						vertex(MCCube.faces[offset], x, y, z),
+						vertex(MCCube.faces[offset + 1], x, y, z),
+						vertex(MCCube.faces[offset + 2], x, y, z));
+				offset += 3;
+			}
+		}
+
+		private int vertex(int e, int x, int y, int z) {
+			int cell = (y + 1 + EY[e]) * vw + x + 1 + EX[e];
+			int[] cache;
+			IntList used;
+			int key;
+			if(EAXIS[e] == 2) {
+				cache = zEdges;
+				used = zEdgesUsed;
+				key = cell;
+			} else {
+				cache = EZ[e] == 0 ? bottom : top;
+				used = EZ[e] == 0 ? bottomUsed : topUsed;
+				key = 2 * cell + EAXIS[e];
+			}
+			int index = cache[key];
+			if(index != -1)
+				return index;
+
+			// as in MCCube.computeEdge()
+			int a = EA[e], b = EB[e];
+			if(iv[b] < iv[a]) {
+				int tmp = a;
+				a = b;
+				b = tmp;
+			}
+			float t = (threshold - iv[a]) / (float)(iv[b] - iv[a]);
+			float ax = x + VX[a], ay = y + VY[a], az = z + VZ[a];
+			float bx = x + VX[b], by = y + VY[b], bz = z + VZ[b];
+			float px = (bx - ax) * t + ax;
+			float py = (by - ay) * t + ay;
+			float pz = (bz - az) * t + az;
+
+			// as in MCCube.getTriangles()
+			index = mesh.addVertex(
+				(float)(px * source.pw + source.ox),
+				(float)(py * source.ph + source.oy),
+				(float)(pz * source.pd + source.oz));
+			cache[key] = index;
+			used.add(key);
+			return index;
+		}
+
+		private static void record(int[] cache, IntList used,
+				IntList keys, IntList indices) {
+			for(int i = 0; i < used.size; i++) {
+				keys.add(used.data[i]);
+				indices.add(cache[used.data[i]]);
+			}
+		}
+
+		private static void reset(int[] cache, IntList used) {
+			for(int i = 0; i < used.size; i++)
+				cache[used.data[i]] = -1;
+			used.size = 0;
+		}
+	}
+
+	private static final class IntList {
+		int[] data = new int[16];
+		int size;
+
+		void add(int v) {
+			if(size == data.length) {
+				int[] tmp = new int[2 * size];
+				System.arraycopy(data, 0, tmp, 0, size);
+				data = tmp;
+			}
+			data[size++] = v;
+		}
+	}
+}
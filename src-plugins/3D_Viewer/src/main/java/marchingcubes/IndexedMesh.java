@@ -0,0 +1,132 @@
+package marchingcubes;
+
+import javax.vecmath.Color3f;
+import javax.vecmath.Point3f;
+
+import customnode.CustomIndexedTriangleMesh;
+
+/**
+ * A triangle mesh stored in primitive arrays: the vertex coordinates
+ * as consecutive x, y, z floats, and the triangles as consecutive
+ * triples of vertex indices.
+ */
+public class IndexedMesh {
+
+	private float[] vertices;
+	private int nVertices;
+	private int[] faces;
+	private int nIndices;
+
+	public IndexedMesh() {
+		this(1024, 1024);
+	}
+
+	public IndexedMesh(int vertexCapacity, int indexCapacity) {
+		vertices = new float[3 * Math.max(1, vertexCapacity)];
+		faces = new int[Math.max(3, indexCapacity)];
+	}
+
+	/** Returns the number of vertices. */
+	public int getVertexCount() {
+		return nVertices;
+	}
+
+	/** Returns the number of vertex indices, i.e. three times the number of triangles. */
+	public int getIndexCount() {
+		return nIndices;
+	}
+
+	/** Returns the vertex coordinates, of length 3 * getVertexCount(). */
+	public float[] getVertices() {
+		trim();
+		return vertices;
+	}
+
+	/** Returns the triangle vertex indices, of length getIndexCount(). */
+	public int[] getFaces() {
+		trim();
+		return faces;
+	}
+
+	/** Returns the vertices as Point3f objects, one per distinct vertex. */
+	public Point3f[] getPoints() {
+		Point3f[] points = new Point3f[nVertices];
+		for(int i = 0, j = 0; i < nVertices; i++, j += 3)
+			points[i] = new Point3f(vertices[j], vertices[j + 1], vertices[j + 2]);
+		return points;
+	}
+
+	/**
+	 * Creates a CustomIndexedTriangleMesh displaying this mesh, with the
+	 * given color and transparency.
+	 */
+	public CustomIndexedTriangleMesh createCustomMesh(Color3f color, float transp) {
+		return new CustomIndexedTriangleMesh(getPoints(), getFaces(), color, transp);
+	}
+
+	int addVertex(float x, float y, float z) {
+		if(3 * nVertices + 3 > vertices.length) {
+			float[] tmp = new float[Math.max(3 * nVertices + 3, 2 * vertices.length)];
+			System.arraycopy(vertices, 0, tmp, 0, 3 * nVertices);
+			vertices = tmp;
+		}
+		int j = 3 * nVertices;
+		vertices[j] = x;
+		vertices[j + 1] = y;
+		vertices[j + 2] = z;
+		return nVertices++;
+	}
+
+	void addTriangle(int v1, int v2, int v3) {
+		if(nIndices + 3 > faces.length) {
+			int[] tmp = new int[Math.max(nIndices + 3, 2 * faces.length)];
+			System.arraycopy(faces, 0, tmp, 0, nIndices);
+			faces = tmp;
+		}
+		faces[nIndices++] = v1;
+		faces[nIndices++] = v2;
+		faces[nIndices++] = v3;
+	}
+
+	/**
+	 * Appends the vertices and triangles of another mesh. Vertex i of
+	 * the other mesh is replaced by the existing vertex remap[i] if remap
+	 * is not null and remap[i] is not -1; otherwise it is added, and
+	 * referred to as firstIndex plus its index in this mesh. Returns the
+	 * resulting index of each vertex of the other mesh.
+	 */
+	int[] append(IndexedMesh other, int[] remap, int firstIndex) {
+		int nOther = other.nVertices;
+		int[] index = new int[nOther];
+		for(int i = 0, j = 0; i < nOther; i++, j += 3) {
+			if(remap != null && remap[i] != -1)
+				index[i] = remap[i];
+			else
+				index[i] = firstIndex + addVertex(other.vertices[j],
+					other.vertices[j + 1], other.vertices[j + 2]);
+		}
+		for(int i = 0; i < other.nIndices; i += 3)
+			addTriangle(index[other.faces[i]],
+				index[other.faces[i + 1]],
+				index[other.faces[i + 2]]);
+		return index;
+	}
+
+	void clear() {
+		nVertices = 0;
+		nIndices = 0;
+	}
+
+	private void trim() {
+		if(vertices.length != 3 * nVertices) {
+			float[] tmp = new float[3 * nVertices];
+			System.arraycopy(vertices, 0, tmp, 0, tmp.length);
+			vertices = tmp;
+		}
+		if(faces.length != nIndices) {
+			int[] tmp = new int[nIndices];
+			System.arraycopy(faces, 0, tmp, 0, nIndices);
+			faces = tmp;
+		}
+	}
+}
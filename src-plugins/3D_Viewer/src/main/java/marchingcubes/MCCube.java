@@ -362,7 +362,7 @@ private static final void getShapeListImageTriangles(final ImgLibVolume volume,
 	};        
 
 	// triangles to be drawn in each case
-	private static final int faces[] =
+	static final int faces[] =
 	{
 		-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
 		0, 8, 3, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
@@ -2,6 +2,7 @@
 
 import ij.ImagePlus;
 import ij.ImageStack;
+import ij.VirtualStack;
 import ij.process.ImageProcessor;
 import ij.process.ColorProcessor;
 import ij.process.ByteProcessor;
@@ -40,6 +41,25 @@ public List getTriangles(ImagePlus image, int threshold,
 		return l;
 	}
 
+	/**
+	 * Like getTriangles(), but returns an indexed mesh in which each
+	 * vertex is stored only once. The volume is triangulated in
+	 * parallel, see IndexedMCCube. Virtual stacks are read plane by
+	 * plane instead of being loaded as a whole.
+	 */
+	public IndexedMesh getIndexedMesh(ImagePlus image, int threshold,
+					boolean[] channels, int resamplingF) {
+
+		if(resamplingF != 1)
+			image = NaiveResampler.resample(image, resamplingF);
+		if(image.getStack() instanceof VirtualStack)
+			return IndexedMCCube.getMesh(image, threshold,
+				Runtime.getRuntime().availableProcessors());
+		Volume volume = new Volume(image, channels);
+		volume.setAverage(true);
+		return IndexedMCCube.getMesh(volume, threshold);
+	}
+
 	/**
 	 * @param img The Image<? extends RealType> instance to use.
 	 * @param threshold The cut-off (inclusive) of pixel values considered inside.
@@ -0,0 +1,277 @@
+package octree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ij3d.AxisConstants;
+
+/**
+ * The bricks of a volume octree, as written by FilePreparer.
+ *
+ * All bricks are stored in a single container file: for each brick its
+ * data in z-, y- and x-orientation, followed by an index holding the
+ * name, calibration and position of every brick. Directories prepared
+ * with one file per brick and orientation are read as well.
+ */
+public class BrickFile implements AxisConstants {
+
+	public static final String FILE_NAME = "bricks.dat";
+
+	private static final int MAGIC = 0x4f435442;
+
+	private final String dir;
+	private final int size;
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final Map<String, Entry> index;
+
+	private static final class Entry {
+		final float pw, ph, pd;
+		final long position;
+
+		Entry(float pw, float ph, float pd, long position) {
+			this.pw = pw;
+			this.ph = ph;
+			this.pd = pd;
+			this.position = position;
+		}
+	}
+
+	private BrickFile(String dir, int size, RandomAccessFile file,
+				Map<String, Entry> index) {
+		this.dir = dir;
+		this.size = size;
+		this.file = file;
+		this.channel = file == null ? null : file.getChannel();
+		this.index = index;
+	}
+
+	/**
+	 * Opens the bricks in the given directory, which contains either
+	 * a container file or one file per brick and orientation.
+	 */
+	public static BrickFile open(String dir, int size) throws IOException {
+		File f = new File(dir, FILE_NAME);
+		if(!f.exists())
+			return new BrickFile(dir, size, null, null);
+
+		RandomAccessFile ra = new RandomAccessFile(f, "r");
+		try {
+			ra.seek(ra.length() - 12);
+			long indexPos = ra.readLong();
+			if(ra.readInt() != MAGIC)
+				throw new IOException(f + " is not a brick file");
+			byte[] buf = new byte[(int)(ra.length() - 12 - indexPos)];
+			ra.seek(indexPos);
+			ra.readFully(buf);
+
+			DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(buf));
+			if(in.readInt() != size)
+				throw new IOException("Brick size in " + f +
+					" differs from " + size);
+			int n = in.readInt();
+			Map<String, Entry> index = new HashMap<String, Entry>(2 * n);
+			for(int i = 0; i < n; i++) {
+				String name = in.readUTF();
+				index.put(name, new Entry(in.readFloat(),
+					in.readFloat(), in.readFloat(),
+					in.readLong()));
+			}
+			return new BrickFile(dir, size, ra, index);
+		} catch(IOException e) {
+			ra.close();
+			throw e;
+		}
+	}
+
+	public boolean contains(String name) {
+		if(index == null)
+			return new File(dir, name + ".info").exists();
+		return index.containsKey(name);
+	}
+
+	/**
+	 * Reads the calibration of the given brick into ret, which is
+	 * created if null. Returns null if the brick does not exist.
+	 */
+	public float[] readCalibration(String name, float[] ret) {
+		if(index == null)
+			return CubeData.readCalibration(
+				new File(dir, name + ".info").getPath(), ret);
+		Entry e = index.get(name);
+		if(e == null)
+			return null;
+		if(ret == null)
+			ret = new float[3];
+		ret[0] = e.pw;
+		ret[1] = e.ph;
+		ret[2] = e.pd;
+		return ret;
+	}
+
+	/**
+	 * Reads the slices of the given brick along the given axis into
+	 * slices, which must hold size arrays of size * size bytes.
+	 * May be called from several threads at once.
+	 */
+	public void read(String name, int axis, byte[][] slices)
+				throws IOException {
+		if(index == null) {
+			readLegacy(name, axis, slices);
+			return;
+		}
+		Entry e = index.get(name);
+		if(e == null)
+			throw new IOException("No brick " + name);
+		long s3 = (long)size * size * size;
+		long pos = e.position + offset(axis) * s3;
+		for(int i = 0; i < size; i++) {
+			ByteBuffer buf = ByteBuffer.wrap(slices[i]);
+			while(buf.hasRemaining()) {
+				int r = channel.read(buf, pos + buf.position());
+				if(r < 0)
+					throw new IOException("Unexpected end of " + FILE_NAME);
+			}
+			pos += slices[i].length;
+		}
+	}
+
+	private void readLegacy(String name, int axis, byte[][] slices)
+				throws IOException {
+		String sub = axis == X_AXIS ? "x" : axis == Y_AXIS ? "y" : "z";
+		DataInputStream is = new DataInputStream(new FileInputStream(
+			new File(new File(dir, sub), name)));
+		try {
+			for(int i = 0; i < size; i++)
+				is.readFully(slices[i]);
+		} finally {
+			is.close();
+		}
+	}
+
+	public void close() throws IOException {
+		if(file != null)
+			file.close();
+	}
+
+	private static int offset(int axis) {
+		switch(axis) {
+			case Z_AXIS: return 0;
+			case Y_AXIS: return 1;
+			case X_AXIS: return 2;
+		}
+		throw new IllegalArgumentException("Illegal axis: " + axis);
+	}
+
+	/**
+	 * Writes a container file. Bricks may be added from several
+	 * threads at once; the index is written by finish().
+	 */
+	static final class Writer {
+
+		private final int size;
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private final AtomicLong end = new AtomicLong();
+		private final List<String> names = new ArrayList<String>();
+		private final List<Entry> entries = new ArrayList<Entry>();
+
+		Writer(File f, int size) throws IOException {
+			this.size = size;
+			f.delete();
+			this.file = new RandomAccessFile(f, "rw");
+			this.channel = file.getChannel();
+		}
+
+		/**
+		 * Adds a brick, given as its xy-slices (x changes fastest,
+		 * then y, then z).
+		 */
+		void add(String name, float pw, float ph, float pd,
+				byte[] blob) throws IOException {
+			long pos = end.getAndAdd(3L * blob.length);
+			write(blob, pos);
+			write(createYBlobFromZ(blob, size), pos + blob.length);
+			write(createXBlobFromZ(blob, size), pos + 2L * blob.length);
+			synchronized(this) {
+				names.add(name);
+				entries.add(new Entry(pw, ph, pd, pos));
+			}
+		}
+
+		private void write(byte[] data, long pos) throws IOException {
+			ByteBuffer buf = ByteBuffer.wrap(data);
+			while(buf.hasRemaining())
+				channel.write(buf, pos + buf.position());
+		}
+
+		/** Writes the index. */
+		synchronized void finish() throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(size);
+			out.writeInt(names.size());
+			for(int i = 0; i < names.size(); i++) {
+				Entry e = entries.get(i);
+				out.writeUTF(names.get(i));
+				out.writeFloat(e.pw);
+				out.writeFloat(e.ph);
+				out.writeFloat(e.pd);
+				out.writeLong(e.position);
+			}
+			long indexPos = end.get();
+			out.writeLong(indexPos);
+			out.writeInt(MAGIC);
+			out.close();
+			write(bytes.toByteArray(), indexPos);
+		}
+
+		void close() throws IOException {
+			file.close();
+		}
+	}
+
+	static final byte[] createYBlobFromZ(byte[] blob, int size) {
+		byte[] ret = new byte[blob.length];
+		int s2 = size * size;
+		for(int y = 0; y < size; y++) {
+			for(int z = 0; z < size; z++) {
+				System.arraycopy(blob,
+					z * s2 + y * size,
+					ret,
+					y * s2 + z * size,
+					size);
+			}
+		}
+		return ret;
+	}
+
+	static final byte[] createXBlobFromZ(byte[] blob, int size) {
+		byte[] ret = new byte[blob.length];
+		int s2 = size * size;
+		for(int z = 0; z < size; z++) {
+			for(int y = 0; y < size; y++) {
+				for(int x = 0; x < size; x++) {
+					ret[x * s2 + z * size + y] = blob[z * s2 + y * size + x];
+				}
+			}
+		}
+		return ret;
+	}
+}
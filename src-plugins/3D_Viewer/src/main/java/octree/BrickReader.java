@@ -0,0 +1,179 @@
+package octree;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the images of cubes in background threads.
+ *
+ * prefetch() replaces the list of pending requests by the given cubes,
+ * in the given order (VolumeOctree passes them sorted by their distance
+ * from the eye, nearest first). get() returns the images of a cube,
+ * waiting for a pending or running request, or loading them itself if
+ * the cube was not requested.
+ */
+public class BrickReader {
+
+	private static final int SIZE = VolumeOctree.SIZE;
+
+	private final BrickFile bricks;
+	private final int nThreads;
+	private Thread[] threads;
+	private boolean closed;
+
+	private final LinkedList<Request> pending = new LinkedList<Request>();
+	private final Map<String, Request> requests = new HashMap<String, Request>();
+
+	private static final class Request {
+		final Cube cube;
+		final int axis;
+		BufferedImage[] images;
+		IOException exception;
+		boolean started, done;
+
+		Request(Cube cube, int axis) {
+			this.cube = cube;
+			this.axis = axis;
+		}
+	}
+
+	public BrickReader(BrickFile bricks, int nThreads) {
+		this.bricks = bricks;
+		this.nThreads = Math.max(1, nThreads);
+	}
+
+	/**
+	 * Request the images of the given cubes along the given axis.
+	 * Requests of a previous call which have not been started yet and
+	 * are not repeated are dropped, as are their results.
+	 */
+	public synchronized void prefetch(List<Cube> cubes, int axis) {
+		if(closed)
+			return;
+		startThreads();
+		Map<String, Request> old = new HashMap<String, Request>(requests);
+		pending.clear();
+		requests.clear();
+		for(Cube c : cubes) {
+			String key = key(c, axis);
+			Request r = old.get(key);
+			if(r == null)
+				r = new Request(c, axis);
+			requests.put(key, r);
+			if(!r.started)
+				pending.add(r);
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Returns the images of the given cube along the given axis.
+	 */
+	public BufferedImage[] get(Cube cube, int axis) throws IOException {
+		Request r;
+		synchronized(this) {
+			r = requests.remove(key(cube, axis));
+			// not started yet: load it right away
+			if(r != null && pending.remove(r))
+				r = null;
+			try {
+				while(r != null && !r.done)
+					wait();
+			} catch(InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+		}
+		if(r == null)
+			return load(cube, axis);
+		if(r.exception != null)
+			throw r.exception;
+		return r.images;
+	}
+
+	/** Drop all pending requests. */
+	public synchronized void cancel() {
+		pending.clear();
+		requests.clear();
+	}
+
+	private BufferedImage[] load(Cube cube, int axis) throws IOException {
+		BufferedImage[] images = new BufferedImage[SIZE];
+		byte[][] pixels = new byte[SIZE][];
+		for(int i = 0; i < SIZE; i++) {
+			images[i] = new BufferedImage(SIZE, SIZE,
+				BufferedImage.TYPE_BYTE_GRAY);
+			pixels[i] = ((DataBufferByte)images[i].getRaster()
+				.getDataBuffer()).getData();
+		}
+		bricks.read(cube.name, axis, pixels);
+		return images;
+	}
+
+	private synchronized Request next() throws InterruptedException {
+		while(pending.isEmpty())
+			wait();
+		Request r = pending.removeFirst();
+		r.started = true;
+		return r;
+	}
+
+	private synchronized void finished(Request r) {
+		r.done = true;
+		notifyAll();
+	}
+
+	private synchronized void startThreads() {
+		if(threads != null)
+			return;
+		threads = new Thread[nThreads];
+		for(int i = 0; i < nThreads; i++) {
+			threads[i] = new Thread("BrickReader-" + i) {
+				public void run() {
+					while(true) {
+						Request r;
+						try {
+							r = next();
+						} catch(InterruptedException e) {
+							return;
+						}
+						try {
+							r.images = load(r.cube, r.axis);
+						} catch(IOException e) {
+							r.exception = e;
+						}
+						finished(r);
+					}
+				}
+			};
+			threads[i].setDaemon(true);
+			threads[i].setPriority(Thread.MIN_PRIORITY);
+			threads[i].start();
+		}
+	}
+
+	/**
+	 * Stop the background threads and drop all pending requests.
+	 * Later prefetches are ignored.
+	 */
+	public synchronized void close() {
+		closed = true;
+		cancel();
+		if(threads == null)
+			return;
+		for(int i = 0; i < threads.length; i++)
+			threads[i].interrupt();
+		threads = null;
+	}
+
+	private static String key(Cube cube, int axis) {
+		return cube.name + "/" + axis;
+	}
+}
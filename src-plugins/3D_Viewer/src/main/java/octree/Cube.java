@@ -1,7 +1,5 @@
 package octree;
 
-import java.io.File;
-
 import java.util.Arrays;
 import java.util.List;
 import javax.media.j3d.Canvas3D;
@@ -42,7 +40,7 @@ public Cube(VolumeOctree oct, String dir, int x, int y, int z, int l) {
 		this.z = z;
 		this.level = l;
 		this.name = x + "_" + y + "_" + z + "_" + l;
-		if(new File(this.dir + name + ".info").exists()) {
+		if(oct.bricks.contains(name)) {
 			this.cdata = new CubeData(this);
 
 			corners = new Point3d[8];
@@ -78,7 +76,7 @@ public Cube(VolumeOctree oct, String dir, int x, int y, int z, int l) {
 	public Cube createCube(VolumeOctree oct,
 			String dir, int x, int y, int z, int l) {
 		String name = x + "_" + y + "_" + z + "_" + l;
-		if(new File(dir, name + ".info").exists())
+		if(oct.bricks.contains(name))
 			return new Cube(oct, dir, x, y, z, l);
 		return null;
 	}
@@ -100,7 +98,7 @@ public void prepareForAxis(int axis, Point3d eyePosInLocal) {
 		}
 	}
 
-	private void calcDistSqFromEye(Point3d eyePosInLocal) {
+	void calcDistSqFromEye(Point3d eyePosInLocal) {
 		distSqFromEye =  eyePosInLocal.distanceSquared(midp);
 	}
 
@@ -137,14 +135,19 @@ public void hideSubtree() {
 		}
 	}
 
-	private void showSelf() {
+	void showSelf() {
 		if (!(this.visible)) {
 			this.cdata.show();
 			this.visible = true;
 		}
 	}
 
-	public void update(Canvas3D canvas, Transform3D volToIP) {
+	/**
+	 * Hides the cubes which are outside the canvas or whose resolution
+	 * is not sufficient, and collects the cubes which are to be shown
+	 * instead, but are not visible yet.
+	 */
+	public void update(Canvas3D canvas, Transform3D volToIP, List<Cube> toShow) {
 		if(octree.stopUpdating)
 			return;
 
@@ -163,10 +166,11 @@ public void update(Canvas3D canvas, Transform3D volToIP) {
 			hideSelf();
 			for (Cube localCube : this.children)
 				if (localCube != null)
-					localCube.update(canvas, volToIP);
+					localCube.update(canvas, volToIP, toShow);
 		} else {
 			hideSubtree();
-			showSelf();
+			if(!visible)
+				toShow.add(this);
 		}
 	}
 
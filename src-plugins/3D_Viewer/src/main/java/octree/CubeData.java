@@ -35,7 +35,7 @@ public class CubeData implements AxisConstants {
 
 	public CubeData(Cube c) {
 		this.cube = c;
-		readCalibration(c.dir + c.name + ".info", cal);
+		c.octree.bricks.readCalibration(c.name, cal);
 
 		min[0] = (float)(c.x * c.octree.pw);
 		min[1] = (float)(c.y * c.octree.ph);
@@ -96,11 +96,8 @@ public void hide() {
 	}
 
 	private void createData() throws IOException {
-		switch(axis) {
-			case X_AXIS: createImages(cube.dir + "/x/" + cube.name); break;
-			case Y_AXIS: createImages(cube.dir + "/y/" + cube.name); break;
-			case Z_AXIS: createImages(cube.dir + "/z/" + cube.name); break;
-		}
+		BufferedImage[] imgs = cube.octree.reader.get(cube, axis);
+		System.arraycopy(imgs, 0, images, 0, SIZE);
 	}
 
 	private void releaseData() {
@@ -128,15 +125,5 @@ public static final float[] readCalibration(String path, float[] ret) {
 		}
 		return ret;
 	}
-
-	private void createImages(String path) throws IOException {
-		DataInputStream is = new DataInputStream(new FileInputStream(path));
-		for(int i = 0; i < SIZE; i++) {
-			images[i] = new BufferedImage(SIZE, SIZE, B_IMG_TYPE);
-			byte[] pixels = ((DataBufferByte) images[i].getRaster().getDataBuffer()).getData();
-			is.readFully(pixels);
-		}
-		is.close();
-	}
 }
 
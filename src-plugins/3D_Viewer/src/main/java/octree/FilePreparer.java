@@ -2,157 +2,283 @@
 
 import java.io.RandomAccessFile;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.DataOutputStream;
 
-import java.util.Arrays;
-import java.util.Properties;
-import vib.NaiveResampler;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ij.IJ;
+
+/**
+ * Creates the bricks of a volume octree from a raw 8-bit image file.
+ *
+ * The source file is memory-mapped. Each brick of a coarser level is the
+ * average of its (up to 8) child bricks, which are built depth-first, so
+ * that all levels are created in a single pass over the source data while
+ * only a few bricks per level are held in memory. The subtrees below a
+ * fixed level are built in parallel. All bricks are written into a single
+ * container file, see BrickFile.
+ */
 public class FilePreparer {
 
-	private static final NaiveResampler.Averager accu = new NaiveResampler.Averager();
-
-	private static final class Volume {
-		private int w, h, d;
-		private double pw, ph, pd;
-		private long wh;
-		private RandomAccessFile ra;
+	/** The maximum number of bytes of the source file mapped at once */
+	private static final long CHUNK_SIZE = 1 << 30;
 
-		Volume(File file, int w, int h, int d,
-			double pw, double ph, double pd) throws IOException {
+	private static final class Source {
+		private final int w, h, d;
+		private final long wh;
+		private final int planesPerChunk;
+		private final MappedByteBuffer[] chunks;
 
-			ra = new RandomAccessFile(file, "rw");
+		Source(File file, int w, int h, int d) throws IOException {
 			this.w = w; this.h = h; this.d = d;
-			this.pw = pw; this.ph = ph; this.pd = pd;
-			this.wh = w * h;
-		}
-
-		final void close() throws IOException {
-			ra.close();
-		}
-
-		final int get(int x, int y, int z) throws IOException {
-			if(x < 0 || x >= w || y < 0 || y >= h || z < 0 || z >= d)
-				return 0;
-			long i = z * wh + y * w + x;
-			ra.seek(i);
-			return (int)(0xff & ra.readByte());
+			this.wh = (long)w * h;
+			if(wh > Integer.MAX_VALUE)
+				throw new IOException("Image planes too large");
+			planesPerChunk = (int)Math.max(1, CHUNK_SIZE / wh);
+			chunks = new MappedByteBuffer[
+				(d + planesPerChunk - 1) / planesPerChunk];
+			RandomAccessFile ra = new RandomAccessFile(file, "r");
+			try {
+				FileChannel fc = ra.getChannel();
+				for(int i = 0; i < chunks.length; i++) {
+					int z0 = i * planesPerChunk;
+					int n = Math.min(planesPerChunk, d - z0);
+					chunks[i] = fc.map(FileChannel.MapMode.READ_ONLY,
+						z0 * wh, n * wh);
+				}
+			} finally {
+				// the mapping stays valid
+				ra.close();
+			}
 		}
 
-		final void createBlock(int x, int y, int z, String dir, String file, int size) throws IOException {
+		final byte[] readBlock(int x, int y, int z, int size) {
 			byte[] blob = new byte[size * size * size];
+			int n = Math.min(size, w - x);
 			int i = 0;
 			for(int iz = 0; iz < size && z + iz < d; iz++) {
-				for(int iy = 0; iy < size && y + iy < h; iy++, i += size) {
-					int n = Math.min(size, w - x);
-					long pos = (z + iz) * wh + (y + iy) * w + x;
-					ra.seek(pos);
-					ra.readFully(blob, i, n);
+				int zz = z + iz;
+				ByteBuffer chunk = chunks[zz / planesPerChunk].duplicate();
+				long plane = (zz % planesPerChunk) * wh;
+				for(int iy = 0; iy < size; iy++, i += size) {
+					if(y + iy >= h)
+						continue;
+					chunk.position((int)(plane + (long)(y + iy) * w + x));
+					chunk.get(blob, i, n);
 				}
 			}
+			return blob;
+		}
+	}
 
-			DataOutputStream fos = new DataOutputStream(
-				new FileOutputStream(dir + "/" + file + ".info"));
-			fos.writeFloat((float)pw);
-			fos.writeFloat((float)ph);
-			fos.writeFloat((float)pd);
-			fos.close();
-
-			writeBlob(blob, dir + "/z/" + file);
+	/** The dimensions of the levels of the octree */
+	private static final class Levels {
+		final int size, n;
+		final int[][] bricks, factor;
+		final float[][] cal;
+
+		Levels(int size, int w, int h, int d,
+				double pw, double ph, double pd) {
+			this.size = size;
+			int[] dm = new int[] {w, h, d};
+			double[] c = new double[] {pw, ph, pd};
+			int l = 1;
+			while(true) {
+				boolean last = true;
+				for(int i = 0; i < 3; i++)
+					if(dm[i] > size)
+						last = false;
+				if(last)
+					break;
+				for(int i = 0; i < 3; i++)
+					dm[i] = nextPow2(dm[i]) / (dm[i] > size ? 2 : 1);
+				l++;
+			}
+			n = l;
+			bricks = new int[n][3];
+			factor = new int[n][3];
+			cal = new float[n][3];
+			dm = new int[] {w, h, d};
+			for(l = 0; l < n; l++) {
+				for(int i = 0; i < 3; i++) {
+					bricks[l][i] = (dm[i] + size - 1) / size;
+					factor[l][i] = dm[i] > size ? 2 : 1;
+					cal[l][i] = (float)c[i];
+				}
+				for(int i = 0; i < 3; i++) {
+					if(factor[l][i] == 2)
+						dm[i] = nextPow2(dm[i]) / 2;
+					c[i] *= factor[l][i];
+				}
+			}
+		}
 
-			byte[] b = createYBlobFromZ(blob, size);
-			writeBlob(b, dir + "/y/" + file);
+		int count(int l) {
+			return bricks[l][0] * bricks[l][1] * bricks[l][2];
+		}
 
-			b = createXBlobFromZ(blob, size);
-			writeBlob(b, dir + "/x/" + file);
+		String name(int l, int bx, int by, int bz) {
+			int level = 1 << l;
+			return (bx * size * level) + "_" + (by * size * level) +
+				"_" + (bz * size * level) + "_" + level;
 		}
+	}
 
-		final void writeBlob(byte[] blob, String file) throws IOException {
-			DataOutputStream fos = new DataOutputStream(
-				new FileOutputStream(file));
-			fos.write(blob, 0, blob.length);
-			fos.close();
+	private static final class Builder {
+		private final Source src;
+		private final Levels levels;
+		private final BrickFile.Writer out;
+		private final int size;
+
+		/* The bricks below this level are built in parallel */
+		private int taskLevel;
+		private byte[][] taskBricks;
+
+		Builder(Source src, Levels levels, BrickFile.Writer out) {
+			this.src = src;
+			this.levels = levels;
+			this.out = out;
+			this.size = levels.size;
 		}
 
-		static final byte[] createYBlobFromZ(byte[] blob, int size) {
-			byte[] ret = new byte[blob.length];
-			int s2 = size * size;
-			for(int y = 0; y < size; y++) {
-				for(int z = 0; z < size; z++) {
-					System.arraycopy(blob,
-						z * s2 + y * size,
-						ret,
-						y * s2 + z * size,
-						size);
+		void run(int nThreads) throws IOException {
+			int top = levels.n - 1;
+			taskLevel = 0;
+			for(int l = top; l >= 0; l--) {
+				if(levels.count(l) >= 4 * nThreads) {
+					taskLevel = l;
+					break;
 				}
 			}
-			return ret;
-		}
-
-		static final byte[] createXBlobFromZ(byte[] blob, int size) {
-			byte[] ret = new byte[blob.length];
-			int s2 = size * size;
-			for(int z = 0; z < size; z++) {
-				for(int y = 0; y < size; y++) {
-					for(int x = 0; x < size; x++) {
-						ret[x * s2 + z * size + y] = blob[z * s2 + y * size + x];
+			final int[] nb = levels.bricks[taskLevel];
+			final int nTasks = levels.count(taskLevel);
+			final boolean keep = taskLevel < top;
+			taskBricks = new byte[nTasks][];
+
+			final AtomicInteger ai = new AtomicInteger(0);
+			final AtomicInteger done = new AtomicInteger(0);
+			final Throwable[] failure = new Throwable[1];
+			Thread[] threads = new Thread[Math.min(nThreads, nTasks)];
+			for(int ithread = 0; ithread < threads.length; ithread++) {
+				threads[ithread] = new Thread() {
+					public void run() {
+						try {
+							for(int t = ai.getAndIncrement(); t < nTasks;
+									t = ai.getAndIncrement()) {
+								synchronized(failure) {
+									if(failure[0] != null)
+										return;
+								}
+								byte[] b = build(taskLevel,
+									t % nb[0],
+									(t / nb[0]) % nb[1],
+									t / (nb[0] * nb[1]));
+								if(keep)
+									taskBricks[t] = b;
+								IJ.showProgress(done.incrementAndGet(),
+									nTasks);
+							}
+						} catch(Throwable e) {
+							synchronized(failure) {
+								if(failure[0] == null)
+									failure[0] = e;
+							}
+						}
 					}
-				}
+				};
+				threads[ithread].start();
+			}
+			try {
+				for(int ithread = 0; ithread < threads.length; ithread++)
+					threads[ithread].join();
+			} catch(InterruptedException e) {
+				for(int ithread = 0; ithread < threads.length; ithread++)
+					threads[ithread].interrupt();
+				throw new InterruptedIOException();
 			}
-			return ret;
+			if(failure[0] instanceof IOException)
+				throw (IOException)failure[0];
+			if(failure[0] instanceof RuntimeException)
+				throw (RuntimeException)failure[0];
+			if(failure[0] != null)
+				throw new RuntimeException(failure[0]);
+
+			if(keep)
+				build(top, 0, 0, 0);
 		}
 
-		final void downsample(String file, int fx, int fy, int fz) throws IOException {
-			FileOutputStream out = new FileOutputStream(file);
-
-			int ws = nextPow2(w), hs = nextPow2(h), ds = nextPow2(d);
-			int wn = ws / fx, hn = hs / fy, dn = ds / fz;
-			byte[] bytes = new byte[wn];
-			byte[][] cache = new byte[fz * fy][ws];
-			for(int tmp = 0; tmp < fz*fy; tmp++)
-				Arrays.fill(cache[tmp], (byte)0);
-			int z = 0, y = 0;
-			for(z = 0; z < ds; z += fz) {
-				// update cache
-				System.arraycopy(cache, fy, cache, 0, (fz - 1) * fy);
-				for(int ytmp = 0; ytmp < fy; ytmp++) {
-					Arrays.fill(cache[(fz - 1) * fy], (byte)0);
-					if(y + ytmp < h) {
-						long pos = z * wh + (y + ytmp) * w;
-						ra.seek(pos);
-						ra.readFully(cache[(fz - 1) * fy]);
-					}
-				}
+		/**
+		 * Returns the given brick of level l (in z-orientation),
+		 * after writing it.
+		 */
+		private byte[] build(int l, int bx, int by, int bz)
+					throws IOException {
+			byte[] blob;
+			if(l == 0) {
+				blob = src.readBlock(bx * size, by * size, bz * size, size);
+			} else {
+				int[] f = levels.factor[l - 1];
+				int[] nb = levels.bricks[l - 1];
+				blob = new byte[size * size * size];
+				for(int cz = 0; cz < f[2]; cz++)
+					for(int cy = 0; cy < f[1]; cy++)
+						for(int cx = 0; cx < f[0]; cx++)
+							addChild(l - 1, bx * f[0] + cx,
+								by * f[1] + cy, bz * f[2] + cz,
+								nb, f, cx, cy, cz, blob);
+			}
+			float[] cal = levels.cal[l];
+			out.add(levels.name(l, bx, by, bz),
+				cal[0], cal[1], cal[2], blob);
+			return blob;
+		}
 
-				for(y = 0; y < hs; y += fy) {
-					// update cache
-					for(int ztmp = 0; ztmp < fz; ztmp++) {
-						System.arraycopy(cache, ztmp * fy + 1, cache, ztmp * fy, fy - 1);
-						Arrays.fill(cache[ztmp + fy - 1], (byte)0);
-						if(z + ztmp < d) {
-							long pos = (z+ztmp) * wh + (y+fy-1) * w;
-							ra.seek(pos);
-							ra.readFully(cache[ztmp + fy - 1]);
-						}
-					}
+		/**
+		 * Averages the child brick (x, y, z) of level l into the
+		 * part (cx, cy, cz) of the given parent brick. Missing children,
+		 * which lie outside the volume, leave the part at 0.
+		 */
+		private void addChild(int l, int x, int y, int z,
+				int[] nb, int[] f, int cx, int cy, int cz,
+				byte[] parent) throws IOException {
+			if(x >= nb[0] || y >= nb[1] || z >= nb[2])
+				return;
+			byte[] child;
+			int t = (z * nb[1] + y) * nb[0] + x;
+			if(l == taskLevel && taskBricks[t] != null) {
+				// built in parallel before
+				child = taskBricks[t];
+				taskBricks[t] = null;
+			} else {
+				child = build(l, x, y, z);
+			}
 
-					for(int x = 0; x < ws; x += fx) {
-						accu.reset();
-						for(int k = 0; k < fz; k++) {
-							int iz = z + k;
+			int fx = f[0], fy = f[1], fz = f[2];
+			int n = fx * fy * fz;
+			int s2 = size * size;
+			int wx = size / fx, wy = size / fy, wz = size / fz;
+			for(int pz = 0; pz < wz; pz++) {
+				for(int py = 0; py < wy; py++) {
+					int pi = (cz * wz + pz) * s2 +
+						(cy * wy + py) * size + cx * wx;
+					for(int px = 0; px < wx; px++, pi++) {
+						int sum = 0;
+						for(int k = 0; k < fz; k++)
 							for(int j = 0; j < fy; j++) {
-								int iy = y + j;
-								for(int i = 0; i < fx; i++) {
-									int ix = x + i;
-									accu.add((int)(0xff & cache[k * fy + j][ix]));
-								}
+								int ci = (pz * fz + k) * s2 +
+									(py * fy + j) * size + px * fx;
+								for(int i = 0; i < fx; i++)
+									sum += child[ci + i] & 0xff;
 							}
-						}
-						bytes[x / fx] = (byte)accu.get();
+						parent[pi] = (byte)(sum / n);
 					}
-					out.write(bytes, 0, wn);
 				}
 			}
 		}
@@ -161,49 +287,27 @@ final void downsample(String file, int fx, int fy, int fz) throws IOException {
 	public static final void createFiles(String path, int size, String dir,
 			int w, int h, int d,
 			double pw, double ph, double pd) throws IOException {
+		createFiles(path, size, dir, w, h, d, pw, ph, pd,
+			Runtime.getRuntime().availableProcessors());
+	}
 
-		int wOrg = w, hOrg = h, dOrg = d;
-		double pwOrg = pw, phOrg = ph, pdOrg = pd;
-		int level = 1;
-
-		new File(dir, "x").mkdir();
-		new File(dir, "y").mkdir();
-		new File(dir, "z").mkdir();
-
-		while(true) {
-			File file = new File(path);
-			Volume v = new Volume(file, w, h, d, pw, ph, pd);
-			for(int z = 0; z < d; z += size) {
-				for(int y = 0; y < h; y += size) {
-					for(int x = 0; x < w; x += size) {
-						String n = (x*level) + "_" + (y*level) + "_" + (z*level) + "_" + level;
-						v.createBlock(x, y, z, dir, n, size);
-					}
-				}
-			}
-			int fx = w > size ? 2 : 1;
-			int fy = h > size ? 2 : 1;
-			int fz = d > size ? 2 : 1;
-
-			if(fx == 1 && fy == 1 && fz == 1)
-				break;
-
-			File downs = new File(dir, file.getName() + ".l" + level);
-			v.downsample(downs.getPath(), fx, fy, fz);
-			v.close();
-			pw *= fx;
-			ph *= fy;
-			pd *= fz;
-			w = nextPow2(w) / fx;
-			h = nextPow2(h) / fy;
-			d = nextPow2(d) / fz;
-
-			if(level > 1)
-				file.delete();
-			path = downs.getPath();
-			level <<= 1;
+	public static final void createFiles(String path, int size, String dir,
+			int w, int h, int d,
+			double pw, double ph, double pd,
+			int nThreads) throws IOException {
+
+		Levels levels = new Levels(size, w, h, d, pw, ph, pd);
+		Source src = new Source(new File(path), w, h, d);
+		BrickFile.Writer out = new BrickFile.Writer(
+			new File(dir, BrickFile.FILE_NAME), size);
+		try {
+			new Builder(src, levels, out).run(Math.max(1, nThreads));
+			out.finish();
+		} finally {
+			out.close();
 		}
-		writeProperties(wOrg, hOrg, dOrg, pwOrg, phOrg, pdOrg, level, dir + "/props.txt");
+		writeProperties(w, h, d, pw, ph, pd,
+			1 << (levels.n - 1), dir + "/props.txt");
 	}
 
 	private static final void writeProperties(int w, int h, int d,
@@ -231,4 +335,3 @@ private static final int nextPow2(int n) {
 		return retval;
 	}
 }
-
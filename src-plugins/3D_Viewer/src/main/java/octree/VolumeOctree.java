@@ -5,11 +5,13 @@
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Collections;
 import java.util.Properties;
 
 import javax.media.j3d.BoundingSphere;
@@ -45,6 +47,9 @@ public class VolumeOctree implements UniverseListener, AxisConstants {
 	private final BranchGroup rootBranchGroup;
 	private final UpdaterThread updater;
 
+	final BrickFile bricks;
+	final BrickReader reader;
+
 	int curAxis = Z_AXIS;
 	int curDir = BACK;
 
@@ -96,6 +101,10 @@ public VolumeOctree(String imageDir, Canvas3D canvas) throws RuntimeException {
 			ph = Float.parseFloat(props.getProperty("pixelHeight"));
 			pd = Float.parseFloat(props.getProperty("pixelDepth"));
 
+			bricks = BrickFile.open(imageDir, SIZE);
+			reader = new BrickReader(bricks,
+				Runtime.getRuntime().availableProcessors());
+
 			rootCube = new Cube(this, imageDir, 0, 0, 0, maxLevel);
 			rootCube.createChildren();
 
@@ -330,7 +339,22 @@ public void contentRemoved(Content c){}
 	public void contentChanged(Content c){}
 	public void contentSelected(Content c){}
 	public void canvasResized(){}
-	public void universeClosed(){}
+	public void universeClosed() {
+		close();
+	}
+
+	/**
+	 * Stop the threads reading bricks in the background and close the
+	 * brick file. The octree cannot be displayed any more afterwards.
+	 */
+	public void close() {
+		reader.close();
+		try {
+			bricks.close();
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
 
 	private static Transform3D parentInv = new Transform3D();
 	private static Point3d viewPosition = new Point3d();
@@ -420,7 +444,18 @@ public void run() {
 						}
 						System.out.println("updateCubes");
 						stopUpdating = false;
-						rootCube.update(canvas, runningT);
+						List<Cube> toShow = new ArrayList<Cube>();
+						rootCube.update(canvas, runningT, toShow);
+						// load the nearest cubes first
+						for(Cube c : toShow)
+							c.calcDistSqFromEye(runningEyePosInLocal);
+						Collections.sort(toShow);
+						reader.prefetch(toShow, curAxis);
+						for(Cube c : toShow) {
+							if(stopUpdating)
+								break;
+							c.showSelf();
+						}
 						setWhichChild(DETAIL_AXIS);
 						System.out.println("updateCubes finished");
 					}
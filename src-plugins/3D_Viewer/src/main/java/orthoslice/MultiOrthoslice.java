@@ -85,6 +85,15 @@ protected void loadAxis(int axis, int index, Group front, Group back) {
 			super.loadAxis(axis, index, front, back);
 	}
 
+	/**
+	 * Overwrites hasTextures() in VolumeRenderer, since the slices of
+	 * all axes are displayed at the same time.
+	 */
+	@Override
+	protected boolean hasTextures(int axis) {
+		return true;
+	}
+
 	/**
 	 * Override eyePtChanged() in VolumeRenderer to always show all
 	 * slices.
@@ -73,6 +73,15 @@ protected void loadAxis(int axis) {
 		loadAxis(axis, i, front, back);
 	} 
 
+	/**
+	 * Overwrites hasTextures() in VolumeRenderer, since the slices of
+	 * all axes are displayed at the same time.
+	 */
+	@Override
+	protected boolean hasTextures(int axis) {
+		return true;
+	}
+
 	/**
 	 * Override eyePtChanged() in VolumeRenderer to always show all
 	 * slices.
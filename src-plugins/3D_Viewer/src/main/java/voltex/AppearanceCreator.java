@@ -166,7 +166,22 @@ public void updateTextureMode() {
 	 * @return
 	 */
 	public Appearance getAppearance(int direction, int index) {
+		return getAppearance(direction, index, true);
+	}
+
+	/**
+	 * Returns the Appearance object for the specified direction and index.
+	 * If textured is false, the texture is left empty; it can be set
+	 * later on via the first TextureUnitState.
+	 * @param direction
+	 * @param index
+	 * @param textured
+	 * @return
+	 */
+	public Appearance getAppearance(int direction, int index,
+						boolean textured) {
 		Appearance a = new Appearance();
+		a.setCapability(Appearance.ALLOW_TEXTURE_UNIT_STATE_READ);
 		a.setCapability(Appearance.ALLOW_TEXTURE_UNIT_STATE_WRITE);
 		a.setCapability(Appearance.ALLOW_TEXTURE_WRITE);
 		a.setCapability(Appearance.ALLOW_TEXGEN_WRITE);
@@ -178,7 +193,7 @@ public Appearance getAppearance(int direction, int index) {
 
 		TextureUnitState[] tus = new TextureUnitState[2];
 		tus[0] = new TextureUnitState(
-			getTexture(direction, index, volume),
+			textured ? getTexture(direction, index, volume) : null,
 			texAttr,
 			getTg(direction));
 		tus[0].setCapability(TextureUnitState.ALLOW_STATE_WRITE);
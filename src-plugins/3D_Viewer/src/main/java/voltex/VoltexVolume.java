@@ -10,6 +10,9 @@
 import java.awt.image.Raster;
 import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import ij.ImagePlus;
 import ij3d.Volume;
@@ -28,6 +31,11 @@
  * Depending on these settings, and on the type of image given at construction
  * time, the returned data type is one of INT_DATA or BYTE_DATA.
  *
+ * The texture data is stored once, as xy-slices. The xz- and yz-slices
+ * needed for rendering along the y- and x-axis are copied from the
+ * xy-slices when they are first requested, and are kept only as long as
+ * they are in use, plus a small number of recently used slices.
+ *
  * @author Benjamin Schmid
  */
 public class VoltexVolume extends Volume {
@@ -51,13 +59,16 @@ public class VoltexVolume extends Volume {
 
 	private ImageUpdater updater = new ImageUpdater();
 
+	/** The number of unused xz- and yz-slices which are kept in memory */
+	public static final int DEFAULT_SLICE_CACHE_SIZE = 16;
+
+	private int sliceCacheSize = DEFAULT_SLICE_CACHE_SIZE;
+
 	private byte[][] xy;
-	private byte[][] xz;
-	private byte[][] yz;
 
 	private ImageComponent2D[] xyComp;
-	private ImageComponent2D[] xzComp;
-	private ImageComponent2D[] yzComp;
+	private SliceCache xzCache;
+	private SliceCache yzCache;
 
 	/**
 	 * Initializes this Volume with the specified image.
@@ -111,21 +122,17 @@ public void setImage(ImagePlus imp, boolean[] ch) {
 	public void clear() {
 		super.clear();
 		xy = null;
-		xz = null;
-		yz = null;
 		xyComp = null;
-		xzComp = null;
-		yzComp = null;
+		xzCache = null;
+		yzCache = null;
 	}
 
 	public void swap(String path) {
 		super.swap(path);
 		xy = null;
-		xz = null;
-		yz = null;
 		xyComp = null;
-		xzComp = null;
-		yzComp = null;
+		xzCache = null;
+		yzCache = null;
 	}
 
 	public void restore(String path) {
@@ -143,10 +150,9 @@ public void restore(String path) {
 	private void createImageComponents() {
 		for(int z = 0; z < zDim; z++)
 			xyComp[z] = compCreator.createImageComponent(xy[z], xTexSize, yTexSize);
-		for(int y = 0; y < yDim; y++)
-			xzComp[y] = compCreator.createImageComponent(xz[y], xTexSize, zTexSize);
-		for(int x = 0; x < xDim; x++)
-			yzComp[x] = compCreator.createImageComponent(yz[x], yTexSize, zTexSize);
+		int bytesPerPixel = dataType == INT_DATA ? 4 : 1;
+		xzCache = new SliceCache(true, bytesPerPixel);
+		yzCache = new SliceCache(false, bytesPerPixel);
 	}
 
 	public void updateData() {
@@ -154,14 +160,8 @@ public void updateData() {
 			loadZ(z, xy[z]);
 			xyComp[z].updateData(updater, 0, 0, xTexSize, yTexSize);
 		}
-		for(int y = 0; y < yDim; y++) {
-			loadY(y, xz[y]);
-			xzComp[y].updateData(updater, 0, 0, xTexSize, zTexSize);
-		}
-		for(int x = 0; x < xDim; x++) {
-			loadX(x, yz[x]);
-			yzComp[x].updateData(updater, 0, 0, yTexSize, zTexSize);
-		}
+		xzCache.update();
+		yzCache.update();
 	}
 
 	public ImageComponent2D getImageComponentZ(int index) {
@@ -169,11 +169,28 @@ public ImageComponent2D getImageComponentZ(int index) {
 	}
 
 	public ImageComponent2D getImageComponentY(int index) {
-		return xzComp[index];
+		return xzCache.get(index);
 	}
 
 	public ImageComponent2D getImageComponentX(int index) {
-		return yzComp[index];
+		return yzCache.get(index);
+	}
+
+	/**
+	 * Returns the number of xz- and yz-slices which are kept in memory
+	 * after they are no longer used for rendering.
+	 */
+	public int getSliceCacheSize() {
+		return sliceCacheSize;
+	}
+
+	/**
+	 * Set the number of xz- and yz-slices which are kept in memory
+	 * after they are no longer used for rendering. Slices which are
+	 * not kept are copied again from the xy-slices when needed.
+	 */
+	public void setSliceCacheSize(int n) {
+		sliceCacheSize = Math.max(0, n);
 	}
 
 	public void setNoCheckNoUpdate(int x, int y, int z, int v) {
@@ -291,26 +308,6 @@ private void loadZ(int z, byte[] dst) {
 		voltexLoader.loadZ(z, dst);
 	}
 
-	/**
-	 * Loads a xz-slice at the given y position.
-	 * @param y
-	 * @param dst must be an byte[] array of the correct length.
-	 * (If the data type is INT_DATA, it must be 4 times as long).
-	 */
-	private void loadY(int y, byte[] dst) {
-		voltexLoader.loadY(y, dst);
-	}
-
-	/**
-	 * Loads a yz-slice at the given x position.
-	 * @param x
-	 * @param dst must be an byte[] array of the correct length.
-	 * (If the data type is INT_DATA, it must be 4 times as long).
-	 */
-	private void loadX(int x, byte[] dst) {
-		voltexLoader.loadX(x, dst);
-	}
-
 	private static final ColorModel createGreyColorModel() {
 		byte[] r = new byte[256], g = new byte[256], b = new byte[256];
 		for(int i = 0; i < 256; i++)
@@ -335,6 +332,104 @@ public void updateData(ImageComponent2D comp, int x, int y, int w, int h) {
 		}
 	}
 
+	/* **********************************************************************
+	 * The cache for the xz- and yz-slices
+	 ***********************************************************************/
+
+	/**
+	 * Creates the ImageComponent2Ds of the xz- or yz-slices on demand,
+	 * copying the data from the xy-slices. Slices are referenced weakly,
+	 * so that they are garbage collected once no texture uses them any
+	 * more; the most recently requested ones are additionally kept in a
+	 * small LRU cache. Slices which are still in use are updated together
+	 * with the xy-slices.
+	 */
+	private final class SliceCache {
+
+		/** true for xz-slices, false for yz-slices */
+		private final boolean xz;
+		private final int bytesPerPixel;
+		private final int w, h, length;
+
+		private final WeakReference<ImageComponent2D>[] slices;
+		private final LinkedHashMap<Integer, ImageComponent2D> recent;
+
+		@SuppressWarnings("unchecked")
+		SliceCache(boolean xz, int bytesPerPixel) {
+			this.xz = xz;
+			this.bytesPerPixel = bytesPerPixel;
+			w = xz ? xTexSize : yTexSize;
+			h = zTexSize;
+			length = xz ? xDim : yDim;
+			slices = new WeakReference[xz ? yDim : xDim];
+			recent = new LinkedHashMap<Integer, ImageComponent2D>(
+					16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(
+					Map.Entry<Integer, ImageComponent2D> e) {
+					return size() > sliceCacheSize;
+				}
+			};
+		}
+
+		synchronized ImageComponent2D get(int index) {
+			ImageComponent2D comp = getIfPresent(index);
+			if(comp == null) {
+				byte[] pix = new byte[bytesPerPixel * w * h];
+				for(int z = 0; z < zDim; z++)
+					for(int u = 0; u < length; u++)
+						copy(index, u, z, pix);
+				comp = compCreator.createImageComponent(pix, w, h);
+				slices[index] = new WeakReference<ImageComponent2D>(comp);
+			}
+			recent.put(index, comp);
+			return comp;
+		}
+
+		/**
+		 * Copy all slices which are in use from the xy-slices.
+		 */
+		synchronized void update() {
+			for(int i = 0; i < slices.length; i++) {
+				ImageComponent2D comp = getIfPresent(i);
+				if(comp == null)
+					continue;
+				byte[] pix = getPixels(comp);
+				for(int z = 0; z < zDim; z++)
+					for(int u = 0; u < length; u++)
+						copy(i, u, z, pix);
+				comp.updateData(updater, 0, 0, w, h);
+			}
+		}
+
+		/**
+		 * Copy a single pixel from the xy-slices, if the slice
+		 * with the given index is in use.
+		 */
+		synchronized void update(int index, int u, int z) {
+			ImageComponent2D comp = getIfPresent(index);
+			if(comp == null)
+				return;
+			copy(index, u, z, getPixels(comp));
+			comp.updateData(updater, u, z, 1, 1);
+		}
+
+		private ImageComponent2D getIfPresent(int index) {
+			return slices[index] == null ? null : slices[index].get();
+		}
+
+		private void copy(int index, int u, int z, byte[] dst) {
+			int src = xz ? index * xTexSize + u : u * xTexSize + index;
+			System.arraycopy(xy[z], bytesPerPixel * src,
+				dst, bytesPerPixel * (z * w + u), bytesPerPixel);
+		}
+
+		private byte[] getPixels(ImageComponent2D comp) {
+			return ((DataBufferByte)comp.getImage().getRaster()
+				.getDataBuffer()).getData();
+		}
+	}
+
 	/* **********************************************************************
 	 * The ComponentCreator interface and implementing classes
 	 ***********************************************************************/
@@ -347,8 +442,6 @@ private abstract class ComponentCreator {
 
 		ComponentCreator() {
 			xyComp = new ImageComponent2D[zDim];
-			xzComp = new ImageComponent2D[yDim];
-			yzComp = new ImageComponent2D[xDim];
 		}
 
 		/**
@@ -373,6 +466,7 @@ ImageComponent2D createImageComponent(byte[] pix, int w, int h) {
 			ImageComponent2D bComp = new ImageComponent2D(
 					ImageComponent.FORMAT_CHANNEL8, w, h, true, true);
 			bComp.setCapability(ImageComponent.ALLOW_IMAGE_WRITE);
+			bComp.setCapability(ImageComponent.ALLOW_IMAGE_READ);
 			bComp.set(bImage);
 			return bComp;
 		}
@@ -394,6 +488,7 @@ ImageComponent2D createImageComponent(byte[] pix, int w, int h) {
 			ImageComponent2D bComp = new ImageComponent2D(
 					ImageComponent.FORMAT_RGBA, w, h, true, true);
 			bComp.setCapability(ImageComponent.ALLOW_IMAGE_WRITE);
+			bComp.setCapability(ImageComponent.ALLOW_IMAGE_READ);
 			bComp.set(bImage);
 			return bComp;
 		}
@@ -413,18 +508,6 @@ protected interface VoltexLoader extends Loader {
 		 */
 		void loadZ(int z, byte[] dst);
 
-		/**
-		 * Loads an xz-slice, with the given y value
-		 * (x changes fastest) and stores the data in the provided object
-		 */
-		void loadY(int y, byte[] dst);
-
-		/**
-		 * Loads an yz-slice, with the given x value
-		 * (y changes fastest) and stores the data in the provided object
-		 */
-		void loadX(int x, byte[] dst);
-
 		/**
 		 * Only set the values, without updating the ImageComponent2Ds.
 		 */
@@ -441,8 +524,6 @@ private final class VoltexByteLoader implements VoltexLoader {
 		public VoltexByteLoader(ByteLoader l) {
 			this.l = l;
 			xy = new byte[zDim][xTexSize * yTexSize];
-			xz = new byte[yDim][xTexSize * zTexSize];
-			yz = new byte[xDim][yTexSize * zTexSize];
 		}
 
 		public int load(int x, int y, int z) {
@@ -457,11 +538,9 @@ public void setNoCheck(int x, int y, int z, int v) {
 			l.setNoCheck(x, y, z, v);
 			v = l.loadWithLUT(x, y, z);
 			xy[z][y * xTexSize + x] = (byte)v;
-			xz[y][z * xTexSize + x] = (byte)v;
-			yz[x][z * yTexSize + y] = (byte)v;
 			xyComp[z].updateData(updater, x, y, 1, 1);
-			xzComp[y].updateData(updater, x, z, 1, 1);
-			yzComp[x].updateData(updater, y, z, 1, 1);
+			xzCache.update(y, x, z);
+			yzCache.update(x, y, z);
 		}
 
 		public void setNoCheckNoUpdate(int x, int y, int z, int v) {
@@ -483,21 +562,6 @@ public void loadZ(int z, byte[] d) {
 			}
 		}
 
-		public void loadY(int y, byte[] d)  {
-			for (int z = 0; z < zDim; z++) {
-				int offs = z * xTexSize;
-				for(int x = 0; x < xDim; x++)
-					d[offs++] = (byte)l.loadWithLUT(x, y, z);
-			}
-		}
-
-		public void loadX(int x, byte[] d)  {
-			for (int z = 0; z < zDim; z++) {
-				int offs = z * yTexSize;
-				for (int y = 0; y < yDim; y++)
-					d[offs++] = (byte)l.loadWithLUT(x, y, z);
-			}
-		}
 	}
 
 	/**
@@ -510,8 +574,6 @@ private final class VoltexIntLoader implements VoltexLoader {
 		VoltexIntLoader(IntLoader l) {
 			this.l = l;
 			xy = new byte[zDim][4 * xTexSize * yTexSize];
-			xz = new byte[yDim][4 * xTexSize * zTexSize];
-			yz = new byte[xDim][4 * yTexSize * zTexSize];
 		}
 
 		public void setLoader(IntLoader l) {
@@ -546,19 +608,8 @@ public void setNoCheck(int x, int y, int z, int v) {
 			xy[z][i++] = (byte)a;
 			xyComp[z].updateData(updater, x, y, 1, 1);
 
-			i = 4 * (z * xTexSize + x);
-			xz[y][i++] = (byte)r;
-			xz[y][i++] = (byte)g;
-			xz[y][i++] = (byte)b;
-			xz[y][i++] = (byte)a;
-			xzComp[y].updateData(updater, x, z, 1, 1);
-
-			i = 4 * (z * yTexSize + y);
-			yz[x][i++] = (byte)r;
-			yz[x][i++] = (byte)g;
-			yz[x][i++] = (byte)b;
-			yz[x][i++] = (byte)a;
-			yzComp[x].updateData(updater, y, z, 1, 1);
+			xzCache.update(y, x, z);
+			yzCache.update(x, y, z);
 		}
 
 		public void set(int x, int y, int z, int v) {
@@ -584,40 +635,6 @@ public void loadZ(int zValue, byte[] dst) {
 				}
 			}
 		}
-
-		public void loadY(int yValue, byte[] dst)  {
-			for (int z=0; z < zDim; z++){
-				int offsDst = z * xTexSize * 4;
-				for(int x = 0; x < xDim; x++) {
-					int c = l.loadWithLUT(x, yValue, z);
-					int a = (c & 0xff000000) >> 24;
-					int r = (c & 0xff0000) >> 16;
-					int g = (c & 0xff00) >> 8;
-					int b = c & 0xff;
-					dst[offsDst++] = (byte)r;
-					dst[offsDst++] = (byte)g;
-					dst[offsDst++] = (byte)b;
-					dst[offsDst++] = (byte)a;
-				}
-			}
-		}
-
-		public void loadX(int xValue, byte[] dst)  {
-			for (int z=0; z < zDim; z++){
-				int offsDst = z * yTexSize * 4;
-				for (int y=0; y < yDim; y++){
-					int c = l.loadWithLUT(xValue, y, z);
-					int a = (c & 0xff000000) >> 24;
-					int r = (c & 0xff0000) >> 16;
-					int g = (c & 0xff00) >> 8;
-					int b = c & 0xff;
-					dst[offsDst++] = (byte)r;
-					dst[offsDst++] = (byte)g;
-					dst[offsDst++] = (byte)b;
-					dst[offsDst++] = (byte)a;
-				}
-			}
-		}
 	}
 }
 
@@ -53,6 +53,12 @@ public class VolumeRenderer implements AxisConstants {
 	/** The current direction of view */
 	private int curDir = FRONT;
 
+	/** The mask created by createMask(), if any */
+	private Mask mask;
+
+	/** Whether textures are enabled, see disableTextures() */
+	private boolean texturesEnabled = true;
+
 	/**
 	 * Constructor.
 	 * Initializes this VolumeRenderer with the given image, color,
@@ -97,6 +103,7 @@ public VolumeRenderer(ImagePlus img, Color3f color,
 	}
 
 	public void disableTextures() {
+		texturesEnabled = false;
 		int[] size = new int[] {volume.xDim, volume.yDim, volume.zDim};
 
 		Appearance empty = new Appearance();
@@ -118,10 +125,12 @@ public void disableTextures() {
 	}
 
 	public void enableTextures() {
+		texturesEnabled = true;
 		int[] size = new int[] {volume.xDim, volume.yDim, volume.zDim};
 		for(int axis = 0; axis < 3; axis++) {
 			for(int i = 0; i < size[axis]; i++) {
-				Appearance app = appCreator.getAppearance(axis, i);
+				Appearance app = appCreator.getAppearance(
+					axis, i, hasTextures(axis));
 				Group frontGroup = (Group)axisSwitch.
 					getChild(axisIndex[axis][FRONT]);
 				((Shape3D)((Group)frontGroup.
@@ -163,11 +172,42 @@ public Appearance getAppearance(int axis, int index) {
 			getChild(index)).getChild(0)).getAppearance();
 	}
 
+	/**
+	 * Returns whether the slices of the given axis have textures.
+	 * The textures of the z-axis share their data with the volume,
+	 * those of the x- and y-axis are copied from it and are
+	 * therefore only loaded while the axis is displayed.
+	 * Subclasses which display several axes at once must return true.
+	 */
+	protected boolean hasTextures(int axis) {
+		return axis == Z_AXIS || axis == curAxis;
+	}
+
+	/**
+	 * Load or release the textures (and the mask textures) of all
+	 * slices of the given axis.
+	 */
+	private void setTextures(int axis, boolean b) {
+		if(!texturesEnabled)
+			return;
+		int[] size = new int[] {volume.xDim, volume.yDim, volume.zDim};
+		for(int i = 0; i < size[axis]; i++) {
+			Appearance app = getAppearance(axis, i);
+			app.getTextureUnitState(0).setTexture(b ?
+				appCreator.getTexture(axis, i) : null);
+			if(mask != null && app.getTextureUnitCount() > 1 &&
+					app.getTextureUnitState(1) != null)
+				app.getTextureUnitState(1).setTexture(b ?
+					appCreator.getTexture(axis, i, mask) :
+					null);
+		}
+	}
+
 	/**
 	 * Create a mask to this volume.
 	 */
 	public Mask createMask() {
-		Mask mask = new Mask(volume, root);
+		mask = new Mask(volume, root);
 
 		Group frontGroup = null;
 		Group backGroup = null;
@@ -177,10 +217,14 @@ public Mask createMask() {
 		for(int axis = 0; axis < 3; axis++) {
 			for(int i = 0; i < size[axis]; i++) {
 				Appearance app = getAppearance(axis, i);
-				app.setTextureUnitState(1, new TextureUnitState(
-					appCreator.getTexture(axis, i, mask),
+				TextureUnitState tus = new TextureUnitState(
+					hasTextures(axis) ?
+						appCreator.getTexture(axis, i, mask) :
+						null,
 					mask.getMaskAttributes(),
-					appCreator.getTg(axis)));
+					appCreator.getTg(axis));
+				tus.setCapability(TextureUnitState.ALLOW_STATE_WRITE);
+				app.setTextureUnitState(1, tus);
 			}
 		}
 		return mask;
@@ -215,10 +259,15 @@ public void eyePtChanged(View view) {
 			int dir = value > 0.0 ? FRONT : BACK;
 
 			if ((axis != curAxis) || (dir != curDir)) {
+				int prevAxis = curAxis;
 				curAxis = axis;
 				curDir = dir;
+				if(axis != prevAxis && axis != Z_AXIS)
+					setTextures(axis, true);
 				axisSwitch.setWhichChild(
 						axisIndex[curAxis][curDir]);
+				if(axis != prevAxis && !hasTextures(prevAxis))
+					setTextures(prevAxis, false);
 			}
 		}
 	}
@@ -334,7 +383,8 @@ protected void loadAxis(int axis) {
 	protected void loadAxis(int axis, int index, Group front, Group back) {
 
 		GeometryArray quadArray = geomCreator.getQuad(axis, index);
-		Appearance a = appCreator.getAppearance(axis, index);
+		Appearance a = appCreator.getAppearance(
+			axis, index, hasTextures(axis));
 
 		Shape3D frontShape = new Shape3D(quadArray, a);
 		frontShape.setCapability(Shape3D.ALLOW_APPEARANCE_WRITE);
@@ -0,0 +1,163 @@
+package marchingcubes;
+
+import static org.junit.Assert.assertEquals;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.measure.Calibration;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij3d.Volume;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import javax.vecmath.Point3f;
+
+import org.junit.Test;
+
+public class IndexedMCCubeTest {
+
+	private static final int W = 20, H = 17, D = 13;
+	private static final int THRESHOLD = 100;
+
+	/**
+	 * Two overlapping blobs plus noise, so that the surface crosses the
+	 * slab boundaries in many places, and touches the image border.
+	 */
+	private static ImagePlus createImage(boolean rgb) {
+		Random random = new Random(42);
+		ImageStack stack = new ImageStack(W, H);
+		for(int z = 0; z < D; z++) {
+			ByteProcessor bp = new ByteProcessor(W, H);
+			ColorProcessor cp = new ColorProcessor(W, H);
+			for(int y = 0; y < H; y++) {
+				for(int x = 0; x < W; x++) {
+					double d1 = dist(x, y, z, 7, 8, 5);
+					double d2 = dist(x, y, z, 15, 10, 9);
+					int v = (int)(255 * Math.exp(-Math.min(d1, d2) / 6))
+						+ random.nextInt(40) - 20;
+					v = Math.max(0, Math.min(255, v));
+					bp.set(x, y, v);
+					// channels that average to v
+					int s = v > 0 && v < 255 ? random.nextInt(2) : 0;
+					cp.set(x, y, ((v + s) << 16) | (v << 8) | (v - s));
+				}
+			}
+			stack.addSlice("", rgb ? cp : bp);
+		}
+		ImagePlus image = new ImagePlus("blobs", stack);
+		Calibration c = image.getCalibration();
+		c.pixelWidth = 0.5;
+		c.pixelHeight = 0.75;
+		c.pixelDepth = 2;
+		c.xOrigin = 3;
+		c.yOrigin = -1;
+		c.zOrigin = 10;
+		return image;
+	}
+
+	private static double dist(int x, int y, int z, int cx, int cy, int cz) {
+		return Math.sqrt((x - cx) * (x - cx) + (y - cy) * (y - cy) +
+			(z - cz) * (z - cz));
+	}
+
+	private static Volume createVolume(ImagePlus image) {
+		Volume volume = new Volume(image);
+		volume.setAverage(true);
+		return volume;
+	}
+
+	/** The triangles of a triangle list, in a comparable form. */
+	private static List<String> triangles(List<Point3f> list) {
+		List<String> triangles = new ArrayList<String>();
+		for(int i = 0; i < list.size(); i += 3)
+			triangles.add(list.get(i) + " " + list.get(i + 1) + " " +
+				list.get(i + 2));
+		Collections.sort(triangles);
+		return triangles;
+	}
+
+	private static List<String> triangles(Point3f[] vertices, int[] faces, int nIndices) {
+		List<Point3f> list = new ArrayList<Point3f>();
+		for(int i = 0; i < nIndices; i++)
+			list.add(vertices[faces[i]]);
+		return triangles(list);
+	}
+
+	private static List<String> triangles(IndexedMesh mesh) {
+		return triangles(mesh.getPoints(), mesh.getFaces(),
+			mesh.getIndexCount());
+	}
+
+	private static int distinctVertices(List<Point3f> list) {
+		return new HashSet<Point3f>(list).size();
+	}
+
+	/** Collects the chunks of a streamed mesh. */
+	private static class Collector implements IndexedMCCube.MeshConsumer {
+		final List<Point3f> vertices = new ArrayList<Point3f>();
+		final List<Point3f> triangles = new ArrayList<Point3f>();
+		int chunks;
+
+		public void consume(IndexedMesh chunk, int firstVertex) {
+			assertEquals(vertices.size(), firstVertex);
+			Point3f[] points = chunk.getPoints();
+			for(Point3f p : points)
+				vertices.add(p);
+			int[] faces = chunk.getFaces();
+			for(int i = 0; i < chunk.getIndexCount(); i++)
+				triangles.add(vertices.get(faces[i]));
+			chunks++;
+		}
+	}
+
+	@Test
+	public void testSameTrianglesAsMCCube() {
+		Volume volume = createVolume(createImage(false));
+		List<Point3f> expected = MCCube.getTriangles(volume, THRESHOLD);
+
+		for(int nThreads = 1; nThreads <= 3; nThreads++) {
+			IndexedMesh mesh = IndexedMCCube.getMesh(volume, THRESHOLD, nThreads);
+			assertEquals(triangles(expected), triangles(mesh));
+			assertEquals(distinctVertices(expected), mesh.getVertexCount());
+		}
+	}
+
+	@Test
+	public void testSlabBoundaries() {
+		Volume volume = createVolume(createImage(false));
+		List<Point3f> expected = MCCube.getTriangles(volume, THRESHOLD);
+
+		// D + 2 cube layers: slabs of every depth, with and without a
+		// remainder, and a single slab
+		for(int slabDepth = 1; slabDepth <= D + 2; slabDepth++) {
+			Collector collector = new Collector();
+			IndexedMCCube.streamMesh(volume, THRESHOLD, 2, slabDepth, collector);
+			assertEquals((D + 2 + slabDepth - 1) / slabDepth, collector.chunks);
+			assertEquals(triangles(expected), triangles(collector.triangles));
+			// vertices on the planes between slabs are not duplicated
+			assertEquals(distinctVertices(expected), collector.vertices.size());
+		}
+	}
+
+	@Test
+	public void testImageSource() {
+		for(boolean rgb : new boolean[] {false, true}) {
+			ImagePlus image = createImage(rgb);
+			List<Point3f> expected = MCCube.getTriangles(
+				createVolume(image), THRESHOLD);
+
+			IndexedMesh mesh = IndexedMCCube.getMesh(image, THRESHOLD, 3);
+			assertEquals(triangles(expected), triangles(mesh));
+
+			Collector collector = new Collector();
+			IndexedMCCube.streamMesh(image, THRESHOLD, 2, 4, collector);
+			assertEquals(triangles(expected), triangles(collector.triangles));
+			assertEquals(distinctVertices(expected), collector.vertices.size());
+		}
+	}
+}
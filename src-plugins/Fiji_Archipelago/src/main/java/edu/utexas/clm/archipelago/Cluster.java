@@ -20,6 +20,8 @@
 
 
 import edu.utexas.clm.archipelago.compute.*;
+import edu.utexas.clm.archipelago.data.DataChunk;
+import edu.utexas.clm.archipelago.data.FileChunk;
 import edu.utexas.clm.archipelago.exception.ShellExecutionException;
 import edu.utexas.clm.archipelago.listen.ClusterStateListener;
 import edu.utexas.clm.archipelago.listen.NodeStateListener;
@@ -43,6 +45,7 @@
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -65,23 +68,37 @@ public class Cluster implements NodeStateListener, NodeShellListener
     
 
     /**
-     * This is a very dumb scheduler. It attempts to submit the first ProcessManager in its
-     * queue to the first ClusterNode that it finds available. This should work well as long as
-     * all ProcessManagers are more-or-less equals, and all ClusterNodes can accept them as
-     * equally as any other. There is code here that will attempt to recover in the case that
-     * a ProcessManager is rejected, but if this becomes a common occurrence, then this
-     * scheduler should be replaced with something more sophisticated.
+     * An event-driven scheduler. It runs whenever a job is queued, a job finishes or a node
+     * changes its state, and otherwise at least every pollTime milliseconds.
+     *
+     * Jobs whose Callable is a ChunkProcessor are queued for the ClusterNode that last processed
+     * their DataChunks (or the same files, for FileChunks), all other jobs go into a shared
+     * queue. A node with free threads takes jobs from its own queue first, then from the shared
+     * queue, and steals jobs from the back of the longest queue of another node when both are
+     * empty. A job is only given to a node that has at least as many free threads as the job
+     * requests. Newly queued jobs are sorted by a ProcessManagerCoreComparator so that jobs
+     * that need many cores are not starved by smaller ones.
      * @author Larry Lindsey
      */
     public class ProcessScheduler extends Thread
     {
+        /** The number of files whose location is remembered, the least recently used go first */
+        private static final int MAX_FILE_LOCATIONS = 65536;
+
         private final LinkedBlockingQueue<ProcessManager> jobQueue, priorityJobQueue;
         private final AtomicInteger pollTime;
         private final AtomicBoolean running;
         private final Hashtable<Long, ProcessManager> runningProcesses;
         private final Vector<ProcessManager<?>> remainingJobList;
         private final LinkedList<ProcessManager> internalQueue;
+        private final HashMap<Long, LinkedList<ProcessManager>> nodeQueues;
+        private final LinkedHashMap<String, Long> fileLocations;
         private final ReentrantLock lock;
+        private final Semaphore events;
+
+        private final Hashtable<Long, Long> queueTimes, startTimes;
+        private final AtomicLong totalQueueWait, totalRunTime;
+        private final AtomicLong scheduledJobs, finishedJobs, localJobs, stolenJobs;
 
         private ProcessScheduler(int t)
         {
@@ -92,10 +109,33 @@ private ProcessScheduler(int t)
             runningProcesses = new Hashtable<Long, ProcessManager>();
             remainingJobList = new Vector<ProcessManager<?>>();
             internalQueue = new LinkedList<ProcessManager>();
+            nodeQueues = new HashMap<Long, LinkedList<ProcessManager>>();
+            fileLocations = new LinkedHashMap<String, Long>(16, 0.75f, true)
+            {
+                protected boolean removeEldestEntry(final Map.Entry<String, Long> eldest)
+                {
+                    return size() > MAX_FILE_LOCATIONS;
+                }
+            };
             lock = new ReentrantLock();
+            events = new Semaphore(0);
+
+            queueTimes = new Hashtable<Long, Long>();
+            startTimes = new Hashtable<Long, Long>();
+            totalQueueWait = new AtomicLong(0);
+            totalRunTime = new AtomicLong(0);
+            scheduledJobs = new AtomicLong(0);
+            finishedJobs = new AtomicLong(0);
+            localJobs = new AtomicLong(0);
+            stolenJobs = new AtomicLong(0);
         }
         
 
+        /**
+         * Sets the longest time that the scheduler waits between two scheduling rounds when
+         * nothing happens, for instance when a node changes its number of threads.
+         * @param t the time in milliseconds
+         */
         public void setPollTimeMillis(int t)
         {
             pollTime.set(t);
@@ -128,24 +168,23 @@ public synchronized boolean queueJob(ProcessManager pm, boolean priority)
                 {
                     FijiArchipelago.debug("Scheduler: Put job " + pm.getID() + " on the priority queue");
                 }
+                queueTimes.put(pm.getID(), System.currentTimeMillis());
                 queue.add(pm);
+                wakeUp();
                 return true;
             } catch (IllegalStateException ise)
             {
+                queueTimes.remove(pm.getID());
                 return false;
             }
         }
-        
-        private synchronized ClusterNode getFreeNode()
+
+        /**
+         * Makes the scheduler run a scheduling round as soon as possible.
+         */
+        public void wakeUp()
         {
-            for (ClusterNode node : nodes)
-            {
-                if (node.numAvailableThreads() > 0)
-                {
-                    return node;
-                }
-            }
-            return null;
+            events.release();
         }
 
         public void start()
@@ -167,77 +206,300 @@ private void rotate(LinkedList<ClusterNode> nodeList)
         }
 
         /**
-         * Attempts to submit the ProcessManager pm on each node in nodeList. This function
-         * runs on the same thread as run().
-         * @param pm a queued ProcessManager that is to be run to the Cluster
-         * @param nodeList a List of ClusterNodes with available Threads
-         * @return true if pm was scheduled, false otherwise.
+         * Returns the id of the ClusterNode that holds most of the DataChunks of pm, or -1 if
+         * pm does not process DataChunks or none of them has been processed yet.
          */
-        private boolean trySubmit(final ProcessManager<?> pm,
-                                  final LinkedList<ClusterNode> nodeList)
+        private long preferredNode(final ProcessManager<?> pm)
         {
-            if (nodeList.isEmpty())
+            final Callable<?> callable = pm.getCallable();
+
+            if (!(callable instanceof ChunkProcessor))
             {
-                return false;
+                return -1;
             }
-            else
+
+            final List<DataChunk<?>> chunks = ((ChunkProcessor<?>)callable).getChunks();
+            final HashMap<Long, Integer> counts = new HashMap<Long, Integer>();
+            long bestID = -1;
+            int bestCount = 0;
+
+            if (chunks == null)
             {
-                ProcessListener listener = new ProcessListener() {
-                    /**
-                     * processFinished is called when the given ClusterNode recieves a message
-                     * from its remote counterpart indicating that the job has finished.
-                     * @param process a ProcessManager that just returned from the cluster
-                     * @return true if the Future was finished successfully, false otherwise.
-                     */
-                    public boolean processFinished(ProcessManager<?> process)
+                return -1;
+            }
+
+            for (DataChunk<?> chunk : chunks)
+            {
+                long id = chunk.lastProcessedOn();
+
+                if (chunk instanceof FileChunk)
+                {
+                    final Long fileID = fileLocations.get(((FileChunk)chunk).getData());
+                    if (fileID != null)
                     {
-                        final long id = process.getID();
-                        final ArchipelagoFuture<?> future = futures.remove(id);
+                        id = fileID;
+                    }
+                }
 
-                        if (future == null)
-                        {
-                            return false;
-                        }
-                        
-                        runningProcesses.remove(id);
-                        decrementJobCount();
+                if (id >= 0)
+                {
+                    final Integer count = counts.get(id);
+                    final int n = count == null ? 1 : count + 1;
+                    counts.put(id, n);
+                    if (n > bestCount)
+                    {
+                        bestCount = n;
+                        bestID = id;
+                    }
+                }
+            }
 
-                        try
-                        {
-                            future.finish(process);
-                            return true;
-                        }
-                        catch (ClassCastException cce)
+            return bestID;
+        }
+
+        /**
+         * Records that the DataChunks of pm are processed on node.
+         */
+        private void setLocation(final ProcessManager<?> pm, final ClusterNode node)
+        {
+            final Callable<?> callable = pm.getCallable();
+
+            if (callable instanceof ChunkProcessor)
+            {
+                final List<DataChunk<?>> chunks = ((ChunkProcessor<?>)callable).getChunks();
+
+                if (chunks != null)
+                {
+                    for (DataChunk<?> chunk : chunks)
+                    {
+                        chunk.setProcessingOn(node);
+                        if (chunk instanceof FileChunk)
                         {
-                            return false;
+                            fileLocations.put(((FileChunk)chunk).getData(), node.getID());
                         }
                     }
-                };
-                
-                /*
-                 Run through the available ClusterNodes, attempting to submit the job to each one.
-                 When a node rejects the PM, rotate the list. Assuming that our job list is rather
-                 uniform, this should reduce our overhead.
+                }
+            }
+        }
+
+        /**
+         * Puts pm on the queue of the ClusterNode that it prefers, or on the shared queue.
+         * Must be called while holding lock.
+         */
+        private void enqueue(final ProcessManager<?> pm, final boolean front)
+        {
+            final long id = preferredNode(pm);
+            LinkedList<ProcessManager> queue = internalQueue;
+
+            if (id >= 0 && getNode(id) != null)
+            {
+                queue = nodeQueues.get(id);
+                if (queue == null)
+                {
+                    queue = new LinkedList<ProcessManager>();
+                    nodeQueues.put(id, queue);
+                }
+            }
+
+            if (front)
+            {
+                queue.addFirst(pm);
+            }
+            else
+            {
+                queue.addLast(pm);
+            }
+        }
+
+        /**
+         * Removes and returns the first job in queue that fits on node, searching from the
+         * back if fromBack is true.
+         */
+        private ProcessManager<?> takeJob(final LinkedList<ProcessManager> queue,
+                                          final ClusterNode node, final boolean fromBack)
+        {
+            final int available = node.numAvailableThreads();
+            final Iterator<ProcessManager> it = fromBack ?
+                    queue.descendingIterator() : queue.iterator();
+
+            while (it.hasNext())
+            {
+                final ProcessManager<?> pm = it.next();
+                if (pm.requestedCores(node) <= available)
+                {
+                    it.remove();
+                    return pm;
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Returns the next job to run on node: one from its own queue, from the shared queue,
+         * or one stolen from the longest queue of another node, in that order.
+         * Must be called while holding lock.
+         */
+        private ProcessManager<?> nextJob(final ClusterNode node)
+        {
+            final LinkedList<ProcessManager> own = nodeQueues.get(node.getID());
+            ProcessManager<?> pm;
+
+            if (own != null && (pm = takeJob(own, node, false)) != null)
+            {
+                localJobs.incrementAndGet();
+                return pm;
+            }
+
+            if ((pm = takeJob(internalQueue, node, false)) != null)
+            {
+                return pm;
+            }
+
+            final ArrayList<LinkedList<ProcessManager>> others =
+                    new ArrayList<LinkedList<ProcessManager>>();
+            for (LinkedList<ProcessManager> queue : nodeQueues.values())
+            {
+                if (queue != own && !queue.isEmpty())
+                {
+                    others.add(queue);
+                }
+            }
+
+            Collections.sort(others, new Comparator<LinkedList<ProcessManager>>()
+            {
+                public int compare(LinkedList<ProcessManager> q1, LinkedList<ProcessManager> q2)
+                {
+                    return q2.size() - q1.size();
+                }
+            });
+
+            for (LinkedList<ProcessManager> queue : others)
+            {
+                if ((pm = takeJob(queue, node, true)) != null)
+                {
+                    stolenJobs.incrementAndGet();
+                    return pm;
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Attempts to submit the ProcessManager pm on node. This function runs on the same
+         * thread as run().
+         * @param pm a queued ProcessManager that is to be run to the Cluster
+         * @param node a ClusterNode with enough available Threads for pm
+         * @return true if pm was scheduled, false otherwise.
+         */
+        private boolean trySubmit(final ProcessManager<?> pm, final ClusterNode node)
+        {
+            ProcessListener listener = new ProcessListener() {
+                /**
+                 * processFinished is called when the given ClusterNode recieves a message
+                 * from its remote counterpart indicating that the job has finished.
+                 * @param process a ProcessManager that just returned from the cluster
+                 * @return true if the Future was finished successfully, false otherwise.
                  */
-                for (int i = 0; i < nodeList.size(); ++i)
+                public boolean processFinished(ProcessManager<?> process)
+                {
+                    final long id = process.getID();
+                    final ArchipelagoFuture<?> future = futures.remove(id);
+                    final Long startTime = startTimes.remove(id);
+
+                    // The node has a free thread now
+                    wakeUp();
+
+                    if (future == null)
+                    {
+                        return false;
+                    }
+
+                    if (startTime != null)
+                    {
+                        totalRunTime.addAndGet(System.currentTimeMillis() - startTime);
+                        finishedJobs.incrementAndGet();
+                    }
+
+                    runningProcesses.remove(id);
+                    decrementJobCount();
+
+                    try
+                    {
+                        future.finish(process);
+                        return true;
+                    }
+                    catch (ClassCastException cce)
+                    {
+                        return false;
+                    }
+                }
+            };
+
+            // The DataChunks are sent along with pm, so they must know where they go before
+            setLocation(pm, node);
+
+            final long now = System.currentTimeMillis();
+            startTimes.put(pm.getID(), now);
+
+            if (node.submit(pm, listener))
+            {
+                final Long queueTime = queueTimes.remove(pm.getID());
+
+                if (queueTime != null)
+                {
+                    totalQueueWait.addAndGet(now - queueTime);
+                }
+                scheduledJobs.incrementAndGet();
+
+                runningProcesses.put(pm.getID(), pm);
+                incrementJobCount();
+                return true;
+            }
+            else
+            {
+                startTimes.remove(pm.getID());
+                return false;
+            }
+        }
+
+        /**
+         * Deals the queued jobs to the nodes in nodeList, one job per node and round, until
+         * the nodes are full or no job fits on them any more. Must be called while holding
+         * lock.
+         */
+        private void dispatch(final LinkedList<ClusterNode> nodeList)
+        {
+            while (!nodeList.isEmpty())
+            {
+                for (ClusterNode node : new ArrayList<ClusterNode>(nodeList))
                 {
-                    final ClusterNode node = nodeList.getFirst();
+                    final ProcessManager<?> pm = nextJob(node);
 
-                    if (node.numAvailableThreads() >= pm.requestedCores(node) &&
-                            node.submit(pm, listener))
+                    if (pm == null)
+                    {
+                        nodeList.remove(node);
+                    }
+                    else if (trySubmit(pm, node))
                     {
-                        runningProcesses.put(pm.getID(), pm);
-                        incrementJobCount();
+                        FijiArchipelago.debug("Scheduler: Job " + pm.getID() +
+                                " scheduled on host " + node.getHost());
                         if (node.numAvailableThreads() <= 0)
                         {
                             nodeList.remove(node);
                         }
-                        return true;
                     }
-                    rotate(nodeList);
+                    else
+                    {
+                        // The node rejected the job, try it elsewhere next time
+                        internalQueue.addFirst(pm);
+                        nodeList.remove(node);
+                    }
                 }
 
-                return false;
+                // Deal PM's to the nodes like we're playing poker.
+                rotate(nodeList);
             }
         }
         
@@ -246,39 +508,39 @@ public void run()
             FijiArchipelago.log("Scheduler: Started. Running flag: " + running.get());
 
             final ArrayList<ProcessManager> tempQ = new ArrayList<ProcessManager>();
-            final ArrayList<ProcessManager> pmQ = new ArrayList<ProcessManager>();
-            final LinkedList<ClusterNode> nodeList = new LinkedList<ClusterNode>();           
+            final LinkedList<ClusterNode> nodeList = new LinkedList<ClusterNode>();
             final ProcessManagerCoreComparator comparator = new ProcessManagerCoreComparator();
             
             while (running.get())
             {
                 lock.lock();
 
-                // Remove de-activated nodes, and those that are saturated with jobs
-                for (ClusterNode node : new ArrayList<ClusterNode>(nodeList))
+                // Collect the active nodes that have free threads
+                nodeList.clear();
+                for (ClusterNode node : new ArrayList<ClusterNode>(nodes))
                 {
-                    if (node.getState() != ClusterNodeState.ACTIVE ||
-                            node.numAvailableThreads() <= 0)
+                    if (node.getState() == ClusterNodeState.ACTIVE &&
+                            node.numAvailableThreads() > 0)
                     {
-                        nodeList.remove(node);
+                        nodeList.add(node);
                     }
                 }
 
-                // Add any newly-available nodes we might have.
-                for (ClusterNode node : nodes)
+                // Jobs that wait for a node that is gone go back to the shared queue
+                for (Iterator<Map.Entry<Long, LinkedList<ProcessManager>>> it =
+                             nodeQueues.entrySet().iterator(); it.hasNext(); )
                 {
-                    if (node.numAvailableThreads() > 0 && !nodeList.contains(node))
+                    final Map.Entry<Long, LinkedList<ProcessManager>> entry = it.next();
+                    if (getNode(entry.getKey()) == null)
                     {
-                        nodeList.addFirst(node);
+                        internalQueue.addAll(0, entry.getValue());
+                        it.remove();
                     }
                 }
 
                 comparator.setThreadCount(getMaxThreads());
                 
-                //Put priority jobs in front of the internal queue, in the correct order
-//                FijiArchipelago.debug("Scheduler: " + priorityJobQueue.size() +
-//                        " jobs in priority queue");
-//
+                //Put priority jobs in front of the queues, in the correct order
                 priorityJobQueue.drainTo(tempQ);                
                 Collections.sort(tempQ, comparator);
                 for (int i = tempQ.size(); i > 0; --i)
@@ -286,52 +548,37 @@ public void run()
                     ProcessManager pm  = tempQ.get(i - 1);
                     FijiArchipelago.debug("Scheduler: Adding job " + pm.getID() +
                             " to internal queue");
-                    internalQueue.addFirst(pm);
+                    enqueue(pm, true);
                 }
                 tempQ.clear();
 
 
-                //Put non-priority jobs at the end of the internal queue.
+                //Put non-priority jobs at the end of the queues.
                 jobQueue.drainTo(tempQ);
                 Collections.sort(tempQ, comparator);
-                internalQueue.addAll(tempQ);
-                tempQ.clear();
-                
-                //FijiArchipelago.debug("Scheduler: " + internalQueue.size() + " jobs in queue");
-
-                //If we have both jobs and nodes to run them on...
-                if (!internalQueue.isEmpty() && !nodeList.isEmpty())
+                for (ProcessManager pm : tempQ)
                 {
-                    // Temporary queue so we can remove jobs from the internalQueue
-                    // without suffering ConcurrentModificationExceptions
-                    pmQ.addAll(internalQueue);
-                    for (ProcessManager<?> pm : pmQ)
-                    {
-                        if (trySubmit(pm, nodeList))
-                        {
-                            FijiArchipelago.debug("Scheduler: Job " + pm.getID() +
-                                    " scheduled on host " + getNode(pm.getRunningOn()));
-                            internalQueue.remove(pm);
-                        }
-                        // Deal PM's to the nodes like we're playing poker.
-                        rotate(nodeList);
-                    }
-                    
-                    pmQ.clear();
+                    enqueue(pm, false);
                 }
-                
+                tempQ.clear();
+
+                dispatch(nodeList);
+
                 lock.unlock();
                 
                 // At this stage, all PM's that can be run should be running on a ClusterNode
-                // somewhere. Sleep for a bit. Perhaps a new node will become available, or we'll
-                // get a PM that can be slotted on an available node.
+                // somewhere. Wait until something happens, ie, a job is queued or finishes or a
+                // node changes its state.
                 try
-                {                    
-                    Thread.sleep(pollTime.get());
+                {
+                    if (events.tryAcquire(pollTime.get(), TimeUnit.MILLISECONDS))
+                    {
+                        events.drainPermits();
+                    }
                 }
                 catch (InterruptedException ie)
                 {
-                    FijiArchipelago.log("Scheduler interrupted while sleeping, stopping.");
+                    FijiArchipelago.log("Scheduler interrupted while waiting, stopping.");
                     running.set(false);
                 }
                 
@@ -375,9 +622,20 @@ public synchronized boolean cancelJob(long id, boolean force)
                     removeFromQueue(jobQueue, id) ||
                     removeFromQueue(internalQueue, id))
             {
+                queueTimes.remove(id);
                 lock.unlock();
                 return true;
             }
+
+            for (LinkedList<ProcessManager> queue : nodeQueues.values())
+            {
+                if (removeFromQueue(queue, id))
+                {
+                    queueTimes.remove(id);
+                    lock.unlock();
+                    return true;
+                }
+            }
                 
 
             ProcessManager<?> pm = runningProcesses.get(id);             
@@ -449,7 +707,12 @@ public Vector<ProcessManager<?>> remainingJobs()
         public synchronized void close()
         {
             running.set(false);
-            interrupt();
+            // Newer JVMs keep the interrupt of a Thread that has not been started yet, which
+            // would stop the scheduler as soon as start() is called after init()
+            if (isAlive())
+            {
+                interrupt();
+            }
             
             remainingJobList.clear();
 
@@ -458,6 +721,18 @@ public synchronized void close()
                 remainingJobList.add(pm);
                 futures.get(pm.getID()).cancel(false);
             }
+
+            lock.lock();
+            for (LinkedList<ProcessManager> queue : nodeQueues.values())
+            {
+                for (ProcessManager pm : queue)
+                {
+                    remainingJobList.add(pm);
+                    futures.get(pm.getID()).cancel(false);
+                }
+            }
+            nodeQueues.clear();
+            lock.unlock();
             
             for (ProcessManager pm : priorityJobQueue)
             {
@@ -478,7 +753,58 @@ public synchronized void close()
         
         public int queuedJobCount()
         {
-            return internalQueue.size() + priorityJobQueue.size() + jobQueue.size();
+            int n = internalQueue.size() + priorityJobQueue.size() + jobQueue.size();
+
+            lock.lock();
+            for (LinkedList<ProcessManager> queue : nodeQueues.values())
+            {
+                n += queue.size();
+            }
+            lock.unlock();
+
+            return n;
+        }
+
+        /**
+         * @return the mean time in milliseconds that the scheduled jobs waited in the queue
+         */
+        public double getMeanQueueWaitMillis()
+        {
+            final long n = scheduledJobs.get();
+            return n > 0 ? totalQueueWait.get() / (double)n : 0;
+        }
+
+        /**
+         * @return the mean time in milliseconds from scheduling a job until its result came back
+         */
+        public double getMeanRunTimeMillis()
+        {
+            final long n = finishedJobs.get();
+            return n > 0 ? totalRunTime.get() / (double)n : 0;
+        }
+
+        /**
+         * @return the number of jobs that have been submitted to a ClusterNode
+         */
+        public long getScheduledJobCount()
+        {
+            return scheduledJobs.get();
+        }
+
+        /**
+         * @return the number of jobs that ran on the ClusterNode that held their DataChunks
+         */
+        public long getLocalJobCount()
+        {
+            return localJobs.get();
+        }
+
+        /**
+         * @return the number of jobs that were stolen from the queue of another ClusterNode
+         */
+        public long getStolenJobCount()
+        {
+            return stolenJobs.get();
         }
 
     }
@@ -1351,6 +1677,7 @@ public synchronized void stateChanged(ClusterNode node, ClusterNodeState stateNo
                     FijiArchipelago.debug("Not shut down. Currently " + runningNodes.get()
                             + " running nodes");
                 }
+                scheduler.wakeUp();
                 break;
             
             case STOPPED:
@@ -1381,6 +1708,7 @@ public synchronized void stateChanged(ClusterNode node, ClusterNodeState stateNo
                 }
                 
                 removeNode(node.getID());
+                scheduler.wakeUp();
                 
                 if (runningNodes.decrementAndGet() <= 0)
                 {
@@ -1616,6 +1944,15 @@ public int getQueuedJobCount()
     {
         return scheduler.queuedJobCount();
     }
+
+    /**
+     * @return the ProcessScheduler of this Cluster, which keeps the queue-wait and run-time
+     * statistics of the jobs
+     */
+    public ProcessScheduler getScheduler()
+    {
+        return scheduler;
+    }
     
     protected synchronized void haltFinished()
     {
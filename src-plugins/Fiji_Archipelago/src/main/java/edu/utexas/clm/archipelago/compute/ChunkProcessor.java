@@ -0,0 +1,33 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+
+package edu.utexas.clm.archipelago.compute;
+
+import edu.utexas.clm.archipelago.data.DataChunk;
+
+import java.util.List;
+
+/**
+ * A SerializableCallable that works on DataChunks. The scheduler prefers to run it on the
+ * ClusterNode that last processed its chunks, or, for FileChunks, the same files.
+ */
+public interface ChunkProcessor<T> extends SerializableCallable<T>
+{
+    /**
+     * @return the DataChunks that this ChunkProcessor works on
+     */
+    public List<DataChunk<?>> getChunks();
+}
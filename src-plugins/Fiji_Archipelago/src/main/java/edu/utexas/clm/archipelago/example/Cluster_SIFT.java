@@ -20,7 +20,8 @@
 
 import edu.utexas.clm.archipelago.Cluster;
 import edu.utexas.clm.archipelago.FijiArchipelago;
-import edu.utexas.clm.archipelago.compute.SerializableCallable;
+import edu.utexas.clm.archipelago.compute.ChunkProcessor;
+import edu.utexas.clm.archipelago.data.DataChunk;
 import edu.utexas.clm.archipelago.data.FileChunk;
 import ij.IJ;
 import ij.ImagePlus;
@@ -47,7 +48,11 @@ public class Cluster_SIFT implements PlugIn
 
 
     
-    public static class SIFTCall implements SerializableCallable<ArrayList<Feature>>
+    /**
+     * Extracts the features of one file. As a ChunkProcessor, it is scheduled on the ClusterNode
+     * that last opened the same file, if there is one.
+     */
+    public static class SIFTCall implements ChunkProcessor<ArrayList<Feature>>
     {
         private final FloatArray2DSIFT.Param param;
         private final FileChunk fileChunk;
@@ -67,6 +72,13 @@ public ArrayList<Feature> call() throws Exception {
             sift.extractFeatures(ip, feat);
             return feat;
         }
+
+        public List<DataChunk<?>> getChunks()
+        {
+            final List<DataChunk<?>> chunks = new ArrayList<DataChunk<?>>(1);
+            chunks.add(fileChunk);
+            return chunks;
+        }
     }
 
 
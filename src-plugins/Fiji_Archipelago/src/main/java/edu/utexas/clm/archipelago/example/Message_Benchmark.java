@@ -0,0 +1,244 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+
+package edu.utexas.clm.archipelago.example;
+
+import edu.utexas.clm.archipelago.FijiArchipelago;
+import edu.utexas.clm.archipelago.data.ClusterMessage;
+import edu.utexas.clm.archipelago.listen.MessageType;
+import edu.utexas.clm.archipelago.listen.TransceiverExceptionListener;
+import edu.utexas.clm.archipelago.listen.TransceiverListener;
+import edu.utexas.clm.archipelago.network.FramedCodec;
+import edu.utexas.clm.archipelago.network.MessageCodec;
+import edu.utexas.clm.archipelago.network.MessageXC;
+import edu.utexas.clm.archipelago.network.ObjectStreamCodec;
+import ij.gui.GenericDialog;
+import ij.plugin.PlugIn;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends messages between two transceivers over a loopback socket, once with each MessageCodec,
+ * and logs how many messages per second got through and how many bytes they took.
+ */
+public class Message_Benchmark implements PlugIn
+{
+    public static class Payload implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        public final int index;
+        public final String name;
+        public final float[] data;
+
+        public Payload(final int index, final int size)
+        {
+            this.index = index;
+            name = "payload " + index;
+            data = new float[size];
+            // Random data, so that compression does not make the framed codec look better than it is
+            final Random random = new Random(index);
+            for (int i = 0; i < size; ++i)
+            {
+                data[i] = random.nextFloat();
+            }
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream
+    {
+        private final AtomicLong count;
+
+        public CountingOutputStream(final OutputStream os, final AtomicLong count)
+        {
+            super(os);
+            this.count = count;
+        }
+
+        public void write(final int b) throws IOException
+        {
+            out.write(b);
+            count.incrementAndGet();
+        }
+
+        public void write(final byte[] b, final int off, final int len) throws IOException
+        {
+            out.write(b, off, len);
+            count.addAndGet(len);
+        }
+    }
+
+    private static class Receiver implements TransceiverListener, TransceiverExceptionListener
+    {
+        private final CountDownLatch latch;
+
+        public Receiver(final int count)
+        {
+            latch = new CountDownLatch(count);
+        }
+
+        public void streamClosed() {}
+
+        public void handleMessage(final ClusterMessage cm)
+        {
+            if (cm.type == MessageType.USER)
+            {
+                latch.countDown();
+            }
+        }
+
+        public void handleRXThrowable(final Throwable t, final MessageXC mxc)
+        {
+            mxc.close();
+        }
+
+        public void handleTXThrowable(final Throwable t, final MessageXC mxc)
+        {
+            FijiArchipelago.err("Benchmark: could not send a message: " + t);
+        }
+    }
+
+    private static class Acceptor extends Thread
+    {
+        private final ServerSocket server;
+        private final Receiver receiver;
+        private MessageXC xc = null;
+        private Socket socket = null;
+        private IOException exception = null;
+
+        public Acceptor(final ServerSocket server, final Receiver receiver)
+        {
+            this.server = server;
+            this.receiver = receiver;
+        }
+
+        public void run()
+        {
+            try
+            {
+                socket = server.accept();
+                socket.setTcpNoDelay(true);
+                xc = new MessageXC(socket.getInputStream(), socket.getOutputStream(),
+                        receiver, receiver);
+            }
+            catch (IOException ioe)
+            {
+                exception = ioe;
+            }
+        }
+    }
+
+    public void run(final String arg)
+    {
+        final GenericDialog gd = new GenericDialog("Message Benchmark");
+        gd.addNumericField("Messages", 20000, 0);
+        gd.addNumericField("Floats per message", 64, 0);
+        gd.showDialog();
+
+        if (gd.wasCanceled())
+        {
+            return;
+        }
+
+        final int count = (int)gd.getNextNumber();
+        final int size = (int)gd.getNextNumber();
+        final MessageCodec previous = MessageXC.getDefaultCodec();
+
+        try
+        {
+            benchmark(new ObjectStreamCodec(), count, size);
+            benchmark(new FramedCodec(), count, size);
+        }
+        catch (Exception e)
+        {
+            FijiArchipelago.err("Benchmark failed: " + e);
+        }
+        finally
+        {
+            MessageXC.setDefaultCodec(previous);
+        }
+    }
+
+    public static void benchmark(final MessageCodec codec, final int count, final int size)
+            throws IOException, InterruptedException
+    {
+        final ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName(null));
+        final Receiver sink = new Receiver(0), receiver = new Receiver(count);
+        final Acceptor acceptor = new Acceptor(server, receiver);
+        final AtomicLong bytes = new AtomicLong(0);
+        final Socket socket;
+        final MessageXC xc;
+
+        MessageXC.setDefaultCodec(codec);
+
+        try
+        {
+            acceptor.start();
+            socket = new Socket(server.getInetAddress(), server.getLocalPort());
+            socket.setTcpNoDelay(true);
+            xc = new MessageXC(socket.getInputStream(),
+                    new CountingOutputStream(socket.getOutputStream(), bytes), sink, sink);
+            acceptor.join();
+        }
+        finally
+        {
+            server.close();
+        }
+
+        if (acceptor.exception != null)
+        {
+            throw acceptor.exception;
+        }
+
+        final long start = System.nanoTime();
+
+        for (int i = 0; i < count; ++i)
+        {
+            xc.queueMessage(MessageType.USER, new Payload(i, size));
+        }
+
+        final boolean done = receiver.latch.await(5, TimeUnit.MINUTES);
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        if (done)
+        {
+            FijiArchipelago.log(codec + ": " + count + " messages in " +
+                    String.format("%.2f", seconds) + "s, " +
+                    String.format("%.0f", count / seconds) + " messages/s, " +
+                    bytes.get() + " bytes (" + bytes.get() / count + " per message)");
+        }
+        else
+        {
+            FijiArchipelago.err(codec + ": only " + (count - receiver.latch.getCount()) +
+                    " of " + count + " messages arrived");
+        }
+
+        xc.close();
+        acceptor.xc.close();
+        socket.close();
+        acceptor.socket.close();
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+
+package edu.utexas.clm.archipelago.example;
+
+import edu.utexas.clm.archipelago.Cluster;
+import edu.utexas.clm.archipelago.FijiArchipelago;
+import edu.utexas.clm.archipelago.compute.ChunkProcessor;
+import edu.utexas.clm.archipelago.compute.SerializableCallable;
+import edu.utexas.clm.archipelago.data.DataChunk;
+import edu.utexas.clm.archipelago.data.FileChunk;
+import edu.utexas.clm.archipelago.network.client.ArchipelagoClient;
+import ij.gui.GenericDialog;
+import ij.plugin.PlugIn;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Starts a Cluster with a number of ClusterNodes that run in this JVM, connected over loopback
+ * sockets, and logs how long it takes to run many small jobs on them, first plain jobs, then
+ * jobs that work on FileChunks. The jobs on FileChunks exercise the per-node queues and work
+ * stealing of the scheduler: once one job per file has run, every job goes to the node that
+ * last processed its file, and idle nodes steal from the others. The files do not need to
+ * exist.
+ */
+public class Scheduler_Benchmark implements PlugIn
+{
+    public static class Job implements SerializableCallable<Long>
+    {
+        private final int index;
+        private final int work;
+
+        public Job(final int index, final int work)
+        {
+            this.index = index;
+            this.work = work;
+        }
+
+        public Long call() throws Exception
+        {
+            long sum = 0;
+            for (int i = 0; i < work; ++i)
+            {
+                sum += (long)i * index;
+            }
+            return sum;
+        }
+    }
+
+    public static class ChunkJob extends Job implements ChunkProcessor<Long>
+    {
+        private final FileChunk fileChunk;
+
+        public ChunkJob(final int index, final int work, final String fileName)
+        {
+            super(index, work);
+            fileChunk = new FileChunk(fileName);
+        }
+
+        public List<DataChunk<?>> getChunks()
+        {
+            final List<DataChunk<?>> chunks = new ArrayList<DataChunk<?>>(1);
+            chunks.add(fileChunk);
+            return chunks;
+        }
+    }
+
+    private static class LocalNode extends Thread
+    {
+        private final ServerSocket server;
+
+        public LocalNode(final ServerSocket server)
+        {
+            this.server = server;
+        }
+
+        public void run()
+        {
+            try
+            {
+                final Socket socket = new Socket(server.getInetAddress(), server.getLocalPort());
+                socket.setTcpNoDelay(true);
+                new ArchipelagoClient(-1, socket.getInputStream(), socket.getOutputStream());
+            }
+            catch (IOException ioe)
+            {
+                FijiArchipelago.err("Benchmark: could not start a local node: " + ioe);
+            }
+        }
+    }
+
+    public void run(final String arg)
+    {
+        if (Cluster.initializedCluster())
+        {
+            FijiArchipelago.err("Benchmark: stop the running Cluster first");
+            return;
+        }
+
+        final GenericDialog gd = new GenericDialog("Scheduler Benchmark");
+        gd.addNumericField("Local nodes", 4, 0);
+        gd.addNumericField("Jobs", 5000, 0);
+        gd.addNumericField("Files", 16, 0);
+        gd.addNumericField("Iterations per job", 20000, 0);
+        gd.showDialog();
+
+        if (gd.wasCanceled())
+        {
+            return;
+        }
+
+        final int nodeCount = (int)gd.getNextNumber();
+        final int jobCount = (int)gd.getNextNumber();
+        final int fileCount = Math.max(1, (int)gd.getNextNumber());
+        final int work = (int)gd.getNextNumber();
+        final Cluster cluster = Cluster.getCluster();
+
+        try
+        {
+            startLocalCluster(cluster, nodeCount);
+
+            final ArrayList<Callable<Long>> jobs = new ArrayList<Callable<Long>>(jobCount);
+            for (int i = 0; i < jobCount; ++i)
+            {
+                jobs.add(new Job(i, work));
+            }
+            benchmark(cluster, "plain jobs", jobs);
+
+            // The first job on each file tells the scheduler where the file is
+            jobs.clear();
+            for (int i = 0; i < jobCount + fileCount; ++i)
+            {
+                jobs.add(new ChunkJob(i, work, FijiArchipelago.getFileRoot() + File.separator +
+                        "benchmark-" + (i % fileCount)));
+            }
+            benchmark(cluster, "first jobs on " + fileCount + " files",
+                    jobs.subList(0, fileCount));
+            benchmark(cluster, "jobs on " + fileCount + " files",
+                    jobs.subList(fileCount, jobs.size()));
+        }
+        catch (Exception e)
+        {
+            FijiArchipelago.err("Benchmark failed: " + e);
+        }
+        finally
+        {
+            cluster.shutdown();
+        }
+    }
+
+    /**
+     * Starts cluster with nodeCount ClusterNodes in this JVM and waits until they are running.
+     */
+    public static void startLocalCluster(final Cluster cluster, final int nodeCount)
+            throws IOException, InterruptedException
+    {
+        final ServerSocket server = new ServerSocket(0, nodeCount, InetAddress.getByName(null));
+
+        cluster.init();
+        cluster.start();
+
+        try
+        {
+            for (int i = 0; i < nodeCount; ++i)
+            {
+                new LocalNode(server).start();
+
+                final Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                new Thread()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            cluster.ioStreamsReady(socket.getInputStream(),
+                                    socket.getOutputStream());
+                        }
+                        catch (IOException ioe)
+                        {
+                            FijiArchipelago.err("Benchmark: could not add a local node: " + ioe);
+                        }
+                    }
+                }.start();
+            }
+        }
+        finally
+        {
+            server.close();
+        }
+
+        final long timeout = System.currentTimeMillis() + 30000;
+        while (cluster.getRunningNodeCount() < nodeCount)
+        {
+            if (System.currentTimeMillis() > timeout)
+            {
+                throw new IOException("Only " + cluster.getRunningNodeCount() + " of " +
+                        nodeCount + " nodes started");
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * Runs jobs on cluster and logs how long that took, and what the scheduler did.
+     */
+    public static void benchmark(final Cluster cluster, final String name,
+                                 final List<Callable<Long>> jobs) throws Exception
+    {
+        final Cluster.ProcessScheduler scheduler = cluster.getScheduler();
+        final ExecutorService service = cluster.getService(1);
+        final ArrayList<Future<Long>> futures = new ArrayList<Future<Long>>(jobs.size());
+        final long scheduled = scheduler.getScheduledJobCount();
+        final long local = scheduler.getLocalJobCount();
+        final long stolen = scheduler.getStolenJobCount();
+        final long start = System.nanoTime();
+
+        for (Callable<Long> job : jobs)
+        {
+            futures.add(service.submit(job));
+        }
+
+        for (Future<Long> future : futures)
+        {
+            future.get();
+        }
+
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        FijiArchipelago.log(name + ": " + jobs.size() + " jobs on " +
+                cluster.getRunningNodeCount() + " nodes in " + String.format("%.2f", seconds) +
+                "s, " + String.format("%.0f", jobs.size() / seconds) + " jobs/s, " +
+                (scheduler.getScheduledJobCount() - scheduled) + " scheduled, " +
+                (scheduler.getLocalJobCount() - local) + " local, " +
+                (scheduler.getStolenJobCount() - stolen) + " stolen, overall mean queue wait " +
+                String.format("%.1f", scheduler.getMeanQueueWaitMillis()) + "ms");
+    }
+}
@@ -0,0 +1,390 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+
+package edu.utexas.clm.archipelago.network;
+
+import edu.utexas.clm.archipelago.FijiArchipelago;
+import edu.utexas.clm.archipelago.data.ClusterMessage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Sends ClusterMessages in length-prefixed frames. The stream starts with MAGIC, then each
+ * frame is
+ *
+ *   int payload length, byte flags, int number of messages, int uncompressed length, payload
+ *
+ * All messages that are written before a flush() go into one frame. The payloads of all frames
+ * together form one long-lived object stream, so that the stream header is only sent once.
+ * The stream is reset after every message, so that each message arrives as an object graph of
+ * its own, exactly as with the ObjectStreamCodec: objects that are part of several messages are
+ * not shared on the receiving side, and an object that is sent again after it was changed
+ * arrives in its new state. Payloads of at least compressThreshold bytes are deflated if that
+ * makes them smaller, which also takes care of the class descriptions repeated in a frame.
+ */
+public class FramedCodec implements MessageCodec
+{
+    public static final int MAGIC = 0x41584331; // "AXC1"
+
+    public static final int DEFAULT_COMPRESS_THRESHOLD = 8192;
+
+    private static final int COMPRESSED = 1;
+    private static final int NEW_STREAM = 2;
+
+    /**
+     * A ByteArrayOutputStream that gives access to its buffer without copying it.
+     */
+    private static class FrameBuffer extends ByteArrayOutputStream
+    {
+        public FrameBuffer()
+        {
+            super(4096);
+        }
+
+        public byte[] getBuffer()
+        {
+            return buf;
+        }
+    }
+
+    /**
+     * A ByteArrayInputStream over the payload of the current frame.
+     */
+    private static class FrameInputStream extends ByteArrayInputStream
+    {
+        public FrameInputStream()
+        {
+            super(new byte[0]);
+        }
+
+        public void setFrame(final byte[] bytes, final int length)
+        {
+            buf = bytes;
+            pos = 0;
+            count = length;
+            mark = 0;
+        }
+    }
+
+    private class FrameEncoder implements Encoder
+    {
+        private final DataOutputStream out;
+        private final FrameBuffer buffer;
+        private final ArrayList<ClusterMessage> batch;
+        private final Deflater deflater;
+        private byte[] deflated;
+        private ObjectOutputStream objectOutputStream;
+        private boolean newStream;
+
+        public FrameEncoder(final OutputStream os) throws IOException
+        {
+            out = new DataOutputStream(new BufferedOutputStream(os, 65536));
+            buffer = new FrameBuffer();
+            batch = new ArrayList<ClusterMessage>();
+            deflater = new Deflater(Deflater.BEST_SPEED);
+            deflated = new byte[0];
+
+            out.writeInt(MAGIC);
+            out.flush();
+
+            newObjectStream();
+        }
+
+        private void newObjectStream() throws IOException
+        {
+            buffer.reset();
+            // The stream header goes into the next frame
+            objectOutputStream = new ObjectOutputStream(buffer);
+            newStream = true;
+        }
+
+        private void writeMessage(final ClusterMessage message) throws IOException
+        {
+            // Forget the objects of the previous message, so that none of them is back-referenced.
+            // The reset goes in front of the message, where the decoder reads it with the message.
+            objectOutputStream.reset();
+            objectOutputStream.writeObject(message);
+            objectOutputStream.flush();
+        }
+
+        /**
+         * Starts a new object stream with the messages that made it into the current batch.
+         * A stream that has failed to write an object cannot be used any more.
+         */
+        private void rebuild() throws IOException
+        {
+            final ArrayList<ClusterMessage> accepted = new ArrayList<ClusterMessage>(batch);
+            boolean done = false;
+
+            while (!done)
+            {
+                done = true;
+                batch.clear();
+                newObjectStream();
+
+                for (ClusterMessage message : accepted)
+                {
+                    try
+                    {
+                        writeMessage(message);
+                        batch.add(message);
+                    }
+                    catch (Exception e)
+                    {
+                        // It must have changed since it was written the first time.
+                        FijiArchipelago.err("Dropped message " +
+                                ClusterMessage.messageToString(message) + ": " + e);
+                        accepted.remove(message);
+                        done = false;
+                        break;
+                    }
+                }
+            }
+        }
+
+        public void write(final ClusterMessage message) throws IOException
+        {
+            try
+            {
+                writeMessage(message);
+                batch.add(message);
+            }
+            catch (IOException ioe)
+            {
+                rebuild();
+                throw ioe;
+            }
+            catch (RuntimeException re)
+            {
+                rebuild();
+                throw re;
+            }
+        }
+
+        public void flush() throws IOException
+        {
+            if (batch.isEmpty())
+            {
+                return;
+            }
+
+            final int length = buffer.size();
+            byte[] payload = buffer.getBuffer();
+            int payloadLength = length;
+            int flags = newStream ? NEW_STREAM : 0;
+
+            if (length >= compressThreshold)
+            {
+                if (deflated.length < length)
+                {
+                    deflated = new byte[length];
+                }
+
+                deflater.reset();
+                deflater.setInput(payload, 0, length);
+                deflater.finish();
+
+                int n = 0;
+                while (!deflater.finished() && n < length)
+                {
+                    n += deflater.deflate(deflated, n, length - n);
+                }
+
+                if (deflater.finished() && n < length)
+                {
+                    payload = deflated;
+                    payloadLength = n;
+                    flags |= COMPRESSED;
+                }
+            }
+
+            out.writeInt(payloadLength);
+            out.writeByte(flags);
+            out.writeInt(batch.size());
+            out.writeInt(length);
+            out.write(payload, 0, payloadLength);
+            out.flush();
+
+            buffer.reset();
+            batch.clear();
+            newStream = false;
+        }
+    }
+
+    private class FrameDecoder implements Decoder
+    {
+        private final DataInputStream in;
+        private final FrameInputStream frame;
+        private final Inflater inflater;
+        private byte[] payload, inflated;
+        private ObjectInputStream objectInputStream;
+        private int remaining;
+
+        public FrameDecoder(final InputStream is) throws IOException
+        {
+            in = new DataInputStream(new BufferedInputStream(is, 65536));
+            frame = new FrameInputStream();
+            inflater = new Inflater();
+            payload = new byte[0];
+            inflated = new byte[0];
+            objectInputStream = null;
+            remaining = 0;
+
+            if (in.readInt() != MAGIC)
+            {
+                throw new StreamCorruptedException("Not a framed message stream");
+            }
+        }
+
+        private void readFrame() throws IOException
+        {
+            final int payloadLength = in.readInt();
+            final int flags = in.readUnsignedByte();
+            final int count = in.readInt();
+            final int length = in.readInt();
+
+            if (payloadLength < 0 || count < 0 || length < 0)
+            {
+                throw new StreamCorruptedException("Invalid frame header");
+            }
+
+            if (payload.length < payloadLength)
+            {
+                payload = new byte[payloadLength];
+            }
+            in.readFully(payload, 0, payloadLength);
+
+            if ((flags & COMPRESSED) != 0)
+            {
+                if (inflated.length < length)
+                {
+                    inflated = new byte[length];
+                }
+
+                inflater.reset();
+                inflater.setInput(payload, 0, payloadLength);
+
+                try
+                {
+                    int n = 0;
+                    while (n < length && !inflater.finished())
+                    {
+                        final int m = inflater.inflate(inflated, n, length - n);
+                        if (m == 0 && inflater.needsInput())
+                        {
+                            break;
+                        }
+                        n += m;
+                    }
+
+                    if (n != length)
+                    {
+                        throw new StreamCorruptedException("Truncated compressed frame");
+                    }
+                }
+                catch (DataFormatException dfe)
+                {
+                    throw new StreamCorruptedException("Invalid compressed frame: " + dfe);
+                }
+
+                frame.setFrame(inflated, length);
+            }
+            else
+            {
+                frame.setFrame(payload, payloadLength);
+            }
+
+            if ((flags & NEW_STREAM) != 0)
+            {
+                objectInputStream = new ObjectInputStream(frame);
+            }
+            else if (objectInputStream == null)
+            {
+                throw new StreamCorruptedException("Frame does not start an object stream");
+            }
+
+            remaining = count;
+        }
+
+        public ClusterMessage read() throws IOException, ClassNotFoundException
+        {
+            while (remaining <= 0)
+            {
+                readFrame();
+            }
+
+            --remaining;
+            return (ClusterMessage)objectInputStream.readObject();
+        }
+    }
+
+    private final int compressThreshold;
+
+    public FramedCodec()
+    {
+        this(DEFAULT_COMPRESS_THRESHOLD);
+    }
+
+    /**
+     * @param compressThreshold the size in bytes from which on frames are compressed, or
+     *                          Integer.MAX_VALUE to never compress them
+     */
+    public FramedCodec(final int compressThreshold)
+    {
+        this.compressThreshold = compressThreshold;
+    }
+
+    /**
+     * @param header the first four bytes of a stream
+     * @return true if the stream was written by a FramedCodec
+     */
+    public static boolean isFramed(final byte[] header)
+    {
+        return header.length >= 4 &&
+                ((header[0] & 0xff) << 24 | (header[1] & 0xff) << 16 |
+                        (header[2] & 0xff) << 8 | (header[3] & 0xff)) == MAGIC;
+    }
+
+    public Encoder createEncoder(final OutputStream os) throws IOException
+    {
+        return new FrameEncoder(os);
+    }
+
+    public Decoder createDecoder(final InputStream is) throws IOException
+    {
+        return new FrameDecoder(is);
+    }
+
+    public String toString()
+    {
+        return "framed";
+    }
+}
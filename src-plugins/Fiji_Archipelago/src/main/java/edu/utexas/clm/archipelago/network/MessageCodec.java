@@ -0,0 +1,69 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+
+package edu.utexas.clm.archipelago.network;
+
+import edu.utexas.clm.archipelago.data.ClusterMessage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Turns ClusterMessages into bytes on a stream and back. A MessageXC writes with the
+ * MessageCodec set by MessageXC.setDefaultCodec(), and reads with whichever codec the other
+ * side writes with.
+ */
+public interface MessageCodec
+{
+    public interface Encoder
+    {
+        /**
+         * Adds a message to the batch that is sent by the next call to flush(). If the message
+         * cannot be serialized, an exception is thrown and the batch stays as it was.
+         * @param message the message to send
+         * @throws IOException if the message could not be serialized or written
+         */
+        public void write(ClusterMessage message) throws IOException;
+
+        /**
+         * Sends the messages that have been written since the last call.
+         * @throws IOException if the stream could not be written to
+         */
+        public void flush() throws IOException;
+    }
+
+    public interface Decoder
+    {
+        /**
+         * Blocks until the next message has been read.
+         * @return the next message
+         * @throws IOException if the stream could not be read from
+         * @throws ClassNotFoundException if the class of the message is not known here
+         */
+        public ClusterMessage read() throws IOException, ClassNotFoundException;
+    }
+
+    /**
+     * Creates an Encoder, which may immediately write a header to the stream.
+     */
+    public Encoder createEncoder(OutputStream os) throws IOException;
+
+    /**
+     * Creates a Decoder, which may block until the header has been read from the stream.
+     */
+    public Decoder createDecoder(InputStream is) throws IOException;
+}
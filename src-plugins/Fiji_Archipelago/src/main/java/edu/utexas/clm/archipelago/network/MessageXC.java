@@ -26,6 +26,7 @@
 import edu.utexas.clm.archipelago.listen.TransceiverListener;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -33,6 +34,13 @@
 
 /**
  * Message transciever class
+ *
+ * Messages are written with the default MessageCodec, a FramedCodec unless it has been changed by
+ * setDefaultCodec(). Messages that are queued while the TX thread is busy are sent together in
+ * one batch. The format of the incoming messages is detected from the first bytes the peer sends,
+ * so a transceiver can read from peers that use the old object stream protocol. The peer in turn
+ * must be able to read what we send, so talking to an old version of Archipelago requires
+ * setDefaultCodec(new ObjectStreamCodec()).
  */
 public class MessageXC
 {
@@ -45,7 +53,7 @@ public void run()
             {
                 try
                 {
-                    ClusterMessage message = (ClusterMessage)objectInputStream.readObject();
+                    ClusterMessage message = decoder.read();
                     // Don't debug beats, or they'll fill your log
                     if (message.type != MessageType.BEAT)
                     {
@@ -58,7 +66,6 @@ public void run()
                         }
                     }
                     xcListener.handleMessage(message);
-                    objectInputStream = new ObjectInputStream(inStream);
                 }
                 catch (ClassCastException cce)
                 {
@@ -80,6 +87,8 @@ private class TXThread extends Thread
     {
         public void run()
         {
+            final ArrayList<ClusterMessage> batch = new ArrayList<ClusterMessage>(MAX_BATCH);
+
             while (active.get())
             {
                 ClusterMessage nextMessage = null;
@@ -92,18 +101,26 @@ public void run()
                     active.set(false);
                 }
 
-                if (nextMessage != null)
+                if (nextMessage == null)
+                {
+                    continue;
+                }
+
+                // Send everything that has piled up in the meantime along with it.
+                batch.clear();
+                batch.add(nextMessage);
+                messageQ.drainTo(batch, MAX_BATCH - 1);
+
+                for (ClusterMessage message : batch)
                 {
                     try
                     {
-                        if (nextMessage.type != MessageType.BEAT)
+                        if (message.type != MessageType.BEAT)
                         {
                             FijiArchipelago.debug("TX: " + id + " writing message " +
-                                    ClusterMessage.messageToString(nextMessage));
+                                    ClusterMessage.messageToString(message));
                         }
-                        objectOutputStream.writeObject(nextMessage);
-                        objectOutputStream.flush();
-                        objectOutputStream = new ObjectOutputStream(outStream);
+                        encoder.write(message);
                     }
                     catch (NotSerializableException nse)
                     {
@@ -122,6 +139,15 @@ public void run()
                         xcExceptionListener.handleTXThrowable(e, xc);
                     }
                 }
+
+                try
+                {
+                    encoder.flush();
+                }
+                catch (IOException ioe)
+                {
+                    xcExceptionListener.handleTXThrowable(ioe, xc);
+                }
             }
         }
     }
@@ -129,17 +155,22 @@ public void run()
     public static final long DEFAULT_WAIT = 10000;
     public static final TimeUnit DEFAULT_UNIT = TimeUnit.MILLISECONDS;
 
+    /**
+     * The largest number of messages that are sent in one batch
+     */
+    public static final int MAX_BATCH = 64;
+
+    private static MessageCodec defaultCodec = new FramedCodec();
+
     private final ArrayBlockingQueue<ClusterMessage> messageQ;
-    private ObjectOutputStream objectOutputStream;
-    private ObjectInputStream objectInputStream;
+    private final MessageCodec.Encoder encoder;
+    private final MessageCodec.Decoder decoder;
     private final Thread txThread, rxThread;
     private final AtomicBoolean active;
     private final long waitTime;
     private final TimeUnit tUnit;
     private final TransceiverListener xcListener;
     private final TransceiverExceptionListener xcExceptionListener;
-    private final OutputStream outStream;
-    private final InputStream inStream;
     private long id;
     
     private final MessageXC xc = this;
@@ -160,12 +191,12 @@ public MessageXC(InputStream inStream,
                      TimeUnit unit) throws IOException
     {
         FijiArchipelago.debug("Creating Message Transciever");
-        messageQ = new ArrayBlockingQueue<ClusterMessage>(16, true);
-        objectOutputStream = new ObjectOutputStream(outStream);
-        objectInputStream =  new ObjectInputStream(inStream);
-        FijiArchipelago.debug("XC: streams are set");
-        this.inStream = inStream;
-        this.outStream = outStream;
+        final MessageCodec codec = getDefaultCodec();
+        messageQ = new ArrayBlockingQueue<ClusterMessage>(MAX_BATCH, true);
+        // Write our header before waiting for the peer's, or both sides would wait forever
+        encoder = codec.createEncoder(outStream);
+        decoder = createDecoder(inStream);
+        FijiArchipelago.debug("XC: streams are set, sending " + codec + " messages");
         active = new AtomicBoolean(true);
         waitTime = wait;
         tUnit = unit;
@@ -181,6 +212,55 @@ public MessageXC(InputStream inStream,
         txThread.start();
     }
 
+    /**
+     * Sets the codec that is used to send messages by the transceivers that are created from now on.
+     * @param codec the MessageCodec to use
+     */
+    public static synchronized void setDefaultCodec(final MessageCodec codec)
+    {
+        defaultCodec = codec;
+    }
+
+    public static synchronized MessageCodec getDefaultCodec()
+    {
+        return defaultCodec;
+    }
+
+    /**
+     * Creates a Decoder for whatever format the peer writes, as given by the first bytes it sends.
+     * @param is the InputStream the peer's messages come from
+     * @return a Decoder for the peer's messages
+     * @throws IOException if the stream could not be read
+     */
+    private static MessageCodec.Decoder createDecoder(final InputStream is) throws IOException
+    {
+        final byte[] header = new byte[4];
+        int n = 0;
+
+        while (n < header.length)
+        {
+            final int r = is.read(header, n, header.length - n);
+            if (r < 0)
+            {
+                throw new EOFException("Stream closed before the message header was read");
+            }
+            n += r;
+        }
+
+        // Put the header back in front of the rest of the stream
+        final InputStream sis = new SequenceInputStream(new ByteArrayInputStream(header), is);
+
+        if (FramedCodec.isFramed(header))
+        {
+            return new FramedCodec().createDecoder(sis);
+        }
+        else
+        {
+            FijiArchipelago.debug("XC: peer sends object stream messages");
+            return new ObjectStreamCodec().createDecoder(sis);
+        }
+    }
+
     public void close()
     {
         if (active.get())
@@ -0,0 +1,90 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+
+package edu.utexas.clm.archipelago.network;
+
+import edu.utexas.clm.archipelago.data.ClusterMessage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * The original Archipelago protocol, kept for compatibility with older versions: every message
+ * is sent in an ObjectOutputStream of its own, as soon as it is written.
+ */
+public class ObjectStreamCodec implements MessageCodec
+{
+    private static class ObjectStreamEncoder implements Encoder
+    {
+        private final OutputStream outStream;
+        private ObjectOutputStream objectOutputStream;
+
+        public ObjectStreamEncoder(final OutputStream os) throws IOException
+        {
+            outStream = os;
+            objectOutputStream = new ObjectOutputStream(outStream);
+        }
+
+        public void write(final ClusterMessage message) throws IOException
+        {
+            objectOutputStream.writeObject(message);
+            objectOutputStream.flush();
+            objectOutputStream = new ObjectOutputStream(outStream);
+        }
+
+        public void flush()
+        {
+            // Every message has been flushed already
+        }
+    }
+
+    private static class ObjectStreamDecoder implements Decoder
+    {
+        private final InputStream inStream;
+        private ObjectInputStream objectInputStream;
+
+        public ObjectStreamDecoder(final InputStream is) throws IOException
+        {
+            inStream = is;
+            objectInputStream = new ObjectInputStream(inStream);
+        }
+
+        public ClusterMessage read() throws IOException, ClassNotFoundException
+        {
+            final ClusterMessage message = (ClusterMessage)objectInputStream.readObject();
+            objectInputStream = new ObjectInputStream(inStream);
+            return message;
+        }
+    }
+
+    public Encoder createEncoder(final OutputStream os) throws IOException
+    {
+        return new ObjectStreamEncoder(os);
+    }
+
+    public Decoder createDecoder(final InputStream is) throws IOException
+    {
+        return new ObjectStreamDecoder(is);
+    }
+
+    public String toString()
+    {
+        return "object stream";
+    }
+}
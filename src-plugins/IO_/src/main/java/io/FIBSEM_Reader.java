@@ -12,11 +12,19 @@
 import ij.process.ImageProcessor;
 import ij.process.ShortProcessor;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Opens the proprietary FIB-SEM format used at Janelia Farm
@@ -34,6 +42,11 @@ public class FIBSEM_Reader implements PlugIn
 	 */
 	public static boolean openAsFloat = false;
 
+	/**
+	 * The size of the header in bytes, the raw image data starts right after it
+	 */
+	public static final int HEADER_SIZE = 1024;
+
 	/**
 	 * Stores the current header if somebody wants access to it
 	 */
@@ -49,6 +62,27 @@ public void run( final String filename )
 	{
 		File f = new File( filename );
 
+		// a directory is opened as virtual stack of all FIB-SEM files in it
+		if ( f.isDirectory() || filename.equals( "virtual" ) )
+		{
+			if ( !f.isDirectory() )
+			{
+				final String dir = IJ.getDirectory( "Open FIB-SEM raw files (virtual)" );
+
+				if ( dir == null )
+					return;
+
+				f = new File( dir );
+			}
+
+			final ImagePlus imp = openVirtual( f, openAsFloat );
+
+			if ( imp != null )
+				imp.show();
+
+			return;
+		}
+
 		// try to open, otherwise query
 		if ( !f.exists() )
 		{
@@ -106,6 +140,72 @@ public void run( final String filename )
 		}
 	}
 
+	/**
+	 * Opens all FIB-SEM files of a directory (sorted by name) as a {@link FIBSEM_VirtualStack},
+	 * the size, number of channels and calibration are taken from the first one.
+	 *
+	 * @param dir - the directory
+	 * @param openAsFloat - see {@link #openAsFloat}
+	 * @return the {@link ImagePlus} or null if there are no FIB-SEM files
+	 */
+	public ImagePlus openVirtual( final File dir, final boolean openAsFloat )
+	{
+		final File[] candidates = dir.listFiles();
+
+		if ( candidates == null )
+		{
+			IJ.log( "Cannot list the directory '" + dir.getAbsolutePath() + "'" );
+			return null;
+		}
+
+		Arrays.sort( candidates );
+
+		final ArrayList< File > files = new ArrayList< File >();
+
+		for ( final File f : candidates )
+			if ( f.isFile() && f.getName().toLowerCase().endsWith( ".dat" ) && isFIBSEM( f ) )
+				files.add( f );
+
+		if ( files.size() == 0 )
+		{
+			IJ.log( "There are no FIB-SEM raw files in '" + dir.getAbsolutePath() + "'" );
+			return null;
+		}
+
+		final FIBSEMData header;
+
+		try
+		{
+			final FileInputStream file = new FileInputStream( files.get( 0 ) );
+			header = parseHeader( file );
+			file.close();
+		}
+		catch ( IOException e )
+		{
+			IJ.log( "Error parsing the file '" + files.get( 0 ).getAbsolutePath() + "': " + e );
+			return null;
+		}
+
+		this.header = header;
+
+		final FIBSEM_VirtualStack stack = new FIBSEM_VirtualStack( files.toArray( new File[ files.size() ] ), header, openAsFloat );
+		ImagePlus imp = new ImagePlus( dir.getName(), stack );
+
+		if ( header.numChannels > 1 )
+		{
+			imp.setDimensions( header.numChannels, files.size(), 1 );
+			imp = new CompositeImage( imp, CompositeImage.GRAYSCALE );
+		}
+
+		Calibration cal = imp.getCalibration();
+		cal.setXUnit( "nm" );
+		cal.setYUnit( "nm" );
+		cal.pixelWidth = header.pixelSize;
+		cal.pixelHeight = header.pixelSize;
+
+		return imp;
+	}
+
 	/**
 	 * Determines if the given file is a FIB-SEM file based on the magic number (first 4 bytes)
 	 *
@@ -155,77 +255,26 @@ public ImagePlus readFIBSEM( final FIBSEMData header, final FileInputStream file
 
 	final ImageProcessor readChannel( final FIBSEMData header, final FileInputStream file, double[] minmax, boolean openAsFloat ) throws IOException
 	{
-		// it is always unsigned short
-		final byte[] slice = new byte[ (int)header.xRes * (int)header.yRes * 2 ];
-		file.read( slice );
-
-		// for the display range
-		double min = Double.MAX_VALUE;
-		double max = Double.MIN_VALUE;
+		// it is always signed short
+		final short[] raw = readData( header, file.getChannel() );
 
 		final ImageProcessor ip;
 
 		if ( openAsFloat )
 		{
-			final float[] floatSlice = new float[ (int)header.xRes * (int)header.yRes ];
-
-			for ( int i = 0; i < floatSlice.length; ++i )
-			{
-				int j = 2 * i;
-				int v = ( slice[ j ] ) << 8;
-				v += ( slice[ j + 1 ] );
-
-				final float v2 = (header.offset[ 0 ] + v * header.gain[ 0 ]);
-
-				if ( v2 < min ) min = v2;
-				if ( v2 > max ) max = v2;
-				floatSlice[ i ] = v2;
-			}
-			ip = new FloatProcessor( (int)header.xRes, (int)header.yRes, floatSlice, null );
+			ip = new FloatProcessor( (int)header.xRes, (int)header.yRes, decodeFloat( raw, header, 0, minmax ), null );
 		}
 		else
 		{
-			final short[] shortSlice = new short[ (int)header.xRes * (int)header.yRes ];
-
-			final float minVolts = -10;//(float)header.detMin;
-			final float rangeVolts = 20;//(float)header.detMax - (float)header.detMin;
-			
-			int cropped = 0;
-			
-			for ( int i = 0; i < shortSlice.length; ++i )
-			{
-				int j = 2 * i;
-				int v = ( slice[ j ] ) << 8;
-				v += ( slice[ j + 1 ] );
-
-				v = Math.round( ((header.offset[ 0 ] + v * header.gain[ 0 ])-minVolts)/rangeVolts*65535.0f );
-
-				if ( v < 0 )
-				{
-					v = 0;
-					++cropped;
-				}
-				
-				if ( v > 65535 )
-				{
-					v = 65535;
-					++cropped;
-				}
-				
-				if ( v < min ) min = v;
-				if ( v > max ) max = v;
-				shortSlice[ i ] = (short)v;
-			}
-			
-			if ( cropped > 0 )
-				IJ.log( "Warning : " + cropped + " values have been truncated as they were out of range of 16 bit. To verify this, please open the image as float (see http://fiji.sc/wiki/index.php/FIBSEM_importer#Open_image_as_float)" );
+			final int[] cropped = new int[ 1 ];
+			final short[] shortSlice = decodeShort( raw, header, 0, minmax, cropped );
+
+			if ( cropped[ 0 ] > 0 )
+				IJ.log( "Warning : " + cropped[ 0 ] + " values have been truncated as they were out of range of 16 bit. To verify this, please open the image as float (see http://fiji.sc/wiki/index.php/FIBSEM_importer#Open_image_as_float)" );
 
 			ip = new ShortProcessor( (int)header.xRes, (int)header.yRes, shortSlice, null );
 		}
 
-		minmax[ 0 ] = min;
-		minmax[ 1 ] = max;
-
 		return ip;
 	}
 
@@ -233,96 +282,150 @@ final ImageStack readChannels( final FIBSEMData header, final FileInputStream fi
 	{
 		final int numChannels = header.numChannels;
 
-		// it is always unsigned short
-		final byte[] slice = new byte[ (int)header.xRes * (int)header.yRes * numChannels * 2 ];
-		file.read( slice );
+		// it is always signed short
+		final short[] raw = readData( header, file.getChannel() );
 
-		// for the display range
-		double min = Double.MAX_VALUE;
-		double max = Double.MIN_VALUE;
-
-		final ImageStack stack;
+		final ImageStack stack = new ImageStack( (int)header.xRes, (int)header.yRes );
 
 		if ( openAsFloat )
 		{
-			final float[][] floatSlice = new float[ numChannels ][ (int)header.xRes * (int)header.yRes ];
+			for ( int c = 0; c < numChannels; ++c )
+				stack.addSlice( "channel " + c, new FloatProcessor( (int)header.xRes, (int)header.yRes, decodeFloat( raw, header, c, minmax ), null ) );
+		}
+		else
+		{
+			for ( int c = 0; c < numChannels; ++c )
+			{
+				final int[] cropped = new int[ 1 ];
 
+				stack.addSlice( "channel " + c, new ShortProcessor( (int)header.xRes, (int)header.yRes, decodeShort( raw, header, c, minmax, cropped ), null ) );
 
-			for ( int i = 0; i < floatSlice[ 0 ].length; ++i )
-			{
-				for ( int c = 0; c < numChannels; ++c )
-				{
-					int j = 2 * i * numChannels + 2 * c;
-					int v = ( slice[ j ] ) << 8;
-					v += ( slice[ j + 1 ] );
-
-					final float v2 = header.offset[ 0 ] + v * header.gain[ 0 ];
-
-					if ( v2 < min ) min = v2;
-					if ( v2 > max ) max = v2;
-					floatSlice[ c ][ i ] = v2;
-				}
+				if ( cropped[ 0 ] > 0 )
+					IJ.log( "Warning (channel " + (c+1) + "/" + numChannels + "): " + cropped[ 0 ] + " values have been truncated as they were out of range of 16 bit. To verify this, please open the image as float (see http://fiji.sc/wiki/index.php/FIBSEM_importer#Open_image_as_float)" );
 			}
+		}
 
-			stack = new ImageStack( (int)header.xRes, (int)header.yRes );
+		return stack;
+	}
 
-			for ( int c = 0; c < numChannels; ++c )
-				stack.addSlice( "channel " + c, new FloatProcessor( (int)header.xRes, (int)header.yRes, floatSlice[ c ], null ) );
+	/**
+	 * Reads the raw data of all channels, it starts at {@link FIBSEMData#dataOffset} and stores the
+	 * channels of each pixel next to each other as big-endian signed 16 bit values. The data is
+	 * memory-mapped unless the file is truncated, then the missing values are 0.
+	 *
+	 * @param header - the header of the file
+	 * @param channel - the {@link FileChannel} of the file
+	 * @return the raw values, pixel after pixel
+	 * @throws IOException
+	 */
+	public static short[] readData( final FIBSEMData header, final FileChannel channel ) throws IOException
+	{
+		final long size = 2l * header.xRes * header.yRes * header.numChannels;
+
+		if ( size > Integer.MAX_VALUE )
+			throw new IOException( "The image data of " + size + " bytes is too large" );
+
+		final ByteBuffer buffer;
+
+		if ( channel.size() >= header.dataOffset + size )
+		{
+			buffer = channel.map( FileChannel.MapMode.READ_ONLY, header.dataOffset, size );
 		}
 		else
-		{			
-			final short[][] shortSlice = new short[ numChannels ][ (int)header.xRes * (int)header.yRes ];
+		{
+			buffer = ByteBuffer.allocate( (int)size );
+			channel.position( header.dataOffset );
 
-			final float minVolts = -10;//(float)header.detMin;
-			final float rangeVolts = 20;//(float)header.detMax - (float)header.detMin;
+			while ( buffer.hasRemaining() && channel.read( buffer ) >= 0 );
 
-			int[] cropped = new int[ numChannels ];
+			buffer.clear();
+		}
 
-			for ( int i = 0; i < shortSlice[ 0 ].length; ++i )
-			{
-				
-				for ( int c = 0; c < numChannels; ++c )
-				{
-					int j = 2 * i * numChannels + 2 * c;
-					int v = ( slice[ j ] ) << 8;
-					v += ( slice[ j + 1 ] );
-
-					v = Math.round( ((header.offset[ 0 ] + v * header.gain[ 0 ])-minVolts)/rangeVolts*65535.0f );
-					
-					if ( v < 0 )
-					{
-						v = 0;
-						++cropped[ c ];
-					}
-					
-					if ( v > 65535 )
-					{
-						v = 65535;
-						++cropped[ c ];
-					}
-					
-					if ( v < min ) min = v;
-					if ( v > max ) max = v;
-					shortSlice[ c ][ i ] = (short)(v);
-				}
-				
-			}
+		final ShortBuffer data = buffer.order( ByteOrder.BIG_ENDIAN ).asShortBuffer();
+		final short[] raw = new short[ data.remaining() ];
+		data.get( raw );
+
+		return raw;
+	}
+
+	/**
+	 * Converts one channel of the raw data to volts
+	 *
+	 * @param minmax - the minimal and maximal value so far, updated with the ones of this channel
+	 */
+	public static float[] decodeFloat( final short[] raw, final FIBSEMData header, final int channel, final double[] minmax )
+	{
+		final int numChannels = header.numChannels;
+		final float[] floatSlice = new float[ raw.length / numChannels ];
 
-			for ( int i = 0; i < numChannels; ++i )
-				if ( cropped[ i ] > 0 )
-					IJ.log( "Warning (channel " + (i+1) + "/" + numChannels + "): " + cropped[ i ] + " values have been truncated as they were out of range of 16 bit. To verify this, please open the image as float (see http://fiji.sc/wiki/index.php/FIBSEM_importer#Open_image_as_float)" );
+		final float offset = header.offset[ 0 ];
+		final float gain = header.gain[ 0 ];
 
-			stack = new ImageStack( (int)header.xRes, (int)header.yRes );
+		double min = minmax[ 0 ];
+		double max = minmax[ 1 ];
 
-			for ( int c = 0; c < numChannels; ++c )
-				stack.addSlice( "channel " + c, new ShortProcessor( (int)header.xRes, (int)header.yRes, shortSlice[ c ], null ) );
+		for ( int i = 0, j = channel; i < floatSlice.length; ++i, j += numChannels )
+		{
+			final float v = offset + raw[ j ] * gain;
 
+			if ( v < min ) min = v;
+			if ( v > max ) max = v;
+			floatSlice[ i ] = v;
 		}
 
 		minmax[ 0 ] = min;
 		minmax[ 1 ] = max;
 
-		return stack;
+		return floatSlice;
+	}
+
+	/**
+	 * Converts one channel of the raw data to unsigned short with the range [0..65535] where 0 == -10 Volts
+	 * and 65535 == +10 Volts. If there is only one channel the raw data is overwritten and returned.
+	 *
+	 * @param minmax - the minimal and maximal value so far, updated with the ones of this channel
+	 * @param cropped - the number of values out of range is added to its first entry
+	 */
+	public static short[] decodeShort( final short[] raw, final FIBSEMData header, final int channel, final double[] minmax, final int[] cropped )
+	{
+		final int numChannels = header.numChannels;
+		final short[] shortSlice = numChannels == 1 ? raw : new short[ raw.length / numChannels ];
+
+		final float offset = header.offset[ 0 ];
+		final float gain = header.gain[ 0 ];
+		final float minVolts = -10;//(float)header.detMin;
+		final float rangeVolts = 20;//(float)header.detMax - (float)header.detMin;
+
+		double min = minmax[ 0 ];
+		double max = minmax[ 1 ];
+		int numCropped = 0;
+
+		for ( int i = 0, j = channel; i < shortSlice.length; ++i, j += numChannels )
+		{
+			int v = Math.round( ((offset + raw[ j ] * gain)-minVolts)/rangeVolts*65535.0f );
+
+			if ( v < 0 )
+			{
+				v = 0;
+				++numCropped;
+			}
+
+			if ( v > 65535 )
+			{
+				v = 65535;
+				++numCropped;
+			}
+
+			if ( v < min ) min = v;
+			if ( v > max ) max = v;
+			shortSlice[ i ] = (short)v;
+		}
+
+		minmax[ 0 ] = min;
+		minmax[ 1 ] = max;
+		cropped[ 0 ] += numCropped;
+
+		return shortSlice;
 	}
 
 	/**
@@ -333,9 +436,21 @@ final ImageStack readChannels( final FIBSEMData header, final FileInputStream fi
 	 * @throws IOException
 	 */
 	public FIBSEMData parseHeader( final FileInputStream file ) throws IOException
+	{
+		return parseHeader( (InputStream)file );
+	}
+
+	/**
+	 * Parses the header, it reads exactly {@link #HEADER_SIZE} bytes from the given {@link InputStream}
+	 *
+	 * @param in - the input, which needs to skip and read fully (like a {@link FileInputStream} or {@link ByteArrayInputStream})
+	 * @return the {@link FIBSEMData} that contains all meta-data or null if the magic number (file id) does not match
+	 * @throws IOException
+	 */
+	public FIBSEMData parseHeader( final InputStream in ) throws IOException
 	{
 		// read the header
-		final DataInputStream s = new DataInputStream( file );
+		final DataInputStream s = new DataInputStream( in );
 		final FIBSEMData data = new FIBSEMData();
 
 		//
@@ -765,7 +880,10 @@ public FIBSEMData parseHeader( final FileInputStream file ) throws IOException
 		// fseek(fid,1000,'bof'); FIBSEMData.FileLength = fread(fid,1,'int64'); % Read in file length in bytes
 		data.fileLength = s.readLong();
 
-		s.skip( 1024 - 968 );
+		s.skip( HEADER_SIZE - 968 );
+
+		// the raw image data follows the header
+		data.dataOffset = HEADER_SIZE;
 
 		return data;
 	}
@@ -912,6 +1030,8 @@ public FIBSEMData parseHeader( final FileInputStream file ) throws IOException
 		public String machineID;
 		/* file length in bytes */
 		public long fileLength;
+		/* where the raw image data starts in the file */
+		public long dataOffset;
 
 		public String toString()
 		{
@@ -0,0 +1,321 @@
+package io;
+
+import ij.IJ;
+import ij.VirtualStack;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import io.FIBSEM_Reader.FIBSEMData;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A virtual stack of FIB-SEM files, one file per slice and, if the files have several channels,
+ * the channels of each file next to each other (as in a hyperstack with c channels and z slices).
+ *
+ * The image data of a file is memory-mapped and decoded only when one of its slices is asked for.
+ * The files after (or before, when scrolling backwards) the last one asked for are decoded ahead
+ * by a few low priority threads, and the decoded files are kept until they take up more than
+ * {@link #cacheFraction} of the memory.
+ */
+public class FIBSEM_VirtualStack extends VirtualStack
+{
+	/**
+	 * How many files are decoded ahead
+	 */
+	public static int prefetchFiles = 8;
+
+	/**
+	 * Which fraction of the maximal memory the decoded files may take up
+	 */
+	public static double cacheFraction = 0.125;
+
+	final File[] files;
+	final int width, height, numChannels;
+	final boolean openAsFloat;
+	final FIBSEM_Reader reader = new FIBSEM_Reader();
+
+	final int maxCachedFiles, numPrefetch;
+	final LinkedHashMap< Integer, Object[] > cache;
+	final HashMap< Integer, FutureTask< Object[] > > pending = new HashMap< Integer, FutureTask< Object[] > >();
+	final ThreadPoolExecutor executor;
+
+	int lastFile = -1;
+	volatile boolean warnedCropped = false;
+
+	/**
+	 * @param files - the FIB-SEM files, they all need the size and number of channels of the first one
+	 * @param header - the header of the first file
+	 * @param openAsFloat - see {@link FIBSEM_Reader#openAsFloat}
+	 */
+	public FIBSEM_VirtualStack( final File[] files, final FIBSEMData header, final boolean openAsFloat )
+	{
+		super( (int)header.xRes, (int)header.yRes, null, null );
+
+		this.files = files.clone();
+		this.width = (int)header.xRes;
+		this.height = (int)header.yRes;
+		this.numChannels = header.numChannels;
+		this.openAsFloat = openAsFloat;
+
+		final long bytesPerFile = (long)width * height * numChannels * ( openAsFloat ? 4 : 2 );
+		this.maxCachedFiles = (int)Math.max( 1, Math.min( files.length, Runtime.getRuntime().maxMemory() * cacheFraction / bytesPerFile ) );
+		this.numPrefetch = Math.max( 0, Math.min( prefetchFiles, maxCachedFiles - 1 ) );
+
+		this.cache = new LinkedHashMap< Integer, Object[] >( 16, 0.75f, true )
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry( final Map.Entry< Integer, Object[] > eldest )
+			{
+				return size() > maxCachedFiles;
+			}
+		};
+
+		final int numThreads = Math.max( 1, Math.min( 4, Runtime.getRuntime().availableProcessors() / 2 ) );
+
+		// the threads end when there is nothing to decode for a while
+		this.executor = new ThreadPoolExecutor( numThreads, numThreads, 10, TimeUnit.SECONDS, new LinkedBlockingQueue< Runnable >(), new ThreadFactory()
+		{
+			@Override
+			public Thread newThread( final Runnable r )
+			{
+				final Thread thread = new Thread( r, "FIBSEM_VirtualStack" );
+				thread.setDaemon( true );
+				thread.setPriority( Thread.MIN_PRIORITY );
+				return thread;
+			}
+		} );
+		this.executor.allowCoreThreadTimeOut( true );
+	}
+
+	@Override
+	public int getSize() { return files.length * numChannels; }
+
+	@Override
+	public int getWidth() { return width; }
+
+	@Override
+	public int getHeight() { return height; }
+
+	@Override
+	public int getBitDepth() { return openAsFloat ? 32 : 16; }
+
+	@Override
+	public String getSliceLabel( final int n )
+	{
+		final String name = files[ ( n - 1 ) / numChannels ].getName();
+
+		if ( numChannels == 1 )
+			return name;
+		else
+			return name + " channel " + ( ( n - 1 ) % numChannels );
+	}
+
+	@Override
+	public String getFileName( final int n ) { return files[ ( n - 1 ) / numChannels ].getName(); }
+
+	@Override
+	public String getDirectory() { return files[ 0 ].getParent() + File.separator; }
+
+	@Override
+	public void addSlice( final String name ) {}
+
+	@Override
+	public void deleteSlice( final int n ) {}
+
+	@Override
+	public void deleteLastSlice() {}
+
+	@Override
+	public ImageProcessor getProcessor( final int n )
+	{
+		final int file = ( n - 1 ) / numChannels;
+		final int channel = ( n - 1 ) % numChannels;
+
+		final Object[] pixels = getPixelsOfFile( file );
+		prefetch( file );
+
+		// the cached pixels must not be changed by whoever uses the processor
+		if ( pixels == null )
+		{
+			if ( openAsFloat )
+				return new FloatProcessor( width, height );
+			else
+				return new ShortProcessor( width, height );
+		}
+		else if ( openAsFloat )
+		{
+			return new FloatProcessor( width, height, ( (float[])pixels[ channel ] ).clone(), null );
+		}
+		else
+		{
+			return new ShortProcessor( width, height, ( (short[])pixels[ channel ] ).clone(), null );
+		}
+	}
+
+	@Override
+	public Object getPixels( final int n ) { return getProcessor( n ).getPixels(); }
+
+	/**
+	 * @return - the decoded channels of the file (float[] or short[]), or null if it could not be read
+	 */
+	protected Object[] getPixelsOfFile( final int file )
+	{
+		FutureTask< Object[] > task;
+		boolean run = false;
+
+		synchronized ( this )
+		{
+			final Object[] pixels = cache.get( file );
+
+			if ( pixels != null )
+				return pixels;
+
+			task = pending.get( file );
+
+			// decode it in this thread rather than waiting for the others
+			if ( task == null )
+			{
+				task = newTask( file );
+				run = true;
+			}
+		}
+
+		if ( run )
+			task.run();
+
+		try
+		{
+			return task.get();
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch ( ExecutionException e )
+		{
+			IJ.log( "Error reading FIB-SEM file '" + files[ file ] + "': " + e.getCause() );
+			return null;
+		}
+	}
+
+	/**
+	 * Decodes the files in the direction in which the stack is moved through
+	 */
+	protected synchronized void prefetch( final int file )
+	{
+		final int step = file < lastFile ? -1 : 1;
+		lastFile = file;
+
+		for ( int i = 1; i <= numPrefetch; ++i )
+		{
+			final int f = file + i * step;
+
+			if ( f < 0 || f >= files.length || pending.containsKey( f ) )
+				continue;
+
+			// do not change the order of the cache by get()
+			if ( cache.containsKey( f ) )
+				continue;
+
+			executor.execute( newTask( f ) );
+		}
+	}
+
+	/**
+	 * Must be called while synchronized on this stack
+	 */
+	protected FutureTask< Object[] > newTask( final int file )
+	{
+		final FutureTask< Object[] > task = new FutureTask< Object[] >( new Callable< Object[] >()
+		{
+			@Override
+			public Object[] call() throws IOException
+			{
+				try
+				{
+					final Object[] pixels = decode( files[ file ] );
+
+					synchronized ( FIBSEM_VirtualStack.this )
+					{
+						cache.put( file, pixels );
+					}
+
+					return pixels;
+				}
+				finally
+				{
+					synchronized ( FIBSEM_VirtualStack.this )
+					{
+						pending.remove( file );
+					}
+				}
+			}
+		} );
+
+		pending.put( file, task );
+
+		return task;
+	}
+
+	protected Object[] decode( final File f ) throws IOException
+	{
+		final RandomAccessFile file = new RandomAccessFile( f, "r" );
+
+		try
+		{
+			final byte[] headerBytes = new byte[ FIBSEM_Reader.HEADER_SIZE ];
+			file.readFully( headerBytes );
+
+			final FIBSEMData header = reader.parseHeader( new ByteArrayInputStream( headerBytes ) );
+
+			if ( header == null )
+				throw new IOException( "not a FIB-SEM raw file, the magic number does not match" );
+
+			if ( header.xRes != width || header.yRes != height || header.numChannels != numChannels )
+				throw new IOException( "the size is " + header.xRes + "x" + header.yRes + "x" + header.numChannels +
+						" instead of " + width + "x" + height + "x" + numChannels );
+
+			final short[] raw = FIBSEM_Reader.readData( header, file.getChannel() );
+			final Object[] pixels = new Object[ numChannels ];
+			final double[] minmax = new double[] { Double.MAX_VALUE, Double.MIN_VALUE };
+			final int[] cropped = new int[ 1 ];
+
+			for ( int c = 0; c < numChannels; ++c )
+			{
+				if ( openAsFloat )
+					pixels[ c ] = FIBSEM_Reader.decodeFloat( raw, header, c, minmax );
+				else
+					pixels[ c ] = FIBSEM_Reader.decodeShort( raw, header, c, minmax, cropped );
+			}
+
+			if ( cropped[ 0 ] > 0 && !warnedCropped )
+			{
+				warnedCropped = true;
+				IJ.log( "Warning : values of '" + f.getName() + "' (and maybe other files) have been truncated as they were out of range of 16 bit. To verify this, please open the image as float (see http://fiji.sc/wiki/index.php/FIBSEM_importer#Open_image_as_float)" );
+			}
+
+			return pixels;
+		}
+		finally
+		{
+			file.close();
+		}
+	}
+}
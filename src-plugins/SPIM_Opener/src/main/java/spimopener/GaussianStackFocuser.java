@@ -29,6 +29,11 @@ public void add(ImageProcessor ip) {
 
 	}
 
+	@Override
+	public void add(Projector part) {
+		ips.addAll(((GaussianStackFocuser)part).ips);
+	}
+
 	@Override
 	public ImageProcessor getProjection() {
 		FloatProcessor[] fps = new FloatProcessor[ips.size()];
@@ -20,6 +20,13 @@ public void add(ImageProcessor ip) {
 			this.ip.copyBits(ip, 0, 0, Blitter.MAX);
 	}
 
+	@Override
+	public void add(Projector part) {
+		ImageProcessor ip = part.getProjection();
+		if(ip != null)
+			add(ip);
+	}
+
 	@Override
 	public ImageProcessor getProjection() {
 		return ip;
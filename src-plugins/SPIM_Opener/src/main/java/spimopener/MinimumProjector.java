@@ -18,6 +18,12 @@ public void add(ImageProcessor ip) {
 			this.ip.copyBits(ip, 0, 0, Blitter.MIN);
 	}
 
+	public void add(Projector part) {
+		ImageProcessor ip = part.getProjection();
+		if(ip != null)
+			add(ip);
+	}
+
 	public ImageProcessor getProjection() {
 		return ip;
 	}
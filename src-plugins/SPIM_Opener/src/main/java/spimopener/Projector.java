@@ -8,5 +8,11 @@ public interface Projector {
 
 	public void add(ImageProcessor ip);
 
+	/**
+	 * Adds the planes of a partial projection of the same kind,
+	 * which were added after the planes added to this one.
+	 */
+	public void add(Projector part);
+
 	public ImageProcessor getProjection();
 }
@@ -39,6 +39,9 @@ public class SPIMExperiment {
 	public static final int MIN_PROJECTION         = 2;
 	public static final int GAUSSIAN_STACK_FOCUSER = 3;
 
+	/** The number of threads which read the planes of a projection in parallel. */
+	public static int readerThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
 	public SPIMExperiment(String xmlfile) {
 		if(!xmlfile.endsWith(".xml"))
 			throw new IllegalArgumentException("Please select an xml file");
@@ -209,13 +212,9 @@ public ImagePlus open(int sample,
 		if(projectionMethod == NO_PROJECTION)
 			return openNotProjected(sample, tpMin, tpMax, tpStep, region, angle, channel, zMin, zMax, zStep, fMin, fMax, fStep, yMin, yMax, yStep, xMin, xMax, xStep, xDir, yDir, zDir, virtual);
 
-		Projector projector = null;
-		switch(projectionMethod) {
-			case MIN_PROJECTION:         projector = new MinimumProjector(); break;
-			case MAX_PROJECTION:         projector = new MaximumProjector(); break;
-			case GAUSSIAN_STACK_FOCUSER: projector = new GaussianStackFocuser(); break;
-			default: throw new IllegalArgumentException("Unknown projection method: " + projectionMethod);
-		}
+		Projector[] parts = new Projector[readerThreads];
+		for(int i = 0; i < parts.length; i++)
+			parts[i] = createProjector(projectionMethod);
 
 		final int D = 5;
 		final int[] MIN = new int[] { xMin, yMin, fMin, zMin, tpMin };
@@ -239,58 +238,14 @@ public ImagePlus open(int sample,
 		final int[] position = new int[D];
 		System.arraycopy(MIN, 0, position, 0, D);
 
-		if(xDir == X && yDir == Y && INC[xDir] == 1 && INC[yDir] == 1) {
-			for(int z = MIN[zDir]; z <= MAX[zDir]; z+=INC[zDir]) {
-				position[zDir] = z;
-				if(IJ.escapePressed()) {
-					IJ.resetEscape();
-					break;
-				}
-				projector.reset();
-				for(int proj = MIN[projectionDir]; proj <= MAX[projectionDir]; proj+=INC[projectionDir]) {
-					position[projectionDir] = proj;
-					String path = getPath(sample, position[T], region, angle, channel, position[Z], position[F]);
-					ImageProcessor ip = openRaw(path, w, h, MIN[xDir], MAX[xDir], MIN[yDir], MAX[yDir]);
-					projector.add(ip);
-				}
-				stack.addSlice(projector.getProjection());
-				IJ.showProgress(z - MIN[zDir], MAX[zDir] - MIN[zDir] + 1);
-			}
-		}
-		else {
-			int[] ordered = new int[2];
-			ordered[0] = Math.min(xDir, yDir);
-			ordered[1] = Math.max(xDir, yDir);
-			for(int z = MIN[zDir]; z <= MAX[zDir]; z+=INC[zDir]) {
-				position[zDir] = z;
-				if(IJ.escapePressed()) {
-					IJ.resetEscape();
-					break;
-				}
-				projector.reset();
-				for(int proj = MIN[projectionDir]; proj <= MAX[projectionDir]; proj+=INC[projectionDir]) {
-					position[projectionDir] = proj;
-
-					ImageProcessor ip = new ShortProcessor(ws, hs);
-
-					for(int i1 = MIN[ordered[1]]; i1 <= MAX[ordered[1]]; i1+=INC[ordered[1]]) {
-						position[ordered[1]] = i1;
-						String path = getPath(sample, position[T], region, angle, channel, position[Z], position[F]);
-						ImageProcessor org = openRaw(path, w, h);
-						for(int i2 = MIN[ordered[0]]; i2 <= MAX[ordered[0]]; i2+=INC[ordered[0]]) {
-							position[ordered[0]] = i2;
-							ip.set((position[xDir] - MIN[xDir]) / INC[xDir],
-								(position[yDir] - MIN[yDir]) / INC[yDir],
-								org.get(position[X], position[Y]));
-						}
-					}
-					projector.add(ip);
-				}
-
-				stack.addSlice(projector.getProjection());
-				System.out.println((z - MIN[zDir]) + " / " + (MAX[zDir] - MIN[zDir] + 1));
-				IJ.showProgress(z - MIN[zDir], MAX[zDir] - MIN[zDir] + 1);
+		for(int z = MIN[zDir]; z <= MAX[zDir]; z+=INC[zDir]) {
+			position[zDir] = z;
+			if(IJ.escapePressed()) {
+				IJ.resetEscape();
+				break;
 			}
+			stack.addSlice(project(parts, sample, region, angle, channel, position, projectionDir, MIN, MAX, INC, xDir, yDir));
+			IJ.showProgress(z - MIN[zDir], MAX[zDir] - MIN[zDir] + 1);
 		}
 		IJ.showProgress(1);
 
@@ -306,6 +261,102 @@ public ImagePlus open(int sample,
 		return ret;
 	}
 
+	private static Projector createProjector(int projectionMethod) {
+		switch(projectionMethod) {
+			case MIN_PROJECTION:         return new MinimumProjector();
+			case MAX_PROJECTION:         return new MaximumProjector();
+			case GAUSSIAN_STACK_FOCUSER: return new GaussianStackFocuser();
+			default: throw new IllegalArgumentException("Unknown projection method: " + projectionMethod);
+		}
+	}
+
+	/**
+	 * Projects the planes from MIN[projectionDir] to MAX[projectionDir] at the given position.
+	 * Each reader thread reads a contiguous part of the planes into its own projector, and the
+	 * partial projections are added to the first one in the order of their planes.
+	 */
+	private ImageProcessor project(final Projector[] parts,
+			final int sample, final int region, final int angle, final int channel,
+			final int[] position, final int projectionDir,
+			final int[] MIN, final int[] MAX, final int[] INC,
+			final int xDir, final int yDir) {
+		final int nPlanes = (MAX[projectionDir] - MIN[projectionDir]) / INC[projectionDir] + 1;
+		final int nThreads = Math.min(parts.length, nPlanes);
+		final Throwable[] error = new Throwable[1];
+
+		Thread[] threads = new Thread[nThreads];
+		for(int t = 0; t < nThreads; t++) {
+			final Projector part = parts[t];
+			final int first = t * nPlanes / nThreads;
+			final int last = (t + 1) * nPlanes / nThreads;
+			part.reset();
+			threads[t] = new Thread("SPIM projection reader " + t) {
+				public void run() {
+					int[] pos = position.clone();
+					try {
+						for(int i = first; i < last; i++) {
+							pos[projectionDir] = MIN[projectionDir] + i * INC[projectionDir];
+							part.add(openPlane(sample, region, angle, channel, pos, MIN, MAX, INC, xDir, yDir));
+						}
+					} catch(Throwable e) {
+						synchronized(error) {
+							if(error[0] == null)
+								error[0] = e;
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+
+		try {
+			for(int t = 0; t < nThreads; t++)
+				threads[t].join();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while projecting", e);
+		}
+
+		if(error[0] instanceof RuntimeException)
+			throw (RuntimeException)error[0];
+		if(error[0] instanceof Error)
+			throw (Error)error[0];
+
+		for(int t = 1; t < nThreads; t++)
+			parts[0].add(parts[t]);
+		return parts[0].getProjection();
+	}
+
+	/** Reads the plane at the given position, changes position in the x and y directions. */
+	private ImageProcessor openPlane(int sample, int region, int angle, int channel,
+			int[] position, int[] MIN, int[] MAX, int[] INC, int xDir, int yDir) {
+		if(xDir == X && yDir == Y && INC[xDir] == 1 && INC[yDir] == 1) {
+			String path = getPath(sample, position[T], region, angle, channel, position[Z], position[F]);
+			return openRaw(path, w, h, MIN[xDir], MAX[xDir], MIN[yDir], MAX[yDir]);
+		}
+
+		int ws = (MAX[xDir] - MIN[xDir] + 1) / INC[xDir];
+		int hs = (MAX[yDir] - MIN[yDir] + 1) / INC[yDir];
+		int[] ordered = new int[2];
+		ordered[0] = Math.min(xDir, yDir);
+		ordered[1] = Math.max(xDir, yDir);
+
+		ImageProcessor ip = new ShortProcessor(ws, hs);
+
+		for(int i1 = MIN[ordered[1]]; i1 <= MAX[ordered[1]]; i1+=INC[ordered[1]]) {
+			position[ordered[1]] = i1;
+			String path = getPath(sample, position[T], region, angle, channel, position[Z], position[F]);
+			ImageProcessor org = openRaw(path, w, h);
+			for(int i2 = MIN[ordered[0]]; i2 <= MAX[ordered[0]]; i2+=INC[ordered[0]]) {
+				position[ordered[0]] = i2;
+				ip.set((position[xDir] - MIN[xDir]) / INC[xDir],
+					(position[yDir] - MIN[yDir]) / INC[yDir],
+					org.get(position[X], position[Y]));
+			}
+		}
+		return ip;
+	}
+
 	public ImagePlus openNotProjected(int sample,
 			int tpMin, int tpMax,
 			int region,
@@ -6,14 +6,44 @@
 import java.io.File;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * A virtual stack whose slices are read from raw files when they are asked for.
+ * The cropped slices are kept until they take up more than {@link #cacheFraction}
+ * of the memory, and the slices after (or before, when scrolling backwards) the
+ * last one asked for are read ahead by a background thread.
+ */
 public class SPIMVirtualStack extends SPIMStack {
 
+	/** How many slices are read ahead in the scroll direction. */
+	public static int readAhead = 8;
+
+	/** Which fraction of the maximal memory the cached slices may take up. */
+	public static double cacheFraction = 0.125;
+
 	protected List<String> paths = new ArrayList<String>();
 	private int x0, x1, y0, y1, orgW, orgH;
 	private String tempdir = null;
 
+	private final int maxCached;
+	private final LinkedHashMap<String, short[]> cache;
+	private final HashMap<String, FutureTask<short[]>> pending = new HashMap<String, FutureTask<short[]>>();
+	private ThreadPoolExecutor executor = null;
+	private int lastSlice = -1;
+	// incremented when the cached slices become invalid
+	private int generation = 0;
+
 	/** Creates a new, empty virtual stack. */
 	public SPIMVirtualStack(int w, int h) {
 		super(w, h);
@@ -23,26 +53,40 @@ public SPIMVirtualStack(int w, int h) {
 		this.y1 = h - 1;
 		this.orgW = w;
 		this.orgH = h;
+
+		long bytesPerSlice = 2L * w * h;
+		this.maxCached = (int)Math.max(1, Runtime.getRuntime().maxMemory() * cacheFraction / bytesPerSlice);
+		this.cache = new LinkedHashMap<String, short[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, short[]> eldest) {
+				return size() > maxCached;
+			}
+		};
 	}
 
-	public void setRange(int orgW, int orgH, int xOffs, int yOffs) {
+	public synchronized void setRange(int orgW, int orgH, int xOffs, int yOffs) {
 		this.orgW = orgW;
 		this.orgH = orgH;
 		this.x0 = xOffs;
 		this.x1 = xOffs + getWidth() - 1;
 		this.y0 = yOffs;
 		this.y1 = yOffs + getHeight() - 1;
+		cache.clear();
+		pending.clear();
+		generation++;
 	}
 
 	/** Adds an image to the end of the stack. */
-	public void addSlice(String path) {
+	public synchronized void addSlice(String path) {
 		if (path == null)
 			throw new IllegalArgumentException("path is null!");
 
 		paths.add(path);
 	}
 
-	public void addSlice(ImageProcessor ip) {
+	public synchronized void addSlice(ImageProcessor ip) {
 		String path = makeTempFilename();
 		try {
 			SPIMExperiment.saveRaw(ip, path);
@@ -65,10 +109,10 @@ public void addSlice(String sliceLabel, ImageProcessor ip, int n) {
 	}
 
 	/** Deletes the specified slice, were 1<=n<=nslices. */
-	public void deleteSlice(int n) {
+	public synchronized void deleteSlice(int n) {
 		if(n < 1 || n > paths.size())
 			throw new IllegalArgumentException("Argument out of range: " + n);
-		paths.remove(n - 1);
+		cache.remove(paths.remove(n - 1));
 	}
 
 	/** Deletes the last slice in the stack. */
@@ -95,16 +139,105 @@ public void setPixels(Object pixels, int n) {
 	 *  were 1<=n<=nslices. Returns null if the stack is empty.
 	 */
 	public ImageProcessor getProcessor(int n) {
-		ImageProcessor ip = null;
+		short[] pixels = null;
 		try {
-			ip = SPIMExperiment.openRaw(paths.get(n - 1), orgW, orgH, x0, x1, y0, y1);
+			pixels = getCachedPixels(n);
 		} catch(Exception e) {
 			e.printStackTrace();
 			return null;
 		}
-		if(!(ip instanceof ShortProcessor))
-			ip = ip.convertToShort(true);
-		return ip;
+		readAhead(n);
+		// the cached pixels must not be changed by whoever uses the processor
+		return new ShortProcessor(getWidth(), getHeight(), pixels.clone(), null);
+	}
+
+	/** Returns the cached pixels of the slice, reads them if necessary. */
+	private short[] getCachedPixels(int n) throws Exception {
+		FutureTask<short[]> task = null;
+		boolean run = false;
+		synchronized(this) {
+			String path = paths.get(n - 1);
+			short[] pixels = cache.get(path);
+			if(pixels != null)
+				return pixels;
+			task = pending.get(path);
+			// read it in this thread rather than waiting for the background thread
+			if(task == null) {
+				task = newTask(path);
+				run = true;
+			}
+		}
+		if(run)
+			task.run();
+		try {
+			return task.get();
+		} catch(ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+		}
+	}
+
+	/** Reads the slices in the direction in which the stack is scrolled. */
+	private synchronized void readAhead(int n) {
+		int step = n < lastSlice ? -1 : 1;
+		lastSlice = n;
+		int nAhead = Math.min(readAhead, maxCached - 1);
+		for(int i = 1; i <= nAhead; i++) {
+			int s = n + i * step;
+			if(s < 1 || s > paths.size())
+				break;
+			String path = paths.get(s - 1);
+			// containsKey() does not change the order of the cache
+			if(pending.containsKey(path) || cache.containsKey(path))
+				continue;
+			getExecutor().execute(newTask(path));
+		}
+	}
+
+	/** Must be called while synchronized on this stack. */
+	private FutureTask<short[]> newTask(final String path) {
+		final int orgW = this.orgW, orgH = this.orgH;
+		final int x0 = this.x0, x1 = this.x1, y0 = this.y0, y1 = this.y1;
+		final int gen = generation;
+		FutureTask<short[]> task = new FutureTask<short[]>(new Callable<short[]>() {
+			public short[] call() {
+				try {
+					ImageProcessor ip = SPIMExperiment.openRaw(path, orgW, orgH, x0, x1, y0, y1);
+					if(!(ip instanceof ShortProcessor))
+						ip = ip.convertToShort(true);
+					short[] pixels = (short[])ip.getPixels();
+					synchronized(SPIMVirtualStack.this) {
+						if(gen == generation)
+							cache.put(path, pixels);
+					}
+					return pixels;
+				} finally {
+					synchronized(SPIMVirtualStack.this) {
+						if(gen == generation)
+							pending.remove(path);
+					}
+				}
+			}
+		});
+		pending.put(path, task);
+		return task;
+	}
+
+	/** Must be called while synchronized on this stack. */
+	private ThreadPoolExecutor getExecutor() {
+		if(executor == null) {
+			// the thread ends when there is nothing to read for a while
+			executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "SPIMVirtualStack read-ahead");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+			executor.allowCoreThreadTimeOut(true);
+		}
+		return executor;
 	}
 
 	/** Currently not implemented */
@@ -114,7 +114,7 @@ float estimateCostToGoal( int current_x, int current_y, int current_z, int to_go
         }
 
 	Path getPathBack( int from_x, int from_y, int from_z ) {
-		return nodes_as_image_from_start[from_z][from_y*width+from_x].asPath( x_spacing, y_spacing, z_spacing, spacing_units );
+		return nodes_from_start.get( from_x, from_y, from_z ).asPath( x_spacing, y_spacing, z_spacing, spacing_units );
 	}
 
 	public Path getResult() {
@@ -52,11 +52,7 @@ public float getDistanceAtPoint( double xd, double yd, double zd ) {
 		int y = (int)Math.round( yd );
 		int z = (int)Math.round( zd );
 
-                SearchNode [] slice = nodes_as_image_from_start[z];
-                if( slice == null )
-			return -1.0f;
-
-		SearchNode n = slice[y*width+x];
+		SearchNode n = nodes_from_start.get( x, y, z );
 		if( n == null )
 			return -1.0f;
 		else
@@ -274,31 +270,28 @@ public ImagePlus fillAsImagePlus( boolean realData ) {
 
                 ImageStack stack = new ImageStack(width,height);
 
-                for( int z = 0; z < depth; ++z ) {
-			SearchNode [] nodes_this_slice=nodes_as_image_from_start[z];
-			if( nodes_this_slice != null )
-				for( int y = 0; y < height; ++y ) {
-					for( int x = 0; x < width; ++x ) {
-						SearchNode s = nodes_as_image_from_start[z][y*width+x];
-						if( (s != null) && (s.g <= threshold) ) {
-							switch( imageType ) {
-							case ImagePlus.GRAY8:
-							case ImagePlus.COLOR_256:
-								new_slice_data_b[z][y*width+x] = realData ? slices_data_b[z][y*width+x] : (byte)255;
-								break;
-							case ImagePlus.GRAY16:
-								new_slice_data_s[z][y*width+x] = realData ? slices_data_s[z][y*width+x] : 255;
-								break;
-							case ImagePlus.GRAY32:
-								new_slice_data_f[z][y*width+x] = realData ? slices_data_f[z][y*width+x] : 255;
-								break;
-							default:
-								break;
-							}
-						}
-					}
-				}
+		for( SearchNode s : nodes_from_start ) {
+			if( s.g > threshold )
+				continue;
+			int z = s.z;
+			int i = s.y*width+s.x;
+			switch( imageType ) {
+			case ImagePlus.GRAY8:
+			case ImagePlus.COLOR_256:
+				new_slice_data_b[z][i] = realData ? slices_data_b[z][i] : (byte)255;
+				break;
+			case ImagePlus.GRAY16:
+				new_slice_data_s[z][i] = realData ? slices_data_s[z][i] : 255;
+				break;
+			case ImagePlus.GRAY32:
+				new_slice_data_f[z][i] = realData ? slices_data_f[z][i] : 255;
+				break;
+			default:
+				break;
+			}
+		}
 
+                for( int z = 0; z < depth; ++z ) {
 			switch( imageType ) {
 			case ImagePlus.GRAY8:
 			case ImagePlus.COLOR_256:
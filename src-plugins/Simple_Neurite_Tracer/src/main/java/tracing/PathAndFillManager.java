@@ -97,6 +97,7 @@ public PathAndFillManager( ) {
 		allFills = new ArrayList< Fill >();
 		listeners = new ArrayList< PathAndFillListener >();
 		selectedPathsSet = new HashSet<Path>();
+		spatialIndex = new PathSpatialIndex();
 		needImageDataFromTracesFile = true;
 		this.imagePlus = null;
 		this.x_spacing = Double.MIN_VALUE;
@@ -166,6 +167,11 @@ public PathAndFillManager( int width, int height, int depth, float x_spacing, fl
 
 	HashSet< Path > selectedPathsSet;
 
+	/* An index of the points in allPaths, for finding the paths
+	   near a point: */
+
+	PathSpatialIndex spatialIndex;
+
 	public int size() {
 		return allPaths.size();
 	}
@@ -417,6 +423,12 @@ public synchronized ArrayList<SWCPoint> getSWCFor( Set<Path> selectedPaths ) thr
 
 		ArrayList<SWCPoint> result = new ArrayList<SWCPoint>();
 
+		/* The points in result from each path, so that we
+		   only need to look through the parent's points to
+		   find where a path joins it: */
+
+		HashMap<Path,ArrayList<SWCPoint>> pointsFromPath = new HashMap<Path,ArrayList<SWCPoint>>();
+
 		int currentPointID = 1;
 
 		/* nextPathsToAdd is the queue of Paths to add points
@@ -479,9 +491,7 @@ else if( parent.endJoins != null &&
 				/* Find the SWC point ID on the parent which is nearest: */
 
 				double distanceSquaredToNearestParentPoint = Double.MAX_VALUE;
-				for( SWCPoint s : result ) {
-					if( s.fromPath != parent )
-						continue;
+				for( SWCPoint s : pointsFromPath.get(parent) ) {
 					double distanceSquared = connectingPoint.distanceSquaredTo(s.x, s.y, s.z);
 					if( distanceSquared < distanceSquaredToNearestParentPoint ) {
 						nearestParentSWCPointID = s.id;
@@ -497,6 +507,12 @@ else if( parent.endJoins != null &&
 
 			SWCPoint firstSWCPoint = null;
 
+			ArrayList<SWCPoint> currentPathPoints = pointsFromPath.get(currentPath);
+			if( currentPathPoints == null ) {
+				currentPathPoints = new ArrayList<SWCPoint>();
+				pointsFromPath.put(currentPath, currentPathPoints);
+			}
+
 			boolean realRadius = pathToUse.hasCircles();
 			for( int i = indexToStartAt; i < pathToUse.points; ++i ) {
 				double radius = 0;
@@ -511,6 +527,7 @@ else if( parent.endJoins != null &&
 								 firstSWCPoint == null ?  nearestParentSWCPointID : currentPointID - 1);
 				swcPoint.fromPath = currentPath;
 				result.add(swcPoint);
+				currentPathPoints.add(swcPoint);
 				++ currentPointID;
 				if( firstSWCPoint == null )
 					firstSWCPoint = swcPoint;
@@ -535,6 +552,7 @@ else if( parent.endJoins != null &&
 								 previousPointID);
 				swcPoint.fromPath = currentPath;
 				result.add(swcPoint);
+				currentPathPoints.add(swcPoint);
 				++ currentPointID;
 			}
 
@@ -654,6 +672,7 @@ public synchronized void addPath( Path p, boolean forceNewName ) {
 			p.addTo3DViewer( plugin.univ, plugin.deselectedColor3f, plugin.colorImage );
 		}
 		allPaths.add(p);
+		spatialIndex.add(p);
 		resetListeners( p );
 	}
 
@@ -702,8 +721,11 @@ private synchronized void deletePath( int index, boolean updateInterface ) {
 		}
 
 		allPaths.remove(unfittedPathToDelete);
-		if( fittedPathToDelete != null )
+		spatialIndex.remove(unfittedPathToDelete);
+		if( fittedPathToDelete != null ) {
 			allPaths.remove(fittedPathToDelete);
+			spatialIndex.remove(fittedPathToDelete);
+		}
 
 		// We don't just delete; have to fix up the references
 		// in other paths (for start and end joins):
@@ -1413,6 +1435,7 @@ public void endElement(String uri, String localName, String qName) throws Traces
 		if( qName.equals("path") ) {
 
 			allPaths.add( current_path );
+			spatialIndex.add( current_path );
 
 		} else if( qName.equals("fill") ) {
 
@@ -1580,6 +1603,7 @@ void clearPathsAndFills( ) {
 				p.removeFrom3DViewer( plugin.univ );
 		}
 		allPaths.clear();
+		spatialIndex.clear();
 		allFills.clear();
 		resetListeners( null );
 	}
@@ -2066,39 +2090,29 @@ public void universeClosed() {
 	}
 	// ... end of methods for UniverseListener
 
-	public NearPoint nearestPointOnAnyPath( double x, double y, double z, double distanceLimit ) {
+	/* Considering the points of the paths in use in order of their
+	   distance from (x,y,z), this returns the first one for which
+	   there is a corresponding point on the path (see NearPoint),
+	   or null if there is none within distanceLimit: */
 
-		/* Order all points in all paths by their euclidean
-		   distance to (x,y,z): */
+	public synchronized NearPoint nearestPointOnAnyPath( double x, double y, double z, double distanceLimit ) {
 
-		PriorityQueue< NearPoint > pq = new PriorityQueue< NearPoint >();
+		/* Paths may have been changed (e.g. fitted) since they
+		   were added: */
 
-		for( Path path : allPaths ) {
-			if( ! path.versionInUse() )
-				continue;
-			for( int j = 0; j < path.size(); ++j ) {
-				pq.add( new NearPoint( x, y, z, path, j ) );
-			}
-		}
+		spatialIndex.refresh( allPaths );
 
-		while( true ) {
+		return spatialIndex.nearestPointOnAnyPath( x, y, z, distanceLimit );
+	}
 
-			NearPoint np = pq.poll();
-			if( np == null )
-				return null;
+	/* Returns the points of the paths in use that are within
+	   radius of (x,y,z), nearest first: */
 
-			/* Don't bother looking at points that are
-			   more than distanceLimit away.  Since we get
-			   them in the order closest to furthest away,
-			   if we exceed this limit returned: */
+	public synchronized ArrayList< NearPoint > pointsWithin( double x, double y, double z, double radius ) {
 
-			if( np.distanceToPathPointSquared() > (distanceLimit * distanceLimit) )
-				return null;
+		spatialIndex.refresh( allPaths );
 
-			double distanceToPath = np.distanceToPathNearPoint();
-			if( distanceToPath >= 0 )
-				return np;
-		}
+		return spatialIndex.pointsWithin( x, y, z, radius );
 	}
 
 	public AllPointsIterator allPointsIterator() {
@@ -0,0 +1,374 @@
+/* -*- mode: java; c-basic-offset: 8; indent-tabs-mode: t; tab-width: 8 -*- */
+
+
+/* Copyright 2006, 2007, 2008, 2009, 2010, 2011 Mark Longair */
+
+/*
+  This file is part of the ImageJ plugin "Simple Neurite Tracer".
+
+  The ImageJ plugin "Simple Neurite Tracer" is free software; you
+  can redistribute it and/or modify it under the terms of the GNU
+  General Public License as published by the Free Software
+  Foundation; either version 3 of the License, or (at your option)
+  any later version.
+
+  The ImageJ plugin "Simple Neurite Tracer" is distributed in the
+  hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+  PARTICULAR PURPOSE.  See the GNU General Public License for more
+  details.
+
+  In addition, as a special exception, the copyright holders give
+  you permission to combine this program with free software programs or
+  libraries that are released under the Apache Public License.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package tracing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/* A spatial index over the points of a set of Paths, used by
+   PathAndFillManager to find the path nearest to the mouse pointer
+   without looking at every point of every path.
+
+   Space is divided into cubic cells, and each cell that contains
+   points keeps a list of them (as a Path and an index into it).
+   Paths are added and removed one at a time; refresh() re-indexes
+   any paths whose points have changed since they were added, e.g. by
+   being fitted or downsampled.
+
+   All the coordinates are in calibrated units, as in the
+   precise_[xyz]_positions of a Path.  This class is not thread-safe;
+   PathAndFillManager only uses it while holding its own lock. */
+
+public class PathSpatialIndex {
+
+	/* The edge length of a cell, in multiples of the smallest
+	   separation of the first path added: */
+
+	static final int CELL_SIZE_IN_SEPARATIONS = 8;
+
+	private static final int KEY_BITS = 21;
+	private static final long KEY_MASK = (1L << KEY_BITS) - 1;
+	private static final int KEY_OFFSET = 1 << (KEY_BITS - 1);
+
+	private static final class Cell {
+		Path [] paths = new Path[8];
+		int [] indices = new int[8];
+		int n;
+
+		void add( Path path, int index ) {
+			if( n == paths.length ) {
+				Path [] newPaths = new Path[2 * n];
+				int [] newIndices = new int[2 * n];
+				System.arraycopy( paths, 0, newPaths, 0, n );
+				System.arraycopy( indices, 0, newIndices, 0, n );
+				paths = newPaths;
+				indices = newIndices;
+			}
+			paths[n] = path;
+			indices[n] = index;
+			++ n;
+		}
+
+		void remove( Path path ) {
+			int kept = 0;
+			for( int i = 0; i < n; ++i ) {
+				if( paths[i] == path )
+					continue;
+				paths[kept] = paths[i];
+				indices[kept] = indices[i];
+				++ kept;
+			}
+			for( int i = kept; i < n; ++i )
+				paths[i] = null;
+			n = kept;
+		}
+	}
+
+	/* What was indexed for a path, so that we can tell whether
+	   its points have changed since: */
+
+	private static final class IndexedPath {
+		double [] xPositions;
+		int points;
+		long [] cellKeys;
+	}
+
+	private double cellSize = -1;
+
+	private final HashMap< Long, Cell > cells = new HashMap< Long, Cell >();
+	private final HashMap< Path, IndexedPath > indexedPaths = new HashMap< Path, IndexedPath >();
+
+	/* The range of cell coordinates that have ever had points
+	   in them since the last clear(): */
+
+	private int minCellX, minCellY, minCellZ;
+	private int maxCellX, maxCellY, maxCellZ;
+	private boolean empty = true;
+
+	public PathSpatialIndex( ) { }
+
+	/* If cellSize is not positive, the size is chosen when the first
+	   path is added: */
+
+	public PathSpatialIndex( double cellSize ) {
+		this.cellSize = cellSize;
+	}
+
+	public double getCellSize( ) {
+		return cellSize;
+	}
+
+	public int size( ) {
+		return indexedPaths.size();
+	}
+
+	public boolean contains( Path path ) {
+		return indexedPaths.containsKey( path );
+	}
+
+	public void clear( ) {
+		cells.clear();
+		indexedPaths.clear();
+		empty = true;
+	}
+
+	private int cellCoordinate( double v ) {
+		int c = (int)Math.floor( v / cellSize );
+		return Math.max( - KEY_OFFSET, Math.min( KEY_OFFSET - 1, c ) );
+	}
+
+	private static long key( int cx, int cy, int cz ) {
+		return (((cz + KEY_OFFSET) & KEY_MASK) << (2 * KEY_BITS)) |
+			(((cy + KEY_OFFSET) & KEY_MASK) << KEY_BITS) |
+			((cx + KEY_OFFSET) & KEY_MASK);
+	}
+
+	public void add( Path path ) {
+		if( indexedPaths.containsKey( path ) )
+			remove( path );
+		int points = path.size();
+		if( cellSize <= 0 ) {
+			double separation = path.getMinimumSeparation();
+			if( separation <= 0 || Double.isNaN( separation ) || Double.isInfinite( separation ) || separation == Double.MIN_VALUE )
+				separation = 1;
+			cellSize = CELL_SIZE_IN_SEPARATIONS * separation;
+		}
+		IndexedPath ip = new IndexedPath();
+		ip.xPositions = path.precise_x_positions;
+		ip.points = points;
+		ArrayList< Long > keys = new ArrayList< Long >();
+		long lastKey = 0;
+		for( int i = 0; i < points; ++i ) {
+			int cx = cellCoordinate( path.precise_x_positions[i] );
+			int cy = cellCoordinate( path.precise_y_positions[i] );
+			int cz = cellCoordinate( path.precise_z_positions[i] );
+			long k = key( cx, cy, cz );
+			Cell cell = cells.get( k );
+			if( cell == null ) {
+				cell = new Cell();
+				cells.put( k, cell );
+			}
+			cell.add( path, i );
+			/* Consecutive points are usually in the same
+			   cell, so this avoids most duplicates: */
+			if( keys.isEmpty() || k != lastKey )
+				keys.add( k );
+			lastKey = k;
+			if( empty ) {
+				minCellX = maxCellX = cx;
+				minCellY = maxCellY = cy;
+				minCellZ = maxCellZ = cz;
+				empty = false;
+			} else {
+				minCellX = Math.min( minCellX, cx );
+				minCellY = Math.min( minCellY, cy );
+				minCellZ = Math.min( minCellZ, cz );
+				maxCellX = Math.max( maxCellX, cx );
+				maxCellY = Math.max( maxCellY, cy );
+				maxCellZ = Math.max( maxCellZ, cz );
+			}
+		}
+		ip.cellKeys = new long[keys.size()];
+		for( int i = 0; i < ip.cellKeys.length; ++i )
+			ip.cellKeys[i] = keys.get( i );
+		indexedPaths.put( path, ip );
+	}
+
+	public void remove( Path path ) {
+		IndexedPath ip = indexedPaths.remove( path );
+		if( ip == null )
+			return;
+		for( long k : ip.cellKeys ) {
+			Cell cell = cells.get( k );
+			if( cell == null )
+				continue;
+			cell.remove( path );
+			if( cell.n == 0 )
+				cells.remove( k );
+		}
+	}
+
+	/* Makes the index match paths: paths that are not indexed yet or
+	   whose points have changed are (re-)indexed, and paths that are
+	   not in the collection any more are removed. */
+
+	public void refresh( Collection< Path > paths ) {
+		for( Path p : paths ) {
+			IndexedPath ip = indexedPaths.get( p );
+			if( ip == null ||
+			    ip.xPositions != p.precise_x_positions ||
+			    ip.points != p.size() )
+				add( p );
+		}
+		if( indexedPaths.size() > paths.size() ) {
+			Set< Path > current = new HashSet< Path >( paths );
+			ArrayList< Path > removed = new ArrayList< Path >();
+			for( Path p : indexedPaths.keySet() )
+				if( ! current.contains( p ) )
+					removed.add( p );
+			for( Path p : removed )
+				remove( p );
+		}
+	}
+
+	private void addCellPoints( long k,
+				    double x, double y, double z,
+				    Collection< NearPoint > result ) {
+		Cell cell = cells.get( k );
+		if( cell == null )
+			return;
+		for( int i = 0; i < cell.n; ++i ) {
+			Path path = cell.paths[i];
+			if( ! path.versionInUse() )
+				continue;
+			result.add( new NearPoint( x, y, z, path, cell.indices[i] ) );
+		}
+	}
+
+	/* Adds the points in the cells whose largest coordinate
+	   difference from (cx, cy, cz) is r, restricted to the cells
+	   that have been used: */
+
+	private void addShellPoints( int cx, int cy, int cz, int r,
+				     double x, double y, double z,
+				     Collection< NearPoint > result ) {
+		int z0 = Math.max( cz - r, minCellZ ), z1 = Math.min( cz + r, maxCellZ );
+		int y0 = Math.max( cy - r, minCellY ), y1 = Math.min( cy + r, maxCellY );
+		int x0 = Math.max( cx - r, minCellX ), x1 = Math.min( cx + r, maxCellX );
+		for( int iz = z0; iz <= z1; ++iz )
+			for( int iy = y0; iy <= y1; ++iy ) {
+				if( Math.abs( iz - cz ) == r || Math.abs( iy - cy ) == r ) {
+					for( int ix = x0; ix <= x1; ++ix )
+						addCellPoints( key( ix, iy, iz ), x, y, z, result );
+				} else {
+					if( cx - r >= minCellX )
+						addCellPoints( key( cx - r, iy, iz ), x, y, z, result );
+					if( r > 0 && cx + r <= maxCellX )
+						addCellPoints( key( cx + r, iy, iz ), x, y, z, result );
+				}
+			}
+	}
+
+	/* Returns the same as the old exhaustive search in
+	   PathAndFillManager.nearestPointOnAnyPath: considering points of
+	   the paths in use in order of their distance from (x, y, z), the
+	   first one no further than distanceLimit away for which
+	   NearPoint.distanceToPathNearPoint() finds a point on the path,
+	   or null if there is none.
+
+	   The cells are searched in cubic shells of increasing size; a
+	   point is only considered once no point in the cells not yet
+	   searched could be closer. */
+
+	public NearPoint nearestPointOnAnyPath( double x, double y, double z, double distanceLimit ) {
+		if( empty || cells.isEmpty() )
+			return null;
+		double limitSquared = distanceLimit * distanceLimit;
+		int cx = cellCoordinate( x );
+		int cy = cellCoordinate( y );
+		int cz = cellCoordinate( z );
+		/* The shells closer than the used cells are empty: */
+		int r = Math.max( 0, Math.max( Math.max( minCellX - cx, cx - maxCellX ),
+					       Math.max( Math.max( minCellY - cy, cy - maxCellY ),
+							 Math.max( minCellZ - cz, cz - maxCellZ ) ) ) );
+		PriorityQueue< NearPoint > pq = new PriorityQueue< NearPoint >();
+		for( int shell = 0; shell <= r; ++shell )
+			addShellPoints( cx, cy, cz, shell, x, y, z, pq );
+		while( true ) {
+			boolean complete =
+				cx - r <= minCellX && cx + r >= maxCellX &&
+				cy - r <= minCellY && cy + r >= maxCellY &&
+				cz - r <= minCellZ && cz + r >= maxCellZ;
+			/* No point outside the shells searched so far can be
+			   closer than this: */
+			double bound = Double.POSITIVE_INFINITY;
+			if( ! complete ) {
+				bound = Math.min( x - (cx - r) * cellSize, (cx + r + 1) * cellSize - x );
+				bound = Math.min( bound, Math.min( y - (cy - r) * cellSize, (cy + r + 1) * cellSize - y ) );
+				bound = Math.min( bound, Math.min( z - (cz - r) * cellSize, (cz + r + 1) * cellSize - z ) );
+				bound = Math.max( 0, bound );
+			}
+			double boundSquared = bound * bound;
+			while( ! pq.isEmpty() && pq.peek().distanceToPathPointSquared() <= boundSquared ) {
+				NearPoint np = pq.poll();
+				if( np.distanceToPathPointSquared() > limitSquared )
+					return null;
+				if( np.distanceToPathNearPoint() >= 0 )
+					return np;
+			}
+			if( complete || bound > distanceLimit )
+				return null;
+			++ r;
+			addShellPoints( cx, cy, cz, r, x, y, z, pq );
+		}
+	}
+
+	/* Returns the points of the paths in use that are no more than
+	   radius away from (x, y, z), nearest first: */
+
+	public ArrayList< NearPoint > pointsWithin( double x, double y, double z, double radius ) {
+		ArrayList< NearPoint > result = new ArrayList< NearPoint >();
+		if( empty || cells.isEmpty() )
+			return result;
+		double radiusSquared = radius * radius;
+		int x0 = Math.max( cellCoordinate( x - radius ), minCellX ), x1 = Math.min( cellCoordinate( x + radius ), maxCellX );
+		int y0 = Math.max( cellCoordinate( y - radius ), minCellY ), y1 = Math.min( cellCoordinate( y + radius ), maxCellY );
+		int z0 = Math.max( cellCoordinate( z - radius ), minCellZ ), z1 = Math.min( cellCoordinate( z + radius ), maxCellZ );
+		ArrayList< NearPoint > candidates = new ArrayList< NearPoint >();
+		if( (long)(x1 - x0 + 1) * (y1 - y0 + 1) * (z1 - z0 + 1) > cells.size() ) {
+			/* Then it's quicker to go through the cells that
+			   exist than all the ones in range: */
+			for( Map.Entry< Long, Cell > e : cells.entrySet() ) {
+				long k = e.getKey();
+				int ix = (int)(k & KEY_MASK) - KEY_OFFSET;
+				int iy = (int)((k >> KEY_BITS) & KEY_MASK) - KEY_OFFSET;
+				int iz = (int)((k >> (2 * KEY_BITS)) & KEY_MASK) - KEY_OFFSET;
+				if( ix >= x0 && ix <= x1 && iy >= y0 && iy <= y1 && iz >= z0 && iz <= z1 )
+					addCellPoints( k, x, y, z, candidates );
+			}
+		} else {
+			for( int iz = z0; iz <= z1; ++iz )
+				for( int iy = y0; iy <= y1; ++iy )
+					for( int ix = x0; ix <= x1; ++ix )
+						addCellPoints( key( ix, iy, iz ), x, y, z, candidates );
+		}
+		for( NearPoint np : candidates )
+			if( np.distanceToPathPointSquared() <= radiusSquared )
+				result.add( np );
+		Collections.sort( result );
+		return result;
+	}
+}
@@ -0,0 +1,170 @@
+/* -*- mode: java; c-basic-offset: 8; indent-tabs-mode: t; tab-width: 8 -*- */
+
+
+/* Copyright 2006, 2007, 2008, 2009, 2010, 2011 Mark Longair */
+
+/*
+  This file is part of the ImageJ plugin "Simple Neurite Tracer".
+
+  The ImageJ plugin "Simple Neurite Tracer" is free software; you
+  can redistribute it and/or modify it under the terms of the GNU
+  General Public License as published by the Free Software
+  Foundation; either version 3 of the License, or (at your option)
+  any later version.
+
+  The ImageJ plugin "Simple Neurite Tracer" is distributed in the
+  hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+  PARTICULAR PURPOSE.  See the GNU General Public License for more
+  details.
+
+  In addition, as a special exception, the copyright holders give
+  you permission to combine this program with free software programs or
+  libraries that are released under the Apache Public License.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package tracing;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/* A binary min-heap of SearchNodes, ordered by their compareTo()
+   method.  Each node records its position in the heap, so removing a
+   node or changing its priority is O(log n) rather than the O(n) of
+   java.util.PriorityQueue.remove().  A node can only be in one heap at
+   a time.  As with PriorityQueue, the iterator returns the nodes in no
+   particular order. */
+
+public class SearchNodeHeap implements Iterable<SearchNode> {
+
+	private SearchNode [] heap = new SearchNode[64];
+	private int size;
+
+	public int size( ) {
+		return size;
+	}
+
+	public boolean isEmpty( ) {
+		return size == 0;
+	}
+
+	public boolean contains( SearchNode n ) {
+		int i = n.heapIndex;
+		return i >= 0 && i < size && heap[i] == n;
+	}
+
+	public void add( SearchNode n ) {
+		if( size == heap.length ) {
+			SearchNode [] bigger = new SearchNode[2 * heap.length];
+			System.arraycopy( heap, 0, bigger, 0, size );
+			heap = bigger;
+		}
+		heap[size] = n;
+		n.heapIndex = size;
+		siftUp( size++ );
+	}
+
+	public SearchNode peek( ) {
+		return size == 0 ? null : heap[0];
+	}
+
+	public SearchNode poll( ) {
+		if( size == 0 )
+			return null;
+		SearchNode first = heap[0];
+		removeAt( 0 );
+		return first;
+	}
+
+	public boolean remove( SearchNode n ) {
+		if( ! contains( n ) )
+			return false;
+		removeAt( n.heapIndex );
+		return true;
+	}
+
+	/* Call this after changing the f value of a node in the heap: */
+
+	public void update( SearchNode n ) {
+		int i = n.heapIndex;
+		siftUp( i );
+		if( heap[i] == n )
+			siftDown( i );
+	}
+
+	public void clear( ) {
+		for( int i = 0; i < size; ++i ) {
+			heap[i].heapIndex = -1;
+			heap[i] = null;
+		}
+		size = 0;
+	}
+
+	private void removeAt( int i ) {
+		heap[i].heapIndex = -1;
+		SearchNode last = heap[--size];
+		heap[size] = null;
+		if( i == size )
+			return;
+		heap[i] = last;
+		last.heapIndex = i;
+		siftDown( i );
+		if( heap[i] == last )
+			siftUp( i );
+	}
+
+	private void siftUp( int i ) {
+		SearchNode n = heap[i];
+		while( i > 0 ) {
+			int parent = (i - 1) >>> 1;
+			SearchNode p = heap[parent];
+			if( n.compareTo( p ) >= 0 )
+				break;
+			heap[i] = p;
+			p.heapIndex = i;
+			i = parent;
+		}
+		heap[i] = n;
+		n.heapIndex = i;
+	}
+
+	private void siftDown( int i ) {
+		SearchNode n = heap[i];
+		int half = size >>> 1;
+		while( i < half ) {
+			int child = 2 * i + 1;
+			SearchNode c = heap[child];
+			int right = child + 1;
+			if( right < size && c.compareTo( heap[right] ) > 0 )
+				c = heap[child = right];
+			if( n.compareTo( c ) <= 0 )
+				break;
+			heap[i] = c;
+			c.heapIndex = i;
+			i = child;
+		}
+		heap[i] = n;
+		n.heapIndex = i;
+	}
+
+	public Iterator<SearchNode> iterator( ) {
+		return new Iterator<SearchNode>() {
+			int next = 0;
+			public boolean hasNext( ) {
+				return next < size;
+			}
+			public SearchNode next( ) {
+				if( next >= size )
+					throw new NoSuchElementException();
+				return heap[next++];
+			}
+			public void remove( ) {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
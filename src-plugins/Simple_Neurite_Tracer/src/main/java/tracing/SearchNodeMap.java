@@ -0,0 +1,145 @@
+/* -*- mode: java; c-basic-offset: 8; indent-tabs-mode: t; tab-width: 8 -*- */
+
+
+/* Copyright 2006, 2007, 2008, 2009, 2010, 2011 Mark Longair */
+
+/*
+  This file is part of the ImageJ plugin "Simple Neurite Tracer".
+
+  The ImageJ plugin "Simple Neurite Tracer" is free software; you
+  can redistribute it and/or modify it under the terms of the GNU
+  General Public License as published by the Free Software
+  Foundation; either version 3 of the License, or (at your option)
+  any later version.
+
+  The ImageJ plugin "Simple Neurite Tracer" is distributed in the
+  hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+  PARTICULAR PURPOSE.  See the GNU General Public License for more
+  details.
+
+  In addition, as a special exception, the copyright holders give
+  you permission to combine this program with free software programs or
+  libraries that are released under the Apache Public License.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package tracing;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/* Finds the SearchNode at a voxel.  The nodes are kept in an
+   open-addressing hash table keyed by the voxel index, so the memory
+   used grows with the number of nodes in the search rather than with
+   the size of the image.  Nodes are never removed.
+
+   get() may be called from another thread (e.g. for drawing the
+   progress of a search) while nodes are added, in which case it
+   might miss a node that has just been added. */
+
+public class SearchNodeMap implements Iterable<SearchNode> {
+
+	private static final class Table {
+		final long [] keys;
+		final SearchNode [] values;
+		Table( int capacity ) {
+			keys = new long[capacity];
+			values = new SearchNode[capacity];
+		}
+	}
+
+	private final long width;
+	private final long height;
+
+	private volatile Table table = new Table(1024);
+	private int size;
+
+	public SearchNodeMap( int width, int height ) {
+		this.width = width;
+		this.height = height;
+	}
+
+	public int size( ) {
+		return size;
+	}
+
+	public SearchNode get( int x, int y, int z ) {
+		long key = (z * height + y) * width + x;
+		Table t = table;
+		int mask = t.keys.length - 1;
+		for( int i = hash( key ) & mask; ; i = (i + 1) & mask ) {
+			SearchNode n = t.values[i];
+			if( n == null )
+				return null;
+			if( t.keys[i] == key )
+				return n;
+		}
+	}
+
+	/* Adds n at its position, replacing any node that was there: */
+
+	public void put( SearchNode n ) {
+		if( 2 * (size + 1) > table.keys.length )
+			rehash( 2 * table.keys.length );
+		if( insert( table, (n.z * height + n.y) * width + n.x, n ) )
+			++ size;
+	}
+
+	private static boolean insert( Table t, long key, SearchNode n ) {
+		int mask = t.keys.length - 1;
+		for( int i = hash( key ) & mask; ; i = (i + 1) & mask ) {
+			if( t.values[i] == null ) {
+				t.keys[i] = key;
+				t.values[i] = n;
+				return true;
+			}
+			if( t.keys[i] == key ) {
+				t.values[i] = n;
+				return false;
+			}
+		}
+	}
+
+	private void rehash( int capacity ) {
+		Table old = table;
+		Table t = new Table( capacity );
+		for( int i = 0; i < old.keys.length; ++i )
+			if( old.values[i] != null )
+				insert( t, old.keys[i], old.values[i] );
+		table = t;
+	}
+
+	private static int hash( long key ) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	}
+
+	public Iterator<SearchNode> iterator( ) {
+		final SearchNode [] values = table.values;
+		return new Iterator<SearchNode>() {
+			int next = advance( 0 );
+			int advance( int i ) {
+				while( i < values.length && values[i] == null )
+					++ i;
+				return i;
+			}
+			public boolean hasNext( ) {
+				return next < values.length;
+			}
+			public SearchNode next( ) {
+				if( next >= values.length )
+					throw new NoSuchElementException();
+				SearchNode n = values[next];
+				next = advance( next + 1 );
+				return n;
+			}
+			public void remove( ) {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
@@ -340,31 +340,33 @@ public SearchThread( ImagePlus imagePlus,
 		this.timeoutSeconds = timeoutSeconds;
 		this.reportEveryMilliseconds = reportEveryMilliseconds;
 
-		closed_from_start = new PriorityQueue<SearchNode>();
-		open_from_start = new PriorityQueue<SearchNode>();
+		closed_from_start = new SearchNodeHeap();
+		open_from_start = new SearchNodeHeap();
 		if( bidirectional ) {
-			closed_from_goal = new PriorityQueue<SearchNode>();
-			open_from_goal = new PriorityQueue<SearchNode>();
+			closed_from_goal = new SearchNodeHeap();
+			open_from_goal = new SearchNodeHeap();
 		}
 
-		nodes_as_image_from_start = new SearchNode[depth][];
+		nodes_from_start = new SearchNodeMap( width, height );
 		if( bidirectional )
-			nodes_as_image_from_goal = new SearchNode[depth][];
+			nodes_from_goal = new SearchNodeMap( width, height );
 
 		minimum_cost_per_unit_distance = minimumCostPerUnitDistance();
 
 		progressListeners = new ArrayList< SearchProgressCallback >();
 	}
 
-	PriorityQueue<SearchNode> closed_from_start;
-	PriorityQueue<SearchNode> open_from_start;
+	SearchNodeHeap closed_from_start;
+	SearchNodeHeap open_from_start;
 
 	// The next two are null if the search is not bidirectional
-	PriorityQueue<SearchNode> closed_from_goal;
-	PriorityQueue<SearchNode> open_from_goal;
+	SearchNodeHeap closed_from_goal;
+	SearchNodeHeap open_from_goal;
 
-	SearchNode [][] nodes_as_image_from_start;
-	SearchNode [][] nodes_as_image_from_goal;
+	// Find the node (if any) at each voxel; the second is null if
+	// the search is not bidirectional
+	SearchNodeMap nodes_from_start;
+	SearchNodeMap nodes_from_goal;
 
 	public void printStatus() {
 		System.out.println("... with " + open_from_start.size() + " open nodes at the start" );
@@ -402,8 +404,10 @@ public void run( ) {
 			  search.
 
 			  As well as keeping the nodes in priority lists, we
-			  keep them in a set of arrays that are indexed in the
-			  same way as voxels in the image.
+			  keep them in a map from the voxel index to the node.
+			  Each node knows its position in the heap it is in,
+			  so that it can be removed or moved up when a better
+			  route to it is found without searching the heap.
 			*/
 
 			while( (open_from_start.size() > 0) ||
@@ -458,11 +462,11 @@ public void run( ) {
 				if( bidirectional )
 					fromStart = open_from_goal.size() > open_from_start.size();
 
-				PriorityQueue<SearchNode> open_queue = fromStart ? open_from_start : open_from_goal;
-				PriorityQueue<SearchNode> closed_queue = fromStart ? closed_from_start : closed_from_goal;
+				SearchNodeHeap open_queue = fromStart ? open_from_start : open_from_goal;
+				SearchNodeHeap closed_queue = fromStart ? closed_from_start : closed_from_goal;
 
-				SearchNode [][] nodes_as_image_this_search = fromStart ? nodes_as_image_from_start : nodes_as_image_from_goal;
-				SearchNode [][] nodes_as_image_other_search = fromStart ? nodes_as_image_from_goal : nodes_as_image_from_start;
+				SearchNodeMap nodes_this_search = fromStart ? nodes_from_start : nodes_from_goal;
+				SearchNodeMap nodes_other_search = fromStart ? nodes_from_goal : nodes_from_start;
 
 				SearchNode p = null;
 
@@ -488,7 +492,6 @@ public void run( ) {
 
 				p.searchStatus = fromStart ? CLOSED_FROM_START : CLOSED_FROM_GOAL;
 				closed_queue.add( p );
-				nodes_as_image_this_search[p.z][p.y*width+p.x] = p;
 
 				// Now look at the neighbours of p.  We're going to consider
 				// the 26 neighbours in 3D.
@@ -499,10 +502,6 @@ public void run( ) {
 					if( new_z < 0 || new_z >= depth )
 						continue;
 
-					if( nodes_as_image_this_search[new_z] == null ) {
-						nodes_as_image_this_search[new_z] = new SearchNode[width*height];
-					}
-
 					for( int xdiff = -1; xdiff <= 1; xdiff++ )
 						for( int ydiff = -1; ydiff <= 1; ydiff++ ) {
 
@@ -533,19 +532,17 @@ public void run( ) {
 
 							float f_for_new_point = h_for_new_point + g_for_new_point;
 
-							SearchNode newNode = createNewNode( new_x, new_y, new_z,
-											    g_for_new_point, h_for_new_point,
-											    p, FREE );
-
-							// Is this newNode really new?
-							SearchNode alreadyThereInThisSearch = nodes_as_image_this_search[new_z][new_y*width+new_x];
+							// Is this point really new?
+							SearchNode alreadyThereInThisSearch = nodes_this_search.get( new_x, new_y, new_z );
 
 							if( alreadyThereInThisSearch == null ) {
 
-								newNode.searchStatus = fromStart ? OPEN_FROM_START : OPEN_FROM_GOAL;
+								SearchNode newNode = createNewNode( new_x, new_y, new_z,
+												    g_for_new_point, h_for_new_point,
+												    p, fromStart ? OPEN_FROM_START : OPEN_FROM_GOAL );
 								open_queue.add( newNode );
 								addingNode( newNode );
-								nodes_as_image_this_search[new_z][new_y*width+new_x] = newNode;
+								nodes_this_search.put( newNode );
 
 							} else {
 
@@ -557,24 +554,22 @@ public void run( ) {
 
 									if( alreadyThereInThisSearch.searchStatus == (fromStart ? OPEN_FROM_START : OPEN_FROM_GOAL) ) {
 
-										open_queue.remove( alreadyThereInThisSearch );
-										alreadyThereInThisSearch.setFrom( newNode );
-										alreadyThereInThisSearch.searchStatus = fromStart ? OPEN_FROM_START : OPEN_FROM_GOAL;
-										open_queue.add( alreadyThereInThisSearch );
+										alreadyThereInThisSearch.setCost( g_for_new_point, h_for_new_point, p );
+										open_queue.update( alreadyThereInThisSearch );
 
 									} else if( alreadyThereInThisSearch.searchStatus == (fromStart ? CLOSED_FROM_START : CLOSED_FROM_GOAL) ) {
 
 										closed_queue.remove( alreadyThereInThisSearch );
-										alreadyThereInThisSearch.setFrom( newNode );
+										alreadyThereInThisSearch.setCost( g_for_new_point, h_for_new_point, p );
 										alreadyThereInThisSearch.searchStatus = fromStart ? OPEN_FROM_START : OPEN_FROM_GOAL;
 										open_queue.add( alreadyThereInThisSearch );
 									}
 								}
 							}
 
-							if( bidirectional && nodes_as_image_other_search[new_z] != null ) {
+							if( bidirectional ) {
 
-								SearchNode alreadyThereInOtherSearch = nodes_as_image_other_search[new_z][new_y*width+new_x];
+								SearchNode alreadyThereInOtherSearch = nodes_other_search.get( new_x, new_y, new_z );
 								if( alreadyThereInOtherSearch != null ) {
 
 									Path result = null;
@@ -676,21 +671,13 @@ int getExitReason( ) {
 	}
 
 	SearchNode anyNodeUnderThreshold( int x, int y, int z, double threshold ) {
-		SearchNode [] startSlice = nodes_as_image_from_start[z];
-		SearchNode [] goalSlice = null;
-		if( nodes_as_image_from_goal != null )
-			goalSlice = nodes_as_image_from_goal[z];
-		int index = y*width+x;
-		SearchNode n = null;
-		if( startSlice != null ) {
-			n = startSlice[index];
+		SearchNode n = nodes_from_start.get( x, y, z );
+		if( n != null && threshold >= 0 && n.g > threshold )
+			n = null;
+		if( n == null && nodes_from_goal != null ) {
+			n = nodes_from_goal.get( x, y, z );
 			if( n != null && threshold >= 0 && n.g > threshold )
 				n = null;
-			if( n == null && goalSlice != null ) {
-				n = goalSlice[index];
-				if( threshold >= 0 && n.g > threshold )
-					n = null;
-			}
 		}
 		return n;
 	}
@@ -763,13 +750,9 @@ public void drawProgressOnSlice( int plane,
 
 	public void addNode( SearchNode n, boolean fromStart ) {
 
-		SearchNode [][] nodes_as_image = fromStart ? nodes_as_image_from_start : nodes_as_image_from_goal;
-
-		if( nodes_as_image[n.z] == null ) {
-			nodes_as_image[n.z] = new SearchNode[width*height];
-		}
+		SearchNodeMap nodes = fromStart ? nodes_from_start : nodes_from_goal;
 
-		if( nodes_as_image[n.z][n.y*width+n.x] != null ) {
+		if( nodes.get( n.x, n.y, n.z ) != null ) {
 			// Then there's already a node there:
 			return;
 		}
@@ -777,24 +760,24 @@ public void addNode( SearchNode n, boolean fromStart ) {
 		if( n.searchStatus == OPEN_FROM_START ) {
 
 			open_from_start.add( n );
-			nodes_as_image[n.z][n.y*width+n.x] = n;
+			nodes.put( n );
 
 		} else if( n.searchStatus == OPEN_FROM_GOAL ) {
 			assert bidirectional && definedGoal;
 
 			open_from_goal.add( n );
-			nodes_as_image[n.z][n.y*width+n.x] = n;
+			nodes.put( n );
 
 		} else if( n.searchStatus == CLOSED_FROM_START ) {
 
 			closed_from_start.add( n );
-			nodes_as_image[n.z][n.y*width+n.x] = n;
+			nodes.put( n );
 
 		} else if( n.searchStatus == CLOSED_FROM_GOAL ) {
 			assert bidirectional && definedGoal;
 
 			closed_from_goal.add( n );
-			nodes_as_image[n.z][n.y*width+n.x] = n;
+			nodes.put( n );
 
 		}
 
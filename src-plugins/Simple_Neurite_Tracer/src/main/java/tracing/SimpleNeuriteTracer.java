@@ -32,6 +32,7 @@
 import ij.gui.*;
 import ij.text.*;
 import ij.io.*;
+import ij.measure.Calibration;
 
 import ij3d.Image3DUniverse;
 import ij3d.Content;
@@ -55,6 +56,7 @@
 
 import features.GaussianGenerationCallback;
 import features.ComputeCurvatures;
+import features.HessianEigenvalueCache;
 
 import amira.AmiraMeshDecoder;
 import amira.AmiraParameters;
@@ -1286,18 +1288,42 @@ public void startHessian() {
 			resultsDialog.changeState(NeuriteTracerResultsDialog.CALCULATING_GAUSSIAN);
 			hessianSigma = resultsDialog.getSigma();
 			hessian = new ComputeCurvatures( xy, hessianSigma, this, true );
-			new Thread(hessian).start();
+			startHessianThread( hessian );
 		} else {
 			double newSigma = resultsDialog.getSigma();
 			if( newSigma != hessianSigma ) {
 				resultsDialog.changeState(NeuriteTracerResultsDialog.CALCULATING_GAUSSIAN);
+				hessian.releaseEigenvalueCache();
 				hessianSigma = newSigma;
 				hessian = new ComputeCurvatures( xy, hessianSigma, this, true );
-				new Thread(hessian).start();
+				startHessianThread( hessian );
 			}
 		}
 	}
 
+	/* Generates the Gaussian and then, for stacks, starts computing
+	   the eigenvalues of the Hessian in the background, with the
+	   separations that TracerThread will ask for, so that later
+	   searches find them in the cache. */
+
+	protected void startHessianThread( final ComputeCurvatures h ) {
+		new Thread() {
+			@Override
+			public void run() {
+				h.run();
+				if( singleSlice )
+					return;
+				Calibration c = xy.getCalibration();
+				HessianEigenvalueCache cache = h.getEigenvalueCache(
+					(float)c.pixelWidth,
+					(float)c.pixelHeight,
+					(float)c.pixelDepth );
+				if( cache != null )
+					cache.fillInBackground( Math.max( 1, Runtime.getRuntime().availableProcessors() - 1 ) );
+			}
+		}.start();
+	}
+
 	// Even better, we might have a "tubeness" file already there.
 	// If this is non-null then we found the "tubeness" file
 	// (called foo.tubes.tif) on startup and loaded it
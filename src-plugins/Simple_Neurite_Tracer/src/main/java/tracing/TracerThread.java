@@ -28,6 +28,7 @@
 package tracing;
 
 import features.ComputeCurvatures;
+import features.HessianEigenvalueCache;
 
 import ij.ImagePlus;
 
@@ -48,6 +49,11 @@ public class TracerThread extends SearchThread {
         ComputeCurvatures hessian;
 	double multiplier;
 
+	/* The eigenvalues of the Hessian computed by earlier searches
+	   (or in the background) are kept in here, if it's not null: */
+	HessianEigenvalueCache hessianCache;
+	float [] cachedEigenValues = new float[3];
+
         Path result;
 
 	@Override
@@ -125,6 +131,9 @@ public TracerThread( ImagePlus imagePlus,
 
 		this.useHessian = useHessian;
 
+		if( hessian != null && ! singleSlice )
+			hessianCache = hessian.getEigenvalueCache( x_spacing, y_spacing, z_spacing );
+
                 this.start_x = start_x;
                 this.start_y = start_y;
                 this.start_z = start_z;
@@ -234,7 +243,13 @@ protected double costMovingTo( int new_x, int new_y, int new_z ) {
 
 					double [] hessianEigenValues = new double[3];
 
-					boolean real = hessian.hessianEigenvaluesAtPoint3D( new_x, new_y, new_z,
+					boolean real;
+					if( hessianCache != null ) {
+						real = hessianCache.getEigenvalues( new_x, new_y, new_z, cachedEigenValues );
+						hessianEigenValues[1] = cachedEigenValues[1];
+						hessianEigenValues[2] = cachedEigenValues[2];
+					} else
+						real = hessian.hessianEigenvaluesAtPoint3D( new_x, new_y, new_z,
 											    true, hessianEigenValues, false, true, x_spacing, y_spacing, z_spacing );
 
 					/* FIXME: there's lots of literature on how to
@@ -0,0 +1,231 @@
+package mpicbg.stitching;
+
+import java.util.ArrayList;
+
+import mpicbg.imglib.algorithm.fft.FourierTransform;
+import mpicbg.imglib.algorithm.fft.FourierTransform.Rearrangement;
+import mpicbg.imglib.algorithm.fft.InverseFourierTransform;
+import mpicbg.imglib.algorithm.fft.PhaseCorrelation;
+import mpicbg.imglib.algorithm.fft.PhaseCorrelationPeak;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.type.numeric.RealType;
+import mpicbg.imglib.type.numeric.complex.ComplexFloatType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+/**
+ * A {@link PhaseCorrelation} that takes the Fourier transforms of its images from a
+ * {@link SpectrumCache} if they have been computed for an earlier pair, and puts the
+ * ones it computes into it if they are needed for another pair. The result is the
+ * same as the one of {@link PhaseCorrelation}.
+ */
+public class CachedPhaseCorrelation< T extends RealType< T >, S extends RealType< S > > extends PhaseCorrelation< T, S >
+{
+	final Image< T > image1;
+	final Image< S > image2;
+	final SpectrumCache.Key key1, key2;
+	final SpectrumCache cache;
+
+	Image< FloatType > invPCM;
+	ArrayList< PhaseCorrelationPeak > phaseCorrelationPeaks;
+	String errorMessage = "";
+
+	public CachedPhaseCorrelation( final Image< T > image1, final SpectrumCache.Key key1, final Image< S > image2, final SpectrumCache.Key key2, final SpectrumCache cache )
+	{
+		super( image1, image2 );
+
+		this.image1 = image1;
+		this.image2 = image2;
+		this.key1 = key1;
+		this.key2 = key2;
+		this.cache = cache;
+	}
+
+	@Override
+	public Image< FloatType > getPhaseCorrelationMatrix() { return invPCM; }
+	@Override
+	public PhaseCorrelationPeak getShift() { return phaseCorrelationPeaks.get( phaseCorrelationPeaks.size() -1 ); }
+	@Override
+	public ArrayList< PhaseCorrelationPeak > getAllShifts() { return phaseCorrelationPeaks; }
+	@Override
+	public String getErrorMessage() { return errorMessage.length() > 0 ? errorMessage : super.getErrorMessage(); }
+
+	@Override
+	public boolean process()
+	{
+		final int numDimensions = image1.getNumDimensions();
+
+		// get the maximal dimensions of both images
+		final int[] maxDim = getMaxDim( image1, image2 );
+
+		final FourierTransform< T, ComplexFloatType > fft1 = createFourierTransform( image1 );
+		final FourierTransform< S, ComplexFloatType > fft2 = createFourierTransform( image2 );
+
+		boolean sizeFound = false;
+
+		// check if the size was enough ( there is a minimum extension )
+		do
+		{
+			sizeFound = true;
+
+			fft1.setExtendedOriginalImageSize( maxDim );
+			fft2.setExtendedOriginalImageSize( maxDim );
+
+			for ( int d = 0; d < numDimensions; ++d )
+			{
+				final int diff = Math.abs( fft1.getExtendedSize()[ d ] - fft2.getExtendedSize()[ d ] );
+
+				if ( diff > 0 )
+				{
+					maxDim[ d ] += diff;
+					sizeFound = false;
+				}
+			}
+		}
+		while( !sizeFound );
+
+		if ( !fft1.checkInput() )
+		{
+			errorMessage = "Fourier Transform of first image failed: " + fft1.getErrorMessage();
+			return false;
+		}
+
+		if ( !fft2.checkInput() )
+		{
+			errorMessage = "Fourier Transform of second image failed: " + fft2.getErrorMessage();
+			return false;
+		}
+
+		//
+		// get the fft's from the cache or compute them
+		//
+		final SpectrumCache.Key sizedKey1 = key1.forSize( maxDim );
+		final SpectrumCache.Key sizedKey2 = key2.forSize( maxDim );
+
+		// are the spectra needed for another pair later on
+		final boolean reuse1 = cache.use( key1 );
+		final boolean reuse2 = cache.use( key2 );
+
+		final FourierTransform< ?, ComplexFloatType > cached1 = cache.get( sizedKey1 );
+		final FourierTransform< ?, ComplexFloatType > cached2 = cache.get( sizedKey2 );
+
+		if ( cached1 == null && cached2 == null )
+		{
+			if ( !computeFFT( fft1, fft2 ) )
+			{
+				errorMessage = "Fourier Transform of failed: fft1=" + fft1.getErrorMessage() + " fft2=" + fft2.getErrorMessage();
+				return false;
+			}
+		}
+		else if ( cached1 == null )
+		{
+			fft1.setNumThreads( getNumThreads() );
+
+			if ( !fft1.process() )
+			{
+				errorMessage = "Fourier Transform of failed: fft1=" + fft1.getErrorMessage();
+				return false;
+			}
+		}
+		else if ( cached2 == null )
+		{
+			fft2.setNumThreads( getNumThreads() );
+
+			if ( !fft2.process() )
+			{
+				errorMessage = "Fourier Transform of failed: fft2=" + fft2.getErrorMessage();
+				return false;
+			}
+		}
+
+		final FourierTransform< ?, ComplexFloatType > spectrum1 = cached1 == null ? fft1 : cached1;
+		final FourierTransform< ?, ComplexFloatType > spectrum2 = cached2 == null ? fft2 : cached2;
+
+		// the spectra in the cache stay untouched
+		final Image< ComplexFloatType > fftImage1 = getWorkingCopy( spectrum1, cached1 != null, sizedKey1, reuse1 );
+		final Image< ComplexFloatType > fftImage2 = getWorkingCopy( spectrum2, cached2 != null, sizedKey2, reuse2 );
+
+		//
+		// normalize and compute complex conjugate of fftImage2
+		//
+		normalizeAndConjugate( fftImage1, fftImage2 );
+
+		//
+		// multiply fftImage1 and fftImage2 which yields the phase correlation spectrum
+		//
+		multiplyInPlace( fftImage1, fftImage2 );
+
+		//
+		// invert fftImage1 which contains the phase correlation spectrum
+		//
+		final InverseFourierTransform< FloatType, ComplexFloatType > invFFT = new InverseFourierTransform< FloatType, ComplexFloatType >( fftImage1, spectrum1, new FloatType() );
+		invFFT.setInPlaceTransform( true );
+		invFFT.setCropBackToOriginalSize( false );
+
+		if ( !invFFT.checkInput() || !invFFT.process() )
+		{
+			errorMessage = "Inverse Fourier Transform of failed: " + invFFT.getErrorMessage();
+			return false;
+		}
+
+		//
+		// close the fft images
+		//
+		fftImage1.close();
+		fftImage2.close();
+
+		invPCM = invFFT.getResult();
+
+		//
+		// extract the peaks
+		//
+		phaseCorrelationPeaks = extractPhaseCorrelationPeaks( invPCM, getInvestigateNumPeaks(), spectrum1, spectrum2 );
+
+		if ( !getVerifyWithCrossCorrelation() )
+			return true;
+
+		verifyWithCrossCorrelation( phaseCorrelationPeaks, invPCM.getDimensions(), image1, image2 );
+
+		if ( !getKeepPhaseCorrelationMatrix() )
+			invPCM.close();
+
+		return true;
+	}
+
+	/**
+	 * @param spectrum - the processed {@link FourierTransform} of an image
+	 * @param cached - whether it was taken from the cache
+	 * @param reuse - whether it is needed for another pair later on
+	 * @return - the result of the {@link FourierTransform} if nobody else uses it, otherwise a copy
+	 */
+	protected Image< ComplexFloatType > getWorkingCopy( final FourierTransform< ?, ComplexFloatType > spectrum, final boolean cached, final SpectrumCache.Key sizedKey, final boolean reuse )
+	{
+		if ( cached )
+		{
+			// other threads might still be copying it, so it is only dropped from the cache
+			if ( !reuse )
+				cache.remove( sizedKey );
+
+			return spectrum.getResult().clone();
+		}
+
+		// a fresh transform is normalized in place unless it is kept for later
+		if ( reuse && cache.put( sizedKey, spectrum ) )
+			return spectrum.getResult().clone();
+		else
+			return spectrum.getResult();
+	}
+
+	/**
+	 * Sets up the {@link FourierTransform} the way {@link PhaseCorrelation} does,
+	 * a spectrum can only be reused if all of them are set up like this
+	 */
+	protected static < R extends RealType< R > > FourierTransform< R, ComplexFloatType > createFourierTransform( final Image< R > image )
+	{
+		final FourierTransform< R, ComplexFloatType > fft = new FourierTransform< R, ComplexFloatType >( image, new ComplexFloatType() );
+		fft.setRelativeImageExtension( 0.1f );
+		fft.setRelativeFadeOutDistance( 0.1f );
+		fft.setRearrangement( Rearrangement.UNCHANGED );
+
+		return fft;
+	}
+}
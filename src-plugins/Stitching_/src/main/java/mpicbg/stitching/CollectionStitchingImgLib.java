@@ -5,6 +5,8 @@
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Vector;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -187,24 +189,13 @@ protected static Vector< ComparePair > findOverlappingTiles( final ArrayList< Im
 		}
 		// end of addition
 
+		// only compare tiles that share a cell of a grid, in the same order as comparing all pairs
+		final int[][] candidates = getCandidates( elements, params.dimensionality );
+		
 		for ( int i = 0; i < elements.size() - 1; i++ )
-			for ( int j = i + 1; j < elements.size(); j++ )
+			for ( final int j : candidates[ i ] )
 			{
-				final ImageCollectionElement e1 = elements.get( i );
-				final ImageCollectionElement e2 = elements.get( j );
-				
-				boolean overlapping = true;
-				
-				for ( int d = 0; d < params.dimensionality; ++d )
-				{
-					if ( !( ( e2.offset[ d ] >= e1.offset[ d ] && e2.offset[ d ] <= e1.offset[ d ] + e1.size[ d ] ) || 
-						    ( e2.offset[ d ] + e2.size[ d ] >= e1.offset[ d ] && e2.offset[ d ] + e2.size[ d ] <= e1.offset[ d ] + e1.size[ d ] ) ||
-						    ( e2.offset[ d ] <= e1.offset[ d ] && e2.offset[ d ] >= e1.offset[ d ] + e1.size[ d ] ) 
-					   )  )
-									overlapping = false;
-				}
-				
-				if ( overlapping )
+				if ( isOverlapping( elements.get( i ), elements.get( j ), params.dimensionality ) )
 				{
 					//final ImagePlusTimePoint impA = new ImagePlusTimePoint( e1.open(), e1.getIndex(), 1, e1.getModel().copy(), e1 );
 					//final ImagePlusTimePoint impB = new ImagePlusTimePoint( e2.open(), e2.getIndex(), 1, e2.getModel().copy(), e2 );
@@ -214,4 +205,131 @@ protected static Vector< ComparePair > findOverlappingTiles( final ArrayList< Im
 		
 		return overlappingTiles;
 	}
+
+	protected static boolean isOverlapping( final ImageCollectionElement e1, final ImageCollectionElement e2, final int dimensionality )
+	{
+		boolean overlapping = true;
+		
+		for ( int d = 0; d < dimensionality; ++d )
+		{
+			if ( !( ( e2.offset[ d ] >= e1.offset[ d ] && e2.offset[ d ] <= e1.offset[ d ] + e1.size[ d ] ) || 
+				    ( e2.offset[ d ] + e2.size[ d ] >= e1.offset[ d ] && e2.offset[ d ] + e2.size[ d ] <= e1.offset[ d ] + e1.size[ d ] ) ||
+				    ( e2.offset[ d ] <= e1.offset[ d ] && e2.offset[ d ] >= e1.offset[ d ] + e1.size[ d ] ) 
+			   )  )
+							overlapping = false;
+		}
+		
+		return overlapping;
+	}
+
+	/**
+	 * Puts the tiles into a grid whose cells are as large as the largest tile, so
+	 * that each tile only covers a few cells and tiles that touch or overlap share
+	 * at least one of them.
+	 * 
+	 * @return - for every tile the indices of the tiles after it that share a cell with it, in ascending order
+	 */
+	protected static int[][] getCandidates( final ArrayList< ImageCollectionElement > elements, final int dimensionality )
+	{
+		final int numElements = elements.size();
+		final double[] min = new double[ dimensionality ];
+		final double[] cellSize = new double[ dimensionality ];
+		
+		for ( int d = 0; d < dimensionality; ++d )
+		{
+			min[ d ] = Double.MAX_VALUE;
+			cellSize[ d ] = 1;
+		}
+		
+		for ( final ImageCollectionElement e : elements )
+			for ( int d = 0; d < dimensionality; ++d )
+			{
+				min[ d ] = Math.min( min[ d ], e.offset[ d ] );
+				cellSize[ d ] = Math.max( cellSize[ d ], e.size[ d ] );
+			}
+		
+		// the cells covered by each tile, the end is computed like in isOverlapping()
+		final long[][] start = new long[ numElements ][ dimensionality ];
+		final long[][] end = new long[ numElements ][ dimensionality ];
+		
+		final HashMap< Long, ArrayList< Integer > > grid = new HashMap< Long, ArrayList< Integer > >();
+		
+		for ( int i = 0; i < numElements; ++i )
+		{
+			final ImageCollectionElement e = elements.get( i );
+			
+			for ( int d = 0; d < dimensionality; ++d )
+			{
+				start[ i ][ d ] = (long)Math.floor( ( e.offset[ d ] - min[ d ] ) / cellSize[ d ] );
+				end[ i ][ d ] = (long)Math.floor( ( ( e.offset[ d ] + e.size[ d ] ) - min[ d ] ) / cellSize[ d ] );
+			}
+			
+			for ( final long cell : getCells( start[ i ], end[ i ] ) )
+			{
+				ArrayList< Integer > tiles = grid.get( cell );
+				
+				if ( tiles == null )
+				{
+					tiles = new ArrayList< Integer >();
+					grid.put( cell, tiles );
+				}
+				
+				tiles.add( i );
+			}
+		}
+		
+		final int[][] candidates = new int[ numElements ][];
+		final int[] lastSeenBy = new int[ numElements ];
+		final int[] tmp = new int[ numElements ];
+		
+		for ( int i = 0; i < numElements; ++i )
+			lastSeenBy[ i ] = -1;
+		
+		for ( int i = 0; i < numElements; ++i )
+		{
+			int numCandidates = 0;
+			
+			for ( final long cell : getCells( start[ i ], end[ i ] ) )
+				for ( final int j : grid.get( cell ) )
+					if ( j > i && lastSeenBy[ j ] != i )
+					{
+						lastSeenBy[ j ] = i;
+						tmp[ numCandidates++ ] = j;
+					}
+			
+			candidates[ i ] = Arrays.copyOf( tmp, numCandidates );
+			Arrays.sort( candidates[ i ] );
+		}
+		
+		return candidates;
+	}
+	
+	/**
+	 * @return - the keys of all cells from start to end (inclusive), cells far apart might share a key which only adds candidates
+	 */
+	protected static ArrayList< Long > getCells( final long[] start, final long[] end )
+	{
+		final ArrayList< Long > cells = new ArrayList< Long >();
+		final long[] cell = start.clone();
+		
+		while ( true )
+		{
+			long key = 0;
+			
+			for ( int d = 0; d < cell.length; ++d )
+				key = ( key << 21 ) | ( cell[ d ] & 0x1fffff );
+			
+			cells.add( key );
+			
+			int d = 0;
+			
+			while ( d < cell.length && cell[ d ] == end[ d ] )
+				cell[ d ] = start[ d++ ];
+			
+			if ( d == cell.length )
+				return cells;
+			
+			++cell[ d ];
+		}
+	}
 }
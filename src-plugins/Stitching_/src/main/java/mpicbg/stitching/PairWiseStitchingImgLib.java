@@ -38,11 +38,36 @@
 public class PairWiseStitchingImgLib 
 {
 	public static PairWiseStitchingResult stitchPairwise( final ImagePlus imp1, final ImagePlus imp2, Roi roi1, Roi roi2, final int timepoint1, final int timepoint2, final StitchingParameters params )
+	{
+		return stitchPairwise( imp1, imp2, roi1, roi2, timepoint1, timepoint2, params, null );
+	}
+
+	/**
+	 * Announces a later call of {@link #stitchPairwise(ImagePlus, ImagePlus, Roi, Roi, int, int, StitchingParameters, SpectrumCache)}
+	 * with the same arguments, so that the cache keeps the Fourier transforms only as long as they are needed
+	 */
+	public static void expectPair( final ImagePlus imp1, final ImagePlus imp2, final Roi roi1, final Roi roi2, final int timepoint1, final int timepoint2, final StitchingParameters params, final SpectrumCache cache )
+	{
+		if ( cache == null )
+			return;
+		
+		cache.expectUse( new SpectrumCache.Key( imp1, getOnlyRectangularRoi( roi1 ), params.channel1, timepoint1 ) );
+		cache.expectUse( new SpectrumCache.Key( imp2, getOnlyRectangularRoi( roi2 ), params.channel2, timepoint2 ) );
+	}
+
+	/**
+	 * @param cache - keeps the Fourier transforms of the images for other pairs they take part in, may be null
+	 */
+	public static PairWiseStitchingResult stitchPairwise( final ImagePlus imp1, final ImagePlus imp2, Roi roi1, Roi roi2, final int timepoint1, final int timepoint2, final StitchingParameters params, final SpectrumCache cache )
 	{
 		PairWiseStitchingResult result = null;
 		roi1 = getOnlyRectangularRoi( roi1 );
 		roi2 = getOnlyRectangularRoi( roi2 );
 		
+		// what the spectra of both images are cached as
+		final SpectrumCache.Key key1 = new SpectrumCache.Key( imp1, roi1, params.channel1, timepoint1 );
+		final SpectrumCache.Key key2 = new SpectrumCache.Key( imp2, roi2, params.channel2, timepoint2 );
+		
 		// can both images be wrapped into imglib without copying
 		final boolean canWrap = !StitchingParameters.alwaysCopy && canWrapIntoImgLib( imp1, roi1, params.channel1 ) && canWrapIntoImgLib( imp2, roi2, params.channel2 );
 		
@@ -57,11 +82,11 @@ public static PairWiseStitchingResult stitchPairwise( final ImagePlus imp1, fina
 				final Image<FloatType> image1 = getWrappedImageFloat( imp1, params.channel1, timepoint1 );
 				
 				if ( imp2.getType() == ImagePlus.GRAY32 )
-					result = performStitching( image1, getWrappedImageFloat( imp2, params.channel2, timepoint2 ), params );
+					result = performStitching( image1, key1, getWrappedImageFloat( imp2, params.channel2, timepoint2 ), key2, params, cache );
 				else if ( imp2.getType() == ImagePlus.GRAY16 )
-					result = performStitching( image1, getWrappedImageUnsignedShort( imp2, params.channel2, timepoint2 ), params );
+					result = performStitching( image1, key1, getWrappedImageUnsignedShort( imp2, params.channel2, timepoint2 ), key2, params, cache );
 				else if ( imp2.getType() == ImagePlus.GRAY8 )
-					result = performStitching( image1, getWrappedImageUnsignedByte( imp2, params.channel2, timepoint2 ), params );
+					result = performStitching( image1, key1, getWrappedImageUnsignedByte( imp2, params.channel2, timepoint2 ), key2, params, cache );
 				else
 					IJ.log( "Unknown image type: " + imp2.getType() );
 				
@@ -72,11 +97,11 @@ else if ( imp1.getType() == ImagePlus.GRAY16 )
 				final Image<UnsignedShortType> image1 = getWrappedImageUnsignedShort( imp1, params.channel1, timepoint1 );
 				
 				if ( imp2.getType() == ImagePlus.GRAY32 )
-					result = performStitching( image1, getWrappedImageFloat( imp2, params.channel2, timepoint2 ), params );
+					result = performStitching( image1, key1, getWrappedImageFloat( imp2, params.channel2, timepoint2 ), key2, params, cache );
 				else if ( imp2.getType() == ImagePlus.GRAY16 )
-					result = performStitching( image1, getWrappedImageUnsignedShort( imp2, params.channel2, timepoint2 ), params );
+					result = performStitching( image1, key1, getWrappedImageUnsignedShort( imp2, params.channel2, timepoint2 ), key2, params, cache );
 				else if ( imp2.getType() == ImagePlus.GRAY8 )
-					result = performStitching( image1, getWrappedImageUnsignedByte( imp2, params.channel2, timepoint2 ), params );
+					result = performStitching( image1, key1, getWrappedImageUnsignedByte( imp2, params.channel2, timepoint2 ), key2, params, cache );
 				else
 					IJ.log( "Unknown image type: " + imp2.getType() );
 
@@ -87,11 +112,11 @@ else if ( imp1.getType() == ImagePlus.GRAY8 )
 				final Image<UnsignedByteType> image1 = getWrappedImageUnsignedByte( imp1, params.channel1, timepoint1 );
 				
 				if ( imp2.getType() == ImagePlus.GRAY32 )
-					result = performStitching( image1, getWrappedImageFloat( imp2, params.channel2, timepoint2 ), params );
+					result = performStitching( image1, key1, getWrappedImageFloat( imp2, params.channel2, timepoint2 ), key2, params, cache );
 				else if ( imp2.getType() == ImagePlus.GRAY16 )
-					result = performStitching( image1, getWrappedImageUnsignedShort( imp2, params.channel2, timepoint2 ), params );
+					result = performStitching( image1, key1, getWrappedImageUnsignedShort( imp2, params.channel2, timepoint2 ), key2, params, cache );
 				else if ( imp2.getType() == ImagePlus.GRAY8 )
-					result = performStitching( image1, getWrappedImageUnsignedByte( imp2, params.channel2, timepoint2 ), params );
+					result = performStitching( image1, key1, getWrappedImageUnsignedByte( imp2, params.channel2, timepoint2 ), key2, params, cache );
 				else
 					IJ.log( "Unknown image type: " + imp2.getType() );
 				
@@ -113,11 +138,11 @@ else if ( imp2.getType() == ImagePlus.GRAY8 )
 				final Image< FloatType > image1 = getImage( imp1, roi1, imgFactoryFloat, params.channel1, timepoint1 );
 				
 				if ( imp2.getType() == ImagePlus.GRAY32 )
-					result = performStitching( image1, getImage( imp2, roi2, imgFactoryFloat, params.channel2, timepoint2 ), params );
+					result = performStitching( image1, key1, getImage( imp2, roi2, imgFactoryFloat, params.channel2, timepoint2 ), key2, params, cache );
 				else if ( imp2.getType() == ImagePlus.GRAY16 )
-					result = performStitching( image1, getImage( imp2, roi2, imgFactoryShort, params.channel2, timepoint2 ), params );
+					result = performStitching( image1, key1, getImage( imp2, roi2, imgFactoryShort, params.channel2, timepoint2 ), key2, params, cache );
 				else if ( imp2.getType() == ImagePlus.GRAY8 )
-					result = performStitching( image1, getImage( imp2, roi2, imgFactoryByte, params.channel2, timepoint2 ), params );
+					result = performStitching( image1, key1, getImage( imp2, roi2, imgFactoryByte, params.channel2, timepoint2 ), key2, params, cache );
 				else
 					IJ.log( "Unknown image type: " + imp2.getType() );					
 			}
@@ -126,11 +151,11 @@ else if ( imp1.getType() == ImagePlus.GRAY16 )
 				final Image< UnsignedShortType > image1 = getImage( imp1, roi1, imgFactoryShort, params.channel1, timepoint1 );
 				
 				if ( imp2.getType() == ImagePlus.GRAY32 )
-					result = performStitching( image1, getImage( imp2, roi2, imgFactoryFloat, params.channel2, timepoint2 ), params );
+					result = performStitching( image1, key1, getImage( imp2, roi2, imgFactoryFloat, params.channel2, timepoint2 ), key2, params, cache );
 				else if ( imp2.getType() == ImagePlus.GRAY16 )
-					result = performStitching( image1, getImage( imp2, roi2, imgFactoryShort, params.channel2, timepoint2 ), params );
+					result = performStitching( image1, key1, getImage( imp2, roi2, imgFactoryShort, params.channel2, timepoint2 ), key2, params, cache );
 				else if ( imp2.getType() == ImagePlus.GRAY8 )
-					result = performStitching( image1, getImage( imp2, roi2, imgFactoryByte, params.channel2, timepoint2 ), params );
+					result = performStitching( image1, key1, getImage( imp2, roi2, imgFactoryByte, params.channel2, timepoint2 ), key2, params, cache );
 				else
 					IJ.log( "Unknown image type: " + imp2.getType() );					
 			}
@@ -139,11 +164,11 @@ else if ( imp1.getType() == ImagePlus.GRAY8 )
 				final Image< UnsignedByteType > image1 = getImage( imp1, roi1, imgFactoryByte, params.channel1, timepoint1 );
 				
 				if ( imp2.getType() == ImagePlus.GRAY32 )
-					result = performStitching( image1, getImage( imp2, roi2, imgFactoryFloat, params.channel2, timepoint2 ), params );
+					result = performStitching( image1, key1, getImage( imp2, roi2, imgFactoryFloat, params.channel2, timepoint2 ), key2, params, cache );
 				else if ( imp2.getType() == ImagePlus.GRAY16 )
-					result = performStitching( image1, getImage( imp2, roi2, imgFactoryShort, params.channel2, timepoint2 ), params );
+					result = performStitching( image1, key1, getImage( imp2, roi2, imgFactoryShort, params.channel2, timepoint2 ), key2, params, cache );
 				else if ( imp2.getType() == ImagePlus.GRAY8 )
-					result = performStitching( image1, getImage( imp2, roi2, imgFactoryByte, params.channel2, timepoint2 ), params );
+					result = performStitching( image1, key1, getImage( imp2, roi2, imgFactoryByte, params.channel2, timepoint2 ), key2, params, cache );
 				else
 					IJ.log( "Unknown image type: " + imp2.getType() );					
 			}
@@ -175,6 +200,11 @@ else if ( imp2.getType() == ImagePlus.GRAY8 )
 	}
 
 	public static < T extends RealType<T>, S extends RealType<S> > PairWiseStitchingResult performStitching( final Image<T> img1, final Image<S> img2, final StitchingParameters params )
+	{
+		return performStitching( img1, null, img2, null, params, null );
+	}
+
+	public static < T extends RealType<T>, S extends RealType<S> > PairWiseStitchingResult performStitching( final Image<T> img1, final SpectrumCache.Key key1, final Image<S> img2, final SpectrumCache.Key key2, final StitchingParameters params, final SpectrumCache cache )
 	{
 		if ( img1 == null )
 		{
@@ -192,14 +222,28 @@ else if ( params == null )
 			return null;
 		}
 		
-		final PairWiseStitchingResult result = computePhaseCorrelation( img1, img2, params.checkPeaks, params.subpixelAccuracy );
+		final PairWiseStitchingResult result = computePhaseCorrelation( img1, key1, img2, key2, cache, params.checkPeaks, params.subpixelAccuracy );
 		
 		return result;
 	}
 	
 	public static < T extends RealType<T>, S extends RealType<S> > PairWiseStitchingResult computePhaseCorrelation( final Image<T> img1, final Image<S> img2, final int numPeaks, final boolean subpixelAccuracy )
 	{
-		final PhaseCorrelation< T, S > phaseCorr = new PhaseCorrelation<T, S>( img1, img2 );
+		return computePhaseCorrelation( img1, null, img2, null, null, numPeaks, subpixelAccuracy );
+	}
+
+	/**
+	 * @param cache - if not null the Fourier transforms are taken from and put into it using the keys
+	 */
+	public static < T extends RealType<T>, S extends RealType<S> > PairWiseStitchingResult computePhaseCorrelation( final Image<T> img1, final SpectrumCache.Key key1, final Image<S> img2, final SpectrumCache.Key key2, final SpectrumCache cache, final int numPeaks, final boolean subpixelAccuracy )
+	{
+		final PhaseCorrelation< T, S > phaseCorr;
+		
+		if ( cache == null )
+			phaseCorr = new PhaseCorrelation<T, S>( img1, img2 );
+		else
+			phaseCorr = new CachedPhaseCorrelation<T, S>( img1, key1, img2, key2, cache );
+		
 		phaseCorr.setInvestigateNumPeaks( numPeaks );
 		
 		if ( subpixelAccuracy )
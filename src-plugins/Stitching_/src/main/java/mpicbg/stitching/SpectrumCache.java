@@ -0,0 +1,219 @@
+package mpicbg.stitching;
+
+import ij.ImagePlus;
+import ij.gui.Roi;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import mpicbg.imglib.algorithm.fft.FourierTransform;
+import mpicbg.imglib.type.numeric.complex.ComplexFloatType;
+
+/**
+ * Keeps the Fourier transforms computed by {@link CachedPhaseCorrelation} so that
+ * a tile that takes part in several pairwise comparisons is only transformed once
+ * for every region, channel, timepoint and size of transform it is compared with.
+ *
+ * Once the spectra take up more than the given number of bytes the least recently
+ * used ones are dropped. If the comparisons an image takes part in are announced
+ * with {@link #expectUse(Key)}, its spectrum is only kept until the last of them.
+ * The methods may be called from several threads at once.
+ */
+public class SpectrumCache
+{
+	/**
+	 * Identifies the image that a spectrum is computed from, the ImagePlus is
+	 * compared by identity. Only keys with the size of the transform set by
+	 * {@link #forSize(int[])} are put into the cache.
+	 */
+	public static class Key
+	{
+		final ImagePlus imp;
+		final Rectangle roi;
+		final int channel, timepoint;
+		final int[] size;
+
+		public Key( final ImagePlus imp, final Roi roi, final int channel, final int timepoint )
+		{
+			this( imp, roi == null ? null : roi.getBounds(), channel, timepoint, null );
+		}
+
+		protected Key( final ImagePlus imp, final Rectangle roi, final int channel, final int timepoint, final int[] size )
+		{
+			this.imp = imp;
+			this.roi = roi;
+			this.channel = channel;
+			this.timepoint = timepoint;
+			this.size = size;
+		}
+
+		/**
+		 * @param size - the size the image is extended to before it is transformed
+		 */
+		public Key forSize( final int[] size )
+		{
+			return new Key( imp, roi, channel, timepoint, size.clone() );
+		}
+
+		@Override
+		public boolean equals( final Object o )
+		{
+			if ( !( o instanceof Key ) )
+				return false;
+
+			final Key k = (Key)o;
+
+			return imp == k.imp && channel == k.channel && timepoint == k.timepoint &&
+				( roi == null ? k.roi == null : roi.equals( k.roi ) ) && Arrays.equals( size, k.size );
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int hash = System.identityHashCode( imp );
+			hash = hash * 31 + ( roi == null ? 0 : roi.hashCode() );
+			hash = hash * 31 + channel;
+			hash = hash * 31 + timepoint;
+
+			return hash * 31 + Arrays.hashCode( size );
+		}
+	}
+
+	final long maxBytes;
+	long bytes = 0;
+
+	final LinkedHashMap< Key, FourierTransform< ?, ComplexFloatType > > spectra;
+
+	// the number of comparisons left for the images with announced comparisons, keys without size
+	final HashMap< Key, Integer > uses = new HashMap< Key, Integer >();
+
+	public SpectrumCache( final long maxBytes )
+	{
+		this.maxBytes = maxBytes;
+		this.spectra = new LinkedHashMap< Key, FourierTransform< ?, ComplexFloatType > >( 16, 0.75f, true );
+	}
+
+	/**
+	 * @return - the processed {@link FourierTransform} or null if it is not in the cache,
+	 * its result must not be modified
+	 */
+	public synchronized FourierTransform< ?, ComplexFloatType > get( final Key key )
+	{
+		return spectra.get( key );
+	}
+
+	/**
+	 * Adds the processed {@link FourierTransform} unless it is too large or another
+	 * thread was quicker, its result must not be modified afterwards if it was added.
+	 *
+	 * @return - true if the {@link FourierTransform} was added
+	 */
+	public synchronized boolean put( final Key key, final FourierTransform< ?, ComplexFloatType > fft )
+	{
+		if ( spectra.containsKey( key ) )
+			return false;
+
+		final long size = getBytes( fft );
+
+		if ( size > maxBytes )
+			return false;
+
+		// drop the least recently used spectra, they are just forgotten and not closed
+		// as another thread might still be copying them
+		final Iterator< FourierTransform< ?, ComplexFloatType > > i = spectra.values().iterator();
+
+		while ( bytes + size > maxBytes && i.hasNext() )
+		{
+			bytes -= getBytes( i.next() );
+			i.remove();
+		}
+
+		spectra.put( key, fft );
+		bytes += size;
+
+		return true;
+	}
+
+	/**
+	 * Drops a spectrum, it is not closed as another thread might still be copying it
+	 */
+	public synchronized void remove( final Key key )
+	{
+		final FourierTransform< ?, ComplexFloatType > fft = spectra.remove( key );
+
+		if ( fft != null )
+			bytes -= getBytes( fft );
+	}
+
+	/**
+	 * Announces one more comparison that the image of the key takes part in
+	 *
+	 * @param key - a key without size
+	 */
+	public synchronized void expectUse( final Key key )
+	{
+		final Integer remaining = uses.get( key );
+		uses.put( key, remaining == null ? 1 : remaining + 1 );
+	}
+
+	/**
+	 * Counts one comparison of the image of the key as done
+	 *
+	 * @param key - a key without size
+	 * @return - true if the image takes part in another comparison, or if its comparisons were not announced
+	 */
+	public synchronized boolean use( final Key key )
+	{
+		final Integer remaining = uses.get( key );
+
+		if ( remaining == null )
+			return true;
+
+		if ( remaining > 1 )
+		{
+			uses.put( key, remaining - 1 );
+			return true;
+		}
+
+		uses.remove( key );
+		return false;
+	}
+
+	public synchronized void clear()
+	{
+		spectra.clear();
+		uses.clear();
+		bytes = 0;
+	}
+
+	public synchronized int size() { return spectra.size(); }
+	public synchronized long getBytes() { return bytes; }
+	public long getMaxBytes() { return maxBytes; }
+
+	protected static long getBytes( final FourierTransform< ?, ComplexFloatType > fft )
+	{
+		// two floats per complex pixel, and the image it was computed from which is
+		// still referenced by the FourierTransform (at most a float per pixel)
+		long imageSize = 4;
+
+		for ( final int size : fft.getOriginalSize() )
+			imageSize *= size;
+
+		return 8l * fft.getResult().getNumPixels() + imageSize;
+	}
+
+	/**
+	 * A cache for the pairwise comparisons of one stitching run, or null if the user
+	 * asked to save memory
+	 */
+	public static SpectrumCache forParameters( final StitchingParameters params )
+	{
+		if ( params.cpuMemChoice == 0 )
+			return null;
+		else
+			return new SpectrumCache( Runtime.getRuntime().maxMemory() / 4 );
+	}
+}
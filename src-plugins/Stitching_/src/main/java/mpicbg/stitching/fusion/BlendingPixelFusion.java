@@ -12,7 +12,8 @@ public class BlendingPixelFusion implements PixelFusion
 	final float percentScaling;
 	final float[] border;
 	
-	final ArrayList< ? extends ImageInterpolation< ? > > images;
+	// the size of all input images, for copy()
+	final int[][] imageSizes;
 
 	double valueSum, weightSum;
 	
@@ -23,26 +24,37 @@ public class BlendingPixelFusion implements PixelFusion
 	 */
 	public BlendingPixelFusion( final ArrayList< ? extends ImageInterpolation< ? > > images )
 	{
-		this( images, (float)fractionBlended );
+		this( getSizes( images ), (float)fractionBlended );
 	}	
+
+	/**
+	 * Instantiates the per-pixel blending without needing the input images
+	 * 
+	 * @param imageSizes - the size of all input images imageSizes[ image ][ x, y, (z) ] (the position has to be the same as Id provided by addValue!)
+	 */
+	public BlendingPixelFusion( final int[][] imageSizes )
+	{
+		this( imageSizes, (float)fractionBlended );
+	}	
+
 	/**
 	 * Instantiates the per-pixel blending
 	 * 
-	 * @param images - all input images (the position in the list has to be the same as Id provided by addValue!)
+	 * @param imageSizes - the size of all input images imageSizes[ image ][ x, y, (z) ] (the position has to be the same as Id provided by addValue!)
 	 * @param percentScaling - which percentage of the image should be blended ( e.g. 0,3 means 15% on the left and 15% on the right)
 	 */
-	private BlendingPixelFusion( final ArrayList< ? extends ImageInterpolation< ? > > images, final float fractionBlended )
+	private BlendingPixelFusion( final int[][] imageSizes, final float fractionBlended )
 	{
-		this.images = images;
+		this.imageSizes = imageSizes;
 		this.percentScaling = fractionBlended;
 		
-		this.numDimensions = images.get( 0 ).getImage().getNumDimensions();
-		this.numImages = images.size();
+		this.numDimensions = imageSizes[ 0 ].length;
+		this.numImages = imageSizes.length;
 		this.dimensions = new int[ numImages ][ numDimensions ];
 		
 		for ( int i = 0; i < numImages; ++i )
 			for ( int d = 0; d < numDimensions; ++d )
-				dimensions[ i ][ d ] = images.get( i ).getImage().getDimension( d ) - 1; 
+				dimensions[ i ][ d ] = imageSizes[ i ][ d ] - 1; 
 
 		this.border = new float[ numDimensions ];
 
@@ -50,6 +62,16 @@ private BlendingPixelFusion( final ArrayList< ? extends ImageInterpolation< ? >
 		clear();
 	}
 	
+	protected static int[][] getSizes( final ArrayList< ? extends ImageInterpolation< ? > > images )
+	{
+		final int[][] imageSizes = new int[ images.size() ][];
+		
+		for ( int i = 0; i < images.size(); ++i )
+			imageSizes[ i ] = images.get( i ).getImage().getDimensions();
+		
+		return imageSizes;
+	}
+	
 	@Override
 	public void clear() { valueSum = weightSum = 0;	}
 
@@ -73,7 +95,7 @@ public float getValue()
 	}
 
 	@Override
-	public PixelFusion copy() { return new BlendingPixelFusion( images ); }
+	public PixelFusion copy() { return new BlendingPixelFusion( imageSizes ); }
 
 	/**
 	 * From SPIM Registration
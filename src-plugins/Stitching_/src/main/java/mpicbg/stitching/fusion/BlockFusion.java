@@ -0,0 +1,628 @@
+package mpicbg.stitching.fusion;
+
+import fiji.stacks.Hyperstack_rearranger;
+import ij.IJ;
+import ij.ImagePlus;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.image.display.imagej.ImageJFunctions;
+import mpicbg.imglib.interpolation.Interpolator;
+import mpicbg.imglib.interpolation.InterpolatorFactory;
+import mpicbg.imglib.interpolation.linear.LinearInterpolatorFactory;
+import mpicbg.imglib.interpolation.nearestneighbor.NearestNeighborInterpolatorFactory;
+import mpicbg.imglib.multithreading.SimpleMultiThreading;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyMirrorFactory;
+import mpicbg.imglib.outofbounds.OutOfBoundsStrategyValueFactory;
+import mpicbg.imglib.type.numeric.RealType;
+import mpicbg.imglib.type.numeric.integer.UnsignedByteType;
+import mpicbg.imglib.type.numeric.integer.UnsignedShortType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+import mpicbg.models.InvertibleBoundable;
+import mpicbg.models.NoninvertibleModelException;
+
+/**
+ * Fuses the tiles block by block and streams the result to disk, so that the fused image never has to fit into memory.
+ *
+ * The output is cut into blocks of {@link #blockSize} pixels which are fused in parallel. Each block only loads the
+ * tiles that overlap it, and loaded tiles are kept in a cache as long as they fit into {@link #tileMemory} bytes, so
+ * that neighbouring blocks can reuse them. The peak memory is therefore bounded by the tiles overlapping the blocks
+ * being fused rather than by the size of the dataset.
+ *
+ * Each plane of the output is written into an uncompressed TIFF file with the same name as {@link Fusion} used when
+ * writing to disk (img_t?_z?_c?), and every block writes its rows straight into the files.
+ */
+public class BlockFusion
+{
+	/**
+	 * The size of the blocks that are fused at once (x, y, z)
+	 */
+	public static int[] blockSize = new int[] { 512, 512, 64 };
+
+	/**
+	 * How many bytes the loaded tiles may use; tiles that are not needed by a block being fused are dropped
+	 * once this is exceeded (default: half of the maximal heap size)
+	 */
+	public static long tileMemory = Runtime.getRuntime().maxMemory() / 2;
+
+	/**
+	 *
+	 * @param targetType - the type of the output
+	 * @param images - the input tiles
+	 * @param models - the models of the tiles (for the first timepoint, see {@link Fusion#estimateBounds})
+	 * @param offset - the offset of the output image as computed by {@link Fusion#estimateBounds}
+	 * @param size - the size of the output image
+	 * @param dimensionality - 2 or 3
+	 * @param subpixelResolution - if the tiles need to be interpolated
+	 * @param fusionType - as in {@link Fusion#fuse}
+	 * @param outputDirectory - where to write the planes
+	 * @param noOverlap - if the tiles do not overlap, then every pixel is just copied from the first tile that covers it
+	 * @return true if all planes were written
+	 */
+	public static < T extends RealType< T > > boolean fuse( final T targetType, final ArrayList< ImagePlus > images, final ArrayList< InvertibleBoundable > models,
+			final float[] offset, final int[] size, final int dimensionality, final boolean subpixelResolution, final int fusionType, final String outputDirectory, final boolean noOverlap )
+	{
+		final int numImages = images.size();
+		final int numTimePoints = images.get( 0 ).getNFrames();
+		final int numChannels = images.get( 0 ).getNChannels();
+		final int numSlices = dimensionality == 2 ? 1 : size[ 2 ];
+
+		// the size of the tiles and the part of the output image they cover
+		final int[][] imageSizes = new int[ numImages ][ dimensionality ];
+		final float[][] min = new float[ numImages ][ dimensionality ];
+		final float[][] max = new float[ numImages ][];
+
+		for ( int i = 0; i < numImages; ++i )
+		{
+			final ImagePlus imp = images.get( i );
+
+			imageSizes[ i ][ 0 ] = imp.getWidth();
+			imageSizes[ i ][ 1 ] = imp.getHeight();
+			if ( dimensionality == 3 )
+				imageSizes[ i ][ 2 ] = imp.getNSlices();
+
+			max[ i ] = new float[ dimensionality ];
+			for ( int d = 0; d < dimensionality; ++d )
+				max[ i ][ d ] = imageSizes[ i ][ d ];
+
+			models.get( i ).estimateBounds( min[ i ], max[ i ] );
+
+			// the model might rotate the image so that min is actually max
+			for ( int d = 0; d < dimensionality; ++d )
+			{
+				final float a = Math.min( min[ i ][ d ], max[ i ][ d ] ) - offset[ d ];
+				final float b = Math.max( min[ i ][ d ], max[ i ][ d ] ) - offset[ d ];
+				min[ i ][ d ] = a;
+				max[ i ][ d ] = b;
+			}
+		}
+
+		// the blocks
+		final int[] numBlocks = new int[ dimensionality ];
+		int totalBlocks = 1;
+		for ( int d = 0; d < dimensionality; ++d )
+		{
+			numBlocks[ d ] = ( size[ d ] + blockSize[ d ] - 1 ) / blockSize[ d ];
+			totalBlocks *= numBlocks[ d ];
+		}
+
+		final int bytesPerPixel;
+		if ( targetType instanceof FloatType )
+			bytesPerPixel = 4;
+		else if ( targetType instanceof UnsignedShortType )
+			bytesPerPixel = 2;
+		else
+			bytesPerPixel = 1;
+
+		if ( (long)size[ 0 ] * size[ 1 ] * bytesPerPixel + TIFF_HEADER_SIZE > 0xffffffffL )
+		{
+			IJ.log( "The fused planes are too large to be written as TIFF files (" + size[ 0 ] + "x" + size[ 1 ] + ")." );
+			return false;
+		}
+
+		final int blocksPerPlane = totalBlocks;
+		final int numPlanes = numTimePoints * numChannels;
+
+		for ( int t = 1; t <= numTimePoints; ++t )
+		{
+			for ( int c = 1; c <= numChannels; ++c )
+			{
+				// create all the files of this channel and timepoint
+				final File[] files = new File[ numSlices ];
+
+				try
+				{
+					for ( int slice = 0; slice < numSlices; ++slice )
+					{
+						files[ slice ] = new File( outputDirectory, "img_t" + lz( t, numTimePoints ) + "_z" + lz( slice+1, numSlices ) + "_c" + lz( c, numChannels ) );
+						createTiff( files[ slice ], size[ 0 ], size[ 1 ], bytesPerPixel );
+					}
+				}
+				catch ( IOException e )
+				{
+					IJ.log( "Cannot write the fused image: " + e );
+					return false;
+				}
+
+				// init the fusion
+				final PixelFusion fusion;
+
+				if ( fusionType == 0 )
+					fusion = new BlendingPixelFusion( imageSizes );
+				else if ( fusionType == 1 )
+					fusion = new AveragePixelFusion();
+				else if ( fusionType == 2 )
+					fusion = new MedianPixelFusion();
+				else if ( fusionType == 3 )
+					fusion = new MaxPixelFusion();
+				else
+					fusion = new MinPixelFusion();
+
+				final TileCache cache = new TileCache( images, c, t, subpixelResolution, dimensionality );
+				final int planeIndex = ( t - 1 ) * numChannels + ( c - 1 );
+
+				final AtomicInteger ai = new AtomicInteger( 0 );
+				final AtomicInteger done = new AtomicInteger( 0 );
+				final String[] error = new String[ 1 ];
+
+				final Thread[] threads = SimpleMultiThreading.newThreads();
+
+				for ( int ithread = 0; ithread < threads.length; ++ithread )
+					threads[ ithread ] = new Thread( new Runnable()
+					{
+						public void run()
+						{
+							final ImageFactory< T > factory = new ImageFactory< T >( targetType, new ArrayContainerFactory() );
+							final PixelFusion myFusion = fusion.copy();
+							final int[] blockMin = new int[ dimensionality ];
+							final int[] blockDim = new int[ dimensionality ];
+
+							for ( int b = ai.getAndIncrement(); b < blocksPerPlane; b = ai.getAndIncrement() )
+							{
+								synchronized ( error )
+								{
+									if ( error[ 0 ] != null )
+										return;
+								}
+
+								// where this block is
+								int rest = b;
+								for ( int d = 0; d < dimensionality; ++d )
+								{
+									blockMin[ d ] = ( rest % numBlocks[ d ] ) * blockSize[ d ];
+									blockDim[ d ] = Math.min( blockSize[ d ], size[ d ] - blockMin[ d ] );
+									rest /= numBlocks[ d ];
+								}
+
+								// which tiles overlap it
+								final ArrayList< Integer > overlapping = new ArrayList< Integer >();
+A:								for ( int i = 0; i < numImages; ++i )
+								{
+									for ( int d = 0; d < dimensionality; ++d )
+										if ( max[ i ][ d ] < blockMin[ d ] - 1 || min[ i ][ d ] > blockMin[ d ] + blockDim[ d ] + 1 )
+											continue A;
+
+									overlapping.add( i );
+								}
+
+								final Image< T > block = factory.createImage( blockDim );
+
+								try
+								{
+									fuseBlock( block, blockMin, overlapping, cache, offset, models, imageSizes, myFusion, noOverlap );
+									writeBlock( block, blockMin, files, size[ 0 ], bytesPerPixel );
+								}
+								catch ( NoninvertibleModelException e )
+								{
+									synchronized ( error ) { error[ 0 ] = "Cannot invert model, qutting."; }
+									return;
+								}
+								catch ( IOException e )
+								{
+									synchronized ( error ) { error[ 0 ] = "Cannot write the fused image: " + e; }
+									return;
+								}
+								finally
+								{
+									block.close();
+								}
+
+								IJ.showProgress( (double)( planeIndex * blocksPerPlane + done.incrementAndGet() ) / ( numPlanes * blocksPerPlane ) );
+							}
+						}
+					});
+
+				SimpleMultiThreading.startAndJoin( threads );
+
+				if ( error[ 0 ] != null )
+				{
+					IJ.log( error[ 0 ] );
+					return false;
+				}
+			}
+		}
+
+		IJ.showProgress( 1.0 );
+
+		return true;
+	}
+
+	/**
+	 * Fuse one block from the tiles that overlap it
+	 *
+	 * @param noOverlap - take every pixel from the first tile that covers it instead of fusing all of them
+	 */
+	protected static < T extends RealType< T > > void fuseBlock( final Image< T > block, final int[] blockMin, final ArrayList< Integer > overlapping, final TileCache cache,
+			final float[] offset, final ArrayList< InvertibleBoundable > transform, final int[][] imageSizes, final PixelFusion fusion, final boolean noOverlap ) throws NoninvertibleModelException
+	{
+		final int numDimensions = block.getNumDimensions();
+		final int numImages = overlapping.size();
+
+		final ArrayList< Interpolator< ? extends RealType< ? > > > in = new ArrayList< Interpolator< ? extends RealType< ? > > >();
+		final int[] ids = new int[ numImages ];
+
+		try
+		{
+			for ( int i = 0; i < numImages; ++i )
+			{
+				ids[ i ] = overlapping.get( i );
+				in.add( cache.get( ids[ i ] ).createInterpolator() );
+			}
+
+			final float[][] tmp = new float[ numImages ][ numDimensions ];
+			final LocalizableCursor< T > out = block.createLocalizableCursor();
+
+			while ( out.hasNext() )
+			{
+				out.fwd();
+
+				// get the current position in the output image
+				for ( int d = 0; d < numDimensions; ++d )
+				{
+					final float value = out.getPosition( d ) + blockMin[ d ] + offset[ d ];
+
+					for ( int i = 0; i < numImages; ++i )
+						tmp[ i ][ d ] = value;
+				}
+
+				// transform and compute output value
+				fusion.clear();
+
+				// stays 0 if no tile covers the pixel
+				float value = 0;
+
+				// loop over all images for this output location
+A:				for ( int i = 0; i < numImages; ++i )
+				{
+					transform.get( ids[ i ] ).applyInverseInPlace( tmp[ i ] );
+
+					// test if inside
+					for ( int d = 0; d < numDimensions; ++d )
+						if ( tmp[ i ][ d ] < 0 || tmp[ i ][ d ] > imageSizes[ ids[ i ] ][ d ] - 1 )
+							continue A;
+
+					in.get( i ).setPosition( tmp[ i ] );
+
+					if ( noOverlap )
+					{
+						// no other tile covers this pixel
+						value = in.get( i ).getType().getRealFloat();
+						break;
+					}
+
+					fusion.addValue( in.get( i ).getType().getRealFloat(), ids[ i ], tmp[ i ] );
+				}
+
+				// set value
+				if ( noOverlap )
+					out.getType().setReal( value );
+				else
+					out.getType().setReal( fusion.getValue() );
+			}
+
+			out.close();
+		}
+		finally
+		{
+			for ( final Interpolator< ? extends RealType< ? > > interpolator : in )
+				interpolator.close();
+
+			for ( int i = 0; i < in.size(); ++i )
+				cache.release( ids[ i ] );
+		}
+	}
+
+	/**
+	 * Write the rows of a block into the planes it belongs to
+	 */
+	protected static < T extends RealType< T > > void writeBlock( final Image< T > block, final int[] blockMin, final File[] files, final int width, final int bytesPerPixel ) throws IOException
+	{
+		final int w = block.getDimension( 0 );
+		final int h = block.getDimension( 1 );
+		final int numSlices = block.getNumDimensions() > 2 ? block.getDimension( 2 ) : 1;
+		final int z0 = block.getNumDimensions() > 2 ? blockMin[ 2 ] : 0;
+
+		final byte[] row = new byte[ w * bytesPerPixel ];
+		final LocalizableCursor< T > cursor = block.createLocalizableCursor();
+
+		// the array container iterates x fastest, then y, then z
+		for ( int z = 0; z < numSlices; ++z )
+		{
+			final RandomAccessFile file = new RandomAccessFile( files[ z0 + z ], "rw" );
+
+			try
+			{
+				for ( int y = 0; y < h; ++y )
+				{
+					for ( int x = 0, i = 0; x < w; ++x )
+					{
+						cursor.fwd();
+						final float value = cursor.getType().getRealFloat();
+
+						if ( bytesPerPixel == 4 )
+						{
+							final int bits = Float.floatToIntBits( value );
+							row[ i++ ] = (byte)( bits >>> 24 );
+							row[ i++ ] = (byte)( bits >>> 16 );
+							row[ i++ ] = (byte)( bits >>> 8 );
+							row[ i++ ] = (byte)bits;
+						}
+						else if ( bytesPerPixel == 2 )
+						{
+							final int v = (int)value;
+							row[ i++ ] = (byte)( v >>> 8 );
+							row[ i++ ] = (byte)v;
+						}
+						else
+						{
+							row[ i++ ] = (byte)(int)value;
+						}
+					}
+
+					file.seek( TIFF_HEADER_SIZE + ( (long)( blockMin[ 1 ] + y ) * width + blockMin[ 0 ] ) * bytesPerPixel );
+					file.write( row );
+				}
+			}
+			finally
+			{
+				file.close();
+			}
+		}
+
+		cursor.close();
+	}
+
+	/**
+	 * The tiles of one channel and timepoint, loaded when a block needs them. Tiles used by a block are kept until it
+	 * releases them; the others are dropped (least recently used first) once they need more than {@link #tileMemory} bytes.
+	 */
+	protected static class TileCache
+	{
+		final ArrayList< ImagePlus > images;
+		final int c, t, dimensionality;
+		final boolean subpixelResolution;
+
+		final ImageInterpolation< ? extends RealType< ? > >[] tiles;
+		final boolean[] loading;
+		final int[] users;
+		final long[] bytes;
+		long usedBytes = 0;
+
+		// the loaded tiles that no block uses, least recently used first
+		final LinkedHashMap< Integer, Integer > unused = new LinkedHashMap< Integer, Integer >();
+
+		@SuppressWarnings("unchecked")
+		public TileCache( final ArrayList< ImagePlus > images, final int c, final int t, final boolean subpixelResolution, final int dimensionality )
+		{
+			this.images = images;
+			this.c = c;
+			this.t = t;
+			this.subpixelResolution = subpixelResolution;
+			this.dimensionality = dimensionality;
+
+			final int numImages = images.size();
+			tiles = new ImageInterpolation[ numImages ];
+			loading = new boolean[ numImages ];
+			users = new int[ numImages ];
+			bytes = new long[ numImages ];
+
+			for ( int i = 0; i < numImages; ++i )
+			{
+				final ImagePlus imp = images.get( i );
+				final int bytesPerPixel = subpixelResolution ? 4 : imp.getBitDepth() / 8;
+				bytes[ i ] = (long)imp.getWidth() * imp.getHeight() * ( dimensionality == 3 ? imp.getNSlices() : 1 ) * bytesPerPixel;
+			}
+		}
+
+		/**
+		 * Returns tile i, which must be given back with {@link #release(int)}
+		 */
+		public ImageInterpolation< ? extends RealType< ? > > get( final int i )
+		{
+			synchronized ( this )
+			{
+				while ( loading[ i ] )
+				{
+					try
+					{
+						wait();
+					}
+					catch ( InterruptedException e )
+					{
+						throw new RuntimeException( e );
+					}
+				}
+
+				if ( tiles[ i ] != null )
+				{
+					++users[ i ];
+					unused.remove( i );
+					return tiles[ i ];
+				}
+
+				loading[ i ] = true;
+				usedBytes += bytes[ i ];
+				evict();
+			}
+
+			ImageInterpolation< ? extends RealType< ? > > tile = null;
+
+			try
+			{
+				tile = open( images.get( i ), c, t, subpixelResolution );
+			}
+			finally
+			{
+				synchronized ( this )
+				{
+					loading[ i ] = false;
+
+					if ( tile == null )
+						usedBytes -= bytes[ i ];
+					else
+					{
+						tiles[ i ] = tile;
+						++users[ i ];
+					}
+
+					notifyAll();
+				}
+			}
+
+			return tile;
+		}
+
+		public synchronized void release( final int i )
+		{
+			if ( --users[ i ] == 0 )
+			{
+				unused.put( i, i );
+				evict();
+			}
+		}
+
+		protected void evict()
+		{
+			final Iterator< Integer > it = unused.keySet().iterator();
+
+			while ( usedBytes > tileMemory && it.hasNext() )
+			{
+				final int i = it.next();
+				it.remove();
+
+				// the image might wrap the pixels of the input, so it must not be closed
+				tiles[ i ] = null;
+				usedBytes -= bytes[ i ];
+			}
+		}
+	}
+
+	/**
+	 * Opens one channel and timepoint of a tile in the same way as {@link Fusion#fuse}
+	 */
+	protected static ImageInterpolation< ? extends RealType< ? > > open( final ImagePlus imp, final int c, final int t, final boolean subpixelResolution )
+	{
+		if ( subpixelResolution )
+		{
+			// for linear interpolation we want to mirror, otherwise we get black areas at the first and last pixel of each image
+			final InterpolatorFactory< FloatType > interpolatorFactory = new LinearInterpolatorFactory<FloatType>( new OutOfBoundsStrategyMirrorFactory<FloatType>() );
+
+			return new ImageInterpolation<FloatType>( ImageJFunctions.convertFloat( Hyperstack_rearranger.getImageChunk( imp, c, t ) ), interpolatorFactory );
+		}
+		else if ( imp.getType() == ImagePlus.GRAY32 )
+		{
+			return new ImageInterpolation<FloatType>( ImageJFunctions.wrapFloat( Hyperstack_rearranger.getImageChunk( imp, c, t ) ),
+					new NearestNeighborInterpolatorFactory< FloatType >( new OutOfBoundsStrategyValueFactory<FloatType>() ) );
+		}
+		else if ( imp.getType() == ImagePlus.GRAY16 )
+		{
+			return new ImageInterpolation<UnsignedShortType>( ImageJFunctions.wrapShort( Hyperstack_rearranger.getImageChunk( imp, c, t ) ),
+					new NearestNeighborInterpolatorFactory< UnsignedShortType >( new OutOfBoundsStrategyValueFactory<UnsignedShortType>() ) );
+		}
+		else
+		{
+			return new ImageInterpolation<UnsignedByteType>( ImageJFunctions.wrapByte( Hyperstack_rearranger.getImageChunk( imp, c, t ) ),
+					new NearestNeighborInterpolatorFactory< UnsignedByteType >( new OutOfBoundsStrategyValueFactory<UnsignedByteType>() ) );
+		}
+	}
+
+	// the header and the one IFD of the TIFF files we write, the pixels follow directly
+	protected static final int TIFF_NUM_ENTRIES = 10;
+	protected static final int TIFF_HEADER_SIZE = 8 + 2 + TIFF_NUM_ENTRIES * 12 + 4;
+
+	/**
+	 * Creates an uncompressed big-endian TIFF file with one strip of zeros of the given size that the blocks can be written into
+	 */
+	protected static void createTiff( final File file, final int width, final int height, final int bytesPerPixel ) throws IOException
+	{
+		final long imageBytes = (long)width * height * bytesPerPixel;
+		final RandomAccessFile out = new RandomAccessFile( file, "rw" );
+
+		try
+		{
+			out.setLength( 0 );
+
+			out.writeShort( 0x4d4d ); // "MM"
+			out.writeShort( 42 );
+			out.writeInt( 8 );
+
+			out.writeShort( TIFF_NUM_ENTRIES );
+			writeTiffEntry( out, 256, 4, width ); // ImageWidth
+			writeTiffEntry( out, 257, 4, height ); // ImageLength
+			writeTiffEntry( out, 258, 3, bytesPerPixel * 8 ); // BitsPerSample
+			writeTiffEntry( out, 259, 3, 1 ); // Compression: none
+			writeTiffEntry( out, 262, 3, 1 ); // PhotometricInterpretation: black is zero
+			writeTiffEntry( out, 273, 4, TIFF_HEADER_SIZE ); // StripOffsets
+			writeTiffEntry( out, 277, 3, 1 ); // SamplesPerPixel
+			writeTiffEntry( out, 278, 4, height ); // RowsPerStrip
+			writeTiffEntry( out, 279, 4, (int)imageBytes ); // StripByteCounts
+			writeTiffEntry( out, 339, 3, bytesPerPixel == 4 ? 3 : 1 ); // SampleFormat: float or unsigned
+			out.writeInt( 0 ); // no next IFD
+
+			out.setLength( TIFF_HEADER_SIZE + imageBytes );
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	protected static void writeTiffEntry( final RandomAccessFile out, final int tag, final int type, final int value ) throws IOException
+	{
+		out.writeShort( tag );
+		out.writeShort( type );
+		out.writeInt( 1 );
+
+		// values that are shorter than 4 bytes are left-justified
+		if ( type == 3 )
+		{
+			out.writeShort( value );
+			out.writeShort( 0 );
+		}
+		else
+		{
+			out.writeInt( value );
+		}
+	}
+
+	private static final String lz( final int num, final int max )
+	{
+		String out = "" + num;
+		String outMax = "" + max;
+
+		while ( out.length() < outMax.length() )
+			out = "0" + out;
+
+		return out;
+	}
+}
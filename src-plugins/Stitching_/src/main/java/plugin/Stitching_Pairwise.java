@@ -33,6 +33,7 @@
 import mpicbg.stitching.ImagePlusTimePoint;
 import mpicbg.stitching.PairWiseStitchingImgLib;
 import mpicbg.stitching.PairWiseStitchingResult;
+import mpicbg.stitching.SpectrumCache;
 import mpicbg.stitching.StitchingParameters;
 import mpicbg.stitching.fusion.Fusion;
 import mpicbg.stitching.fusion.OverlayFusion;
@@ -342,6 +343,13 @@ public static void performPairWiseStitching( final ImagePlus imp1, final ImagePl
 			// get all that we have to compare
 			final Vector< ComparePair > pairs = getComparePairs( imp1, imp2, params.dimensionality, params.timeSelect );
 			
+			// every timepoint takes part in several pairs, transform it only once
+			final SpectrumCache cache = SpectrumCache.forParameters( params );
+			
+			for ( final ComparePair pair : pairs )
+				PairWiseStitchingImgLib.expectPair( pair.getImagePlus1(), pair.getImagePlus2(), 
+						pair.getImagePlus1().getRoi(), pair.getImagePlus2().getRoi(), pair.getTimePoint1(), pair.getTimePoint2(), params, cache );
+			
 			// compute all compare pairs
 			// compute all matchings
 			final AtomicInteger ai = new AtomicInteger(0);
@@ -371,7 +379,7 @@ public void run()
 	                    		long start = System.currentTimeMillis();			
 
 	            				final PairWiseStitchingResult result = PairWiseStitchingImgLib.stitchPairwise( pair.getImagePlus1(), pair.getImagePlus2(), 
-	            						pair.getImagePlus1().getRoi(), pair.getImagePlus2().getRoi(), pair.getTimePoint1(), pair.getTimePoint2(), params );			
+	            						pair.getImagePlus1().getRoi(), pair.getImagePlus2().getRoi(), pair.getTimePoint1(), pair.getTimePoint2(), params, cache );			
 
 	            				if ( params.dimensionality == 2 )
 	            					pair.setRelativeShift( new float[]{ result.getOffset( 0 ), result.getOffset( 1 ) } );
@@ -352,6 +352,38 @@ public double[] getEdgeFeatureValues(String edgeFeature, boolean filteredOnly) {
 		return val;
 	}
 
+	/**
+	 * Compute all the spot features for the spots of the model in the given frame,
+	 * in the calling thread. This is meant for processes that compute the features 
+	 * of a frame as soon as it is detected, and are already multithreaded over frames.
+	 * @param frame  the frame to compute the spot features of. 
+	 */
+	public void computeSpotFeatures(final int frame) {
+		if (null == spotAnalyzerProvider || null == model.getSettings().imp)
+			return;
+		final int targetChannel = getTargetChannel(model.getSettings());
+		for (String analyzerName : spotAnalyzerProvider.getAvailableSpotFeatureAnalyzers()) {
+			spotAnalyzerProvider.getSpotFeatureAnalyzer(analyzerName).getAnalyzer(frame, targetChannel).process();
+		}
+	}
+
+	/**
+	 * @return the 0-based channel the spot features are computed on, extracted from
+	 * the detector settings target channel.
+	 */
+	private static final int getTargetChannel(final Settings settings) {
+		int tc = 0;
+		if (settings != null && settings.detectorSettings != null) {
+			// Try to extract it from detector settings target channel
+			Map<String, Object> ds = settings.detectorSettings;
+			Object obj = ds.get(KEY_TARGET_CHANNEL);
+			if (null != obj && obj instanceof Integer) {
+				tc = ((Integer) obj) - 1;
+			}
+		}
+		return tc;
+	}
+
 	/**
 	 * The method in charge of computing spot features with the given {@link SpotAnalyzer}s, for the
 	 * given {@link SpotCollection}.
@@ -381,16 +413,7 @@ private void computeSpotFeaturesAgent(final SpotCollection toCompute, final List
 		final AtomicInteger progress = new AtomicInteger(0);
 		final Thread[] threads = SimpleMultiThreading.newThreads(numThreads);
 
-		int tc = 0;
-		if (settings != null && settings.detectorSettings != null) {
-			// Try to extract it from detector settings target channel
-			Map<String, Object> ds = settings.detectorSettings;
-			Object obj = ds.get(KEY_TARGET_CHANNEL);
-			if (null != obj && obj instanceof Integer) {
-				tc = ((Integer) obj) - 1;
-			}
-		}
-		final int targetChannel = tc;
+		final int targetChannel = getTargetChannel(settings);
 
 		// Prepare the thread array
 		for (int ithread = 0; ithread < threads.length; ithread++) {
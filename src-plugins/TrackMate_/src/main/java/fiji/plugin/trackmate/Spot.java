@@ -1,11 +1,12 @@
 package fiji.plugin.trackmate;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import net.imglib2.util.Util;
@@ -24,8 +25,22 @@ public class Spot {
 
 	public static AtomicInteger IDcounter = new AtomicInteger(0); 
 
-	/** Store the individual features, and their values. */
-	private final ConcurrentHashMap<String, Double> features = new ConcurrentHashMap<String, Double>();
+	/**
+	 * Marks a feature slot that has not been set. It is a NaN with its own payload, so that
+	 * it differs from the NaN that arithmetic produces from ordinary values (such as 0/0).
+	 * NaN payloads can however propagate through arithmetic, so a value computed from a
+	 * missing feature may carry the same payload: only values read with
+	 * {@link #getFeatureValue(int)} should be tested with {@link #isMissing(double)}.
+	 */
+	private static final long MISSING_BITS = 0x7ff80000dead5107l;
+	private static final double MISSING = Double.longBitsToDouble(MISSING_BITS);
+	private static final double[] NO_FEATURE = new double[0];
+
+	/** 
+	 * Store the individual feature values, indexed by their {@link SpotFeatureKeys} index.
+	 * Grown when needed, under the lock of this spot.
+	 */
+	private volatile double[] features = NO_FEATURE;
 	/** A user-supplied name for this spot. */
 	private String name;
 	/** This spot ID */
@@ -122,14 +137,15 @@ public String echo() {
 		s.append("Position: "+Util.printCoordinates(coordinates)+"\n");
 
 		// Feature list
-		if (null == features || features.size() < 1) 
+		final Map<String, Double> featureMap = getFeatures();
+		if (featureMap.size() < 1) 
 			s.append("No features calculated\n");
 		else {
 			s.append("Feature list:\n");
 			double val;
-			for (String key : features.keySet()) {
+			for (String key : featureMap.keySet()) {
 				s.append("\t"+key.toString()+": ");
-				val = features.get(key);
+				val = featureMap.get(key);
 				if (val >= 1e4)
 					s.append(String.format("%.1g", val));
 				else
@@ -145,10 +161,18 @@ public String echo() {
 	 */
 
 	/**
-     * @return and exposes the storage Map of features for this spot. 
-     */
+	 * @return a new map containing the features of this spot and their values.
+	 * Modifying this map does not affect this spot.
+	 */
 	public Map<String,Double> getFeatures() {
-		return features;
+		final double[] values = features;
+		final Map<String, Double> map = new LinkedHashMap<String, Double>(values.length);
+		for (int i = 0; i < values.length; i++) {
+			if (!isMissing(values[i])) {
+				map.put(SpotFeatureKeys.getKey(i), values[i]);
+			}
+		}
+		return map;
 	}
 
 	/**
@@ -157,14 +181,60 @@ public Map<String,Double> getFeatures() {
      * <code>null</code> if it has not been set.
      */
 	public final Double getFeature(final String feature) {
-		return features.get(feature);
+		final int index = SpotFeatureKeys.indexOf(feature);
+		if (index < 0) {
+			return null;
+		}
+		final double value = getFeatureValue(index);
+		if (isMissing(value)) {
+			return null;
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the value of the feature with the specified {@link SpotFeatureKeys} index, 
+	 * without boxing.
+	 * @return the feature value, or a NaN value for which {@link #isMissing(double)} returns 
+	 * <code>true</code> if it has not been set.
+	 */
+	public final double getFeatureValue(final int featureIndex) {
+		final double[] values = features;
+		if (featureIndex >= values.length) {
+			return MISSING;
+		}
+		return values[featureIndex];
+	}
+
+	/**
+	 * @return true if the specified value, returned by {@link #getFeatureValue(int)}, 
+	 * denotes a feature that has not been set. Values computed from a missing feature 
+	 * may test as missing too.
+	 */
+	public static final boolean isMissing(final double value) {
+		return Double.doubleToRawLongBits(value) == MISSING_BITS;
 	}
 
 	/**
      * Store the specified feature value for this spot.
      */
 	public final void putFeature(final String feature, final double value) {
-		features.put(feature, value);
+		putFeatureValue(SpotFeatureKeys.intern(feature), value);
+	}
+
+	/**
+	 * Store the specified feature value for this spot, using the {@link SpotFeatureKeys} 
+	 * index of the feature.
+	 */
+	public final synchronized void putFeatureValue(final int featureIndex, final double value) {
+		double[] values = features;
+		if (featureIndex >= values.length) {
+			final int oldLength = values.length;
+			values = Arrays.copyOf(values, Math.max(featureIndex + 1, SpotFeatureKeys.size()));
+			Arrays.fill(values, oldLength, values.length, MISSING);
+		}
+		values[featureIndex] = value;
+		features = values;
 	}
 
 	 /**
@@ -172,7 +242,7 @@ public final void putFeature(final String feature, final double value) {
      * By construction, this operation is anti-symmetric (A.diffTo(B) = - B.diffTo(A)).
      */
 	public double diffTo(Spot s, String feature) {
-		double f1 = features.get(feature).doubleValue();
+		double f1 = getFeature(feature).doubleValue();
 		double f2 = s.getFeature(feature).doubleValue();
 		return f1 - f2;
 	}
@@ -187,7 +257,7 @@ public double diffTo(Spot s, String feature) {
      * By construction, this operation is symmetric (A.normalizeDiffTo(B) = B.normalizeDiffTo(A)).
      */
 	public double normalizeDiffTo(Spot s, String feature) {
-		final double a = features.get(feature).doubleValue();
+		final double a = getFeature(feature).doubleValue();
 		final double b = s.getFeature(feature).doubleValue();
 		if (a == -b)
 			return 0d;
@@ -197,14 +267,16 @@ public double normalizeDiffTo(Spot s, String feature) {
 
 	/**
      * @return the square distance from this spot to another, using the x,y,z position features.
+     * It is NaN if one of these features is missing in either spot. Since any comparison 
+     * with NaN is false, such a distance is never less than (nor greater than) a threshold.
      */
 	public double squareDistanceTo(Spot s) {
 		double sumSquared = 0d;
 		double thisVal, otherVal;
 
-		for (String f : POSITION_FEATURES) {
-			thisVal = features.get(f).doubleValue();
-			otherVal = s.getFeature(f).doubleValue();
+		for (int f : POSITION_FEATURE_INDICES) {
+			thisVal = getFeatureValue(f);
+			otherVal = s.getFeatureValue(f);
 			sumSquared += ( otherVal - thisVal ) * ( otherVal - thisVal ); 
 		}
 		return sumSquared;
@@ -276,6 +348,9 @@ public int compare(Spot o1, Spot o2) {
 
 	/** The position features. */
 	public final static String[] POSITION_FEATURES = new String[] { POSITION_X, POSITION_Y, POSITION_Z };
+	/** The {@link SpotFeatureKeys} indices of the position features. */
+	private final static int[] POSITION_FEATURE_INDICES = new int[] { 
+		SpotFeatureKeys.intern(POSITION_X), SpotFeatureKeys.intern(POSITION_Y), SpotFeatureKeys.intern(POSITION_Z) };
 	/** The 6 privileged spot features that must be set by a spot detector. */
 	public final static Collection<String> FEATURES = new ArrayList<String>(6);
 	/** The 6 privileged spot feature names. */
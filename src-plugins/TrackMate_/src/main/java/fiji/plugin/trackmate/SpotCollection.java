@@ -133,6 +133,7 @@ public final SpotCollection filter(final FeatureFilter featurefilter) {
 		for (int i = 0; i < keys.length; i++) {
 			keys[i] = it.next();
 		}
+		final int featureIndex = SpotFeatureKeys.indexOf(featurefilter.feature);
 		final AtomicInteger ai = new AtomicInteger();
 		Thread[] threads = SimpleMultiThreading.newThreads();
 
@@ -144,7 +145,8 @@ public void run() {
 
 					Collection<Spot> spotThisFrame, spotToRemove;
 					List<Spot> spotToKeep;
-					Double val, tval;	
+					double val;
+					Double tval;	
 
 					for (int i = ai.getAndIncrement(); i < keys.length; i = ai.getAndIncrement()) {
 					
@@ -154,23 +156,24 @@ public void run() {
 						spotToRemove = new ArrayList<Spot>(spotThisFrame.size());
 
 						tval = featurefilter.value;
-						if (null != tval) {
+						if (null != tval && featureIndex >= 0) {
 
+							final double threshold = tval.doubleValue();
 							if (featurefilter.isAbove) {
 								for (Spot spot : spotToKeep) {
-									val = spot.getFeature(featurefilter.feature);
-									if (null == val)
+									val = spot.getFeatureValue(featureIndex);
+									if (Spot.isMissing(val))
 										continue;
-									if ( val < tval)
+									if ( val < threshold)
 										spotToRemove.add(spot);
 								}
 
 							} else {
 								for (Spot spot : spotToKeep) {
-									val = spot.getFeature(featurefilter.feature);
-									if (null == val)
+									val = spot.getFeatureValue(featureIndex);
+									if (Spot.isMissing(val))
 										continue;
-									if ( val > tval)
+									if ( val > threshold)
 										spotToRemove.add(spot);
 								}
 							}
@@ -196,46 +199,53 @@ public void run() {
 	public final SpotCollection filter(final Collection<FeatureFilter> filters) {
 		SpotCollection selectedSpots = new SpotCollection();
 		selectedSpots.setNumThreads(numThreads);
-		Collection<Spot> spotThisFrame, spotToRemove;
-		List<Spot> spotToKeep;
-		Double val, tval;	
-
 		for (int timepoint : content.keySet()) {
+			selectedSpots.put(timepoint, filter(content.get(timepoint), filters));
+		}
+		return selectedSpots;
+	}
 
-			spotThisFrame = content.get(timepoint);
-			spotToKeep = new ArrayList<Spot>(spotThisFrame);
-			spotToRemove = new ArrayList<Spot>(spotThisFrame.size());
-
-			for (FeatureFilter filter : filters) {
+	/**
+	 * Return a new list containing only the spots of the given list with the
+	 * feature satisfying all the filters given. Spots that do not have the 
+	 * feature of a filter are kept.
+	 */
+	public static final List<Spot> filter(final List<Spot> spotThisFrame, final Collection<FeatureFilter> filters) {
+		final List<Spot> spotToKeep = new ArrayList<Spot>(spotThisFrame);
+		final Collection<Spot> spotToRemove = new ArrayList<Spot>(spotThisFrame.size());
+		double val;
+		Double tval;	
 
-				tval = filter.value;
-				if (null == tval)
-					continue;
-				spotToRemove.clear();
+		for (FeatureFilter filter : filters) {
 
-				if (filter.isAbove) {
-					for (Spot spot : spotToKeep) {
-						val = spot.getFeature(filter.feature);
-						if (null == val)
-							continue;
-						if ( val < tval)
-							spotToRemove.add(spot);
-					}
+			tval = filter.value;
+			final int featureIndex = SpotFeatureKeys.indexOf(filter.feature);
+			if (null == tval || featureIndex < 0)
+				continue;
+			final double threshold = tval.doubleValue();
+			spotToRemove.clear();
+
+			if (filter.isAbove) {
+				for (Spot spot : spotToKeep) {
+					val = spot.getFeatureValue(featureIndex);
+					if (Spot.isMissing(val))
+						continue;
+					if ( val < threshold)
+						spotToRemove.add(spot);
+				}
 
-				} else {
-					for (Spot spot : spotToKeep) {
-						val = spot.getFeature(filter.feature);
-						if (null == val)
-							continue;
-						if ( val > tval)
-							spotToRemove.add(spot);
-					}
+			} else {
+				for (Spot spot : spotToKeep) {
+					val = spot.getFeatureValue(featureIndex);
+					if (Spot.isMissing(val))
+						continue;
+					if ( val > threshold)
+						spotToRemove.add(spot);
 				}
-				spotToKeep.removeAll(spotToRemove); // no need to treat them multiple times
 			}
-			selectedSpots.put(timepoint, spotToKeep);
+			spotToKeep.removeAll(spotToRemove); // no need to treat them multiple times
 		}
-		return selectedSpots;
+		return spotToKeep;
 	}
 
 	/**
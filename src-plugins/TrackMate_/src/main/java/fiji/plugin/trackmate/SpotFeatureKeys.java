@@ -0,0 +1,69 @@
+package fiji.plugin.trackmate;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A registry that interns spot feature keys into dense integer indices.
+ * <p>
+ * {@link Spot}s store their feature values in a primitive array indexed by
+ * these indices, instead of a map from feature key to boxed values. Indices are
+ * allocated on first use, are never recycled, and are shared by all the spots
+ * of the JVM, so that the feature values of a collection of spots can be read
+ * column-wise, without boxing nor hashing, with {@link Spot#getFeatureValue(int)}.
+ * <p>
+ * This class is thread-safe.
+ */
+public class SpotFeatureKeys {
+
+	private static final ConcurrentHashMap<String, Integer> INDICES = new ConcurrentHashMap<String, Integer>();
+	private static volatile String[] KEYS = new String[0];
+
+	private SpotFeatureKeys() {}
+
+	/**
+	 * @return the index of the specified feature key, allocating a new one if
+	 * this key has never been seen before.
+	 */
+	public static final int intern(final String feature) {
+		final Integer index = INDICES.get(feature);
+		if (null != index) {
+			return index.intValue();
+		}
+		synchronized (INDICES) {
+			final Integer existing = INDICES.get(feature);
+			if (null != existing) {
+				return existing.intValue();
+			}
+			final int newIndex = KEYS.length;
+			final String[] newKeys = Arrays.copyOf(KEYS, newIndex + 1);
+			newKeys[newIndex] = feature;
+			KEYS = newKeys;
+			INDICES.put(feature, newIndex);
+			return newIndex;
+		}
+	}
+
+	/**
+	 * @return the index of the specified feature key, or -1 if it has never
+	 * been interned. Does not allocate a new index.
+	 */
+	public static final int indexOf(final String feature) {
+		final Integer index = INDICES.get(feature);
+		return null == index ? -1 : index.intValue();
+	}
+
+	/**
+	 * @return the feature key interned at the specified index.
+	 */
+	public static final String getKey(final int index) {
+		return KEYS[index];
+	}
+
+	/**
+	 * @return the number of feature keys interned so far.
+	 */
+	public static final int size() {
+		return KEYS.length;
+	}
+}
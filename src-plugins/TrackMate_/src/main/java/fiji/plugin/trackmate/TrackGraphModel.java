@@ -1,16 +1,17 @@
 package fiji.plugin.trackmate;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.jgrapht.Graphs;
 import org.jgrapht.VertexFactory;
-import org.jgrapht.alg.ConnectivityInspector;
 import org.jgrapht.alg.DijkstraShortestPath;
 import org.jgrapht.alg.DirectedNeighborIndex;
 import org.jgrapht.event.GraphEdgeChangeEvent;
@@ -60,6 +61,10 @@ public class TrackGraphModel {
 	private Map<Integer, Set<Spot>> trackSpots = new HashMap<Integer, Set<Spot>>();
 	/** The map of track names, indexed by track ID. */
 	private Map<Integer, String> trackNames = new HashMap<Integer, String>();
+	/** The ID of the track each spot belongs to. Lonely spots are not in this map. */
+	private Map<Spot, Integer> spotToTrack = new HashMap<Spot, Integer>();
+	/** The ID of the track each edge belongs to. */
+	private Map<DefaultWeightedEdge, Integer> edgeToTrack = new HashMap<DefaultWeightedEdge, Integer>();
 
 	/**
 	 * The filtered track keys. Is a set made of the keys in the two maps
@@ -164,6 +169,8 @@ public void clearTracks() {
 		this.graph.addGraphListener(new MyGraphListener());
 		this.trackEdges = new HashMap<Integer, Set<DefaultWeightedEdge>>();
 		this.trackSpots = new HashMap<Integer, Set<Spot>>();
+		this.spotToTrack = new HashMap<Spot, Integer>();
+		this.edgeToTrack = new HashMap<DefaultWeightedEdge, Integer>();
 	}
 
 
@@ -358,13 +365,7 @@ public int getNTracks() {
 	 * edge is not in any track.
 	 */
 	public Integer getTrackIDOf(final DefaultWeightedEdge edge) {
-		for (Integer trackID : trackSpots.keySet()) {
-			Set<DefaultWeightedEdge> edges = trackEdges.get(trackID);
-			if (edges.contains(edge)) {
-				return trackID;
-			}
-		}
-		return null;
+		return edgeToTrack.get(edge);
 	}
 
 	/**
@@ -372,13 +373,7 @@ public Integer getTrackIDOf(final DefaultWeightedEdge edge) {
 	 * spot is not in any track.
 	 */
 	public Integer getTrackIDOf(final Spot spot) {
-		for (Integer trackID : trackSpots.keySet()) {
-			Set<Spot> spots = trackSpots.get(trackID);
-			if (spots.contains(spot)) {
-				return trackID;
-			}
-		}
-		return null;
+		return spotToTrack.get(spot);
 	}
 
 	/**
@@ -668,182 +663,200 @@ public List<DefaultWeightedEdge> dijkstraShortestPath(final Spot source, final S
 
 
 	/**
-	 * Compute the two track lists {@link #trackSpots} and {@link #trackSpots}
-	 * from the {@link #graph}. These two track lists are the only objects
+	 * Compute the two track lists {@link #trackSpots} and {@link #trackEdges}
+	 * from the whole {@link #graph}. These two track lists are the only objects
 	 * reflecting the tracks visible from outside the model.
 	 * <p>
-	 * The guts of this method are a bit convoluted: we must make sure that
-	 * tracks that were visible previous to the changes that called for this
-	 * method are still visible after, event if some tracks are merge, deleted
-	 * or split.
+	 * Tracks that were visible previous to the changes that called for this
+	 * method are still visible after, event if some tracks are merged, deleted
+	 * or split. New tracks are visible.
 	 * 
-	 * @return  the map of the old track parts ID vs new ID: That is, all spots and edges 
-	 * in the old track with ID oldID are now parts of the new tracks with new 
-	 * IDs contained in the matching value set.
+	 * @return  the IDs of the tracks built by this call.
+	 * @see #updateTracks()
 	 */
-	void computeTracksFromGraph() {
+	Set<Integer> computeTracksFromGraph() {
 
 		if (DEBUG) {
 			System.out.println("[TrackGraphModel] #computeTracksFromGraph()");
 		}
 
-		// Retain old values
-		Map<Integer, Set<Spot>> oldTrackSpots = trackSpots;
-		Map<Integer, String> oldNames = trackNames;
+		return rebuildTracks(graph.vertexSet(), new HashSet<Integer>(trackSpots.keySet()));
+	}
+
+	/**
+	 * Update the two track lists {@link #trackSpots} and {@link #trackEdges}
+	 * after the edges in {@link #edgesAdded} and {@link #edgesRemoved} have been 
+	 * added to or removed from the {@link #graph}.
+	 * <p>
+	 * Only the tracks these edges touch are rebuilt: a track can only be split
+	 * by removing one of its edges, and only be merged with another one or with
+	 * lonely spots by adding an edge between them. The cost of this method thus
+	 * grows with the size of the modified tracks, not with the size of the 
+	 * model. Names and visibility are inferred as in {@link #computeTracksFromGraph()}.
+	 * 
+	 * @return  the IDs of the tracks rebuilt by this call. These are the tracks
+	 * whose features need to be recomputed.
+	 */
+	Set<Integer> updateTracks() {
 
 		if (DEBUG) {
-			System.out.println("[TrackGraphModel] #computeTracksFromGraph(): storing " + oldTrackSpots.size() + " old spot tracks.");
+			System.out.println("[TrackGraphModel] #updateTracks()");
 		}
 
-		// Build new track lists
-		List<Set<Spot>> connectedSets = new ConnectivityInspector<Spot, DefaultWeightedEdge>(graph).connectedSets();
-		this.trackSpots = new HashMap<Integer, Set<Spot>>(connectedSets.size());
-		this.trackEdges = new HashMap<Integer, Set<DefaultWeightedEdge>>(connectedSets.size());
-		this.trackNames = new HashMap<Integer, String>(connectedSets.size());
-
-		for(Set<Spot> track : connectedSets) {
-
-			// We DO NOT WANT tracks made of a single spot. They will reside on the side, 
-			// as lonely spots
-			if (track.size() < 2) {
-				continue;
+		final Set<Integer> oldTrackIDs = new HashSet<Integer>();
+		final Set<Spot> seeds = new LinkedHashSet<Spot>();
+		for (DefaultWeightedEdge edge : edgesRemoved) {
+			Integer trackID = edgeToTrack.get(edge);
+			if (null != trackID) {
+				oldTrackIDs.add(trackID);
 			}
-
-			Integer uniqueKey = track.hashCode();
-			// Add to spot set collection
-			trackSpots.put(uniqueKey, track);
-			// Add to edge set collection, using the same hash as a key
-			Set<DefaultWeightedEdge> spotEdge = new HashSet<DefaultWeightedEdge>();
-			for (Spot spot : track) {
-				spotEdge.addAll(graph.edgesOf(spot));
-			}
-			trackEdges.put(uniqueKey, spotEdge);
-
+			seeds.add(graph.getEdgeSource(edge)); // Edges keep their ends when removed
+			seeds.add(graph.getEdgeTarget(edge));
 		}
-
-		if (DEBUG) {
-			System.out.println("[TrackGraphModel] #computeTracksFromGraph(): found " + trackSpots.size() + " new spot tracks.");
+		for (DefaultWeightedEdge edge : edgesAdded) {
+			seeds.add(graph.getEdgeSource(edge));
+			seeds.add(graph.getEdgeTarget(edge));
 		}
-
-		// Try to infer correct visibility
-		final int noldtracks = oldTrackSpots.size();
-		final Map<Integer, Boolean> oldTrackVisibility = new HashMap<Integer, Boolean>(noldtracks);
-		for (Integer oldKey : oldTrackSpots.keySet()) {
-			oldTrackVisibility.put(oldKey, filteredTrackKeys.contains(oldKey));
-		}
-		filteredTrackKeys = new HashSet<Integer>(noldtracks); // Approx
-
-		/* A special case: if there is some completely new track appearing, it 
-		 * should be visible by default. It also needs a default name.
-		 * How do we know that some tracks are "de novo"?
-		 * For de novo tracks, there is no spot in the Set<Spot> that can be found in 
-		 * oldTrackSpots.	 */
-
-		/*
-		 * Map the new track IDs to the old ones. That is, the new track with ID newID
-		 * is built from parts of the old tracks with old IDs contained in the matching value set.
-		 */
-		Map<Integer, Set<Integer>> newToOldKeyMap = new HashMap<Integer, Set<Integer>>(trackSpots.size());
-		for (Integer trackID : trackSpots.keySet()) {
-			newToOldKeyMap.put(trackID, new HashSet<Integer>());
+		for (Spot spot : seeds) {
+			Integer trackID = spotToTrack.get(spot);
+			if (null != trackID) {
+				oldTrackIDs.add(trackID);
+			}
 		}
-
-		// Loop over old tracks to get where they can be found in the new tracks
-		if (DEBUG) {
-			System.out.println("[TrackGraphModel] #computeTracksFromGraph(): inspecting old tracks.");
+		for (Integer trackID : oldTrackIDs) {
+			seeds.addAll(trackSpots.get(trackID));
 		}
 
-		for (Integer oldKey : oldTrackSpots.keySet()) {
-			Set<Spot> oldTrack = oldTrackSpots.get(oldKey);
-
-			for (Integer trackKey : trackSpots.keySet()) { // Iterate over new tracks
-				Set<Spot> track = trackSpots.get(trackKey);
+		return rebuildTracks(seeds, oldTrackIDs);
+	}
 
-				boolean found = false;
-				for (Spot spot : track) {
-					if (oldTrack.contains(spot)) {
-						found = true;
-						break;
-					}
-				}
+	/**
+	 * Rebuild the tracks that contain the given seed spots, replacing the old 
+	 * tracks with the given IDs. The old tracks must contain all the spots that 
+	 * can be reached from the seeds in the current graph, and the seeds must 
+	 * contain all the spots of the old tracks still in the graph.
+	 * 
+	 * @return  the IDs of the new tracks.
+	 */
+	private Set<Integer> rebuildTracks(final Collection<Spot> seeds, final Set<Integer> oldTrackIDs) {
 
-				if (found) {
-					// There were common elements. We store this old track ID as part of the new track, and skip the rest
-					if (DEBUG) {
-						System.out.println("[TrackGraphModel] #computeTracksFromGraph(): old track " + oldKey + " parts were found in new track " + trackKey);
+		// Build new tracks, reachable from the seeds
+		final List<Set<Spot>> newTracks = new ArrayList<Set<Spot>>();
+		final Set<Spot> visited = new HashSet<Spot>(seeds.size());
+		final ArrayList<Spot> stack = new ArrayList<Spot>();
+		for (Spot seed : seeds) {
+			if (visited.contains(seed) || !graph.containsVertex(seed)) {
+				continue;
+			}
+			Set<Spot> track = new HashSet<Spot>();
+			visited.add(seed);
+			stack.add(seed);
+			while (!stack.isEmpty()) {
+				Spot spot = stack.remove(stack.size() - 1);
+				track.add(spot);
+				for (DefaultWeightedEdge edge : graph.edgesOf(spot)) {
+					Spot other = Graphs.getOppositeVertex(graph, edge, spot);
+					if (visited.add(other)) {
+						stack.add(other);
 					}
-					newToOldKeyMap.get(trackKey).add(oldKey);
-					// FIXME can we skip once we have found one?
 				}
-
-			} // Finished iterating over new tracks
-
+			}
+			// We DO NOT WANT tracks made of a single spot. They will reside on the side, 
+			// as lonely spots
+			if (track.size() >= 2) {
+				newTracks.add(track);
+			}
 		}
 
-
-
-
-		// Assemble visibility and name from old parts
-
 		if (DEBUG) {
-			System.out.println("[TrackGraphModel] #computeTracksFromGraph(): assembling new tracks visibility and name.");
+			System.out.println("[TrackGraphModel] #rebuildTracks(): replacing " + oldTrackIDs.size() + " old tracks by " + newTracks.size() + " new tracks.");
 		}
 
-
-		// Build this map
-		for (Integer trackKey : trackSpots.keySet()) {
-
-			if (newToOldKeyMap.get(trackKey).isEmpty()) {
-				// Is new, so we make it visible and give it a default name.
-				filteredTrackKeys.add(trackKey);
-				trackNames.put(trackKey, generateDefaultTrackName() );
-				if (DEBUG) {
-					System.out.println("[TrackGraphModel] #computeTracksFromGraph(): track " + trackKey + " is completely new. Making it visible with name " + trackNames.get(trackKey));
-				}
-
-			} else {
-				/* Is made of old tracks, so we can pick its name and visibility from there.
-				 * 
-				 * We copy the name from the largest old track that is part of this one now.
-				 * 
-				 * How to know if a new track should be visible or not?
-				 * We can say this: the new track should be visible if it has at least
-				 * one spot that can be found in a visible old track. */
-				Iterator<Integer> it = newToOldKeyMap.get(trackKey).iterator();
-				Integer keyOfLargestOldTracks = it.next();
-				boolean shouldBeVisible = oldTrackVisibility.get(keyOfLargestOldTracks);
-				while (it.hasNext()) {
-					Integer oldKey = it.next();
-					if (oldTrackSpots.get(oldKey).size() > oldTrackSpots.get(keyOfLargestOldTracks).size()) {
-						keyOfLargestOldTracks = oldKey;	
-					}
-					shouldBeVisible = shouldBeVisible | oldTrackVisibility.get(oldKey);
+		/*
+		 * Infer name and visibility from the old tracks each new track is made of,
+		 * before we forget about them.
+		 */
+		final List<String> newNames = new ArrayList<String>(newTracks.size());
+		final List<Boolean> newVisibilities = new ArrayList<Boolean>(newTracks.size());
+		for (Set<Spot> track : newTracks) {
+			Integer keyOfLargestOldTrack = null;
+			boolean shouldBeVisible = false;
+			for (Spot spot : track) {
+				Integer oldKey = spotToTrack.get(spot);
+				if (null == oldKey || !oldTrackIDs.contains(oldKey)) {
+					continue;
 				}
-				trackNames.put(trackKey, oldNames.get(keyOfLargestOldTracks));
-				if (shouldBeVisible) {
-					filteredTrackKeys.add(trackKey);
+				/* We copy the name from the largest old track that is part of this one now.
+				 * The new track should be visible if it has at least one spot that 
+				 * can be found in a visible old track. */
+				if (null == keyOfLargestOldTrack || trackSpots.get(oldKey).size() > trackSpots.get(keyOfLargestOldTrack).size()) {
+					keyOfLargestOldTrack = oldKey;
 				}
-				if (DEBUG) {
-					System.out.println("[TrackGraphModel] #computeTracksFromGraph(): track " + trackKey + " is not new; it is made in parts of old tracks " +  newToOldKeyMap.get(trackKey));
-					System.out.println("[TrackGraphModel] #computeTracksFromGraph():  - giving it the name: " + trackNames.get(trackKey));
-					System.out.println("[TrackGraphModel] #computeTracksFromGraph():  - making it visible? " + shouldBeVisible);
+				shouldBeVisible = shouldBeVisible || filteredTrackKeys.contains(oldKey);
+			}
+			if (null == keyOfLargestOldTrack) {
+				// Is new, so we make it visible and give it a default name.
+				newNames.add(generateDefaultTrackName());
+				newVisibilities.add(true);
+			} else {
+				newNames.add(trackNames.get(keyOfLargestOldTrack));
+				newVisibilities.add(shouldBeVisible);
+			}
+		}
 
-				}
+		/*
+		 * Replace old tracks by new ones. The maps are re-instantiated, so that
+		 * callers holding the previous ones are not affected.
+		 */
+		trackSpots = new HashMap<Integer, Set<Spot>>(trackSpots);
+		trackEdges = new HashMap<Integer, Set<DefaultWeightedEdge>>(trackEdges);
+		trackNames = new HashMap<Integer, String>(trackNames);
+		filteredTrackKeys = new HashSet<Integer>(filteredTrackKeys);
+
+		for (Integer oldKey : oldTrackIDs) {
+			for (Spot spot : trackSpots.remove(oldKey)) {
+				spotToTrack.remove(spot);
+			}
+			for (DefaultWeightedEdge edge : trackEdges.remove(oldKey)) {
+				edgeToTrack.remove(edge);
 			}
+			trackNames.remove(oldKey);
+			filteredTrackKeys.remove(oldKey);
 		}
 
+		final Set<Integer> newTrackIDs = new HashSet<Integer>(newTracks.size());
+		for (int i = 0; i < newTracks.size(); i++) {
+			Set<Spot> track = newTracks.get(i);
+			Integer uniqueKey = track.hashCode();
+			// Add to edge set collection, using the same hash as a key
+			Set<DefaultWeightedEdge> spotEdge = new HashSet<DefaultWeightedEdge>();
+			for (Spot spot : track) {
+				spotEdge.addAll(graph.edgesOf(spot));
+				spotToTrack.put(spot, uniqueKey);
+			}
+			for (DefaultWeightedEdge edge : spotEdge) {
+				edgeToTrack.put(edge, uniqueKey);
+			}
+			trackSpots.put(uniqueKey, track);
+			trackEdges.put(uniqueKey, spotEdge);
+			trackNames.put(uniqueKey, newNames.get(i));
+			if (newVisibilities.get(i)) {
+				filteredTrackKeys.add(uniqueKey);
+			}
+			newTrackIDs.add(uniqueKey);
+		}
 
 		// Clean track feature value map
-		HashSet<Integer> trackIDsToRemove = new HashSet<Integer>(oldTrackSpots.keySet());
-		trackIDsToRemove.removeAll(trackSpots.keySet());
-		for (Integer toRemove : trackIDsToRemove) {
-			model.getFeatureModel().trackFeatureValues.remove(toRemove);
+		for (Integer oldKey : oldTrackIDs) {
+			if (!newTrackIDs.contains(oldKey)) {
+				model.getFeatureModel().trackFeatureValues.remove(oldKey);
+			}
 		}
 
-
 		if (DEBUG) {
-			System.out.println("[TrackGraphModel] #computeTracksFromGraph(): the end; found " + trackSpots.size() + " new spot tracks.");
+			System.out.println("[TrackGraphModel] #rebuildTracks(): the end; " + trackSpots.size() + " tracks in the model.");
 		}
+		return newTrackIDs;
 	}
 
 
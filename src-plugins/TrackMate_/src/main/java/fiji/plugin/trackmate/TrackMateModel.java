@@ -1,7 +1,6 @@
 package fiji.plugin.trackmate;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -551,35 +550,24 @@ private void flushUpdate() {
 			System.out.println("[TrackMateModel] #flushUpdate(): Event cache is :" + eventCache);
 		}
 
-		/* Before they enter void, we grab the trackID of removed edges. We will need to 
-		 * know from where they were removed to recompute trackIDs intelligently. Or so */
-		HashMap<DefaultWeightedEdge, Integer> edgeRemovedOrigins = new HashMap<DefaultWeightedEdge, Integer>(trackGraphModel.edgesRemoved.size());
-		if (trackGraphModel.edgesRemoved.size() > 0) {
-			for (DefaultWeightedEdge edge : trackGraphModel.edgesRemoved) {
-				edgeRemovedOrigins.put(edge, getTrackModel().getTrackIDOf(edge)); // we store old track IDs
-			}
-		}
-
-		// Store old track IDs to monitor what tracks are new
-		HashSet<Integer> oldTrackIDs = new HashSet<Integer>(trackGraphModel.getTrackIDs());
-
 		/* We recompute tracks only if some edges have been added or removed,
 		 * (if some spots have been removed that causes edges to be removes, we already know about it).
 		 * We do NOT recompute tracks if spots have been added: they will not result in
-		 * new tracks made of single spots.	 */
+		 * new tracks made of single spots. Only the tracks touched by these edges
+		 * are rebuilt, and only them need their features to be updated.	 */
+		HashSet<Integer> tracksToUpdate = new HashSet<Integer>();
 		int nEdgesToSignal = trackGraphModel.edgesAdded.size() + trackGraphModel.edgesRemoved.size() + trackGraphModel.edgesModified.size();
-		if (nEdgesToSignal > 0) {
+		if (trackGraphModel.edgesAdded.size() + trackGraphModel.edgesRemoved.size() > 0) {
 			// First, regenerate the tracks
-			trackGraphModel.computeTracksFromGraph();
+			tracksToUpdate.addAll(trackGraphModel.updateTracks());
 		}
 
-		// Do we have new track appearing?
-		HashSet<Integer> tracksToUpdate = new HashSet<Integer>(trackGraphModel.getTrackIDs());
-		tracksToUpdate.removeAll(oldTrackIDs);
-
 		// We also want to update the tracks that have edges that were modified
 		for (DefaultWeightedEdge modifiedEdge : trackGraphModel.edgesModified) {
-			tracksToUpdate.add(trackGraphModel.getTrackIDOf(modifiedEdge));
+			Integer trackID = trackGraphModel.getTrackIDOf(modifiedEdge);
+			if (null != trackID) {
+				tracksToUpdate.add(trackID);
+			}
 		}
 
 		// Deal with new or moved spots: we need to update their features.
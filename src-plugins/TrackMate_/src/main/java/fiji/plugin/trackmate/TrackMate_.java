@@ -6,6 +6,7 @@
 import fiji.plugin.trackmate.features.track.TrackAnalyzer;
 import fiji.plugin.trackmate.gui.TrackMateWizard;
 import fiji.plugin.trackmate.gui.WizardController;
+import fiji.plugin.trackmate.tracking.IncrementalSpotTracker;
 import fiji.plugin.trackmate.tracking.SpotTracker;
 import fiji.plugin.trackmate.util.CropImgView;
 import fiji.plugin.trackmate.util.TMUtils;
@@ -15,8 +16,12 @@
 import ij.plugin.PlugIn;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -63,6 +68,13 @@ public class TrackMate_ implements PlugIn, Benchmark, MultiThreaded, Algorithm {
 	protected long processingTime;
 	protected String errorMessage;
 	protected int numThreads = Runtime.getRuntime().availableProcessors();
+	/** 
+	 * The maximal number of frames that {@link #processPipelined()} processes 
+	 * concurrently. If not strictly positive, twice the number of threads is used.
+	 */
+	protected int maxFramesInFlight = 0;
+	/** If true, {@link #process()} runs {@link #processPipelined()}. */
+	protected boolean pipelined = false;
 
 	/*
 	 * CONSTRUCTORS
@@ -179,6 +191,75 @@ protected List<Spot> translateAndPruneSpots(final List<Spot> spotsThisFrame, fin
 	}
 
 
+	/**
+	 * Wrap the source image of the given settings, and crop it if the crop cube
+	 * of the settings does not span the whole image.
+	 * @return the image to run the detection on, or <code>null</code> if the 
+	 * source image has no X or Y axis.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private ImgPlus cropSourceImage(final Settings settings) {
+		ImgPlus rawImg = TMUtils.rawWraps(settings.imp);
+		ImgPlus img;
+
+		// Check if we indeed wish to crop the source image. To this, we check
+		// the crop cube settings
+
+		if (settings.xstart != 0 
+				|| settings.ystart != 0
+				|| settings.zstart != 0
+				|| settings.xend != settings.imp.getWidth()-1
+				|| settings.yend != settings.imp.getHeight()-1
+				|| settings.zend != settings.imp.getNSlices()-1) {
+			// Yes, we want to crop
+
+			long[] max = new long[rawImg.numDimensions()];
+			long[] min = new long[rawImg.numDimensions()];
+			// X, we must have it
+			int xindex = TMUtils.findXAxisIndex(rawImg);
+			if (xindex < 0) {
+				errorMessage = "Source image has no X axis.\n";
+				return null;
+			}
+			min[xindex] = settings.xstart;
+			max[xindex] = settings.xend;
+			// Y, we must have it
+			int yindex = TMUtils.findYAxisIndex(rawImg);
+			if (yindex < 0) {
+				errorMessage  = "Source image has no Y axis.\n";
+				return null;
+			}
+			min[yindex] = settings.ystart;
+			max[yindex] = settings.yend;
+			// Z, we MIGHT have it
+			int zindex = TMUtils.findZAxisIndex(rawImg);
+			if (zindex >= 0) {
+				min[zindex] = settings.zstart;
+				max[zindex] = settings.zend;
+			}
+			// CHANNEL, we might have it 
+			int cindex = TMUtils.findCAxisIndex(rawImg);
+			if (cindex >= 0) {
+				min[cindex] = 0;
+				max[cindex] = settings.imp.getNChannels();
+			}
+			// TIME, we might have it, but anyway we leave the start & end management to the threads below  
+			int tindex = TMUtils.findTAxisIndex(rawImg);
+			if (tindex >= 0) {
+				min[tindex] = 0;
+				max[tindex] = settings.imp.getNFrames();
+			}
+			// crop: we now have a cropped view of the source image
+			CropImgView cropView = new CropImgView(rawImg, min, max);
+			// Put back metadata in a new ImgPlus 
+			img = new ImgPlus(cropView, rawImg);
+			
+		} else {
+			img = rawImg;
+		}
+		return img;
+	}
+
 	/**
 	 * Hook for subclassers.
 	 * <p>
@@ -364,7 +445,7 @@ public boolean execTracking() {
 		tracker.setSettings(model.getSettings().trackerSettings);
 		if (tracker.checkInput() && tracker.process()) {
 			model.getTrackModel().setGraph(tracker.getResult());
-			return false;
+			return true;
 		} else {
 			errorMessage = "Tracking process failed:\n"+tracker.getErrorMessage();
 			return false;
@@ -398,63 +479,9 @@ public boolean execDetection() {
 		/*
 		 *  Prepare cropped image
 		 */
-		ImgPlus rawImg = TMUtils.rawWraps(settings.imp);
-		ImgPlus img;
-
-		// Check if we indeed wish to crop the source image. To this, we check
-		// the crop cube settings
-
-		if (settings.xstart != 0 
-				|| settings.ystart != 0
-				|| settings.zstart != 0
-				|| settings.xend != settings.imp.getWidth()-1
-				|| settings.yend != settings.imp.getHeight()-1
-				|| settings.zend != settings.imp.getNSlices()-1) {
-			// Yes, we want to crop
-
-			long[] max = new long[rawImg.numDimensions()];
-			long[] min = new long[rawImg.numDimensions()];
-			// X, we must have it
-			int xindex = TMUtils.findXAxisIndex(rawImg);
-			if (xindex < 0) {
-				errorMessage = "Source image has no X axis.\n";
-				return false;
-			}
-			min[xindex] = settings.xstart;
-			max[xindex] = settings.xend;
-			// Y, we must have it
-			int yindex = TMUtils.findYAxisIndex(rawImg);
-			if (yindex < 0) {
-				errorMessage  = "Source image has no Y axis.\n";
-				return false;
-			}
-			min[yindex] = settings.ystart;
-			max[yindex] = settings.yend;
-			// Z, we MIGHT have it
-			int zindex = TMUtils.findZAxisIndex(rawImg);
-			if (zindex >= 0) {
-				min[zindex] = settings.zstart;
-				max[zindex] = settings.zend;
-			}
-			// CHANNEL, we might have it 
-			int cindex = TMUtils.findCAxisIndex(rawImg);
-			if (cindex >= 0) {
-				min[cindex] = 0;
-				max[cindex] = settings.imp.getNChannels();
-			}
-			// TIME, we might have it, but anyway we leave the start & end management to the threads below  
-			int tindex = TMUtils.findTAxisIndex(rawImg);
-			if (tindex >= 0) {
-				min[tindex] = 0;
-				max[tindex] = settings.imp.getNFrames();
-			}
-			// crop: we now have a cropped view of the source image
-			CropImgView cropView = new CropImgView(rawImg, min, max);
-			// Put back metadata in a new ImgPlus 
-			img = new ImgPlus(cropView, rawImg);
-			
-		} else {
-			img = rawImg;
+		ImgPlus img = cropSourceImage(settings);
+		if (null == img) {
+			return false;
 		}
 
 		factory.setTarget(img, settings.detectorSettings);
@@ -593,7 +620,18 @@ public boolean execSpotFiltering(boolean doLogIt) {
 			final Logger logger = model.getLogger();
 			logger.log("Starting spot filtering process.\n");
 		}
-		model.setFilteredSpots(model.getSpots().filter(model.getSettings().getSpotFilters()), true);
+		SpotCollection selectedSpots = model.getSpots().filter(model.getSettings().getSpotFilters());
+		// Re-fill the filtered spots of the model in place, so that a tracker created on them sees the new ones
+		SpotCollection filteredSpots = model.getFilteredSpots();
+		if (null == filteredSpots) {
+			filteredSpots = selectedSpots;
+		} else {
+			filteredSpots.clear();
+			for (int frame : selectedSpots.keySet()) {
+				filteredSpots.put(frame, selectedSpots.get(frame));
+			}
+		}
+		model.setFilteredSpots(filteredSpots, true);
 		return true;
 	}
 
@@ -663,8 +701,20 @@ public String getErrorMessage() {
 		return errorMessage;
 	}
 
+	/**
+	 * Execute the whole process, from detection to track filtering. If 
+	 * {@link #setPipelined(boolean)} was set to true, this delegates to 
+	 * {@link #processPipelined()}.
+	 * <p>
+	 * The tracker of the settings must have been created on the filtered spot 
+	 * collection of the model, which is re-filled in place by the spot filtering
+	 * step.
+	 */
 	@Override
 	public boolean process() {
+		if (pipelined) {
+			return processPipelined();
+		}
 		if (!execDetection()) {
 			return false;
 		}
@@ -685,6 +735,243 @@ public boolean process() {
 		return true;
 	}
 
+	/**
+	 * Execute the whole process, like {@link #process()}, but in a pipeline over
+	 * frames instead of step by step.
+	 * <p>
+	 * Each frame is detected, initially filtered, has its spot features computed 
+	 * and is filtered as soon as a thread is available for it, and is then linked 
+	 * to the previous frame as soon as this one is done, while other frames are 
+	 * still being detected. The wall-clock time is then close to the time of the 
+	 * slowest step instead of the sum of all steps, and no more than 
+	 * {@link #setMaxFramesInFlight(int)} frames are processed at the same time.
+	 * <p>
+	 * Frame to frame linking is pipelined only if the tracker of the settings is
+	 * an {@link IncrementalSpotTracker}; other trackers are run once all frames
+	 * are done. In the latter case, the tracker must have been created on the 
+	 * filtered spot collection of the model, which is re-filled in place.
+	 * Track features and track filtering are computed at the end, as in 
+	 * {@link #process()}.
+	 * 
+	 * @return true if the whole process has executed correctly.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public boolean processPipelined() {
+		final long start = System.currentTimeMillis();
+		final Logger logger = model.getLogger();
+		logger.log("Starting pipelined detection and tracking process.\n");
+
+		final Settings settings = model.getSettings();
+		final SpotDetectorFactory<?> factory = settings.detectorFactory;
+		if (null == factory) {
+			errorMessage = "Detector factory is null.\n";
+			return false;
+		}
+		if (null == settings.detectorSettings) {
+			errorMessage  = "Detector settings is null.\n";
+			return false;
+		}
+		final SpotTracker tracker = settings.tracker;
+		if (null == tracker) {
+			errorMessage  = "Tracker is null.\n";
+			return false;
+		}
+		ImgPlus img = cropSourceImage(settings);
+		if (null == img) {
+			return false;
+		}
+		factory.setTarget(img, settings.detectorSettings);
+
+		tracker.setSettings(settings.trackerSettings);
+		final IncrementalSpotTracker linker;
+		if (tracker instanceof IncrementalSpotTracker) {
+			linker = (IncrementalSpotTracker) tracker;
+			if (!linker.initLinking()) {
+				errorMessage = "Tracking process failed:\n"+linker.getErrorMessage();
+				return false;
+			}
+		} else {
+			linker = null;
+		}
+
+		// Results holders
+		final SpotCollection spots = new SpotCollection();
+		spots.setNumThreads(numThreads);
+		model.setSpots(spots, false); // Spot analyzers fetch the spots in the model
+		SpotCollection fs = model.getFilteredSpots();
+		if (null == fs) {
+			fs = new SpotCollection();
+			fs.setNumThreads(numThreads);
+		} else {
+			fs.clear();
+		}
+		final SpotCollection filteredSpots = fs;
+		final List<FeatureFilter> initialFilter = Collections.singletonList(new FeatureFilter(Spot.QUALITY, settings.initialSpotFilterValue, true));
+		final List<FeatureFilter> spotFilters = settings.getSpotFilters();
+
+		// Frames done, in completion order. A negative value signals an error.
+		final int numFrames = settings.tend - settings.tstart + 1;
+		final BlockingQueue<Integer> framesDone = new LinkedBlockingQueue<Integer>();
+		final Semaphore framesInFlight = new Semaphore(maxFramesInFlight > 0 ? maxFramesInFlight : 2 * numThreads);
+		final AtomicInteger ai = new AtomicInteger(settings.tstart);
+		final AtomicInteger spotFound = new AtomicInteger(0);
+		final AtomicBoolean ok = new AtomicBoolean(true);
+
+		final Thread[] threads = SimpleMultiThreading.newThreads(numThreads);
+		for (int ithread = 0; ithread < threads.length; ithread++) {
+
+			threads[ithread] = new Thread("TrackMate pipeline thread "+(1+ithread)+"/"+threads.length) {  
+
+				public void run() {
+
+					while (true) {
+						// Wait for a frame to be linked before starting a new one 
+						try {
+							framesInFlight.acquire();
+						} catch (InterruptedException e) {
+							return;
+						}
+						final int frame = ai.getAndIncrement();
+						if (!ok.get() || frame > settings.tend) {
+							return;
+						}
+
+						// The linking thread waits for every frame, so a failure must be signaled
+						try {
+							// Detection
+							SpotDetector<?> detector = factory.getDetector(frame);
+							if (!detector.checkInput() || !detector.process()) {
+								errorMessage = detector.getErrorMessage();
+								ok.set(false);
+								framesDone.offer(-1);
+								return;
+							}
+							List<Spot> spotsThisFrame = translateAndPruneSpots(detector.getResult(), settings);
+							for (Spot spot : spotsThisFrame) {
+								spot.putFeature(Spot.POSITION_T, frame * settings.dt); // FRAME will be set upon adding to SpotCollection
+							}
+
+							// Initial filtering, features and filtering
+							spotsThisFrame = SpotCollection.filter(spotsThisFrame, initialFilter);
+							spots.put(frame, spotsThisFrame);
+							model.getFeatureModel().computeSpotFeatures(frame);
+							filteredSpots.put(frame, SpotCollection.filter(spotsThisFrame, spotFilters));
+
+							spotFound.addAndGet(spotsThisFrame.size());
+							framesDone.offer(frame);
+						} catch (RuntimeException e) {
+							errorMessage = "Processing frame "+frame+" failed:\n"+e+"\n";
+							ok.set(false);
+							framesDone.offer(-1);
+							return;
+						}
+					}
+				}
+			};
+		}
+
+		logger.setStatus("Detection and tracking...");
+		logger.setProgress(0);
+		for (Thread thread : threads) {
+			thread.start();
+		}
+
+		// Link frames in order as they are done
+		final boolean[] isDone = new boolean[numFrames];
+		List<Spot> previous = null;
+		int next = settings.tstart;
+		try {
+			while (ok.get() && next <= settings.tend) {
+				final int frame = framesDone.take();
+				if (frame < 0) {
+					break;
+				}
+				isDone[frame - settings.tstart] = true;
+				while (next <= settings.tend && isDone[next - settings.tstart]) {
+					final List<Spot> current = filteredSpots.get(next);
+					if (null != linker && !linker.linkFrames(previous, current)) {
+						errorMessage = "Tracking process failed:\n"+linker.getErrorMessage();
+						ok.set(false);
+						break;
+					}
+					previous = current;
+					next++;
+					framesInFlight.release();
+					logger.setProgress((next - settings.tstart) / (double) numFrames);
+				}
+			}
+		} catch (InterruptedException e) {
+			errorMessage = "Pipeline interrupted.\n";
+			ok.set(false);
+		}
+
+		// Unlock and join the pipeline threads
+		if (!ok.get()) {
+			framesInFlight.release(threads.length);
+		}
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			errorMessage = "Pipeline interrupted.\n";
+			ok.set(false);
+		}
+
+		model.setSpots(spots, true);
+		model.setFilteredSpots(filteredSpots, true);
+		logger.setProgress(1);
+		logger.setStatus("");
+		if (!ok.get()) {
+			logger.error("Pipelined process failed after "+(next - settings.tstart)+" frame:\n"+errorMessage);
+			return false;
+		}
+		logger.log("Found "+spotFound.get()+" spots, "+filteredSpots.getNSpots()+" after filtering.\n");
+
+		// Complete tracking
+		if (null != linker) {
+			if (!linker.completeLinking()) {
+				errorMessage = "Tracking process failed:\n"+linker.getErrorMessage();
+				return false;
+			}
+		} else {
+			if (!tracker.checkInput() || !tracker.process()) {
+				errorMessage = "Tracking process failed:\n"+tracker.getErrorMessage();
+				return false;
+			}
+		}
+		model.getTrackModel().setGraph(tracker.getResult());
+		computeTrackFeatures(true);
+		if (!execTrackFiltering(true)) {
+			return false;
+		}
+
+		processingTime = System.currentTimeMillis() - start;
+		return true;
+	}
+
+	/**
+	 * Set the maximal number of frames that {@link #processPipelined()} processes
+	 * concurrently, which bounds the memory used by frames being processed. Values 
+	 * not strictly positive default to twice the number of threads.
+	 */
+	public void setMaxFramesInFlight(int maxFramesInFlight) {
+		this.maxFramesInFlight = maxFramesInFlight;
+	}
+
+	/**
+	 * Set whether {@link #process()} runs the frames through a pipeline, with 
+	 * {@link #processPipelined()}, instead of executing each step over all
+	 * frames before starting the next one.
+	 */
+	public void setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+	}
+
+	public boolean isPipelined() {
+		return pipelined;
+	}
+
 	@Override
 	public int getNumThreads() {
 		return numThreads;
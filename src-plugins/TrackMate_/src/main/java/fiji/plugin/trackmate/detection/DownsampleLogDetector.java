@@ -32,12 +32,19 @@ public class DownsampleLogDetector <T extends RealType<T>  & NativeType<T>> impl
 	protected List<Spot> spots = new ArrayList<Spot>(); // because this implementation is fast to add elements at the end of the list
 	/** The processing time in ms. */
 	protected long processingTime;
+	/** The cache for the Fourier convolutions of the downsampled images. */
+	protected final FourierConvolutionCache<T> cache;
 
 	/*
 	 * CONSTRUCTORS
 	 */
 
 	public DownsampleLogDetector(final ImgPlus<T> img, final double radius, final double threshold, final int downsamplingFactor) {
+		this(img, radius, threshold, downsamplingFactor, new FourierConvolutionCache<T>(false));
+	}
+
+	public DownsampleLogDetector(final ImgPlus<T> img, final double radius, final double threshold, final int downsamplingFactor, final FourierConvolutionCache<T> cache) {
+		this.cache = cache;
 		this.img = img;
 		this.radius = radius;
 		this.threshold = threshold;
@@ -122,7 +129,7 @@ public boolean process() {
 		// 2. Segment downsampled image
 
 		// 2.1 Instantiate detector
-		LogDetector<T> detector = new LogDetector<T>(dsimg, radius, threshold, false, false);
+		LogDetector<T> detector = new LogDetector<T>(dsimg, radius, threshold, false, false, cache);
 
 		// 2.2 Execute detection
 		if (!detector.checkInput() || !detector.process()) {
@@ -47,7 +47,7 @@ public SpotDetector<T> getDetector(final int frame) {
 		final double radius = (Double) settings.get(KEY_RADIUS);
 		final double threshold = (Double) settings.get(KEY_THRESHOLD);
 		final int downsamplingFactor = (Integer) settings.get(KEY_DOWNSAMPLE_FACTOR);
-		return new DownsampleLogDetector<T>(imgT, radius, threshold, downsamplingFactor);
+		return new DownsampleLogDetector<T>(imgT, radius, threshold, downsamplingFactor, cache);
 	}
 	
 	@Override
@@ -0,0 +1,239 @@
+package fiji.plugin.trackmate.detection;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.algorithm.fft.FourierConvolution;
+import net.imglib2.exception.IncompatibleTypeException;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * A cache for the Fourier convolutions of the {@link LogDetector}, meant to be
+ * shared by all the detectors a factory creates for the frames of an image.
+ * <p>
+ * Without it, each frame creates its own Gaussian and Laplacian kernels, and
+ * two new {@link FourierConvolution}s that compute the Fourier transform of
+ * these kernels again. Here:
+ * <ul>
+ * 	<li> the kernels are created once, and shared by all threads;
+ * 	<li> each thread keeps one {@link FourierConvolution} per image size and
+ * kernel, and only replaces its image for new frames. The kernel spectra are
+ * therefore computed once per thread instead of once per frame. The forward
+ * transform of the image is made in place, since it is not reused.
+ * </ul>
+ * {@link FourierConvolution} instances are not thread-safe, which is why they
+ * are not shared across threads.
+ * <p>
+ * Optionally, the Gaussian and Laplacian kernels can be fused into a single
+ * LoG kernel, in which case each frame needs one forward and one inverse
+ * transform instead of two of each. The filtered image then goes through one
+ * round trip in the source image type instead of two, which might change the
+ * quality values slightly for integer types.
+ *
+ * @param <T> the pixel type of the images convolved.
+ */
+public class FourierConvolutionCache<T extends RealType<T> & NativeType<T>> {
+
+	private final boolean fuseKernels;
+	/** Kernels, shared by all threads. */
+	private final ConcurrentHashMap<String, Img<FloatType>> kernels = new ConcurrentHashMap<String, Img<FloatType>>();
+	/** Convolutions, one set per thread. */
+	private final ThreadLocal<Map<String, FourierConvolution<T, FloatType>>> convolutions = new ThreadLocal<Map<String, FourierConvolution<T, FloatType>>>() {
+		@Override
+		protected Map<String, FourierConvolution<T, FloatType>> initialValue() {
+			return new HashMap<String, FourierConvolution<T, FloatType>>();
+		}
+	};
+
+	/*
+	 * CONSTRUCTOR
+	 */
+
+	/**
+	 * @param fuseKernels  if true, the Gaussian and Laplacian kernels are fused
+	 * into a single LoG kernel.
+	 */
+	public FourierConvolutionCache(final boolean fuseKernels) {
+		this.fuseKernels = fuseKernels;
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	/**
+	 * @return true if this cache fuses the Gaussian and Laplacian kernels.
+	 */
+	public boolean isFusingKernels() {
+		return fuseKernels;
+	}
+
+	/**
+	 * @return a Fourier convolution of the given image by a Gaussian kernel of
+	 * the given sigmas, in pixel units.
+	 * @throws IncompatibleTypeException  if the image type is not suitable for
+	 * a Fourier convolution.
+	 */
+	public FourierConvolution<T, FloatType> getGaussianConvolution(final Img<T> image, final double[] sigmas) throws IncompatibleTypeException {
+		final String key = "Gaussian" + Arrays.toString(sigmas);
+		Img<FloatType> kernel = kernels.get(key);
+		if (null == kernel) {
+			kernel = FourierConvolution.createGaussianKernel(new ArrayImgFactory<FloatType>(), sigmas);
+			kernels.putIfAbsent(key, kernel);
+		}
+		return getConvolution(image, key, kernel);
+	}
+
+	/**
+	 * @return a Fourier convolution of the given image by a 3x3 or 3x3x3
+	 * Laplacian kernel.
+	 * @throws IncompatibleTypeException  if the image type is not suitable for
+	 * a Fourier convolution.
+	 */
+	public FourierConvolution<T, FloatType> getLaplacianConvolution(final Img<T> image) throws IncompatibleTypeException {
+		final String key = "Laplacian" + image.numDimensions();
+		Img<FloatType> kernel = kernels.get(key);
+		if (null == kernel) {
+			kernel = createLaplacianKernel(image.numDimensions());
+			kernels.putIfAbsent(key, kernel);
+		}
+		return getConvolution(image, key, kernel);
+	}
+
+	/**
+	 * @return a Fourier convolution of the given image by the LoG kernel
+	 * resulting from the convolution of the Gaussian kernel of the given sigmas
+	 * by the Laplacian kernel.
+	 * @throws IncompatibleTypeException  if the image type is not suitable for
+	 * a Fourier convolution.
+	 */
+	public FourierConvolution<T, FloatType> getLoGConvolution(final Img<T> image, final double[] sigmas) throws IncompatibleTypeException {
+		final String key = "LoG" + Arrays.toString(sigmas);
+		Img<FloatType> kernel = kernels.get(key);
+		if (null == kernel) {
+			final Img<FloatType> gaussianKernel = FourierConvolution.createGaussianKernel(new ArrayImgFactory<FloatType>(), sigmas);
+			kernel = convolveKernels(gaussianKernel, createLaplacianKernel(sigmas.length));
+			kernels.putIfAbsent(key, kernel);
+		}
+		return getConvolution(image, key, kernel);
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Return the convolution of this thread for the given kernel and the size of
+	 * the given image, with this image as a target.
+	 */
+	private FourierConvolution<T, FloatType> getConvolution(final Img<T> image, final String kernelKey, final Img<FloatType> kernel) throws IncompatibleTypeException {
+		final long[] dims = new long[image.numDimensions()];
+		image.dimensions(dims);
+		final String key = kernelKey + Arrays.toString(dims);
+
+		final Map<String, FourierConvolution<T, FloatType>> map = convolutions.get();
+		FourierConvolution<T, FloatType> convolution = map.get(key);
+		if (null == convolution || !convolution.replaceImage(image)) {
+			convolution = new FourierConvolution<T, FloatType>(image, kernel);
+			convolution.setKeepImgFFT(false);
+			map.put(key, convolution);
+		}
+		return convolution;
+	}
+
+	/*
+	 * STATIC METHODS
+	 */
+
+	/**
+	 * @return the full convolution of the two given kernels, centered on the
+	 * same pixel the two kernels are centered on.
+	 */
+	private static final Img<FloatType> convolveKernels(final Img<FloatType> k1, final Img<FloatType> k2) {
+		final int numDim = k1.numDimensions();
+		final long[] dims = new long[numDim];
+		for (int d = 0; d < numDim; d++) {
+			dims[d] = k1.dimension(d) + k2.dimension(d) - 1;
+		}
+		final Img<FloatType> kernel = new ArrayImgFactory<FloatType>().create(dims, new FloatType());
+		final RandomAccess<FloatType> ra = kernel.randomAccess();
+		final long[] p1 = new long[numDim];
+		final long[] p2 = new long[numDim];
+
+		final Cursor<FloatType> c1 = k1.localizingCursor();
+		while (c1.hasNext()) {
+			c1.fwd();
+			final float v1 = c1.get().get();
+			if (v1 == 0) {
+				continue;
+			}
+			c1.localize(p1);
+			final Cursor<FloatType> c2 = k2.localizingCursor();
+			while (c2.hasNext()) {
+				c2.fwd();
+				final float v2 = c2.get().get();
+				if (v2 == 0) {
+					continue;
+				}
+				c2.localize(p2);
+				for (int d = 0; d < numDim; d++) {
+					ra.setPosition(p1[d] + p2[d], d);
+				}
+				ra.get().set(ra.get().get() + v1 * v2);
+			}
+		}
+		return kernel;
+	}
+
+	private static final Img<FloatType> createLaplacianKernel(final int numDim) {
+		final ImgFactory<FloatType> factory = new ArrayImgFactory<FloatType>();
+		Img<FloatType> laplacianKernel = null;
+		if (numDim == 3) {
+			final float laplacianArray[][][] = new float[][][]{ { {0,-1/18,0},{-1/18,-1/18,-1/18},{0,-1/18,0} }, { {-1/18,-1/18,-1/18}, {-1/18,1,-1/18}, {-1/18,-1/18,-1/18} }, { {0,-1/18,0},{-1/18,-1/18,-1/18},{0,-1/18,0} } }; // laplace kernel found here: http://en.wikipedia.org/wiki/Discrete_Laplace_operator
+			laplacianKernel = factory.create(new int[]{3, 3, 3}, new FloatType());
+			quickKernel3D(laplacianArray, laplacianKernel);
+		} else if (numDim == 2) {
+			final float laplacianArray[][] = new float[][]{ {-1/8,-1/8,-1/8},{-1/8,1,-1/8},{-1/8,-1/8,-1/8} }; // laplace kernel found here: http://en.wikipedia.org/wiki/Discrete_Laplace_operator
+			laplacianKernel = factory.create(new int[]{3, 3}, new FloatType());
+			quickKernel2D(laplacianArray, laplacianKernel);
+		}
+		return laplacianKernel;
+	}
+
+	private static void quickKernel2D(float[][] vals, Img<FloatType> kern)	{
+		final RandomAccess<FloatType> cursor = kern.randomAccess();
+		final int[] pos = new int[2];
+
+		for (int i = 0; i < vals.length; ++i)
+			for (int j = 0; j < vals[i].length; ++j) {
+				pos[0] = i;
+				pos[1] = j;
+				cursor.setPosition(pos);
+				cursor.get().set(vals[i][j]);
+			}
+	}
+
+	private static void quickKernel3D(float[][][] vals, Img<FloatType> kern)	{
+		final RandomAccess<FloatType> cursor = kern.randomAccess();
+		final int[] pos = new int[3];
+
+		for (int i = 0; i < vals.length; ++i)
+			for (int j = 0; j < vals[i].length; ++j)
+				for (int k = 0; k < vals[j].length; ++k) {
+					pos[0] = i;
+					pos[1] = j;
+					pos[2] = k;
+					cursor.setPosition(pos);
+					cursor.get().set(vals[i][j][k]);
+				}
+	}
+}
@@ -8,9 +8,7 @@
 import net.imglib2.algorithm.math.PickImagePeaks;
 import net.imglib2.exception.IncompatibleTypeException;
 import net.imglib2.img.Img;
-import net.imglib2.img.ImgFactory;
 import net.imglib2.img.ImgPlus;
-import net.imglib2.img.array.ArrayImgFactory;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.real.FloatType;
@@ -40,12 +38,24 @@ public class LogDetector <T extends RealType<T>  & NativeType<T>> implements Spo
 	protected List<Spot> spots = new ArrayList<Spot>(); // because this implementation is fast to add elements at the end of the list
 	/** The processing time in ms. */
 	protected long processingTime;
+	/** The cache for the kernels and Fourier convolutions, possibly shared with other detectors. */
+	protected final FourierConvolutionCache<T> cache;
 
 	/*
 	 * CONSTRUCTORS
 	 */
 
 	public LogDetector(final ImgPlus<T> img, final double radius, final double threshold, final boolean doSubPixelLocalization, final boolean doMedianFilter) {
+		this(img, radius, threshold, doSubPixelLocalization, doMedianFilter, new FourierConvolutionCache<T>(false));
+	}
+
+	/**
+	 * Create a detector that uses the given cache for its Fourier convolutions.
+	 * Detectors of the same image can share a cache to avoid re-creating the 
+	 * convolution kernels and their spectra for every frame.
+	 */
+	public LogDetector(final ImgPlus<T> img, final double radius, final double threshold, final boolean doSubPixelLocalization, final boolean doMedianFilter, final FourierConvolutionCache<T> cache) {
+		this.cache = cache;
 		this.img = img;
 		this.radius = radius;
 		this.threshold = threshold;
@@ -94,34 +104,48 @@ public boolean process() {
 			sigmas[i] = sigma / calibration[i];
 		}
 		
-		ImgFactory<FloatType> factory = new ArrayImgFactory<FloatType>();
-		Img<FloatType> gaussianKernel = FourierConvolution.createGaussianKernel(factory, sigmas);
-		FourierConvolution<T, FloatType> fConvGauss;
-		try {
-			fConvGauss = new FourierConvolution<T, FloatType>(intermediateImage, gaussianKernel);
-		} catch (IncompatibleTypeException e) {
-			errorMessage = baseErrorMessage + "Fourier convolution failed: "+e.getMessage();
-			return false;
-		}
-		if (!fConvGauss.checkInput() || !fConvGauss.process()) {
-			errorMessage = baseErrorMessage + "Fourier convolution with Gaussian failed:\n" + fConvGauss.getErrorMessage() ;
-			return false;
-		}
-		intermediateImage = fConvGauss.getResult();
+		if (cache.isFusingKernels()) {
+			// One convolution with the LoG kernel
+			FourierConvolution<T, FloatType> fConvLoG;
+			try {
+				fConvLoG = cache.getLoGConvolution(intermediateImage, sigmas);
+			} catch (IncompatibleTypeException e) {
+				errorMessage = baseErrorMessage + "Fourier convolution failed: "+e.getMessage();
+				return false;
+			}
+			if (!fConvLoG.checkInput() || !fConvLoG.process()) {
+				errorMessage = baseErrorMessage + "Fourier convolution with LoG failed:\n" + fConvLoG.getErrorMessage() ;
+				return false;
+			}
+			intermediateImage = fConvLoG.getResult();
+
+		} else {
+			FourierConvolution<T, FloatType> fConvGauss;
+			try {
+				fConvGauss = cache.getGaussianConvolution(intermediateImage, sigmas);
+			} catch (IncompatibleTypeException e) {
+				errorMessage = baseErrorMessage + "Fourier convolution failed: "+e.getMessage();
+				return false;
+			}
+			if (!fConvGauss.checkInput() || !fConvGauss.process()) {
+				errorMessage = baseErrorMessage + "Fourier convolution with Gaussian failed:\n" + fConvGauss.getErrorMessage() ;
+				return false;
+			}
+			intermediateImage = fConvGauss.getResult();
 
-		Img<FloatType> laplacianKernel = createLaplacianKernel();
-		FourierConvolution<T, FloatType> fConvLaplacian;
-		try {
-			fConvLaplacian = new FourierConvolution<T, FloatType>(intermediateImage, laplacianKernel);
-		} catch (IncompatibleTypeException e) {
-			errorMessage = baseErrorMessage + "Fourier convolution failed: "+e.getMessage();
-			return false;
-		}
-		if (!fConvLaplacian.checkInput() || !fConvLaplacian.process()) {
-			errorMessage = baseErrorMessage + "Fourier Convolution with Laplacian failed:\n" + fConvLaplacian.getErrorMessage() ;
-			return false;
+			FourierConvolution<T, FloatType> fConvLaplacian;
+			try {
+				fConvLaplacian = cache.getLaplacianConvolution(intermediateImage);
+			} catch (IncompatibleTypeException e) {
+				errorMessage = baseErrorMessage + "Fourier convolution failed: "+e.getMessage();
+				return false;
+			}
+			if (!fConvLaplacian.checkInput() || !fConvLaplacian.process()) {
+				errorMessage = baseErrorMessage + "Fourier Convolution with Laplacian failed:\n" + fConvLaplacian.getErrorMessage() ;
+				return false;
+			}
+			intermediateImage = fConvLaplacian.getResult();	
 		}
-		intermediateImage = fConvLaplacian.getResult();	
 
 		PickImagePeaks<T> peakPicker = new PickImagePeaks<T>(intermediateImage);
 		double[] suppressionRadiuses = new double[img.numDimensions()];
@@ -193,22 +217,6 @@ public boolean process() {
 	 */
 
 
-	private Img<FloatType> createLaplacianKernel() {
-		final ImgFactory<FloatType> factory = new ArrayImgFactory<FloatType>();
-		int numDim = img.numDimensions();
-		Img<FloatType> laplacianKernel = null;
-		if (numDim == 3) {
-			final float laplacianArray[][][] = new float[][][]{ { {0,-1/18,0},{-1/18,-1/18,-1/18},{0,-1/18,0} }, { {-1/18,-1/18,-1/18}, {-1/18,1,-1/18}, {-1/18,-1/18,-1/18} }, { {0,-1/18,0},{-1/18,-1/18,-1/18},{0,-1/18,0} } }; // laplace kernel found here: http://en.wikipedia.org/wiki/Discrete_Laplace_operator
-			laplacianKernel = factory.create(new int[]{3, 3, 3}, new FloatType());
-			quickKernel3D(laplacianArray, laplacianKernel);
-		} else if (numDim == 2) {
-			final float laplacianArray[][] = new float[][]{ {-1/8,-1/8,-1/8},{-1/8,1,-1/8},{-1/8,-1/8,-1/8} }; // laplace kernel found here: http://en.wikipedia.org/wiki/Discrete_Laplace_operator
-			laplacianKernel = factory.create(new int[]{3, 3}, new FloatType());
-			quickKernel2D(laplacianArray, laplacianKernel);
-		} 
-		return laplacianKernel;
-	}
-	
 	/**
 	 * Apply a simple 3x3 median filter to the target image.
 	 */
@@ -221,39 +229,6 @@ protected Img<T> applyMedianFilter(final Img<T> image) {
 		return medFilt.getResult(); 
 	}
 
-	/*
-	 * STATIC METHODS
-	 */
-
-
-	private static void quickKernel2D(float[][] vals, Img<FloatType> kern)	{
-		final RandomAccess<FloatType> cursor = kern.randomAccess();
-		final int[] pos = new int[2];
-
-		for (int i = 0; i < vals.length; ++i) 
-			for (int j = 0; j < vals[i].length; ++j) {
-				pos[0] = i;
-				pos[1] = j;
-				cursor.setPosition(pos);
-				cursor.get().set(vals[i][j]);
-			}
-	}
-
-	private static void quickKernel3D(float[][][] vals, Img<FloatType> kern)	{
-		final RandomAccess<FloatType> cursor = kern.randomAccess();
-		final int[] pos = new int[3];
-
-		for (int i = 0; i < vals.length; ++i) 
-			for (int j = 0; j < vals[i].length; ++j) 
-				for (int k = 0; k < vals[j].length; ++k) {
-					pos[0] = i;
-					pos[1] = j;
-					pos[2] = k;
-					cursor.setPosition(pos);
-					cursor.get().set(vals[i][j][k]);
-				}
-	}
-
 	@Override
 	public List<Spot> getResult() {
 		return spots;
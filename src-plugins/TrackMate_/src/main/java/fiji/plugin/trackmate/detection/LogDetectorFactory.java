@@ -47,6 +47,10 @@
 	protected ImgPlus<T> img;
 	protected Map<String, Object> settings;
 	protected String errorMessage;
+	/** If true, the detectors fuse the Gaussian and Laplacian kernels in a single LoG kernel. */
+	protected boolean fuseKernels = false;
+	/** The cache shared by all the detectors of the target image. */
+	protected FourierConvolutionCache<T> cache;
 
 	/*
 	 * METHODS
@@ -56,6 +60,17 @@
 	public void setTarget(ImgPlus<T> img, Map<String, Object> settings) {
 		this.img = img;
 		this.settings = settings;
+		this.cache = new FourierConvolutionCache<T>(fuseKernels);
+	}
+
+	/**
+	 * Set whether the detectors created by this factory convolve images by a
+	 * single LoG kernel, instead of a Gaussian kernel then a Laplacian kernel.
+	 * This halves the number of Fourier transforms per frame. Takes effect at
+	 * the next call to {@link #setTarget(ImgPlus, Map)}.
+	 */
+	public void setFuseKernels(final boolean fuseKernels) {
+		this.fuseKernels = fuseKernels;
 	}
 
 	@Override
@@ -67,7 +82,7 @@ public SpotDetector<T> getDetector(final int frame) {
 		final double threshold = (Double) settings.get(KEY_THRESHOLD);
 		final boolean doMedian = (Boolean) settings.get(KEY_DO_MEDIAN_FILTERING);
 		final boolean doSubpixel = (Boolean) settings.get(KEY_DO_SUBPIXEL_LOCALIZATION);
-		return new LogDetector<T>(imgT, radius, threshold, doSubpixel, doMedian);
+		return new LogDetector<T>(imgT, radius, threshold, doSubpixel, doMedian, cache);
 	}
 
 	@Override
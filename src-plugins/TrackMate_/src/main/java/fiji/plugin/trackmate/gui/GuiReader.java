@@ -20,6 +20,7 @@
 import fiji.plugin.trackmate.detection.SpotDetectorFactory;
 import fiji.plugin.trackmate.io.TmXmlReader;
 import fiji.plugin.trackmate.io.TmXmlReader_v12;
+import fiji.plugin.trackmate.io.TmXmlStreamReader;
 import fiji.plugin.trackmate.tracking.SpotTracker;
 import fiji.plugin.trackmate.util.TMUtils;
 import fiji.plugin.trackmate.util.Version;
@@ -35,7 +36,7 @@
  */
 public class GuiReader {
 
-	/** Version above which (inclusive) we can use the current {@link TmXmlReader}. 
+	/** Version above which (inclusive) we can use the current {@link TmXmlStreamReader}. 
 	 * Below this version, we use the {@link TmXmlReader_v12} reader. */ 
 	private static final Version DEAL_WITH_VERSION_ABOVE = new Version("2.0.0");
 	protected Logger logger = Logger.VOID_LOGGER;
@@ -104,7 +105,7 @@ public void loadFile(File file) {
 		msg = "Opening file "+file.getName()+'\n';
 		logger.log(msg);
 		str.append(msg);
-		TmXmlReader reader = new TmXmlReader(file, plugin);
+		TmXmlStreamReader reader = new TmXmlStreamReader(file, plugin);
 
 		if (!reader.checkInput()) {
 			logger.error("There was a problem opening the source file:\n" + reader.getErrorMessage() + '\n');
@@ -127,23 +128,31 @@ public void loadFile(File file) {
 			return;
 		}
 		
+		// Retrieve data and update GUI
+		boolean readWasOk;
+		String errorMessage;
+		String log;
 		if (fileVersion.compareTo( DEAL_WITH_VERSION_ABOVE ) < 0) {
 			logger.log("  Detected an older file format: v"+fileVersionStr);
 			logger.log(" Converting on the fly.\n");
 			// We substitute an able reader
-			reader = new TmXmlReader_v12(file, plugin);
+			TmXmlReader oldReader = new TmXmlReader_v12(file, plugin);
+			readWasOk = oldReader.checkInput() && oldReader.process();
+			errorMessage = oldReader.getErrorMessage();
+			log = oldReader.getLogText();
+		} else {
+			readWasOk = reader.process();
+			errorMessage = reader.getErrorMessage();
+			log = reader.getLogText();
 		}
 
-		// Retrieve data and update GUI
-		boolean readWasOk = reader.process();
 		if (!readWasOk) {
 			logger.error("There was some errors when loading the file:\n");
-			logger.error(reader.getErrorMessage());
+			logger.error(errorMessage);
 			return;
 		}
 		
 		// Retrieve log text if any
-		String log = reader.getLogText();
 		if (log != null) {
 			wizard.getLogPanel().setTextContent(log + "\n\n" + str.toString());
 		}
@@ -1,12 +1,10 @@
 package fiji.plugin.trackmate.gui;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
 
 import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.TrackMateModel;
-import fiji.plugin.trackmate.io.TmXmlWriter;
+import fiji.plugin.trackmate.io.TmXmlStreamWriter;
 
 /**
  * This class is in charge of writing a {@link TrackMateModel} to a file, from
@@ -46,7 +44,7 @@ public void writeFile(final File file) {
 
 		String log = wizard.getLogPanel().getTextContent();
 
-		TmXmlWriter writer = new TmXmlWriter(wizard.getController().getPlugin(), log);
+		TmXmlStreamWriter writer = new TmXmlStreamWriter(file, wizard.getController().getPlugin(), log);
 		
 		if (!writer.checkInput()) {
 			logger.error("There was some errors preparing to write:\n" + writer.getErrorMessage());
@@ -55,19 +53,12 @@ public void writeFile(final File file) {
 		}
 
 		if (!writer.process()) {
-			logger.error("There was some errors when preparing the file:\n" + writer.getErrorMessage());
+			logger.error("There was some errors when writing the file:\n" + writer.getErrorMessage());
 			logger.error("Aborting.\n");
 			return;
 		}
 		
-		try {
-			writer.writeToFile(file);
-			logger.log("Data saved to: "+file.toString()+'\n');
-		} catch (FileNotFoundException e) {
-			logger.error("File not found:\n"+e.getMessage()+'\n');
-		} catch (IOException e) {
-			logger.error("Input/Output error:\n"+e.getMessage()+'\n');
-		} 
+		logger.log("Data saved to: "+file.toString()+'\n');
 	}
 
 
@@ -4,15 +4,30 @@
 
 import java.awt.FileDialog;
 import java.awt.Frame;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.swing.JFileChooser;
 import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.jdom2.Attribute;
+import org.jdom2.Content;
 import org.jdom2.DataConversionException;
 import org.jdom2.Element;
+import org.jdom2.Text;
 
 import fiji.plugin.trackmate.Logger;
 
@@ -22,9 +37,10 @@
  *
  */
 public class IOUtils {
-	
-
 
+	/** The file name suffix that causes the stream writer to compress its output. */
+	public static final String GZIP_SUFFIX = ".gz";
+	private static final int BUFFER_SIZE = 1 << 16;
 
 	/**
 	 * Prompt the user for a target xml file.
@@ -145,4 +161,138 @@ public static final boolean readBooleanAttribute(Element element, String name, L
 		return val;
 	}
 
+
+	/*
+	 * STREAMS
+	 */
+
+	/**
+	 * Open a buffered input stream on the given file. Gzip-compressed files are detected
+	 * from their header and uncompressed on the fly, whatever their name. 
+	 */
+	public static final InputStream openInputStream(final File file) throws IOException {
+		final BufferedInputStream is = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+		is.mark(2);
+		final int b1 = is.read();
+		final int b2 = is.read();
+		is.reset();
+		if (b1 == (GZIPInputStream.GZIP_MAGIC & 0xff) && b2 == (GZIPInputStream.GZIP_MAGIC >> 8)) {
+			return new BufferedInputStream(new GZIPInputStream(is, BUFFER_SIZE), BUFFER_SIZE);
+		}
+		return is;
+	}
+
+	/**
+	 * Open a buffered output stream on the given file. The output is gzip-compressed if 
+	 * the file name ends with {@link #GZIP_SUFFIX}.
+	 */
+	public static final OutputStream openOutputStream(final File file) throws IOException {
+		final OutputStream os = new FileOutputStream(file);
+		if (file.getName().endsWith(GZIP_SUFFIX)) {
+			return new BufferedOutputStream(new GZIPOutputStream(os, BUFFER_SIZE), BUFFER_SIZE);
+		}
+		return new BufferedOutputStream(os, BUFFER_SIZE);
+	}
+
+	/*
+	 * STAX
+	 */
+
+	/**
+	 * Read and return an integer attribute from the current start element of a StAX reader, 
+	 * and substitute the default value if the attribute is not found or of the wrong type.
+	 */
+	public static final int readIntAttribute(XMLStreamReader reader, String name, Logger logger, int defaultValue) {
+		String str = reader.getAttributeValue(null, name);
+		if (null == str) {
+			logger.error("Could not find attribute "+name+" for element "+reader.getLocalName()+", substituting default value: "+defaultValue+".\n");
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(str.trim());
+		} catch (NumberFormatException e) {
+			logger.error("Cannot read the attribute "+name+" of the element "+reader.getLocalName()+", substituting default value: "+defaultValue+".\n");
+			return defaultValue;
+		}
+	}
+
+	public static final int readIntAttribute(XMLStreamReader reader, String name, Logger logger) {
+		return readIntAttribute(reader, name, logger, 0);
+	}
+
+	public static final double readDoubleAttribute(XMLStreamReader reader, String name, Logger logger) {
+		String str = reader.getAttributeValue(null, name);
+		if (null == str) {
+			logger.error("Could not find attribute "+name+" for element "+reader.getLocalName()+", substituting default value.\n");
+			return 0;
+		}
+		try {
+			return Double.parseDouble(str.trim());
+		} catch (NumberFormatException e) {
+			logger.error("Cannot read the attribute "+name+" of the element "+reader.getLocalName()+", substituting default value.\n");
+			return 0;
+		}
+	}
+
+	public static final boolean readBooleanAttribute(XMLStreamReader reader, String name, Logger logger) {
+		String str = reader.getAttributeValue(null, name);
+		if (null == str) {
+			logger.error("Could not find attribute "+name+" for element "+reader.getLocalName()+", substituting default value.\n");
+			return false;
+		}
+		return Boolean.parseBoolean(str.trim());
+	}
+
+	/**
+	 * Read the element the StAX reader is positioned on, with all its attributes and 
+	 * content, as a JDom {@link Element}. This is meant for the small parts of the file 
+	 * that are unmarshalled by providers. On exit, the reader is positioned on the end 
+	 * tag of this element.
+	 */
+	public static final Element readElement(final XMLStreamReader reader) throws XMLStreamException {
+		Element element = new Element(reader.getLocalName());
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			element.setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+		}
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				element.addContent(readElement(reader));
+			} else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+				if (!reader.isWhiteSpace()) {
+					element.addContent(reader.getText());
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				break;
+			}
+		}
+		return element;
+	}
+
+	/**
+	 * Write the given JDom {@link Element}, with all its attributes and content, to a 
+	 * StAX writer.
+	 */
+	public static final void writeElement(final XMLStreamWriter writer, final Element element) throws XMLStreamException {
+		if (element.getContentSize() == 0) {
+			writer.writeEmptyElement(element.getName());
+		} else {
+			writer.writeStartElement(element.getName());
+		}
+		for (Attribute att : element.getAttributes()) {
+			writer.writeAttribute(att.getName(), att.getValue());
+		}
+		if (element.getContentSize() == 0) {
+			return;
+		}
+		for (Content content : element.getContent()) {
+			if (content instanceof Element) {
+				writeElement(writer, (Element) content);
+			} else if (content instanceof Text) {
+				writer.writeCharacters(((Text) content).getText());
+			}
+		}
+		writer.writeEndElement();
+	}
+
 }
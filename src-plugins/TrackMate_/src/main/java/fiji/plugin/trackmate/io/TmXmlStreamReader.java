@@ -0,0 +1,901 @@
+package fiji.plugin.trackmate.io;
+
+import static fiji.plugin.trackmate.io.IOUtils.readBooleanAttribute;
+import static fiji.plugin.trackmate.io.IOUtils.readDoubleAttribute;
+import static fiji.plugin.trackmate.io.IOUtils.readIntAttribute;
+import static fiji.plugin.trackmate.io.TmXmlKeys.DETECTOR_SETTINGS_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FILTERED_SPOT_COLLECTION_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FILTERED_SPOT_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FILTERED_TRACK_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FILTER_ABOVE_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FILTER_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FILTER_FEATURE_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FILTER_VALUE_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FRAME_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_FILENAME_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_FOLDER_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_HEIGHT_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_NFRAMES_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_NSLICES_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_PIXEL_HEIGHT_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_PIXEL_WIDTH_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_SPATIAL_UNITS_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_TIME_INTERVAL_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_TIME_UNITS_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_VOXEL_DEPTH_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_WIDTH_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.INITIAL_SPOT_FILTER_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.LOG_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.PLUGIN_VERSION_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.ROOT_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SETTINGS_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SETTINGS_TEND_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SETTINGS_TSTART_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SETTINGS_XEND_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SETTINGS_XSTART_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SETTINGS_YEND_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SETTINGS_YSTART_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SETTINGS_ZEND_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SETTINGS_ZSTART_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_COLLECTION_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_COLLECTION_NSPOTS_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_FILTER_COLLECTION_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_FRAME_COLLECTION_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_ID_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_ID_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_NAME_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACKER_SETTINGS_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_COLLECTION_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_EDGE_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_FILTER_COLLECTION_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_ID_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_NAME_ATTRIBUTE_NAME;
+
+import ij.IJ;
+import ij.ImagePlus;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import net.imglib2.algorithm.Algorithm;
+import net.imglib2.algorithm.Benchmark;
+
+import org.jdom2.Element;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleDirectedWeightedGraph;
+
+import fiji.plugin.trackmate.DetectorProvider;
+import fiji.plugin.trackmate.FeatureFilter;
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Logger.StringBuilderLogger;
+import fiji.plugin.trackmate.Settings;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.TrackMateModel;
+import fiji.plugin.trackmate.TrackMate_;
+import fiji.plugin.trackmate.TrackerProvider;
+import fiji.plugin.trackmate.features.edges.EdgeTargetAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackIndexAnalyzer;
+
+/**
+ * A streaming counterpart of the {@link TmXmlReader}.
+ * <p>
+ * It reads the same files, but in a single pass with a StAX {@link XMLStreamReader},
+ * instead of building a JDom document of the whole file first. Spots are created as
+ * they are read, straight into the {@link SpotCollection}. Since tracks are written
+ * before spots, edges are buffered in primitive arrays until the spots they refer to
+ * are known, and the track graph is built at the end of the pass. Only the small
+ * detector and tracker settings elements are converted to JDom, so that they can
+ * be unmarshalled by their providers.
+ * <p>
+ * Gzip-compressed files, such as written by the {@link TmXmlStreamWriter}, are
+ * uncompressed on the fly.
+ */
+public class TmXmlStreamReader implements Algorithm, Benchmark {
+
+	protected final File file;
+	/** The plugin instance to operate on. This must be provided, in the case we want to load
+	 * a file created with a subclass of {@link TrackMate_} (e.g. with new factories) so that
+	 * correct detectors, etc... can be instantiated from the extended plugin.
+	 */
+	protected final TrackMate_ plugin;
+	protected long processingTime;
+	protected StringBuilderLogger logger = new StringBuilderLogger();
+
+	private String log;
+	private String version;
+
+	/*
+	 * PARSING STATE, only valid during process()
+	 */
+
+	private Settings settings;
+	private String imageFileName;
+	private String imageFolder;
+	private FeatureFilter initialFilter;
+	private List<FeatureFilter> spotFilters;
+	private List<FeatureFilter> trackFilters;
+	/** All spots read, or <code>null</code> if the file has no spot section. */
+	private SpotCollection allSpots;
+	/** Spots read, by ID. Used to resolve the spot IDs of edges and filtered spots. */
+	private HashMap<Integer, Spot> cache;
+	/** The IDs of the filtered spots, per frame, or <code>null</code> if the file has no such section. */
+	private Map<Integer, IntArray> filteredSpotIDs;
+	/** The saved filtered track IDs, or <code>null</code> if the file has no such section. */
+	private Set<Integer> filteredTrackIDs;
+	/** The saved tracks, or <code>null</code> if the file has no track section. */
+	private List<SavedTrack> tracks;
+	private EdgeBuffer edges;
+
+	/*
+	 * CONSTRUCTORS
+	 */
+
+	/**
+	 * Initialize this reader to read the file given in argument. Nothing is read until
+	 * {@link #checkInput()} or {@link #process()} is called.
+	 * <p>
+	 * A plugin instance must be provided, and this instance must be initialized with providers
+	 * (as in when calling {@link TrackMate_#initModules()}. The given plugin instance will be
+	 * modified by this class, upon calling the {@link #process()} method.
+	 */
+	public TmXmlStreamReader(File file, TrackMate_ plugin) {
+		this.file = file;
+		this.plugin = plugin;
+	}
+
+	/*
+	 * PUBLIC METHODS
+	 */
+
+	/**
+	 * @return  the log text saved in the specified file, or <code>null</code> if log
+	 * text was not saved. Must be called after {@link #process()}.
+	 */
+	public String getLogText() {
+		return log;
+	}
+
+	/**
+	 * @return the version string stored in the file, or <code>null</code> if it
+	 * cannot be read. Only the root element of the file is read to find it.
+	 */
+	public String getVersion() {
+		if (null == version) {
+			readVersion();
+		}
+		return version;
+	}
+
+	@Override
+	public long getProcessingTime() {
+		return processingTime;
+	}
+
+	/**
+	 * Checks that the file can be read and that its root element is a TrackMate element.
+	 */
+	@Override
+	public boolean checkInput() {
+		if (null == file || !file.canRead()) {
+			logger.error("Cannot read file "+file+".\n");
+			return false;
+		}
+		return readVersion();
+	}
+
+	@Override
+	public String getErrorMessage() {
+		return logger.toString();
+	}
+
+	@Override
+	public boolean process() {
+
+		long start = System.currentTimeMillis();
+
+		// Reset parsing state
+		settings = new Settings();
+		log = "";
+		imageFileName = null;
+		imageFolder = null;
+		initialFilter = null;
+		spotFilters = null;
+		trackFilters = null;
+		allSpots = null;
+		cache = null;
+		filteredSpotIDs = null;
+		filteredTrackIDs = null;
+		tracks = null;
+		edges = null;
+
+		InputStream is = null;
+		XMLStreamReader reader = null;
+		try {
+			is = IOUtils.openInputStream(file);
+			reader = createInputFactory().createXMLStreamReader(is);
+			if (!moveToRoot(reader)) {
+				return false;
+			}
+			readRootContent(reader);
+		} catch (XMLStreamException e) {
+			logger.error("Problem parsing "+file.getName()+", it is not a valid TrackMate XML file.\nError message is:\n"
+					+e.getLocalizedMessage()+'\n');
+			return false;
+		} catch (IOException e) {
+			logger.error("Problem reading "+file.getName()
+					+".\nError message is:\n"+e.getLocalizedMessage()+'\n');
+			return false;
+		} finally {
+			close(reader, is);
+		}
+
+		TrackMateModel model = plugin.getModel();
+
+		// Settings
+		settings.imp = getImage();
+		model.setSettings(settings);
+
+		// Spot Filters
+		if (null != initialFilter) {
+			model.getSettings().initialSpotFilterValue = initialFilter.value;
+		} else {
+			model.getSettings().initialSpotFilterValue = null; // So that everyone knows we did NOT find it in the file
+		}
+		model.getSettings().setSpotFilters(spotFilters);
+		// Spots
+		model.setSpots(allSpots, true);
+		model.setFilteredSpots(getFilteredSpots(), true);
+		// Tracks, filtered tracks and track features all at once
+		boolean ok = buildTracks();
+
+		// Free parsing state
+		cache = null;
+		tracks = null;
+		edges = null;
+		filteredSpotIDs = null;
+		if (!ok) {
+			return false;
+		}
+
+		// Track Filters
+		model.getSettings().setTrackFilters(trackFilters);
+
+		long end = System.currentTimeMillis();
+		processingTime = end - start;
+
+		return true;
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return factory;
+	}
+
+	private static void close(final XMLStreamReader reader, final InputStream is) {
+		try {
+			if (null != reader) {
+				reader.close();
+			}
+			if (null != is) {
+				is.close();
+			}
+		} catch (XMLStreamException e) {
+			// Nothing to do
+		} catch (IOException e) {
+			// Nothing to do
+		}
+	}
+
+	/**
+	 * Read the root element of the file, and stores its version attribute.
+	 */
+	private boolean readVersion() {
+		InputStream is = null;
+		XMLStreamReader reader = null;
+		try {
+			is = IOUtils.openInputStream(file);
+			reader = createInputFactory().createXMLStreamReader(is);
+			return moveToRoot(reader);
+		} catch (XMLStreamException e) {
+			logger.error("Problem parsing "+file.getName()+", it is not a valid TrackMate XML file.\nError message is:\n"
+					+e.getLocalizedMessage()+'\n');
+			return false;
+		} catch (IOException e) {
+			logger.error("Problem reading "+file.getName()
+					+".\nError message is:\n"+e.getLocalizedMessage()+'\n');
+			return false;
+		} finally {
+			close(reader, is);
+		}
+	}
+
+	/**
+	 * Position the reader on the root element, check it and read the version.
+	 */
+	private boolean moveToRoot(final XMLStreamReader reader) throws XMLStreamException {
+		while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {}
+		if (!reader.isStartElement() || !ROOT_ELEMENT_KEY.equals(reader.getLocalName())) {
+			logger.error("Problem parsing "+file.getName()+", it is not a valid TrackMate XML file.\n");
+			return false;
+		}
+		version = reader.getAttributeValue(null, PLUGIN_VERSION_ATTRIBUTE_NAME);
+		return true;
+	}
+
+	/**
+	 * Advance the reader to the next child element of the current element.
+	 * @return <code>true</code> if the reader is positioned on the start tag of a
+	 * child element, <code>false</code> if it reached the end tag of the current element.
+	 */
+	private static boolean nextChildElement(final XMLStreamReader reader) throws XMLStreamException {
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				return true;
+			}
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Advance the reader to the end tag of the current element, skipping all its content.
+	 */
+	private static void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0 && reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Dispatch the children of the root element. Sections can be in any order.
+	 */
+	private void readRootContent(final XMLStreamReader reader) throws XMLStreamException {
+		while (nextChildElement(reader)) {
+			String name = reader.getLocalName();
+
+			if (LOG_ELEMENT_KEY.equals(name)) {
+				log = reader.getElementText().trim();
+
+			} else if (SETTINGS_ELEMENT_KEY.equals(name)) {
+				readBaseSettings(reader);
+				skipElement(reader);
+
+			} else if (IMAGE_ELEMENT_KEY.equals(name)) {
+				readImageInfo(reader);
+				skipElement(reader);
+
+			} else if (DETECTOR_SETTINGS_ELEMENT_KEY.equals(name)) {
+				readDetectorSettings(IOUtils.readElement(reader));
+
+			} else if (TRACKER_SETTINGS_ELEMENT_KEY.equals(name)) {
+				readTrackerSettings(IOUtils.readElement(reader));
+
+			} else if (INITIAL_SPOT_FILTER_ELEMENT_KEY.equals(name)) {
+				initialFilter = readFilter(reader);
+				skipElement(reader);
+
+			} else if (SPOT_FILTER_COLLECTION_ELEMENT_KEY.equals(name)) {
+				spotFilters = readFilters(reader);
+
+			} else if (TRACK_FILTER_COLLECTION_ELEMENT_KEY.equals(name)) {
+				trackFilters = readFilters(reader);
+
+			} else if (TRACK_COLLECTION_ELEMENT_KEY.equals(name)) {
+				readTracks(reader);
+
+			} else if (FILTERED_TRACK_ELEMENT_KEY.equals(name)) {
+				readFilteredTrackIDs(reader);
+
+			} else if (SPOT_COLLECTION_ELEMENT_KEY.equals(name)) {
+				readAllSpots(reader);
+
+			} else if (FILTERED_SPOT_ELEMENT_KEY.equals(name)) {
+				readFilteredSpotIDs(reader);
+
+			} else {
+				skipElement(reader);
+			}
+		}
+	}
+
+	private void readBaseSettings(final XMLStreamReader reader) {
+		settings.xstart = readIntAttribute(reader, SETTINGS_XSTART_ATTRIBUTE_NAME, logger, 1);
+		settings.xend 	= readIntAttribute(reader, SETTINGS_XEND_ATTRIBUTE_NAME, logger, 512);
+		settings.ystart = readIntAttribute(reader, SETTINGS_YSTART_ATTRIBUTE_NAME, logger, 1);
+		settings.yend 	= readIntAttribute(reader, SETTINGS_YEND_ATTRIBUTE_NAME, logger, 512);
+		settings.zstart = readIntAttribute(reader, SETTINGS_ZSTART_ATTRIBUTE_NAME, logger, 1);
+		settings.zend 	= readIntAttribute(reader, SETTINGS_ZEND_ATTRIBUTE_NAME, logger, 10);
+		settings.tstart = readIntAttribute(reader, SETTINGS_TSTART_ATTRIBUTE_NAME, logger, 1);
+		settings.tend 	= readIntAttribute(reader, SETTINGS_TEND_ATTRIBUTE_NAME, logger, 10);
+	}
+
+	private void readImageInfo(final XMLStreamReader reader) {
+		settings.dx				= readDoubleAttribute(reader, IMAGE_PIXEL_WIDTH_ATTRIBUTE_NAME, logger);
+		settings.dy				= readDoubleAttribute(reader, IMAGE_PIXEL_HEIGHT_ATTRIBUTE_NAME, logger);
+		settings.dz				= readDoubleAttribute(reader, IMAGE_VOXEL_DEPTH_ATTRIBUTE_NAME, logger);
+		settings.dt				= readDoubleAttribute(reader, IMAGE_TIME_INTERVAL_ATTRIBUTE_NAME, logger);
+		settings.width			= readIntAttribute(reader, IMAGE_WIDTH_ATTRIBUTE_NAME, logger, 512);
+		settings.height			= readIntAttribute(reader, IMAGE_HEIGHT_ATTRIBUTE_NAME, logger, 512);
+		settings.nslices		= readIntAttribute(reader, IMAGE_NSLICES_ATTRIBUTE_NAME, logger, 1);
+		settings.nframes		= readIntAttribute(reader, IMAGE_NFRAMES_ATTRIBUTE_NAME, logger, 1);
+		settings.spaceUnits		= reader.getAttributeValue(null, IMAGE_SPATIAL_UNITS_ATTRIBUTE_NAME);
+		settings.timeUnits		= reader.getAttributeValue(null, IMAGE_TIME_UNITS_ATTRIBUTE_NAME);
+		settings.imageFileName	= reader.getAttributeValue(null, IMAGE_FILENAME_ATTRIBUTE_NAME);
+		settings.imageFolder	= reader.getAttributeValue(null, IMAGE_FOLDER_ATTRIBUTE_NAME);
+		imageFileName = settings.imageFileName;
+		imageFolder = settings.imageFolder;
+	}
+
+	private ImagePlus getImage()  {
+		String filename = imageFileName;
+		String folder 	= imageFolder;
+		if (null == filename || filename.isEmpty())
+			return null;
+		if (null == folder || folder.isEmpty())
+			folder = file.getParent(); // it is a relative path, then
+		File imageFile = new File(folder, filename);
+		if (!imageFile.exists() || !imageFile.canRead()) {
+			// Could not find it to the absolute path. Then we look for the same path of the xml file
+			folder = file.getParent();
+			imageFile = new File(folder, filename);
+			if (!imageFile.exists() || !imageFile.canRead()) {
+				return null;
+			}
+		}
+		return IJ.openImage(imageFile.getAbsolutePath());
+	}
+
+	/**
+	 * Set the detector factory and settings from the given element, delegating to the
+	 * {@link DetectorProvider} of the plugin.
+	 */
+	private void readDetectorSettings(final Element element) {
+		DetectorProvider provider = plugin.getDetectorProvider();
+		Map<String, Object> ds = new HashMap<String, Object>();
+		boolean ok = provider.unmarshall(element, ds);
+		if (!ok) {
+			logger.error(provider.getErrorMessage());
+			return;
+		}
+		settings.detectorSettings = ds;
+		settings.detectorFactory = provider.getDetectorFactory();
+	}
+
+	/**
+	 * Set the tracker and its settings from the given element, delegating to the
+	 * {@link TrackerProvider} of the plugin.
+	 */
+	private void readTrackerSettings(final Element element) {
+		TrackerProvider provider = plugin.getTrackerProvider();
+		Map<String, Object> ds = new HashMap<String, Object>();
+		boolean ok = provider.unmarshall(element, ds);
+		if (!ok) {
+			logger.error(provider.getErrorMessage());
+			return;
+		}
+		settings.trackerSettings = ds;
+		settings.tracker = provider.getTracker();
+	}
+
+	private FeatureFilter readFilter(final XMLStreamReader reader) {
+		String feature 	= reader.getAttributeValue(null, FILTER_FEATURE_ATTRIBUTE_NAME);
+		Double value 	= readDoubleAttribute(reader, FILTER_VALUE_ATTRIBUTE_NAME, logger);
+		boolean isAbove	= readBooleanAttribute(reader, FILTER_ABOVE_ATTRIBUTE_NAME, logger);
+		return new FeatureFilter(feature, value, isAbove);
+	}
+
+	private List<FeatureFilter> readFilters(final XMLStreamReader reader) throws XMLStreamException {
+		List<FeatureFilter> filters = new ArrayList<FeatureFilter>();
+		while (nextChildElement(reader)) {
+			if (FILTER_ELEMENT_KEY.equals(reader.getLocalName())) {
+				filters.add(readFilter(reader));
+			}
+			skipElement(reader);
+		}
+		return filters;
+	}
+
+	/**
+	 * Read all the spots, straight into the spot collection, and index them by ID.
+	 */
+	private void readAllSpots(final XMLStreamReader reader) throws XMLStreamException {
+		int nspots = readIntAttribute(reader, SPOT_COLLECTION_NSPOTS_ATTRIBUTE_NAME, logger, 0);
+		cache = new HashMap<Integer, Spot>(Math.max(16, 4 * nspots / 3 + 1));
+		allSpots = new SpotCollection();
+
+		while (nextChildElement(reader)) {
+			if (!SPOT_FRAME_COLLECTION_ELEMENT_KEY.equals(reader.getLocalName())) {
+				skipElement(reader);
+				continue;
+			}
+
+			int currentFrame = readIntAttribute(reader, FRAME_ATTRIBUTE_NAME, logger);
+			ArrayList<Spot> spotList = new ArrayList<Spot>();
+			while (nextChildElement(reader)) {
+				if (SPOT_ELEMENT_KEY.equals(reader.getLocalName())) {
+					Spot spot = createSpotFrom(reader);
+					spotList.add(spot);
+					cache.put(spot.ID(), spot);
+				}
+				skipElement(reader);
+			}
+			spotList.trimToSize();
+			allSpots.put(currentFrame, spotList);
+		}
+	}
+
+	private Spot createSpotFrom(final XMLStreamReader reader) {
+		int ID = readIntAttribute(reader, SPOT_ID_ATTRIBUTE_NAME, logger);
+		Spot spot = new Spot(ID);
+
+		String name = reader.getAttributeValue(null, SPOT_NAME_ATTRIBUTE_NAME);
+		if (null == name || name.equals(""))
+			name = "ID"+ID;
+		spot.setName(name);
+
+		final int nAttributes = reader.getAttributeCount();
+		for (int i = 0; i < nAttributes; i++) {
+			String attName = reader.getAttributeLocalName(i);
+			if (attName.equals(SPOT_NAME_ATTRIBUTE_NAME) || attName.equals(SPOT_ID_ATTRIBUTE_NAME)) {
+				continue;
+			}
+			try {
+				spot.putFeature(attName, Double.parseDouble(reader.getAttributeValue(i)));
+			} catch (NumberFormatException e) {
+				logger.error("Cannot read the feature "+attName+" value. Skipping.\n");
+			}
+		}
+		return spot;
+	}
+
+	private void readFilteredSpotIDs(final XMLStreamReader reader) throws XMLStreamException {
+		filteredSpotIDs = new LinkedHashMap<Integer, IntArray>();
+		while (nextChildElement(reader)) {
+			if (!FILTERED_SPOT_COLLECTION_ELEMENT_KEY.equals(reader.getLocalName())) {
+				skipElement(reader);
+				continue;
+			}
+			int currentFrame = readIntAttribute(reader, FRAME_ATTRIBUTE_NAME, logger);
+			IntArray IDs = new IntArray();
+			while (nextChildElement(reader)) {
+				if (SPOT_ID_ELEMENT_KEY.equals(reader.getLocalName())) {
+					IDs.add(readIntAttribute(reader, SPOT_ID_ATTRIBUTE_NAME, logger));
+				}
+				skipElement(reader);
+			}
+			filteredSpotIDs.put(currentFrame, IDs);
+		}
+	}
+
+	/**
+	 * Resolve the filtered spot IDs against the spots read. Unknown spot IDs are ignored,
+	 * so that all the spots of the selection also belong to the main collection.
+	 * @return  a {@link SpotCollection}, or <code>null</code> if the spot selection section
+	 * is not present in the file.
+	 */
+	private SpotCollection getFilteredSpots() {
+		if (null == filteredSpotIDs)
+			return null;
+
+		SpotCollection spotSelection = new SpotCollection();
+		for (Integer frame : filteredSpotIDs.keySet()) {
+			IntArray IDs = filteredSpotIDs.get(frame);
+			ArrayList<Spot> spotList = new ArrayList<Spot>(IDs.size);
+			for (int i = 0; i < IDs.size; i++) {
+				Spot spot = (null == cache) ? null : cache.get(IDs.data[i]);
+				if (null == spot) {
+					logger.error("Unknown filtered spot ID: "+IDs.data[i]+". Skipping.\n");
+					continue;
+				}
+				spotList.add(spot);
+			}
+			spotSelection.put(frame, spotList);
+		}
+		return spotSelection;
+	}
+
+	private void readFilteredTrackIDs(final XMLStreamReader reader) throws XMLStreamException {
+		filteredTrackIDs = new HashSet<Integer>();
+		while (nextChildElement(reader)) {
+			if (TRACK_ID_ELEMENT_KEY.equals(reader.getLocalName())) {
+				filteredTrackIDs.add(readIntAttribute(reader, TrackIndexAnalyzer.TRACK_ID, logger));
+			}
+			skipElement(reader);
+		}
+	}
+
+	/**
+	 * Read the tracks: their features and names are stored per track, and their edges are
+	 * buffered as spot IDs, for they can only be resolved once all spots are read.
+	 */
+	private void readTracks(final XMLStreamReader reader) throws XMLStreamException {
+		// The list of edge features that we will set.
+		final FeatureModel fm = plugin.getModel().getFeatureModel();
+		List<String> edgeIntFeatures = new ArrayList<String>();
+		edgeIntFeatures.add(EdgeTargetAnalyzer.SPOT_SOURCE_ID);
+		edgeIntFeatures.add(EdgeTargetAnalyzer.SPOT_TARGET_ID);
+		List<String> edgeFeatures = new ArrayList<String>(fm.getEdgeFeatures());
+		edgeFeatures.removeAll(edgeIntFeatures);
+		edgeFeatures.addAll(edgeIntFeatures);
+
+		tracks = new ArrayList<SavedTrack>();
+		edges = new EdgeBuffer(edgeFeatures);
+
+		while (nextChildElement(reader)) {
+			if (!TRACK_ELEMENT_KEY.equals(reader.getLocalName())) {
+				skipElement(reader);
+				continue;
+			}
+
+			// Track ID as it is saved on disk, name and features
+			SavedTrack track = new SavedTrack();
+			track.ID = readIntAttribute(reader, TrackIndexAnalyzer.TRACK_ID, logger);
+			track.name = reader.getAttributeValue(null, TRACK_NAME_ATTRIBUTE_NAME);
+			if (null == track.name) {
+				track.name = "Unnamed";
+			}
+			final int nAttributes = reader.getAttributeCount();
+			for (int i = 0; i < nAttributes; i++) {
+				String attName = reader.getAttributeLocalName(i);
+				if (attName.equals(TRACK_NAME_ATTRIBUTE_NAME)) {
+					continue;
+				}
+				try {
+					track.features.put(attName, Double.parseDouble(reader.getAttributeValue(i)));
+				} catch (NumberFormatException e) {
+					logger.error("Track "+track.ID+": Cannot read the feature "+attName+" value. Skipping.\n");
+				}
+			}
+			final int trackIndex = tracks.size();
+			tracks.add(track);
+
+			// Iterate over edges
+			while (nextChildElement(reader)) {
+				if (TRACK_EDGE_ELEMENT_KEY.equals(reader.getLocalName())) {
+					edges.add(reader, trackIndex);
+				}
+				skipElement(reader);
+			}
+		}
+	}
+
+	/**
+	 * Build the track graph from the buffered edges, and load it in the model with the
+	 * track features, track names and the IDs of the filtered tracks.
+	 * @return true if reading tracks was successful, false otherwise.
+	 */
+	private boolean buildTracks() {
+		if (null == tracks)
+			return true;
+
+		final TrackMateModel model = plugin.getModel();
+		final FeatureModel fm = model.getFeatureModel();
+		final SimpleDirectedWeightedGraph<Spot, DefaultWeightedEdge> graph = new SimpleDirectedWeightedGraph<Spot, DefaultWeightedEdge>(DefaultWeightedEdge.class);
+		final int nFeatures = edges.features.length;
+
+		for (int e = 0; e < edges.size; e++) {
+			final int sourceID = edges.sources[e];
+			final int targetID = edges.targets[e];
+			final SavedTrack track = tracks.get(edges.tracks[e]);
+
+			// Get matching spots from the cache
+			Spot sourceSpot = (null == cache) ? null : cache.get(sourceID);
+			Spot targetSpot = (null == cache) ? null : cache.get(targetID);
+
+			// Error check
+			if (null == sourceSpot) {
+				logger.error("Unknown spot ID: "+sourceID + "\n");
+				return false;
+			}
+			if (null == targetSpot) {
+				logger.error("Unknown spot ID: "+targetID + "\n");
+				return false;
+			}
+			if (sourceSpot.equals(targetSpot)) {
+				logger.error("Bad link for track " + track.ID + ". Source = Target with ID: " + sourceID + "\n");
+				return false;
+			}
+
+			// Add spots to graph and build edge
+			graph.addVertex(sourceSpot);
+			graph.addVertex(targetSpot);
+			DefaultWeightedEdge edge = graph.addEdge(sourceSpot, targetSpot);
+			if (edge == null) {
+				logger.error("Bad edge found for track " + track.ID + "\n");
+				return false;
+			}
+			graph.setEdgeWeight(edge, edges.weights[e]);
+
+			// Put edge features
+			for (int f = 0; f < nFeatures; f++) {
+				fm.putEdgeFeature(edge, edges.features[f], edges.featureValues[e * nFeatures + f]);
+			}
+
+			// Keep a reference of one of the spot of the track
+			track.spot = sourceSpot;
+		}
+
+		/* Pass the loaded graph to the model. The model will in turn regenerate a new
+		 * map of tracks vs trackID, using the hash as new keys. Because there is a
+		 * good chance that they saved keys and the new keys differ, we must retrieve
+		 * the mapping between the two using the retrieve spots.	 */
+		model.getTrackModel().setGraph(graph);
+
+		// Index the new track IDs by spot, in one pass
+		Map<Integer, Set<Spot>> newTrackMap = model.getTrackModel().getTrackSpots();
+		HashMap<Spot, Integer> newKeyOfSpot = new HashMap<Spot, Integer>(graph.vertexSet().size());
+		for (Integer newKey : newTrackMap.keySet()) {
+			for (Spot spot : newTrackMap.get(newKey)) {
+				newKeyOfSpot.put(spot, newKey);
+			}
+		}
+
+		// Build a map of saved key vs new key
+		HashMap<Integer, Integer> newKeyMap = new HashMap<Integer, Integer>(tracks.size());
+		HashSet<Integer> newKeysToMatch = new HashSet<Integer>(newTrackMap.keySet());
+		for (SavedTrack track : tracks) {
+			if (null == track.spot) {
+				continue; // Track without edges, it cannot be in the model
+			}
+			Integer newKey = newKeyOfSpot.get(track.spot);
+			if (null == newKey) {
+				logger.error("The track saved with ID = " + track.ID + " and containing the spot " + track.spot + " has no matching track in the computed model.\n");
+				return false;
+			}
+			newKeyMap.put(track.ID, newKey);
+			newKeysToMatch.remove(newKey);
+		}
+
+		// Check that we matched all the new keys
+		if (!newKeysToMatch.isEmpty()) {
+			StringBuilder sb = new StringBuilder("Some of the computed tracks could not be matched to saved tracks:\n");
+			for (Integer unmatchedKey : newKeysToMatch) {
+				sb.append(" - track with ID " + unmatchedKey + " with spots " + newTrackMap.get(unmatchedKey) + "\n");
+			}
+			logger.error(sb.toString());
+			return false;
+		}
+
+		/*
+		 * Now we know who's who. We can therefore retrieve the saved filtered track index, and
+		 * match it to the proper new track IDs.
+		 */
+		if (null != filteredTrackIDs) {
+			Set<Integer> newFilteredTrackIDs = new HashSet<Integer>(filteredTrackIDs.size());
+			for (Integer savedKey : filteredTrackIDs) {
+				Integer newKey = newKeyMap.get(savedKey);
+				if (null == newKey) {
+					logger.error("Invalid filtered track index: "+savedKey+". Track ID does not exist.\n");
+					continue;
+				}
+				newFilteredTrackIDs.add(newKey);
+			}
+			model.getTrackModel().setFilteredTrackIDs(newFilteredTrackIDs, false);
+		}
+
+		/*
+		 * We do the same thing for the track features and names.
+		 */
+		try {
+			for (SavedTrack track : tracks) {
+				Integer newKey = newKeyMap.get(track.ID);
+				if (null == newKey) {
+					continue;
+				}
+				for (String feature : track.features.keySet()) {
+					fm.putTrackFeature(newKey, feature, track.features.get(feature));
+				}
+				model.getTrackModel().setTrackName(newKey, track.name);
+			}
+		} catch (RuntimeException re) {
+			logger.error("Problem populating track features:\n");
+			logger.error(re.getMessage());
+			return false;
+		}
+
+		return true;
+	}
+
+	/*
+	 * INNER CLASSES
+	 */
+
+	/**
+	 * A growable array of ints.
+	 */
+	private static final class IntArray {
+		private int[] data = new int[16];
+		private int size = 0;
+
+		private void add(final int val) {
+			if (size == data.length) {
+				data = Arrays.copyOf(data, 2 * size);
+			}
+			data[size++] = val;
+		}
+	}
+
+	/**
+	 * A track as it is saved in the file, before it is matched to a track of the model.
+	 */
+	private static final class SavedTrack {
+		private int ID;
+		private String name;
+		private final Map<String, Double> features = new HashMap<String, Double>();
+		/** One of the spot of the track, set when building the graph. */
+		private Spot spot;
+	}
+
+	/**
+	 * Edges read from the file, stored in primitive arrays until the spots are known.
+	 */
+	private final class EdgeBuffer {
+		private final String[] features;
+		private int size = 0;
+		private int[] sources = new int[1024];
+		private int[] targets = new int[1024];
+		private int[] tracks = new int[1024];
+		private double[] weights = new double[1024];
+		private double[] featureValues;
+
+		private EdgeBuffer(final List<String> features) {
+			this.features = features.toArray(new String[features.size()]);
+			this.featureValues = new double[1024 * this.features.length];
+		}
+
+		private void add(final XMLStreamReader reader, final int trackIndex) {
+			if (size == sources.length) {
+				final int newLength = 2 * size;
+				sources = Arrays.copyOf(sources, newLength);
+				targets = Arrays.copyOf(targets, newLength);
+				tracks = Arrays.copyOf(tracks, newLength);
+				weights = Arrays.copyOf(weights, newLength);
+				featureValues = Arrays.copyOf(featureValues, newLength * features.length);
+			}
+			sources[size] = readIntAttribute(reader, EdgeTargetAnalyzer.SPOT_SOURCE_ID, logger);
+			targets[size] = readIntAttribute(reader, EdgeTargetAnalyzer.SPOT_TARGET_ID, logger);
+			tracks[size] = trackIndex;
+			if (null != reader.getAttributeValue(null, EdgeTargetAnalyzer.EDGE_COST)) {
+				weights[size] = readDoubleAttribute(reader, EdgeTargetAnalyzer.EDGE_COST, logger);
+			}
+			final int offset = size * features.length;
+			for (int f = 0; f < features.length; f++) {
+				featureValues[offset + f] = readDoubleAttribute(reader, features[f], logger);
+			}
+			size++;
+		}
+	}
+
+}
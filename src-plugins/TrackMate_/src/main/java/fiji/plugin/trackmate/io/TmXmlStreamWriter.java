@@ -0,0 +1,526 @@
+package fiji.plugin.trackmate.io;
+
+import static fiji.plugin.trackmate.io.TmXmlKeys.DETECTOR_SETTINGS_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FILTERED_SPOT_COLLECTION_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FILTERED_SPOT_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FILTERED_TRACK_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FILTER_ABOVE_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FILTER_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FILTER_FEATURE_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FILTER_VALUE_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FRAME_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_FILENAME_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_FOLDER_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_HEIGHT_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_NFRAMES_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_NSLICES_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_PIXEL_HEIGHT_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_PIXEL_WIDTH_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_SPATIAL_UNITS_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_TIME_INTERVAL_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_TIME_UNITS_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_VOXEL_DEPTH_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.IMAGE_WIDTH_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.INITIAL_SPOT_FILTER_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.LOG_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.PLUGIN_VERSION_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.ROOT_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SETTINGS_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SETTINGS_TEND_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SETTINGS_TSTART_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SETTINGS_XEND_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SETTINGS_XSTART_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SETTINGS_YEND_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SETTINGS_YSTART_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SETTINGS_ZEND_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SETTINGS_ZSTART_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_COLLECTION_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_COLLECTION_NSPOTS_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_FILTER_COLLECTION_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_FRAME_COLLECTION_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_ID_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_ID_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_NAME_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACKER_SETTINGS_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_COLLECTION_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_EDGE_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_FILTER_COLLECTION_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_ID_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_NAME_ATTRIBUTE_NAME;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import net.imglib2.algorithm.Algorithm;
+import net.imglib2.algorithm.Benchmark;
+
+import org.jdom2.Element;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.DetectorProvider;
+import fiji.plugin.trackmate.FeatureFilter;
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Settings;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.SpotFeatureKeys;
+import fiji.plugin.trackmate.TrackMateModel;
+import fiji.plugin.trackmate.TrackMate_;
+import fiji.plugin.trackmate.TrackerProvider;
+import fiji.plugin.trackmate.features.edges.EdgeTargetAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackIndexAnalyzer;
+
+/**
+ * A streaming counterpart of the {@link TmXmlWriter}. 
+ * <p>
+ * The file produced is the same, but it is written element by element with a StAX 
+ * {@link XMLStreamWriter}, without building a document in memory first. Memory usage 
+ * therefore does not depend on the size of the model. If the target file name ends 
+ * with {@link IOUtils#GZIP_SUFFIX}, the output is gzip-compressed. Such files can be 
+ * read back by the {@link TmXmlStreamReader}.
+ * <p>
+ * The file is written when calling the {@link #process()} method.
+ */
+public class TmXmlStreamWriter implements Algorithm, Benchmark  {
+
+	private static final String INDENT = "  ";
+
+	/*
+	 * FIELD
+	 */
+
+	private final File file;
+	private final Logger logger;
+	private final TrackMate_ plugin;
+	private final TrackMateModel model;
+	private final String log;
+	private long processingTime;
+	private XMLStreamWriter writer;
+	private int depth;
+
+	/*
+	 * CONSTRUCTORS
+	 */
+
+	/**
+	 * Create a new streaming XML writer for the specified TrackMate plugin.
+	 * No log is added to the file.
+	 *  
+	 * @param file  the file to write to. 
+	 * @param plugin the plugin to write to XML. 
+	 */
+	public TmXmlStreamWriter(final File file, final TrackMate_ plugin) {
+		this(file, plugin, null);
+	}
+
+	/**
+	 * Create a new streaming XML writer for the specified TrackMate plugin.
+	 * This constructor will cause the specified log string to be appended to the file
+	 * as plain text content.
+	 *  
+	 * @param file  the file to write to. 
+	 * @param plugin the plugin to write to XML. 
+	 * @param log  the log text to add to the file.
+	 */
+	public TmXmlStreamWriter(final File file, final TrackMate_ plugin, final String log) {
+		this.file = file;
+		this.logger = new Logger.StringBuilderLogger();
+		this.plugin = plugin;
+		this.log = log;
+		this.model = plugin.getModel();
+	}
+
+	/*
+	 * PUBLIC METHODS
+	 */
+
+	@Override
+	public long getProcessingTime() {
+		return processingTime;
+	}
+
+	@Override
+	public boolean checkInput() {
+		if (null == file) {
+			logger.error("The target file is null.\n");
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean process() {
+		long start = System.currentTimeMillis();
+
+		OutputStream os = null;
+		try {
+			os = IOUtils.openOutputStream(file);
+			write(os);
+			os.close();
+			os = null;
+			logger.log("  Written to file.\n");
+		} catch (IOException e) {
+			logger.error("Problem writing to "+file.getName()+".\nError message is:\n"+e.getLocalizedMessage()+'\n');
+			return false;
+		} catch (XMLStreamException e) {
+			logger.error("Problem writing XML to "+file.getName()+".\nError message is:\n"+e.getLocalizedMessage()+'\n');
+			return false;
+		} finally {
+			if (null != os) {
+				try {
+					os.close();
+				} catch (IOException e) {
+					// Already reporting the first error
+				}
+			}
+		}
+
+		long end = System.currentTimeMillis();
+		processingTime = end - start;
+		return true;
+	}
+
+	@Override
+	public String getErrorMessage() {
+		return logger.toString();
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Write the whole model to the given stream, in the same order that of the {@link TmXmlWriter}.
+	 * The stream is not closed.
+	 */
+	private void write(final OutputStream os) throws XMLStreamException {
+		writer = XMLOutputFactory.newInstance().createXMLStreamWriter(os, "UTF-8");
+		depth = 0;
+		writer.writeStartDocument("UTF-8", "1.0");
+		newLine();
+		writer.writeStartElement(ROOT_ELEMENT_KEY);
+		writer.writeAttribute(PLUGIN_VERSION_ATTRIBUTE_NAME, fiji.plugin.trackmate.TrackMate_.PLUGIN_NAME_VERSION);
+		depth++;
+
+		echoLog();
+		echoImageInfo();
+		echoBaseSettings();
+		echoDetectorSettings();
+		echoInitialSpotFilter();
+		echoSpotFilters();
+		echoTrackerSettings();
+		echoTrackFilters();
+		echoTracks(); // dense stuff is put at the end of file
+		echoFilteredTracks();
+		echoAllSpots();
+		echoFilteredSpots();
+
+		depth--;
+		newLine();
+		writer.writeEndElement();
+		newLine();
+		writer.writeEndDocument();
+		writer.flush();
+		writer.close();
+	}
+
+	private void newLine() throws XMLStreamException {
+		writer.writeCharacters("\n");
+		for (int i = 0; i < depth; i++) {
+			writer.writeCharacters(INDENT);
+		}
+	}
+
+	private void startElement(final String name) throws XMLStreamException {
+		newLine();
+		writer.writeStartElement(name);
+		depth++;
+	}
+
+	private void emptyElement(final String name) throws XMLStreamException {
+		newLine();
+		writer.writeEmptyElement(name);
+	}
+
+	private void endElement() throws XMLStreamException {
+		depth--;
+		newLine();
+		writer.writeEndElement();
+	}
+
+	private void echoLog() throws XMLStreamException {
+		if (null != log) {
+			newLine();
+			writer.writeStartElement(LOG_ELEMENT_KEY);
+			writer.writeCharacters(log);
+			writer.writeEndElement();
+			logger.log("  Added log.\n");
+		}
+	}
+
+	private void echoBaseSettings() throws XMLStreamException {
+		Settings settings = model.getSettings();
+		emptyElement(SETTINGS_ELEMENT_KEY);
+		writer.writeAttribute(SETTINGS_XSTART_ATTRIBUTE_NAME, ""+settings.xstart);
+		writer.writeAttribute(SETTINGS_XEND_ATTRIBUTE_NAME, ""+settings.xend);
+		writer.writeAttribute(SETTINGS_YSTART_ATTRIBUTE_NAME, ""+settings.ystart);
+		writer.writeAttribute(SETTINGS_YEND_ATTRIBUTE_NAME, ""+settings.yend);
+		writer.writeAttribute(SETTINGS_ZSTART_ATTRIBUTE_NAME, ""+settings.zstart);
+		writer.writeAttribute(SETTINGS_ZEND_ATTRIBUTE_NAME, ""+settings.zend);
+		writer.writeAttribute(SETTINGS_TSTART_ATTRIBUTE_NAME, ""+settings.tstart);
+		writer.writeAttribute(SETTINGS_TEND_ATTRIBUTE_NAME, ""+settings.tend);
+		logger.log("  Added base settings.\n");
+	}
+
+	private void echoDetectorSettings() throws XMLStreamException {
+		if (null == model.getSettings().detectorFactory) {
+			return; // and write nothing
+		}
+		Element el = new Element(DETECTOR_SETTINGS_ELEMENT_KEY);
+		DetectorProvider provider = plugin.getDetectorProvider();
+		boolean ok = provider.select(model.getSettings().detectorFactory.getKey());
+		if (!ok) {
+			logger.error(provider.getErrorMessage());
+		} else {
+			provider.marshall(model.getSettings().detectorSettings, el);
+		}
+
+		// The provider marshalls to JDom: this is a tiny element, we copy it to the stream
+		newLine();
+		IOUtils.writeElement(writer, el);
+		logger.log("  Added detector settings.\n");
+	}
+
+	private void echoTrackerSettings() throws XMLStreamException {
+		if (null == model.getSettings().tracker) {
+			return; // and write nothing
+		}
+		Element el = new Element(TRACKER_SETTINGS_ELEMENT_KEY);
+		TrackerProvider provider = plugin.getTrackerProvider();
+		boolean ok = provider.select(model.getSettings().tracker.getKey());
+		if (!ok) {
+			logger.error(provider.getErrorMessage());
+		} else {
+			provider.marshall(model.getSettings().trackerSettings, el);
+		}
+
+		newLine();
+		IOUtils.writeElement(writer, el);
+		logger.log("  Added tracker settings.\n");
+	}
+
+	private void echoTracks() throws XMLStreamException {
+		if (model.getTrackModel().getNTracks() == 0)
+			return;
+
+		final FeatureModel fm = model.getFeatureModel();
+		Map<Integer, Set<DefaultWeightedEdge>> trackEdges = model.getTrackModel().getTrackEdges();
+
+		// Prepare track features for writing: we separate ints from doubles 
+		List<String> trackIntFeatures = new ArrayList<String>();
+		trackIntFeatures.add(TrackIndexAnalyzer.TRACK_ID);
+		trackIntFeatures.add(TrackIndexAnalyzer.TRACK_INDEX);
+		List<String> trackDoubleFeatures = new ArrayList<String>(fm.getTrackFeatures());
+		trackDoubleFeatures.removeAll(trackIntFeatures);
+
+		// Same thing for edge features
+		List<String> edgeIntFeatures = new ArrayList<String>();
+		edgeIntFeatures.add(EdgeTargetAnalyzer.SPOT_SOURCE_ID);
+		edgeIntFeatures.add(EdgeTargetAnalyzer.SPOT_TARGET_ID);
+		List<String> edgeDoubleFeatures = new ArrayList<String>(fm.getEdgeFeatures());
+		edgeDoubleFeatures.removeAll(edgeIntFeatures);
+
+		startElement(TRACK_COLLECTION_ELEMENT_KEY);
+		for (int trackID : trackEdges.keySet()) {
+			Set<DefaultWeightedEdge> track = trackEdges.get(trackID);
+			if (track.size() == 0) {
+				/* Special case: the track has only one spot in it, therefore no edge. 
+				 * It just should not be, since the model never returns a track with less
+				 * than one edge. So we skip writing it. */
+				continue;
+			}
+
+			startElement(TRACK_ELEMENT_KEY);
+			writer.writeAttribute(TRACK_NAME_ATTRIBUTE_NAME, model.getTrackModel().getTrackName(trackID));
+			for(String feature : trackDoubleFeatures) {
+				Double val = fm.getTrackFeature(trackID, feature);
+				writer.writeAttribute(feature, val.toString());
+			}
+			for(String feature : trackIntFeatures) {
+				int val = fm.getTrackFeature(trackID, feature).intValue();
+				writer.writeAttribute(feature, ""+val);
+			}
+
+			for (DefaultWeightedEdge edge : track) {
+				emptyElement(TRACK_EDGE_ELEMENT_KEY);
+				for(String feature : edgeDoubleFeatures) {
+					Double val = fm.getEdgeFeature(edge, feature);
+					writer.writeAttribute(feature, val.toString());
+				}
+				for(String feature : edgeIntFeatures) {
+					int val = fm.getEdgeFeature(edge, feature).intValue();
+					writer.writeAttribute(feature, ""+val);
+				}
+			}
+			endElement();
+		}
+		endElement();
+		logger.log("  Added tracks.\n");
+	}
+
+	private void echoFilteredTracks() throws XMLStreamException {
+		if (model.getTrackModel().getFilteredTrackIDs() == null) {
+			return;
+		}
+
+		Set<Integer> filteredTrackKeys = model.getTrackModel().getFilteredTrackIDs();
+		if (filteredTrackKeys.isEmpty()) {
+			emptyElement(FILTERED_TRACK_ELEMENT_KEY);
+		} else {
+			startElement(FILTERED_TRACK_ELEMENT_KEY);
+			for (int trackID : filteredTrackKeys) {
+				emptyElement(TRACK_ID_ELEMENT_KEY);
+				writer.writeAttribute(TrackIndexAnalyzer.TRACK_ID, ""+trackID);
+			}
+			endElement();
+		}
+		logger.log("  Added filtered tracks.\n");
+	}
+
+	private void echoImageInfo() throws XMLStreamException {
+		Settings settings = model.getSettings();
+		if (null == settings || null == settings.imp)
+			return;
+		emptyElement(IMAGE_ELEMENT_KEY);
+		writer.writeAttribute(IMAGE_FILENAME_ATTRIBUTE_NAME, 		settings.imageFileName);
+		writer.writeAttribute(IMAGE_FOLDER_ATTRIBUTE_NAME, 			settings.imageFolder);
+		writer.writeAttribute(IMAGE_WIDTH_ATTRIBUTE_NAME, 			""+settings.width);
+		writer.writeAttribute(IMAGE_HEIGHT_ATTRIBUTE_NAME, 			""+settings.height);
+		writer.writeAttribute(IMAGE_NSLICES_ATTRIBUTE_NAME, 		""+settings.nslices);
+		writer.writeAttribute(IMAGE_NFRAMES_ATTRIBUTE_NAME, 		""+settings.nframes);
+		writer.writeAttribute(IMAGE_PIXEL_WIDTH_ATTRIBUTE_NAME, 	""+settings.dx);
+		writer.writeAttribute(IMAGE_PIXEL_HEIGHT_ATTRIBUTE_NAME, 	""+settings.dy);
+		writer.writeAttribute(IMAGE_VOXEL_DEPTH_ATTRIBUTE_NAME, 	""+settings.dz);
+		writer.writeAttribute(IMAGE_TIME_INTERVAL_ATTRIBUTE_NAME, 	""+settings.dt);
+		writer.writeAttribute(IMAGE_SPATIAL_UNITS_ATTRIBUTE_NAME,	settings.spaceUnits);
+		writer.writeAttribute(IMAGE_TIME_UNITS_ATTRIBUTE_NAME,		settings.timeUnits);
+		logger.log("  Added image information.\n");
+	}
+
+	private void echoAllSpots() throws XMLStreamException {		
+		SpotCollection allSpots = model.getSpots();
+		if (null == allSpots || allSpots.isEmpty())
+			return; // and write nothing
+
+		startElement(SPOT_COLLECTION_ELEMENT_KEY);
+		// Store total number of spots
+		writer.writeAttribute(SPOT_COLLECTION_NSPOTS_ATTRIBUTE_NAME, ""+allSpots.getNSpots());
+
+		for(int frame : allSpots.keySet()) {
+			List<Spot> spots = allSpots.get(frame);
+			if (spots.isEmpty()) {
+				emptyElement(SPOT_FRAME_COLLECTION_ELEMENT_KEY);
+				writer.writeAttribute(FRAME_ATTRIBUTE_NAME, ""+frame);
+				continue;
+			}
+			startElement(SPOT_FRAME_COLLECTION_ELEMENT_KEY);
+			writer.writeAttribute(FRAME_ATTRIBUTE_NAME, ""+frame);
+			for (Spot spot : spots) {
+				marshalSpot(spot);
+			}
+			endElement();
+		}
+		endElement();
+		logger.log("  Added spots.\n");
+	}
+
+	private void echoInitialSpotFilter() throws XMLStreamException {
+		Double filterVal = model.getSettings().initialSpotFilterValue;
+		if (null == filterVal) {
+			return; // and write nothing
+		}
+		emptyElement(INITIAL_SPOT_FILTER_ELEMENT_KEY);
+		writer.writeAttribute(FILTER_FEATURE_ATTRIBUTE_NAME, Spot.QUALITY);
+		writer.writeAttribute(FILTER_VALUE_ATTRIBUTE_NAME, "" + filterVal);
+		writer.writeAttribute(FILTER_ABOVE_ATTRIBUTE_NAME, "" + true);
+		logger.log("  Added initial spot filter.\n");
+	}
+
+	private void echoSpotFilters() throws XMLStreamException {
+		echoFilters(SPOT_FILTER_COLLECTION_ELEMENT_KEY, model.getSettings().getSpotFilters());
+		logger.log("  Added spot feature filters.\n");
+	}
+
+	private void echoTrackFilters() throws XMLStreamException {
+		echoFilters(TRACK_FILTER_COLLECTION_ELEMENT_KEY, model.getSettings().getTrackFilters());
+		logger.log("  Added track feature filters.\n");
+	}
+
+	private void echoFilters(final String elementKey, final List<FeatureFilter> featureThresholds) throws XMLStreamException {
+		if (featureThresholds.isEmpty()) {
+			emptyElement(elementKey);
+			return;
+		}
+		startElement(elementKey);
+		for (FeatureFilter threshold : featureThresholds) {
+			emptyElement(FILTER_ELEMENT_KEY);
+			writer.writeAttribute(FILTER_FEATURE_ATTRIBUTE_NAME, threshold.feature);
+			writer.writeAttribute(FILTER_VALUE_ATTRIBUTE_NAME, threshold.value.toString());
+			writer.writeAttribute(FILTER_ABOVE_ATTRIBUTE_NAME, ""+threshold.isAbove);
+		}
+		endElement();
+	}
+
+	private void echoFilteredSpots() throws XMLStreamException {
+		SpotCollection filteredSpots =  model.getFilteredSpots();
+		if (null == filteredSpots || filteredSpots.isEmpty())
+			return;
+
+		startElement(FILTERED_SPOT_ELEMENT_KEY);
+		for(int frame : filteredSpots.keySet()) {
+			List<Spot> spots = filteredSpots.get(frame);
+			if (spots.isEmpty()) {
+				emptyElement(FILTERED_SPOT_COLLECTION_ELEMENT_KEY);
+				writer.writeAttribute(FRAME_ATTRIBUTE_NAME, ""+frame);
+				continue;
+			}
+			startElement(FILTERED_SPOT_COLLECTION_ELEMENT_KEY);
+			writer.writeAttribute(FRAME_ATTRIBUTE_NAME, ""+frame);
+			for(Spot spot : spots) {
+				emptyElement(SPOT_ID_ELEMENT_KEY);
+				writer.writeAttribute(SPOT_ID_ATTRIBUTE_NAME, ""+spot.ID());
+			}
+			endElement();
+		}
+		endElement();
+		logger.log("  Added spot selection.\n");
+	}
+
+	private void marshalSpot(final Spot spot) throws XMLStreamException {
+		emptyElement(SPOT_ELEMENT_KEY);
+		writer.writeAttribute(SPOT_ID_ATTRIBUTE_NAME, ""+spot.ID());
+		writer.writeAttribute(SPOT_NAME_ATTRIBUTE_NAME, spot.getName());
+		double val;
+		final int nFeatures = SpotFeatureKeys.size();
+		for (int i = 0; i < nFeatures; i++) {
+			val = spot.getFeatureValue(i);
+			if (Spot.isMissing(val))
+				continue;
+			writer.writeAttribute(SpotFeatureKeys.getKey(i), Double.toString(val));
+		}
+	}
+
+}
@@ -78,6 +78,7 @@
 import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.SpotFeatureKeys;
 import fiji.plugin.trackmate.TrackMateModel;
 import fiji.plugin.trackmate.TrackMate_;
 import fiji.plugin.trackmate.TrackerProvider;
@@ -477,13 +478,14 @@ private static final Element marshalSpot(final Spot spot) {
 		attributes.add(IDattribute);
 		Attribute nameAttribute = new Attribute(SPOT_NAME_ATTRIBUTE_NAME, spot.getName());
 		attributes.add(nameAttribute);
-		Double val;
+		double val;
 		Attribute featureAttribute;
-		for (String feature : spot.getFeatures().keySet()) {
-			val = spot.getFeature(feature);
-			if (null == val)
+		final int nFeatures = SpotFeatureKeys.size();
+		for (int i = 0; i < nFeatures; i++) {
+			val = spot.getFeatureValue(i);
+			if (Spot.isMissing(val))
 				continue;
-			featureAttribute = new Attribute(feature, val.toString());
+			featureAttribute = new Attribute(SpotFeatureKeys.getKey(i), Double.toString(val));
 			attributes.add(featureAttribute);
 		}
 
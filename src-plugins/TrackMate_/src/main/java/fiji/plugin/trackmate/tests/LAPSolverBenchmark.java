@@ -0,0 +1,98 @@
+package fiji.plugin.trackmate.tests;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.LAPUtils;
+import fiji.plugin.trackmate.tracking.costmatrix.SparseCostMatrix;
+import fiji.plugin.trackmate.tracking.costmatrix.SparseLinkingCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.hungarian.AssignmentAlgorithm;
+import fiji.plugin.trackmate.tracking.hungarian.AssignmentProblem;
+import fiji.plugin.trackmate.tracking.hungarian.HungarianAlgorithm;
+import fiji.plugin.trackmate.tracking.hungarian.JonkerVolgenantAlgorithm;
+import fiji.plugin.trackmate.tracking.hungarian.MunkresKuhnAlgorithm;
+import fiji.plugin.trackmate.tracking.hungarian.SparseHungarianAlgorithm;
+
+/**
+ * Compares the LAP solvers on the frame to frame linking problem of two frames
+ * of randomly moving spots, for 1k, 10k and 50k spots per frame.
+ * <p>
+ * The dense solvers are only run when the dense cost matrix is reasonably small,
+ * for it needs <code>8 × (2n)²</code> bytes: 3.2 GB for 10k spots per frame.
+ */
+public class LAPSolverBenchmark {
+
+	private static final int[] N_SPOTS = new int[] { 1000, 10000, 50000 };
+	/** Dense solvers are skipped above this number of spots per frame. */
+	private static final int MAX_DENSE_N_SPOTS = 2000;
+	/** Mean number of spots within linking distance of a spot. */
+	private static final double DENSITY = 5;
+	private static final double MAX_DISTANCE = 10;
+
+	public static void main(String[] args) {
+		final Random ran = new Random(1l);
+		final Map<String, Object> settings = LAPUtils.getDefaultLAPSettingsMap();
+		settings.put(KEY_LINKING_MAX_DISTANCE, MAX_DISTANCE);
+
+		for (int n : N_SPOTS) {
+
+			// Spots in a 3D box scaled so that each spot has DENSITY neighbors within max distance
+			final double volume = n * (4d / 3 * Math.PI * Math.pow(MAX_DISTANCE, 3)) / DENSITY;
+			final double size = Math.cbrt(volume);
+			final List<Spot> t0 = new ArrayList<Spot>(n);
+			final List<Spot> t1 = new ArrayList<Spot>(n);
+			for (int i = 0; i < n; i++) {
+				final double[] coords = new double[] { size * ran.nextDouble(), size * ran.nextDouble(), size * ran.nextDouble() };
+				t0.add(new Spot(coords));
+				final double[] moved = new double[] { 
+						coords[0] + MAX_DISTANCE / 3 * ran.nextGaussian(), 
+						coords[1] + MAX_DISTANCE / 3 * ran.nextGaussian(), 
+						coords[2] + MAX_DISTANCE / 3 * ran.nextGaussian() };
+				t1.add(new Spot(moved));
+			}
+
+			System.out.println("_____________________________________");
+			System.out.println(n + " spots per frame.");
+
+			long start = System.currentTimeMillis();
+			final SparseLinkingCostMatrixCreator creator = new SparseLinkingCostMatrixCreator(t0, t1, settings);
+			if (!creator.checkInput() || !creator.process()) {
+				System.err.println(creator.getErrorMessage());
+				return;
+			}
+			final SparseCostMatrix cm = creator.getSparseCostMatrix();
+			long end = System.currentTimeMillis();
+			System.out.println(String.format("Sparse cost matrix created in %d ms: %s", end - start, cm));
+
+			benchmark("Sparse Hungarian", new SparseHungarianAlgorithm(), cm);
+			benchmark("Jonker-Volgenant", new JonkerVolgenantAlgorithm(), cm);
+
+			if (n > MAX_DENSE_N_SPOTS) {
+				System.out.println("Skipping dense solvers.");
+				continue;
+			}
+			final double[][] dense = cm.toFullMatrix(Double.MAX_VALUE);
+			benchmark("Munkres-Kuhn", new MunkresKuhnAlgorithm(), dense, cm);
+			benchmark("Hungarian", new HungarianAlgorithm(), dense, cm);
+		}
+	}
+
+	private static void benchmark(final String name, final SparseHungarianAlgorithm solver, final SparseCostMatrix cm) {
+		final long start = System.currentTimeMillis();
+		final int[][] solutions = solver.computeAssignments(cm);
+		final long end = System.currentTimeMillis();
+		System.out.println(String.format("  %-20s %8d ms - total cost %.2f", name, end - start, cm.totalAssignmentCost(solutions)));
+	}
+
+	private static void benchmark(final String name, final AssignmentAlgorithm solver, final double[][] dense, final SparseCostMatrix cm) {
+		final long start = System.currentTimeMillis();
+		final int[][] solutions = new AssignmentProblem(dense).solve(solver);
+		final long end = System.currentTimeMillis();
+		System.out.println(String.format("  %-20s %8d ms - total cost %.2f", name, end - start, cm.totalAssignmentCost(solutions)));
+	}
+}
@@ -0,0 +1,73 @@
+package fiji.plugin.trackmate.tests;
+
+import java.util.List;
+import java.util.Random;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgPlus;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+import net.imglib2.type.numeric.real.FloatType;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.detection.FourierConvolutionCache;
+import fiji.plugin.trackmate.detection.LogDetector;
+import fiji.plugin.trackmate.util.SpotNeighborhood;
+
+/**
+ * Compares the time the {@link LogDetector} takes to process a series of frames
+ * without a {@link FourierConvolutionCache}, with a shared cache, and with a
+ * shared cache fusing the Gaussian and Laplacian kernels.
+ */
+public class LogDetectorCacheTestDrive {
+
+	private static final int N_FRAMES = 20;
+	private static final int N_BLOBS = 50;
+	private static final double RADIUS = 3; // µm
+	private static final double[] CALIBRATION = new double[] { 0.5, 0.5, 1 };
+	private static final AxisType[] AXES = new AxisType[] { Axes.X, Axes.Y, Axes.Z };
+
+	public static void main(String[] args) {
+
+		final Random ran = new Random(1l);
+		Img<FloatType> source = new ArrayImgFactory<FloatType>().create(new int[] { 256, 256, 32 }, new FloatType());
+		ImgPlus<FloatType> img = new ImgPlus<FloatType>(source, "Test", AXES, CALIBRATION);
+		for (int i = 0; i < N_BLOBS; i++) {
+			Spot tmpSpot = new Spot(new double[] { 128 * ran.nextDouble(), 128 * ran.nextDouble(), 32 * ran.nextDouble() });
+			tmpSpot.putFeature(Spot.RADIUS, RADIUS);
+			SpotNeighborhood<FloatType> sphere = new SpotNeighborhood<FloatType>(tmpSpot, img);
+			for (FloatType pixel : sphere) {
+				pixel.set(100 + 100 * ran.nextFloat());
+			}
+		}
+
+		System.out.println("No cache:");
+		run(img, null);
+		System.out.println("Shared cache:");
+		run(img, new FourierConvolutionCache<FloatType>(false));
+		System.out.println("Shared cache, fused LoG kernel:");
+		run(img, new FourierConvolutionCache<FloatType>(true));
+	}
+
+	private static void run(final ImgPlus<FloatType> img, final FourierConvolutionCache<FloatType> cache) {
+		long start = System.currentTimeMillis();
+		int nSpots = 0;
+		for (int frame = 0; frame < N_FRAMES; frame++) {
+			LogDetector<FloatType> detector;
+			if (null == cache) {
+				detector = new LogDetector<FloatType>(img, RADIUS, 10, true, false);
+			} else {
+				detector = new LogDetector<FloatType>(img, RADIUS, 10, true, false, cache);
+			}
+			if (!detector.checkInput() || !detector.process()) {
+				System.out.println(detector.getErrorMessage());
+				return;
+			}
+			List<Spot> spots = detector.getResult();
+			nSpots += spots.size();
+		}
+		long end = System.currentTimeMillis();
+		System.out.println(String.format("  %d frames processed in %d ms - %.1f spots per frame.",
+				N_FRAMES, end - start, (double) nSpots / N_FRAMES));
+	}
+}
@@ -0,0 +1,191 @@
+package fiji.plugin.trackmate.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleDirectedWeightedGraph;
+
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.TrackMateModel;
+import fiji.plugin.trackmate.TrackMate_;
+import fiji.plugin.trackmate.features.edges.EdgeTargetAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackIndexAnalyzer;
+import fiji.plugin.trackmate.io.TmXmlReader;
+import fiji.plugin.trackmate.io.TmXmlStreamReader;
+import fiji.plugin.trackmate.io.TmXmlStreamWriter;
+import fiji.plugin.trackmate.io.TmXmlWriter;
+
+/**
+ * Compares the JDom and the streaming XML readers and writers on synthetic models
+ * of increasing size. Files are written to the temporary directory, and the
+ * compressed variant is written and read with the streaming classes only.
+ * <p>
+ * Run with a large heap, e.g. <code>-Xmx8g</code>: the JDom path needs several
+ * times the file size to load it.
+ */
+public class TmXmlIOBenchmark {
+
+	private static final int N_FRAMES = 100;
+	private static final int[] N_SPOTS_PER_FRAME = new int[] { 100, 1000, 5000 };
+
+	public static void main(String[] args) throws IOException {
+		final Random ran = new Random(1l);
+		for (int nSpots : N_SPOTS_PER_FRAME) {
+			TrackMate_ plugin = new TrackMate_();
+			plugin.initModules();
+			createModel(plugin, N_FRAMES, nSpots, ran);
+			System.out.println("Model with " + plugin.getModel().getSpots().getNSpots() + " spots and "
+					+ plugin.getModel().getTrackModel().getNTracks() + " tracks.");
+
+			File file = File.createTempFile("TrackMate", ".xml");
+			File gzFile = File.createTempFile("TrackMate", ".xml.gz");
+			file.deleteOnExit();
+			gzFile.deleteOnExit();
+
+			// Write
+			long start = System.currentTimeMillis();
+			TmXmlWriter writer = new TmXmlWriter(plugin);
+			writer.process();
+			writer.writeToFile(file);
+			System.out.println(String.format("  JDom writer:          %6d ms - %d MB",
+					System.currentTimeMillis() - start, file.length() / 1024 / 1024));
+
+			TmXmlStreamWriter streamWriter = new TmXmlStreamWriter(file, plugin);
+			check(streamWriter.process(), streamWriter.getErrorMessage());
+			System.out.println(String.format("  Stream writer:        %6d ms - %d MB",
+					streamWriter.getProcessingTime(), file.length() / 1024 / 1024));
+
+			TmXmlStreamWriter gzWriter = new TmXmlStreamWriter(gzFile, plugin);
+			check(gzWriter.process(), gzWriter.getErrorMessage());
+			System.out.println(String.format("  Stream writer, gzip:  %6d ms - %d MB",
+					gzWriter.getProcessingTime(), gzFile.length() / 1024 / 1024));
+
+			plugin = null;
+
+			// Read
+			System.gc();
+			start = System.currentTimeMillis();
+			TrackMate_ target = newPlugin();
+			TmXmlReader reader = new TmXmlReader(file, target);
+			check(reader.checkInput() && reader.process(), reader.getErrorMessage());
+			System.out.println(String.format("  JDom reader:          %6d ms - %d MB used",
+					System.currentTimeMillis() - start, usedMemory()));
+			reader = null;
+			target = null;
+
+			System.gc();
+			start = System.currentTimeMillis();
+			target = newPlugin();
+			TmXmlStreamReader streamReader = new TmXmlStreamReader(file, target);
+			check(streamReader.checkInput() && streamReader.process(), streamReader.getErrorMessage());
+			System.out.println(String.format("  Stream reader:        %6d ms - %d MB used",
+					System.currentTimeMillis() - start, usedMemory()));
+			streamReader = null;
+			target = null;
+
+			System.gc();
+			start = System.currentTimeMillis();
+			target = newPlugin();
+			streamReader = new TmXmlStreamReader(gzFile, target);
+			check(streamReader.checkInput() && streamReader.process(), streamReader.getErrorMessage());
+			System.out.println(String.format("  Stream reader, gzip:  %6d ms - %d MB used",
+					System.currentTimeMillis() - start, usedMemory()));
+
+			file.delete();
+			gzFile.delete();
+		}
+	}
+
+	/**
+	 * Populate the model of the given plugin with <code>nFrames</code> frames of
+	 * <code>nSpots</code> random spots, linked in tracks. Track and edge features
+	 * are set to random values, since there is no image to compute them on.
+	 */
+	public static void createModel(final TrackMate_ plugin, final int nFrames, final int nSpots, final Random ran) {
+		final TrackMateModel model = plugin.getModel();
+		final SpotCollection spots = new SpotCollection();
+		final SpotCollection filteredSpots = new SpotCollection();
+		final SimpleDirectedWeightedGraph<Spot, DefaultWeightedEdge> graph = new SimpleDirectedWeightedGraph<Spot, DefaultWeightedEdge>(DefaultWeightedEdge.class);
+
+		List<Spot> previous = null;
+		for (int frame = 0; frame < nFrames; frame++) {
+			List<Spot> current = new ArrayList<Spot>(nSpots);
+			List<Spot> filtered = new ArrayList<Spot>(nSpots / 2 + 1);
+			for (int i = 0; i < nSpots; i++) {
+				Spot spot = new Spot(new double[] { 100 * ran.nextDouble(), 100 * ran.nextDouble(), 0 });
+				spot.putFeature(Spot.POSITION_T, frame);
+				spot.putFeature(Spot.FRAME, frame);
+				spot.putFeature(Spot.QUALITY, ran.nextDouble());
+				spot.putFeature(Spot.RADIUS, 1);
+				current.add(spot);
+				if (i % 2 == 0) {
+					filtered.add(spot);
+				}
+				// Break tracks now and then
+				if (null != previous && (frame + i) % 10 != 0) {
+					graph.addVertex(previous.get(i));
+					graph.addVertex(spot);
+					DefaultWeightedEdge edge = graph.addEdge(previous.get(i), spot);
+					graph.setEdgeWeight(edge, ran.nextDouble());
+				}
+			}
+			spots.put(frame, current);
+			filteredSpots.put(frame, filtered);
+			previous = current;
+		}
+
+		model.setSpots(spots, false);
+		model.setFilteredSpots(filteredSpots, false);
+		model.getTrackModel().setGraph(graph);
+
+		final FeatureModel fm = model.getFeatureModel();
+		int index = 0;
+		Set<Integer> filteredTrackIDs = new HashSet<Integer>();
+		for (Integer trackID : model.getTrackModel().getTrackIDs()) {
+			for (String feature : fm.getTrackFeatures()) {
+				fm.putTrackFeature(trackID, feature, ran.nextDouble());
+			}
+			fm.putTrackFeature(trackID, TrackIndexAnalyzer.TRACK_ID, trackID.doubleValue());
+			fm.putTrackFeature(trackID, TrackIndexAnalyzer.TRACK_INDEX, (double) index);
+			if (index % 3 != 0) {
+				filteredTrackIDs.add(trackID);
+			}
+			index++;
+		}
+		model.getTrackModel().setFilteredTrackIDs(filteredTrackIDs, false);
+
+		for (DefaultWeightedEdge edge : model.getTrackModel().edgeSet()) {
+			for (String feature : fm.getEdgeFeatures()) {
+				fm.putEdgeFeature(edge, feature, ran.nextDouble());
+			}
+			fm.putEdgeFeature(edge, EdgeTargetAnalyzer.EDGE_COST, model.getTrackModel().getEdgeWeight(edge));
+			fm.putEdgeFeature(edge, EdgeTargetAnalyzer.SPOT_SOURCE_ID, (double) model.getTrackModel().getEdgeSource(edge).ID());
+			fm.putEdgeFeature(edge, EdgeTargetAnalyzer.SPOT_TARGET_ID, (double) model.getTrackModel().getEdgeTarget(edge).ID());
+		}
+	}
+
+	private static TrackMate_ newPlugin() {
+		TrackMate_ plugin = new TrackMate_();
+		plugin.initModules();
+		return plugin;
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		return (runtime.totalMemory() - runtime.freeMemory()) / 1024 / 1024;
+	}
+
+	private static void check(final boolean ok, final String errorMessage) {
+		if (!ok) {
+			throw new RuntimeException(errorMessage);
+		}
+	}
+}
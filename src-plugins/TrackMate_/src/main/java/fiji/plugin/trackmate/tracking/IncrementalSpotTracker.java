@@ -0,0 +1,50 @@
+package fiji.plugin.trackmate.tracking;
+
+import java.util.List;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+
+/**
+ * Interface for {@link SpotTracker}s that can link spots frame by frame, as
+ * frames become available, instead of waiting for the whole {@link SpotCollection}
+ * to be detected and filtered. The spots passed to this tracker are not 
+ * required to be in the spot collection it was created with.
+ * <p>
+ * Usage is:
+ * <ol>
+ * 	<li> {@link #initLinking()} once;
+ * 	<li> {@link #linkFrames(List, List)} for each frame, in increasing frame order,
+ * from a single thread;
+ * 	<li> {@link #completeLinking()} once, after the last frame. The result is 
+ * then available through {@link #getResult()}.
+ * </ol>
+ * This sequence replaces the call to {@link #checkInput()} and {@link #process()}.
+ */
+public interface IncrementalSpotTracker extends SpotTracker {
+
+	/**
+	 * Prepare this tracker for frame by frame linking, and create a new, empty
+	 * result graph.
+	 * @return false if the tracker settings are invalid.
+	 */
+	public boolean initLinking();
+
+	/**
+	 * Add the spots of a new frame to the result graph, and link them to the spots
+	 * of the previous frame.
+	 * @param previous  the spots of the previous frame, or <code>null</code> if
+	 * <code>current</code> is the first frame.
+	 * @param current  the spots of the new frame.
+	 * @return true if the linking was successful.
+	 */
+	public boolean linkFrames(List<Spot> previous, List<Spot> current);
+
+	/**
+	 * Complete the tracking once all the frames have been linked, for instance
+	 * by closing gaps or detecting merge and split events.
+	 * @return true if the tracking was successful.
+	 */
+	public boolean completeLinking();
+
+}
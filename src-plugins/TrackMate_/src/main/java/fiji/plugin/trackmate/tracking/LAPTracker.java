@@ -115,7 +115,7 @@
  * 
  * @author Nicholas Perry
  */
-public class LAPTracker extends MultiThreadedBenchmarkAlgorithm implements SpotTracker {
+public class LAPTracker extends MultiThreadedBenchmarkAlgorithm implements IncrementalSpotTracker {
 
 	public static final String TRACKER_KEY = "LAP_TRACKER";
 	public static final String NAME = "LAP Tracker";
@@ -194,6 +194,11 @@ public LAPTracker(final SpotCollection spots) {
 	 * <p>
 	 * Here, by default, it returns the Hungarian algorithm implementation by Gary Baker and Nick
 	 * Perry that solves an assignment problem in O(n^4).  
+	 * <p>
+	 * Other choices are the {@link fiji.plugin.trackmate.tracking.hungarian.MunkresKuhnAlgorithm}
+	 * (see {@link FastLAPTracker}) and the 
+	 * {@link fiji.plugin.trackmate.tracking.hungarian.JonkerVolgenantAlgorithm}, which also accepts
+	 * sparse cost matrices (see {@link SparseLAPTracker}).
 	 */
 	protected AssignmentAlgorithm createAssignmentProblemSolver() {
 		return new HungarianAlgorithm();
@@ -301,12 +306,6 @@ public boolean process() {
 		reset();
 		processingTime = 0;
 		
-		// Step 0 - Extract parameter values
-		final boolean allowGapClosing = (Boolean) settings.get(KEY_ALLOW_GAP_CLOSING);
-		final boolean allowSplitting = (Boolean) settings.get(KEY_ALLOW_TRACK_SPLITTING);
-		final boolean allowMerging = (Boolean) settings.get(KEY_ALLOW_TRACK_MERGING);
-		
-		
 		// Step 1 - Link objects into track segments
 		tstart = System.currentTimeMillis();
 		if (!linkObjectsToTrackSegments()) return false;
@@ -314,6 +313,64 @@ public boolean process() {
 		logger.log(String.format("  Frame to frame LAP solved in %.1f s.\n", (tend-tstart)/1e3f));
 		processingTime += (tend-tstart);
 
+		return linkTrackSegments();
+	}
+
+	/*
+	 * INCREMENTAL TRACKING
+	 */
+
+	@Override
+	public boolean initLinking() {
+		StringBuilder errorHolder = new StringBuilder();
+		if (!LAPUtils.checkSettingsValidity(settings, errorHolder)) {
+			errorMessage = errorHolder.toString();
+			return false;
+		}
+		errorMessage = null;
+		processingTime = 0;
+		graph = new SimpleDirectedWeightedGraph<Spot, DefaultWeightedEdge>(DefaultWeightedEdge.class);
+		return true;
+	}
+
+	@Override
+	public boolean linkFrames(final List<Spot> previous, final List<Spot> current) {
+		final long start = System.currentTimeMillis();
+		synchronized (graph) {
+			for (Spot spot : current) {
+				graph.addVertex(spot);
+			}
+		}
+		if (null != previous && !previous.isEmpty() && !current.isEmpty()) {
+			linkFramePair(previous, current);
+		}
+		processingTime += System.currentTimeMillis() - start;
+		return null == errorMessage;
+	}
+
+	@Override
+	public boolean completeLinking() {
+		final long start = System.currentTimeMillis();
+		compileTrackSegments();
+		processingTime += System.currentTimeMillis() - start;
+		return linkTrackSegments();
+	}
+
+	/*
+	 * STEPS
+	 */
+
+	/**
+	 * Step 2 - Link the track segments compiled from step 1 into final tracks,
+	 * if gap closing, merging or splitting are allowed.
+	 * @return true if executes successfully, false otherwise.
+	 */
+	protected boolean linkTrackSegments() {
+		long tend, tstart;
+		final boolean allowGapClosing = (Boolean) settings.get(KEY_ALLOW_GAP_CLOSING);
+		final boolean allowSplitting = (Boolean) settings.get(KEY_ALLOW_TRACK_SPLITTING);
+		final boolean allowMerging = (Boolean) settings.get(KEY_ALLOW_TRACK_MERGING);
+
 		// Skip 2nd step if there is no rules to link track segments
 		if (!allowGapClosing && !allowSplitting && !allowMerging) {
 			logger.setProgress(1);
@@ -321,8 +378,6 @@ public boolean process() {
 			return true;
 		}
 
-		// Step 2 - Link track segments into final tracks
-
 		// Create cost matrix
 		logger.setStatus("Creating cost matrix");
 		tstart = System.currentTimeMillis();
@@ -443,8 +498,6 @@ public boolean linkTrackSegmentsToFinalTracks() {
 	 * @see LAPTracker#createFrameToFrameLinkingCostMatrix(List, List, TrackerSettings)
 	 */
 	public boolean solveLAPForTrackSegments() {
-		final double blockingValue = (Double) settings.get(KEY_BLOCKING_VALUE);
-		
 		// Prepare frame pairs in order, not necessarily separated by 1.
 		final ArrayList<int[]> framePairs = new ArrayList<int[]>(spots.keySet().size()-1);
 		final Iterator<Integer> frameIterator = spots.keySet().iterator(); 		
@@ -478,50 +531,8 @@ public void run() {
 						final List<Spot> t0 = spots.get(frame0);
 						final List<Spot> t1 = spots.get(frame1);
 
-						// Create cost matrix
-						double[][] costMatrix = createFrameToFrameLinkingCostMatrix(t0, t1, settings);
-
-						// Special case: top-left corner of the cost matrix is all blocked: we do nothing for this pair
-						// We handle this special case here, because some solvers might hang with this.
-						boolean allBlocked = true;
-						for (int j = 0; j < t0.size(); j++) {
-							for (int k = 0; k < t1.size(); k++) {
-								if (costMatrix[j][k] != blockingValue) {
-									allBlocked = false;
-									break;
-								}
-								if (!allBlocked)
-									break;
-							}
-						}
-
-						if (!allBlocked) {
-							// Find solution
-							AssignmentProblem problem = new AssignmentProblem(costMatrix);
-							AssignmentAlgorithm solver = createAssignmentProblemSolver();
-							int[][] solutions = problem.solve(solver);
-
-							// Extend track segments using solutions: we update the graph edges
-							for (int j = 0; j < solutions.length; j++) {
-								if (solutions[j].length == 0)
-									continue;
-								int i0 = solutions[j][0];
-								int i1 = solutions[j][1];
-
-								if (i0 < t0.size() && i1 < t1.size() ) {
-									// Solution belong to the upper-left quadrant: we can connect the spots
-									Spot s0 = t0.get(i0);
-									Spot s1 = t1.get(i1);
-									// We set the edge weight to be the linking cost, for future reference. 
-									// This is NOT used in further tracking steps
-									double weight = costMatrix[i0][i1];
-									synchronized (graph) { // To avoid concurrent access, sad but true
-										DefaultWeightedEdge edge = graph.addEdge(s0, s1);
-										graph.setEdgeWeight(edge, weight);
-									}
-								} // otherwise we do not create any connection
-							}
-						}
+						linkFramePair(t0, t1);
+
 						logger.setProgress(0.5f * progress.incrementAndGet() / (float) framePairs.size());
 
 					}
@@ -538,6 +549,70 @@ public void run() {
 	}
 
 
+	/**
+	 * Hook for subclassers.
+	 * <p>
+	 * Link the spots of two frames, and add the links found to the {@link #graph}.
+	 * This method is called concurrently for different frame pairs, so any
+	 * modification of the graph must be synchronized on it.
+	 * <p>
+	 * Here, by default, it builds the dense cost matrix returned by
+	 * {@link #createFrameToFrameLinkingCostMatrix(List, List, Map)} and solves it with
+	 * the solver returned by {@link #createAssignmentProblemSolver()}.
+	 *
+	 * @param t0  the list of spots in the first frame
+	 * @param t1  the list of spots in the second frame
+	 */
+	protected void linkFramePair(final List<Spot> t0, final List<Spot> t1) {
+		final double blockingValue = (Double) settings.get(KEY_BLOCKING_VALUE);
+
+		// Create cost matrix
+		double[][] costMatrix = createFrameToFrameLinkingCostMatrix(t0, t1, settings);
+
+		// Special case: top-left corner of the cost matrix is all blocked: we do nothing for this pair
+		// We handle this special case here, because some solvers might hang with this.
+		boolean allBlocked = true;
+		for (int j = 0; j < t0.size(); j++) {
+			for (int k = 0; k < t1.size(); k++) {
+				if (costMatrix[j][k] != blockingValue) {
+					allBlocked = false;
+					break;
+				}
+				if (!allBlocked)
+					break;
+			}
+		}
+
+		if (!allBlocked) {
+			// Find solution
+			AssignmentProblem problem = new AssignmentProblem(costMatrix);
+			AssignmentAlgorithm solver = createAssignmentProblemSolver();
+			int[][] solutions = problem.solve(solver);
+
+			// Extend track segments using solutions: we update the graph edges
+			for (int j = 0; j < solutions.length; j++) {
+				if (solutions[j].length == 0)
+					continue;
+				int i0 = solutions[j][0];
+				int i1 = solutions[j][1];
+
+				if (i0 < t0.size() && i1 < t1.size() ) {
+					// Solution belong to the upper-left quadrant: we can connect the spots
+					Spot s0 = t0.get(i0);
+					Spot s1 = t1.get(i1);
+					// We set the edge weight to be the linking cost, for future reference. 
+					// This is NOT used in further tracking steps
+					double weight = costMatrix[i0][i1];
+					synchronized (graph) { // To avoid concurrent access, sad but true
+						DefaultWeightedEdge edge = graph.addEdge(s0, s1);
+						graph.setEdgeWeight(edge, weight);
+					}
+				} // otherwise we do not create any connection
+			}
+		}
+	}
+
+
 	/**
 	 * Hook for subclassers.
 	 * <p>
@@ -586,10 +661,8 @@ public int[][] solveLAPForFinalTracks() {
 	private void compileTrackSegments() {
 
 		trackSegments = new ArrayList<SortedSet<Spot>>();
-		Collection<Spot> spotPool = new ArrayList<Spot>();
-		for(int frame : spots.keySet()) {
-			spotPool.addAll(spots.get(frame)); // frame info lost
-		}
+		// The graph holds all the spots, in frame order, be they linked or not 
+		Collection<Spot> spotPool = new ArrayList<Spot>(graph.vertexSet());
 		Spot source, current;
 		DepthFirstIterator<Spot, DefaultWeightedEdge> graphIterator;
 		SortedSet<Spot> trackSegment = null;
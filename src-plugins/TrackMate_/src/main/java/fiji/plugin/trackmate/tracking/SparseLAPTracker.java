@@ -0,0 +1,117 @@
+package fiji.plugin.trackmate.tracking;
+
+import java.util.List;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.tracking.costmatrix.SparseCostMatrix;
+import fiji.plugin.trackmate.tracking.costmatrix.SparseLinkingCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.hungarian.AssignmentAlgorithm;
+import fiji.plugin.trackmate.tracking.hungarian.JonkerVolgenantAlgorithm;
+import fiji.plugin.trackmate.tracking.hungarian.SparseAssignmentAlgorithm;
+
+/**
+ * A {@link LAPTracker} that uses sparse cost matrices for the frame to frame
+ * linking step.
+ * <p>
+ * Candidate links are searched for with a KD-tree within the maximal linking
+ * distance, and only these are stored, in a {@link SparseCostMatrix}. The
+ * resulting problem is then solved with a {@link SparseAssignmentAlgorithm},
+ * so that memory and time scale with the number of candidate links instead of
+ * the square of the number of spots per frame. Results are the same that of the
+ * {@link LAPTracker}.
+ * <p>
+ * Both LAP steps are solved with the {@link JonkerVolgenantAlgorithm}.
+ */
+public class SparseLAPTracker extends LAPTracker {
+
+	public static final String TRACKER_KEY = "SPARSE_LAP_TRACKER";
+	public static final String NAME = "Sparse LAP Tracker";
+	public static final String INFO_TEXT = "<html>" +
+			"This tracker is identical to the LAP tracker present in this plugin, but <br>" +
+			"is tailored for very large numbers of spots per frame. <br>" +
+			"<p>" +
+			"For frame to frame linking, only the links shorter than the max linking <br>" +
+			"distance are considered. They are found using a KD-tree and stored in a <br>" +
+			"sparse cost matrix. Memory usage therefore grows with the number of <br>" +
+			"candidate links, and not with the square of the number of spots. <br>" +
+			"<p>" +
+			"Solving the LAP relies on the Jonker-Volgenant shortest augmenting path <br>" +
+			"solver for sparse matrices." +
+			" </html>";
+
+	public SparseLAPTracker(SpotCollection spots, Logger logger) {
+		super(spots, logger);
+	}
+
+	public SparseLAPTracker(SpotCollection spots) {
+		this(spots, Logger.VOID_LOGGER);
+	}
+
+	/**
+	 * Returns a {@link JonkerVolgenantAlgorithm}. If subclassers return a solver that
+	 * is not a {@link SparseAssignmentAlgorithm}, frame to frame linking falls back on
+	 * dense cost matrices.
+	 */
+	@Override
+	protected AssignmentAlgorithm createAssignmentProblemSolver() {
+		return new JonkerVolgenantAlgorithm();
+	}
+
+	@Override
+	protected void linkFramePair(final List<Spot> t0, final List<Spot> t1) {
+		final AssignmentAlgorithm solver = createAssignmentProblemSolver();
+		if (!(solver instanceof SparseAssignmentAlgorithm)) {
+			super.linkFramePair(t0, t1);
+			return;
+		}
+
+		// Create sparse cost matrix
+		SparseLinkingCostMatrixCreator objCosts = new SparseLinkingCostMatrixCreator(t0, t1, settings);
+		if (!objCosts.checkInput() || !objCosts.process()) {
+			errorMessage = "SparseLAPTracker: " + objCosts.getErrorMessage();
+			return;
+		}
+
+		// Special case: no candidate links, we do nothing for this pair
+		if (objCosts.getNumberOfCandidates() == 0) {
+			return;
+		}
+
+		// Find solution
+		final SparseCostMatrix costMatrix = objCosts.getSparseCostMatrix();
+		int[][] solutions = ((SparseAssignmentAlgorithm) solver).computeAssignments(costMatrix);
+
+		// Extend track segments using solutions: we update the graph edges
+		for (int j = 0; j < solutions.length; j++) {
+			if (solutions[j].length == 0)
+				continue;
+			int i0 = solutions[j][0];
+			int i1 = solutions[j][1];
+
+			if (i0 < t0.size() && i1 < t1.size() ) {
+				// Solution belong to the upper-left quadrant: we can connect the spots
+				Spot s0 = t0.get(i0);
+				Spot s1 = t1.get(i1);
+				double weight = costMatrix.get(i0, i1, Double.NaN);
+				synchronized (graph) {
+					DefaultWeightedEdge edge = graph.addEdge(s0, s1);
+					graph.setEdgeWeight(edge, weight);
+				}
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return NAME;
+	}
+
+	@Override
+	public String getKey() {
+		return TRACKER_KEY;
+	}
+}
@@ -0,0 +1,233 @@
+package fiji.plugin.trackmate.tracking.costmatrix;
+
+import java.util.Arrays;
+
+/**
+ * A sparse cost matrix, stored in the compressed sparse row (CSR) format.
+ * <p>
+ * Only the non-blocked costs are stored, so that the memory footprint of the
+ * matrix is proportional to the number of candidate assignments, and not to
+ * the square of the number of objects. Absent entries are considered as
+ * blocked, that is: their corresponding assignment is forbidden.
+ * <p>
+ * For each row <code>i</code>, the costs are found in {@link #cc} and the
+ * matching column indices in {@link #kk}, from index <code>start[i]</code>
+ * (included) to index <code>start[i] + number[i]</code> (excluded). Column
+ * indices are sorted in ascending order within each row.
+ */
+public class SparseCostMatrix {
+
+	/** The non-blocked costs, row after row. */
+	final double[] cc;
+	/** The column index of each cost in {@link #cc}. */
+	final int[] kk;
+	/** The number of non-blocked costs in each row. */
+	final int[] number;
+	/** The index in {@link #cc} and {@link #kk} of the first cost of each row. */
+	final int[] start;
+	/** The number of rows. */
+	final int nRows;
+	/** The number of columns. */
+	final int nCols;
+
+	/*
+	 * CONSTRUCTOR
+	 */
+
+	/**
+	 * Creates a new sparse cost matrix from its CSR representation.
+	 *
+	 * @param cc  the non-blocked costs, row after row.
+	 * @param kk  the column index of each cost, sorted in ascending order within each row.
+	 * @param number  the number of costs in each row.
+	 * @param nCols  the number of columns of the matrix.
+	 * @throws IllegalArgumentException  if the arrays do not describe a valid CSR matrix.
+	 */
+	public SparseCostMatrix(final double[] cc, final int[] kk, final int[] number, final int nCols) {
+		if (cc.length != kk.length) {
+			throw new IllegalArgumentException("Cost and column index arrays must have the same length. Got " + cc.length + " and " + kk.length + ".");
+		}
+		this.cc = cc;
+		this.kk = kk;
+		this.number = number;
+		this.nRows = number.length;
+		this.nCols = nCols;
+		this.start = new int[nRows];
+
+		int index = 0;
+		for (int i = 0; i < nRows; i++) {
+			start[i] = index;
+			for (int k = index; k < index + number[i]; k++) {
+				if (kk[k] < 0 || kk[k] >= nCols) {
+					throw new IllegalArgumentException("Row " + i + " has a column index out of bounds: " + kk[k] + ".");
+				}
+				if (k > index && kk[k] <= kk[k-1]) {
+					throw new IllegalArgumentException("Column indices in row " + i + " are not strictly increasing.");
+				}
+			}
+			index += number[i];
+		}
+		if (index != cc.length) {
+			throw new IllegalArgumentException("Row cardinalities sum to " + index + " but there are " + cc.length + " costs.");
+		}
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	/**
+	 * @return the number of rows of this matrix.
+	 */
+	public int getNRows() {
+		return nRows;
+	}
+
+	/**
+	 * @return the number of columns of this matrix.
+	 */
+	public int getNCols() {
+		return nCols;
+	}
+
+	/**
+	 * @return the number of non-blocked costs stored in this matrix.
+	 */
+	public int getCardinality() {
+		return cc.length;
+	}
+
+	/**
+	 * @return the index of the first cost of the specified row, to be used with
+	 * {@link #getColumn(int)} and {@link #getCost(int)}.
+	 */
+	public int getRowStart(final int i) {
+		return start[i];
+	}
+
+	/**
+	 * @return the number of non-blocked costs in the specified row.
+	 */
+	public int getRowCardinality(final int i) {
+		return number[i];
+	}
+
+	/**
+	 * @return the column index of the k-th stored cost.
+	 */
+	public int getColumn(final int k) {
+		return kk[k];
+	}
+
+	/**
+	 * @return the k-th stored cost.
+	 */
+	public double getCost(final int k) {
+		return cc[k];
+	}
+
+	/**
+	 * Returns the cost stored at the given position, or the specified missing
+	 * value if it is blocked.
+	 *
+	 * @param i  the row index.
+	 * @param j  the column index.
+	 * @param missingValue  the value to return if the cost is not stored in this matrix.
+	 * @return the cost.
+	 */
+	public double get(final int i, final int j, final double missingValue) {
+		final int k = Arrays.binarySearch(kk, start[i], start[i] + number[i], j);
+		if (k < 0) {
+			return missingValue;
+		}
+		return cc[k];
+	}
+
+	/**
+	 * Returns the sum of the costs of the given assignments.
+	 *
+	 * @param assignments  the assignments, as returned by an assignment algorithm.
+	 * @return the total cost, or {@link Double#POSITIVE_INFINITY} if one of the
+	 * assignments is blocked.
+	 */
+	public double totalAssignmentCost(final int[][] assignments) {
+		double sum = 0;
+		for (int[] assignment : assignments) {
+			if (assignment.length == 0) {
+				continue;
+			}
+			sum += get(assignment[0], assignment[1], Double.POSITIVE_INFINITY);
+		}
+		return sum;
+	}
+
+	/**
+	 * Expands this matrix in a full, dense matrix.
+	 *
+	 * @param blockingValue  the value to use for the blocked costs.
+	 * @return a new <code>double[][]</code> array.
+	 */
+	public double[][] toFullMatrix(final double blockingValue) {
+		final double[][] m = new double[nRows][nCols];
+		for (int i = 0; i < nRows; i++) {
+			Arrays.fill(m[i], blockingValue);
+			for (int k = start[i]; k < start[i] + number[i]; k++) {
+				m[i][kk[k]] = cc[k];
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Builds a sparse cost matrix from a full, dense matrix. Costs that are not
+	 * finite or that are equal to or larger than the blocking value are
+	 * considered as blocked and are not stored.
+	 *
+	 * @param m  the dense matrix. Must be rectangular.
+	 * @param blockingValue  the blocking value.
+	 * @return a new sparse matrix.
+	 */
+	public static SparseCostMatrix fromFullMatrix(final double[][] m, final double blockingValue) {
+		final int nRows = m.length;
+		final int nCols = nRows == 0 ? 0 : m[0].length;
+		final int[] number = new int[nRows];
+		int cardinality = 0;
+		for (int i = 0; i < nRows; i++) {
+			for (int j = 0; j < nCols; j++) {
+				if (isUsable(m[i][j], blockingValue)) {
+					number[i]++;
+				}
+			}
+			cardinality += number[i];
+		}
+
+		final double[] cc = new double[cardinality];
+		final int[] kk = new int[cardinality];
+		int index = 0;
+		for (int i = 0; i < nRows; i++) {
+			for (int j = 0; j < nCols; j++) {
+				if (isUsable(m[i][j], blockingValue)) {
+					cc[index] = m[i][j];
+					kk[index] = j;
+					index++;
+				}
+			}
+		}
+		return new SparseCostMatrix(cc, kk, number, nCols);
+	}
+
+	@Override
+	public String toString() {
+		return super.toString() + " " + nRows + " x " + nCols + ", " + cc.length + " non-blocked costs ("
+				+ String.format("%.1f", nRows * nCols == 0 ? 0d : 100d * cc.length / ((double) nRows * nCols)) + "% filled)";
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private static final boolean isUsable(final double cost, final double blockingValue) {
+		return !Double.isNaN(cost) && !Double.isInfinite(cost) && cost < blockingValue && cost != Double.MAX_VALUE;
+	}
+
+}
@@ -0,0 +1,238 @@
+package fiji.plugin.trackmate.tracking.costmatrix;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALTERNATIVE_LINKING_COST_FACTOR;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_BLOCKING_VALUE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_FEATURE_PENALTIES;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.util.TMUtils.checkParameter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import net.imglib2.RealPoint;
+import net.imglib2.collection.KDTree;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.LAPUtils;
+import fiji.plugin.trackmate.tracking.kdtree.RadiusSearchOnKDTree;
+import fiji.plugin.trackmate.util.TMUtils;
+
+/**
+ * <p>Creates the same cost matrix that {@link LinkingCostMatrixCreator} does, but
+ * stores it as a {@link SparseCostMatrix}.
+ *
+ * <p>Candidate links are only searched for within the maximal linking distance,
+ * using a KD-tree built on the spots of frame t+1. All other links are blocked, and
+ * are therefore not stored. The alternative costs (top right and bottom left quadrants)
+ * are only stored along their diagonal, and the bottom right quadrant only holds
+ * the transposed positions of the candidate links. The memory needed is therefore
+ * proportional to the number of candidate links, instead of the square of the number
+ * of spots.
+ *
+ * @see LinkingCostMatrixCreator
+ */
+public class SparseLinkingCostMatrixCreator extends LAPTrackerCostMatrixCreator {
+
+	/** The Spots belonging to time frame t. */
+	protected final List<Spot> t0;
+	/** The Spots belonging to time frame t+1. */
+	protected final List<Spot> t1;
+	/** The sparse cost matrix created by this class. */
+	protected SparseCostMatrix sparseCosts;
+	/** The number of candidate links found in the top-left quadrant. */
+	protected int nCandidates;
+
+	/*
+	 * CONSTRUCTOR
+	 */
+
+	public SparseLinkingCostMatrixCreator(final List<Spot> t0, final List<Spot> t1, final Map<String, Object> settings) {
+		super(settings);
+		this.t0 = t0;
+		this.t1 = t1;
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	@Override
+	public boolean checkInput() {
+		boolean ok = true;
+		StringBuilder errorHolder = new StringBuilder();
+		ok = ok & checkParameter(settings, KEY_LINKING_MAX_DISTANCE, Double.class, errorHolder);
+		ok = ok & checkParameter(settings, KEY_LINKING_FEATURE_PENALTIES, Map.class, errorHolder);
+		ok = ok & checkParameter(settings, KEY_BLOCKING_VALUE, Double.class, errorHolder);
+		ok = ok & checkParameter(settings, KEY_ALTERNATIVE_LINKING_COST_FACTOR, Double.class, errorHolder);
+		if (!ok) {
+			errorMessage = errorHolder.toString();
+		}
+		return ok;
+	}
+
+	@Override
+	public boolean process() {
+		final int n0 = t0.size();
+		final int n1 = t1.size();
+		final double maxDist = (Double) settings.get(KEY_LINKING_MAX_DISTANCE);
+		final double blockingValue = (Double) settings.get(KEY_BLOCKING_VALUE);
+		final double alternativeObjectLinkingCostFactor = (Double) settings.get(KEY_ALTERNATIVE_LINKING_COST_FACTOR);
+		@SuppressWarnings("unchecked")
+		final Map<String, Double> featurePenalties = (Map<String, Double>) settings.get(KEY_LINKING_FEATURE_PENALTIES);
+
+		/*
+		 * 1 - Find candidate links in the top-left quadrant.
+		 */
+
+		final int[] linkNumber = new int[n0];
+		final List<int[]> rowTargets = new ArrayList<int[]>(n0);
+		final List<double[]> rowCosts = new ArrayList<double[]>(n0);
+		nCandidates = 0;
+		double maxCost = Double.NEGATIVE_INFINITY;
+
+		if (n0 > 0 && n1 > 0) {
+
+			final List<RealPoint> targetCoords = new ArrayList<RealPoint>(n1);
+			final List<Integer> targetIndices = new ArrayList<Integer>(n1);
+			for (int j = 0; j < n1; j++) {
+				final double[] coords = new double[3];
+				TMUtils.localize(t1.get(j), coords);
+				targetCoords.add(new RealPoint(coords));
+				targetIndices.add(j);
+			}
+			final KDTree<Integer> tree = new KDTree<Integer>(targetIndices, targetCoords);
+			final RadiusSearchOnKDTree<Integer> search = new RadiusSearchOnKDTree<Integer>(tree);
+
+			final double[] coords = new double[3];
+			for (int i = 0; i < n0; i++) {
+				final Spot source = t0.get(i);
+				TMUtils.localize(source, coords);
+				search.search(new RealPoint(coords), maxDist);
+				final List<Integer> found = search.getValues();
+
+				// Sort by target index, so that CSR columns are increasing
+				final int[] targets = new int[found.size()];
+				for (int k = 0; k < targets.length; k++) {
+					targets[k] = found.get(k);
+				}
+				Arrays.sort(targets);
+
+				final int[] keptTargets = new int[targets.length];
+				final double[] keptCosts = new double[targets.length];
+				int nKept = 0;
+				for (int j : targets) {
+					final double cost = LAPUtils.computeLinkingCostFor(source, t1.get(j), maxDist, blockingValue, featurePenalties);
+					if (cost >= blockingValue) {
+						continue;
+					}
+					keptTargets[nKept] = j;
+					keptCosts[nKept] = cost;
+					nKept++;
+					if (cost > maxCost) {
+						maxCost = cost;
+					}
+				}
+				linkNumber[i] = nKept;
+				rowTargets.add(Arrays.copyOf(keptTargets, nKept));
+				rowCosts.add(Arrays.copyOf(keptCosts, nKept));
+				nCandidates += nKept;
+			}
+		}
+
+		if (nCandidates == 0) {
+			// No link possible: every spot is either a track end or a track start
+			sparseCosts = new SparseCostMatrix(new double[0], new int[0], new int[n0 + n1], n0 + n1);
+			return true;
+		}
+
+		final double cutoff = alternativeObjectLinkingCostFactor * maxCost;
+
+		/*
+		 * 2 - Count the candidate sources of each target, for the transposed
+		 * bottom-right quadrant.
+		 */
+
+		final int[] sourceNumber = new int[n1];
+		for (int[] targets : rowTargets) {
+			for (int j : targets) {
+				sourceNumber[j]++;
+			}
+		}
+		final int[][] sources = new int[n1][];
+		for (int j = 0; j < n1; j++) {
+			sources[j] = new int[sourceNumber[j]];
+		}
+		final int[] fill = new int[n1];
+		for (int i = 0; i < n0; i++) { // ascending i, so sources are sorted
+			for (int j : rowTargets.get(i)) {
+				sources[j][fill[j]++] = i;
+			}
+		}
+
+		/*
+		 * 3 - Assemble the CSR matrix, quadrant by quadrant.
+		 */
+
+		final int cardinality = 2 * nCandidates + n0 + n1;
+		final double[] cc = new double[cardinality];
+		final int[] kk = new int[cardinality];
+		final int[] number = new int[n0 + n1];
+		int index = 0;
+
+		// Top rows: linking costs (top-left), then no-linking alternative (top-right diagonal)
+		for (int i = 0; i < n0; i++) {
+			final int[] targets = rowTargets.get(i);
+			final double[] costs = rowCosts.get(i);
+			System.arraycopy(targets, 0, kk, index, targets.length);
+			System.arraycopy(costs, 0, cc, index, costs.length);
+			index += targets.length;
+			kk[index] = n1 + i;
+			cc[index] = cutoff;
+			index++;
+			number[i] = targets.length + 1;
+		}
+
+		// Bottom rows: no-linking alternative (bottom-left diagonal), then transposed candidates (bottom-right)
+		for (int j = 0; j < n1; j++) {
+			kk[index] = j;
+			cc[index] = cutoff;
+			index++;
+			for (int i : sources[j]) {
+				kk[index] = n1 + i;
+				cc[index] = cutoff;
+				index++;
+			}
+			number[n0 + j] = sources[j].length + 1;
+		}
+
+		sparseCosts = new SparseCostMatrix(cc, kk, number, n0 + n1);
+		return true;
+	}
+
+	/**
+	 * @return the sparse cost matrix created by the last call to {@link #process()}.
+	 */
+	public SparseCostMatrix getSparseCostMatrix() {
+		return sparseCosts;
+	}
+
+	/**
+	 * @return the number of candidate links between frame t and t+1 found in the
+	 * last call to {@link #process()}. If it is 0, there is nothing to solve.
+	 */
+	public int getNumberOfCandidates() {
+		return nCandidates;
+	}
+
+	/**
+	 * Expands the sparse cost matrix in a dense one, using the blocking value
+	 * of the settings map for the blocked costs. Defeats the purpose of this class,
+	 * but allows using it with dense solvers.
+	 */
+	@Override
+	public double[][] getCostMatrix() {
+		final double blockingValue = (Double) settings.get(KEY_BLOCKING_VALUE);
+		return sparseCosts.toFullMatrix(blockingValue);
+	}
+}
@@ -0,0 +1,212 @@
+package fiji.plugin.trackmate.tracking.hungarian;
+
+import java.util.Arrays;
+
+import fiji.plugin.trackmate.tracking.costmatrix.SparseCostMatrix;
+
+/**
+ * An implementation of the Jonker-Volgenant shortest augmenting path algorithm
+ * for sparse cost matrices (LAPJVsp), described in:
+ * <p>
+ * R. Jonker and A. Volgenant, "A Shortest Augmenting Path Algorithm for Dense
+ * and Sparse Linear Assignment Problems", Computing 38, 325-340 (1987).
+ * <p>
+ * The algorithm works in two stages. The first stage is a cheap initialization,
+ * that usually assigns most of the rows:
+ * <ol>
+ * <li>column reduction: each column gets the price of its cheapest entry, and
+ * is assigned to the corresponding row if this row is still free;
+ * <li>reduction transfer: rows assigned once transfer their slack to the price
+ * of their column;
+ * <li>augmenting row reduction, run twice: free rows take their cheapest column,
+ * lowering its price to the second cheapest reduced cost of the row, and freeing
+ * the row previously assigned to it. As in the published LAPJV, the freed row is
+ * processed again right away only a bounded number of times; the rows left over
+ * go to the second stage. Rows can bump each other forever otherwise, for instance
+ * when there are more rows than columns they can be assigned to.
+ * </ol>
+ * The second stage assigns the remaining free rows by shortest augmenting paths,
+ * and is inherited from {@link SparseHungarianAlgorithm}. The first stage leaves
+ * each assigned row on its cheapest reduced cost, so that the reduced costs are
+ * non-negative and the augmenting paths can be searched with Dijkstra's algorithm.
+ * <p>
+ * The optimal total cost is the same that of the {@link HungarianAlgorithm}, and
+ * so are the assignments when the optimum is unique. Only entries present in the
+ * sparse matrix are visited.
+ */
+public class JonkerVolgenantAlgorithm extends SparseHungarianAlgorithm {
+
+	@Override
+	protected void initialize(final SparseCostMatrix cm) {
+		final int nRows = cm.getNRows();
+		final int nCols = cm.getNCols();
+
+		/*
+		 * 1 - Column reduction.
+		 */
+
+		Arrays.fill(v, Double.POSITIVE_INFINITY);
+		final int[] minRow = new int[nCols];
+		Arrays.fill(minRow, -1);
+		for (int i = 0; i < nRows; i++) {
+			final int end = cm.getRowStart(i) + cm.getRowCardinality(i);
+			for (int k = cm.getRowStart(i); k < end; k++) {
+				final int j = cm.getColumn(k);
+				if (cm.getCost(k) < v[j]) {
+					v[j] = cm.getCost(k);
+					minRow[j] = i;
+				}
+			}
+		}
+
+		final int[] matches = new int[nRows];
+		for (int j = nCols - 1; j >= 0; j--) {
+			final int i = minRow[j];
+			if (i < 0) {
+				v[j] = 0; // empty column
+				continue;
+			}
+			if (++matches[i] == 1) {
+				rowAssignment[i] = j;
+				colAssignment[j] = i;
+			}
+		}
+
+		/*
+		 * 2 - Reduction transfer.
+		 */
+
+		final int[] free = new int[nRows];
+		int nFree = 0;
+		int nNonEmptyRows = 0;
+		for (int i = 0; i < nRows; i++) {
+			if (cm.getRowCardinality(i) == 0) {
+				continue; // empty row, cannot be assigned
+			}
+			nNonEmptyRows++;
+			if (matches[i] == 0) {
+				free[nFree++] = i;
+				continue;
+			}
+			if (matches[i] > 1) {
+				continue;
+			}
+			final int j1 = rowAssignment[i];
+			double min = Double.POSITIVE_INFINITY;
+			final int end = cm.getRowStart(i) + cm.getRowCardinality(i);
+			for (int k = cm.getRowStart(i); k < end; k++) {
+				final int j = cm.getColumn(k);
+				if (j == j1) {
+					continue;
+				}
+				final double h = cm.getCost(k) - v[j];
+				if (h < min) {
+					min = h;
+				}
+			}
+			if (min < Double.POSITIVE_INFINITY) {
+				v[j1] -= min;
+			}
+		}
+
+		/*
+		 * 3 - Augmenting row reduction, twice. It is skipped when some rows
+		 * cannot be assigned anyway, because there are fewer non-empty columns
+		 * than non-empty rows: they would only keep displacing each other.
+		 */
+
+		int nNonEmptyCols = 0;
+		for (int j = 0; j < nCols; j++) {
+			if (minRow[j] >= 0) {
+				nNonEmptyCols++;
+			}
+		}
+		final int nLoops = nNonEmptyRows > nNonEmptyCols ? 0 : 2;
+
+		for (int loop = 0; loop < nLoops && nFree > 0; loop++) {
+			int k = 0;
+			final int previousNFree = nFree;
+			nFree = 0;
+			// Number of rows processed in this pass, to bound the immediate reprocessing
+			long count = 0;
+			while (k < previousNFree) {
+				final int i = free[k++];
+				count++;
+
+				// Find the lowest and second lowest reduced costs of the row
+				double umin = Double.POSITIVE_INFINITY;
+				double usubmin = Double.POSITIVE_INFINITY;
+				int j1 = -1;
+				int j2 = -1;
+				final int end = cm.getRowStart(i) + cm.getRowCardinality(i);
+				for (int kk = cm.getRowStart(i); kk < end; kk++) {
+					final int j = cm.getColumn(kk);
+					final double h = cm.getCost(kk) - v[j];
+					if (h < usubmin) {
+						if (h >= umin) {
+							usubmin = h;
+							j2 = j;
+						} else {
+							usubmin = umin;
+							j2 = j1;
+							umin = h;
+							j1 = j;
+						}
+					}
+				}
+				if (j1 < 0) {
+					continue; // empty row, cannot be assigned
+				}
+
+				int i0 = colAssignment[j1];
+				final boolean strict = j2 >= 0 && umin < usubmin;
+				if (strict) {
+					// Lower the price of j1 so that it stays the cheapest for this row
+					v[j1] -= (usubmin - umin);
+				} else if (i0 >= 0 && j2 >= 0) {
+					// Tie: take the second best column, which may be free
+					j1 = j2;
+					i0 = colAssignment[j2];
+				}
+
+				if (i0 >= 0) {
+					rowAssignment[i0] = -1;
+				}
+				rowAssignment[i] = j1;
+				colAssignment[j1] = i;
+
+				if (i0 >= 0) {
+					if (strict && count < (long) k * nCols) {
+						// Process the freed row right away
+						free[--k] = i0;
+					} else {
+						free[nFree++] = i0;
+					}
+				}
+			}
+		}
+
+		/*
+		 * 4 - Row potentials, so that reduced costs are non-negative, and zero
+		 * on assigned entries.
+		 */
+
+		for (int i = 0; i < nRows; i++) {
+			if (rowAssignment[i] >= 0) {
+				final int j = rowAssignment[i];
+				u[i] = cm.get(i, j, Double.NaN) - v[j];
+			} else {
+				double min = Double.POSITIVE_INFINITY;
+				final int end = cm.getRowStart(i) + cm.getRowCardinality(i);
+				for (int k = cm.getRowStart(i); k < end; k++) {
+					final double h = cm.getCost(k) - v[cm.getColumn(k)];
+					if (h < min) {
+						min = h;
+					}
+				}
+				u[i] = min < Double.POSITIVE_INFINITY ? min : 0;
+			}
+		}
+	}
+
+}
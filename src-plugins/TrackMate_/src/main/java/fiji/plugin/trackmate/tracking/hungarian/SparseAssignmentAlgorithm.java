@@ -0,0 +1,28 @@
+package fiji.plugin.trackmate.tracking.hungarian;
+
+import fiji.plugin.trackmate.tracking.costmatrix.SparseCostMatrix;
+
+/**
+ * Interface for assignment algorithms that can operate directly on a
+ * {@link SparseCostMatrix}, without ever expanding it into a dense matrix.
+ * <p>
+ * Implementations must still be able to solve dense problems through
+ * {@link #computeAssignments(double[][])}, so that they can be used wherever
+ * an {@link AssignmentAlgorithm} is expected.
+ */
+public interface SparseAssignmentAlgorithm extends AssignmentAlgorithm {
+
+	/**
+	 * Solve this assignment problem for the given sparse cost matrix.
+	 * Absent entries of the matrix are forbidden assignments.
+	 * <p>
+	 * The solutions are returned in the same format that of
+	 * {@link AssignmentAlgorithm#computeAssignments(double[][])}. Rows that
+	 * cannot be assigned are absent from the solutions.
+	 *
+	 * @param costMatrix  the sparse cost matrix. It is not modified.
+	 * @return an array of solutions, as arrays of 2 ints.
+	 */
+	public int[][] computeAssignments(SparseCostMatrix costMatrix);
+
+}
@@ -0,0 +1,431 @@
+package fiji.plugin.trackmate.tracking.hungarian;
+
+import java.util.Arrays;
+
+import fiji.plugin.trackmate.tracking.costmatrix.SparseCostMatrix;
+
+/**
+ * A sparse implementation of the Hungarian method, as a successive shortest
+ * augmenting path algorithm.
+ * <p>
+ * Row and column potentials are maintained so that the reduced costs
+ * <code>c(i,j) - u(i) - v(j)</code> of all stored entries stay non-negative.
+ * Each free row is then assigned by searching the shortest augmenting path
+ * in the residual graph with Dijkstra's algorithm, on the reduced costs. Only
+ * the entries present in the {@link SparseCostMatrix} are ever visited, and
+ * the Dijkstra search uses an indexed binary heap over the columns. All the
+ * work arrays are proportional to the number of rows and columns, so memory
+ * is dominated by the sparse matrix itself.
+ * <p>
+ * When given a dense matrix, it is first converted to a sparse one, and the
+ * entries equal to {@link Double#MAX_VALUE} or infinite are considered as
+ * forbidden assignments.
+ * <p>
+ * When the rows or the columns cannot all be assigned, as many rows as possible
+ * are assigned, at the lowest total cost.
+ */
+public class SparseHungarianAlgorithm implements SparseAssignmentAlgorithm {
+
+	/*
+	 * FIELDS
+	 */
+
+	/** Column assigned to each row, or -1. */
+	protected int[] rowAssignment;
+	/** Row assigned to each column, or -1. */
+	protected int[] colAssignment;
+	/** Row potentials. */
+	protected double[] u;
+	/** Column potentials. */
+	protected double[] v;
+
+	/** Dijkstra: tentative shortest distance to each column. */
+	private double[] dist;
+	/** Dijkstra: the row from which each column was reached. */
+	private int[] pred;
+	/** Dijkstra: whether the shortest distance to a column is final. */
+	private boolean[] scanned;
+	/** Dijkstra: the columns touched by the current search, for cheap reset. */
+	private int[] touched;
+	private int nTouched;
+
+	/** Indexed heap of columns, keyed by dist. */
+	private int[] heap;
+	/** Position of each column in the heap, or -1. */
+	private int[] heapPos;
+	private int heapSize;
+
+	/*
+	 * METHODS
+	 */
+
+	@Override
+	public int[][] computeAssignments(final double[][] costMatrix) {
+		if (costMatrix.length == 0) {
+			return new int[][] { {  } };
+		}
+		final SparseCostMatrix cm = SparseCostMatrix.fromFullMatrix(costMatrix, Double.POSITIVE_INFINITY);
+		return computeAssignments(cm);
+	}
+
+	@Override
+	public int[][] computeAssignments(final SparseCostMatrix cm) {
+		final int nRows = cm.getNRows();
+		final int nCols = cm.getNCols();
+		if (nRows == 0 || nCols == 0) {
+			return new int[][] { {  } };
+		}
+		allocate(nRows, nCols);
+		initialize(cm);
+
+		if (!augmentAll(cm) || hasFreeColumn(cm)) {
+			/*
+			 * The column reduction is only optimal when all the rows and
+			 * columns end up assigned. Otherwise the successive shortest
+			 * paths still find as many assignments as possible, but not
+			 * necessarily the cheapest ones. The problem is then solved
+			 * again with an extra column for each row, that only this row
+			 * can use, starting from potentials that allow free columns.
+			 */
+			final SparseCostMatrix extended = withUnassignedColumns(cm);
+			allocate(nRows, extended.getNCols());
+			initializeByRowReduction(extended);
+			augmentAll(extended);
+		}
+
+		// Collect solutions, leaving out the extra columns
+		int counter = 0;
+		for (int i = 0; i < nRows; i++) {
+			if (rowAssignment[i] >= 0 && rowAssignment[i] < nCols) {
+				counter++;
+			}
+		}
+		final int[][] result = new int[counter][];
+		counter = 0;
+		for (int i = 0; i < nRows; i++) {
+			if (rowAssignment[i] >= 0 && rowAssignment[i] < nCols) {
+				result[counter++] = new int[] { i, rowAssignment[i] };
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * PROTECTED METHODS
+	 */
+
+	/**
+	 * Initializes the potentials and builds a first partial assignment. Work
+	 * arrays are already allocated, assignments set to -1 and potentials to 0.
+	 * <p>
+	 * On exit, the reduced costs <code>c(i,j) - u(i) - v(j)</code> of all stored
+	 * entries must be non-negative, and zero for assigned entries.
+	 * <p>
+	 * Here, the potentials are initialized by column reduction, and the first
+	 * assignment is built greedily from the entries whose reduced cost is zero.
+	 */
+	protected void initialize(final SparseCostMatrix cm) {
+		final int nRows = cm.getNRows();
+		final int nCols = cm.getNCols();
+
+		// Column reduction: v(j) = min_i c(i,j)
+		Arrays.fill(v, Double.POSITIVE_INFINITY);
+		for (int i = 0; i < nRows; i++) {
+			final int end = cm.getRowStart(i) + cm.getRowCardinality(i);
+			for (int k = cm.getRowStart(i); k < end; k++) {
+				final int j = cm.getColumn(k);
+				if (cm.getCost(k) < v[j]) {
+					v[j] = cm.getCost(k);
+				}
+			}
+		}
+		for (int j = 0; j < nCols; j++) {
+			if (v[j] == Double.POSITIVE_INFINITY) {
+				v[j] = 0; // empty column
+			}
+		}
+
+		// Greedy assignment on tight edges
+		for (int i = 0; i < nRows; i++) {
+			final int end = cm.getRowStart(i) + cm.getRowCardinality(i);
+			for (int k = cm.getRowStart(i); k < end; k++) {
+				final int j = cm.getColumn(k);
+				if (colAssignment[j] < 0 && cm.getCost(k) - v[j] == 0) {
+					rowAssignment[i] = j;
+					colAssignment[j] = i;
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Searches the shortest augmenting path starting from the specified free row,
+	 * updates the potentials and flips the assignments along the path.
+	 *
+	 * @return <code>false</code> if the row cannot be assigned.
+	 */
+	protected boolean augment(final SparseCostMatrix cm, final int freeRow) {
+		nTouched = 0;
+		heapSize = 0;
+
+		// Seed with the entries of the free row
+		relaxRow(cm, freeRow, 0);
+
+		int endColumn = -1;
+		while (heapSize > 0) {
+			final int j = pollHeap();
+			scanned[j] = true;
+			if (colAssignment[j] < 0) {
+				endColumn = j;
+				break;
+			}
+			// Assigned edges have a reduced cost of 0: the row inherits the column distance
+			relaxRow(cm, colAssignment[j], dist[j]);
+		}
+
+		if (endColumn < 0) {
+			resetSearch();
+			return false;
+		}
+
+		// Update potentials so that reduced costs stay non-negative and path edges become tight
+		final double dmin = dist[endColumn];
+		u[freeRow] += dmin;
+		for (int t = 0; t < nTouched; t++) {
+			final int j = touched[t];
+			if (!scanned[j]) {
+				continue;
+			}
+			final double delta = dmin - dist[j];
+			v[j] -= delta;
+			if (j != endColumn) {
+				u[colAssignment[j]] += delta;
+			}
+		}
+
+		// Flip assignments along the path
+		int j = endColumn;
+		while (true) {
+			final int i = pred[j];
+			final int next = rowAssignment[i];
+			rowAssignment[i] = j;
+			colAssignment[j] = i;
+			if (i == freeRow) {
+				break;
+			}
+			j = next;
+		}
+
+		resetSearch();
+		return true;
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Assigns all the free rows by shortest augmenting paths.
+	 *
+	 * @return <code>false</code> if a row with entries could not be assigned.
+	 */
+	private boolean augmentAll(final SparseCostMatrix cm) {
+		boolean complete = true;
+		for (int i = 0; i < cm.getNRows(); i++) {
+			if (rowAssignment[i] < 0 && cm.getRowCardinality(i) > 0 && !augment(cm, i)) {
+				complete = false;
+			}
+		}
+		return complete;
+	}
+
+	/**
+	 * @return <code>true</code> if a column with entries is not assigned.
+	 */
+	private boolean hasFreeColumn(final SparseCostMatrix cm) {
+		final boolean[] nonEmpty = new boolean[cm.getNCols()];
+		for (int k = 0; k < cm.getCardinality(); k++) {
+			nonEmpty[cm.getColumn(k)] = true;
+		}
+		for (int j = 0; j < nonEmpty.length; j++) {
+			if (nonEmpty[j] && colAssignment[j] < 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns a copy of the matrix with an extra column for each row, only
+	 * usable by this row. Its cost is higher than any difference in total
+	 * cost that one more assignment can make, so that as many rows as
+	 * possible are assigned to the real columns.
+	 */
+	private static SparseCostMatrix withUnassignedColumns(final SparseCostMatrix cm) {
+		final int nRows = cm.getNRows();
+		final int nCols = cm.getNCols();
+		final int cardinality = cm.getCardinality();
+
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (int k = 0; k < cardinality; k++) {
+			min = Math.min(min, cm.getCost(k));
+			max = Math.max(max, cm.getCost(k));
+		}
+		final double unassignedCost = nRows * (max - min) + Math.abs(max) + 1;
+
+		final double[] cc = new double[cardinality + nRows];
+		final int[] kk = new int[cardinality + nRows];
+		final int[] number = new int[nRows];
+		int index = 0;
+		for (int i = 0; i < nRows; i++) {
+			final int end = cm.getRowStart(i) + cm.getRowCardinality(i);
+			for (int k = cm.getRowStart(i); k < end; k++) {
+				cc[index] = cm.getCost(k);
+				kk[index] = cm.getColumn(k);
+				index++;
+			}
+			cc[index] = unassignedCost;
+			kk[index] = nCols + i;
+			index++;
+			number[i] = cm.getRowCardinality(i) + 1;
+		}
+		return new SparseCostMatrix(cc, kk, number, nCols + nRows);
+	}
+
+	/**
+	 * Initializes the row potentials to the cheapest entry of each row, and
+	 * leaves the column potentials at 0. Unlike the column reduction of
+	 * {@link #initialize(SparseCostMatrix)}, this stays optimal when some
+	 * columns are left unassigned.
+	 */
+	private void initializeByRowReduction(final SparseCostMatrix cm) {
+		for (int i = 0; i < cm.getNRows(); i++) {
+			final int end = cm.getRowStart(i) + cm.getRowCardinality(i);
+			double min = Double.POSITIVE_INFINITY;
+			int jmin = -1;
+			for (int k = cm.getRowStart(i); k < end; k++) {
+				if (cm.getCost(k) < min) {
+					min = cm.getCost(k);
+					jmin = cm.getColumn(k);
+				}
+			}
+			if (jmin < 0) {
+				continue;
+			}
+			u[i] = min;
+			if (colAssignment[jmin] < 0) {
+				rowAssignment[i] = jmin;
+				colAssignment[jmin] = i;
+			}
+		}
+	}
+
+	private void allocate(final int nRows, final int nCols) {
+		rowAssignment = new int[nRows];
+		colAssignment = new int[nCols];
+		Arrays.fill(rowAssignment, -1);
+		Arrays.fill(colAssignment, -1);
+		u = new double[nRows];
+		v = new double[nCols];
+
+		dist = new double[nCols];
+		pred = new int[nCols];
+		scanned = new boolean[nCols];
+		touched = new int[nCols];
+		heap = new int[nCols];
+		heapPos = new int[nCols];
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		Arrays.fill(heapPos, -1);
+	}
+
+	/**
+	 * Relaxes all the edges of the given row, reached with the given distance.
+	 */
+	private void relaxRow(final SparseCostMatrix cm, final int i, final double rowDist) {
+		final int end = cm.getRowStart(i) + cm.getRowCardinality(i);
+		for (int k = cm.getRowStart(i); k < end; k++) {
+			final int j = cm.getColumn(k);
+			if (scanned[j]) {
+				continue;
+			}
+			final double reduced = cm.getCost(k) - u[i] - v[j];
+			final double nd = rowDist + (reduced < 0 ? 0 : reduced); // guard against round-off
+			if (nd < dist[j]) {
+				if (dist[j] == Double.POSITIVE_INFINITY) {
+					touched[nTouched++] = j;
+				}
+				dist[j] = nd;
+				pred[j] = i;
+				if (heapPos[j] < 0) {
+					heapPos[j] = heapSize;
+					heap[heapSize++] = j;
+				}
+				siftUp(heapPos[j]);
+			}
+		}
+	}
+
+	private void resetSearch() {
+		for (int t = 0; t < nTouched; t++) {
+			final int j = touched[t];
+			dist[j] = Double.POSITIVE_INFINITY;
+			scanned[j] = false;
+			heapPos[j] = -1;
+		}
+		nTouched = 0;
+		heapSize = 0;
+	}
+
+	private int pollHeap() {
+		final int top = heap[0];
+		heapPos[top] = -1;
+		heapSize--;
+		if (heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapPos[heap[0]] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	private void siftUp(int pos) {
+		final int j = heap[pos];
+		final double d = dist[j];
+		while (pos > 0) {
+			final int parent = (pos - 1) >>> 1;
+			final int pj = heap[parent];
+			if (dist[pj] <= d) {
+				break;
+			}
+			heap[pos] = pj;
+			heapPos[pj] = pos;
+			pos = parent;
+		}
+		heap[pos] = j;
+		heapPos[j] = pos;
+	}
+
+	private void siftDown(int pos) {
+		final int j = heap[pos];
+		final double d = dist[j];
+		final int half = heapSize >>> 1;
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			final int right = child + 1;
+			if (right < heapSize && dist[heap[right]] < dist[heap[child]]) {
+				child = right;
+			}
+			if (d <= dist[heap[child]]) {
+				break;
+			}
+			heap[pos] = heap[child];
+			heapPos[heap[pos]] = pos;
+			pos = child;
+		}
+		heap[pos] = j;
+		heapPos[j] = pos;
+	}
+
+}
@@ -0,0 +1,86 @@
+package fiji.plugin.trackmate.tracking.kdtree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.RealLocalizable;
+import net.imglib2.collection.KDTree;
+import net.imglib2.collection.KDTreeNode;
+
+/**
+ * Collects all the values of a {@link KDTree} whose nodes lie within a given
+ * radius of a query position. Branches that cannot contain such nodes are
+ * pruned, so that a query costs roughly <code>O(log n + k)</code> where
+ * <code>k</code> is the number of nodes found.
+ * <p>
+ * Instances are not thread-safe, but are cheap: use one per thread.
+ *
+ * @param <T> the type of the values stored in the tree.
+ */
+public class RadiusSearchOnKDTree<T> {
+
+	protected final KDTree<T> tree;
+	protected final int n;
+	protected final double[] pos;
+
+	protected final List<T> values = new ArrayList<T>();
+	protected final List<Double> squDistances = new ArrayList<Double>();
+	protected double squRadius;
+
+	public RadiusSearchOnKDTree(final KDTree<T> tree) {
+		this.tree = tree;
+		this.n = tree.numDimensions();
+		this.pos = new double[n];
+	}
+
+	/**
+	 * Searches the tree for all the nodes that are within the given radius of
+	 * the specified position. Results are retrieved with {@link #getValues()}
+	 * and {@link #getSquareDistances()}, in no particular order.
+	 */
+	public void search(final RealLocalizable p, final double radius) {
+		p.localize(pos);
+		squRadius = radius * radius;
+		values.clear();
+		squDistances.clear();
+		if (tree.size() > 0) {
+			searchNode(tree.getRoot());
+		}
+	}
+
+	/**
+	 * @return the values found by the last search. The list is reused and overwritten
+	 * by the next search.
+	 */
+	public List<T> getValues() {
+		return values;
+	}
+
+	/**
+	 * @return the square distances to the values found by the last search, in the same
+	 * order that of {@link #getValues()}.
+	 */
+	public List<Double> getSquareDistances() {
+		return squDistances;
+	}
+
+	protected void searchNode(final KDTreeNode<T> current) {
+		final double distance = current.squDistanceTo(pos);
+		if (distance <= squRadius) {
+			values.add(current.get());
+			squDistances.add(distance);
+		}
+
+		final double axisDiff = pos[current.getSplitDimension()] - current.getSplitCoordinate();
+		final boolean leftIsNearBranch = axisDiff < 0;
+
+		final KDTreeNode<T> nearChild = leftIsNearBranch ? current.left : current.right;
+		final KDTreeNode<T> awayChild = leftIsNearBranch ? current.right : current.left;
+		if (nearChild != null)
+			searchNode(nearChild);
+
+		// The away branch can only hold candidates if the split plane is within range
+		if ((axisDiff * axisDiff <= squRadius) && (awayChild != null))
+			searchNode(awayChild);
+	}
+}
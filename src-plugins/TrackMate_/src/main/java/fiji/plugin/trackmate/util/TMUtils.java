@@ -20,7 +20,6 @@
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import net.imglib2.exception.ImgLibException;
 import net.imglib2.img.ImagePlusAdapter;
@@ -28,7 +27,6 @@
 import net.imglib2.meta.Axes;
 import net.imglib2.meta.AxisType;
 import net.imglib2.meta.Metadata;
-import net.imglib2.multithreading.SimpleMultiThreading;
 import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.util.Util;
 import fiji.plugin.trackmate.Dimension;
@@ -37,6 +35,7 @@
 import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.SpotFeatureKeys;
 import fiji.plugin.trackmate.TrackMate_;
 
 /**
@@ -492,8 +491,11 @@ public static final void localize(final Spot spot, final double[] coords) {
 	
 	/**
 	 * Build and return a map of {@link SpotFeature} values for the spot collection given.
-	 * Each feature maps a double array, with 1 element per {@link Spot}, all pooled
-	 * together.
+	 * Each feature maps a double array, with 1 element per {@link Spot} that has a value
+	 * for this feature, all pooled together.
+	 * <p>
+	 * All the feature columns are filled in a single pass over the spots, reading their
+	 * primitive feature storage directly with {@link Spot#getFeatureValue(int)}.
 	 */
 	public static Map<String, double[]> getSpotFeatureValues(final SpotCollection spots, final List<String> features, final Logger logger) {
 		final Map<String, double[]> featureValues = new  ConcurrentHashMap<String, double[]>(features.size());
@@ -501,53 +503,35 @@ public static Map<String, double[]> getSpotFeatureValues(final SpotCollection sp
 			return featureValues;
 		// Get the total quantity of spot we have
 		final int spotNumber = spots.getNSpots();
+		final int nFeatures = features.size();
+
+		final int[] indices = new int[nFeatures];
+		final int[] counts = new int[nFeatures];
+		final double[][] columns = new double[nFeatures][];
+		for (int i = 0; i < nFeatures; i++) {
+			indices[i] = SpotFeatureKeys.indexOf(features.get(i));
+			// Make a double array to comply to JFreeChart histograms
+			columns[i] = indices[i] < 0 ? new double[0] : new double[spotNumber];
+		}
 
-		final AtomicInteger ai = new AtomicInteger();
-		final AtomicInteger progress = new AtomicInteger();
-		Thread[] threads = SimpleMultiThreading.newThreads();
-
-		for (int ithread = 0; ithread < threads.length; ithread++) {
-
-			threads[ithread] = new Thread("TrackMate collecting spot feature values thread "+ithread) {
-
-				public void run() {
-
-					int index;
-					Double val;
-					boolean noDataFlag = true;
-
-					for (int i = ai.getAndIncrement(); i < features.size(); i = ai.getAndIncrement()) {
-
-						String feature = features.get(i);
-
-						// Make a double array to comply to JFreeChart histograms
-						double[] values = new double[spotNumber];
-						index = 0;
-						for (Spot spot : spots) {
-							val = spot.getFeature(feature);
-							if (null == val)
-								continue;
-							values[index] = val; 
-							index++;
-							noDataFlag = false;
-						}
-						if (noDataFlag) {
-							featureValues.put(feature, new double[0]);
-						} else { 
-							featureValues.put(feature, values);
-						}
-
-						logger.setProgress(progress.incrementAndGet() / (double) features.size());
-					}
+		logger.setStatus("Collecting spot feature values");
+		for (List<Spot> frameSpots : spots.values()) {
+			for (Spot spot : frameSpots) {
+				for (int i = 0; i < nFeatures; i++) {
+					if (indices[i] < 0)
+						continue;
+					final double val = spot.getFeatureValue(indices[i]);
+					if (Spot.isMissing(val))
+						continue;
+					columns[i][counts[i]++] = val;
 				}
-
-			};
-
+			}
 		}
 
-		logger.setStatus("Collecting spot feature values");
-		SimpleMultiThreading.startAndJoin(threads);
-		logger.setProgress(0);
+		for (int i = 0; i < nFeatures; i++) {
+			final double[] values = counts[i] == columns[i].length ? columns[i] : Arrays.copyOf(columns[i], counts[i]);
+			featureValues.put(features.get(i), values);
+		}
 		logger.setStatus("");
 		return featureValues;
 	}
@@ -0,0 +1,54 @@
+package fiji.plugin.trackmate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class SpotTest {
+
+	@Test
+	public void testMissingFeature() {
+		final Spot spot = new Spot(new double[] { 1, 2, 3 });
+		assertNull(spot.getFeature("SPOT_TEST_NEVER_SET"));
+		assertEquals(-1, SpotFeatureKeys.indexOf("SPOT_TEST_NEVER_SET"));
+
+		final int index = SpotFeatureKeys.intern("SPOT_TEST_SET_ON_OTHER_SPOT");
+		new Spot(new double[3]).putFeature("SPOT_TEST_SET_ON_OTHER_SPOT", 1);
+		assertNull(spot.getFeature("SPOT_TEST_SET_ON_OTHER_SPOT"));
+		assertTrue(Spot.isMissing(spot.getFeatureValue(index)));
+	}
+
+	@Test
+	public void testNaNIsNotMissing() {
+		final Spot spot = new Spot(new double[3]);
+		spot.putFeature("SPOT_TEST_NAN", Double.NaN);
+		final int index = SpotFeatureKeys.indexOf("SPOT_TEST_NAN");
+		assertFalse(Spot.isMissing(spot.getFeatureValue(index)));
+		assertTrue(Double.isNaN(spot.getFeature("SPOT_TEST_NAN")));
+		assertTrue(spot.getFeatures().containsKey("SPOT_TEST_NAN"));
+	}
+
+	@Test
+	public void testPositionFeatures() {
+		final Spot s1 = new Spot(new double[] { 1, 2, 3 });
+		final Spot s2 = new Spot(new double[] { 4, 6, 3 });
+		assertEquals(1d, s1.getFeature(Spot.POSITION_X), 0);
+		assertEquals(3d, s1.getFeature(Spot.POSITION_Z), 0);
+		assertEquals(25d, s1.squareDistanceTo(s2), 1e-12);
+	}
+
+	@Test
+	public void testGetFeaturesIsACopy() {
+		final Spot spot = new Spot(new double[] { 1, 2, 3 });
+		final Map<String, Double> features = spot.getFeatures();
+		features.put(Spot.POSITION_X, 10d);
+		features.remove(Spot.POSITION_Y);
+		assertEquals(1d, spot.getFeature(Spot.POSITION_X), 0);
+		assertEquals(2d, spot.getFeature(Spot.POSITION_Y), 0);
+	}
+}
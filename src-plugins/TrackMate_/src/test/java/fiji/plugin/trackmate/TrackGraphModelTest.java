@@ -0,0 +1,216 @@
+package fiji.plugin.trackmate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.alg.ConnectivityInspector;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleDirectedWeightedGraph;
+import org.junit.Test;
+
+public class TrackGraphModelTest {
+
+	private static final int N_FRAMES = 20;
+	private static final int N_SPOTS_PER_FRAME = 10;
+	private static final int N_UPDATES = 200;
+
+	/**
+	 * Apply random edits to a model, and check after each update that the tracks
+	 * maintained incrementally are the connected components of the graph, and 
+	 * that their features are the same as a full recompute gives.
+	 */
+	@Test
+	public void testIncrementalUpdateMatchesFullRecompute() {
+		final Random ran = new Random(1l);
+		final TrackMateModel model = new TrackMateModel();
+		final TrackGraphModel trackModel = model.getTrackModel();
+		model.getFeatureModel().setTrackAnalyzerProvider(new TrackAnalyzerProvider(model));
+		model.getFeatureModel().setEdgeAnalyzerProvider(new EdgeAnalyzerProvider(model));
+
+		final List<List<Spot>> frames = new ArrayList<List<Spot>>(N_FRAMES);
+		model.beginUpdate();
+		try {
+			for (int frame = 0; frame < N_FRAMES; frame++) {
+				List<Spot> spots = new ArrayList<Spot>(N_SPOTS_PER_FRAME);
+				for (int i = 0; i < N_SPOTS_PER_FRAME; i++) {
+					Spot spot = createSpot(frame, "S" + frame + "_" + i, ran);
+					model.addSpotTo(spot, frame);
+					spots.add(spot);
+				}
+				frames.add(spots);
+			}
+		} finally {
+			model.endUpdate();
+		}
+
+		// Visibility of the spots that are in a track, to infer the visibility of the next tracks
+		Map<Spot, Boolean> spotVisibility = new HashMap<Spot, Boolean>();
+
+		for (int update = 0; update < N_UPDATES; update++) {
+
+			model.beginUpdate();
+			try {
+				int nEdits = 1 + ran.nextInt(5);
+				for (int edit = 0; edit < nEdits; edit++) {
+					int action = ran.nextInt(10);
+					if (action < 6) {
+						// Link two spots of consecutive frames
+						int frame = ran.nextInt(N_FRAMES - 1);
+						Spot source = randomSpot(frames.get(frame), ran);
+						Spot target = randomSpot(frames.get(frame + 1), ran);
+						if (!trackModel.containsEdge(source, target)) {
+							model.addEdge(source, target, ran.nextDouble());
+						}
+					} else if (action < 9) {
+						// Unlink
+						List<DefaultWeightedEdge> edges = new ArrayList<DefaultWeightedEdge>(trackModel.edgeSet());
+						if (!edges.isEmpty()) {
+							model.removeEdge(edges.get(ran.nextInt(edges.size())));
+						}
+					} else {
+						// Remove a spot and replace it by a new lonely one
+						int frame = ran.nextInt(N_FRAMES);
+						List<Spot> spots = frames.get(frame);
+						int index = ran.nextInt(spots.size());
+						model.removeSpotFrom(spots.get(index), frame);
+						Spot spot = createSpot(frame, "S" + frame + "_" + index + "_" + update, ran);
+						model.addSpotTo(spot, frame);
+						spots.set(index, spot);
+					}
+				}
+			} finally {
+				model.endUpdate();
+			}
+
+			/*
+			 * Expected tracks: the connected components of more than one spot of
+			 * a copy of the graph, found by JGraphT.
+			 */
+			SimpleDirectedWeightedGraph<Spot, DefaultWeightedEdge> copy = new SimpleDirectedWeightedGraph<Spot, DefaultWeightedEdge>(DefaultWeightedEdge.class);
+			for (Spot spot : trackModel.vertexSet()) {
+				copy.addVertex(spot);
+			}
+			for (DefaultWeightedEdge edge : trackModel.edgeSet()) {
+				copy.addEdge(trackModel.getEdgeSource(edge), trackModel.getEdgeTarget(edge));
+			}
+			Set<Set<Spot>> expectedTracks = new HashSet<Set<Spot>>();
+			for (Set<Spot> component : new ConnectivityInspector<Spot, DefaultWeightedEdge>(copy).connectedSets()) {
+				if (component.size() > 1) {
+					expectedTracks.add(component);
+				}
+			}
+
+			assertEquals(expectedTracks, new HashSet<Set<Spot>>(trackModel.getTrackSpots().values()));
+			assertEquals(expectedTracks.size(), trackModel.getNTracks());
+			for (Integer trackID : trackModel.getTrackIDs()) {
+				Set<Spot> track = trackModel.getTrackSpots(trackID);
+				for (Spot spot : track) {
+					assertEquals(trackID, trackModel.getTrackIDOf(spot));
+				}
+				Set<DefaultWeightedEdge> expectedEdges = new HashSet<DefaultWeightedEdge>();
+				for (DefaultWeightedEdge edge : trackModel.edgeSet()) {
+					if (track.contains(trackModel.getEdgeSource(edge))) {
+						expectedEdges.add(edge);
+					}
+				}
+				assertEquals(expectedEdges, trackModel.getTrackEdges(trackID));
+				for (DefaultWeightedEdge edge : expectedEdges) {
+					assertEquals(trackID, trackModel.getTrackIDOf(edge));
+				}
+				assertNotNull(trackModel.getTrackName(trackID));
+
+				/* A track is visible if it has a spot of a visible track of the 
+				 * previous update, or if it is made of lonely spots only. */
+				boolean expectedVisible = true;
+				for (Spot spot : track) {
+					Boolean visible = spotVisibility.get(spot);
+					if (null != visible) {
+						expectedVisible = visible;
+						if (visible) {
+							break;
+						}
+					}
+				}
+				assertEquals(expectedVisible, trackModel.isTrackFiltered(trackID));
+			}
+			for (Spot spot : trackModel.vertexSet()) {
+				if (trackModel.edgesOf(spot).isEmpty()) {
+					assertNull(trackModel.getTrackIDOf(spot));
+				}
+			}
+
+			/*
+			 * Track features updated incrementally must be those of a full 
+			 * recompute. Non-local analyzers are left aside: they only process
+			 * the visible tracks when the model is updated, and the track 
+			 * indices depend on the iteration order of the track IDs.
+			 */
+			Map<Integer, Map<String, Double>> features = new HashMap<Integer, Map<String, Double>>();
+			for (Integer trackID : trackModel.getTrackIDs()) {
+				features.put(trackID, localTrackFeatures(model, trackID));
+			}
+			model.getFeatureModel().computeTrackFeatures(trackModel.getTrackIDs(), false);
+			for (Integer trackID : trackModel.getTrackIDs()) {
+				Map<String, Double> expectedFeatures = localTrackFeatures(model, trackID);
+				Map<String, Double> actualFeatures = features.get(trackID);
+				for (String feature : expectedFeatures.keySet()) {
+					Double expected = expectedFeatures.get(feature);
+					Double actual = actualFeatures.get(feature);
+					if (null == expected || null == actual) {
+						assertEquals(feature, expected, actual);
+					} else {
+						assertEquals(feature, expected, actual, 1e-9);
+					}
+				}
+			}
+
+			// Hide a track from time to time, and remember the visibility of their spots
+			if (trackModel.getNTracks() > 0 && ran.nextInt(4) == 0) {
+				List<Integer> trackIDs = new ArrayList<Integer>(trackModel.getTrackIDs());
+				trackModel.setFilteredTrackID(trackIDs.get(ran.nextInt(trackIDs.size())), false, false);
+			}
+			spotVisibility.clear();
+			for (Integer trackID : trackModel.getTrackIDs()) {
+				boolean visible = trackModel.isTrackFiltered(trackID);
+				for (Spot spot : trackModel.getTrackSpots(trackID)) {
+					spotVisibility.put(spot, visible);
+				}
+			}
+		}
+	}
+
+	private static final Map<String, Double> localTrackFeatures(final TrackMateModel model, final Integer trackID) {
+		final FeatureModel featureModel = model.getFeatureModel();
+		final TrackAnalyzerProvider provider = featureModel.trackAnalyzerProvider;
+		final Map<String, Double> features = new HashMap<String, Double>();
+		for (String key : provider.getAvailableTrackFeatureAnalyzers()) {
+			if (!provider.getTrackFeatureAnalyzer(key).isLocal()) {
+				continue;
+			}
+			for (String feature : provider.getFeaturesForKey(key)) {
+				features.put(feature, featureModel.getTrackFeature(trackID, feature));
+			}
+		}
+		return features;
+	}
+
+	private static final Spot createSpot(final int frame, final String name, final Random ran) {
+		Spot spot = new Spot(new double[] { 10 * ran.nextDouble(), 10 * ran.nextDouble(), 0 }, name);
+		spot.putFeature(Spot.POSITION_T, Double.valueOf(frame));
+		return spot;
+	}
+
+	private static final Spot randomSpot(final List<Spot> spots, final Random ran) {
+		return spots.get(ran.nextInt(spots.size()));
+	}
+
+}
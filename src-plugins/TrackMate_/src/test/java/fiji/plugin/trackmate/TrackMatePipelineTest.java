@@ -0,0 +1,172 @@
+package fiji.plugin.trackmate;
+
+import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_DO_MEDIAN_FILTERING;
+import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_DO_SUBPIXEL_LOCALIZATION;
+import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_RADIUS;
+import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_TARGET_CHANNEL;
+import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_THRESHOLD;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.FloatProcessor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.detection.LogDetectorFactory;
+import fiji.plugin.trackmate.detection.SpotDetector;
+import fiji.plugin.trackmate.tracking.LAPTracker;
+import fiji.plugin.trackmate.tracking.LAPUtils;
+
+public class TrackMatePipelineTest {
+
+	private static final int WIDTH = 64;
+	private static final int HEIGHT = 64;
+	private static final int N_FRAMES = 10;
+	/** Start position and velocity along X and Y of each blob. */
+	private static final double[][] BLOBS = new double[][] {
+		{ 12, 20, 2, 0 },
+		{ 50, 44, -2, 0 },
+		{ 32, 10, 0, 3 }
+	};
+	private static final double SIGMA = 2;
+
+	/**
+	 * The pipelined process must find the same spots and tracks as the sequential one.
+	 */
+	@Test
+	public void testPipelinedMatchesSequential() {
+		TrackMate_ sequential = createPlugin();
+		assertTrue(sequential.getErrorMessage(), sequential.process());
+
+		TrackMate_ pipelined = createPlugin();
+		pipelined.setPipelined(true);
+		pipelined.setMaxFramesInFlight(3);
+		assertTrue(pipelined.getErrorMessage(), pipelined.process());
+
+		TrackMateModel expected = sequential.getModel();
+		TrackMateModel actual = pipelined.getModel();
+
+		assertEquals(BLOBS.length * N_FRAMES, expected.getFilteredSpots().getNSpots());
+		assertEquals(BLOBS.length, expected.getTrackModel().getNTracks());
+
+		assertEquals(expected.getSpots().getNSpots(), actual.getSpots().getNSpots());
+		for (int frame = 0; frame < N_FRAMES; frame++) {
+			assertEquals("Spots in frame " + frame, positions(expected.getFilteredSpots().get(frame)), positions(actual.getFilteredSpots().get(frame)));
+		}
+		assertEquals(links(expected), links(actual));
+		assertEquals(expected.getTrackModel().getNTracks(), actual.getTrackModel().getNTracks());
+		assertEquals(expected.getTrackModel().getFilteredTrackIDs().size(), actual.getTrackModel().getFilteredTrackIDs().size());
+	}
+
+	/**
+	 * A detector that throws must make the pipelined process fail instead of hang.
+	 */
+	@Test(timeout = 60000)
+	public void testPipelinedFailsOnDetectorException() {
+		TrackMate_ pipelined = createPlugin();
+		pipelined.getModel().getSettings().detectorFactory = new LogDetectorFactory() {
+			@Override
+			public SpotDetector getDetector(final int frame) {
+				if (frame == N_FRAMES / 2) {
+					throw new IllegalStateException("Broken frame " + frame);
+				}
+				return super.getDetector(frame);
+			}
+		};
+		pipelined.setPipelined(true);
+		pipelined.setMaxFramesInFlight(3);
+		assertFalse(pipelined.process());
+		assertTrue(pipelined.getErrorMessage(), pipelined.getErrorMessage().contains("Broken frame"));
+	}
+
+	/*
+	 * STATIC UTILS
+	 */
+
+	private static TrackMate_ createPlugin() {
+		ImagePlus imp = createMovie();
+		TrackMateModel model = new TrackMateModel();
+		model.setLogger(Logger.VOID_LOGGER);
+		Settings settings = new Settings(imp);
+		model.setSettings(settings);
+
+		TrackMate_ plugin = new TrackMate_(model);
+		plugin.initModules();
+		plugin.setNumThreads(2);
+
+		settings.detectorFactory = new LogDetectorFactory();
+		Map<String, Object> detectorSettings = new HashMap<String, Object>();
+		detectorSettings.put(KEY_TARGET_CHANNEL, 1);
+		detectorSettings.put(KEY_RADIUS, SIGMA * Math.sqrt(2));
+		detectorSettings.put(KEY_THRESHOLD, 1d);
+		detectorSettings.put(KEY_DO_MEDIAN_FILTERING, false);
+		detectorSettings.put(KEY_DO_SUBPIXEL_LOCALIZATION, false);
+		settings.detectorSettings = detectorSettings;
+		settings.initialSpotFilterValue = 0d;
+
+		Map<String, Object> trackerSettings = LAPUtils.getDefaultLAPSettingsMap();
+		trackerSettings.put(KEY_LINKING_MAX_DISTANCE, 5d);
+		settings.trackerSettings = trackerSettings;
+		settings.tracker = new LAPTracker(model.getFilteredSpots(), Logger.VOID_LOGGER);
+		return plugin;
+	}
+
+	/**
+	 * A movie of gaussian blobs moving in straight lines over a black background.
+	 */
+	private static ImagePlus createMovie() {
+		ImageStack stack = new ImageStack(WIDTH, HEIGHT);
+		for (int t = 0; t < N_FRAMES; t++) {
+			float[] pixels = new float[WIDTH * HEIGHT];
+			for (double[] blob : BLOBS) {
+				double xc = blob[0] + t * blob[2];
+				double yc = blob[1] + t * blob[3];
+				for (int y = 0; y < HEIGHT; y++) {
+					for (int x = 0; x < WIDTH; x++) {
+						double r2 = (x - xc) * (x - xc) + (y - yc) * (y - yc);
+						pixels[x + y * WIDTH] += (float) (100 * Math.exp(-r2 / (2 * SIGMA * SIGMA)));
+					}
+				}
+			}
+			stack.addSlice("t" + t, new FloatProcessor(WIDTH, HEIGHT, pixels, null));
+		}
+		ImagePlus imp = new ImagePlus("Moving blobs", stack);
+		imp.setDimensions(1, 1, N_FRAMES);
+		imp.getCalibration().frameInterval = 1;
+		return imp;
+	}
+
+	private static List<String> positions(List<Spot> spots) {
+		List<String> positions = new ArrayList<String>(spots.size());
+		for (Spot spot : spots) {
+			positions.add(position(spot));
+		}
+		Collections.sort(positions);
+		return positions;
+	}
+
+	private static Set<String> links(TrackMateModel model) {
+		Set<String> links = new TreeSet<String>();
+		for (DefaultWeightedEdge edge : model.getTrackModel().edgeSet()) {
+			links.add(position(model.getTrackModel().getEdgeSource(edge)) + " -> " + position(model.getTrackModel().getEdgeTarget(edge)));
+		}
+		return links;
+	}
+
+	private static String position(Spot spot) {
+		return String.format("t=%.0f x=%.3f y=%.3f", spot.getFeature(Spot.FRAME), spot.getFeature(Spot.POSITION_X), spot.getFeature(Spot.POSITION_Y));
+	}
+
+}
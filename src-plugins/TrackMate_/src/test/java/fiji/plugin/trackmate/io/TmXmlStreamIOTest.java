@@ -0,0 +1,208 @@
+package fiji.plugin.trackmate.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.FeatureFilter;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackMateModel;
+import fiji.plugin.trackmate.TrackMate_;
+import fiji.plugin.trackmate.tests.TmXmlIOBenchmark;
+
+public class TmXmlStreamIOTest {
+
+	/**
+	 * Stream writer -> stream reader must give back the same model.
+	 */
+	@Test
+	public void testStreamRoundTrip() throws IOException {
+		TrackMate_ source = createPlugin();
+		File file = File.createTempFile("TrackMate", ".xml");
+		file.deleteOnExit();
+
+		TmXmlStreamWriter writer = new TmXmlStreamWriter(file, source, "A log\nwith <markup> & lines");
+		assertTrue(writer.getErrorMessage(), writer.checkInput() && writer.process());
+
+		TrackMate_ target = newPlugin();
+		TmXmlStreamReader reader = new TmXmlStreamReader(file, target);
+		assertTrue(reader.getErrorMessage(), reader.checkInput());
+		assertEquals(TrackMate_.PLUGIN_NAME_VERSION, reader.getVersion());
+		assertTrue(reader.getErrorMessage(), reader.process());
+		assertEquals("A log\nwith <markup> & lines", reader.getLogText());
+
+		assertSameModel(source.getModel(), target.getModel(), 0);
+		file.delete();
+	}
+
+	/**
+	 * Files whose name ends with .gz are compressed, and uncompressed on the fly when read.
+	 */
+	@Test
+	public void testCompressedRoundTrip() throws IOException {
+		TrackMate_ source = createPlugin();
+		File file = File.createTempFile("TrackMate", ".xml.gz");
+		file.deleteOnExit();
+
+		TmXmlStreamWriter writer = new TmXmlStreamWriter(file, source);
+		assertTrue(writer.getErrorMessage(), writer.checkInput() && writer.process());
+
+		// Check this is really gzip
+		InputStream is = new GZIPInputStream(new FileInputStream(file));
+		assertTrue(is.read() >= 0);
+		is.close();
+
+		TrackMate_ target = newPlugin();
+		TmXmlStreamReader reader = new TmXmlStreamReader(file, target);
+		assertTrue(reader.getErrorMessage(), reader.checkInput() && reader.process());
+
+		assertSameModel(source.getModel(), target.getModel(), 0);
+		file.delete();
+	}
+
+	/**
+	 * The stream reader must read files written by the JDom writer, and the JDom
+	 * reader files written by the stream writer.
+	 */
+	@Test
+	public void testSameSchemaAsJDom() throws IOException {
+		TrackMate_ source = createPlugin();
+
+		File jdomFile = File.createTempFile("TrackMate", ".xml");
+		jdomFile.deleteOnExit();
+		TmXmlWriter jdomWriter = new TmXmlWriter(source);
+		assertTrue(jdomWriter.getErrorMessage(), jdomWriter.process());
+		jdomWriter.writeToFile(jdomFile);
+
+		TrackMate_ target = newPlugin();
+		TmXmlStreamReader streamReader = new TmXmlStreamReader(jdomFile, target);
+		assertTrue(streamReader.getErrorMessage(), streamReader.checkInput() && streamReader.process());
+		assertSameModel(source.getModel(), target.getModel(), 0);
+
+		File streamFile = File.createTempFile("TrackMate", ".xml");
+		streamFile.deleteOnExit();
+		TmXmlStreamWriter streamWriter = new TmXmlStreamWriter(streamFile, source);
+		assertTrue(streamWriter.getErrorMessage(), streamWriter.process());
+
+		target = newPlugin();
+		TmXmlReader jdomReader = new TmXmlReader(streamFile, target);
+		assertTrue(jdomReader.getErrorMessage(), jdomReader.checkInput() && jdomReader.process());
+		// The JDom reader reads spot features as floats
+		assertSameModel(source.getModel(), target.getModel(), 1e-6);
+
+		jdomFile.delete();
+		streamFile.delete();
+	}
+
+	/*
+	 * UTILS
+	 */
+
+	private static TrackMate_ newPlugin() {
+		TrackMate_ plugin = new TrackMate_();
+		plugin.initModules();
+		return plugin;
+	}
+
+	private static TrackMate_ createPlugin() {
+		TrackMate_ plugin = newPlugin();
+		TmXmlIOBenchmark.createModel(plugin, 20, 30, new Random(1l));
+		plugin.getModel().getSettings().initialSpotFilterValue = 0.1;
+		plugin.getModel().getSettings().getSpotFilters().add(new FeatureFilter(Spot.QUALITY, 0.2, true));
+		plugin.getModel().getSettings().xend = 99;
+		return plugin;
+	}
+
+	private static void assertSameModel(final TrackMateModel expected, final TrackMateModel actual, final double tolerance) {
+		// Settings
+		assertEquals(expected.getSettings().xend, actual.getSettings().xend);
+		assertEquals(expected.getSettings().initialSpotFilterValue, actual.getSettings().initialSpotFilterValue);
+		assertEquals(expected.getSettings().getSpotFilters().size(), actual.getSettings().getSpotFilters().size());
+		for (int i = 0; i < expected.getSettings().getSpotFilters().size(); i++) {
+			FeatureFilter ef = expected.getSettings().getSpotFilters().get(i);
+			FeatureFilter af = actual.getSettings().getSpotFilters().get(i);
+			assertEquals(ef.feature, af.feature);
+			assertEquals(ef.value, af.value);
+			assertEquals(ef.isAbove, af.isAbove);
+		}
+
+		// Spots
+		assertEquals(expected.getSpots().getNSpots(), actual.getSpots().getNSpots());
+		assertEquals(expected.getFilteredSpots().getNSpots(), actual.getFilteredSpots().getNSpots());
+		Map<Integer, Spot> actualSpots = new HashMap<Integer, Spot>();
+		for (Spot spot : actual.getSpots()) {
+			actualSpots.put(spot.ID(), spot);
+		}
+		for (int frame : expected.getSpots().keySet()) {
+			List<Spot> spots = expected.getSpots().get(frame);
+			assertEquals(spots.size(), actual.getSpots().get(frame).size());
+			for (Spot spot : spots) {
+				Spot other = actualSpots.get(spot.ID());
+				assertNotNull("Missing spot " + spot, other);
+				assertEquals(spot.getName(), other.getName());
+				Map<String, Double> features = spot.getFeatures();
+				assertEquals(features.keySet(), other.getFeatures().keySet());
+				for (String feature : features.keySet()) {
+					double val = features.get(feature);
+					assertEquals(val, other.getFeature(feature), tolerance * Math.abs(val));
+				}
+			}
+		}
+		for (int frame : expected.getFilteredSpots().keySet()) {
+			List<Spot> spots = expected.getFilteredSpots().get(frame);
+			List<Spot> others = actual.getFilteredSpots().get(frame);
+			assertEquals(spots.size(), others.size());
+			for (int i = 0; i < spots.size(); i++) {
+				assertEquals(spots.get(i).ID(), others.get(i).ID());
+			}
+		}
+
+		// Tracks
+		assertEquals(expected.getTrackModel().getNTracks(), actual.getTrackModel().getNTracks());
+		assertEquals(expected.getTrackModel().getNFilteredTracks(), actual.getTrackModel().getNFilteredTracks());
+		for (Integer trackID : expected.getTrackModel().getTrackIDs()) {
+			Set<DefaultWeightedEdge> edges = expected.getTrackModel().getTrackEdges(trackID);
+			Spot spot = actualSpots.get(expected.getTrackModel().getTrackSpots(trackID).iterator().next().ID());
+			Integer otherID = actual.getTrackModel().getTrackIDOf(spot);
+			assertNotNull(otherID);
+
+			assertEquals(expected.getTrackModel().getTrackName(trackID), actual.getTrackModel().getTrackName(otherID));
+			assertEquals(expected.getTrackModel().isTrackFiltered(trackID), actual.getTrackModel().isTrackFiltered(otherID));
+			assertEquals(expected.getTrackModel().getTrackSpots(trackID).size(), actual.getTrackModel().getTrackSpots(otherID).size());
+			assertEquals(edges.size(), actual.getTrackModel().getTrackEdges(otherID).size());
+			for (String feature : expected.getFeatureModel().getTrackFeatures()) {
+				if (feature.equals(fiji.plugin.trackmate.features.track.TrackIndexAnalyzer.TRACK_ID)) {
+					continue; // Saved IDs are not kept
+				}
+				assertEquals(expected.getFeatureModel().getTrackFeature(trackID, feature), 
+						actual.getFeatureModel().getTrackFeature(otherID, feature), 0);
+			}
+
+			for (DefaultWeightedEdge edge : edges) {
+				Spot source = actualSpots.get(expected.getTrackModel().getEdgeSource(edge).ID());
+				Spot target = actualSpots.get(expected.getTrackModel().getEdgeTarget(edge).ID());
+				DefaultWeightedEdge other = actual.getTrackModel().getEdge(source, target);
+				assertNotNull(other);
+				assertEquals(expected.getTrackModel().getEdgeWeight(edge), actual.getTrackModel().getEdgeWeight(other), 0);
+				for (String feature : expected.getFeatureModel().getEdgeFeatures()) {
+					assertEquals(expected.getFeatureModel().getEdgeFeature(edge, feature), 
+							actual.getFeatureModel().getEdgeFeature(other, feature), 0);
+				}
+			}
+		}
+	}
+}
@@ -80,6 +80,126 @@ public void  testTracking() {
 	}
 
 
+	/**
+	 * Standard tracking, with sparse cost matrices
+	 */
+	@Test
+	public void  testSparseTracking() {
+
+		final int nFrames = 100;
+
+		// Create 2 "lines" of spots, keeping track of the manual tracks for later testing
+		List<Spot> group1 = new ArrayList<Spot>(nFrames);
+		List<Spot> group2 = new ArrayList<Spot>(nFrames);
+		SpotCollection spotCollection = new SpotCollection();
+		for (int i = 0; i < nFrames; i++) {
+			double[] coords1 = new double[] { 1d, 1d * i, 0 } ;
+			double[] coords2 = new double[] { 2d, 1d * i, 0 } ;
+
+			Spot spot1 = new Spot(coords1);
+			Spot spot2 = new Spot(coords2);
+			spot1.putFeature(Spot.POSITION_T, i);
+			spot2.putFeature(Spot.POSITION_T, i);
+			spot1.setName("G1T"+i);
+			spot2.setName("G2T"+i);
+
+			group1.add(spot1);
+			group2.add(spot2);
+
+			List<Spot> spots = new ArrayList<Spot>(2);
+			spots.add(spot1);
+			spots.add(spot2);
+			spotCollection.put(i, spots);
+		}
+		List<List<Spot>> groups = new ArrayList<List<Spot>>(2);
+		groups.add(group1);
+		groups.add(group2);
+
+		// Set the tracking settings
+		Map<String, Object> trackerSettings = LAPUtils.getDefaultLAPSettingsMap();
+		trackerSettings.put(KEY_LINKING_MAX_DISTANCE, 2d);
+		trackerSettings.put(KEY_ALLOW_GAP_CLOSING, false);
+
+		// Instantiate tracker
+		LAPTracker tracker = new SparseLAPTracker(spotCollection, Logger.VOID_LOGGER);
+		tracker.setSettings(trackerSettings);
+
+		// Check process
+		if (!tracker.checkInput() || !tracker.process()) {
+			fail(tracker.getErrorMessage());
+		}
+		
+		// Check results
+		SimpleDirectedWeightedGraph<Spot, DefaultWeightedEdge> graph = tracker.getResult();
+		verifyTracks(graph, groups, nFrames);
+	}
+
+
+	/**
+	 * Frame by frame tracking, as spots are made available
+	 */
+	@Test
+	public void  testIncrementalTracking() {
+
+		final int nFrames = 100;
+
+		// Create 2 "lines" of spots, keeping track of the manual tracks for later testing
+		List<Spot> group1 = new ArrayList<Spot>(nFrames);
+		List<Spot> group2 = new ArrayList<Spot>(nFrames);
+		List<List<Spot>> frames = new ArrayList<List<Spot>>(nFrames);
+		for (int i = 0; i < nFrames; i++) {
+			double[] coords1 = new double[] { 1d, 1d * i, 0 } ;
+			double[] coords2 = new double[] { 2d, 1d * i, 0 } ;
+
+			Spot spot1 = new Spot(coords1);
+			Spot spot2 = new Spot(coords2);
+			spot1.putFeature(Spot.POSITION_T, i);
+			spot2.putFeature(Spot.POSITION_T, i);
+			spot1.setName("G1T"+i);
+			spot2.setName("G2T"+i);
+
+			group1.add(spot1);
+			group2.add(spot2);
+
+			List<Spot> spots = new ArrayList<Spot>(2);
+			spots.add(spot1);
+			spots.add(spot2);
+			frames.add(spots);
+		}
+		List<List<Spot>> groups = new ArrayList<List<Spot>>(2);
+		groups.add(group1);
+		groups.add(group2);
+
+		// Set the tracking settings
+		Map<String, Object> trackerSettings = LAPUtils.getDefaultLAPSettingsMap();
+		trackerSettings.put(KEY_LINKING_MAX_DISTANCE, 2d);
+		trackerSettings.put(KEY_ALLOW_GAP_CLOSING, false);
+
+		// Instantiate tracker on an empty collection: spots are fed frame by frame
+		IncrementalSpotTracker tracker = new SparseLAPTracker(new SpotCollection(), Logger.VOID_LOGGER);
+		tracker.setSettings(trackerSettings);
+
+		// Check process
+		if (!tracker.initLinking()) {
+			fail(tracker.getErrorMessage());
+		}
+		List<Spot> previous = null;
+		for (List<Spot> current : frames) {
+			if (!tracker.linkFrames(previous, current)) {
+				fail(tracker.getErrorMessage());
+			}
+			previous = current;
+		}
+		if (!tracker.completeLinking()) {
+			fail(tracker.getErrorMessage());
+		}
+		
+		// Check results
+		SimpleDirectedWeightedGraph<Spot, DefaultWeightedEdge> graph = tracker.getResult();
+		verifyTracks(graph, groups, nFrames);
+	}
+
+
 	/**
 	 * This time we try to track spots with different intensities and see if we can put 
 	 * them back right
@@ -0,0 +1,180 @@
+package fiji.plugin.trackmate.tracking.hungarian;
+
+import static fiji.plugin.trackmate.tracking.hungarian.SparseHungarianAlgorithmTest.copy;
+import static fiji.plugin.trackmate.tracking.hungarian.SparseHungarianAlgorithmTest.randomCostMatrix;
+import static fiji.plugin.trackmate.tracking.hungarian.SparseHungarianAlgorithmTest.totalCost;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.tracking.costmatrix.SparseCostMatrix;
+
+public class JonkerVolgenantAlgorithmTest {
+
+	/**
+	 * With continuous random costs, the optimum is unique, and the assignments
+	 * must be exactly the ones of the Hungarian algorithm.
+	 */
+	@Test
+	public void testSameAssignmentsAsHungarian() {
+		final Random ran = new Random(1l);
+		for (int t = 0; t < 50; t++) {
+			final int n = 2 + ran.nextInt(50);
+			final double[][] costs = new double[n][n];
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < n; j++) {
+					costs[i][j] = 100 * ran.nextDouble();
+				}
+			}
+
+			final int[][] hungarian = new HungarianAlgorithm().computeAssignments(copy(costs));
+			final int[][] jv = new JonkerVolgenantAlgorithm().computeAssignments(copy(costs));
+
+			assertEquals(n, jv.length);
+			final int[] expected = new int[n];
+			for (int[] solution : hungarian) {
+				expected[solution[0]] = solution[1];
+			}
+			for (int[] solution : jv) {
+				assertEquals("Row " + solution[0] + " is not assigned as with the Hungarian algorithm, ", expected[solution[0]], solution[1]);
+			}
+		}
+	}
+
+	/**
+	 * With forbidden assignments and ties, only the total cost can be compared.
+	 */
+	@Test
+	public void testSameTotalCostOnSparseProblems() {
+		final Random ran = new Random(2l);
+		for (int t = 0; t < 200; t++) {
+			final int n = 2 + ran.nextInt(60);
+			final double[][] costs = randomCostMatrix(ran, n, 0.7);
+
+			final int[][] dense = new MunkresKuhnAlgorithm().computeAssignments(copy(costs));
+			final int[][] jv = new JonkerVolgenantAlgorithm().computeAssignments(SparseCostMatrix.fromFullMatrix(costs, Double.MAX_VALUE));
+
+			assertEquals("All rows should be assigned, ", n, jv.length);
+			assertEquals("Total assignment cost differs from the dense solver, ", totalCost(costs, dense), totalCost(costs, jv), 1e-9);
+		}
+	}
+
+	/**
+	 * Three rows competing for two columns used to displace each other forever
+	 * in the augmenting row reduction.
+	 */
+	@Test(timeout = 5000)
+	public void testMoreRowsThanUsableColumns() {
+		final double X = Double.MAX_VALUE;
+		final double[][] costs = new double[][] {
+				{ X, 2, 2 },
+				{ X, 0, 2 },
+				{ X, 3, 1 },
+		};
+		final int[][] jv = new JonkerVolgenantAlgorithm().computeAssignments(SparseCostMatrix.fromFullMatrix(costs, X));
+		assertEquals(2, jv.length);
+		assertEquals(1d, totalCost(costs, jv), 1e-9);
+	}
+
+	/**
+	 * Sparse matrices with small integer costs, hence many ties, that have a
+	 * complete assignment.
+	 */
+	@Test(timeout = 20000)
+	public void testSameTotalCostWithIntegerTies() {
+		final Random ran = new Random(3l);
+		for (int t = 0; t < 500; t++) {
+			final int n = 2 + ran.nextInt(40);
+			final double[][] costs = integerCostMatrix(ran, n, ran.nextDouble());
+			// Make sure there is a complete assignment
+			final int[] permutation = randomPermutation(ran, n);
+			for (int i = 0; i < n; i++) {
+				if (costs[i][permutation[i]] == Double.MAX_VALUE) {
+					costs[i][permutation[i]] = ran.nextInt(5);
+				}
+			}
+
+			final int[][] dense = new MunkresKuhnAlgorithm().computeAssignments(copy(costs));
+			final int[][] jv = new JonkerVolgenantAlgorithm().computeAssignments(SparseCostMatrix.fromFullMatrix(costs, Double.MAX_VALUE));
+
+			assertEquals("All rows should be assigned, ", n, jv.length);
+			assertEquals("Total assignment cost differs from the dense solver, ", totalCost(costs, dense), totalCost(costs, jv), 1e-9);
+		}
+	}
+
+	/**
+	 * Sparse matrices with integer costs and an empty column, so that one row
+	 * at least cannot be assigned. The dense solver is given a large finite
+	 * cost for the forbidden entries, so that it first maximizes the number of
+	 * assignments.
+	 */
+	@Test(timeout = 20000)
+	public void testSameAssignmentCountAndCostWithEmptyColumn() {
+		final double forbidden = 1e6;
+		final Random ran = new Random(4l);
+		for (int t = 0; t < 500; t++) {
+			final int n = 2 + ran.nextInt(40);
+			final double[][] costs = integerCostMatrix(ran, n, ran.nextDouble());
+			final int emptyColumn = ran.nextInt(n);
+			for (int i = 0; i < n; i++) {
+				costs[i][emptyColumn] = Double.MAX_VALUE;
+			}
+
+			final double[][] bigM = copy(costs);
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < n; j++) {
+					if (bigM[i][j] == Double.MAX_VALUE) {
+						bigM[i][j] = forbidden;
+					}
+				}
+			}
+			int expectedCount = 0;
+			double expectedCost = 0;
+			for (final int[] solution : new MunkresKuhnAlgorithm().computeAssignments(bigM)) {
+				if (solution.length > 0 && bigM[solution[0]][solution[1]] < forbidden) {
+					expectedCount++;
+					expectedCost += bigM[solution[0]][solution[1]];
+				}
+			}
+
+			final int[][] jv = new JonkerVolgenantAlgorithm().computeAssignments(SparseCostMatrix.fromFullMatrix(costs, Double.MAX_VALUE));
+			assertTrue(jv.length < n);
+			for (final int[] solution : jv) {
+				assertTrue("Forbidden assignment, ", costs[solution[0]][solution[1]] < Double.MAX_VALUE);
+			}
+			assertEquals("Number of assignments differs from the dense solver, ", expectedCount, jv.length);
+			assertEquals("Total assignment cost differs from the dense solver, ", expectedCost, totalCost(costs, jv), 1e-9);
+		}
+	}
+
+	/*
+	 * UTILS
+	 */
+
+	private static double[][] integerCostMatrix(final Random ran, final int n, final double density) {
+		final double[][] costs = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				costs[i][j] = ran.nextDouble() < density ? ran.nextInt(5) : Double.MAX_VALUE;
+			}
+		}
+		return costs;
+	}
+
+	private static int[] randomPermutation(final Random ran, final int n) {
+		final int[] permutation = new int[n];
+		for (int i = 0; i < n; i++) {
+			permutation[i] = i;
+		}
+		for (int i = n - 1; i > 0; i--) {
+			final int j = ran.nextInt(i + 1);
+			final int tmp = permutation[i];
+			permutation[i] = permutation[j];
+			permutation[j] = tmp;
+		}
+		return permutation;
+	}
+}
@@ -0,0 +1,99 @@
+package fiji.plugin.trackmate.tracking.hungarian;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.tracking.costmatrix.SparseCostMatrix;
+
+public class SparseHungarianAlgorithmTest {
+
+	/**
+	 * Random problems with forbidden assignments, which always admit a
+	 * solution along the diagonal. The optimal total cost must be the one
+	 * found by the dense Munkres-Kuhn solver.
+	 */
+	@Test
+	public void testSameTotalCostAsMunkresKuhn() {
+		final Random ran = new Random(1l);
+		for (int t = 0; t < 200; t++) {
+			final int n = 2 + ran.nextInt(40);
+			final double[][] costs = randomCostMatrix(ran, n, 0.6);
+
+			final int[][] dense = new MunkresKuhnAlgorithm().computeAssignments(copy(costs));
+			final int[][] sparse = new SparseHungarianAlgorithm().computeAssignments(SparseCostMatrix.fromFullMatrix(costs, Double.MAX_VALUE));
+
+			assertEquals("All rows should be assigned, ", n, sparse.length);
+			assertEquals("Total assignment cost differs from the dense solver, ", totalCost(costs, dense), totalCost(costs, sparse), 1e-9);
+		}
+	}
+
+	/**
+	 * Dense and sparse inputs must give the same solution.
+	 */
+	@Test
+	public void testDenseAndSparseInput() {
+		final Random ran = new Random(2l);
+		final double[][] costs = randomCostMatrix(ran, 30, 0.5);
+		final int[][] fromDense = new SparseHungarianAlgorithm().computeAssignments(copy(costs));
+		final int[][] fromSparse = new SparseHungarianAlgorithm().computeAssignments(SparseCostMatrix.fromFullMatrix(costs, Double.MAX_VALUE));
+		assertEquals(fromDense.length, fromSparse.length);
+		for (int i = 0; i < fromDense.length; i++) {
+			assertArrayEquals(fromDense[i], fromSparse[i]);
+		}
+	}
+
+	/**
+	 * A row with no possible assignment is left out of the solutions.
+	 */
+	@Test
+	public void testUnassignableRow() {
+		final double[][] costs = new double[][] {
+				{ 1, 2 },
+				{ Double.MAX_VALUE, Double.MAX_VALUE },
+		};
+		final int[][] solutions = new SparseHungarianAlgorithm().computeAssignments(costs);
+		assertEquals(1, solutions.length);
+		assertArrayEquals(new int[] { 0, 0 }, solutions[0]);
+	}
+
+	/*
+	 * UTILS
+	 */
+
+	static double[][] randomCostMatrix(final Random ran, final int n, final double blockedFraction) {
+		final double[][] costs = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				if (i != j && ran.nextDouble() < blockedFraction) {
+					costs[i][j] = Double.MAX_VALUE;
+				} else {
+					// Mix integer costs, to have ties, and real ones
+					costs[i][j] = ran.nextBoolean() ? ran.nextInt(10) : 100 * ran.nextDouble();
+				}
+			}
+		}
+		return costs;
+	}
+
+	static double[][] copy(final double[][] m) {
+		final double[][] c = new double[m.length][];
+		for (int i = 0; i < m.length; i++) {
+			c[i] = m[i].clone();
+		}
+		return c;
+	}
+
+	static double totalCost(final double[][] costs, final int[][] solutions) {
+		double sum = 0;
+		for (int[] solution : solutions) {
+			if (solution.length == 0)
+				continue;
+			sum += costs[solution[0]][solution[1]];
+		}
+		return sum;
+	}
+}
@@ -3406,7 +3406,76 @@ public DenseInstance createInstance(int x, int y, int classValue)
 		
 		return new DenseInstance(1.0, values);
 	}
-	
+
+	/**
+	 * Get the pixel arrays of the features, in the order of the stack. Float
+	 * features are returned without copy; the entries of features of any other
+	 * type are null, and their values must be read through their processor
+	 * (see {@link #setInstanceValues(float[][], int, int, double[])}).
+	 *
+	 * @return array of feature planes (one per slice of the stack)
+	 */
+	public float[][] getFeaturePlanes()
+	{
+		final float[][] planes = new float[ getSize() ][];
+		for (int z=1; z<=getSize(); z++)
+		{
+			final Object pixels = wholeStack.getPixels(z);
+			if( pixels instanceof float[] )
+				planes[z-1] = (float[]) pixels;
+		}
+		return planes;
+	}
+
+	/**
+	 * Create the value buffer of a reusable instance. An instance created with
+	 * <code>new DenseInstance(1.0, buffer)</code> keeps a reference to the buffer,
+	 * so it can be filled again with
+	 * {@link #setInstanceValues(float[][], int, int, double[])} to classify
+	 * another coordinate without any allocation.
+	 *
+	 * @return array with room for all the features and the class value
+	 */
+	public double[] createInstanceBuffer()
+	{
+		final int extra = useNeighbors ? 8 : 0;
+		return new double[ getSize() + 1 + extra ];
+	}
+
+	/**
+	 * Fill an instance buffer with the feature vector of a specific coordinate.
+	 * The class value (last element) is left untouched.
+	 *
+	 * @param planes feature planes, as returned by {@link #getFeaturePlanes()}
+	 * @param x x- axis coordinate
+	 * @param y y- axis coordinate
+	 * @param values instance buffer, as returned by {@link #createInstanceBuffer()}
+	 */
+	public void setInstanceValues(final float[][] planes, final int x, final int y, final double[] values)
+	{
+		final int index = x + y * wholeStack.getWidth();
+		int n = 0;
+		for (int z=0; z<planes.length; z++, n++)
+		{
+			if( null != planes[z] )
+				values[z] = planes[z][index];
+			else
+				values[z] = getProcessor(z+1).getPixelValue(x, y);
+		}
+
+		if(useNeighbors)
+		{
+			for(int i=-1;  i < 2; i++)
+				for(int j = -1; j < 2; j++)
+				{
+					if(i==0 && j==0)
+						continue;
+					values[n] = getPixelMirrorConditions(getProcessor(1), x+i, y+j);
+					n++;
+				}
+		}
+	}
+
 	/**
 	 * Get pixel value from an ImageProcessor with mirror boundary conditions
 	 * @param ip input image
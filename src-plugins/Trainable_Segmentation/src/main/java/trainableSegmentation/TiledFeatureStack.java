@@ -0,0 +1,790 @@
+package trainableSegmentation;
+
+/**
+ *
+ * License: GPL
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License 2
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Feature stack of a large image, computed lazily tile by tile.
+ * <p>
+ * Instead of filtering the whole image with every enabled filter as
+ * {@link FeatureStack#updateFeaturesST()} does, the features of a tile are
+ * computed on demand, one filter at a time, on the tile padded with the halo
+ * that filter needs. Computed tiles are kept in a LRU cache limited by a memory
+ * budget. Tiles evicted from the cache are spilled to a memory-mapped scratch
+ * file, from which they are read back instead of being computed again.
+ * <p>
+ * Tiles are cached per filter, so that changing a parameter (sigmas, membrane
+ * size...) only discards the tiles of the filters that depend on it.
+ * <p>
+ * The features are in the same order as in {@link FeatureStack}, so that
+ * the feature stack of a tile can be used in the place of the feature stack
+ * of the whole image, restricted to the tile. Inside a tile, the features
+ * match the ones of the whole image as long as the filter support fits in
+ * the halo (see {@link #getHalo(int)}); filters with an image-wide support
+ * (Lipschitz, long anisotropic diffusions) differ near tile borders, as in
+ * {@link WekaSegmentation#applyClassifierMT(ImagePlus, int, boolean)}.
+ * Only gray-scale images are supported.
+ *
+ */
+public class TiledFeatureStack
+{
+	/** index used for the original image in the place of a filter index */
+	private static final int ORIGINAL = -1;
+	/** filters computed before the filters that depend on the sigmas, in the order of {@link FeatureStack} */
+	private static final int[] FIRST_FILTERS = new int[]{
+			FeatureStack.ANISOTROPIC_DIFFUSION, FeatureStack.BILATERAL, FeatureStack.LIPSCHITZ,
+			FeatureStack.KUWAHARA, FeatureStack.GABOR };
+	/** filters computed once per sigma, in the order of {@link FeatureStack} */
+	private static final int[] SIGMA_FILTERS = new int[]{
+			FeatureStack.GAUSSIAN, FeatureStack.SOBEL, FeatureStack.HESSIAN, FeatureStack.DOG,
+			FeatureStack.VARIANCE, FeatureStack.MEAN, FeatureStack.MINIMUM, FeatureStack.MAXIMUM,
+			FeatureStack.MEDIAN, FeatureStack.DERIVATIVES, FeatureStack.LAPLACIAN,
+			FeatureStack.STRUCTURE, FeatureStack.ENTROPY };
+	/** filters computed after the filters that depend on the sigmas, in the order of {@link FeatureStack} */
+	private static final int[] LAST_FILTERS = new int[]{
+			FeatureStack.MEMBRANE, FeatureStack.NEIGHBORS };
+	/** default halo of the filters whose support is the whole image (Lipschitz, anisotropic diffusion) */
+	private static final int IMAGE_WIDE_HALO = 64;
+
+	/** original image (32-bit) */
+	private final ImageProcessor originalImage;
+	/** image width */
+	private final int width;
+	/** image height */
+	private final int height;
+	/** tile width and height (in pixels) */
+	private final int tileSize;
+	/** maximum number of bytes of the tiles kept in memory */
+	private final long memoryBudget;
+
+	/** minmum sigma/radius used in the filters */
+	private float minimumSigma = 1;
+	/** maximum sigma/radius used in the filters */
+	private float maximumSigma = 16;
+	/** expected membrane thickness (in pixels) */
+	private int membraneSize = 1;
+	/** size of the patch to use to enhance membranes (in pixels, NxN) */
+	private int membranePatchSize = 19;
+	/** halo added around each tile before filtering, -1 to derive it from the parameters of each filter */
+	private int halo = -1;
+	/** flags of filters to be used */
+	private boolean[] enabledFeatures = new boolean[]{
+			true, true, true, true, true, false, false, false, false, false,
+			false, false, false, false, false, false, false, false, false, false };
+
+	/** parameter signature of each filter, used to find out which tiles are outdated */
+	private final Map<Integer, String> signatures = new HashMap<Integer, String>();
+	/** labels of the features of each filter (known once a tile of the filter is computed) */
+	private final Map<Integer, String[]> labels = new HashMap<Integer, String[]>();
+
+	/** tiles in memory, by key, in access order */
+	private final LinkedHashMap<String, float[][]> cache = new LinkedHashMap<String, float[][]>(16, 0.75f, true);
+	/** number of bytes of the tiles in memory */
+	private long cacheSize = 0;
+
+	/** scratch file where tiles are spilled */
+	private File scratchFile = null;
+	/** scratch file channel */
+	private FileChannel scratch = null;
+	/** position and size of the spilled tiles in the scratch file (offset, number of planes, plane length) */
+	private final Map<String, long[]> spilled = new HashMap<String, long[]>();
+	/** end of the scratch file */
+	private long scratchEnd = 0;
+
+	/**
+	 * Create a tiled feature stack
+	 *
+	 * @param image original image (gray-scale)
+	 * @param tileSize width and height of the tiles (in pixels)
+	 * @param memoryBudget maximum number of bytes of the tiles kept in memory
+	 */
+	public TiledFeatureStack(
+			final ImagePlus image,
+			final int tileSize,
+			final long memoryBudget)
+	{
+		if( image.getType() == ImagePlus.COLOR_RGB )
+			throw new IllegalArgumentException("Tiled feature stacks do not support color images.");
+		this.originalImage = image.getProcessor().duplicate().convertToFloat();
+		this.width = image.getWidth();
+		this.height = image.getHeight();
+		this.tileSize = tileSize;
+		this.memoryBudget = memoryBudget;
+		updateSignatures();
+	}
+
+	/*
+	 * PARAMETERS
+	 */
+
+	/**
+	 * Set list of boolean flags for enabled features. Tiles of filters that
+	 * get disabled are discarded.
+	 * @param enabledFeatures list of boolean flags to enable features
+	 */
+	public synchronized void setEnabledFeatures(boolean[] enabledFeatures)
+	{
+		this.enabledFeatures = enabledFeatures.clone();
+		updateSignatures();
+	}
+
+	/**
+	 * Get the list of enabled features flags
+	 * @return list of boolean flags (true means the feature is selected)
+	 */
+	public boolean[] getEnabledFeatures()
+	{
+		return enabledFeatures.clone();
+	}
+
+	/**
+	 * Set the minimum sigma to use in the filters
+	 * @param minSigma sigma value
+	 */
+	public synchronized void setMinimumSigma(float minSigma)
+	{
+		this.minimumSigma = minSigma;
+		updateSignatures();
+	}
+
+	/**
+	 * Set the maximum sigma to use in the filters
+	 * @param maxSigma sigma value
+	 */
+	public synchronized void setMaximumSigma(float maxSigma)
+	{
+		this.maximumSigma = maxSigma;
+		updateSignatures();
+	}
+
+	/**
+	 * Set the expected membrane thickness
+	 * @param membraneSize membrane thickness
+	 */
+	public synchronized void setMembraneSize(int membraneSize)
+	{
+		this.membraneSize = membraneSize;
+		updateSignatures();
+	}
+
+	/**
+	 * Set the membrane patch size (it must be an odd number)
+	 * @param patchSize membrane patch size
+	 */
+	public synchronized void setMembranePatchSize(int patchSize)
+	{
+		this.membranePatchSize = patchSize;
+		updateSignatures();
+	}
+
+	/**
+	 * Set the number of pixels added around each tile before filtering, for
+	 * all filters. By default, each filter uses the halo its own parameters
+	 * call for (see {@link #getHalo(int)}).
+	 * @param halo halo size (in pixels), -1 to use the default values
+	 */
+	public synchronized void setHalo(int halo)
+	{
+		this.halo = halo;
+		updateSignatures();
+	}
+
+	/**
+	 * Get the largest number of pixels added around each tile before
+	 * filtering, over the enabled filters
+	 * @return halo size (in pixels)
+	 */
+	public synchronized int getHalo()
+	{
+		int max = 0;
+		for(int i = 0; i < enabledFeatures.length; i++)
+			if( enabledFeatures[i] )
+				max = Math.max(max, getHalo(i));
+		return max;
+	}
+
+	/**
+	 * Get the number of pixels added around each tile before computing the
+	 * features of a filter. Unless set with {@link #setHalo(int)}, it covers
+	 * the support of the filter with the current parameters: four times the
+	 * maximum sigma for the filters that depend on the sigmas, the membrane
+	 * patch size for the membrane projections and the Kuwahara filter, and
+	 * the size of the fixed kernels for the bilateral and Gabor filters.
+	 * @param filter filter index (see {@link FeatureStack#availableFeatures})
+	 * @return halo size (in pixels)
+	 */
+	public synchronized int getHalo(int filter)
+	{
+		if( halo >= 0 )
+			return halo;
+		switch( filter )
+		{
+			case ORIGINAL:
+				return 0;
+			case FeatureStack.MEMBRANE:
+			case FeatureStack.KUWAHARA:
+				return membranePatchSize;
+			case FeatureStack.BILATERAL:
+				// spatial radius up to 10
+				return 20;
+			case FeatureStack.GABOR:
+				// kernels up to 25x25
+				return 13;
+			case FeatureStack.LIPSCHITZ:
+			case FeatureStack.ANISOTROPIC_DIFFUSION:
+				return IMAGE_WIDE_HALO;
+			case FeatureStack.NEIGHBORS:
+				return (int) Math.ceil( maximumSigma );
+			case FeatureStack.STRUCTURE:
+				// integration scale up to 3
+				return (int) Math.ceil( 4 * (maximumSigma + 3) );
+			default:
+				return (int) Math.ceil( 4 * maximumSigma );
+		}
+	}
+
+	/*
+	 * GEOMETRY
+	 */
+
+	/**
+	 * Get image width
+	 * @return image width
+	 */
+	public int getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 * Get image height
+	 * @return image height
+	 */
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * Get the tile size
+	 * @return tile width and height (in pixels)
+	 */
+	public int getTileSize()
+	{
+		return tileSize;
+	}
+
+	/**
+	 * Get the number of tiles along the x- axis
+	 * @return number of tile columns
+	 */
+	public int getNumTilesX()
+	{
+		return (width + tileSize - 1) / tileSize;
+	}
+
+	/**
+	 * Get the number of tiles along the y- axis
+	 * @return number of tile rows
+	 */
+	public int getNumTilesY()
+	{
+		return (height + tileSize - 1) / tileSize;
+	}
+
+	/**
+	 * Get the area of the image covered by a tile (tiles on the right and
+	 * bottom borders can be smaller than the tile size)
+	 * @param tileX tile column
+	 * @param tileY tile row
+	 * @return tile rectangle
+	 */
+	public Rectangle getTileRectangle(int tileX, int tileY)
+	{
+		final int x = tileX * tileSize;
+		final int y = tileY * tileSize;
+		return new Rectangle(x, y, Math.min(tileSize, width - x), Math.min(tileSize, height - y));
+	}
+
+	/*
+	 * FEATURES
+	 */
+
+	/**
+	 * Get the number of features. This computes the first tile of the
+	 * enabled filters whose labels are not known yet.
+	 * @return number of features (including the original image)
+	 */
+	public int getSize()
+	{
+		return getStackOrder().size();
+	}
+
+	/**
+	 * Get the labels of the features, in the order of the stack
+	 * @return feature labels (including the original image)
+	 */
+	public ArrayList<String> getSliceLabels()
+	{
+		final ArrayList<String> result = new ArrayList<String>();
+		for(final int[] feature : getStackOrder())
+			result.add(getLabels(feature[0])[feature[1]]);
+		return result;
+	}
+
+	/**
+	 * Get the features of a tile, computing the ones that are neither in
+	 * memory nor in the scratch file.
+	 *
+	 * @param tileX tile column
+	 * @param tileY tile row
+	 * @return feature stack of the tile, or null if the computation was interrupted
+	 */
+	public FeatureStack getTileFeatures(int tileX, int tileY)
+	{
+		final Rectangle r = getTileRectangle(tileX, tileY);
+		final ArrayList<int[]> order = getStackOrder();
+		final Map<Integer, float[][]> tiles = new HashMap<Integer, float[][]>();
+		for(final int[] feature : order)
+		{
+			if( tiles.containsKey(feature[0]) )
+				continue;
+			final float[][] planes = getTile(feature[0], tileX, tileY);
+			if( null == planes )
+				return null;
+			tiles.put(feature[0], planes);
+		}
+		final ImageStack stack = new ImageStack(r.width, r.height);
+		for(final int[] feature : order)
+			stack.addSlice(getLabels(feature[0])[feature[1]],
+					new FloatProcessor(r.width, r.height, tiles.get(feature[0])[feature[1]], null));
+		final FeatureStack features = new FeatureStack(r.width, r.height, false);
+		features.setStack(stack);
+		return features;
+	}
+
+	/**
+	 * Get the planes of the features of one filter in a tile
+	 *
+	 * @param filter filter index (see {@link FeatureStack#availableFeatures})
+	 * @param tileX tile column
+	 * @param tileY tile row
+	 * @return one array per feature of the filter, or null if the computation was interrupted
+	 */
+	public float[][] getTile(int filter, int tileX, int tileY)
+	{
+		final String key;
+		synchronized (this)
+		{
+			key = getKey(filter, tileX, tileY);
+			final float[][] planes = cache.get(key);
+			if( null != planes )
+				return planes;
+			final long[] location = spilled.get(key);
+			if( null != location )
+			{
+				final float[][] read = readSpilled(location);
+				put(key, read);
+				return read;
+			}
+		}
+
+		// Compute outside the lock, so that tiles are computed concurrently
+		final float[][] planes = computeTile(filter, tileX, tileY);
+		if( null == planes )
+			return null;
+		synchronized (this)
+		{
+			// Parameters may have changed meanwhile
+			if( key.equals(getKey(filter, tileX, tileY)) && !cache.containsKey(key) )
+				put(key, planes);
+		}
+		return planes;
+	}
+
+	/**
+	 * Get the number of bytes of the tiles currently in memory
+	 * @return memory used by the cache (in bytes)
+	 */
+	public synchronized long getMemoryUsage()
+	{
+		return cacheSize;
+	}
+
+	/**
+	 * Discard all tiles and delete the scratch file
+	 */
+	public synchronized void dispose()
+	{
+		cache.clear();
+		cacheSize = 0;
+		spilled.clear();
+		scratchEnd = 0;
+		if( null != scratch )
+		{
+			try {
+				scratch.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			scratch = null;
+			scratchFile.delete();
+			scratchFile = null;
+		}
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Get the features in the order of the stack, as pairs of filter index
+	 * and feature index inside the filter. This follows the loops of
+	 * {@link FeatureStack#updateFeaturesST()}: the original image, the
+	 * filters that do not depend on the sigmas, the Sobel and Hessian filters
+	 * without blur, the filters that depend on the sigmas, sigma by sigma,
+	 * and then the membrane projections and the neighbors. All filters but
+	 * the difference of Gaussians yield the same number of features for
+	 * every sigma.
+	 */
+	private ArrayList<int[]> getStackOrder()
+	{
+		final boolean[] enabled;
+		final float minSigma, maxSigma;
+		synchronized (this)
+		{
+			enabled = enabledFeatures.clone();
+			minSigma = minimumSigma;
+			maxSigma = maximumSigma;
+		}
+
+		final ArrayList<int[]> order = new ArrayList<int[]>();
+		addFeatures(order, ORIGINAL, 0, 1);
+		for(final int filter : FIRST_FILTERS)
+			if( isEnabled(enabled, filter) )
+				addFeatures(order, filter, 0, getLabels(filter).length);
+
+		int nSigmas = 0;
+		for (float i = minSigma; i <= maxSigma; i *= 2)
+			nSigmas++;
+		// number of features per sigma and index of the next feature, by filter
+		final int[] perSigma = new int[FeatureStack.availableFeatures.length];
+		final int[] next = new int[FeatureStack.availableFeatures.length];
+		for(final int filter : SIGMA_FILTERS)
+		{
+			if( !isEnabled(enabled, filter) || filter == FeatureStack.DOG )
+				continue;
+			final int size = getLabels(filter).length;
+			if( (filter == FeatureStack.SOBEL || filter == FeatureStack.HESSIAN) && minSigma < 2 )
+			{
+				// no blur first
+				perSigma[filter] = size / (nSigmas + 1);
+				addFeatures(order, filter, 0, perSigma[filter]);
+				next[filter] = perSigma[filter];
+			}
+			else
+				perSigma[filter] = size / Math.max(nSigmas, 1);
+		}
+		for (float i = minSigma; i <= maxSigma; i *= 2)
+			for(final int filter : SIGMA_FILTERS)
+			{
+				if( !isEnabled(enabled, filter) )
+					continue;
+				int count = perSigma[filter];
+				if( filter == FeatureStack.DOG )
+				{
+					count = 0;
+					for (float j = minSigma; j < i; j *= 2)
+						count++;
+				}
+				addFeatures(order, filter, next[filter], count);
+				next[filter] += count;
+			}
+
+		for(final int filter : LAST_FILTERS)
+			if( isEnabled(enabled, filter) )
+				addFeatures(order, filter, 0, getLabels(filter).length);
+		return order;
+	}
+
+	private static boolean isEnabled(final boolean[] enabled, final int filter)
+	{
+		return filter < enabled.length && enabled[filter];
+	}
+
+	private static void addFeatures(final ArrayList<int[]> order, final int filter, final int first, final int count)
+	{
+		for(int i = 0; i < count; i++)
+			order.add(new int[]{ filter, first + i });
+	}
+
+	/**
+	 * Get the labels of the features of a filter, computing its first tile if needed
+	 */
+	private String[] getLabels(final int filter)
+	{
+		synchronized (this)
+		{
+			final String[] filterLabels = labels.get(filter);
+			if( null != filterLabels )
+				return filterLabels;
+		}
+		getTile(filter, 0, 0);
+		synchronized (this)
+		{
+			return labels.get(filter);
+		}
+	}
+
+	private String getKey(final int filter, final int tileX, final int tileY)
+	{
+		return filter + ":" + signatures.get(filter) + ":" + tileX + ":" + tileY;
+	}
+
+	/**
+	 * Compute the features of one filter in a tile
+	 */
+	private float[][] computeTile(final int filter, final int tileX, final int tileY)
+	{
+		final Rectangle r = getTileRectangle(tileX, tileY);
+		if( filter == ORIGINAL )
+		{
+			final ImageProcessor tile;
+			synchronized (originalImage)
+			{
+				originalImage.setRoi(r);
+				tile = originalImage.crop();
+			}
+			synchronized (this)
+			{
+				labels.put(ORIGINAL, new String[]{ "original" });
+			}
+			return new float[][]{ (float[]) tile.getPixels() };
+		}
+
+		final FeatureStack features;
+		final int haloSize;
+		synchronized (this)
+		{
+			haloSize = getHalo(filter);
+			final Rectangle padded = new Rectangle(r.x - haloSize, r.y - haloSize, r.width + 2 * haloSize, r.height + 2 * haloSize)
+											.intersection(new Rectangle(0, 0, width, height));
+			final ImageProcessor crop;
+			synchronized (originalImage)
+			{
+				originalImage.setRoi(padded);
+				crop = originalImage.crop();
+			}
+			features = new FeatureStack(crop);
+			final boolean[] enabled = new boolean[FeatureStack.availableFeatures.length];
+			enabled[filter] = true;
+			features.setEnabledFeatures(enabled);
+			features.setMinimumSigma(minimumSigma);
+			features.setMaximumSigma(maximumSigma);
+			features.setMembraneSize(membraneSize);
+			features.setMembranePatchSize(membranePatchSize);
+			r.translate(-padded.x, -padded.y);
+		}
+
+		try {
+			if( false == features.updateFeaturesST() )
+				return null;
+		} finally {
+			features.shutDownNow();
+		}
+
+		// Skip the original image, and crop the halo out
+		final ImageStack stack = features.getStack();
+		final float[][] planes = new float[stack.getSize() - 1][];
+		final String[] filterLabels = new String[planes.length];
+		for(int i = 0; i < planes.length; i++)
+		{
+			final ImageProcessor ip = stack.getProcessor(i + 2);
+			ip.setRoi(r);
+			planes[i] = (float[]) ip.crop().convertToFloat().getPixels();
+			filterLabels[i] = stack.getSliceLabel(i + 2);
+		}
+		synchronized (this)
+		{
+			labels.put(filter, filterLabels);
+		}
+		return planes;
+	}
+
+	/**
+	 * Put a tile in memory and spill the least recently used tiles if the
+	 * memory budget is exceeded
+	 */
+	private void put(final String key, final float[][] planes)
+	{
+		cache.put(key, planes);
+		cacheSize += sizeOf(planes);
+
+		final Iterator<Map.Entry<String, float[][]>> it = cache.entrySet().iterator();
+		while( cacheSize > memoryBudget && it.hasNext() )
+		{
+			final Map.Entry<String, float[][]> eldest = it.next();
+			if( eldest.getKey().equals(key) )
+				continue;
+			// Tiles never change once computed, so they are written only once
+			if( !spilled.containsKey(eldest.getKey()) )
+				spill(eldest.getKey(), eldest.getValue());
+			cacheSize -= sizeOf(eldest.getValue());
+			it.remove();
+		}
+	}
+
+	/**
+	 * Write a tile at the end of the scratch file
+	 */
+	private void spill(final String key, final float[][] planes)
+	{
+		try {
+			if( null == scratch )
+			{
+				scratchFile = File.createTempFile("features", ".tmp");
+				scratchFile.deleteOnExit();
+				scratch = new RandomAccessFile(scratchFile, "rw").getChannel();
+			}
+			final int planeLength = planes.length == 0 ? 0 : planes[0].length;
+			final long bytes = sizeOf(planes);
+			if( bytes > 0 )
+			{
+				final FloatBuffer buffer = scratch.map(FileChannel.MapMode.READ_WRITE, scratchEnd, bytes)
+						.order(ByteOrder.nativeOrder()).asFloatBuffer();
+				for(final float[] plane : planes)
+					buffer.put(plane);
+			}
+			spilled.put(key, new long[]{ scratchEnd, planes.length, planeLength });
+			scratchEnd += bytes;
+		} catch (IOException e) {
+			// The tile will be computed again when needed
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Read a tile from the scratch file
+	 */
+	private float[][] readSpilled(final long[] location)
+	{
+		final float[][] planes = new float[(int) location[1]][(int) location[2]];
+		if( planes.length == 0 || location[2] == 0 )
+			return planes;
+		try {
+			final FloatBuffer buffer = scratch.map(FileChannel.MapMode.READ_ONLY, location[0], 4 * location[1] * location[2])
+					.order(ByteOrder.nativeOrder()).asFloatBuffer();
+			for(final float[] plane : planes)
+				buffer.get(plane);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read features from the scratch file " + scratchFile, e);
+		}
+		return planes;
+	}
+
+	/**
+	 * Recompute the parameter signature of each filter, and discard the tiles
+	 * of the filters whose signature changed or that are not enabled any more.
+	 * A signature holds only the parameters the filter depends on, which also
+	 * determine its default halo.
+	 */
+	private void updateSignatures()
+	{
+		final String sigmas = minimumSigma + "-" + maximumSigma;
+		final String membrane = membranePatchSize + "-" + membraneSize;
+		// a halo set by the user applies to all filters
+		final String haloSize = halo >= 0 ? "-" + halo : "";
+
+		final Map<Integer, String> previous = new HashMap<Integer, String>(signatures);
+		signatures.clear();
+		signatures.put(ORIGINAL, "");
+		for(int i = 0; i < enabledFeatures.length; i++)
+		{
+			if( !enabledFeatures[i] )
+				continue;
+			final String parameters;
+			switch( i )
+			{
+				case FeatureStack.MEMBRANE:
+					parameters = membrane;
+					break;
+				case FeatureStack.KUWAHARA:
+					parameters = "" + membranePatchSize;
+					break;
+				case FeatureStack.ANISOTROPIC_DIFFUSION:
+					parameters = sigmas + "-" + membraneSize;
+					break;
+				case FeatureStack.BILATERAL:
+				case FeatureStack.LIPSCHITZ:
+				case FeatureStack.GABOR:
+					parameters = "";
+					break;
+				default:
+					parameters = sigmas;
+			}
+			signatures.put(i, parameters + haloSize);
+		}
+
+		for(final Map.Entry<Integer, String> entry : previous.entrySet())
+		{
+			if( entry.getValue().equals(signatures.get(entry.getKey())) )
+				continue;
+			labels.remove(entry.getKey());
+			final String prefix = entry.getKey() + ":";
+			for(final Iterator<Map.Entry<String, float[][]>> it = cache.entrySet().iterator(); it.hasNext(); )
+			{
+				final Map.Entry<String, float[][]> tile = it.next();
+				if( tile.getKey().startsWith(prefix) )
+				{
+					cacheSize -= sizeOf(tile.getValue());
+					it.remove();
+				}
+			}
+			// The space of spilled tiles is only reclaimed by dispose()
+			for(final Iterator<String> it = spilled.keySet().iterator(); it.hasNext(); )
+				if( it.next().startsWith(prefix) )
+					it.remove();
+		}
+	}
+
+	private static long sizeOf(final float[][] planes)
+	{
+		long size = 0;
+		for(final float[] plane : planes)
+			size += 4l * plane.length;
+		return size;
+	}
+}
@@ -111,6 +111,9 @@ public class WekaSegmentation {
 
 	/** maximum number of classes (labels) allowed */
 	public static final int MAX_NUM_CLASSES = 5;
+	/** maximum number of pixels of the pieces of image classified at once by 
+	 * {@link #applyClassifierMT(ImagePlus, int, boolean)} (not counting the padding) */
+	public static final int MAX_PIXELS_PER_PIECE = 1024 * 1024;
 
 	/** array of lists of Rois for each slice (vector index) 
 	 * and each class (arraylist index) of the training image */
@@ -4006,7 +4009,9 @@ public void run()
 	/**
 	 * Apply current classifier to a given image in a complete concurrent way.
 	 * This method is experimental, it divides the image(s) in pieces and that
-	 * can cause artifacts using some filters.
+	 * can cause artifacts using some filters. Each thread computes the features
+	 * of one piece at a time, and pieces are limited to {@link #MAX_PIXELS_PER_PIECE}
+	 * pixels, so the memory used does not depend on the size of the image.
 	 *
 	 * @param imp image (2D single image or stack)
 	 * @param numThreads The number of threads to use. Set to zero for
@@ -4082,6 +4087,8 @@ public ImagePlus applyClassifierMT(
 		// (with this division we may miss one row, 
 		// but it will be added to the last thread)
 		int numOfRows = height * imp.getImageStackSize() / numThreads; 				
+		// Maximum number of rows of each piece of image classified at once
+		final int maxRowsPerPiece = Math.max( 1, MAX_PIXELS_PER_PIECE / width );
 		
 		// set each slice in a thread
 		Future<ArrayList <ImagePlus> > fu[] = new Future [ numThreads ];
@@ -4109,12 +4116,15 @@ public ImagePlus applyClassifierMT(
 			int r = firstRow;
 			int rowsToDo = lastRow - firstRow + 1;
 			
-			while( r < lastRow )
+			while( r <= lastRow )
 			{
 				final int slice = r / height;
 				final int begin = r - slice * height;
 				
-				final int end = (begin + rowsToDo) > height ? height-1 : begin + rowsToDo-1; 
+				// Limit the number of rows so the features of one piece fit
+				// in memory, whatever the size of the image
+				final int end = Math.min( (begin + rowsToDo) > height ? height-1 : begin + rowsToDo-1,
+											begin + maxRowsPerPiece - 1 ); 
 													
 				// Create image
 				ImageProcessor sliceImage = imp.getImageStack().getProcessor(slice+1);
@@ -4339,41 +4349,16 @@ public ImagePlus call()
 										
 				IJ.log("Classifying slice " + slice.getTitle() + "...");
 				
-				for (int x=0; x<width; x++)
-					for(int y=0; y<height; y++)
-					{
-						try{
-
-							if (0 == (x+y*width) % 4000)
-							{
-								if (Thread.currentThread().isInterrupted()) 
-									return null;
-								counter.addAndGet(4000);
-							}
-							
-							final DenseInstance ins = sliceFeatures.createInstance(x, y, 0);
-							ins.setDataset(dataInfo);
-
-							if (probabilityMaps)
-							{							
-								double[] prob = classifier.distributionForInstance( ins );
-								for(int k = 0 ; k < numClasses; k++)
-								{
-									probArray[k][x+y*width] = prob[ k ];
-								}
-							}
-							else
-							{
-								probArray[0][ x+y*width ] = classifier.classifyInstance( ins );
-							}
-
-						}catch(Exception e){
+				try{
+					if (false == classifyPixels(sliceFeatures, dataInfo, 0, numInstances,
+							classifier, counter, probabilityMaps, probArray, 0))
+						return null;
+				}catch(Exception e){
 
-							IJ.showMessage("Could not apply Classifier!");
-							e.printStackTrace();
-							return null;
-						}
-					}		
+					IJ.showMessage("Could not apply Classifier!");
+					e.printStackTrace();
+					return null;
+				}
 				
 				if( probabilityMaps )
 				{
@@ -4448,41 +4433,16 @@ public ArrayList < ImagePlus > call()
 
 					IJ.log("Classifying slice " + image.getTitle() + "...");
 
-					for (int x=0; x<width; x++)
-						for(int y=0; y<height; y++)
-						{
-							try{
-
-								if (0 == (x+y*width) % 4000)
-								{
-									if (Thread.currentThread().isInterrupted()) 
-										return null;
-									counter.addAndGet(4000);
-								}
-
-								final DenseInstance ins = sliceFeatures.createInstance(x, y, 0);
-								ins.setDataset(dataInfo);
-
-								if (probabilityMaps)
-								{							
-									double[] prob = classifier.distributionForInstance( ins );
-									for(int k = 0 ; k < numClasses; k++)
-									{
-										probArray[k][x+y*width] = prob[ k ];
-									}
-								}
-								else
-								{
-									probArray[0][ x+y*width ] = classifier.classifyInstance( ins );
-								}
-
-							}catch(Exception e){
+					try{
+						if (false == classifyPixels(sliceFeatures, dataInfo, 0, numInstances,
+								classifier, counter, probabilityMaps, probArray, 0))
+							return null;
+					}catch(Exception e){
 
-								IJ.showMessage("Could not apply Classifier!");
-								e.printStackTrace();
-								return null;
-							}
-						}		
+						IJ.showMessage("Could not apply Classifier!");
+						e.printStackTrace();
+						return null;
+					}
 
 					if( probabilityMaps )
 					{
@@ -5135,57 +5095,101 @@ public double[][] call(){
 
 				final double[][] classificationResult;
 				
-				final int width = fsa.getWidth();
-				final int height = fsa.getHeight();
-				final int sliceSize = width * height;
+				final int sliceSize = fsa.getWidth() * fsa.getHeight();
 				final int numClasses = dataInfo.numClasses();
 
 				if (probabilityMaps)
 					classificationResult = new double[numClasses][numInstances];
 				else
 					classificationResult = new double[1][numInstances];
-			
-				for (int i=0; i<numInstances; i++)
+
+				// Classify the range slice by slice, reusing the same instance
+				int i = 0;
+				while (i < numInstances)
 				{
+					final int absolutePos = first + i;
+					final int slice = absolutePos / sliceSize;
+					final int localPos = absolutePos - slice * sliceSize;
+					final int n = Math.min(numInstances - i, sliceSize - localPos);
 					try{
-
-						if (0 == i % 4000)
-						{
-							if (Thread.currentThread().isInterrupted()) 
-								return null;
-							counter.addAndGet(4000);
-						}
-
-						final int absolutePos = first + i;
-						final int slice = absolutePos / sliceSize;
-						final int localPos = absolutePos - slice * sliceSize;
-						final int x = localPos % width;
-						final int y = localPos / width;
-						DenseInstance ins = fsa.get( slice ).createInstance(x, y, 0);
-						ins.setDataset(dataInfo);
-						
-						if (probabilityMaps)
-						{							
-							double[] prob = classifier.distributionForInstance( ins );
-							for(int k = 0 ; k < numClasses; k++)
-								classificationResult[k][i] = prob[k];
-						}
-						else
-						{
-							classificationResult[0][i] = classifier.classifyInstance( ins );
-						}
-
+						if (false == classifyPixels(fsa.get( slice ), dataInfo, localPos, n, 
+								classifier, counter, probabilityMaps, classificationResult, i))
+							return null;
 					}catch(Exception e){
 
 						IJ.showMessage("Could not apply Classifier!");
 						e.printStackTrace();
 						return null;
 					}
+					i += n;
 				}
 				return classificationResult;
 			}
 		};
 	}
+
+	/**
+	 * Classify a range of pixels of a feature stack. The feature planes are
+	 * read directly and a single instance is reused for all the pixels, so
+	 * nothing is allocated per pixel.
+	 * 
+	 * @param features feature stack of the image to classify
+	 * @param dataInfo empty set of instances containing the data structure (attributes and classes)
+	 * @param first index of the first pixel to classify (in row-major order)
+	 * @param numPixels number of pixels to classify
+	 * @param classifier current classifier
+	 * @param counter auxiliary counter to be able to update the progress bar
+	 * @param probabilityMaps if true store the probability of each class instead of the class
+	 * @param result arrays to store the classification result (one per class or one in total)
+	 * @param offset position in the result arrays of the first pixel to classify
+	 * @return false if the thread was interrupted
+	 * @throws Exception if the classifier could not be applied
+	 */
+	private static boolean classifyPixels(
+			final FeatureStack features,
+			final Instances dataInfo,
+			final int first,
+			final int numPixels,
+			final AbstractClassifier classifier,
+			final AtomicInteger counter,
+			final boolean probabilityMaps,
+			final double[][] result,
+			final int offset) throws Exception
+	{
+		final int width = features.getWidth();
+		final int numClasses = dataInfo.numClasses();
+		final float[][] planes = features.getFeaturePlanes();
+		// the instance keeps a reference to the buffer, not a copy
+		final double[] values = features.createInstanceBuffer();
+		final DenseInstance ins = new DenseInstance(1.0, values);
+		ins.setDataset(dataInfo);
+
+		for (int i=0; i<numPixels; i++)
+		{
+			if (0 == i % 4000)
+			{
+				if (Thread.currentThread().isInterrupted()) 
+					return false;
+				counter.addAndGet(4000);
+			}
+
+			final int pos = first + i;
+			features.setInstanceValues(planes, pos % width, pos / width, values);
+
+			if (probabilityMaps)
+			{
+				double[] prob = classifier.distributionForInstance( ins );
+				for(int k = 0 ; k < numClasses; k++)
+					result[k][offset + i] = prob[k];
+			}
+			else
+			{
+				result[0][offset + i] = classifier.classifyInstance( ins );
+			}
+		}
+		return true;
+	}
+
 	
 	
 	/**
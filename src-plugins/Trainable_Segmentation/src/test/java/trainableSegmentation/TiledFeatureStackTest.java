@@ -0,0 +1,134 @@
+package trainableSegmentation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.FloatProcessor;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TiledFeatureStackTest
+{
+	private static final int SIZE = 120;
+	private static final int TILE_SIZE = 40;
+	/** distance to the tile borders of the compared pixels */
+	private static final int MARGIN = 4;
+
+	/**
+	 * The features of each tile must be the ones of the whole image, in the
+	 * same order, away from the tile borders.
+	 */
+	@Test
+	public void testTileFeaturesMatchWholeImage()
+	{
+		final ImagePlus image = createImage();
+		final boolean[] enabled = new boolean[FeatureStack.availableFeatures.length];
+		enabled[FeatureStack.GAUSSIAN] = true;
+		enabled[FeatureStack.SOBEL] = true;
+		enabled[FeatureStack.HESSIAN] = true;
+		enabled[FeatureStack.DOG] = true;
+		enabled[FeatureStack.MEMBRANE] = true;
+		enabled[FeatureStack.VARIANCE] = true;
+		enabled[FeatureStack.MEAN] = true;
+		enabled[FeatureStack.KUWAHARA] = true;
+
+		final FeatureStack whole = new FeatureStack(image);
+		whole.setEnabledFeatures(enabled.clone());
+		whole.setMinimumSigma(1);
+		whole.setMaximumSigma(4);
+		whole.updateFeaturesST();
+		final ImageStack wholeStack = whole.getStack();
+
+		final TiledFeatureStack tiled = new TiledFeatureStack(image, TILE_SIZE, 1 << 20);
+		try
+		{
+			tiled.setEnabledFeatures(enabled);
+			tiled.setMinimumSigma(1);
+			tiled.setMaximumSigma(4);
+
+			final ArrayList<String> labels = tiled.getSliceLabels();
+			assertEquals(wholeStack.getSize(), tiled.getSize());
+			for(int i = 0; i < labels.size(); i++)
+				assertEquals(wholeStack.getSliceLabel(i + 1), labels.get(i));
+
+			for(int tileY = 0; tileY < tiled.getNumTilesY(); tileY++)
+				for(int tileX = 0; tileX < tiled.getNumTilesX(); tileX++)
+				{
+					final FeatureStack tile = tiled.getTileFeatures(tileX, tileY);
+					assertNotNull(tile);
+					final Rectangle r = tiled.getTileRectangle(tileX, tileY);
+					final ImageStack tileStack = tile.getStack();
+					assertEquals(wholeStack.getSize(), tileStack.getSize());
+					for(int n = 1; n <= tileStack.getSize(); n++)
+					{
+						assertEquals(wholeStack.getSliceLabel(n), tileStack.getSliceLabel(n));
+						for(int y = MARGIN; y < r.height - MARGIN; y++)
+							for(int x = MARGIN; x < r.width - MARGIN; x++)
+							{
+								final float expected = wholeStack.getProcessor(n).getf(r.x + x, r.y + y);
+								final float actual = tileStack.getProcessor(n).getf(x, y);
+								assertEquals(wholeStack.getSliceLabel(n) + " at " + (r.x + x) + ", " + (r.y + y),
+										expected, actual, 1e-3 * (1 + Math.abs(expected)));
+							}
+					}
+				}
+		}
+		finally
+		{
+			tiled.dispose();
+		}
+	}
+
+	/**
+	 * Changing a parameter must only discard the tiles of the filters that
+	 * depend on it.
+	 */
+	@Test
+	public void testParameterChangeKeepsOtherFilters()
+	{
+		final boolean[] enabled = new boolean[FeatureStack.availableFeatures.length];
+		enabled[FeatureStack.GAUSSIAN] = true;
+		enabled[FeatureStack.MEMBRANE] = true;
+
+		final TiledFeatureStack tiled = new TiledFeatureStack(createImage(), TILE_SIZE, 1 << 24);
+		try
+		{
+			tiled.setEnabledFeatures(enabled);
+			final float[][] gaussian = tiled.getTile(FeatureStack.GAUSSIAN, 1, 1);
+			final float[][] membrane = tiled.getTile(FeatureStack.MEMBRANE, 1, 1);
+
+			tiled.setMembranePatchSize(21);
+			assertEquals(21, tiled.getHalo(FeatureStack.MEMBRANE));
+			assertSame(gaussian, tiled.getTile(FeatureStack.GAUSSIAN, 1, 1));
+			assertNotSame(membrane, tiled.getTile(FeatureStack.MEMBRANE, 1, 1));
+
+			tiled.setMaximumSigma(8);
+			assertNotSame(gaussian, tiled.getTile(FeatureStack.GAUSSIAN, 1, 1));
+		}
+		finally
+		{
+			tiled.dispose();
+		}
+	}
+
+	/**
+	 * Create a textured gray-scale image
+	 */
+	private static ImagePlus createImage()
+	{
+		final Random random = new Random(42);
+		final float[] pixels = new float[SIZE * SIZE];
+		for(int y = 0; y < SIZE; y++)
+			for(int x = 0; x < SIZE; x++)
+				pixels[x + y * SIZE] = (float) (100 + 50 * Math.sin(x / 5.0) * Math.cos(y / 7.0)
+						+ 10 * random.nextGaussian());
+		return new ImagePlus("texture", new FloatProcessor(SIZE, SIZE, pixels, null));
+	}
+}
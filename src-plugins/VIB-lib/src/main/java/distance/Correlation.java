@@ -2,7 +2,7 @@
 
 package distance;
 
-public class Correlation implements PixelPairs {
+public class Correlation implements MergeablePixelPairs {
 
 	private double sumX, sumY, sumXY,
 		sumXSquared, sumYSquared;
@@ -26,6 +26,22 @@ public void add(float v1, float v2) {
 		count++;
 	}
 
+	public MergeablePixelPairs newAccumulator() {
+		Correlation result = new Correlation();
+		result.reset();
+		return result;
+	}
+
+	public void merge(MergeablePixelPairs other) {
+		Correlation o = (Correlation)other;
+		sumX += o.sumX;
+		sumY += o.sumY;
+		sumXY += o.sumXY;
+		sumXSquared += o.sumXSquared;
+		sumYSquared += o.sumYSquared;
+		count += o.count;
+	}
+
 	public float correlation() {
 
 		float result = 0;
@@ -2,9 +2,9 @@
 
 package distance;
 
-public class Euclidean implements PixelPairs {
+public class Euclidean implements MergeablePixelPairs {
 
-	private float sum;
+	private double sum;
 	private long count;
 	private static boolean verbose = !true;
 
@@ -21,6 +21,18 @@ public void add(float v1, float v2) {
 		count++;
 	}
 
+	public MergeablePixelPairs newAccumulator() {
+		Euclidean result = new Euclidean();
+		result.reset();
+		return result;
+	}
+
+	public void merge(MergeablePixelPairs other) {
+		Euclidean o = (Euclidean)other;
+		sum += o.sum;
+		count += o.count;
+	}
+
 	public float distance() {
 		if (verbose) {
 			System.err.println("calculated sum: " + Math.sqrt(sum/count));
@@ -0,0 +1,18 @@
+/* -*- mode: java; c-basic-offset: 8; indent-tabs-mode: t; tab-width: 8 -*- */
+
+package distance;
+
+/*
+ * A measure whose pixel pairs can be added to several accumulators
+ * (e.g. one per thread) and then combined: adding some pairs to a
+ * newAccumulator() and merging that into this measure must give the
+ * same distance as adding them to this measure directly.
+ */
+public interface MergeablePixelPairs extends PixelPairs {
+	// returns an empty measure with the same parameters as this one
+	public MergeablePixelPairs newAccumulator();
+
+	// adds the pairs that were added to other; other must have
+	// been returned by newAccumulator()
+	public void merge(MergeablePixelPairs other);
+}
@@ -31,7 +31,7 @@ Just to remind me, the diagram from MacKay (Figure 8.1) showing the
 
 */
 
-public class MutualInformation implements PixelPairs {
+public class MutualInformation implements MergeablePixelPairs {
         private float minimum;
         private float maximum;
 	private float width;
@@ -79,6 +79,20 @@ public void add(float v1, float v2) {
 		count++;
 	}
 
+	public MergeablePixelPairs newAccumulator() {
+		MutualInformation result =
+			new MutualInformation(minimum, maximum, bins);
+		result.reset();
+		return result;
+	}
+
+	public void merge(MergeablePixelPairs other) {
+		MutualInformation o = (MutualInformation)other;
+		for (int i = 0; i < joint.length; i++)
+			joint[i] += o.joint[i];
+		count += o.count;
+	}
+
 	public float getEntropy1() {
 		return h1;
 	}
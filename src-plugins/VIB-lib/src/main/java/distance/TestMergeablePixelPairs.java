@@ -0,0 +1,64 @@
+/* -*- mode: java; c-basic-offset: 8; indent-tabs-mode: t; tab-width: 8 -*- */
+
+/* Check that merging partial measures gives the same distance as
+   adding all the pairs to one measure */
+
+package distance;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+public class TestMergeablePixelPairs extends BaseOfTests {
+
+	/* Adds the MacKay example and the uniform values to whole, and
+	   the same pairs split between three accumulators to merged */
+
+	public void checkMerge(MergeablePixelPairs whole,
+			       MergeablePixelPairs merged) {
+		whole.reset();
+		addMacKayExample(whole);
+		addUniform8Bit(whole);
+
+		merged.reset();
+		MergeablePixelPairs a = merged.newAccumulator();
+		MergeablePixelPairs b = merged.newAccumulator();
+		MergeablePixelPairs c = merged.newAccumulator();
+		addMacKayExample(a);
+		for(int i=0;i<128;++i)
+			for(int j=0;j<256;++j)
+				b.add(i,j);
+		for(int i=128;i<256;++i)
+			for(int j=0;j<256;++j)
+				c.add(i,j);
+		merged.merge(a);
+		merged.merge(b);
+		merged.merge(c);
+
+		assertEquals( whole.distance(), merged.distance(), 0.00001 );
+	}
+
+	@Test
+	public void testMerge() {
+		checkMerge( new Correlation(), new Correlation() );
+		checkMerge( new Euclidean(), new Euclidean() );
+		checkMerge( new MutualInformation(), new MutualInformation() );
+		checkMerge( new Thresholded(100), new Thresholded(100) );
+		checkMerge( new TwoValues(2, 3), new TwoValues(2, 3) );
+	}
+
+	/* The accumulators must not share the counts of the measure
+	   they were made from */
+
+	@Test
+	public void testNewAccumulatorIsEmpty() {
+		MutualInformation m = new MutualInformation();
+		m.reset();
+		addMacKayExample(m);
+		MergeablePixelPairs a = m.newAccumulator();
+		addMacKayExample(a);
+		MutualInformation expected = new MutualInformation();
+		expected.reset();
+		addMacKayExample(expected);
+		assertEquals( expected.distance(), a.distance(), 0.0000001 );
+	}
+}
@@ -3,7 +3,7 @@
 /*
  * Treat pixels as different when one is below threshold, and the other above.
  */
-public class Thresholded implements PixelPairs {
+public class Thresholded implements MergeablePixelPairs {
 	private float threshold;
 	private long count, total;
 
@@ -24,6 +24,19 @@ public void add(float v1, float v2) {
 			count++;
 	}
 
+	public MergeablePixelPairs newAccumulator() {
+		Thresholded result = new Thresholded(0);
+		result.threshold = threshold;
+		result.reset();
+		return result;
+	}
+
+	public void merge(MergeablePixelPairs other) {
+		Thresholded o = (Thresholded)other;
+		count += o.count;
+		total += o.total;
+	}
+
 	public float distance() {
 		return count * 255 / (float)total;
 	}
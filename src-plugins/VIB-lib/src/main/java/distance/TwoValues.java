@@ -5,7 +5,7 @@
  * image. Distance is maximal when one and only one of the pair is the desired
  * material.
  */
-public class TwoValues implements PixelPairs {
+public class TwoValues implements MergeablePixelPairs {
 	/* the values of the materials may be different in the two images */
 	public float material1, material2;
 	private long count, total;
@@ -27,6 +27,20 @@ public void add(float v1, float v2) {
 			count++;
 	}
 
+	public MergeablePixelPairs newAccumulator() {
+		TwoValues result = new TwoValues(0, 0);
+		result.material1 = material1;
+		result.material2 = material2;
+		result.reset();
+		return result;
+	}
+
+	public void merge(MergeablePixelPairs other) {
+		TwoValues o = (TwoValues)other;
+		count += o.count;
+		total += o.total;
+	}
+
 	public float distance() {
 		return count * 255 / (float)total;
 	}
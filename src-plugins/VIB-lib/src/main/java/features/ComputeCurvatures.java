@@ -365,6 +365,45 @@ public void cancelGaussianGeneration( ) {
         cancelGeneration = true;
     }
 
+    /* Returns the Gaussian of 3D data, or null if it hasn't been
+       generated (yet) or the data is 2D. */
+
+    public FloatArray3D getGaussian3D( ) {
+        return gaussianGenerated && _3D ? (FloatArray3D)data : null;
+    }
+
+    private volatile boolean gaussianGenerated = false;
+
+    private HessianEigenvalueCache eigenvalueCache;
+
+    /* Returns a cache of the eigenvalues of the Hessian for the
+       Gaussian of this object's sigma and the given separations,
+       which is shared by all callers asking for the same separations.
+       It uses at most a quarter of the maximum heap.  Returns null if
+       there's no 3D Gaussian yet. */
+
+    public synchronized HessianEigenvalueCache getEigenvalueCache( float sepX, float sepY, float sepZ ) {
+        if( eigenvalueCache != null && eigenvalueCache.hasSeparation( sepX, sepY, sepZ ) )
+            return eigenvalueCache;
+        if( getGaussian3D() == null )
+            return null;
+        if( eigenvalueCache != null )
+            eigenvalueCache.cancel();
+        eigenvalueCache = new HessianEigenvalueCache( this, sepX, sepY, sepZ,
+                                                      Runtime.getRuntime().maxMemory() / 4 );
+        return eigenvalueCache;
+    }
+
+    /* Stops filling the cache of eigenvalues and drops it. */
+
+    public synchronized void releaseEigenvalueCache( ) {
+        if( eigenvalueCache == null )
+            return;
+        eigenvalueCache.cancel();
+        eigenvalueCache.clear();
+        eigenvalueCache = null;
+    }
+
     /* The 2 methods below are useful for using this class
        programmatically (i.e. not as a plugin) and creating the
        Gaussian in a separate thread. */
@@ -438,6 +477,8 @@ public void setup( ) {
                         FloatArrayToImagePlus((FloatArray2D)data, "Gauss image", 0, 255).show();
                 }
 
+            gaussianGenerated = true;
+
         } catch( OutOfMemoryError e ) {
 
             long requiredMiB = ( imp.getWidth() *
@@ -0,0 +1,239 @@
+/* -*- mode: java; c-basic-offset: 8; indent-tabs-mode: t; tab-width: 8 -*- */
+
+package features;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* Caches the eigenvalues of the Hessian at each voxel of the Gaussian
+   computed by a ComputeCurvatures object (and hence for one sigma).
+
+   The eigenvalues are computed a tile at a time, either when a voxel
+   in the tile is first asked for or by fillInBackground(), and are
+   stored as floats - three for each voxel, ordered on their absolute
+   size, as hessianEigenvaluesAtPoint3D( x, y, z, true, ..., false,
+   true, ... ) would return them, or NaN where the eigenvalues are
+   complex.  Once the tiles take up more than the given number of
+   bytes, the least recently used ones are dropped.
+
+   The methods may be called from several threads at once. */
+
+public class HessianEigenvalueCache {
+
+	public static final int TILE_SIZE = 16;
+
+	private static final int TILE_VOXELS = TILE_SIZE * TILE_SIZE * TILE_SIZE;
+	private static final long TILE_BYTES = 3L * 4 * TILE_VOXELS;
+
+	private final ComputeCurvatures hessian;
+	private final float sepX, sepY, sepZ;
+	private final int width, height, depth;
+	private final int tilesX, tilesY, tilesZ;
+	private final int maxTiles;
+
+	private final LinkedHashMap< Long, float[] > tiles;
+
+	/* The tile that was used last, to save the lookup in the map
+	   for the common case of consecutive voxels in one tile: */
+
+	private static final class Tile {
+		final long key;
+		final float [] values;
+		Tile( long key, float [] values ) {
+			this.key = key;
+			this.values = values;
+		}
+	}
+
+	private volatile Tile last;
+
+	private volatile boolean cancelled = false;
+
+	/* The Gaussian of hessian must have been generated (by its run()
+	   or setup() method) for 3D data. */
+
+	public HessianEigenvalueCache( ComputeCurvatures hessian,
+				       float sepX,
+				       float sepY,
+				       float sepZ,
+				       long maxBytes ) {
+		this.hessian = hessian;
+		this.sepX = sepX;
+		this.sepY = sepY;
+		this.sepZ = sepZ;
+		ComputeCurvatures.FloatArray3D data = hessian.getGaussian3D();
+		if( data == null )
+			throw new IllegalArgumentException( "There is no 3D Gaussian to compute the Hessian from" );
+		width = data.width;
+		height = data.height;
+		depth = data.depth;
+		tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+		tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+		tilesZ = (depth + TILE_SIZE - 1) / TILE_SIZE;
+		maxTiles = (int)Math.max( 1, Math.min( Integer.MAX_VALUE, maxBytes / TILE_BYTES ) );
+		tiles = new LinkedHashMap< Long, float[] >( 16, 0.75f, true ) {
+			@Override
+			protected boolean removeEldestEntry( Map.Entry< Long, float[] > eldest ) {
+				return size() > maxTiles;
+			}
+		};
+	}
+
+	public double getSigma( ) {
+		return hessian.sigma;
+	}
+
+	public boolean hasSeparation( float sepX, float sepY, float sepZ ) {
+		return this.sepX == sepX && this.sepY == sepY && this.sepZ == sepZ;
+	}
+
+	/* Returns the number of bytes that the eigenvalues of the whole
+	   image would take up in a cache: */
+
+	public long getBytesForWholeImage( ) {
+		return TILE_BYTES * tilesX * tilesY * tilesZ;
+	}
+
+	/* Puts the eigenvalues at (x, y, z) into result, which must have
+	   at least 3 elements.  Returns false if they are complex. */
+
+	public boolean getEigenvalues( int x, int y, int z, float [] result ) {
+		float [] values = getTile( x / TILE_SIZE, y / TILE_SIZE, z / TILE_SIZE );
+		int i = 3 * indexInTile( x, y, z );
+		if( Float.isNaN( values[i] ) )
+			return false;
+		result[0] = values[i];
+		result[1] = values[i + 1];
+		result[2] = values[i + 2];
+		return true;
+	}
+
+	/* The measure of tubeness used by TubenessProcessor: */
+
+	public float getTubeness( int x, int y, int z ) {
+		float [] values = getTile( x / TILE_SIZE, y / TILE_SIZE, z / TILE_SIZE );
+		int i = 3 * indexInTile( x, y, z );
+		float e1 = values[i + 1];
+		float e2 = values[i + 2];
+		// This is false for NaN, i.e. complex eigenvalues, too
+		if( e1 < 0 && e2 < 0 )
+			return (float)Math.sqrt( e1 * e2 );
+		return 0;
+	}
+
+	private static int indexInTile( int x, int y, int z ) {
+		return ((z % TILE_SIZE) * TILE_SIZE + (y % TILE_SIZE)) * TILE_SIZE + (x % TILE_SIZE);
+	}
+
+	private long key( int tx, int ty, int tz ) {
+		return ((long)tz * tilesY + ty) * tilesX + tx;
+	}
+
+	private float [] getTile( int tx, int ty, int tz ) {
+		long key = key( tx, ty, tz );
+		Tile t = last;
+		if( t != null && t.key == key )
+			return t.values;
+		float [] values;
+		synchronized( tiles ) {
+			values = tiles.get( key );
+		}
+		if( values == null ) {
+			values = computeTile( tx, ty, tz );
+			synchronized( tiles ) {
+				// Another thread may have been quicker:
+				float [] existing = tiles.get( key );
+				if( existing != null )
+					values = existing;
+				else
+					tiles.put( key, values );
+			}
+		}
+		last = new Tile( key, values );
+		return values;
+	}
+
+	private float [] computeTile( int tx, int ty, int tz ) {
+		float [] values = new float[3 * TILE_VOXELS];
+		double [] evalues = new double[3];
+		int x0 = tx * TILE_SIZE, y0 = ty * TILE_SIZE, z0 = tz * TILE_SIZE;
+		int x1 = Math.min( x0 + TILE_SIZE, width );
+		int y1 = Math.min( y0 + TILE_SIZE, height );
+		int z1 = Math.min( z0 + TILE_SIZE, depth );
+		for( int z = z0; z < z1; ++z )
+			for( int y = y0; y < y1; ++y ) {
+				int i = 3 * indexInTile( x0, y, z );
+				for( int x = x0; x < x1; ++x, i += 3 ) {
+					boolean real = hessian.hessianEigenvaluesAtPoint3D( x, y, z,
+											    true,
+											    evalues,
+											    false,
+											    true,
+											    sepX,
+											    sepY,
+											    sepZ );
+					if( real ) {
+						values[i] = (float)evalues[0];
+						values[i + 1] = (float)evalues[1];
+						values[i + 2] = (float)evalues[2];
+					} else {
+						values[i] = values[i + 1] = values[i + 2] = Float.NaN;
+					}
+				}
+			}
+		return values;
+	}
+
+	/* Computes the tiles that are not in the cache yet with nThreads
+	   low priority threads, stopping when the cache is full or
+	   cancel() is called.  Returns immediately. */
+
+	public void fillInBackground( int nThreads ) {
+		cancelled = false;
+		final int nTiles = tilesX * tilesY * tilesZ;
+		final AtomicInteger ai = new AtomicInteger( 0 );
+		for( int ithread = 0; ithread < nThreads; ++ithread ) {
+			Thread thread = new Thread( "HessianEigenvalueCache" ) {
+				@Override
+				public void run( ) {
+					for( int t = ai.getAndIncrement(); t < nTiles; t = ai.getAndIncrement() ) {
+						if( cancelled )
+							return;
+						int tx = t % tilesX;
+						int ty = (t / tilesX) % tilesY;
+						int tz = t / (tilesX * tilesY);
+						long key = key( tx, ty, tz );
+						synchronized( tiles ) {
+							if( tiles.size() >= maxTiles )
+								return;
+							if( tiles.containsKey( key ) )
+								continue;
+						}
+						float [] values = computeTile( tx, ty, tz );
+						synchronized( tiles ) {
+							if( ! tiles.containsKey( key ) )
+								tiles.put( key, values );
+						}
+					}
+				}
+			};
+			thread.setPriority( Thread.MIN_PRIORITY );
+			thread.setDaemon( true );
+			thread.start();
+		}
+	}
+
+	/* Stops the threads started by fillInBackground(): */
+
+	public void cancel( ) {
+		cancelled = true;
+	}
+
+	public void clear( ) {
+		synchronized( tiles ) {
+			tiles.clear();
+		}
+		last = null;
+	}
+}
@@ -6,6 +6,7 @@
 import ij.ImagePlus;
 import ij.ImageStack;
 import ij.measure.Calibration;
+import distance.MergeablePixelPairs;
 import distance.PixelPairs;
 import java.util.StringTokenizer;
 import math3d.Point3d;
@@ -145,6 +146,9 @@ public TransformedImage resample(int factor) {
 		TransformedImage res = new TransformedImage(resOrig, resTran);
 		res.transformation = transformation;
 		res.measure = measure;
+		res.threads = threads;
+		res.samplingFraction = samplingFraction;
+		res.samplingThreshold = samplingThreshold;
 		res.x0 = x0 / factor;
 		res.y0 = y0 / factor;
 		res.z0 = z0 / factor;
@@ -237,27 +241,153 @@ public Iterator iterator(boolean showProgress,
 	// the bounding box for the distance calculation
 	int x0, y0, z0, x1, y1, z1;
 
+	/*
+	 * The number of threads getDistance() uses when the measure is
+	 * a MergeablePixelPairs.  Each thread gets a slab of planes of the
+	 * bounding box, and the partial measures are merged in the order
+	 * of the slabs, so the result only depends on the number of
+	 * threads.
+	 */
+	public int threads = Runtime.getRuntime().availableProcessors();
+
+	// below this many voxels, starting threads costs more than it saves
+	private static final int MIN_VOXELS_PER_THREAD = 1 << 15;
+
+	/*
+	 * If less than 1, getDistance() only looks at this fraction of
+	 * the voxels in the bounding box.  The same voxels are used each
+	 * time (they are picked by a hash of their coordinates), so the
+	 * distance is still a smooth function of the transformation.
+	 */
+	private float samplingFraction = 1;
+	private int samplingThreshold = Integer.MAX_VALUE;
+
+	public void setSamplingFraction(float fraction) {
+		if (fraction <= 0 || fraction > 1)
+			throw new IllegalArgumentException("The sampling fraction must be in (0, 1]");
+		samplingFraction = fraction;
+		samplingThreshold = fraction == 1 ? Integer.MAX_VALUE :
+			(int)(fraction * Integer.MAX_VALUE);
+	}
+
+	public float getSamplingFraction() {
+		return samplingFraction;
+	}
+
+	private static boolean isSampled(int i, int j, int k, int threshold) {
+		int h = i * 73856093 ^ j * 19349663 ^ k * 83492791;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return (h & 0x7fffffff) < threshold;
+	}
+
 	public float getDistance() {
 		measure.reset();
-		Iterator iter = new Iterator(false, x0, y0, z0, x1, y1, z1);
-		while (iter.next() != null) {
-			float v1 = -1;
-			switch(imageType) {
-			case ImagePlus.GRAY8:
-                        case ImagePlus.COLOR_256:
-				v1 = orig.getNoInterpol(iter.i, iter.j, iter.k);
-                                break;
-			case ImagePlus.GRAY16:
-				v1 = orig.getNoInterpolShort(iter.i, iter.j, iter.k);
-                                break;
-                        }
-			float v2 = (float)transform.interpol.get(iter.x,
-								 iter.y, iter.z);
-			measure.add(v1, v2);
+		int nThreads = Math.min(threads, z1 - z0);
+		long voxels = (long)(x1 - x0) * (y1 - y0) * (z1 - z0);
+		nThreads = (int)Math.min(nThreads,
+				voxels / MIN_VOXELS_PER_THREAD);
+		/* MaxLikelihoodByte keeps state between calls to get() */
+		if (nThreads < 2 || !(measure instanceof MergeablePixelPairs) ||
+				transform.interpol instanceof
+				InterpolatedImage.MaxLikelihoodByte) {
+			addPixelPairs(measure, matrix, z0, z1);
+			return measure.distance();
+		}
+
+		final MergeablePixelPairs m = (MergeablePixelPairs)measure;
+		final MergeablePixelPairs[] partial =
+			new MergeablePixelPairs[nThreads];
+		final Throwable[] exception = new Throwable[1];
+		Thread[] thread = new Thread[nThreads];
+		for (int t = 0; t < nThreads; t++) {
+			final int index = t;
+			final int zStart = z0 + (z1 - z0) * t / nThreads;
+			final int zEnd = z0 + (z1 - z0) * (t + 1) / nThreads;
+			partial[t] = m.newAccumulator();
+			// FastMatrix.apply() stores its result in the matrix
+			final FastMatrix threadMatrix = new FastMatrix(matrix);
+			thread[t] = new Thread() {
+				public void run() {
+					try {
+						addPixelPairs(partial[index],
+							threadMatrix,
+							zStart, zEnd);
+					} catch (Throwable e) {
+						synchronized (exception) {
+							exception[0] = e;
+						}
+					}
+				}
+			};
+			thread[t].start();
 		}
+		try {
+			for (int t = 0; t < nThreads; t++)
+				thread[t].join();
+		} catch (InterruptedException e) {
+			for (int t = 0; t < nThreads; t++)
+				thread[t].interrupt();
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while " +
+					"calculating the distance", e);
+		}
+		if (exception[0] != null)
+			throw new RuntimeException(exception[0]);
+		for (int t = 0; t < nThreads; t++)
+			m.merge(partial[t]);
 		return measure.distance();
 	}
 
+	/*
+	 * Adds the pixel pairs of the planes zStart <= k < zEnd of the
+	 * bounding box to pairs.  This visits the voxels in the same order
+	 * and calculates their coordinates in the same way as Iterator.
+	 */
+	private void addPixelPairs(PixelPairs pairs, FastMatrix m,
+			int zStart, int zEnd) {
+		boolean isIdentity = m.isIdentity();
+		boolean sample = samplingThreshold < Integer.MAX_VALUE;
+		int threshold = samplingThreshold;
+		double x = 0, y = 0, z = 0;
+		Point3d start = null, stop = null;
+		for (int k = zStart; k < zEnd; k++)
+			for (int j = y0; j < y1; j++) {
+				if (!isIdentity) {
+					m.apply(0, j, k);
+					start = m.getResult();
+					m.apply(x1, j, k);
+					stop = m.getResult().minus(start);
+				}
+				for (int i = x0; i < x1; i++) {
+					if (sample && !isSampled(i, j, k, threshold))
+						continue;
+					if (isIdentity) {
+						x = i; y = j; z = k;
+					} else {
+						x = start.x + stop.x * i / x1;
+						y = start.y + stop.y * i / x1;
+						z = start.z + stop.z * i / x1;
+					}
+					float v1 = -1;
+					switch(imageType) {
+					case ImagePlus.GRAY8:
+					case ImagePlus.COLOR_256:
+						v1 = orig.getNoInterpol(i, j, k);
+						break;
+					case ImagePlus.GRAY16:
+						v1 = orig.getNoInterpolShort(i, j, k);
+						break;
+					}
+					float v2 = (float)transform.interpol.get(x, y, z);
+					pairs.add(v1, v2);
+				}
+			}
+	}
+
 	public ImagePlus getTransformed() {
 		InterpolatedImage result = orig.cloneDimensionsOnly();
 
@@ -11,9 +11,12 @@
 import java.io.Reader;
 
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
 
+import java.security.CodeSource;
+
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -21,11 +24,31 @@
 import java.util.Map;
 import java.util.Set;
 
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
 public class FijiClassLoader extends URLClassLoader {
 
 	List<ClassLoader> fallBacks;
 	Map<String, String> classMap;
 
+	/*
+	 * Where the classes are, so that findClass() need not search the
+	 * class path: the classes of the .jar files, and of the .jar files in
+	 * their manifests' Class-Path, are taken from the PluginIndex, the
+	 * directories are asked directly. The position of each .jar file and
+	 * directory on the class path decides which one wins, as in
+	 * URLClassLoader. Classes that are not in the index are searched for
+	 * as usual. As soon as a URL is added that is neither a .jar file nor
+	 * a directory, the class path is always searched as usual.
+	 */
+	protected boolean useIndex = true;
+	protected Map<String, File> classIndex = new HashMap<String, File>();
+	protected Map<File, Integer> positions = new HashMap<File, Integer>();
+	protected List<File> directories = new ArrayList<File>();
+	protected Map<File, JarFile> jarFiles = new HashMap<File, JarFile>();
+
 	public FijiClassLoader() {
 		super(new URL[0], getDefaultParent());
 		fallBacks = new ArrayList<ClassLoader>();
@@ -60,6 +83,7 @@ public FijiClassLoader(boolean initDefaults) {
 				getNewerJars(classPath, updatePlugins, jars, false);
 				for (File file : classPath)
 					addFile(file);
+				PluginIndex.getInstance().save();
 			}
 			else
 				addClassMap(System.getProperty("jnlp_class_map"));
@@ -160,9 +184,56 @@ else if (file.getName().endsWith(".jar")) {
 
 	protected void addFile(File file) {
 		try {
-			addURL(file.toURI().toURL());
+			super.addURL(file.toURI().toURL());
 		} catch (MalformedURLException e) {
 			IJ.log("FijiClassLoader: " + e);
+			return;
+		}
+		addToIndex(file);
+	}
+
+	@Override
+	protected void addURL(URL url) {
+		synchronized (this) {
+			useIndex = false;
+		}
+		super.addURL(url);
+	}
+
+	protected synchronized void addToIndex(File file) {
+		if (!useIndex)
+			return;
+		file = file.getAbsoluteFile();
+		// URLClassLoader ignores URLs that are on the class path already
+		if (positions.containsKey(file))
+			return;
+		positions.put(file, positions.size());
+		if (file.isDirectory()) {
+			directories.add(file);
+			return;
+		}
+		try {
+			PluginIndex.Entry entry = PluginIndex.getInstance().get(file);
+			// the first .jar file on the class path wins, as in URLClassLoader
+			for (String className : entry.classNames)
+				if (!classIndex.containsKey(className))
+					classIndex.put(className, file);
+			// URLClassLoader searches the Class-Path right after the .jar file
+			URL base = file.toURI().toURL();
+			for (String path : entry.classPath) {
+				URL url = new URL(base, path);
+				if (!url.getProtocol().equals("file")) {
+					useIndex = false;
+					return;
+				}
+				File element = new File(url.toURI());
+				if (url.getPath().endsWith("/") ? element.isDirectory() : element.isFile())
+					addToIndex(element);
+			}
+		} catch (IOException e) {
+			useIndex = false;
+		} catch (URISyntaxException e) {
+			useIndex = false;
 		}
 	}
 
@@ -233,7 +304,9 @@ public synchronized Class loadClass(String name, boolean resolve,
 		}
 		String path = name.replace('.', '/') + ".class";
 		try {
-			InputStream input = getResourceAsStream(path);
+			// with the index, findClass() already looked everywhere
+			InputStream input = forceReload || !useIndex ?
+				getResourceAsStream(path) : null;
 
 			if (input == null && classMap != null && classMap.containsKey(name)) try {
 				String jar = classMap.get(name);
@@ -266,6 +339,63 @@ public synchronized Class loadClass(String name, boolean resolve,
 		return super.loadClass(name, resolve);
 	}
 
+	@Override
+	protected synchronized Class<?> findClass(String name)
+			throws ClassNotFoundException {
+		if (!useIndex)
+			return super.findClass(name);
+		String path = name.replace('.', '/') + ".class";
+		File file = classIndex.get(name);
+		int position = file == null ? Integer.MAX_VALUE : positions.get(file);
+		// only the directories before the .jar file can override it
+		for (File directory : directories) {
+			if (positions.get(directory) > position)
+				break;
+			if (new File(directory, path).exists())
+				return super.findClass(name);
+		}
+		if (file == null)
+			// e.g. added to a .jar file after it was indexed
+			return super.findClass(name);
+		try {
+			return defineClass(name, path, file);
+		} catch (IOException e) {
+			// the .jar file changed since it was indexed
+			return super.findClass(name);
+		}
+	}
+
+	protected Class<?> defineClass(String name, String path, File file)
+			throws IOException {
+		JarFile jar = jarFiles.get(file);
+		if (jar == null) {
+			jar = new JarFile(file);
+			jarFiles.put(file, jar);
+		}
+		JarEntry entry = jar.getJarEntry(path);
+		if (entry == null)
+			throw new IOException(path + " not found in " + file);
+		InputStream input = jar.getInputStream(entry);
+		byte[] buffer = readStream(input);
+		input.close();
+
+		URL url = file.toURI().toURL();
+		int dot = name.lastIndexOf('.');
+		if (dot > 0) {
+			String packageName = name.substring(0, dot);
+			if (getPackage(packageName) == null) {
+				Manifest manifest = jar.getManifest();
+				if (manifest != null)
+					definePackage(packageName, manifest, url);
+				else
+					definePackage(packageName, null, null, null, null, null, null, null);
+			}
+		}
+		// the signers are only known after the entry was read
+		CodeSource codeSource = new CodeSource(url, entry.getCodeSigners());
+		return defineClass(name, buffer, 0, buffer.length, codeSource);
+	}
+
 	static byte[] readStream(InputStream input) throws IOException {
 		byte[] buffer = new byte[1024];
 		int offset = 0, len = 0;
@@ -0,0 +1,279 @@
+package fiji;
+
+import ij.IJ;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import java.util.zip.CRC32;
+
+/**
+ * A persistent index of the contents of .jar files
+ *
+ * For every .jar file, the index remembers which classes it contains, what
+ * its plugins.config says and which Class-Path its manifest has, together with the size and modification time of the
+ * file. Only .jar files that were changed since they were indexed need to be
+ * opened again. The index is stored with a checksum, and discarded as a whole
+ * when the checksum does not match.
+ *
+ * The index is stored in $HOME/.imagej/plugin-index by default. The system
+ * property <i>fiji.plugin.index</i> can point to another file instead, or be
+ * set to <i>none</i> to keep the index in memory only.
+ */
+public class PluginIndex {
+	protected final static int MAGIC = 0x46504932; // "FPI2"
+
+	/**
+	 * What the index knows about a single .jar file
+	 */
+	public static class Entry {
+		public final long lastModified, length;
+		/** the contents of the plugins.config, or null if there is none */
+		public final String pluginsConfig;
+		/** the names of all classes, in the order of the .jar file */
+		public final String[] classNames;
+		/** the relative URLs of the Class-Path in the manifest, if any */
+		public final String[] classPath;
+
+		public Entry(long lastModified, long length, String pluginsConfig, String[] classNames, String[] classPath) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.pluginsConfig = pluginsConfig;
+			this.classNames = classNames;
+			this.classPath = classPath;
+		}
+	}
+
+	private static PluginIndex instance;
+
+	protected File file;
+	protected Map<String, Entry> entries = new HashMap<String, Entry>();
+	protected boolean dirty;
+
+	/**
+	 * Get the index shared by all class loaders and plugin installers
+	 */
+	public static synchronized PluginIndex getInstance() {
+		if (instance == null) {
+			String path = System.getProperty("fiji.plugin.index");
+			if (path == null)
+				instance = new PluginIndex(new File(System.getProperty("user.home"), ".imagej" + File.separator + "plugin-index"));
+			else if (path.equals("") || path.equals("none"))
+				instance = new PluginIndex(null);
+			else
+				instance = new PluginIndex(new File(path));
+		}
+		return instance;
+	}
+
+	/**
+	 * Construct an index and read it from a file
+	 *
+	 * @param file the file holding the index, or null if it is not to be stored
+	 */
+	public PluginIndex(File file) {
+		this.file = file;
+		if (file != null && file.exists()) try {
+			read();
+		} catch (IOException e) {
+			// an index that was cut off or written by another version
+			if (IJ.debugMode)
+				IJ.log("Ignoring the plugin index " + file + ": " + e);
+			entries.clear();
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Get the contents of a .jar file, opening it only if it changed since it was indexed
+	 *
+	 * @param jarFile the .jar file
+	 * @return what the .jar file contains
+	 */
+	public synchronized Entry get(File jarFile) throws IOException {
+		String key = jarFile.getAbsolutePath();
+		long lastModified = jarFile.lastModified(), length = jarFile.length();
+		Entry entry = entries.get(key);
+		if (entry != null && entry.lastModified == lastModified && entry.length == length)
+			return entry;
+
+		entry = scan(jarFile, lastModified, length);
+		entries.put(key, entry);
+		dirty = true;
+		return entry;
+	}
+
+	protected static Entry scan(File jarFile, long lastModified, long length) throws IOException {
+		List<String> classNames = new ArrayList<String>();
+		String pluginsConfig = null;
+		String[] classPath = new String[0];
+		JarFile jar = new JarFile(jarFile);
+		try {
+			Manifest manifest = jar.getManifest();
+			if (manifest != null) {
+				String value = manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+				if (value != null && !value.trim().equals(""))
+					classPath = value.trim().split("\\s+");
+			}
+			Enumeration<JarEntry> iter = jar.entries();
+			while (iter.hasMoreElements()) {
+				JarEntry entry = iter.nextElement();
+				String name = entry.getName();
+				if (name.endsWith(".class"))
+					classNames.add(name.substring(0, name.length() - 6).replace('/', '.'));
+				else if (pluginsConfig == null && name.endsWith("plugins.config"))
+					pluginsConfig = readString(jar.getInputStream(entry));
+			}
+		} finally {
+			jar.close();
+		}
+		return new Entry(lastModified, length, pluginsConfig, classNames.toArray(new String[classNames.size()]), classPath);
+	}
+
+	/* plugins.config is read with the platform's encoding, as User_Plugins always did */
+	protected static String readString(InputStream in) throws IOException {
+		Reader reader = new InputStreamReader(in);
+		StringBuilder builder = new StringBuilder();
+		char[] buffer = new char[8192];
+		for (;;) {
+			int count = reader.read(buffer);
+			if (count < 0)
+				break;
+			builder.append(buffer, 0, count);
+		}
+		reader.close();
+		return builder.toString();
+	}
+
+	/**
+	 * Write the index if anything changed since it was read
+	 *
+	 * Entries of .jar files that no longer exist are dropped. The index is
+	 * written to a temporary file first, so that other Fiji instances never
+	 * see a half-written index.
+	 */
+	public synchronized void save() {
+		if (!dirty || file == null)
+			return;
+
+		Iterator<String> iter = entries.keySet().iterator();
+		while (iter.hasNext())
+			if (!new File(iter.next()).exists())
+				iter.remove();
+
+		File tmp = null;
+		try {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(buffer);
+			out.writeInt(MAGIC);
+			out.writeInt(entries.size());
+			for (Map.Entry<String, Entry> pair : entries.entrySet()) {
+				Entry entry = pair.getValue();
+				out.writeUTF(pair.getKey());
+				out.writeLong(entry.lastModified);
+				out.writeLong(entry.length);
+				out.writeBoolean(entry.pluginsConfig != null);
+				if (entry.pluginsConfig != null) {
+					byte[] bytes = entry.pluginsConfig.getBytes("UTF-8");
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				}
+				out.writeInt(entry.classNames.length);
+				for (String className : entry.classNames)
+					out.writeUTF(className);
+				out.writeInt(entry.classPath.length);
+				for (String url : entry.classPath)
+					out.writeUTF(url);
+			}
+			CRC32 crc = new CRC32();
+			crc.update(buffer.toByteArray());
+			out.writeLong(crc.getValue());
+			out.close();
+
+			File dir = file.getAbsoluteFile().getParentFile();
+			if (!dir.isDirectory() && !dir.mkdirs())
+				throw new IOException("Could not make " + dir);
+			tmp = File.createTempFile("plugin-index-", ".tmp", dir);
+			FileOutputStream fileOut = new FileOutputStream(tmp);
+			try {
+				buffer.writeTo(fileOut);
+			} finally {
+				fileOut.close();
+			}
+			// Windows cannot rename onto an existing file
+			if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file)))
+				throw new IOException("Could not rename " + tmp + " to " + file);
+			tmp = null;
+			dirty = false;
+		} catch (IOException e) {
+			if (IJ.debugMode)
+				IJ.log("Could not write the plugin index " + file + ": " + e);
+		} finally {
+			if (tmp != null)
+				tmp.delete();
+		}
+	}
+
+	protected void read() throws IOException {
+		byte[] bytes = new byte[(int)file.length()];
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			in.readFully(bytes);
+		} finally {
+			in.close();
+		}
+
+		if (bytes.length < 16)
+			throw new IOException("too short");
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length - 8);
+		in = new DataInputStream(new ByteArrayInputStream(bytes));
+		in.skipBytes(bytes.length - 8);
+		if (in.readLong() != crc.getValue())
+			throw new IOException("checksum mismatch");
+
+		in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8));
+		if (in.readInt() != MAGIC)
+			throw new IOException("not a plugin index");
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			String path = in.readUTF();
+			long lastModified = in.readLong();
+			long length = in.readLong();
+			String pluginsConfig = null;
+			if (in.readBoolean()) {
+				byte[] config = new byte[in.readInt()];
+				in.readFully(config);
+				pluginsConfig = new String(config, "UTF-8");
+			}
+			String[] classNames = new String[in.readInt()];
+			for (int j = 0; j < classNames.length; j++)
+				classNames[j] = in.readUTF();
+			String[] classPath = new String[in.readInt()];
+			for (int j = 0; j < classPath.length; j++)
+				classPath[j] = in.readUTF();
+			entries.put(path, new Entry(lastModified, length, pluginsConfig, classNames, classPath));
+		}
+	}
+}
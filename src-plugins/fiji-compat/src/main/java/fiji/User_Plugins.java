@@ -18,19 +18,17 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 
 import java.lang.reflect.Field;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-
 /**
  * A class to find user plugins, i.e. plugins not inside Fiji.app/plugins/
  *
@@ -105,6 +103,7 @@ public void run(String arg) {
 
 		installScripts();
 		installPlugins(path, "", menuPath);
+		PluginIndex.getInstance().save();
 		if (IJ.getInstance() != null) {
 			Menu help = Menus.getMenuBar().getHelpMenu();
 			for (int i = help.getItemCount() - 1; i >= 0; i--) {
@@ -228,26 +227,21 @@ else if (name.endsWith(".jar")) try {
 	 * file names have underscores , putting the menu items into the menu
 	 * specified by a menu path.
 	 *
+	 * The contents of the .jar file are taken from the {@link PluginIndex},
+	 * so the file is only opened if it changed since it was indexed.
+	 *
 	 * @param jarFile the .jar file
 	 * @param menuPath the menu into which the discovered plugins are put
 	 */
 	public List getJarPluginList(File jarFile, String menuPath)
 			throws IOException {
+		PluginIndex.Entry entry = PluginIndex.getInstance().get(jarFile);
+		if (entry.pluginsConfig != null)
+			return parsePluginsConfig(new StringReader(entry.pluginsConfig), menuPath);
 		List result = new ArrayList();
-		JarFile jar = new JarFile(jarFile);
-		Enumeration entries = jar.entries();
-		while (entries.hasMoreElements()) {
-			JarEntry entry = (JarEntry)entries.nextElement();
-			String name = entry.getName();
-			if (name.endsWith("plugins.config"))
-				return parsePluginsConfig(jar
-					.getInputStream(entry), menuPath);
+		for (String name : entry.classNames) {
 			if (name.indexOf('_') < 0 || name.indexOf('$') >= 0)
 				continue;
-			if (name.endsWith(".class"))
-				name = name.substring(0, name.length() - 6).replace('/', '.');
-			else
-				continue;
 			String[] item = new String[3];
 			item[0] = menuPath;
 			item[1] = makeLabel(name);
@@ -259,9 +253,13 @@ public List getJarPluginList(File jarFile, String menuPath)
 
 	protected List parsePluginsConfig(InputStream in, String menuPath)
 			throws IOException {
+		return parsePluginsConfig(new InputStreamReader(in), menuPath);
+	}
+
+	protected List parsePluginsConfig(Reader in, String menuPath)
+			throws IOException {
 		List result = new ArrayList();
-		BufferedReader reader =
-			new BufferedReader(new InputStreamReader(in));
+		BufferedReader reader = new BufferedReader(in);
 		String line;
 		while ((line = reader.readLine()) != null) {
 			if (line.startsWith("#"))
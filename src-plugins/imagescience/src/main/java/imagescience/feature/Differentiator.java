@@ -10,6 +10,7 @@
 import imagescience.utility.ImageScience;
 import imagescience.utility.Messenger;
 import imagescience.utility.Progressor;
+import imagescience.utility.Threader;
 import imagescience.utility.Timer;
 
 /** Computes Gaussian derivatives of images. */
@@ -80,19 +81,24 @@ public Image run(final Image image, final double scale, final int xorder, final
 			logstatus(info(xorder)+" in x-dimension...");
 			final double[] kernel = kernel(xscale,xorder,dims.x);
 			final int klenm1 = kernel.length - 1;
-			final double[] ain = new double[dims.x + 2*klenm1];
-			final double[] aout = new double[dims.x];
-			final Coordinates coords = new Coordinates();
 			deriv.axes(Axes.X);
-			for (coords.c=0; coords.c<dims.c; ++coords.c)
-				for (coords.t=0; coords.t<dims.t; ++coords.t)
-					for (coords.z=0; coords.z<dims.z; ++coords.z)
-						for (coords.y=0; coords.y<dims.y; ++coords.y) {
-							coords.x = -klenm1; deriv.get(coords,ain);
-							convolve(ain,aout,kernel);
-							coords.x = 0; deriv.set(coords,aout);
-							progressor.step();
-						}
+			threader.lines(dims.c*dims.t*dims.z*dims.y, new Threader.Lines() {
+				public void run(final int begin, final int end) {
+					final double[] ain = new double[dims.x + 2*klenm1];
+					final double[] aout = new double[dims.x];
+					final Coordinates coords = new Coordinates();
+					for (int line=begin; line<end; ++line) {
+						coords.y = line % dims.y;
+						coords.z = (line/dims.y) % dims.z;
+						coords.t = (line/(dims.y*dims.z)) % dims.t;
+						coords.c = line/(dims.y*dims.z*dims.t);
+						coords.x = -klenm1; deriv.get(coords,ain);
+						convolve(ain,aout,kernel);
+						coords.x = 0; deriv.set(coords,aout);
+						progressor.step();
+					}
+				}
+			});
 		}
 		
 		// Differentiation in y-dimension:
@@ -109,19 +115,24 @@ public Image run(final Image image, final double scale, final int xorder, final
 			logstatus(info(yorder)+" in y-dimension...");
 			final double[] kernel = kernel(yscale,yorder,dims.y);
 			final int klenm1 = kernel.length - 1;
-			final double[] ain = new double[dims.y + 2*klenm1];
-			final double[] aout = new double[dims.y];
-			final Coordinates coords = new Coordinates();
 			deriv.axes(Axes.Y);
-			for (coords.c=0; coords.c<dims.c; ++coords.c)
-				for (coords.t=0; coords.t<dims.t; ++coords.t)
-					for (coords.z=0; coords.z<dims.z; ++coords.z)
-						for (coords.x=0; coords.x<dims.x; ++coords.x) {
-							coords.y = -klenm1; deriv.get(coords,ain);
-							convolve(ain,aout,kernel);
-							coords.y = 0; deriv.set(coords,aout);
-							progressor.step();
-						}
+			threader.lines(dims.c*dims.t*dims.z*dims.x, new Threader.Lines() {
+				public void run(final int begin, final int end) {
+					final double[] ain = new double[dims.y + 2*klenm1];
+					final double[] aout = new double[dims.y];
+					final Coordinates coords = new Coordinates();
+					for (int line=begin; line<end; ++line) {
+						coords.x = line % dims.x;
+						coords.z = (line/dims.x) % dims.z;
+						coords.t = (line/(dims.x*dims.z)) % dims.t;
+						coords.c = line/(dims.x*dims.z*dims.t);
+						coords.y = -klenm1; deriv.get(coords,ain);
+						convolve(ain,aout,kernel);
+						coords.y = 0; deriv.set(coords,aout);
+						progressor.step();
+					}
+				}
+			});
 		}
 		
 		// Differentiation in z-dimension:
@@ -138,13 +149,16 @@ public Image run(final Image image, final double scale, final int xorder, final
 			logstatus(info(zorder)+" in z-dimension...");
 			final double[] kernel = kernel(zscale,zorder,dims.z);
 			final int klenm1 = kernel.length - 1;
-			final double[] ain = new double[dims.z + 2*klenm1];
-			final double[] aout = new double[dims.z];
-			final Coordinates coords = new Coordinates();
 			deriv.axes(Axes.Z);
-			for (coords.c=0; coords.c<dims.c; ++coords.c)
-				for (coords.t=0; coords.t<dims.t; ++coords.t)
-					for (coords.y=0; coords.y<dims.y; ++coords.y) {
+			threader.lines(dims.c*dims.t*dims.y, new Threader.Lines() {
+				public void run(final int begin, final int end) {
+					final double[] ain = new double[dims.z + 2*klenm1];
+					final double[] aout = new double[dims.z];
+					final Coordinates coords = new Coordinates();
+					for (int line=begin; line<end; ++line) {
+						coords.y = line % dims.y;
+						coords.t = (line/dims.y) % dims.t;
+						coords.c = line/(dims.y*dims.t);
 						for (coords.x=0; coords.x<dims.x; ++coords.x) {
 							coords.z = -klenm1; deriv.get(coords,ain);
 							convolve(ain,aout,kernel);
@@ -152,6 +166,8 @@ public Image run(final Image image, final double scale, final int xorder, final
 						}
 						progressor.step(dims.z);
 					}
+				}
+			});
 		}
 		
 		messenger.status("");
@@ -350,4 +366,7 @@ private void logstatus(final String s) {
 	/** The object used for progress displaying. */
 	public final Progressor progressor = new Progressor();
 	
+	/** The object used for multi-threading. Each dimension is processed one line at a time, with the lines distributed over the number of threads indicated by this object. */
+	public final Threader threader = new Threader();
+	
 }
@@ -11,6 +11,7 @@
 import imagescience.utility.ImageScience;
 import imagescience.utility.Messenger;
 import imagescience.utility.Progressor;
+import imagescience.utility.Threader;
 import imagescience.utility.Timer;
 
 /** Detects edges in images. */
@@ -62,6 +63,7 @@ public Image run(final Image image, final double scale, final boolean nonmaxsup)
 		
 		differentiator.messenger.log(messenger.log());
 		differentiator.progressor.parent(progressor);
+		differentiator.threader.parent(threader);
 		
 		// Detect edges:
 		if (dims.z == 1) { // 2D case
@@ -79,22 +81,28 @@ public Image run(final Image image, final double scale, final boolean nonmaxsup)
 			logstatus("Computing gradient magnitude");
 			progressor.range(pls[pl],pls[++pl]);
 			progressor.steps(dims.c*dims.t*dims.y);
-			edgeImage = nonmaxsup ? new FloatImage(dims) : Ix;
-			Ix.axes(Axes.X); Iy.axes(Axes.X); edgeImage.axes(Axes.X);
-			final double[] aIx = new double[dims.x];
-			final double[] aIy = new double[dims.x];
-			final Coordinates coords = new Coordinates();
+			final Image magImage = nonmaxsup ? new FloatImage(dims) : Ix;
+			edgeImage = magImage;
+			Ix.axes(Axes.X); Iy.axes(Axes.X); magImage.axes(Axes.X);
 			
 			progressor.start();
-			for (coords.c=0; coords.c<dims.c; ++coords.c)
-				for (coords.t=0; coords.t<dims.t; ++coords.t)
-					for (coords.y=0; coords.y<dims.y; ++coords.y) {
+			threader.lines(dims.c*dims.t*dims.y, new Threader.Lines() {
+				public void run(final int begin, final int end) {
+					final double[] aIx = new double[dims.x];
+					final double[] aIy = new double[dims.x];
+					final Coordinates coords = new Coordinates();
+					for (int line=begin; line<end; ++line) {
+						coords.y = line % dims.y;
+						coords.t = (line/dims.y) % dims.t;
+						coords.c = line/(dims.t*dims.y);
 						Ix.get(coords,aIx); Iy.get(coords,aIy);
 						for (int x=0; x<dims.x; ++x)
 							aIx[x] = Math.sqrt(aIx[x]*aIx[x] + aIy[x]*aIy[x]);
-						edgeImage.set(coords,aIx);
+						magImage.set(coords,aIx);
 						progressor.step();
 					}
+				}
+			});
 			progressor.stop();
 			
 			// Apply non-maxima suppression if requested (using mirror-boundary conditions and linear interpolation):
@@ -103,9 +111,12 @@ public Image run(final Image image, final double scale, final boolean nonmaxsup)
 				progressor.steps(dims.c*dims.t*dims.y);
 				progressor.range(pls[pl],pls[++pl]);
 				final Image supImage = Ix;
+				final double[] aIx = new double[dims.x];
+				final double[] aIy = new double[dims.x];
 				final double[][] gm = new double[3][dims.x+2];
+				final Coordinates coords = new Coordinates();
 				final Coordinates cgm = new Coordinates();
-				cgm.x = -1; coords.reset();
+				cgm.x = -1;
 				
 				progressor.start();
 				if (dims.y == 1) {
@@ -169,24 +180,30 @@ public Image run(final Image image, final double scale, final boolean nonmaxsup)
 			logstatus("Computing gradient magnitude");
 			progressor.steps(dims.c*dims.t*dims.z*dims.y);
 			progressor.range(pls[pl],pls[++pl]);
-			edgeImage = nonmaxsup ? new FloatImage(dims) : Ix;
-			Ix.axes(Axes.X); Iy.axes(Axes.X); Iz.axes(Axes.X); edgeImage.axes(Axes.X);
-			final double[] aIx = new double[dims.x];
-			final double[] aIy = new double[dims.x];
-			final double[] aIz = new double[dims.x];
-			final Coordinates coords = new Coordinates();
+			final Image magImage = nonmaxsup ? new FloatImage(dims) : Ix;
+			edgeImage = magImage;
+			Ix.axes(Axes.X); Iy.axes(Axes.X); Iz.axes(Axes.X); magImage.axes(Axes.X);
 			
 			progressor.start();
-			for (coords.c=0; coords.c<dims.c; ++coords.c)
-				for (coords.t=0; coords.t<dims.t; ++coords.t)
-					for (coords.z=0; coords.z<dims.z; ++coords.z)
-						for (coords.y=0; coords.y<dims.y; ++coords.y) {
-							Ix.get(coords,aIx); Iy.get(coords,aIy); Iz.get(coords,aIz);
-							for (int x=0; x<dims.x; ++x)
-							aIx[x] = Math.sqrt(aIx[x]*aIx[x] + aIy[x]*aIy[x] + aIz[x]*aIz[x]);
-							edgeImage.set(coords,aIx);
-							progressor.step();
-						}
+			threader.lines(dims.c*dims.t*dims.z*dims.y, new Threader.Lines() {
+				public void run(final int begin, final int end) {
+					final double[] aIx = new double[dims.x];
+					final double[] aIy = new double[dims.x];
+					final double[] aIz = new double[dims.x];
+					final Coordinates coords = new Coordinates();
+					for (int line=begin; line<end; ++line) {
+						coords.y = line % dims.y;
+						coords.z = (line/dims.y) % dims.z;
+						coords.t = (line/(dims.z*dims.y)) % dims.t;
+						coords.c = line/(dims.t*dims.z*dims.y);
+						Ix.get(coords,aIx); Iy.get(coords,aIy); Iz.get(coords,aIz);
+						for (int x=0; x<dims.x; ++x)
+						aIx[x] = Math.sqrt(aIx[x]*aIx[x] + aIy[x]*aIy[x] + aIz[x]*aIz[x]);
+						magImage.set(coords,aIx);
+						progressor.step();
+					}
+				}
+			});
 			progressor.stop();
 			
 			// Apply non-maxima suppression if requested (using mirror-boundary conditions and linear interpolation):
@@ -203,8 +220,9 @@ public Image run(final Image image, final double scale, final boolean nonmaxsup)
 				final double[][] aaIx = new double[dims.y][dims.x];
 				final double[][] aaIy = new double[dims.y][dims.x];
 				final double[][] aaIz = new double[dims.y][dims.x];
+				final Coordinates coords = new Coordinates();
 				final Coordinates cgm = new Coordinates();
-				cgm.y = cgm.x = -1; coords.reset();
+				cgm.y = cgm.x = -1;
 				final int dimszm1 = dims.z - 1;
 				double[][] atmp = null;
 				
@@ -427,6 +445,9 @@ private void logstatus(final String s) {
 	/** The object used for progress displaying. */
 	public final Progressor progressor = new Progressor();
 	
+	/** The object used for multi-threading. It is also set as the parent of the {@code Threader} of {@link #differentiator}, so that the same number of threads is used for computing the derivatives. */
+	public final Threader threader = new Threader();
+	
 	/** The object used for image differentiation. */
 	public final Differentiator differentiator = new Differentiator();
 	
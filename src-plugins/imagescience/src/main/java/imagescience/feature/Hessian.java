@@ -9,6 +9,7 @@
 import imagescience.utility.ImageScience;
 import imagescience.utility.Messenger;
 import imagescience.utility.Progressor;
+import imagescience.utility.Threader;
 import imagescience.utility.Timer;
 import java.util.Vector;
 
@@ -68,6 +69,7 @@ public Vector<Image> run(final Image image, final double scale, final boolean ab
 		
 		differentiator.messenger.log(messenger.log());
 		differentiator.progressor.parent(progressor);
+		differentiator.threader.parent(threader);
 		
 		// Compute Hessian matrix and eigenimages:
 		if (dims.z == 1) { // 2D case
@@ -87,17 +89,20 @@ public Vector<Image> run(final Image image, final double scale, final boolean ab
 			progressor.steps(dims.c*dims.t*dims.y);
 			progressor.range(pls[pl],pls[++pl]);
 			Hxx.axes(Axes.X); Hxy.axes(Axes.X); Hyy.axes(Axes.X);
-			final double[] ahxx = new double[dims.x];
-			final double[] ahxy = new double[dims.x];
-			final double[] ahyy = new double[dims.x];
-			final Coordinates coords = new Coordinates();
 			
 			progressor.start();
 			if (absolute) {
 				messenger.log("Comparing and storing absolute eigenvalues");
-				for (coords.c=0; coords.c<dims.c; ++coords.c)
-					for (coords.t=0; coords.t<dims.t; ++coords.t)
-						for (coords.y=0; coords.y<dims.y; ++coords.y) {
+				threader.lines(dims.c*dims.t*dims.y, new Threader.Lines() {
+					public void run(final int begin, final int end) {
+						final double[] ahxx = new double[dims.x];
+						final double[] ahxy = new double[dims.x];
+						final double[] ahyy = new double[dims.x];
+						final Coordinates coords = new Coordinates();
+						for (int line=begin; line<end; ++line) {
+							coords.y = line % dims.y;
+							coords.t = (line/dims.y) % dims.t;
+							coords.c = line/(dims.t*dims.y);
 							Hxx.get(coords,ahxx);
 							Hxy.get(coords,ahxy);
 							Hyy.get(coords,ahyy);
@@ -125,11 +130,20 @@ public Vector<Image> run(final Image image, final double scale, final boolean ab
 							Hyy.set(coords,ahyy);
 							progressor.step();
 						}
+					}
+				});
 			} else {
 				messenger.log("Comparing and storing actual eigenvalues");
-				for (coords.c=0; coords.c<dims.c; ++coords.c)
-					for (coords.t=0; coords.t<dims.t; ++coords.t)
-						for (coords.y=0; coords.y<dims.y; ++coords.y) {
+				threader.lines(dims.c*dims.t*dims.y, new Threader.Lines() {
+					public void run(final int begin, final int end) {
+						final double[] ahxx = new double[dims.x];
+						final double[] ahxy = new double[dims.x];
+						final double[] ahyy = new double[dims.x];
+						final Coordinates coords = new Coordinates();
+						for (int line=begin; line<end; ++line) {
+							coords.y = line % dims.y;
+							coords.t = (line/dims.y) % dims.t;
+							coords.c = line/(dims.t*dims.y);
 							Hxx.get(coords,ahxx);
 							Hxy.get(coords,ahxy);
 							Hyy.get(coords,ahyy);
@@ -157,6 +171,8 @@ public Vector<Image> run(final Image image, final double scale, final boolean ab
 							Hyy.set(coords,ahyy);
 							progressor.step();
 						}
+					}
+				});
 			}
 			progressor.stop();
 			
@@ -194,115 +210,132 @@ public Vector<Image> run(final Image image, final double scale, final boolean ab
 			progressor.range(pls[pl],pls[++pl]);
 			Hxx.axes(Axes.X); Hxy.axes(Axes.X); Hxz.axes(Axes.X);
 			Hyy.axes(Axes.X); Hyz.axes(Axes.X); Hzz.axes(Axes.X);
-			final double[] ahxx = new double[dims.x];
-			final double[] ahxy = new double[dims.x];
-			final double[] ahxz = new double[dims.x];
-			final double[] ahyy = new double[dims.x];
-			final double[] ahyz = new double[dims.x];
-			final double[] ahzz = new double[dims.x];
-			final Coordinates coords = new Coordinates();
 			
 			progressor.start();
 			if (absolute) {
 				messenger.log("Comparing and storing absolute eigenvalues");
-				for (coords.c=0; coords.c<dims.c; ++coords.c)
-					for (coords.t=0; coords.t<dims.t; ++coords.t)
-						for (coords.z=0; coords.z<dims.z; ++coords.z)
-							for (coords.y=0; coords.y<dims.y; ++coords.y) {
-								Hxx.get(coords,ahxx);
-								Hxy.get(coords,ahxy);
-								Hxz.get(coords,ahxz);
-								Hyy.get(coords,ahyy);
-								Hyz.get(coords,ahyz);
-								Hzz.get(coords,ahzz);
-								for (int x=0; x<dims.x; ++x) {
-									final double fhxx = ahxx[x];
-									final double fhxy = ahxy[x];
-									final double fhxz = ahxz[x];
-									final double fhyy = ahyy[x];
-									final double fhyz = ahyz[x];
-									final double fhzz = ahzz[x];
-									final double a = -(fhxx + fhyy + fhzz);
-									final double b = fhxx*fhyy + fhxx*fhzz + fhyy*fhzz - fhxy*fhxy - fhxz*fhxz - fhyz*fhyz;
-									final double c = fhxx*(fhyz*fhyz - fhyy*fhzz) + fhyy*fhxz*fhxz + fhzz*fhxy*fhxy - 2*fhxy*fhxz*fhyz;
-									final double q = (a*a - 3*b)/9;
-									final double r = (a*a*a - 4.5*a*b + 13.5*c)/27;
-									final double sqrtq = (q > 0) ? Math.sqrt(q) : 0;
-									final double sqrtq3 = sqrtq*sqrtq*sqrtq;
-									double absh1, absh2, absh3;
-									if (sqrtq3 == 0) {
-										absh1 = 0;
-										absh2 = 0;
-										absh3 = 0;
-									} else {
-										final double rsqq3 = r/sqrtq3;
-										final double angle = (rsqq3*rsqq3 <= 1) ? Math.acos(rsqq3) : Math.acos(rsqq3 < 0 ? -1 : 1);
-										absh1 = Math.abs(-2*sqrtq*Math.cos(angle/3) - a/3);
-										absh2 = Math.abs(-2*sqrtq*Math.cos((angle + TWOPI)/3) - a/3);
-										absh3 = Math.abs(-2*sqrtq*Math.cos((angle - TWOPI)/3) - a/3);
-									}
-									if (absh2 < absh3) { final double tmp = absh2; absh2 = absh3; absh3 = tmp; }
-									if (absh1 < absh2) { final double tmp1 = absh1; absh1 = absh2; absh2 = tmp1;
-									if (absh2 < absh3) { final double tmp2 = absh2; absh2 = absh3; absh3 = tmp2; }}
-									ahxx[x] = absh1;
-									ahyy[x] = absh2;
-									ahzz[x] = absh3;
+				threader.lines(dims.c*dims.t*dims.z*dims.y, new Threader.Lines() {
+					public void run(final int begin, final int end) {
+						final double[] ahxx = new double[dims.x];
+						final double[] ahxy = new double[dims.x];
+						final double[] ahxz = new double[dims.x];
+						final double[] ahyy = new double[dims.x];
+						final double[] ahyz = new double[dims.x];
+						final double[] ahzz = new double[dims.x];
+						final Coordinates coords = new Coordinates();
+						for (int line=begin; line<end; ++line) {
+							coords.y = line % dims.y;
+							coords.z = (line/dims.y) % dims.z;
+							coords.t = (line/(dims.z*dims.y)) % dims.t;
+							coords.c = line/(dims.t*dims.z*dims.y);
+							Hxx.get(coords,ahxx);
+							Hxy.get(coords,ahxy);
+							Hxz.get(coords,ahxz);
+							Hyy.get(coords,ahyy);
+							Hyz.get(coords,ahyz);
+							Hzz.get(coords,ahzz);
+							for (int x=0; x<dims.x; ++x) {
+								final double fhxx = ahxx[x];
+								final double fhxy = ahxy[x];
+								final double fhxz = ahxz[x];
+								final double fhyy = ahyy[x];
+								final double fhyz = ahyz[x];
+								final double fhzz = ahzz[x];
+								final double a = -(fhxx + fhyy + fhzz);
+								final double b = fhxx*fhyy + fhxx*fhzz + fhyy*fhzz - fhxy*fhxy - fhxz*fhxz - fhyz*fhyz;
+								final double c = fhxx*(fhyz*fhyz - fhyy*fhzz) + fhyy*fhxz*fhxz + fhzz*fhxy*fhxy - 2*fhxy*fhxz*fhyz;
+								final double q = (a*a - 3*b)/9;
+								final double r = (a*a*a - 4.5*a*b + 13.5*c)/27;
+								final double sqrtq = (q > 0) ? Math.sqrt(q) : 0;
+								final double sqrtq3 = sqrtq*sqrtq*sqrtq;
+								double absh1, absh2, absh3;
+								if (sqrtq3 == 0) {
+									absh1 = 0;
+									absh2 = 0;
+									absh3 = 0;
+								} else {
+									final double rsqq3 = r/sqrtq3;
+									final double angle = (rsqq3*rsqq3 <= 1) ? Math.acos(rsqq3) : Math.acos(rsqq3 < 0 ? -1 : 1);
+									absh1 = Math.abs(-2*sqrtq*Math.cos(angle/3) - a/3);
+									absh2 = Math.abs(-2*sqrtq*Math.cos((angle + TWOPI)/3) - a/3);
+									absh3 = Math.abs(-2*sqrtq*Math.cos((angle - TWOPI)/3) - a/3);
 								}
-								Hxx.set(coords,ahxx);
-								Hyy.set(coords,ahyy);
-								Hzz.set(coords,ahzz);
-								progressor.step();
+								if (absh2 < absh3) { final double tmp = absh2; absh2 = absh3; absh3 = tmp; }
+								if (absh1 < absh2) { final double tmp1 = absh1; absh1 = absh2; absh2 = tmp1;
+								if (absh2 < absh3) { final double tmp2 = absh2; absh2 = absh3; absh3 = tmp2; }}
+								ahxx[x] = absh1;
+								ahyy[x] = absh2;
+								ahzz[x] = absh3;
 							}
+							Hxx.set(coords,ahxx);
+							Hyy.set(coords,ahyy);
+							Hzz.set(coords,ahzz);
+							progressor.step();
+						}
+					}
+				});
 			} else {
 				messenger.log("Comparing and storing actual eigenvalues");
-				for (coords.c=0; coords.c<dims.c; ++coords.c)
-					for (coords.t=0; coords.t<dims.t; ++coords.t)
-						for (coords.z=0; coords.z<dims.z; ++coords.z)
-							for (coords.y=0; coords.y<dims.y; ++coords.y) {
-								Hxx.get(coords,ahxx);
-								Hxy.get(coords,ahxy);
-								Hxz.get(coords,ahxz);
-								Hyy.get(coords,ahyy);
-								Hyz.get(coords,ahyz);
-								Hzz.get(coords,ahzz);
-								for (int x=0; x<dims.x; ++x) {
-									final double fhxx = ahxx[x];
-									final double fhxy = ahxy[x];
-									final double fhxz = ahxz[x];
-									final double fhyy = ahyy[x];
-									final double fhyz = ahyz[x];
-									final double fhzz = ahzz[x];
-									final double a = -(fhxx + fhyy + fhzz);
-									final double b = fhxx*fhyy + fhxx*fhzz + fhyy*fhzz - fhxy*fhxy - fhxz*fhxz - fhyz*fhyz;
-									final double c = fhxx*(fhyz*fhyz - fhyy*fhzz) + fhyy*fhxz*fhxz + fhzz*fhxy*fhxy - 2*fhxy*fhxz*fhyz;
-									final double q = (a*a - 3*b)/9;
-									final double r = (a*a*a - 4.5*a*b + 13.5*c)/27;
-									final double sqrtq = (q > 0) ? Math.sqrt(q) : 0;
-									final double sqrtq3 = sqrtq*sqrtq*sqrtq;
-									double h1, h2, h3;
-									if (sqrtq3 == 0) {
-										h1 = 0;
-										h2 = 0;
-										h3 = 0;
-									} else {
-										final double rsqq3 = r/sqrtq3;
-										final double angle = (rsqq3*rsqq3 <= 1) ? Math.acos(rsqq3) : Math.acos(rsqq3 < 0 ? -1 : 1);
-										h1 = -2*sqrtq*Math.cos(angle/3) - a/3;
-										h2 = -2*sqrtq*Math.cos((angle + TWOPI)/3) - a/3;
-										h3 = -2*sqrtq*Math.cos((angle - TWOPI)/3) - a/3;
-									}
-									if (h2 < h3) { final double tmp = h2; h2 = h3; h3 = tmp; }
-									if (h1 < h2) { final double tmp1 = h1; h1 = h2; h2 = tmp1;
-									if (h2 < h3) { final double tmp2 = h2; h2 = h3; h3 = tmp2; }}
-									ahxx[x] = h1;
-									ahyy[x] = h2;
-									ahzz[x] = h3;
+				threader.lines(dims.c*dims.t*dims.z*dims.y, new Threader.Lines() {
+					public void run(final int begin, final int end) {
+						final double[] ahxx = new double[dims.x];
+						final double[] ahxy = new double[dims.x];
+						final double[] ahxz = new double[dims.x];
+						final double[] ahyy = new double[dims.x];
+						final double[] ahyz = new double[dims.x];
+						final double[] ahzz = new double[dims.x];
+						final Coordinates coords = new Coordinates();
+						for (int line=begin; line<end; ++line) {
+							coords.y = line % dims.y;
+							coords.z = (line/dims.y) % dims.z;
+							coords.t = (line/(dims.z*dims.y)) % dims.t;
+							coords.c = line/(dims.t*dims.z*dims.y);
+							Hxx.get(coords,ahxx);
+							Hxy.get(coords,ahxy);
+							Hxz.get(coords,ahxz);
+							Hyy.get(coords,ahyy);
+							Hyz.get(coords,ahyz);
+							Hzz.get(coords,ahzz);
+							for (int x=0; x<dims.x; ++x) {
+								final double fhxx = ahxx[x];
+								final double fhxy = ahxy[x];
+								final double fhxz = ahxz[x];
+								final double fhyy = ahyy[x];
+								final double fhyz = ahyz[x];
+								final double fhzz = ahzz[x];
+								final double a = -(fhxx + fhyy + fhzz);
+								final double b = fhxx*fhyy + fhxx*fhzz + fhyy*fhzz - fhxy*fhxy - fhxz*fhxz - fhyz*fhyz;
+								final double c = fhxx*(fhyz*fhyz - fhyy*fhzz) + fhyy*fhxz*fhxz + fhzz*fhxy*fhxy - 2*fhxy*fhxz*fhyz;
+								final double q = (a*a - 3*b)/9;
+								final double r = (a*a*a - 4.5*a*b + 13.5*c)/27;
+								final double sqrtq = (q > 0) ? Math.sqrt(q) : 0;
+								final double sqrtq3 = sqrtq*sqrtq*sqrtq;
+								double h1, h2, h3;
+								if (sqrtq3 == 0) {
+									h1 = 0;
+									h2 = 0;
+									h3 = 0;
+								} else {
+									final double rsqq3 = r/sqrtq3;
+									final double angle = (rsqq3*rsqq3 <= 1) ? Math.acos(rsqq3) : Math.acos(rsqq3 < 0 ? -1 : 1);
+									h1 = -2*sqrtq*Math.cos(angle/3) - a/3;
+									h2 = -2*sqrtq*Math.cos((angle + TWOPI)/3) - a/3;
+									h3 = -2*sqrtq*Math.cos((angle - TWOPI)/3) - a/3;
 								}
-								Hxx.set(coords,ahxx);
-								Hyy.set(coords,ahyy);
-								Hzz.set(coords,ahzz);
-								progressor.step();
+								if (h2 < h3) { final double tmp = h2; h2 = h3; h3 = tmp; }
+								if (h1 < h2) { final double tmp1 = h1; h1 = h2; h2 = tmp1;
+								if (h2 < h3) { final double tmp2 = h2; h2 = h3; h3 = tmp2; }}
+								ahxx[x] = h1;
+								ahyy[x] = h2;
+								ahzz[x] = h3;
 							}
+							Hxx.set(coords,ahxx);
+							Hyy.set(coords,ahyy);
+							Hzz.set(coords,ahzz);
+							progressor.step();
+						}
+					}
+				});
 			}
 			progressor.stop();
 			
@@ -339,6 +372,9 @@ private void logstatus(final String s) {
 	/** The object used for progress displaying. */
 	public final Progressor progressor = new Progressor();
 	
+	/** The object used for multi-threading. It is also set as the parent of the {@code Threader} of {@link #differentiator}, so that the same number of threads is used for computing the derivatives. */
+	public final Threader threader = new Threader();
+	
 	/** The object used for image differentiation. */
 	public final Differentiator differentiator = new Differentiator();
 	
@@ -9,6 +9,7 @@
 import imagescience.utility.ImageScience;
 import imagescience.utility.Messenger;
 import imagescience.utility.Progressor;
+import imagescience.utility.Threader;
 import imagescience.utility.Timer;
 
 /** Computes the Laplacian of images. */
@@ -57,6 +58,7 @@ public Image run(final Image image, final double scale) {
 		
 		differentiator.messenger.log(messenger.log());
 		differentiator.progressor.parent(progressor);
+		differentiator.threader.parent(threader);
 		
 		if (dims.z == 1) { // 2D case
 			
@@ -125,6 +127,9 @@ private void logstatus(final String s) {
 	/** The object used for progress displaying. */
 	public final Progressor progressor = new Progressor();
 	
+	/** The object used for multi-threading. It is also set as the parent of the {@code Threader} of {@link #differentiator}, so that the same number of threads is used for computing the derivatives. */
+	public final Threader threader = new Threader();
+	
 	/** The object used for image differentiation. */
 	public final Differentiator differentiator = new Differentiator();
 	
@@ -5,6 +5,7 @@
 import imagescience.utility.ImageScience;
 import imagescience.utility.Messenger;
 import imagescience.utility.Progressor;
+import imagescience.utility.Threader;
 
 /** Smoothes images. */
 public class Smoother {
@@ -33,6 +34,7 @@ public Image gauss(final Image image, final double scale) {
 		final Differentiator d = new Differentiator();
 		d.messenger.log(messenger.log());
 		d.progressor.parent(progressor);
+		d.threader.parent(threader);
 		return d.run(image,scale,0,0,0);
 	}
 	
@@ -42,4 +44,7 @@ public Image gauss(final Image image, final double scale) {
 	/** The object used for progress displaying. */
 	public final Progressor progressor = new Progressor();
 	
+	/** The object used for multi-threading. It is set as the parent of the {@code Threader} of the {@link Differentiator} used for smoothing. */
+	public final Threader threader = new Threader();
+	
 }
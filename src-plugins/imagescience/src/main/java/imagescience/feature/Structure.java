@@ -9,6 +9,7 @@
 import imagescience.utility.ImageScience;
 import imagescience.utility.Messenger;
 import imagescience.utility.Progressor;
+import imagescience.utility.Threader;
 import imagescience.utility.Timer;
 import java.util.Vector;
 
@@ -69,6 +70,7 @@ public Vector<Image> run(final Image image, final double sscale, final double is
 		
 		differentiator.messenger.log(messenger.log());
 		differentiator.progressor.parent(progressor);
+		differentiator.threader.parent(threader);
 		
 		// Compute structure tensor and eigenimages:
 		if (dims.z == 1) { // 2D case
@@ -104,16 +106,19 @@ public Vector<Image> run(final Image image, final double sscale, final double is
 			progressor.steps(dims.c*dims.t*dims.y);
 			progressor.range(pls[pl],pls[++pl]);
 			Ix2.axes(Axes.X); IxIy.axes(Axes.X); Iy2.axes(Axes.X);
-			final double[] axx = new double[dims.x];
-			final double[] axy = new double[dims.x];
-			final double[] ayy = new double[dims.x];
-			final Coordinates coords = new Coordinates();
 			messenger.log("Comparing and storing eigenvalues");
 			
 			progressor.start();
-			for (coords.c=0; coords.c<dims.c; ++coords.c)
-				for (coords.t=0; coords.t<dims.t; ++coords.t)
-					for (coords.y=0; coords.y<dims.y; ++coords.y) {
+			threader.lines(dims.c*dims.t*dims.y, new Threader.Lines() {
+				public void run(final int begin, final int end) {
+					final double[] axx = new double[dims.x];
+					final double[] axy = new double[dims.x];
+					final double[] ayy = new double[dims.x];
+					final Coordinates coords = new Coordinates();
+					for (int line=begin; line<end; ++line) {
+						coords.y = line % dims.y;
+						coords.t = (line/dims.y) % dims.t;
+						coords.c = line/(dims.t*dims.y);
 						Ix2.get(coords,axx);
 						IxIy.get(coords,axy);
 						Iy2.get(coords,ayy);
@@ -141,6 +146,8 @@ public Vector<Image> run(final Image image, final double sscale, final double is
 						Iy2.set(coords,ayy);
 						progressor.step();
 					}
+				}
+			});
 			progressor.stop();
 			
 			Ix2.name(name+" largest structure eigenvalues");
@@ -197,64 +204,69 @@ public Vector<Image> run(final Image image, final double sscale, final double is
 			progressor.range(pls[pl],pls[++pl]);
 			Ix2.axes(Axes.X); IxIy.axes(Axes.X); IxIz.axes(Axes.X);
 			Iy2.axes(Axes.X); IyIz.axes(Axes.X); Iz2.axes(Axes.X);
-			final double[] axx = new double[dims.x];
-			final double[] axy = new double[dims.x];
-			final double[] axz = new double[dims.x];
-			final double[] ayy = new double[dims.x];
-			final double[] ayz = new double[dims.x];
-			final double[] azz = new double[dims.x];
-			final Coordinates coords = new Coordinates();
 			messenger.log("Comparing and storing eigenvalues");
 			
 			progressor.start();
-			for (coords.c=0; coords.c<dims.c; ++coords.c)
-				for (coords.t=0; coords.t<dims.t; ++coords.t)
-					for (coords.z=0; coords.z<dims.z; ++coords.z)
-						for (coords.y=0; coords.y<dims.y; ++coords.y) {
-							Ix2.get(coords,axx);
-							IxIy.get(coords,axy);
-							IxIz.get(coords,axz);
-							Iy2.get(coords,ayy);
-							IyIz.get(coords,ayz);
-							Iz2.get(coords,azz);
-							for (int x=0; x<dims.x; ++x) {
-								final double fxx = axx[x];
-								final double fxy = axy[x];
-								final double fxz = axz[x];
-								final double fyy = ayy[x];
-								final double fyz = ayz[x];
-								final double fzz = azz[x];
-								final double a = -(fxx + fyy + fzz);
-								final double b = fxx*fyy + fxx*fzz + fyy*fzz - fxy*fxy - fxz*fxz - fyz*fyz;
-								final double c = fxx*(fyz*fyz - fyy*fzz) + fyy*fxz*fxz + fzz*fxy*fxy - 2*fxy*fxz*fyz;
-								final double q = (a*a - 3*b)/9;
-								final double r = (a*a*a - 4.5f*a*b + 13.5f*c)/27f;
-								final double sqrtq = (q > 0) ? Math.sqrt(q) : 0;
-								final double sqrtq3 = sqrtq*sqrtq*sqrtq;
-								double absh1, absh2, absh3;
-								if (sqrtq3 == 0) {
-									absh1 = 0;
-									absh2 = 0;
-									absh3 = 0;
-								} else {
-									final double rsqq3 = r/sqrtq3;
-									final double angle = (rsqq3*rsqq3 <= 1) ? Math.acos(rsqq3) : Math.acos(rsqq3 < 0 ? -1 : 1);
-									absh1 = Math.abs(-2*sqrtq*Math.cos(angle/3) - a/3);
-									absh2 = Math.abs(-2*sqrtq*Math.cos((angle + TWOPI)/3) - a/3);
-									absh3 = Math.abs(-2*sqrtq*Math.cos((angle - TWOPI)/3) - a/3);
-								}
-								if (absh2 < absh3) { final double tmp = absh2; absh2 = absh3; absh3 = tmp; }
-								if (absh1 < absh2) { final double tmp1 = absh1; absh1 = absh2; absh2 = tmp1;
-								if (absh2 < absh3) { final double tmp2 = absh2; absh2 = absh3; absh3 = tmp2; }}
-								axx[x] = absh1;
-								ayy[x] = absh2;
-								azz[x] = absh3;
+			threader.lines(dims.c*dims.t*dims.z*dims.y, new Threader.Lines() {
+				public void run(final int begin, final int end) {
+					final double[] axx = new double[dims.x];
+					final double[] axy = new double[dims.x];
+					final double[] axz = new double[dims.x];
+					final double[] ayy = new double[dims.x];
+					final double[] ayz = new double[dims.x];
+					final double[] azz = new double[dims.x];
+					final Coordinates coords = new Coordinates();
+					for (int line=begin; line<end; ++line) {
+						coords.y = line % dims.y;
+						coords.z = (line/dims.y) % dims.z;
+						coords.t = (line/(dims.z*dims.y)) % dims.t;
+						coords.c = line/(dims.t*dims.z*dims.y);
+						Ix2.get(coords,axx);
+						IxIy.get(coords,axy);
+						IxIz.get(coords,axz);
+						Iy2.get(coords,ayy);
+						IyIz.get(coords,ayz);
+						Iz2.get(coords,azz);
+						for (int x=0; x<dims.x; ++x) {
+							final double fxx = axx[x];
+							final double fxy = axy[x];
+							final double fxz = axz[x];
+							final double fyy = ayy[x];
+							final double fyz = ayz[x];
+							final double fzz = azz[x];
+							final double a = -(fxx + fyy + fzz);
+							final double b = fxx*fyy + fxx*fzz + fyy*fzz - fxy*fxy - fxz*fxz - fyz*fyz;
+							final double c = fxx*(fyz*fyz - fyy*fzz) + fyy*fxz*fxz + fzz*fxy*fxy - 2*fxy*fxz*fyz;
+							final double q = (a*a - 3*b)/9;
+							final double r = (a*a*a - 4.5f*a*b + 13.5f*c)/27f;
+							final double sqrtq = (q > 0) ? Math.sqrt(q) : 0;
+							final double sqrtq3 = sqrtq*sqrtq*sqrtq;
+							double absh1, absh2, absh3;
+							if (sqrtq3 == 0) {
+								absh1 = 0;
+								absh2 = 0;
+								absh3 = 0;
+							} else {
+								final double rsqq3 = r/sqrtq3;
+								final double angle = (rsqq3*rsqq3 <= 1) ? Math.acos(rsqq3) : Math.acos(rsqq3 < 0 ? -1 : 1);
+								absh1 = Math.abs(-2*sqrtq*Math.cos(angle/3) - a/3);
+								absh2 = Math.abs(-2*sqrtq*Math.cos((angle + TWOPI)/3) - a/3);
+								absh3 = Math.abs(-2*sqrtq*Math.cos((angle - TWOPI)/3) - a/3);
 							}
-							Ix2.set(coords,axx);
-							Iy2.set(coords,ayy);
-							Iz2.set(coords,azz);
-							progressor.step();
+							if (absh2 < absh3) { final double tmp = absh2; absh2 = absh3; absh3 = tmp; }
+							if (absh1 < absh2) { final double tmp1 = absh1; absh1 = absh2; absh2 = tmp1;
+							if (absh2 < absh3) { final double tmp2 = absh2; absh2 = absh3; absh3 = tmp2; }}
+							axx[x] = absh1;
+							ayy[x] = absh2;
+							azz[x] = absh3;
 						}
+						Ix2.set(coords,axx);
+						Iy2.set(coords,ayy);
+						Iz2.set(coords,azz);
+						progressor.step();
+					}
+				}
+			});
 			progressor.stop();
 			
 			Ix2.name(name+" largest structure eigenvalues");
@@ -290,6 +302,9 @@ private void logstatus(final String s) {
 	/** The object used for progress displaying. */
 	public final Progressor progressor = new Progressor();
 	
+	/** The object used for multi-threading. It is also set as the parent of the {@code Threader} of {@link #differentiator}, so that the same number of threads is used for computing the derivatives. */
+	public final Threader threader = new Threader();
+	
 	/** The object used for image differentiation. */
 	public final Differentiator differentiator = new Differentiator();
 	
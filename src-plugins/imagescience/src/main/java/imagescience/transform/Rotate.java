@@ -11,6 +11,7 @@
 import imagescience.utility.ImageScience;
 import imagescience.utility.Messenger;
 import imagescience.utility.Progressor;
+import imagescience.utility.Threader;
 import imagescience.utility.Timer;
 
 /** Rotates images using different interpolation schemes.
@@ -433,32 +434,34 @@ private void rotate_nearest_z(final Image image, final Image rotated) {
 		
 		// Rotate using the inverse of the rotation matrix: (note that when this
 		// method is called, the border size of image is zero)
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=cin.z=0; cnew.z<newdims.z; ++cnew.z, ++cin.z) {
-					for (cnew.y=0; cnew.y<newdims.y; ++cnew.y) {
-						final double dy = cnew.y - newyoffsetyc;
-						final double xcdysinaz = xc + dy*sinaz;
-						final double ycdycosaz = yc + dy*cosaz;
-						for (int x=0; x<newdims.x; ++x) {
-							final double dx = x - newxoffsetxc;
-							cin.x = FMath.round(xcdysinaz + dx*cosaz);
-							cin.y = FMath.round(ycdycosaz - dx*sinaz);
-							if (cin.x < 0 || cin.x > maxx || cin.y < 0 || cin.y > maxy) anew[x] = background;
-							else anew[x] = image.get(cin);
-						}
-						rotated.set(cnew,anew);
-						progressor.step();
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = line % newdims.y;
+					cnew.z = cin.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
+					final double dy = cnew.y - newyoffsetyc;
+					final double xcdysinaz = xc + dy*sinaz;
+					final double ycdycosaz = yc + dy*cosaz;
+					for (int x=0; x<newdims.x; ++x) {
+						final double dx = x - newxoffsetxc;
+						cin.x = FMath.round(xcdysinaz + dx*cosaz);
+						cin.y = FMath.round(ycdycosaz - dx*sinaz);
+						if (cin.x < 0 || cin.x > maxx || cin.y < 0 || cin.y > maxy) anew[x] = background;
+						else anew[x] = image.get(cin);
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -472,32 +475,34 @@ private void rotate_nearest_y(final Image image, final Image rotated) {
 		
 		// Rotate using the inverse of the rotation matrix: (note that when this
 		// method is called, the border size of image is zero)
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=0; cnew.z<newdims.z; ++cnew.z) {
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = cin.y = line % newdims.y;
+					cnew.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
 					final double dz = cnew.z - newzoffsetzc;
 					final double xcdzsinay = xc - dz*sinay;
 					final double zcdzcosay = zc + dz*cosay;
-					for (cnew.y=cin.y=0; cnew.y<newdims.y; ++cnew.y, ++cin.y) {
-						for (int x=0; x<newdims.x; ++x) {
-							final double dx = x - newxoffsetxc;
-							cin.x = FMath.round(xcdzsinay + dx*cosay);
-							cin.z = FMath.round(zcdzcosay + dx*sinay);
-							if (cin.x < 0 || cin.x > maxx || cin.z < 0 || cin.z > maxz) anew[x] = background;
-							else anew[x] = image.get(cin);
-						}
-						rotated.set(cnew,anew);
-						progressor.step();
+					for (int x=0; x<newdims.x; ++x) {
+						final double dx = x - newxoffsetxc;
+						cin.x = FMath.round(xcdzsinay + dx*cosay);
+						cin.z = FMath.round(zcdzcosay + dx*sinay);
+						if (cin.x < 0 || cin.x > maxx || cin.z < 0 || cin.z > maxz) anew[x] = background;
+						else anew[x] = image.get(cin);
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -511,31 +516,33 @@ private void rotate_nearest_x(final Image image, final Image rotated) {
 		
 		// Rotate using the inverse of the rotation matrix: (note that when this
 		// method is called, the border size of image is zero)
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=0; cnew.z<newdims.z; ++cnew.z) {
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = line % newdims.y;
+					cnew.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
 					final double dz = cnew.z - newzoffsetzc;
 					final double ycdzsinax = yc + dz*sinax;
 					final double zcdzcosax = zc + dz*cosax;
-					for (cnew.y=0; cnew.y<newdims.y; ++cnew.y) {
-						final double dy = cnew.y - newyoffsetyc;
-						cin.y = FMath.round(ycdzsinax + dy*cosax);
-						cin.z = FMath.round(zcdzcosax - dy*sinax);
-						cin.x = 0;
-						if (cin.y < 0 || cin.y > maxy || cin.z < 0 || cin.z > maxz) for (int x=0; x<newdims.x; ++x) anew[x] = background;
-						else for (int x=0; x<newdims.x; ++x, ++cin.x) anew[x] = image.get(cin);
-						rotated.set(cnew,anew);
-						progressor.step();
-					}
+					final double dy = cnew.y - newyoffsetyc;
+					cin.y = FMath.round(ycdzsinax + dy*cosax);
+					cin.z = FMath.round(zcdzcosax - dy*sinax);
+					cin.x = 0;
+					if (cin.y < 0 || cin.y > maxy || cin.z < 0 || cin.z > maxz) for (int x=0; x<newdims.x; ++x) anew[x] = background;
+					else for (int x=0; x<newdims.x; ++x, ++cin.x) anew[x] = image.get(cin);
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -549,38 +556,40 @@ private void rotate_nearest_zyx(final Image image, final Image rotated) {
 		
 		// Rotate using the inverse of the rotation matrix: (note that when this
 		// method is called, the border size of image is zero)
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=0; cnew.z<newdims.z; ++cnew.z) {
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = line % newdims.y;
+					cnew.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
 					final double dz = cnew.z - newzoffsetzc;
 					final double xcdzinvxz = xc + dz*invxz;
 					final double ycdzinvyz = yc + dz*invyz;
 					final double zcdzinvzz = zc + dz*invzz;
-					for (cnew.y=0; cnew.y<newdims.y; ++cnew.y) {
-						final double dy = cnew.y - newyoffsetyc;
-						final double xcdzinvxzdyinvxy = xcdzinvxz + dy*invxy;
-						final double ycdzinvyzdyinvyy = ycdzinvyz + dy*invyy;
-						final double zcdzinvzzdyinvzy = zcdzinvzz + dy*invzy;
-						for (int x=0; x<newdims.x; ++x) {
-							final double dx = x - newxoffsetxc;
-							cin.x = FMath.round(xcdzinvxzdyinvxy + dx*invxx);
-							cin.y = FMath.round(ycdzinvyzdyinvyy + dx*invyx);
-							cin.z = FMath.round(zcdzinvzzdyinvzy + dx*invzx);
-							if (cin.x < 0 || cin.x > maxx || cin.y < 0 || cin.y > maxy || cin.z < 0 || cin.z > maxz) anew[x] = background;
-							else anew[x] = image.get(cin);
-						}
-						rotated.set(cnew,anew);
-						progressor.step();
+					final double dy = cnew.y - newyoffsetyc;
+					final double xcdzinvxzdyinvxy = xcdzinvxz + dy*invxy;
+					final double ycdzinvyzdyinvyy = ycdzinvyz + dy*invyy;
+					final double zcdzinvzzdyinvzy = zcdzinvzz + dy*invzy;
+					for (int x=0; x<newdims.x; ++x) {
+						final double dx = x - newxoffsetxc;
+						cin.x = FMath.round(xcdzinvxzdyinvxy + dx*invxx);
+						cin.y = FMath.round(ycdzinvyzdyinvyy + dx*invyx);
+						cin.z = FMath.round(zcdzinvzzdyinvzy + dx*invzx);
+						if (cin.x < 0 || cin.x > maxx || cin.y < 0 || cin.y > maxy || cin.z < 0 || cin.z > maxz) anew[x] = background;
+						else anew[x] = image.get(cin);
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -595,52 +604,54 @@ private void rotate_linear_z(final Image image, final Image rotated) {
 		else image.mirror(borders);
 		
 		// Rotate using the inverse of the rotation matrix:
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=cin.z=0; cnew.z<newdims.z; ++cnew.z, ++cin.z) {
-					for (cnew.y=0; cnew.y<newdims.y; ++cnew.y) {
-						final double dy = cnew.y - newyoffsetyc;
-						final double xcdysinaz = xc + dy*sinaz;
-						final double ycdycosaz = yc + dy*cosaz;
-						for (int x=0; x<newdims.x; ++x) {
-							final double dx = x - newxoffsetxc;
-							final double tx = xcdysinaz + dx*cosaz;
-							final double ty = ycdycosaz - dx*sinaz;
-							final int ix = FMath.floor(tx);
-							final int iy = FMath.floor(ty);
-							if (ix < -1 || ix > maxx || iy < -1 || iy > maxy)
-								anew[x] = background;
-							else {
-								final double xdiff = tx - ix;
-								final double ydiff = ty - iy;
-								final double xmdiff = 1 - xdiff;
-								final double ymdiff = 1 - ydiff;
-								cin.x = borders.x + ix;
-								cin.y = borders.y + iy;
-								final double in00 = image.get(cin); ++cin.x;
-								final double in01 = image.get(cin); ++cin.y;
-								final double in11 = image.get(cin); --cin.x;
-								final double in10 = image.get(cin);
-								anew[x] = (
-									ymdiff*xmdiff*in00 +
-									ymdiff*xdiff*in01 +
-									ydiff*xmdiff*in10 +
-									ydiff*xdiff*in11
-								);
-							}
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = line % newdims.y;
+					cnew.z = cin.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
+					final double dy = cnew.y - newyoffsetyc;
+					final double xcdysinaz = xc + dy*sinaz;
+					final double ycdycosaz = yc + dy*cosaz;
+					for (int x=0; x<newdims.x; ++x) {
+						final double dx = x - newxoffsetxc;
+						final double tx = xcdysinaz + dx*cosaz;
+						final double ty = ycdycosaz - dx*sinaz;
+						final int ix = FMath.floor(tx);
+						final int iy = FMath.floor(ty);
+						if (ix < -1 || ix > maxx || iy < -1 || iy > maxy)
+							anew[x] = background;
+						else {
+							final double xdiff = tx - ix;
+							final double ydiff = ty - iy;
+							final double xmdiff = 1 - xdiff;
+							final double ymdiff = 1 - ydiff;
+							cin.x = borders.x + ix;
+							cin.y = borders.y + iy;
+							final double in00 = image.get(cin); ++cin.x;
+							final double in01 = image.get(cin); ++cin.y;
+							final double in11 = image.get(cin); --cin.x;
+							final double in10 = image.get(cin);
+							anew[x] = (
+								ymdiff*xmdiff*in00 +
+								ymdiff*xdiff*in01 +
+								ydiff*xmdiff*in10 +
+								ydiff*xdiff*in11
+							);
 						}
-						rotated.set(cnew,anew);
-						progressor.step();
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -655,52 +666,54 @@ private void rotate_linear_y(final Image image, final Image rotated) {
 		else image.mirror(borders);
 		
 		// Rotate using the inverse of the rotation matrix:
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=0; cnew.z<newdims.z; ++cnew.z) {
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = cin.y = line % newdims.y;
+					cnew.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
 					final double dz = cnew.z - newzoffsetzc;
 					final double xcdzsinay = xc - dz*sinay;
 					final double zcdzcosay = zc + dz*cosay;
-					for (cnew.y=cin.y=0; cnew.y<newdims.y; ++cnew.y, ++cin.y) {
-						for (int x=0; x<newdims.x; ++x) {
-							final double dx = x - newxoffsetxc;
-							final double tx = xcdzsinay + dx*cosay;
-							final double tz = zcdzcosay + dx*sinay;
-							final int ix = FMath.floor(tx);
-							final int iz = FMath.floor(tz);
-							if (ix < -1 || ix > maxx || iz < -1 || iz > maxz)
-								anew[x] = background;
-							else {
-								final double xdiff = tx - ix;
-								final double zdiff = tz - iz;
-								final double xmdiff = 1 - xdiff;
-								final double zmdiff = 1 - zdiff;
-								cin.x = borders.x + ix;
-								cin.z = borders.z + iz;
-								final double in00 = image.get(cin); ++cin.x;
-								final double in01 = image.get(cin); ++cin.z;
-								final double in11 = image.get(cin); --cin.x;
-								final double in10 = image.get(cin);
-								anew[x] = (
-									zmdiff*xmdiff*in00 +
-									zmdiff*xdiff*in01 +
-									zdiff*xmdiff*in10 +
-									zdiff*xdiff*in11
-								);
-							}
+					for (int x=0; x<newdims.x; ++x) {
+						final double dx = x - newxoffsetxc;
+						final double tx = xcdzsinay + dx*cosay;
+						final double tz = zcdzcosay + dx*sinay;
+						final int ix = FMath.floor(tx);
+						final int iz = FMath.floor(tz);
+						if (ix < -1 || ix > maxx || iz < -1 || iz > maxz)
+							anew[x] = background;
+						else {
+							final double xdiff = tx - ix;
+							final double zdiff = tz - iz;
+							final double xmdiff = 1 - xdiff;
+							final double zmdiff = 1 - zdiff;
+							cin.x = borders.x + ix;
+							cin.z = borders.z + iz;
+							final double in00 = image.get(cin); ++cin.x;
+							final double in01 = image.get(cin); ++cin.z;
+							final double in11 = image.get(cin); --cin.x;
+							final double in10 = image.get(cin);
+							anew[x] = (
+								zmdiff*xmdiff*in00 +
+								zmdiff*xdiff*in01 +
+								zdiff*xmdiff*in10 +
+								zdiff*xdiff*in11
+							);
 						}
-						rotated.set(cnew,anew);
-						progressor.step();
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -715,53 +728,55 @@ private void rotate_linear_x(final Image image, final Image rotated) {
 		else image.mirror(borders);
 		
 		// Rotate using the inverse of the rotation matrix:
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=0; cnew.z<newdims.z; ++cnew.z) {
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = line % newdims.y;
+					cnew.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
 					final double dz = cnew.z - newzoffsetzc;
 					final double ycdzsinax = yc + dz*sinax;
 					final double zcdzcosax = zc + dz*cosax;
-					for (cnew.y=0; cnew.y<newdims.y; ++cnew.y) {
-						final double dy = cnew.y - newyoffsetyc;
-						final double ty = ycdzsinax + dy*cosax;
-						final double tz = zcdzcosax - dy*sinax;
-						final int iy = FMath.floor(ty);
-						final int iz = FMath.floor(tz);
-						if (iy < -1 || iy > maxy || iz < -1 || iz > maxz)
-							for (int x=0; x<newdims.x; ++x) anew[x] = background;
-						else {
-							final double ydiff = ty - iy;
-							final double zdiff = tz - iz;
-							final double ymdiff = 1 - ydiff;
-							final double zmdiff = 1 - zdiff;
-							cin.y = borders.y + iy;
-							cin.z = borders.z + iz;
-							cin.x = 0;
-							for (int x=0; x<newdims.x; ++x, ++cin.x) {
-								final double in00 = image.get(cin); ++cin.y;
-								final double in01 = image.get(cin); ++cin.z;
-								final double in11 = image.get(cin); --cin.y;
-								final double in10 = image.get(cin); --cin.z;
-								anew[x] = (
-									zmdiff*ymdiff*in00 +
-									zmdiff*ydiff*in01 +
-									zdiff*ymdiff*in10 +
-									zdiff*ydiff*in11
-								);
-							}
+					final double dy = cnew.y - newyoffsetyc;
+					final double ty = ycdzsinax + dy*cosax;
+					final double tz = zcdzcosax - dy*sinax;
+					final int iy = FMath.floor(ty);
+					final int iz = FMath.floor(tz);
+					if (iy < -1 || iy > maxy || iz < -1 || iz > maxz)
+						for (int x=0; x<newdims.x; ++x) anew[x] = background;
+					else {
+						final double ydiff = ty - iy;
+						final double zdiff = tz - iz;
+						final double ymdiff = 1 - ydiff;
+						final double zmdiff = 1 - zdiff;
+						cin.y = borders.y + iy;
+						cin.z = borders.z + iz;
+						cin.x = 0;
+						for (int x=0; x<newdims.x; ++x, ++cin.x) {
+							final double in00 = image.get(cin); ++cin.y;
+							final double in01 = image.get(cin); ++cin.z;
+							final double in11 = image.get(cin); --cin.y;
+							final double in10 = image.get(cin); --cin.z;
+							anew[x] = (
+								zmdiff*ymdiff*in00 +
+								zmdiff*ydiff*in01 +
+								zdiff*ymdiff*in10 +
+								zdiff*ydiff*in11
+							);
 						}
-						rotated.set(cnew,anew);
-						progressor.step();
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -776,70 +791,72 @@ private void rotate_linear_zyx(final Image image, final Image rotated) {
 		else image.mirror(borders);
 		
 		// Rotate using the inverse of the rotation matrix:
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=0; cnew.z<newdims.z; ++cnew.z) {
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = line % newdims.y;
+					cnew.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
 					final double dz = cnew.z - newzoffsetzc;
 					final double xcdzinvxz = xc + dz*invxz;
 					final double ycdzinvyz = yc + dz*invyz;
 					final double zcdzinvzz = zc + dz*invzz;
-					for (cnew.y=0; cnew.y<newdims.y; ++cnew.y) {
-						final double dy = cnew.y - newyoffsetyc;
-						final double xcdzinvxzdyinvxy = xcdzinvxz + dy*invxy;
-						final double ycdzinvyzdyinvyy = ycdzinvyz + dy*invyy;
-						final double zcdzinvzzdyinvzy = zcdzinvzz + dy*invzy;
-						for (int x=0; x<newdims.x; ++x) {
-							final double dx = x - newxoffsetxc;
-							final double tx = xcdzinvxzdyinvxy + dx*invxx;
-							final double ty = ycdzinvyzdyinvyy + dx*invyx;
-							final double tz = zcdzinvzzdyinvzy + dx*invzx;
-							final int ix = FMath.floor(tx);
-							final int iy = FMath.floor(ty);
-							final int iz = FMath.floor(tz);
-							if (ix < -1 || ix > maxx || iy < -1 || iy > maxy || iz < -1 || iz > maxz)
-								anew[x] = background;
-							else {
-								final double xdiff = tx - ix;
-								final double ydiff = ty - iy;
-								final double zdiff = tz - iz;
-								final double xmdiff = 1 - xdiff;
-								final double ymdiff = 1 - ydiff;
-								final double zmdiff = 1 - zdiff;
-								cin.x = borders.x + ix;
-								cin.y = borders.y + iy;
-								cin.z = borders.z + iz;
-								final double in000 = image.get(cin); ++cin.x;
-								final double in001 = image.get(cin); ++cin.y;
-								final double in011 = image.get(cin); --cin.x;
-								final double in010 = image.get(cin); ++cin.z;
-								final double in110 = image.get(cin); ++cin.x;
-								final double in111 = image.get(cin); --cin.y;
-								final double in101 = image.get(cin); --cin.x;
-								final double in100 = image.get(cin);
-								anew[x] = (
-									zmdiff*ymdiff*xmdiff*in000 +
-									zmdiff*ymdiff*xdiff*in001 +
-									zmdiff*ydiff*xmdiff*in010 +
-									zmdiff*ydiff*xdiff*in011 +
-									zdiff*ymdiff*xmdiff*in100 +
-									zdiff*ymdiff*xdiff*in101 +
-									zdiff*ydiff*xmdiff*in110 +
-									zdiff*ydiff*xdiff*in111
-								);
-							}
+					final double dy = cnew.y - newyoffsetyc;
+					final double xcdzinvxzdyinvxy = xcdzinvxz + dy*invxy;
+					final double ycdzinvyzdyinvyy = ycdzinvyz + dy*invyy;
+					final double zcdzinvzzdyinvzy = zcdzinvzz + dy*invzy;
+					for (int x=0; x<newdims.x; ++x) {
+						final double dx = x - newxoffsetxc;
+						final double tx = xcdzinvxzdyinvxy + dx*invxx;
+						final double ty = ycdzinvyzdyinvyy + dx*invyx;
+						final double tz = zcdzinvzzdyinvzy + dx*invzx;
+						final int ix = FMath.floor(tx);
+						final int iy = FMath.floor(ty);
+						final int iz = FMath.floor(tz);
+						if (ix < -1 || ix > maxx || iy < -1 || iy > maxy || iz < -1 || iz > maxz)
+							anew[x] = background;
+						else {
+							final double xdiff = tx - ix;
+							final double ydiff = ty - iy;
+							final double zdiff = tz - iz;
+							final double xmdiff = 1 - xdiff;
+							final double ymdiff = 1 - ydiff;
+							final double zmdiff = 1 - zdiff;
+							cin.x = borders.x + ix;
+							cin.y = borders.y + iy;
+							cin.z = borders.z + iz;
+							final double in000 = image.get(cin); ++cin.x;
+							final double in001 = image.get(cin); ++cin.y;
+							final double in011 = image.get(cin); --cin.x;
+							final double in010 = image.get(cin); ++cin.z;
+							final double in110 = image.get(cin); ++cin.x;
+							final double in111 = image.get(cin); --cin.y;
+							final double in101 = image.get(cin); --cin.x;
+							final double in100 = image.get(cin);
+							anew[x] = (
+								zmdiff*ymdiff*xmdiff*in000 +
+								zmdiff*ymdiff*xdiff*in001 +
+								zmdiff*ydiff*xmdiff*in010 +
+								zmdiff*ydiff*xdiff*in011 +
+								zdiff*ymdiff*xmdiff*in100 +
+								zdiff*ymdiff*xdiff*in101 +
+								zdiff*ydiff*xmdiff*in110 +
+								zdiff*ydiff*xdiff*in111
+							);
 						}
-						rotated.set(cnew,anew);
-						progressor.step();
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -854,72 +871,74 @@ private void rotate_cubic_z(final Image image, final Image rotated) {
 		else image.mirror(borders);
 		
 		// Rotate using the inverse of the rotation matrix:
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=cin.z=0; cnew.z<newdims.z; ++cnew.z, ++cin.z) {
-					for (cnew.y=0; cnew.y<newdims.y; ++cnew.y) {
-						final double dy = cnew.y - newyoffsetyc;
-						final double xcdysinaz = xc + dy*sinaz;
-						final double ycdycosaz = yc + dy*cosaz;
-						for (int x=0; x<newdims.x; ++x) {
-							final double dx = x - newxoffsetxc;
-							final double tx = xcdysinaz + dx*cosaz;
-							final double ty = ycdycosaz - dx*sinaz;
-							final int ix = FMath.floor(tx);
-							final int iy = FMath.floor(ty);
-							if (ix < -1 || ix > maxx || iy < -1 || iy > maxy)
-								anew[x] = background;
-							else {
-								final double xdiff = tx - ix;
-								final double xmdiff = 1 - xdiff;
-								final double wxm1 = fm1o2*xdiff*xmdiff*xmdiff;
-								final double wx00 = 1 + (f3o2*xdiff - f5o2)*xdiff*xdiff;
-								final double wxp1 = 1 + (f3o2*xmdiff - f5o2)*xmdiff*xmdiff;
-								final double wxp2 = fm1o2*xmdiff*xdiff*xdiff;
-								final double ydiff = ty - iy;
-								final double ymdiff = 1 - ydiff;
-								final double wym1 = fm1o2*ydiff*ymdiff*ymdiff;
-								final double wy00 = 1 + (f3o2*ydiff - f5o2)*ydiff*ydiff;
-								final double wyp1 = 1 + (f3o2*ymdiff - f5o2)*ymdiff*ymdiff;
-								final double wyp2 = fm1o2*ymdiff*ydiff*ydiff;
-								cin.x = borders.x + ix - 1;
-								cin.y = borders.y + iy - 1;
-								final double in00 = image.get(cin); ++cin.x;
-								final double in01 = image.get(cin); ++cin.x;
-								final double in02 = image.get(cin); ++cin.x;
-								final double in03 = image.get(cin); ++cin.y;
-								final double in13 = image.get(cin); --cin.x;
-								final double in12 = image.get(cin); --cin.x;
-								final double in11 = image.get(cin); --cin.x;
-								final double in10 = image.get(cin); ++cin.y;
-								final double in20 = image.get(cin); ++cin.x;
-								final double in21 = image.get(cin); ++cin.x;
-								final double in22 = image.get(cin); ++cin.x;
-								final double in23 = image.get(cin); ++cin.y;
-								final double in33 = image.get(cin); --cin.x;
-								final double in32 = image.get(cin); --cin.x;
-								final double in31 = image.get(cin); --cin.x;
-								final double in30 = image.get(cin);
-								anew[x] = (
-									wym1*(wxm1*in00 + wx00*in01 + wxp1*in02 + wxp2*in03) +
-									wy00*(wxm1*in10 + wx00*in11 + wxp1*in12 + wxp2*in13) +
-									wyp1*(wxm1*in20 + wx00*in21 + wxp1*in22 + wxp2*in23) +
-									wyp2*(wxm1*in30 + wx00*in31 + wxp1*in32 + wxp2*in33)
-								);
-							}
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = line % newdims.y;
+					cnew.z = cin.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
+					final double dy = cnew.y - newyoffsetyc;
+					final double xcdysinaz = xc + dy*sinaz;
+					final double ycdycosaz = yc + dy*cosaz;
+					for (int x=0; x<newdims.x; ++x) {
+						final double dx = x - newxoffsetxc;
+						final double tx = xcdysinaz + dx*cosaz;
+						final double ty = ycdycosaz - dx*sinaz;
+						final int ix = FMath.floor(tx);
+						final int iy = FMath.floor(ty);
+						if (ix < -1 || ix > maxx || iy < -1 || iy > maxy)
+							anew[x] = background;
+						else {
+							final double xdiff = tx - ix;
+							final double xmdiff = 1 - xdiff;
+							final double wxm1 = fm1o2*xdiff*xmdiff*xmdiff;
+							final double wx00 = 1 + (f3o2*xdiff - f5o2)*xdiff*xdiff;
+							final double wxp1 = 1 + (f3o2*xmdiff - f5o2)*xmdiff*xmdiff;
+							final double wxp2 = fm1o2*xmdiff*xdiff*xdiff;
+							final double ydiff = ty - iy;
+							final double ymdiff = 1 - ydiff;
+							final double wym1 = fm1o2*ydiff*ymdiff*ymdiff;
+							final double wy00 = 1 + (f3o2*ydiff - f5o2)*ydiff*ydiff;
+							final double wyp1 = 1 + (f3o2*ymdiff - f5o2)*ymdiff*ymdiff;
+							final double wyp2 = fm1o2*ymdiff*ydiff*ydiff;
+							cin.x = borders.x + ix - 1;
+							cin.y = borders.y + iy - 1;
+							final double in00 = image.get(cin); ++cin.x;
+							final double in01 = image.get(cin); ++cin.x;
+							final double in02 = image.get(cin); ++cin.x;
+							final double in03 = image.get(cin); ++cin.y;
+							final double in13 = image.get(cin); --cin.x;
+							final double in12 = image.get(cin); --cin.x;
+							final double in11 = image.get(cin); --cin.x;
+							final double in10 = image.get(cin); ++cin.y;
+							final double in20 = image.get(cin); ++cin.x;
+							final double in21 = image.get(cin); ++cin.x;
+							final double in22 = image.get(cin); ++cin.x;
+							final double in23 = image.get(cin); ++cin.y;
+							final double in33 = image.get(cin); --cin.x;
+							final double in32 = image.get(cin); --cin.x;
+							final double in31 = image.get(cin); --cin.x;
+							final double in30 = image.get(cin);
+							anew[x] = (
+								wym1*(wxm1*in00 + wx00*in01 + wxp1*in02 + wxp2*in03) +
+								wy00*(wxm1*in10 + wx00*in11 + wxp1*in12 + wxp2*in13) +
+								wyp1*(wxm1*in20 + wx00*in21 + wxp1*in22 + wxp2*in23) +
+								wyp2*(wxm1*in30 + wx00*in31 + wxp1*in32 + wxp2*in33)
+							);
 						}
-						rotated.set(cnew,anew);
-						progressor.step();
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -934,72 +953,74 @@ private void rotate_cubic_y(final Image image, final Image rotated) {
 		else image.mirror(borders);
 		
 		// Rotate using the inverse of the rotation matrix:
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=0; cnew.z<newdims.z; ++cnew.z) {
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = cin.y = line % newdims.y;
+					cnew.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
 					final double dz = cnew.z - newzoffsetzc;
 					final double xcdzsinay = xc - dz*sinay;
 					final double zcdzcosay = zc + dz*cosay;
-					for (cnew.y=cin.y=0; cnew.y<newdims.y; ++cnew.y, ++cin.y) {
-						for (int x=0; x<newdims.x; ++x) {
-							final double dx = x - newxoffsetxc;
-							final double tx = xcdzsinay + dx*cosay;
-							final double tz = zcdzcosay + dx*sinay;
-							final int ix = FMath.floor(tx);
-							final int iz = FMath.floor(tz);
-							if (ix < -1 || ix > maxx || iz < -1 || iz > maxz)
-								anew[x] = background;
-							else {
-								final double xdiff = tx - ix;
-								final double xmdiff = 1 - xdiff;
-								final double wxm1 = fm1o2*xdiff*xmdiff*xmdiff;
-								final double wx00 = 1 + (f3o2*xdiff - f5o2)*xdiff*xdiff;
-								final double wxp1 = 1 + (f3o2*xmdiff - f5o2)*xmdiff*xmdiff;
-								final double wxp2 = fm1o2*xmdiff*xdiff*xdiff;
-								final double zdiff = tz - iz;
-								final double zmdiff = 1 - zdiff;
-								final double wzm1 = fm1o2*zdiff*zmdiff*zmdiff;
-								final double wz00 = 1 + (f3o2*zdiff - f5o2)*zdiff*zdiff;
-								final double wzp1 = 1 + (f3o2*zmdiff - f5o2)*zmdiff*zmdiff;
-								final double wzp2 = fm1o2*zmdiff*zdiff*zdiff;
-								cin.x = borders.x + ix - 1;
-								cin.z = borders.z + iz - 1;
-								final double in00 = image.get(cin); ++cin.x;
-								final double in01 = image.get(cin); ++cin.x;
-								final double in02 = image.get(cin); ++cin.x;
-								final double in03 = image.get(cin); ++cin.z;
-								final double in13 = image.get(cin); --cin.x;
-								final double in12 = image.get(cin); --cin.x;
-								final double in11 = image.get(cin); --cin.x;
-								final double in10 = image.get(cin); ++cin.z;
-								final double in20 = image.get(cin); ++cin.x;
-								final double in21 = image.get(cin); ++cin.x;
-								final double in22 = image.get(cin); ++cin.x;
-								final double in23 = image.get(cin); ++cin.z;
-								final double in33 = image.get(cin); --cin.x;
-								final double in32 = image.get(cin); --cin.x;
-								final double in31 = image.get(cin); --cin.x;
-								final double in30 = image.get(cin);
-								anew[x] = (
-									wzm1*(wxm1*in00 + wx00*in01 + wxp1*in02 + wxp2*in03) +
-									wz00*(wxm1*in10 + wx00*in11 + wxp1*in12 + wxp2*in13) +
-									wzp1*(wxm1*in20 + wx00*in21 + wxp1*in22 + wxp2*in23) +
-									wzp2*(wxm1*in30 + wx00*in31 + wxp1*in32 + wxp2*in33)
-								);
-							}
+					for (int x=0; x<newdims.x; ++x) {
+						final double dx = x - newxoffsetxc;
+						final double tx = xcdzsinay + dx*cosay;
+						final double tz = zcdzcosay + dx*sinay;
+						final int ix = FMath.floor(tx);
+						final int iz = FMath.floor(tz);
+						if (ix < -1 || ix > maxx || iz < -1 || iz > maxz)
+							anew[x] = background;
+						else {
+							final double xdiff = tx - ix;
+							final double xmdiff = 1 - xdiff;
+							final double wxm1 = fm1o2*xdiff*xmdiff*xmdiff;
+							final double wx00 = 1 + (f3o2*xdiff - f5o2)*xdiff*xdiff;
+							final double wxp1 = 1 + (f3o2*xmdiff - f5o2)*xmdiff*xmdiff;
+							final double wxp2 = fm1o2*xmdiff*xdiff*xdiff;
+							final double zdiff = tz - iz;
+							final double zmdiff = 1 - zdiff;
+							final double wzm1 = fm1o2*zdiff*zmdiff*zmdiff;
+							final double wz00 = 1 + (f3o2*zdiff - f5o2)*zdiff*zdiff;
+							final double wzp1 = 1 + (f3o2*zmdiff - f5o2)*zmdiff*zmdiff;
+							final double wzp2 = fm1o2*zmdiff*zdiff*zdiff;
+							cin.x = borders.x + ix - 1;
+							cin.z = borders.z + iz - 1;
+							final double in00 = image.get(cin); ++cin.x;
+							final double in01 = image.get(cin); ++cin.x;
+							final double in02 = image.get(cin); ++cin.x;
+							final double in03 = image.get(cin); ++cin.z;
+							final double in13 = image.get(cin); --cin.x;
+							final double in12 = image.get(cin); --cin.x;
+							final double in11 = image.get(cin); --cin.x;
+							final double in10 = image.get(cin); ++cin.z;
+							final double in20 = image.get(cin); ++cin.x;
+							final double in21 = image.get(cin); ++cin.x;
+							final double in22 = image.get(cin); ++cin.x;
+							final double in23 = image.get(cin); ++cin.z;
+							final double in33 = image.get(cin); --cin.x;
+							final double in32 = image.get(cin); --cin.x;
+							final double in31 = image.get(cin); --cin.x;
+							final double in30 = image.get(cin);
+							anew[x] = (
+								wzm1*(wxm1*in00 + wx00*in01 + wxp1*in02 + wxp2*in03) +
+								wz00*(wxm1*in10 + wx00*in11 + wxp1*in12 + wxp2*in13) +
+								wzp1*(wxm1*in20 + wx00*in21 + wxp1*in22 + wxp2*in23) +
+								wzp2*(wxm1*in30 + wx00*in31 + wxp1*in32 + wxp2*in33)
+							);
 						}
-						rotated.set(cnew,anew);
-						progressor.step();
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -1014,73 +1035,75 @@ private void rotate_cubic_x(final Image image, final Image rotated) {
 		else image.mirror(borders);
 		
 		// Rotate using the inverse of the rotation matrix:
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=0; cnew.z<newdims.z; ++cnew.z) {
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = line % newdims.y;
+					cnew.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
 					final double dz = cnew.z - newzoffsetzc;
 					final double ycdzsinax = yc + dz*sinax;
 					final double zcdzcosax = zc + dz*cosax;
-					for (cnew.y=0; cnew.y<newdims.y; ++cnew.y) {
-						final double dy = cnew.y - newyoffsetyc;
-						final double ty = ycdzsinax + dy*cosax;
-						final double tz = zcdzcosax - dy*sinax;
-						final int iy = FMath.floor(ty);
-						final int iz = FMath.floor(tz);
-						if (iy < -1 || iy > maxy || iz < -1 || iz > maxz)
-							for (int x=0; x<newdims.x; ++x) anew[x] = background;
-						else {
-							final double ydiff = ty - iy;
-							final double ymdiff = 1 - ydiff;
-							final double wym1 = fm1o2*ydiff*ymdiff*ymdiff;
-							final double wy00 = 1 + (f3o2*ydiff - f5o2)*ydiff*ydiff;
-							final double wyp1 = 1 + (f3o2*ymdiff - f5o2)*ymdiff*ymdiff;
-							final double wyp2 = fm1o2*ymdiff*ydiff*ydiff;
-							final double zdiff = tz - iz;
-							final double zmdiff = 1 - zdiff;
-							final double wzm1 = fm1o2*zdiff*zmdiff*zmdiff;
-							final double wz00 = 1 + (f3o2*zdiff - f5o2)*zdiff*zdiff;
-							final double wzp1 = 1 + (f3o2*zmdiff - f5o2)*zmdiff*zmdiff;
-							final double wzp2 = fm1o2*zmdiff*zdiff*zdiff;
-							cin.y = borders.y + iy - 1;
-							cin.z = borders.z + iz - 1;
-							cin.x = 0;
-							for (int x=0; x<newdims.x; ++x, ++cin.x) {
-								final double in00 = image.get(cin); ++cin.y;
-								final double in01 = image.get(cin); ++cin.y;
-								final double in02 = image.get(cin); ++cin.y;
-								final double in03 = image.get(cin); ++cin.z;
-								final double in13 = image.get(cin); --cin.y;
-								final double in12 = image.get(cin); --cin.y;
-								final double in11 = image.get(cin); --cin.y;
-								final double in10 = image.get(cin); ++cin.z;
-								final double in20 = image.get(cin); ++cin.y;
-								final double in21 = image.get(cin); ++cin.y;
-								final double in22 = image.get(cin); ++cin.y;
-								final double in23 = image.get(cin); ++cin.z;
-								final double in33 = image.get(cin); --cin.y;
-								final double in32 = image.get(cin); --cin.y;
-								final double in31 = image.get(cin); --cin.y;
-								final double in30 = image.get(cin); cin.z -= 3;
-								anew[x] = (
-									wzm1*(wym1*in00 + wy00*in01 + wyp1*in02 + wyp2*in03) +
-									wz00*(wym1*in10 + wy00*in11 + wyp1*in12 + wyp2*in13) +
-									wzp1*(wym1*in20 + wy00*in21 + wyp1*in22 + wyp2*in23) +
-									wzp2*(wym1*in30 + wy00*in31 + wyp1*in32 + wyp2*in33)
-								);
-							}
+					final double dy = cnew.y - newyoffsetyc;
+					final double ty = ycdzsinax + dy*cosax;
+					final double tz = zcdzcosax - dy*sinax;
+					final int iy = FMath.floor(ty);
+					final int iz = FMath.floor(tz);
+					if (iy < -1 || iy > maxy || iz < -1 || iz > maxz)
+						for (int x=0; x<newdims.x; ++x) anew[x] = background;
+					else {
+						final double ydiff = ty - iy;
+						final double ymdiff = 1 - ydiff;
+						final double wym1 = fm1o2*ydiff*ymdiff*ymdiff;
+						final double wy00 = 1 + (f3o2*ydiff - f5o2)*ydiff*ydiff;
+						final double wyp1 = 1 + (f3o2*ymdiff - f5o2)*ymdiff*ymdiff;
+						final double wyp2 = fm1o2*ymdiff*ydiff*ydiff;
+						final double zdiff = tz - iz;
+						final double zmdiff = 1 - zdiff;
+						final double wzm1 = fm1o2*zdiff*zmdiff*zmdiff;
+						final double wz00 = 1 + (f3o2*zdiff - f5o2)*zdiff*zdiff;
+						final double wzp1 = 1 + (f3o2*zmdiff - f5o2)*zmdiff*zmdiff;
+						final double wzp2 = fm1o2*zmdiff*zdiff*zdiff;
+						cin.y = borders.y + iy - 1;
+						cin.z = borders.z + iz - 1;
+						cin.x = 0;
+						for (int x=0; x<newdims.x; ++x, ++cin.x) {
+							final double in00 = image.get(cin); ++cin.y;
+							final double in01 = image.get(cin); ++cin.y;
+							final double in02 = image.get(cin); ++cin.y;
+							final double in03 = image.get(cin); ++cin.z;
+							final double in13 = image.get(cin); --cin.y;
+							final double in12 = image.get(cin); --cin.y;
+							final double in11 = image.get(cin); --cin.y;
+							final double in10 = image.get(cin); ++cin.z;
+							final double in20 = image.get(cin); ++cin.y;
+							final double in21 = image.get(cin); ++cin.y;
+							final double in22 = image.get(cin); ++cin.y;
+							final double in23 = image.get(cin); ++cin.z;
+							final double in33 = image.get(cin); --cin.y;
+							final double in32 = image.get(cin); --cin.y;
+							final double in31 = image.get(cin); --cin.y;
+							final double in30 = image.get(cin); cin.z -= 3;
+							anew[x] = (
+								wzm1*(wym1*in00 + wy00*in01 + wyp1*in02 + wyp2*in03) +
+								wz00*(wym1*in10 + wy00*in11 + wyp1*in12 + wyp2*in13) +
+								wzp1*(wym1*in20 + wy00*in21 + wyp1*in22 + wyp2*in23) +
+								wzp2*(wym1*in30 + wy00*in31 + wyp1*in32 + wyp2*in33)
+							);
 						}
-						rotated.set(cnew,anew);
-						progressor.step();
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -1095,154 +1118,156 @@ private void rotate_cubic_zyx(final Image image, final Image rotated) {
 		else image.mirror(borders);
 		
 		// Rotate using the inverse of the rotation matrix:
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=0; cnew.z<newdims.z; ++cnew.z) {
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = line % newdims.y;
+					cnew.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
 					final double dz = cnew.z - newzoffsetzc;
 					final double xcdzinvxz = xc + dz*invxz;
 					final double ycdzinvyz = yc + dz*invyz;
 					final double zcdzinvzz = zc + dz*invzz;
-					for (cnew.y=0; cnew.y<newdims.y; ++cnew.y) {
-						final double dy = cnew.y - newyoffsetyc;
-						final double xcdzinvxzdyinvxy = xcdzinvxz + dy*invxy;
-						final double ycdzinvyzdyinvyy = ycdzinvyz + dy*invyy;
-						final double zcdzinvzzdyinvzy = zcdzinvzz + dy*invzy;
-						for (int x=0; x<newdims.x; ++x) {
-							final double dx = x - newxoffsetxc;
-							final double tx = xcdzinvxzdyinvxy + dx*invxx;
-							final double ty = ycdzinvyzdyinvyy + dx*invyx;
-							final double tz = zcdzinvzzdyinvzy + dx*invzx;
-							final int ix = FMath.floor(tx);
-							final int iy = FMath.floor(ty);
-							final int iz = FMath.floor(tz);
-							if (ix < -1 || ix > maxx || iy < -1 || iy > maxy || iz < -1 || iz > maxz)
-								anew[x] = background;
-							else {
-								final double xdiff = tx - ix;
-								final double xmdiff = 1 - xdiff;
-								final double wxm1 = fm1o2*xdiff*xmdiff*xmdiff;
-								final double wx00 = 1 + (f3o2*xdiff - f5o2)*xdiff*xdiff;
-								final double wxp1 = 1 + (f3o2*xmdiff - f5o2)*xmdiff*xmdiff;
-								final double wxp2 = fm1o2*xmdiff*xdiff*xdiff;
-								final double ydiff = ty - iy;
-								final double ymdiff = 1 - ydiff;
-								final double wym1 = fm1o2*ydiff*ymdiff*ymdiff;
-								final double wy00 = 1 + (f3o2*ydiff - f5o2)*ydiff*ydiff;
-								final double wyp1 = 1 + (f3o2*ymdiff - f5o2)*ymdiff*ymdiff;
-								final double wyp2 = fm1o2*ymdiff*ydiff*ydiff;
-								final double zdiff = tz - iz;
-								final double zmdiff = 1 - zdiff;
-								final double wzm1 = fm1o2*zdiff*zmdiff*zmdiff;
-								final double wz00 = 1 + (f3o2*zdiff - f5o2)*zdiff*zdiff;
-								final double wzp1 = 1 + (f3o2*zmdiff - f5o2)*zmdiff*zmdiff;
-								final double wzp2 = fm1o2*zmdiff*zdiff*zdiff;
-								cin.x = borders.x + ix - 1;
-								cin.y = borders.y + iy - 1;
-								cin.z = borders.z + iz - 1;
-								final double in000 = image.get(cin); ++cin.x;
-								final double in001 = image.get(cin); ++cin.x;
-								final double in002 = image.get(cin); ++cin.x;
-								final double in003 = image.get(cin); ++cin.y;
-								final double in013 = image.get(cin); --cin.x;
-								final double in012 = image.get(cin); --cin.x;
-								final double in011 = image.get(cin); --cin.x;
-								final double in010 = image.get(cin); ++cin.y;
-								final double in020 = image.get(cin); ++cin.x;
-								final double in021 = image.get(cin); ++cin.x;
-								final double in022 = image.get(cin); ++cin.x;
-								final double in023 = image.get(cin); ++cin.y;
-								final double in033 = image.get(cin); --cin.x;
-								final double in032 = image.get(cin); --cin.x;
-								final double in031 = image.get(cin); --cin.x;
-								final double in030 = image.get(cin); ++cin.z;
-								final double in130 = image.get(cin); ++cin.x;
-								final double in131 = image.get(cin); ++cin.x;
-								final double in132 = image.get(cin); ++cin.x;
-								final double in133 = image.get(cin); --cin.y;
-								final double in123 = image.get(cin); --cin.x;
-								final double in122 = image.get(cin); --cin.x;
-								final double in121 = image.get(cin); --cin.x;
-								final double in120 = image.get(cin); --cin.y;
-								final double in110 = image.get(cin); ++cin.x;
-								final double in111 = image.get(cin); ++cin.x;
-								final double in112 = image.get(cin); ++cin.x;
-								final double in113 = image.get(cin); --cin.y;
-								final double in103 = image.get(cin); --cin.x;
-								final double in102 = image.get(cin); --cin.x;
-								final double in101 = image.get(cin); --cin.x;
-								final double in100 = image.get(cin); ++cin.z;
-								final double in200 = image.get(cin); ++cin.x;
-								final double in201 = image.get(cin); ++cin.x;
-								final double in202 = image.get(cin); ++cin.x;
-								final double in203 = image.get(cin); ++cin.y;
-								final double in213 = image.get(cin); --cin.x;
-								final double in212 = image.get(cin); --cin.x;
-								final double in211 = image.get(cin); --cin.x;
-								final double in210 = image.get(cin); ++cin.y;
-								final double in220 = image.get(cin); ++cin.x;
-								final double in221 = image.get(cin); ++cin.x;
-								final double in222 = image.get(cin); ++cin.x;
-								final double in223 = image.get(cin); ++cin.y;
-								final double in233 = image.get(cin); --cin.x;
-								final double in232 = image.get(cin); --cin.x;
-								final double in231 = image.get(cin); --cin.x;
-								final double in230 = image.get(cin); ++cin.z;
-								final double in330 = image.get(cin); ++cin.x;
-								final double in331 = image.get(cin); ++cin.x;
-								final double in332 = image.get(cin); ++cin.x;
-								final double in333 = image.get(cin); --cin.y;
-								final double in323 = image.get(cin); --cin.x;
-								final double in322 = image.get(cin); --cin.x;
-								final double in321 = image.get(cin); --cin.x;
-								final double in320 = image.get(cin); --cin.y;
-								final double in310 = image.get(cin); ++cin.x;
-								final double in311 = image.get(cin); ++cin.x;
-								final double in312 = image.get(cin); ++cin.x;
-								final double in313 = image.get(cin); --cin.y;
-								final double in303 = image.get(cin); --cin.x;
-								final double in302 = image.get(cin); --cin.x;
-								final double in301 = image.get(cin); --cin.x;
-								final double in300 = image.get(cin);
-								anew[x] = (
-									wzm1*(
-										wym1*(wxm1*in000 + wx00*in001 + wxp1*in002 + wxp2*in003) +
-										wy00*(wxm1*in010 + wx00*in011 + wxp1*in012 + wxp2*in013) +
-										wyp1*(wxm1*in020 + wx00*in021 + wxp1*in022 + wxp2*in023) +
-										wyp2*(wxm1*in030 + wx00*in031 + wxp1*in032 + wxp2*in033)
-									) +
-									wz00*(
-										wym1*(wxm1*in100 + wx00*in101 + wxp1*in102 + wxp2*in103) +
-										wy00*(wxm1*in110 + wx00*in111 + wxp1*in112 + wxp2*in113) +
-										wyp1*(wxm1*in120 + wx00*in121 + wxp1*in122 + wxp2*in123) +
-										wyp2*(wxm1*in130 + wx00*in131 + wxp1*in132 + wxp2*in133)
-									) +
-									wzp1*(
-										wym1*(wxm1*in200 + wx00*in201 + wxp1*in202 + wxp2*in203) +
-										wy00*(wxm1*in210 + wx00*in211 + wxp1*in212 + wxp2*in213) +
-										wyp1*(wxm1*in220 + wx00*in221 + wxp1*in222 + wxp2*in223) +
-										wyp2*(wxm1*in230 + wx00*in231 + wxp1*in232 + wxp2*in233)
-									) +
-									wzp2*(
-										wym1*(wxm1*in300 + wx00*in301 + wxp1*in302 + wxp2*in303) +
-										wy00*(wxm1*in310 + wx00*in311 + wxp1*in312 + wxp2*in313) +
-										wyp1*(wxm1*in320 + wx00*in321 + wxp1*in322 + wxp2*in323) +
-										wyp2*(wxm1*in330 + wx00*in331 + wxp1*in332 + wxp2*in333)
-									)
-								);
-							}
+					final double dy = cnew.y - newyoffsetyc;
+					final double xcdzinvxzdyinvxy = xcdzinvxz + dy*invxy;
+					final double ycdzinvyzdyinvyy = ycdzinvyz + dy*invyy;
+					final double zcdzinvzzdyinvzy = zcdzinvzz + dy*invzy;
+					for (int x=0; x<newdims.x; ++x) {
+						final double dx = x - newxoffsetxc;
+						final double tx = xcdzinvxzdyinvxy + dx*invxx;
+						final double ty = ycdzinvyzdyinvyy + dx*invyx;
+						final double tz = zcdzinvzzdyinvzy + dx*invzx;
+						final int ix = FMath.floor(tx);
+						final int iy = FMath.floor(ty);
+						final int iz = FMath.floor(tz);
+						if (ix < -1 || ix > maxx || iy < -1 || iy > maxy || iz < -1 || iz > maxz)
+							anew[x] = background;
+						else {
+							final double xdiff = tx - ix;
+							final double xmdiff = 1 - xdiff;
+							final double wxm1 = fm1o2*xdiff*xmdiff*xmdiff;
+							final double wx00 = 1 + (f3o2*xdiff - f5o2)*xdiff*xdiff;
+							final double wxp1 = 1 + (f3o2*xmdiff - f5o2)*xmdiff*xmdiff;
+							final double wxp2 = fm1o2*xmdiff*xdiff*xdiff;
+							final double ydiff = ty - iy;
+							final double ymdiff = 1 - ydiff;
+							final double wym1 = fm1o2*ydiff*ymdiff*ymdiff;
+							final double wy00 = 1 + (f3o2*ydiff - f5o2)*ydiff*ydiff;
+							final double wyp1 = 1 + (f3o2*ymdiff - f5o2)*ymdiff*ymdiff;
+							final double wyp2 = fm1o2*ymdiff*ydiff*ydiff;
+							final double zdiff = tz - iz;
+							final double zmdiff = 1 - zdiff;
+							final double wzm1 = fm1o2*zdiff*zmdiff*zmdiff;
+							final double wz00 = 1 + (f3o2*zdiff - f5o2)*zdiff*zdiff;
+							final double wzp1 = 1 + (f3o2*zmdiff - f5o2)*zmdiff*zmdiff;
+							final double wzp2 = fm1o2*zmdiff*zdiff*zdiff;
+							cin.x = borders.x + ix - 1;
+							cin.y = borders.y + iy - 1;
+							cin.z = borders.z + iz - 1;
+							final double in000 = image.get(cin); ++cin.x;
+							final double in001 = image.get(cin); ++cin.x;
+							final double in002 = image.get(cin); ++cin.x;
+							final double in003 = image.get(cin); ++cin.y;
+							final double in013 = image.get(cin); --cin.x;
+							final double in012 = image.get(cin); --cin.x;
+							final double in011 = image.get(cin); --cin.x;
+							final double in010 = image.get(cin); ++cin.y;
+							final double in020 = image.get(cin); ++cin.x;
+							final double in021 = image.get(cin); ++cin.x;
+							final double in022 = image.get(cin); ++cin.x;
+							final double in023 = image.get(cin); ++cin.y;
+							final double in033 = image.get(cin); --cin.x;
+							final double in032 = image.get(cin); --cin.x;
+							final double in031 = image.get(cin); --cin.x;
+							final double in030 = image.get(cin); ++cin.z;
+							final double in130 = image.get(cin); ++cin.x;
+							final double in131 = image.get(cin); ++cin.x;
+							final double in132 = image.get(cin); ++cin.x;
+							final double in133 = image.get(cin); --cin.y;
+							final double in123 = image.get(cin); --cin.x;
+							final double in122 = image.get(cin); --cin.x;
+							final double in121 = image.get(cin); --cin.x;
+							final double in120 = image.get(cin); --cin.y;
+							final double in110 = image.get(cin); ++cin.x;
+							final double in111 = image.get(cin); ++cin.x;
+							final double in112 = image.get(cin); ++cin.x;
+							final double in113 = image.get(cin); --cin.y;
+							final double in103 = image.get(cin); --cin.x;
+							final double in102 = image.get(cin); --cin.x;
+							final double in101 = image.get(cin); --cin.x;
+							final double in100 = image.get(cin); ++cin.z;
+							final double in200 = image.get(cin); ++cin.x;
+							final double in201 = image.get(cin); ++cin.x;
+							final double in202 = image.get(cin); ++cin.x;
+							final double in203 = image.get(cin); ++cin.y;
+							final double in213 = image.get(cin); --cin.x;
+							final double in212 = image.get(cin); --cin.x;
+							final double in211 = image.get(cin); --cin.x;
+							final double in210 = image.get(cin); ++cin.y;
+							final double in220 = image.get(cin); ++cin.x;
+							final double in221 = image.get(cin); ++cin.x;
+							final double in222 = image.get(cin); ++cin.x;
+							final double in223 = image.get(cin); ++cin.y;
+							final double in233 = image.get(cin); --cin.x;
+							final double in232 = image.get(cin); --cin.x;
+							final double in231 = image.get(cin); --cin.x;
+							final double in230 = image.get(cin); ++cin.z;
+							final double in330 = image.get(cin); ++cin.x;
+							final double in331 = image.get(cin); ++cin.x;
+							final double in332 = image.get(cin); ++cin.x;
+							final double in333 = image.get(cin); --cin.y;
+							final double in323 = image.get(cin); --cin.x;
+							final double in322 = image.get(cin); --cin.x;
+							final double in321 = image.get(cin); --cin.x;
+							final double in320 = image.get(cin); --cin.y;
+							final double in310 = image.get(cin); ++cin.x;
+							final double in311 = image.get(cin); ++cin.x;
+							final double in312 = image.get(cin); ++cin.x;
+							final double in313 = image.get(cin); --cin.y;
+							final double in303 = image.get(cin); --cin.x;
+							final double in302 = image.get(cin); --cin.x;
+							final double in301 = image.get(cin); --cin.x;
+							final double in300 = image.get(cin);
+							anew[x] = (
+								wzm1*(
+									wym1*(wxm1*in000 + wx00*in001 + wxp1*in002 + wxp2*in003) +
+									wy00*(wxm1*in010 + wx00*in011 + wxp1*in012 + wxp2*in013) +
+									wyp1*(wxm1*in020 + wx00*in021 + wxp1*in022 + wxp2*in023) +
+									wyp2*(wxm1*in030 + wx00*in031 + wxp1*in032 + wxp2*in033)
+								) +
+								wz00*(
+									wym1*(wxm1*in100 + wx00*in101 + wxp1*in102 + wxp2*in103) +
+									wy00*(wxm1*in110 + wx00*in111 + wxp1*in112 + wxp2*in113) +
+									wyp1*(wxm1*in120 + wx00*in121 + wxp1*in122 + wxp2*in123) +
+									wyp2*(wxm1*in130 + wx00*in131 + wxp1*in132 + wxp2*in133)
+								) +
+								wzp1*(
+									wym1*(wxm1*in200 + wx00*in201 + wxp1*in202 + wxp2*in203) +
+									wy00*(wxm1*in210 + wx00*in211 + wxp1*in212 + wxp2*in213) +
+									wyp1*(wxm1*in220 + wx00*in221 + wxp1*in222 + wxp2*in223) +
+									wyp2*(wxm1*in230 + wx00*in231 + wxp1*in232 + wxp2*in233)
+								) +
+								wzp2*(
+									wym1*(wxm1*in300 + wx00*in301 + wxp1*in302 + wxp2*in303) +
+									wy00*(wxm1*in310 + wx00*in311 + wxp1*in312 + wxp2*in313) +
+									wyp1*(wxm1*in320 + wx00*in321 + wxp1*in322 + wxp2*in323) +
+									wyp2*(wxm1*in330 + wx00*in331 + wxp1*in332 + wxp2*in333)
+								)
+							);
 						}
-						rotated.set(cnew,anew);
-						progressor.step();
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -1273,72 +1298,74 @@ private void rotate_bspline3_z(final Image image, final Image rotated) {
 		} else image.mirror(borders);
 		
 		// Rotate using the inverse of the rotation matrix:
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=cin.z=0; cnew.z<newdims.z; ++cnew.z, ++cin.z) {
-					for (cnew.y=0; cnew.y<newdims.y; ++cnew.y) {
-						final double dy = cnew.y - newyoffsetyc;
-						final double xcdysinaz = xc + dy*sinaz;
-						final double ycdycosaz = yc + dy*cosaz;
-						for (int x=0; x<newdims.x; ++x) {
-							final double dx = x - newxoffsetxc;
-							final double tx = xcdysinaz + dx*cosaz;
-							final double ty = ycdycosaz - dx*sinaz;
-							final int ix = FMath.floor(tx);
-							final int iy = FMath.floor(ty);
-							if (ix < -1 || ix > maxx || iy < -1 || iy > maxy)
-								anew[x] = background;
-							else {
-								final double xdiff = tx - ix;
-								final double xmdiff = 1 - xdiff;
-								final double wxm1 = f1o6*xmdiff*xmdiff*xmdiff;
-								final double wx00 = f2o3 + (f1o2*xdiff - 1)*xdiff*xdiff;
-								final double wxp1 = f2o3 + (f1o2*xmdiff - 1)*xmdiff*xmdiff;
-								final double wxp2 = f1o6*xdiff*xdiff*xdiff;
-								final double ydiff = ty - iy;
-								final double ymdiff = 1 - ydiff;
-								final double wym1 = f1o6*ymdiff*ymdiff*ymdiff;
-								final double wy00 = f2o3 + (f1o2*ydiff - 1)*ydiff*ydiff;
-								final double wyp1 = f2o3 + (f1o2*ymdiff - 1)*ymdiff*ymdiff;
-								final double wyp2 = f1o6*ydiff*ydiff*ydiff;
-								cin.x = borders.x + ix - 1;
-								cin.y = borders.y + iy - 1;
-								final double in00 = image.get(cin); ++cin.x;
-								final double in01 = image.get(cin); ++cin.x;
-								final double in02 = image.get(cin); ++cin.x;
-								final double in03 = image.get(cin); ++cin.y;
-								final double in13 = image.get(cin); --cin.x;
-								final double in12 = image.get(cin); --cin.x;
-								final double in11 = image.get(cin); --cin.x;
-								final double in10 = image.get(cin); ++cin.y;
-								final double in20 = image.get(cin); ++cin.x;
-								final double in21 = image.get(cin); ++cin.x;
-								final double in22 = image.get(cin); ++cin.x;
-								final double in23 = image.get(cin); ++cin.y;
-								final double in33 = image.get(cin); --cin.x;
-								final double in32 = image.get(cin); --cin.x;
-								final double in31 = image.get(cin); --cin.x;
-								final double in30 = image.get(cin);
-								anew[x] = (
-									wym1*(wxm1*in00 + wx00*in01 + wxp1*in02 + wxp2*in03) +
-									wy00*(wxm1*in10 + wx00*in11 + wxp1*in12 + wxp2*in13) +
-									wyp1*(wxm1*in20 + wx00*in21 + wxp1*in22 + wxp2*in23) +
-									wyp2*(wxm1*in30 + wx00*in31 + wxp1*in32 + wxp2*in33)
-								);
-							}
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = line % newdims.y;
+					cnew.z = cin.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
+					final double dy = cnew.y - newyoffsetyc;
+					final double xcdysinaz = xc + dy*sinaz;
+					final double ycdycosaz = yc + dy*cosaz;
+					for (int x=0; x<newdims.x; ++x) {
+						final double dx = x - newxoffsetxc;
+						final double tx = xcdysinaz + dx*cosaz;
+						final double ty = ycdycosaz - dx*sinaz;
+						final int ix = FMath.floor(tx);
+						final int iy = FMath.floor(ty);
+						if (ix < -1 || ix > maxx || iy < -1 || iy > maxy)
+							anew[x] = background;
+						else {
+							final double xdiff = tx - ix;
+							final double xmdiff = 1 - xdiff;
+							final double wxm1 = f1o6*xmdiff*xmdiff*xmdiff;
+							final double wx00 = f2o3 + (f1o2*xdiff - 1)*xdiff*xdiff;
+							final double wxp1 = f2o3 + (f1o2*xmdiff - 1)*xmdiff*xmdiff;
+							final double wxp2 = f1o6*xdiff*xdiff*xdiff;
+							final double ydiff = ty - iy;
+							final double ymdiff = 1 - ydiff;
+							final double wym1 = f1o6*ymdiff*ymdiff*ymdiff;
+							final double wy00 = f2o3 + (f1o2*ydiff - 1)*ydiff*ydiff;
+							final double wyp1 = f2o3 + (f1o2*ymdiff - 1)*ymdiff*ymdiff;
+							final double wyp2 = f1o6*ydiff*ydiff*ydiff;
+							cin.x = borders.x + ix - 1;
+							cin.y = borders.y + iy - 1;
+							final double in00 = image.get(cin); ++cin.x;
+							final double in01 = image.get(cin); ++cin.x;
+							final double in02 = image.get(cin); ++cin.x;
+							final double in03 = image.get(cin); ++cin.y;
+							final double in13 = image.get(cin); --cin.x;
+							final double in12 = image.get(cin); --cin.x;
+							final double in11 = image.get(cin); --cin.x;
+							final double in10 = image.get(cin); ++cin.y;
+							final double in20 = image.get(cin); ++cin.x;
+							final double in21 = image.get(cin); ++cin.x;
+							final double in22 = image.get(cin); ++cin.x;
+							final double in23 = image.get(cin); ++cin.y;
+							final double in33 = image.get(cin); --cin.x;
+							final double in32 = image.get(cin); --cin.x;
+							final double in31 = image.get(cin); --cin.x;
+							final double in30 = image.get(cin);
+							anew[x] = (
+								wym1*(wxm1*in00 + wx00*in01 + wxp1*in02 + wxp2*in03) +
+								wy00*(wxm1*in10 + wx00*in11 + wxp1*in12 + wxp2*in13) +
+								wyp1*(wxm1*in20 + wx00*in21 + wxp1*in22 + wxp2*in23) +
+								wyp2*(wxm1*in30 + wx00*in31 + wxp1*in32 + wxp2*in33)
+							);
 						}
-						rotated.set(cnew,anew);
-						progressor.step();
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -1369,72 +1396,74 @@ private void rotate_bspline3_y(final Image image, final Image rotated) {
 		} else image.mirror(borders);
 		
 		// Rotate using the inverse of the rotation matrix:
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=0; cnew.z<newdims.z; ++cnew.z) {
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = cin.y = line % newdims.y;
+					cnew.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
 					final double dz = cnew.z - newzoffsetzc;
 					final double xcdzsinay = xc - dz*sinay;
 					final double zcdzcosay = zc + dz*cosay;
-					for (cnew.y=cin.y=0; cnew.y<newdims.y; ++cnew.y, ++cin.y) {
-						for (int x=0; x<newdims.x; ++x) {
-							final double dx = x - newxoffsetxc;
-							final double tx = xcdzsinay + dx*cosay;
-							final double tz = zcdzcosay + dx*sinay;
-							final int ix = FMath.floor(tx);
-							final int iz = FMath.floor(tz);
-							if (ix < -1 || ix > maxx || iz < -1 || iz > maxz)
-								anew[x] = background;
-							else {
-								final double xdiff = tx - ix;
-								final double xmdiff = 1 - xdiff;
-								final double wxm1 = f1o6*xmdiff*xmdiff*xmdiff;
-								final double wx00 = f2o3 + (f1o2*xdiff - 1)*xdiff*xdiff;
-								final double wxp1 = f2o3 + (f1o2*xmdiff - 1)*xmdiff*xmdiff;
-								final double wxp2 = f1o6*xdiff*xdiff*xdiff;
-								final double zdiff = tz - iz;
-								final double zmdiff = 1 - zdiff;
-								final double wzm1 = f1o6*zmdiff*zmdiff*zmdiff;
-								final double wz00 = f2o3 + (f1o2*zdiff - 1)*zdiff*zdiff;
-								final double wzp1 = f2o3 + (f1o2*zmdiff - 1)*zmdiff*zmdiff;
-								final double wzp2 = f1o6*zdiff*zdiff*zdiff;
-								cin.x = borders.x + ix - 1;
-								cin.z = borders.z + iz - 1;
-								final double in00 = image.get(cin); ++cin.x;
-								final double in01 = image.get(cin); ++cin.x;
-								final double in02 = image.get(cin); ++cin.x;
-								final double in03 = image.get(cin); ++cin.z;
-								final double in13 = image.get(cin); --cin.x;
-								final double in12 = image.get(cin); --cin.x;
-								final double in11 = image.get(cin); --cin.x;
-								final double in10 = image.get(cin); ++cin.z;
-								final double in20 = image.get(cin); ++cin.x;
-								final double in21 = image.get(cin); ++cin.x;
-								final double in22 = image.get(cin); ++cin.x;
-								final double in23 = image.get(cin); ++cin.z;
-								final double in33 = image.get(cin); --cin.x;
-								final double in32 = image.get(cin); --cin.x;
-								final double in31 = image.get(cin); --cin.x;
-								final double in30 = image.get(cin);
-								anew[x] = (
-									wzm1*(wxm1*in00 + wx00*in01 + wxp1*in02 + wxp2*in03) +
-									wz00*(wxm1*in10 + wx00*in11 + wxp1*in12 + wxp2*in13) +
-									wzp1*(wxm1*in20 + wx00*in21 + wxp1*in22 + wxp2*in23) +
-									wzp2*(wxm1*in30 + wx00*in31 + wxp1*in32 + wxp2*in33)
-								);
-							}
+					for (int x=0; x<newdims.x; ++x) {
+						final double dx = x - newxoffsetxc;
+						final double tx = xcdzsinay + dx*cosay;
+						final double tz = zcdzcosay + dx*sinay;
+						final int ix = FMath.floor(tx);
+						final int iz = FMath.floor(tz);
+						if (ix < -1 || ix > maxx || iz < -1 || iz > maxz)
+							anew[x] = background;
+						else {
+							final double xdiff = tx - ix;
+							final double xmdiff = 1 - xdiff;
+							final double wxm1 = f1o6*xmdiff*xmdiff*xmdiff;
+							final double wx00 = f2o3 + (f1o2*xdiff - 1)*xdiff*xdiff;
+							final double wxp1 = f2o3 + (f1o2*xmdiff - 1)*xmdiff*xmdiff;
+							final double wxp2 = f1o6*xdiff*xdiff*xdiff;
+							final double zdiff = tz - iz;
+							final double zmdiff = 1 - zdiff;
+							final double wzm1 = f1o6*zmdiff*zmdiff*zmdiff;
+							final double wz00 = f2o3 + (f1o2*zdiff - 1)*zdiff*zdiff;
+							final double wzp1 = f2o3 + (f1o2*zmdiff - 1)*zmdiff*zmdiff;
+							final double wzp2 = f1o6*zdiff*zdiff*zdiff;
+							cin.x = borders.x + ix - 1;
+							cin.z = borders.z + iz - 1;
+							final double in00 = image.get(cin); ++cin.x;
+							final double in01 = image.get(cin); ++cin.x;
+							final double in02 = image.get(cin); ++cin.x;
+							final double in03 = image.get(cin); ++cin.z;
+							final double in13 = image.get(cin); --cin.x;
+							final double in12 = image.get(cin); --cin.x;
+							final double in11 = image.get(cin); --cin.x;
+							final double in10 = image.get(cin); ++cin.z;
+							final double in20 = image.get(cin); ++cin.x;
+							final double in21 = image.get(cin); ++cin.x;
+							final double in22 = image.get(cin); ++cin.x;
+							final double in23 = image.get(cin); ++cin.z;
+							final double in33 = image.get(cin); --cin.x;
+							final double in32 = image.get(cin); --cin.x;
+							final double in31 = image.get(cin); --cin.x;
+							final double in30 = image.get(cin);
+							anew[x] = (
+								wzm1*(wxm1*in00 + wx00*in01 + wxp1*in02 + wxp2*in03) +
+								wz00*(wxm1*in10 + wx00*in11 + wxp1*in12 + wxp2*in13) +
+								wzp1*(wxm1*in20 + wx00*in21 + wxp1*in22 + wxp2*in23) +
+								wzp2*(wxm1*in30 + wx00*in31 + wxp1*in32 + wxp2*in33)
+							);
 						}
-						rotated.set(cnew,anew);
-						progressor.step();
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -1465,73 +1494,75 @@ private void rotate_bspline3_x(final Image image, final Image rotated) {
 		} else image.mirror(borders);
 		
 		// Rotate using the inverse of the rotation matrix:
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=0; cnew.z<newdims.z; ++cnew.z) {
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = line % newdims.y;
+					cnew.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
 					final double dz = cnew.z - newzoffsetzc;
 					final double ycdzsinax = yc + dz*sinax;
 					final double zcdzcosax = zc + dz*cosax;
-					for (cnew.y=0; cnew.y<newdims.y; ++cnew.y) {
-						final double dy = cnew.y - newyoffsetyc;
-						final double ty = ycdzsinax + dy*cosax;
-						final double tz = zcdzcosax - dy*sinax;
-						final int iy = FMath.floor(ty);
-						final int iz = FMath.floor(tz);
-						if (iy < -1 || iy > maxy || iz < -1 || iz > maxz)
-							for (int x=0; x<newdims.x; ++x) anew[x] = background;
-						else {
-							final double ydiff = ty - iy;
-							final double ymdiff = 1 - ydiff;
-							final double wym1 = f1o6*ymdiff*ymdiff*ymdiff;
-							final double wy00 = f2o3 + (f1o2*ydiff - 1)*ydiff*ydiff;
-							final double wyp1 = f2o3 + (f1o2*ymdiff - 1)*ymdiff*ymdiff;
-							final double wyp2 = f1o6*ydiff*ydiff*ydiff;
-							final double zdiff = tz - iz;
-							final double zmdiff = 1 - zdiff;
-							final double wzm1 = f1o6*zmdiff*zmdiff*zmdiff;
-							final double wz00 = f2o3 + (f1o2*zdiff - 1)*zdiff*zdiff;
-							final double wzp1 = f2o3 + (f1o2*zmdiff - 1)*zmdiff*zmdiff;
-							final double wzp2 = f1o6*zdiff*zdiff*zdiff;
-							cin.y = borders.y + iy - 1;
-							cin.z = borders.z + iz - 1;
-							cin.x = 0;
-							for (int x=0; x<newdims.x; ++x, ++cin.x) {
-								final double in00 = image.get(cin); ++cin.y;
-								final double in01 = image.get(cin); ++cin.y;
-								final double in02 = image.get(cin); ++cin.y;
-								final double in03 = image.get(cin); ++cin.z;
-								final double in13 = image.get(cin); --cin.y;
-								final double in12 = image.get(cin); --cin.y;
-								final double in11 = image.get(cin); --cin.y;
-								final double in10 = image.get(cin); ++cin.z;
-								final double in20 = image.get(cin); ++cin.y;
-								final double in21 = image.get(cin); ++cin.y;
-								final double in22 = image.get(cin); ++cin.y;
-								final double in23 = image.get(cin); ++cin.z;
-								final double in33 = image.get(cin); --cin.y;
-								final double in32 = image.get(cin); --cin.y;
-								final double in31 = image.get(cin); --cin.y;
-								final double in30 = image.get(cin); cin.z -= 3;
-								anew[x] = (
-									wzm1*(wym1*in00 + wy00*in01 + wyp1*in02 + wyp2*in03) +
-									wz00*(wym1*in10 + wy00*in11 + wyp1*in12 + wyp2*in13) +
-									wzp1*(wym1*in20 + wy00*in21 + wyp1*in22 + wyp2*in23) +
-									wzp2*(wym1*in30 + wy00*in31 + wyp1*in32 + wyp2*in33)
-								);
-							}
+					final double dy = cnew.y - newyoffsetyc;
+					final double ty = ycdzsinax + dy*cosax;
+					final double tz = zcdzcosax - dy*sinax;
+					final int iy = FMath.floor(ty);
+					final int iz = FMath.floor(tz);
+					if (iy < -1 || iy > maxy || iz < -1 || iz > maxz)
+						for (int x=0; x<newdims.x; ++x) anew[x] = background;
+					else {
+						final double ydiff = ty - iy;
+						final double ymdiff = 1 - ydiff;
+						final double wym1 = f1o6*ymdiff*ymdiff*ymdiff;
+						final double wy00 = f2o3 + (f1o2*ydiff - 1)*ydiff*ydiff;
+						final double wyp1 = f2o3 + (f1o2*ymdiff - 1)*ymdiff*ymdiff;
+						final double wyp2 = f1o6*ydiff*ydiff*ydiff;
+						final double zdiff = tz - iz;
+						final double zmdiff = 1 - zdiff;
+						final double wzm1 = f1o6*zmdiff*zmdiff*zmdiff;
+						final double wz00 = f2o3 + (f1o2*zdiff - 1)*zdiff*zdiff;
+						final double wzp1 = f2o3 + (f1o2*zmdiff - 1)*zmdiff*zmdiff;
+						final double wzp2 = f1o6*zdiff*zdiff*zdiff;
+						cin.y = borders.y + iy - 1;
+						cin.z = borders.z + iz - 1;
+						cin.x = 0;
+						for (int x=0; x<newdims.x; ++x, ++cin.x) {
+							final double in00 = image.get(cin); ++cin.y;
+							final double in01 = image.get(cin); ++cin.y;
+							final double in02 = image.get(cin); ++cin.y;
+							final double in03 = image.get(cin); ++cin.z;
+							final double in13 = image.get(cin); --cin.y;
+							final double in12 = image.get(cin); --cin.y;
+							final double in11 = image.get(cin); --cin.y;
+							final double in10 = image.get(cin); ++cin.z;
+							final double in20 = image.get(cin); ++cin.y;
+							final double in21 = image.get(cin); ++cin.y;
+							final double in22 = image.get(cin); ++cin.y;
+							final double in23 = image.get(cin); ++cin.z;
+							final double in33 = image.get(cin); --cin.y;
+							final double in32 = image.get(cin); --cin.y;
+							final double in31 = image.get(cin); --cin.y;
+							final double in30 = image.get(cin); cin.z -= 3;
+							anew[x] = (
+								wzm1*(wym1*in00 + wy00*in01 + wyp1*in02 + wyp2*in03) +
+								wz00*(wym1*in10 + wy00*in11 + wyp1*in12 + wyp2*in13) +
+								wzp1*(wym1*in20 + wy00*in21 + wyp1*in22 + wyp2*in23) +
+								wzp2*(wym1*in30 + wy00*in31 + wyp1*in32 + wyp2*in33)
+							);
 						}
-						rotated.set(cnew,anew);
-						progressor.step();
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -1563,154 +1594,156 @@ private void rotate_bspline3_zyx(final Image image, final Image rotated) {
 		} else image.mirror(borders);
 		
 		// Rotate using the inverse of the rotation matrix:
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=0; cnew.z<newdims.z; ++cnew.z) {
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = line % newdims.y;
+					cnew.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
 					final double dz = cnew.z - newzoffsetzc;
 					final double xcdzinvxz = xc + dz*invxz;
 					final double ycdzinvyz = yc + dz*invyz;
 					final double zcdzinvzz = zc + dz*invzz;
-					for (cnew.y=0; cnew.y<newdims.y; ++cnew.y) {
-						final double dy = cnew.y - newyoffsetyc;
-						final double xcdzinvxzdyinvxy = xcdzinvxz + dy*invxy;
-						final double ycdzinvyzdyinvyy = ycdzinvyz + dy*invyy;
-						final double zcdzinvzzdyinvzy = zcdzinvzz + dy*invzy;
-						for (int x=0; x<newdims.x; ++x) {
-							final double dx = x - newxoffsetxc;
-							final double tx = xcdzinvxzdyinvxy + dx*invxx;
-							final double ty = ycdzinvyzdyinvyy + dx*invyx;
-							final double tz = zcdzinvzzdyinvzy + dx*invzx;
-							final int ix = FMath.floor(tx);
-							final int iy = FMath.floor(ty);
-							final int iz = FMath.floor(tz);
-							if (ix < -1 || ix > maxx || iy < -1 || iy > maxy || iz < -1 || iz > maxz)
-								anew[x] = background;
-							else {
-								final double xdiff = tx - ix;
-								final double xmdiff = 1 - xdiff;
-								final double wxm1 = f1o6*xmdiff*xmdiff*xmdiff;
-								final double wx00 = f2o3 + (f1o2*xdiff - 1)*xdiff*xdiff;
-								final double wxp1 = f2o3 + (f1o2*xmdiff - 1)*xmdiff*xmdiff;
-								final double wxp2 = f1o6*xdiff*xdiff*xdiff;
-								final double ydiff = ty - iy;
-								final double ymdiff = 1 - ydiff;
-								final double wym1 = f1o6*ymdiff*ymdiff*ymdiff;
-								final double wy00 = f2o3 + (f1o2*ydiff - 1)*ydiff*ydiff;
-								final double wyp1 = f2o3 + (f1o2*ymdiff - 1)*ymdiff*ymdiff;
-								final double wyp2 = f1o6*ydiff*ydiff*ydiff;
-								final double zdiff = tz - iz;
-								final double zmdiff = 1 - zdiff;
-								final double wzm1 = f1o6*zmdiff*zmdiff*zmdiff;
-								final double wz00 = f2o3 + (f1o2*zdiff - 1)*zdiff*zdiff;
-								final double wzp1 = f2o3 + (f1o2*zmdiff - 1)*zmdiff*zmdiff;
-								final double wzp2 = f1o6*zdiff*zdiff*zdiff;
-								cin.x = borders.x + ix - 1;
-								cin.y = borders.y + iy - 1;
-								cin.z = borders.z + iz - 1;
-								final double in000 = image.get(cin); ++cin.x;
-								final double in001 = image.get(cin); ++cin.x;
-								final double in002 = image.get(cin); ++cin.x;
-								final double in003 = image.get(cin); ++cin.y;
-								final double in013 = image.get(cin); --cin.x;
-								final double in012 = image.get(cin); --cin.x;
-								final double in011 = image.get(cin); --cin.x;
-								final double in010 = image.get(cin); ++cin.y;
-								final double in020 = image.get(cin); ++cin.x;
-								final double in021 = image.get(cin); ++cin.x;
-								final double in022 = image.get(cin); ++cin.x;
-								final double in023 = image.get(cin); ++cin.y;
-								final double in033 = image.get(cin); --cin.x;
-								final double in032 = image.get(cin); --cin.x;
-								final double in031 = image.get(cin); --cin.x;
-								final double in030 = image.get(cin); ++cin.z;
-								final double in130 = image.get(cin); ++cin.x;
-								final double in131 = image.get(cin); ++cin.x;
-								final double in132 = image.get(cin); ++cin.x;
-								final double in133 = image.get(cin); --cin.y;
-								final double in123 = image.get(cin); --cin.x;
-								final double in122 = image.get(cin); --cin.x;
-								final double in121 = image.get(cin); --cin.x;
-								final double in120 = image.get(cin); --cin.y;
-								final double in110 = image.get(cin); ++cin.x;
-								final double in111 = image.get(cin); ++cin.x;
-								final double in112 = image.get(cin); ++cin.x;
-								final double in113 = image.get(cin); --cin.y;
-								final double in103 = image.get(cin); --cin.x;
-								final double in102 = image.get(cin); --cin.x;
-								final double in101 = image.get(cin); --cin.x;
-								final double in100 = image.get(cin); ++cin.z;
-								final double in200 = image.get(cin); ++cin.x;
-								final double in201 = image.get(cin); ++cin.x;
-								final double in202 = image.get(cin); ++cin.x;
-								final double in203 = image.get(cin); ++cin.y;
-								final double in213 = image.get(cin); --cin.x;
-								final double in212 = image.get(cin); --cin.x;
-								final double in211 = image.get(cin); --cin.x;
-								final double in210 = image.get(cin); ++cin.y;
-								final double in220 = image.get(cin); ++cin.x;
-								final double in221 = image.get(cin); ++cin.x;
-								final double in222 = image.get(cin); ++cin.x;
-								final double in223 = image.get(cin); ++cin.y;
-								final double in233 = image.get(cin); --cin.x;
-								final double in232 = image.get(cin); --cin.x;
-								final double in231 = image.get(cin); --cin.x;
-								final double in230 = image.get(cin); ++cin.z;
-								final double in330 = image.get(cin); ++cin.x;
-								final double in331 = image.get(cin); ++cin.x;
-								final double in332 = image.get(cin); ++cin.x;
-								final double in333 = image.get(cin); --cin.y;
-								final double in323 = image.get(cin); --cin.x;
-								final double in322 = image.get(cin); --cin.x;
-								final double in321 = image.get(cin); --cin.x;
-								final double in320 = image.get(cin); --cin.y;
-								final double in310 = image.get(cin); ++cin.x;
-								final double in311 = image.get(cin); ++cin.x;
-								final double in312 = image.get(cin); ++cin.x;
-								final double in313 = image.get(cin); --cin.y;
-								final double in303 = image.get(cin); --cin.x;
-								final double in302 = image.get(cin); --cin.x;
-								final double in301 = image.get(cin); --cin.x;
-								final double in300 = image.get(cin);
-								anew[x] = (
-									wzm1*(
-										wym1*(wxm1*in000 + wx00*in001 + wxp1*in002 + wxp2*in003) +
-										wy00*(wxm1*in010 + wx00*in011 + wxp1*in012 + wxp2*in013) +
-										wyp1*(wxm1*in020 + wx00*in021 + wxp1*in022 + wxp2*in023) +
-										wyp2*(wxm1*in030 + wx00*in031 + wxp1*in032 + wxp2*in033)
-									) +
-									wz00*(
-										wym1*(wxm1*in100 + wx00*in101 + wxp1*in102 + wxp2*in103) +
-										wy00*(wxm1*in110 + wx00*in111 + wxp1*in112 + wxp2*in113) +
-										wyp1*(wxm1*in120 + wx00*in121 + wxp1*in122 + wxp2*in123) +
-										wyp2*(wxm1*in130 + wx00*in131 + wxp1*in132 + wxp2*in133)
-									) +
-									wzp1*(
-										wym1*(wxm1*in200 + wx00*in201 + wxp1*in202 + wxp2*in203) +
-										wy00*(wxm1*in210 + wx00*in211 + wxp1*in212 + wxp2*in213) +
-										wyp1*(wxm1*in220 + wx00*in221 + wxp1*in222 + wxp2*in223) +
-										wyp2*(wxm1*in230 + wx00*in231 + wxp1*in232 + wxp2*in233)
-									) +
-									wzp2*(
-										wym1*(wxm1*in300 + wx00*in301 + wxp1*in302 + wxp2*in303) +
-										wy00*(wxm1*in310 + wx00*in311 + wxp1*in312 + wxp2*in313) +
-										wyp1*(wxm1*in320 + wx00*in321 + wxp1*in322 + wxp2*in323) +
-										wyp2*(wxm1*in330 + wx00*in331 + wxp1*in332 + wxp2*in333)
-									)
-								);
-							}
+					final double dy = cnew.y - newyoffsetyc;
+					final double xcdzinvxzdyinvxy = xcdzinvxz + dy*invxy;
+					final double ycdzinvyzdyinvyy = ycdzinvyz + dy*invyy;
+					final double zcdzinvzzdyinvzy = zcdzinvzz + dy*invzy;
+					for (int x=0; x<newdims.x; ++x) {
+						final double dx = x - newxoffsetxc;
+						final double tx = xcdzinvxzdyinvxy + dx*invxx;
+						final double ty = ycdzinvyzdyinvyy + dx*invyx;
+						final double tz = zcdzinvzzdyinvzy + dx*invzx;
+						final int ix = FMath.floor(tx);
+						final int iy = FMath.floor(ty);
+						final int iz = FMath.floor(tz);
+						if (ix < -1 || ix > maxx || iy < -1 || iy > maxy || iz < -1 || iz > maxz)
+							anew[x] = background;
+						else {
+							final double xdiff = tx - ix;
+							final double xmdiff = 1 - xdiff;
+							final double wxm1 = f1o6*xmdiff*xmdiff*xmdiff;
+							final double wx00 = f2o3 + (f1o2*xdiff - 1)*xdiff*xdiff;
+							final double wxp1 = f2o3 + (f1o2*xmdiff - 1)*xmdiff*xmdiff;
+							final double wxp2 = f1o6*xdiff*xdiff*xdiff;
+							final double ydiff = ty - iy;
+							final double ymdiff = 1 - ydiff;
+							final double wym1 = f1o6*ymdiff*ymdiff*ymdiff;
+							final double wy00 = f2o3 + (f1o2*ydiff - 1)*ydiff*ydiff;
+							final double wyp1 = f2o3 + (f1o2*ymdiff - 1)*ymdiff*ymdiff;
+							final double wyp2 = f1o6*ydiff*ydiff*ydiff;
+							final double zdiff = tz - iz;
+							final double zmdiff = 1 - zdiff;
+							final double wzm1 = f1o6*zmdiff*zmdiff*zmdiff;
+							final double wz00 = f2o3 + (f1o2*zdiff - 1)*zdiff*zdiff;
+							final double wzp1 = f2o3 + (f1o2*zmdiff - 1)*zmdiff*zmdiff;
+							final double wzp2 = f1o6*zdiff*zdiff*zdiff;
+							cin.x = borders.x + ix - 1;
+							cin.y = borders.y + iy - 1;
+							cin.z = borders.z + iz - 1;
+							final double in000 = image.get(cin); ++cin.x;
+							final double in001 = image.get(cin); ++cin.x;
+							final double in002 = image.get(cin); ++cin.x;
+							final double in003 = image.get(cin); ++cin.y;
+							final double in013 = image.get(cin); --cin.x;
+							final double in012 = image.get(cin); --cin.x;
+							final double in011 = image.get(cin); --cin.x;
+							final double in010 = image.get(cin); ++cin.y;
+							final double in020 = image.get(cin); ++cin.x;
+							final double in021 = image.get(cin); ++cin.x;
+							final double in022 = image.get(cin); ++cin.x;
+							final double in023 = image.get(cin); ++cin.y;
+							final double in033 = image.get(cin); --cin.x;
+							final double in032 = image.get(cin); --cin.x;
+							final double in031 = image.get(cin); --cin.x;
+							final double in030 = image.get(cin); ++cin.z;
+							final double in130 = image.get(cin); ++cin.x;
+							final double in131 = image.get(cin); ++cin.x;
+							final double in132 = image.get(cin); ++cin.x;
+							final double in133 = image.get(cin); --cin.y;
+							final double in123 = image.get(cin); --cin.x;
+							final double in122 = image.get(cin); --cin.x;
+							final double in121 = image.get(cin); --cin.x;
+							final double in120 = image.get(cin); --cin.y;
+							final double in110 = image.get(cin); ++cin.x;
+							final double in111 = image.get(cin); ++cin.x;
+							final double in112 = image.get(cin); ++cin.x;
+							final double in113 = image.get(cin); --cin.y;
+							final double in103 = image.get(cin); --cin.x;
+							final double in102 = image.get(cin); --cin.x;
+							final double in101 = image.get(cin); --cin.x;
+							final double in100 = image.get(cin); ++cin.z;
+							final double in200 = image.get(cin); ++cin.x;
+							final double in201 = image.get(cin); ++cin.x;
+							final double in202 = image.get(cin); ++cin.x;
+							final double in203 = image.get(cin); ++cin.y;
+							final double in213 = image.get(cin); --cin.x;
+							final double in212 = image.get(cin); --cin.x;
+							final double in211 = image.get(cin); --cin.x;
+							final double in210 = image.get(cin); ++cin.y;
+							final double in220 = image.get(cin); ++cin.x;
+							final double in221 = image.get(cin); ++cin.x;
+							final double in222 = image.get(cin); ++cin.x;
+							final double in223 = image.get(cin); ++cin.y;
+							final double in233 = image.get(cin); --cin.x;
+							final double in232 = image.get(cin); --cin.x;
+							final double in231 = image.get(cin); --cin.x;
+							final double in230 = image.get(cin); ++cin.z;
+							final double in330 = image.get(cin); ++cin.x;
+							final double in331 = image.get(cin); ++cin.x;
+							final double in332 = image.get(cin); ++cin.x;
+							final double in333 = image.get(cin); --cin.y;
+							final double in323 = image.get(cin); --cin.x;
+							final double in322 = image.get(cin); --cin.x;
+							final double in321 = image.get(cin); --cin.x;
+							final double in320 = image.get(cin); --cin.y;
+							final double in310 = image.get(cin); ++cin.x;
+							final double in311 = image.get(cin); ++cin.x;
+							final double in312 = image.get(cin); ++cin.x;
+							final double in313 = image.get(cin); --cin.y;
+							final double in303 = image.get(cin); --cin.x;
+							final double in302 = image.get(cin); --cin.x;
+							final double in301 = image.get(cin); --cin.x;
+							final double in300 = image.get(cin);
+							anew[x] = (
+								wzm1*(
+									wym1*(wxm1*in000 + wx00*in001 + wxp1*in002 + wxp2*in003) +
+									wy00*(wxm1*in010 + wx00*in011 + wxp1*in012 + wxp2*in013) +
+									wyp1*(wxm1*in020 + wx00*in021 + wxp1*in022 + wxp2*in023) +
+									wyp2*(wxm1*in030 + wx00*in031 + wxp1*in032 + wxp2*in033)
+								) +
+								wz00*(
+									wym1*(wxm1*in100 + wx00*in101 + wxp1*in102 + wxp2*in103) +
+									wy00*(wxm1*in110 + wx00*in111 + wxp1*in112 + wxp2*in113) +
+									wyp1*(wxm1*in120 + wx00*in121 + wxp1*in122 + wxp2*in123) +
+									wyp2*(wxm1*in130 + wx00*in131 + wxp1*in132 + wxp2*in133)
+								) +
+								wzp1*(
+									wym1*(wxm1*in200 + wx00*in201 + wxp1*in202 + wxp2*in203) +
+									wy00*(wxm1*in210 + wx00*in211 + wxp1*in212 + wxp2*in213) +
+									wyp1*(wxm1*in220 + wx00*in221 + wxp1*in222 + wxp2*in223) +
+									wyp2*(wxm1*in230 + wx00*in231 + wxp1*in232 + wxp2*in233)
+								) +
+								wzp2*(
+									wym1*(wxm1*in300 + wx00*in301 + wxp1*in302 + wxp2*in303) +
+									wy00*(wxm1*in310 + wx00*in311 + wxp1*in312 + wxp2*in313) +
+									wyp1*(wxm1*in320 + wx00*in321 + wxp1*in322 + wxp2*in323) +
+									wyp2*(wxm1*in330 + wx00*in331 + wxp1*in332 + wxp2*in333)
+								)
+							);
 						}
-						rotated.set(cnew,anew);
-						progressor.step();
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -1741,72 +1774,74 @@ private void rotate_omoms3_z(final Image image, final Image rotated) {
 		} else image.mirror(borders);
 		
 		// Rotate using the inverse of the rotation matrix:
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=cin.z=0; cnew.z<newdims.z; ++cnew.z, ++cin.z) {
-					for (cnew.y=0; cnew.y<newdims.y; ++cnew.y) {
-						final double dy = cnew.y - newyoffsetyc;
-						final double xcdysinaz = xc + dy*sinaz;
-						final double ycdycosaz = yc + dy*cosaz;
-						for (int x=0; x<newdims.x; ++x) {
-							final double dx = x - newxoffsetxc;
-							final double tx = xcdysinaz + dx*cosaz;
-							final double ty = ycdycosaz - dx*sinaz;
-							final int ix = FMath.floor(tx);
-							final int iy = FMath.floor(ty);
-							if (ix < -1 || ix > maxx || iy < -1 || iy > maxy)
-								anew[x] = background;
-							else {
-								final double xdiff = tx - ix;
-								final double xmdiff = 1 - xdiff;
-								final double wxm1 = xmdiff*(f1o42 + f1o6*xmdiff*xmdiff);
-								final double wx00 = f13o21 + xdiff*(f1o14 + xdiff*(f1o2*xdiff - 1));
-								final double wxp1 = f13o21 + xmdiff*(f1o14 + xmdiff*(f1o2*xmdiff - 1));
-								final double wxp2 = xdiff*(f1o42 + f1o6*xdiff*xdiff);
-								final double ydiff = ty - iy;
-								final double ymdiff = 1 - ydiff;
-								final double wym1 = ymdiff*(f1o42 + f1o6*ymdiff*ymdiff);
-								final double wy00 = f13o21 + ydiff*(f1o14 + ydiff*(f1o2*ydiff - 1));
-								final double wyp1 = f13o21 + ymdiff*(f1o14 + ymdiff*(f1o2*ymdiff - 1));
-								final double wyp2 = ydiff*(f1o42 + f1o6*ydiff*ydiff);
-								cin.x = borders.x + ix - 1;
-								cin.y = borders.y + iy - 1;
-								final double in00 = image.get(cin); ++cin.x;
-								final double in01 = image.get(cin); ++cin.x;
-								final double in02 = image.get(cin); ++cin.x;
-								final double in03 = image.get(cin); ++cin.y;
-								final double in13 = image.get(cin); --cin.x;
-								final double in12 = image.get(cin); --cin.x;
-								final double in11 = image.get(cin); --cin.x;
-								final double in10 = image.get(cin); ++cin.y;
-								final double in20 = image.get(cin); ++cin.x;
-								final double in21 = image.get(cin); ++cin.x;
-								final double in22 = image.get(cin); ++cin.x;
-								final double in23 = image.get(cin); ++cin.y;
-								final double in33 = image.get(cin); --cin.x;
-								final double in32 = image.get(cin); --cin.x;
-								final double in31 = image.get(cin); --cin.x;
-								final double in30 = image.get(cin);
-								anew[x] = (
-									wym1*(wxm1*in00 + wx00*in01 + wxp1*in02 + wxp2*in03) +
-									wy00*(wxm1*in10 + wx00*in11 + wxp1*in12 + wxp2*in13) +
-									wyp1*(wxm1*in20 + wx00*in21 + wxp1*in22 + wxp2*in23) +
-									wyp2*(wxm1*in30 + wx00*in31 + wxp1*in32 + wxp2*in33)
-								);
-							}
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = line % newdims.y;
+					cnew.z = cin.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
+					final double dy = cnew.y - newyoffsetyc;
+					final double xcdysinaz = xc + dy*sinaz;
+					final double ycdycosaz = yc + dy*cosaz;
+					for (int x=0; x<newdims.x; ++x) {
+						final double dx = x - newxoffsetxc;
+						final double tx = xcdysinaz + dx*cosaz;
+						final double ty = ycdycosaz - dx*sinaz;
+						final int ix = FMath.floor(tx);
+						final int iy = FMath.floor(ty);
+						if (ix < -1 || ix > maxx || iy < -1 || iy > maxy)
+							anew[x] = background;
+						else {
+							final double xdiff = tx - ix;
+							final double xmdiff = 1 - xdiff;
+							final double wxm1 = xmdiff*(f1o42 + f1o6*xmdiff*xmdiff);
+							final double wx00 = f13o21 + xdiff*(f1o14 + xdiff*(f1o2*xdiff - 1));
+							final double wxp1 = f13o21 + xmdiff*(f1o14 + xmdiff*(f1o2*xmdiff - 1));
+							final double wxp2 = xdiff*(f1o42 + f1o6*xdiff*xdiff);
+							final double ydiff = ty - iy;
+							final double ymdiff = 1 - ydiff;
+							final double wym1 = ymdiff*(f1o42 + f1o6*ymdiff*ymdiff);
+							final double wy00 = f13o21 + ydiff*(f1o14 + ydiff*(f1o2*ydiff - 1));
+							final double wyp1 = f13o21 + ymdiff*(f1o14 + ymdiff*(f1o2*ymdiff - 1));
+							final double wyp2 = ydiff*(f1o42 + f1o6*ydiff*ydiff);
+							cin.x = borders.x + ix - 1;
+							cin.y = borders.y + iy - 1;
+							final double in00 = image.get(cin); ++cin.x;
+							final double in01 = image.get(cin); ++cin.x;
+							final double in02 = image.get(cin); ++cin.x;
+							final double in03 = image.get(cin); ++cin.y;
+							final double in13 = image.get(cin); --cin.x;
+							final double in12 = image.get(cin); --cin.x;
+							final double in11 = image.get(cin); --cin.x;
+							final double in10 = image.get(cin); ++cin.y;
+							final double in20 = image.get(cin); ++cin.x;
+							final double in21 = image.get(cin); ++cin.x;
+							final double in22 = image.get(cin); ++cin.x;
+							final double in23 = image.get(cin); ++cin.y;
+							final double in33 = image.get(cin); --cin.x;
+							final double in32 = image.get(cin); --cin.x;
+							final double in31 = image.get(cin); --cin.x;
+							final double in30 = image.get(cin);
+							anew[x] = (
+								wym1*(wxm1*in00 + wx00*in01 + wxp1*in02 + wxp2*in03) +
+								wy00*(wxm1*in10 + wx00*in11 + wxp1*in12 + wxp2*in13) +
+								wyp1*(wxm1*in20 + wx00*in21 + wxp1*in22 + wxp2*in23) +
+								wyp2*(wxm1*in30 + wx00*in31 + wxp1*in32 + wxp2*in33)
+							);
 						}
-						rotated.set(cnew,anew);
-						progressor.step();
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -1837,72 +1872,74 @@ private void rotate_omoms3_y(final Image image, final Image rotated) {
 		} else image.mirror(borders);
 		
 		// Rotate using the inverse of the rotation matrix:
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=0; cnew.z<newdims.z; ++cnew.z) {
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = cin.y = line % newdims.y;
+					cnew.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
 					final double dz = cnew.z - newzoffsetzc;
 					final double xcdzsinay = xc - dz*sinay;
 					final double zcdzcosay = zc + dz*cosay;
-					for (cnew.y=cin.y=0; cnew.y<newdims.y; ++cnew.y, ++cin.y) {
-						for (int x=0; x<newdims.x; ++x) {
-							final double dx = x - newxoffsetxc;
-							final double tx = xcdzsinay + dx*cosay;
-							final double tz = zcdzcosay + dx*sinay;
-							final int ix = FMath.floor(tx);
-							final int iz = FMath.floor(tz);
-							if (ix < -1 || ix > maxx || iz < -1 || iz > maxz)
-								anew[x] = background;
-							else {
-								final double xdiff = tx - ix;
-								final double xmdiff = 1 - xdiff;
-								final double wxm1 = xmdiff*(f1o42 + f1o6*xmdiff*xmdiff);
-								final double wx00 = f13o21 + xdiff*(f1o14 + xdiff*(f1o2*xdiff - 1));
-								final double wxp1 = f13o21 + xmdiff*(f1o14 + xmdiff*(f1o2*xmdiff - 1));
-								final double wxp2 = xdiff*(f1o42 + f1o6*xdiff*xdiff);
-								final double zdiff = tz - iz;
-								final double zmdiff = 1 - zdiff;
-								final double wzm1 = zmdiff*(f1o42 + f1o6*zmdiff*zmdiff);
-								final double wz00 = f13o21 + zdiff*(f1o14 + zdiff*(f1o2*zdiff - 1));
-								final double wzp1 = f13o21 + zmdiff*(f1o14 + zmdiff*(f1o2*zmdiff - 1));
-								final double wzp2 = zdiff*(f1o42 + f1o6*zdiff*zdiff);
-								cin.x = borders.x + ix - 1;
-								cin.z = borders.z + iz - 1;
-								final double in00 = image.get(cin); ++cin.x;
-								final double in01 = image.get(cin); ++cin.x;
-								final double in02 = image.get(cin); ++cin.x;
-								final double in03 = image.get(cin); ++cin.z;
-								final double in13 = image.get(cin); --cin.x;
-								final double in12 = image.get(cin); --cin.x;
-								final double in11 = image.get(cin); --cin.x;
-								final double in10 = image.get(cin); ++cin.z;
-								final double in20 = image.get(cin); ++cin.x;
-								final double in21 = image.get(cin); ++cin.x;
-								final double in22 = image.get(cin); ++cin.x;
-								final double in23 = image.get(cin); ++cin.z;
-								final double in33 = image.get(cin); --cin.x;
-								final double in32 = image.get(cin); --cin.x;
-								final double in31 = image.get(cin); --cin.x;
-								final double in30 = image.get(cin);
-								anew[x] = (
-									wzm1*(wxm1*in00 + wx00*in01 + wxp1*in02 + wxp2*in03) +
-									wz00*(wxm1*in10 + wx00*in11 + wxp1*in12 + wxp2*in13) +
-									wzp1*(wxm1*in20 + wx00*in21 + wxp1*in22 + wxp2*in23) +
-									wzp2*(wxm1*in30 + wx00*in31 + wxp1*in32 + wxp2*in33)
-								);
-							}
+					for (int x=0; x<newdims.x; ++x) {
+						final double dx = x - newxoffsetxc;
+						final double tx = xcdzsinay + dx*cosay;
+						final double tz = zcdzcosay + dx*sinay;
+						final int ix = FMath.floor(tx);
+						final int iz = FMath.floor(tz);
+						if (ix < -1 || ix > maxx || iz < -1 || iz > maxz)
+							anew[x] = background;
+						else {
+							final double xdiff = tx - ix;
+							final double xmdiff = 1 - xdiff;
+							final double wxm1 = xmdiff*(f1o42 + f1o6*xmdiff*xmdiff);
+							final double wx00 = f13o21 + xdiff*(f1o14 + xdiff*(f1o2*xdiff - 1));
+							final double wxp1 = f13o21 + xmdiff*(f1o14 + xmdiff*(f1o2*xmdiff - 1));
+							final double wxp2 = xdiff*(f1o42 + f1o6*xdiff*xdiff);
+							final double zdiff = tz - iz;
+							final double zmdiff = 1 - zdiff;
+							final double wzm1 = zmdiff*(f1o42 + f1o6*zmdiff*zmdiff);
+							final double wz00 = f13o21 + zdiff*(f1o14 + zdiff*(f1o2*zdiff - 1));
+							final double wzp1 = f13o21 + zmdiff*(f1o14 + zmdiff*(f1o2*zmdiff - 1));
+							final double wzp2 = zdiff*(f1o42 + f1o6*zdiff*zdiff);
+							cin.x = borders.x + ix - 1;
+							cin.z = borders.z + iz - 1;
+							final double in00 = image.get(cin); ++cin.x;
+							final double in01 = image.get(cin); ++cin.x;
+							final double in02 = image.get(cin); ++cin.x;
+							final double in03 = image.get(cin); ++cin.z;
+							final double in13 = image.get(cin); --cin.x;
+							final double in12 = image.get(cin); --cin.x;
+							final double in11 = image.get(cin); --cin.x;
+							final double in10 = image.get(cin); ++cin.z;
+							final double in20 = image.get(cin); ++cin.x;
+							final double in21 = image.get(cin); ++cin.x;
+							final double in22 = image.get(cin); ++cin.x;
+							final double in23 = image.get(cin); ++cin.z;
+							final double in33 = image.get(cin); --cin.x;
+							final double in32 = image.get(cin); --cin.x;
+							final double in31 = image.get(cin); --cin.x;
+							final double in30 = image.get(cin);
+							anew[x] = (
+								wzm1*(wxm1*in00 + wx00*in01 + wxp1*in02 + wxp2*in03) +
+								wz00*(wxm1*in10 + wx00*in11 + wxp1*in12 + wxp2*in13) +
+								wzp1*(wxm1*in20 + wx00*in21 + wxp1*in22 + wxp2*in23) +
+								wzp2*(wxm1*in30 + wx00*in31 + wxp1*in32 + wxp2*in33)
+							);
 						}
-						rotated.set(cnew,anew);
-						progressor.step();
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -1933,73 +1970,75 @@ private void rotate_omoms3_x(final Image image, final Image rotated) {
 		} else image.mirror(borders);
 		
 		// Rotate using the inverse of the rotation matrix:
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=0; cnew.z<newdims.z; ++cnew.z) {
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = line % newdims.y;
+					cnew.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
 					final double dz = cnew.z - newzoffsetzc;
 					final double ycdzsinax = yc + dz*sinax;
 					final double zcdzcosax = zc + dz*cosax;
-					for (cnew.y=0; cnew.y<newdims.y; ++cnew.y) {
-						final double dy = cnew.y - newyoffsetyc;
-						final double ty = ycdzsinax + dy*cosax;
-						final double tz = zcdzcosax - dy*sinax;
-						final int iy = FMath.floor(ty);
-						final int iz = FMath.floor(tz);
-						if (iy < -1 || iy > maxy || iz < -1 || iz > maxz)
-							for (int x=0; x<newdims.x; ++x) anew[x] = background;
-						else {
-							final double ydiff = ty - iy;
-							final double ymdiff = 1 - ydiff;
-							final double wym1 = ymdiff*(f1o42 + f1o6*ymdiff*ymdiff);
-							final double wy00 = f13o21 + ydiff*(f1o14 + ydiff*(f1o2*ydiff - 1));
-							final double wyp1 = f13o21 + ymdiff*(f1o14 + ymdiff*(f1o2*ymdiff - 1));
-							final double wyp2 = ydiff*(f1o42 + f1o6*ydiff*ydiff);
-							final double zdiff = tz - iz;
-							final double zmdiff = 1 - zdiff;
-							final double wzm1 = zmdiff*(f1o42 + f1o6*zmdiff*zmdiff);
-							final double wz00 = f13o21 + zdiff*(f1o14 + zdiff*(f1o2*zdiff - 1));
-							final double wzp1 = f13o21 + zmdiff*(f1o14 + zmdiff*(f1o2*zmdiff - 1));
-							final double wzp2 = zdiff*(f1o42 + f1o6*zdiff*zdiff);
-							cin.y = borders.y + iy - 1;
-							cin.z = borders.z + iz - 1;
-							cin.x = 0;
-							for (int x=0; x<newdims.x; ++x, ++cin.x) {
-								final double in00 = image.get(cin); ++cin.y;
-								final double in01 = image.get(cin); ++cin.y;
-								final double in02 = image.get(cin); ++cin.y;
-								final double in03 = image.get(cin); ++cin.z;
-								final double in13 = image.get(cin); --cin.y;
-								final double in12 = image.get(cin); --cin.y;
-								final double in11 = image.get(cin); --cin.y;
-								final double in10 = image.get(cin); ++cin.z;
-								final double in20 = image.get(cin); ++cin.y;
-								final double in21 = image.get(cin); ++cin.y;
-								final double in22 = image.get(cin); ++cin.y;
-								final double in23 = image.get(cin); ++cin.z;
-								final double in33 = image.get(cin); --cin.y;
-								final double in32 = image.get(cin); --cin.y;
-								final double in31 = image.get(cin); --cin.y;
-								final double in30 = image.get(cin); cin.z -= 3;
-								anew[x] = (
-									wzm1*(wym1*in00 + wy00*in01 + wyp1*in02 + wyp2*in03) +
-									wz00*(wym1*in10 + wy00*in11 + wyp1*in12 + wyp2*in13) +
-									wzp1*(wym1*in20 + wy00*in21 + wyp1*in22 + wyp2*in23) +
-									wzp2*(wym1*in30 + wy00*in31 + wyp1*in32 + wyp2*in33)
-								);
-							}
+					final double dy = cnew.y - newyoffsetyc;
+					final double ty = ycdzsinax + dy*cosax;
+					final double tz = zcdzcosax - dy*sinax;
+					final int iy = FMath.floor(ty);
+					final int iz = FMath.floor(tz);
+					if (iy < -1 || iy > maxy || iz < -1 || iz > maxz)
+						for (int x=0; x<newdims.x; ++x) anew[x] = background;
+					else {
+						final double ydiff = ty - iy;
+						final double ymdiff = 1 - ydiff;
+						final double wym1 = ymdiff*(f1o42 + f1o6*ymdiff*ymdiff);
+						final double wy00 = f13o21 + ydiff*(f1o14 + ydiff*(f1o2*ydiff - 1));
+						final double wyp1 = f13o21 + ymdiff*(f1o14 + ymdiff*(f1o2*ymdiff - 1));
+						final double wyp2 = ydiff*(f1o42 + f1o6*ydiff*ydiff);
+						final double zdiff = tz - iz;
+						final double zmdiff = 1 - zdiff;
+						final double wzm1 = zmdiff*(f1o42 + f1o6*zmdiff*zmdiff);
+						final double wz00 = f13o21 + zdiff*(f1o14 + zdiff*(f1o2*zdiff - 1));
+						final double wzp1 = f13o21 + zmdiff*(f1o14 + zmdiff*(f1o2*zmdiff - 1));
+						final double wzp2 = zdiff*(f1o42 + f1o6*zdiff*zdiff);
+						cin.y = borders.y + iy - 1;
+						cin.z = borders.z + iz - 1;
+						cin.x = 0;
+						for (int x=0; x<newdims.x; ++x, ++cin.x) {
+							final double in00 = image.get(cin); ++cin.y;
+							final double in01 = image.get(cin); ++cin.y;
+							final double in02 = image.get(cin); ++cin.y;
+							final double in03 = image.get(cin); ++cin.z;
+							final double in13 = image.get(cin); --cin.y;
+							final double in12 = image.get(cin); --cin.y;
+							final double in11 = image.get(cin); --cin.y;
+							final double in10 = image.get(cin); ++cin.z;
+							final double in20 = image.get(cin); ++cin.y;
+							final double in21 = image.get(cin); ++cin.y;
+							final double in22 = image.get(cin); ++cin.y;
+							final double in23 = image.get(cin); ++cin.z;
+							final double in33 = image.get(cin); --cin.y;
+							final double in32 = image.get(cin); --cin.y;
+							final double in31 = image.get(cin); --cin.y;
+							final double in30 = image.get(cin); cin.z -= 3;
+							anew[x] = (
+								wzm1*(wym1*in00 + wy00*in01 + wyp1*in02 + wyp2*in03) +
+								wz00*(wym1*in10 + wy00*in11 + wyp1*in12 + wyp2*in13) +
+								wzp1*(wym1*in20 + wy00*in21 + wyp1*in22 + wyp2*in23) +
+								wzp2*(wym1*in30 + wy00*in31 + wyp1*in32 + wyp2*in33)
+							);
 						}
-						rotated.set(cnew,anew);
-						progressor.step();
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -2031,154 +2070,156 @@ private void rotate_omoms3_zyx(final Image image, final Image rotated) {
 		} else image.mirror(borders);
 		
 		// Rotate using the inverse of the rotation matrix:
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=0; cnew.z<newdims.z; ++cnew.z) {
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = line % newdims.y;
+					cnew.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
 					final double dz = cnew.z - newzoffsetzc;
 					final double xcdzinvxz = xc + dz*invxz;
 					final double ycdzinvyz = yc + dz*invyz;
 					final double zcdzinvzz = zc + dz*invzz;
-					for (cnew.y=0; cnew.y<newdims.y; ++cnew.y) {
-						final double dy = cnew.y - newyoffsetyc;
-						final double xcdzinvxzdyinvxy = xcdzinvxz + dy*invxy;
-						final double ycdzinvyzdyinvyy = ycdzinvyz + dy*invyy;
-						final double zcdzinvzzdyinvzy = zcdzinvzz + dy*invzy;
-						for (int x=0; x<newdims.x; ++x) {
-							final double dx = x - newxoffsetxc;
-							final double tx = xcdzinvxzdyinvxy + dx*invxx;
-							final double ty = ycdzinvyzdyinvyy + dx*invyx;
-							final double tz = zcdzinvzzdyinvzy + dx*invzx;
-							final int ix = FMath.floor(tx);
-							final int iy = FMath.floor(ty);
-							final int iz = FMath.floor(tz);
-							if (ix < -1 || ix > maxx || iy < -1 || iy > maxy || iz < -1 || iz > maxz)
-								anew[x] = background;
-							else {
-								final double xdiff = tx - ix;
-								final double xmdiff = 1 - xdiff;
-								final double wxm1 = xmdiff*(f1o42 + f1o6*xmdiff*xmdiff);
-								final double wx00 = f13o21 + xdiff*(f1o14 + xdiff*(f1o2*xdiff - 1));
-								final double wxp1 = f13o21 + xmdiff*(f1o14 + xmdiff*(f1o2*xmdiff - 1));
-								final double wxp2 = xdiff*(f1o42 + f1o6*xdiff*xdiff);
-								final double ydiff = ty - iy;
-								final double ymdiff = 1 - ydiff;
-								final double wym1 = ymdiff*(f1o42 + f1o6*ymdiff*ymdiff);
-								final double wy00 = f13o21 + ydiff*(f1o14 + ydiff*(f1o2*ydiff - 1));
-								final double wyp1 = f13o21 + ymdiff*(f1o14 + ymdiff*(f1o2*ymdiff - 1));
-								final double wyp2 = ydiff*(f1o42 + f1o6*ydiff*ydiff);
-								final double zdiff = tz - iz;
-								final double zmdiff = 1 - zdiff;
-								final double wzm1 = zmdiff*(f1o42 + f1o6*zmdiff*zmdiff);
-								final double wz00 = f13o21 + zdiff*(f1o14 + zdiff*(f1o2*zdiff - 1));
-								final double wzp1 = f13o21 + zmdiff*(f1o14 + zmdiff*(f1o2*zmdiff - 1));
-								final double wzp2 = zdiff*(f1o42 + f1o6*zdiff*zdiff);
-								cin.x = borders.x + ix - 1;
-								cin.y = borders.y + iy - 1;
-								cin.z = borders.z + iz - 1;
-								final double in000 = image.get(cin); ++cin.x;
-								final double in001 = image.get(cin); ++cin.x;
-								final double in002 = image.get(cin); ++cin.x;
-								final double in003 = image.get(cin); ++cin.y;
-								final double in013 = image.get(cin); --cin.x;
-								final double in012 = image.get(cin); --cin.x;
-								final double in011 = image.get(cin); --cin.x;
-								final double in010 = image.get(cin); ++cin.y;
-								final double in020 = image.get(cin); ++cin.x;
-								final double in021 = image.get(cin); ++cin.x;
-								final double in022 = image.get(cin); ++cin.x;
-								final double in023 = image.get(cin); ++cin.y;
-								final double in033 = image.get(cin); --cin.x;
-								final double in032 = image.get(cin); --cin.x;
-								final double in031 = image.get(cin); --cin.x;
-								final double in030 = image.get(cin); ++cin.z;
-								final double in130 = image.get(cin); ++cin.x;
-								final double in131 = image.get(cin); ++cin.x;
-								final double in132 = image.get(cin); ++cin.x;
-								final double in133 = image.get(cin); --cin.y;
-								final double in123 = image.get(cin); --cin.x;
-								final double in122 = image.get(cin); --cin.x;
-								final double in121 = image.get(cin); --cin.x;
-								final double in120 = image.get(cin); --cin.y;
-								final double in110 = image.get(cin); ++cin.x;
-								final double in111 = image.get(cin); ++cin.x;
-								final double in112 = image.get(cin); ++cin.x;
-								final double in113 = image.get(cin); --cin.y;
-								final double in103 = image.get(cin); --cin.x;
-								final double in102 = image.get(cin); --cin.x;
-								final double in101 = image.get(cin); --cin.x;
-								final double in100 = image.get(cin); ++cin.z;
-								final double in200 = image.get(cin); ++cin.x;
-								final double in201 = image.get(cin); ++cin.x;
-								final double in202 = image.get(cin); ++cin.x;
-								final double in203 = image.get(cin); ++cin.y;
-								final double in213 = image.get(cin); --cin.x;
-								final double in212 = image.get(cin); --cin.x;
-								final double in211 = image.get(cin); --cin.x;
-								final double in210 = image.get(cin); ++cin.y;
-								final double in220 = image.get(cin); ++cin.x;
-								final double in221 = image.get(cin); ++cin.x;
-								final double in222 = image.get(cin); ++cin.x;
-								final double in223 = image.get(cin); ++cin.y;
-								final double in233 = image.get(cin); --cin.x;
-								final double in232 = image.get(cin); --cin.x;
-								final double in231 = image.get(cin); --cin.x;
-								final double in230 = image.get(cin); ++cin.z;
-								final double in330 = image.get(cin); ++cin.x;
-								final double in331 = image.get(cin); ++cin.x;
-								final double in332 = image.get(cin); ++cin.x;
-								final double in333 = image.get(cin); --cin.y;
-								final double in323 = image.get(cin); --cin.x;
-								final double in322 = image.get(cin); --cin.x;
-								final double in321 = image.get(cin); --cin.x;
-								final double in320 = image.get(cin); --cin.y;
-								final double in310 = image.get(cin); ++cin.x;
-								final double in311 = image.get(cin); ++cin.x;
-								final double in312 = image.get(cin); ++cin.x;
-								final double in313 = image.get(cin); --cin.y;
-								final double in303 = image.get(cin); --cin.x;
-								final double in302 = image.get(cin); --cin.x;
-								final double in301 = image.get(cin); --cin.x;
-								final double in300 = image.get(cin);
-								anew[x] = (
-									wzm1*(
-										wym1*(wxm1*in000 + wx00*in001 + wxp1*in002 + wxp2*in003) +
-										wy00*(wxm1*in010 + wx00*in011 + wxp1*in012 + wxp2*in013) +
-										wyp1*(wxm1*in020 + wx00*in021 + wxp1*in022 + wxp2*in023) +
-										wyp2*(wxm1*in030 + wx00*in031 + wxp1*in032 + wxp2*in033)
-									) +
-									wz00*(
-										wym1*(wxm1*in100 + wx00*in101 + wxp1*in102 + wxp2*in103) +
-										wy00*(wxm1*in110 + wx00*in111 + wxp1*in112 + wxp2*in113) +
-										wyp1*(wxm1*in120 + wx00*in121 + wxp1*in122 + wxp2*in123) +
-										wyp2*(wxm1*in130 + wx00*in131 + wxp1*in132 + wxp2*in133)
-									) +
-									wzp1*(
-										wym1*(wxm1*in200 + wx00*in201 + wxp1*in202 + wxp2*in203) +
-										wy00*(wxm1*in210 + wx00*in211 + wxp1*in212 + wxp2*in213) +
-										wyp1*(wxm1*in220 + wx00*in221 + wxp1*in222 + wxp2*in223) +
-										wyp2*(wxm1*in230 + wx00*in231 + wxp1*in232 + wxp2*in233)
-									) +
-									wzp2*(
-										wym1*(wxm1*in300 + wx00*in301 + wxp1*in302 + wxp2*in303) +
-										wy00*(wxm1*in310 + wx00*in311 + wxp1*in312 + wxp2*in313) +
-										wyp1*(wxm1*in320 + wx00*in321 + wxp1*in322 + wxp2*in323) +
-										wyp2*(wxm1*in330 + wx00*in331 + wxp1*in332 + wxp2*in333)
-									)
-								);
-							}
+					final double dy = cnew.y - newyoffsetyc;
+					final double xcdzinvxzdyinvxy = xcdzinvxz + dy*invxy;
+					final double ycdzinvyzdyinvyy = ycdzinvyz + dy*invyy;
+					final double zcdzinvzzdyinvzy = zcdzinvzz + dy*invzy;
+					for (int x=0; x<newdims.x; ++x) {
+						final double dx = x - newxoffsetxc;
+						final double tx = xcdzinvxzdyinvxy + dx*invxx;
+						final double ty = ycdzinvyzdyinvyy + dx*invyx;
+						final double tz = zcdzinvzzdyinvzy + dx*invzx;
+						final int ix = FMath.floor(tx);
+						final int iy = FMath.floor(ty);
+						final int iz = FMath.floor(tz);
+						if (ix < -1 || ix > maxx || iy < -1 || iy > maxy || iz < -1 || iz > maxz)
+							anew[x] = background;
+						else {
+							final double xdiff = tx - ix;
+							final double xmdiff = 1 - xdiff;
+							final double wxm1 = xmdiff*(f1o42 + f1o6*xmdiff*xmdiff);
+							final double wx00 = f13o21 + xdiff*(f1o14 + xdiff*(f1o2*xdiff - 1));
+							final double wxp1 = f13o21 + xmdiff*(f1o14 + xmdiff*(f1o2*xmdiff - 1));
+							final double wxp2 = xdiff*(f1o42 + f1o6*xdiff*xdiff);
+							final double ydiff = ty - iy;
+							final double ymdiff = 1 - ydiff;
+							final double wym1 = ymdiff*(f1o42 + f1o6*ymdiff*ymdiff);
+							final double wy00 = f13o21 + ydiff*(f1o14 + ydiff*(f1o2*ydiff - 1));
+							final double wyp1 = f13o21 + ymdiff*(f1o14 + ymdiff*(f1o2*ymdiff - 1));
+							final double wyp2 = ydiff*(f1o42 + f1o6*ydiff*ydiff);
+							final double zdiff = tz - iz;
+							final double zmdiff = 1 - zdiff;
+							final double wzm1 = zmdiff*(f1o42 + f1o6*zmdiff*zmdiff);
+							final double wz00 = f13o21 + zdiff*(f1o14 + zdiff*(f1o2*zdiff - 1));
+							final double wzp1 = f13o21 + zmdiff*(f1o14 + zmdiff*(f1o2*zmdiff - 1));
+							final double wzp2 = zdiff*(f1o42 + f1o6*zdiff*zdiff);
+							cin.x = borders.x + ix - 1;
+							cin.y = borders.y + iy - 1;
+							cin.z = borders.z + iz - 1;
+							final double in000 = image.get(cin); ++cin.x;
+							final double in001 = image.get(cin); ++cin.x;
+							final double in002 = image.get(cin); ++cin.x;
+							final double in003 = image.get(cin); ++cin.y;
+							final double in013 = image.get(cin); --cin.x;
+							final double in012 = image.get(cin); --cin.x;
+							final double in011 = image.get(cin); --cin.x;
+							final double in010 = image.get(cin); ++cin.y;
+							final double in020 = image.get(cin); ++cin.x;
+							final double in021 = image.get(cin); ++cin.x;
+							final double in022 = image.get(cin); ++cin.x;
+							final double in023 = image.get(cin); ++cin.y;
+							final double in033 = image.get(cin); --cin.x;
+							final double in032 = image.get(cin); --cin.x;
+							final double in031 = image.get(cin); --cin.x;
+							final double in030 = image.get(cin); ++cin.z;
+							final double in130 = image.get(cin); ++cin.x;
+							final double in131 = image.get(cin); ++cin.x;
+							final double in132 = image.get(cin); ++cin.x;
+							final double in133 = image.get(cin); --cin.y;
+							final double in123 = image.get(cin); --cin.x;
+							final double in122 = image.get(cin); --cin.x;
+							final double in121 = image.get(cin); --cin.x;
+							final double in120 = image.get(cin); --cin.y;
+							final double in110 = image.get(cin); ++cin.x;
+							final double in111 = image.get(cin); ++cin.x;
+							final double in112 = image.get(cin); ++cin.x;
+							final double in113 = image.get(cin); --cin.y;
+							final double in103 = image.get(cin); --cin.x;
+							final double in102 = image.get(cin); --cin.x;
+							final double in101 = image.get(cin); --cin.x;
+							final double in100 = image.get(cin); ++cin.z;
+							final double in200 = image.get(cin); ++cin.x;
+							final double in201 = image.get(cin); ++cin.x;
+							final double in202 = image.get(cin); ++cin.x;
+							final double in203 = image.get(cin); ++cin.y;
+							final double in213 = image.get(cin); --cin.x;
+							final double in212 = image.get(cin); --cin.x;
+							final double in211 = image.get(cin); --cin.x;
+							final double in210 = image.get(cin); ++cin.y;
+							final double in220 = image.get(cin); ++cin.x;
+							final double in221 = image.get(cin); ++cin.x;
+							final double in222 = image.get(cin); ++cin.x;
+							final double in223 = image.get(cin); ++cin.y;
+							final double in233 = image.get(cin); --cin.x;
+							final double in232 = image.get(cin); --cin.x;
+							final double in231 = image.get(cin); --cin.x;
+							final double in230 = image.get(cin); ++cin.z;
+							final double in330 = image.get(cin); ++cin.x;
+							final double in331 = image.get(cin); ++cin.x;
+							final double in332 = image.get(cin); ++cin.x;
+							final double in333 = image.get(cin); --cin.y;
+							final double in323 = image.get(cin); --cin.x;
+							final double in322 = image.get(cin); --cin.x;
+							final double in321 = image.get(cin); --cin.x;
+							final double in320 = image.get(cin); --cin.y;
+							final double in310 = image.get(cin); ++cin.x;
+							final double in311 = image.get(cin); ++cin.x;
+							final double in312 = image.get(cin); ++cin.x;
+							final double in313 = image.get(cin); --cin.y;
+							final double in303 = image.get(cin); --cin.x;
+							final double in302 = image.get(cin); --cin.x;
+							final double in301 = image.get(cin); --cin.x;
+							final double in300 = image.get(cin);
+							anew[x] = (
+								wzm1*(
+									wym1*(wxm1*in000 + wx00*in001 + wxp1*in002 + wxp2*in003) +
+									wy00*(wxm1*in010 + wx00*in011 + wxp1*in012 + wxp2*in013) +
+									wyp1*(wxm1*in020 + wx00*in021 + wxp1*in022 + wxp2*in023) +
+									wyp2*(wxm1*in030 + wx00*in031 + wxp1*in032 + wxp2*in033)
+								) +
+								wz00*(
+									wym1*(wxm1*in100 + wx00*in101 + wxp1*in102 + wxp2*in103) +
+									wy00*(wxm1*in110 + wx00*in111 + wxp1*in112 + wxp2*in113) +
+									wyp1*(wxm1*in120 + wx00*in121 + wxp1*in122 + wxp2*in123) +
+									wyp2*(wxm1*in130 + wx00*in131 + wxp1*in132 + wxp2*in133)
+								) +
+								wzp1*(
+									wym1*(wxm1*in200 + wx00*in201 + wxp1*in202 + wxp2*in203) +
+									wy00*(wxm1*in210 + wx00*in211 + wxp1*in212 + wxp2*in213) +
+									wyp1*(wxm1*in220 + wx00*in221 + wxp1*in222 + wxp2*in223) +
+									wyp2*(wxm1*in230 + wx00*in231 + wxp1*in232 + wxp2*in233)
+								) +
+								wzp2*(
+									wym1*(wxm1*in300 + wx00*in301 + wxp1*in302 + wxp2*in303) +
+									wy00*(wxm1*in310 + wx00*in311 + wxp1*in312 + wxp2*in313) +
+									wyp1*(wxm1*in320 + wx00*in321 + wxp1*in322 + wxp2*in323) +
+									wyp2*(wxm1*in330 + wx00*in331 + wxp1*in332 + wxp2*in333)
+								)
+							);
 						}
-						rotated.set(cnew,anew);
-						progressor.step();
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -2209,102 +2250,104 @@ private void rotate_bspline5_z(final Image image, final Image rotated) {
 		} else image.mirror(borders);
 		
 		// Rotate using the inverse of the rotation matrix:
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=0, cin.z=0; cnew.z<newdims.z; ++cnew.z, ++cin.z) {
-					for (cnew.y=0; cnew.y<newdims.y; ++cnew.y) {
-						final double dy = cnew.y - newyoffsetyc;
-						final double xcdysinaz = xc + dy*sinaz;
-						final double ycdycosaz = yc + dy*cosaz;
-						for (int x=0; x<newdims.x; ++x) {
-							final double dx = x - newxoffsetxc;
-							final double tx = xcdysinaz + dx*cosaz;
-							final double ty = ycdycosaz - dx*sinaz;
-							final int ix = FMath.floor(tx);
-							final int iy = FMath.floor(ty);
-							if (ix < -1 || ix > maxx || iy < -1 || iy > maxy)
-								anew[x] = background;
-							else {
-								final double xdiff = tx - ix;
-								final double xdiff2 = xdiff*xdiff;
-								final double xmdiff = 1 - xdiff;
-								final double xmdiff2 = xmdiff*xmdiff;
-								final double wxm2 = f1o120*xmdiff2*xmdiff2*xmdiff;
-								final double wxm1 = f1o120 + f1o24*xmdiff*(1 + xmdiff*(2 + xmdiff*(2 + xmdiff - xmdiff2)));
-								final double wx00 = f11o20 + xdiff2*((f1o4 - f1o12*xdiff)*xdiff2 - f1o2);
-								final double wxp1 = f11o20 + xmdiff2*((f1o4 - f1o12*xmdiff)*xmdiff2 - f1o2);
-								final double wxp2 = f1o120 + f1o24*xdiff*(1 + xdiff*(2 + xdiff*(2 + xdiff - xdiff2)));
-								final double wxp3 = f1o120*xdiff2*xdiff2*xdiff;
-								final double ydiff = ty - iy;
-								final double ydiff2 = ydiff*ydiff;
-								final double ymdiff = 1 - ydiff;
-								final double ymdiff2 = ymdiff*ymdiff;
-								final double wym2 = f1o120*ymdiff2*ymdiff2*ymdiff;
-								final double wym1 = f1o120 + f1o24*ymdiff*(1 + ymdiff*(2 + ymdiff*(2 + ymdiff - ymdiff2)));
-								final double wy00 = f11o20 + ydiff2*((f1o4 - f1o12*ydiff)*ydiff2 - f1o2);
-								final double wyp1 = f11o20 + ymdiff2*((f1o4 - f1o12*ymdiff)*ymdiff2 - f1o2);
-								final double wyp2 = f1o120 + f1o24*ydiff*(1 + ydiff*(2 + ydiff*(2 + ydiff - ydiff2)));
-								final double wyp3 = f1o120*ydiff2*ydiff2*ydiff;
-								cin.x = borders.x + ix - 2;
-								cin.y = borders.y + iy - 2;
-								final double in00 = image.get(cin); ++cin.x;
-								final double in01 = image.get(cin); ++cin.x;
-								final double in02 = image.get(cin); ++cin.x;
-								final double in03 = image.get(cin); ++cin.x;
-								final double in04 = image.get(cin); ++cin.x;
-								final double in05 = image.get(cin); ++cin.y;
-								final double in15 = image.get(cin); --cin.x;
-								final double in14 = image.get(cin); --cin.x;
-								final double in13 = image.get(cin); --cin.x;
-								final double in12 = image.get(cin); --cin.x;
-								final double in11 = image.get(cin); --cin.x;
-								final double in10 = image.get(cin); ++cin.y;
-								final double in20 = image.get(cin); ++cin.x;
-								final double in21 = image.get(cin); ++cin.x;
-								final double in22 = image.get(cin); ++cin.x;
-								final double in23 = image.get(cin); ++cin.x;
-								final double in24 = image.get(cin); ++cin.x;
-								final double in25 = image.get(cin); ++cin.y;
-								final double in35 = image.get(cin); --cin.x;
-								final double in34 = image.get(cin); --cin.x;
-								final double in33 = image.get(cin); --cin.x;
-								final double in32 = image.get(cin); --cin.x;
-								final double in31 = image.get(cin); --cin.x;
-								final double in30 = image.get(cin); ++cin.y;
-								final double in40 = image.get(cin); ++cin.x;
-								final double in41 = image.get(cin); ++cin.x;
-								final double in42 = image.get(cin); ++cin.x;
-								final double in43 = image.get(cin); ++cin.x;
-								final double in44 = image.get(cin); ++cin.x;
-								final double in45 = image.get(cin); ++cin.y;
-								final double in55 = image.get(cin); --cin.x;
-								final double in54 = image.get(cin); --cin.x;
-								final double in53 = image.get(cin); --cin.x;
-								final double in52 = image.get(cin); --cin.x;
-								final double in51 = image.get(cin); --cin.x;
-								final double in50 = image.get(cin);
-								anew[x] = (
-									wym2*(wxm2*in00 + wxm1*in01 + wx00*in02 + wxp1*in03 + wxp2*in04 + wxp3*in05) +
-									wym1*(wxm2*in10 + wxm1*in11 + wx00*in12 + wxp1*in13 + wxp2*in14 + wxp3*in15) +
-									wy00*(wxm2*in20 + wxm1*in21 + wx00*in22 + wxp1*in23 + wxp2*in24 + wxp3*in25) +
-									wyp1*(wxm2*in30 + wxm1*in31 + wx00*in32 + wxp1*in33 + wxp2*in34 + wxp3*in35) +
-									wyp2*(wxm2*in40 + wxm1*in41 + wx00*in42 + wxp1*in43 + wxp2*in44 + wxp3*in45) +
-									wyp3*(wxm2*in50 + wxm1*in51 + wx00*in52 + wxp1*in53 + wxp2*in54 + wxp3*in55)
-								);
-							}
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = line % newdims.y;
+					cnew.z = cin.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
+					final double dy = cnew.y - newyoffsetyc;
+					final double xcdysinaz = xc + dy*sinaz;
+					final double ycdycosaz = yc + dy*cosaz;
+					for (int x=0; x<newdims.x; ++x) {
+						final double dx = x - newxoffsetxc;
+						final double tx = xcdysinaz + dx*cosaz;
+						final double ty = ycdycosaz - dx*sinaz;
+						final int ix = FMath.floor(tx);
+						final int iy = FMath.floor(ty);
+						if (ix < -1 || ix > maxx || iy < -1 || iy > maxy)
+							anew[x] = background;
+						else {
+							final double xdiff = tx - ix;
+							final double xdiff2 = xdiff*xdiff;
+							final double xmdiff = 1 - xdiff;
+							final double xmdiff2 = xmdiff*xmdiff;
+							final double wxm2 = f1o120*xmdiff2*xmdiff2*xmdiff;
+							final double wxm1 = f1o120 + f1o24*xmdiff*(1 + xmdiff*(2 + xmdiff*(2 + xmdiff - xmdiff2)));
+							final double wx00 = f11o20 + xdiff2*((f1o4 - f1o12*xdiff)*xdiff2 - f1o2);
+							final double wxp1 = f11o20 + xmdiff2*((f1o4 - f1o12*xmdiff)*xmdiff2 - f1o2);
+							final double wxp2 = f1o120 + f1o24*xdiff*(1 + xdiff*(2 + xdiff*(2 + xdiff - xdiff2)));
+							final double wxp3 = f1o120*xdiff2*xdiff2*xdiff;
+							final double ydiff = ty - iy;
+							final double ydiff2 = ydiff*ydiff;
+							final double ymdiff = 1 - ydiff;
+							final double ymdiff2 = ymdiff*ymdiff;
+							final double wym2 = f1o120*ymdiff2*ymdiff2*ymdiff;
+							final double wym1 = f1o120 + f1o24*ymdiff*(1 + ymdiff*(2 + ymdiff*(2 + ymdiff - ymdiff2)));
+							final double wy00 = f11o20 + ydiff2*((f1o4 - f1o12*ydiff)*ydiff2 - f1o2);
+							final double wyp1 = f11o20 + ymdiff2*((f1o4 - f1o12*ymdiff)*ymdiff2 - f1o2);
+							final double wyp2 = f1o120 + f1o24*ydiff*(1 + ydiff*(2 + ydiff*(2 + ydiff - ydiff2)));
+							final double wyp3 = f1o120*ydiff2*ydiff2*ydiff;
+							cin.x = borders.x + ix - 2;
+							cin.y = borders.y + iy - 2;
+							final double in00 = image.get(cin); ++cin.x;
+							final double in01 = image.get(cin); ++cin.x;
+							final double in02 = image.get(cin); ++cin.x;
+							final double in03 = image.get(cin); ++cin.x;
+							final double in04 = image.get(cin); ++cin.x;
+							final double in05 = image.get(cin); ++cin.y;
+							final double in15 = image.get(cin); --cin.x;
+							final double in14 = image.get(cin); --cin.x;
+							final double in13 = image.get(cin); --cin.x;
+							final double in12 = image.get(cin); --cin.x;
+							final double in11 = image.get(cin); --cin.x;
+							final double in10 = image.get(cin); ++cin.y;
+							final double in20 = image.get(cin); ++cin.x;
+							final double in21 = image.get(cin); ++cin.x;
+							final double in22 = image.get(cin); ++cin.x;
+							final double in23 = image.get(cin); ++cin.x;
+							final double in24 = image.get(cin); ++cin.x;
+							final double in25 = image.get(cin); ++cin.y;
+							final double in35 = image.get(cin); --cin.x;
+							final double in34 = image.get(cin); --cin.x;
+							final double in33 = image.get(cin); --cin.x;
+							final double in32 = image.get(cin); --cin.x;
+							final double in31 = image.get(cin); --cin.x;
+							final double in30 = image.get(cin); ++cin.y;
+							final double in40 = image.get(cin); ++cin.x;
+							final double in41 = image.get(cin); ++cin.x;
+							final double in42 = image.get(cin); ++cin.x;
+							final double in43 = image.get(cin); ++cin.x;
+							final double in44 = image.get(cin); ++cin.x;
+							final double in45 = image.get(cin); ++cin.y;
+							final double in55 = image.get(cin); --cin.x;
+							final double in54 = image.get(cin); --cin.x;
+							final double in53 = image.get(cin); --cin.x;
+							final double in52 = image.get(cin); --cin.x;
+							final double in51 = image.get(cin); --cin.x;
+							final double in50 = image.get(cin);
+							anew[x] = (
+								wym2*(wxm2*in00 + wxm1*in01 + wx00*in02 + wxp1*in03 + wxp2*in04 + wxp3*in05) +
+								wym1*(wxm2*in10 + wxm1*in11 + wx00*in12 + wxp1*in13 + wxp2*in14 + wxp3*in15) +
+								wy00*(wxm2*in20 + wxm1*in21 + wx00*in22 + wxp1*in23 + wxp2*in24 + wxp3*in25) +
+								wyp1*(wxm2*in30 + wxm1*in31 + wx00*in32 + wxp1*in33 + wxp2*in34 + wxp3*in35) +
+								wyp2*(wxm2*in40 + wxm1*in41 + wx00*in42 + wxp1*in43 + wxp2*in44 + wxp3*in45) +
+								wyp3*(wxm2*in50 + wxm1*in51 + wx00*in52 + wxp1*in53 + wxp2*in54 + wxp3*in55)
+							);
 						}
-						rotated.set(cnew,anew);
-						progressor.step();
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -2335,102 +2378,104 @@ private void rotate_bspline5_y(final Image image, final Image rotated) {
 		} else image.mirror(borders);
 		
 		// Rotate using the inverse of the rotation matrix:
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=0; cnew.z<newdims.z; ++cnew.z) {
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = cin.y = line % newdims.y;
+					cnew.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
 					final double dz = cnew.z - newzoffsetzc;
 					final double xcdzsinay = xc - dz*sinay;
 					final double zcdzcosay = zc + dz*cosay;
-					for (cnew.y=cin.y=0; cnew.y<newdims.y; ++cnew.y, ++cin.y) {
-						for (int x=0; x<newdims.x; ++x) {
-							final double dx = x - newxoffsetxc;
-							final double tx = xcdzsinay + dx*cosay;
-							final double tz = zcdzcosay + dx*sinay;
-							final int ix = FMath.floor(tx);
-							final int iz = FMath.floor(tz);
-							if (ix < -1 || ix > maxx || iz < -1 || iz > maxz)
-								anew[x] = background;
-							else {
-								final double xdiff = tx - ix;
-								final double xdiff2 = xdiff*xdiff;
-								final double xmdiff = 1 - xdiff;
-								final double xmdiff2 = xmdiff*xmdiff;
-								final double wxm2 = f1o120*xmdiff2*xmdiff2*xmdiff;
-								final double wxm1 = f1o120 + f1o24*xmdiff*(1 + xmdiff*(2 + xmdiff*(2 + xmdiff - xmdiff2)));
-								final double wx00 = f11o20 + xdiff2*((f1o4 - f1o12*xdiff)*xdiff2 - f1o2);
-								final double wxp1 = f11o20 + xmdiff2*((f1o4 - f1o12*xmdiff)*xmdiff2 - f1o2);
-								final double wxp2 = f1o120 + f1o24*xdiff*(1 + xdiff*(2 + xdiff*(2 + xdiff - xdiff2)));
-								final double wxp3 = f1o120*xdiff2*xdiff2*xdiff;
-								final double zdiff = tz - iz;
-								final double zdiff2 = zdiff*zdiff;
-								final double zmdiff = 1 - zdiff;
-								final double zmdiff2 = zmdiff*zmdiff;
-								final double wzm2 = f1o120*zmdiff2*zmdiff2*zmdiff;
-								final double wzm1 = f1o120 + f1o24*zmdiff*(1 + zmdiff*(2 + zmdiff*(2 + zmdiff - zmdiff2)));
-								final double wz00 = f11o20 + zdiff2*((f1o4 - f1o12*zdiff)*zdiff2 - f1o2);
-								final double wzp1 = f11o20 + zmdiff2*((f1o4 - f1o12*zmdiff)*zmdiff2 - f1o2);
-								final double wzp2 = f1o120 + f1o24*zdiff*(1 + zdiff*(2 + zdiff*(2 + zdiff - zdiff2)));
-								final double wzp3 = f1o120*zdiff2*zdiff2*zdiff;
-								cin.x = borders.x + ix - 2;
-								cin.z = borders.z + iz - 2;
-								final double in00 = image.get(cin); ++cin.x;
-								final double in01 = image.get(cin); ++cin.x;
-								final double in02 = image.get(cin); ++cin.x;
-								final double in03 = image.get(cin); ++cin.x;
-								final double in04 = image.get(cin); ++cin.x;
-								final double in05 = image.get(cin); ++cin.z;
-								final double in15 = image.get(cin); --cin.x;
-								final double in14 = image.get(cin); --cin.x;
-								final double in13 = image.get(cin); --cin.x;
-								final double in12 = image.get(cin); --cin.x;
-								final double in11 = image.get(cin); --cin.x;
-								final double in10 = image.get(cin); ++cin.z;
-								final double in20 = image.get(cin); ++cin.x;
-								final double in21 = image.get(cin); ++cin.x;
-								final double in22 = image.get(cin); ++cin.x;
-								final double in23 = image.get(cin); ++cin.x;
-								final double in24 = image.get(cin); ++cin.x;
-								final double in25 = image.get(cin); ++cin.z;
-								final double in35 = image.get(cin); --cin.x;
-								final double in34 = image.get(cin); --cin.x;
-								final double in33 = image.get(cin); --cin.x;
-								final double in32 = image.get(cin); --cin.x;
-								final double in31 = image.get(cin); --cin.x;
-								final double in30 = image.get(cin); ++cin.z;
-								final double in40 = image.get(cin); ++cin.x;
-								final double in41 = image.get(cin); ++cin.x;
-								final double in42 = image.get(cin); ++cin.x;
-								final double in43 = image.get(cin); ++cin.x;
-								final double in44 = image.get(cin); ++cin.x;
-								final double in45 = image.get(cin); ++cin.z;
-								final double in55 = image.get(cin); --cin.x;
-								final double in54 = image.get(cin); --cin.x;
-								final double in53 = image.get(cin); --cin.x;
-								final double in52 = image.get(cin); --cin.x;
-								final double in51 = image.get(cin); --cin.x;
-								final double in50 = image.get(cin);
-								anew[x] = (
-									wzm2*(wxm2*in00 + wxm1*in01 + wx00*in02 + wxp1*in03 + wxp2*in04 + wxp3*in05) +
-									wzm1*(wxm2*in10 + wxm1*in11 + wx00*in12 + wxp1*in13 + wxp2*in14 + wxp3*in15) +
-									wz00*(wxm2*in20 + wxm1*in21 + wx00*in22 + wxp1*in23 + wxp2*in24 + wxp3*in25) +
-									wzp1*(wxm2*in30 + wxm1*in31 + wx00*in32 + wxp1*in33 + wxp2*in34 + wxp3*in35) +
-									wzp2*(wxm2*in40 + wxm1*in41 + wx00*in42 + wxp1*in43 + wxp2*in44 + wxp3*in45) +
-									wzp3*(wxm2*in50 + wxm1*in51 + wx00*in52 + wxp1*in53 + wxp2*in54 + wxp3*in55)
-								);
-							}
+					for (int x=0; x<newdims.x; ++x) {
+						final double dx = x - newxoffsetxc;
+						final double tx = xcdzsinay + dx*cosay;
+						final double tz = zcdzcosay + dx*sinay;
+						final int ix = FMath.floor(tx);
+						final int iz = FMath.floor(tz);
+						if (ix < -1 || ix > maxx || iz < -1 || iz > maxz)
+							anew[x] = background;
+						else {
+							final double xdiff = tx - ix;
+							final double xdiff2 = xdiff*xdiff;
+							final double xmdiff = 1 - xdiff;
+							final double xmdiff2 = xmdiff*xmdiff;
+							final double wxm2 = f1o120*xmdiff2*xmdiff2*xmdiff;
+							final double wxm1 = f1o120 + f1o24*xmdiff*(1 + xmdiff*(2 + xmdiff*(2 + xmdiff - xmdiff2)));
+							final double wx00 = f11o20 + xdiff2*((f1o4 - f1o12*xdiff)*xdiff2 - f1o2);
+							final double wxp1 = f11o20 + xmdiff2*((f1o4 - f1o12*xmdiff)*xmdiff2 - f1o2);
+							final double wxp2 = f1o120 + f1o24*xdiff*(1 + xdiff*(2 + xdiff*(2 + xdiff - xdiff2)));
+							final double wxp3 = f1o120*xdiff2*xdiff2*xdiff;
+							final double zdiff = tz - iz;
+							final double zdiff2 = zdiff*zdiff;
+							final double zmdiff = 1 - zdiff;
+							final double zmdiff2 = zmdiff*zmdiff;
+							final double wzm2 = f1o120*zmdiff2*zmdiff2*zmdiff;
+							final double wzm1 = f1o120 + f1o24*zmdiff*(1 + zmdiff*(2 + zmdiff*(2 + zmdiff - zmdiff2)));
+							final double wz00 = f11o20 + zdiff2*((f1o4 - f1o12*zdiff)*zdiff2 - f1o2);
+							final double wzp1 = f11o20 + zmdiff2*((f1o4 - f1o12*zmdiff)*zmdiff2 - f1o2);
+							final double wzp2 = f1o120 + f1o24*zdiff*(1 + zdiff*(2 + zdiff*(2 + zdiff - zdiff2)));
+							final double wzp3 = f1o120*zdiff2*zdiff2*zdiff;
+							cin.x = borders.x + ix - 2;
+							cin.z = borders.z + iz - 2;
+							final double in00 = image.get(cin); ++cin.x;
+							final double in01 = image.get(cin); ++cin.x;
+							final double in02 = image.get(cin); ++cin.x;
+							final double in03 = image.get(cin); ++cin.x;
+							final double in04 = image.get(cin); ++cin.x;
+							final double in05 = image.get(cin); ++cin.z;
+							final double in15 = image.get(cin); --cin.x;
+							final double in14 = image.get(cin); --cin.x;
+							final double in13 = image.get(cin); --cin.x;
+							final double in12 = image.get(cin); --cin.x;
+							final double in11 = image.get(cin); --cin.x;
+							final double in10 = image.get(cin); ++cin.z;
+							final double in20 = image.get(cin); ++cin.x;
+							final double in21 = image.get(cin); ++cin.x;
+							final double in22 = image.get(cin); ++cin.x;
+							final double in23 = image.get(cin); ++cin.x;
+							final double in24 = image.get(cin); ++cin.x;
+							final double in25 = image.get(cin); ++cin.z;
+							final double in35 = image.get(cin); --cin.x;
+							final double in34 = image.get(cin); --cin.x;
+							final double in33 = image.get(cin); --cin.x;
+							final double in32 = image.get(cin); --cin.x;
+							final double in31 = image.get(cin); --cin.x;
+							final double in30 = image.get(cin); ++cin.z;
+							final double in40 = image.get(cin); ++cin.x;
+							final double in41 = image.get(cin); ++cin.x;
+							final double in42 = image.get(cin); ++cin.x;
+							final double in43 = image.get(cin); ++cin.x;
+							final double in44 = image.get(cin); ++cin.x;
+							final double in45 = image.get(cin); ++cin.z;
+							final double in55 = image.get(cin); --cin.x;
+							final double in54 = image.get(cin); --cin.x;
+							final double in53 = image.get(cin); --cin.x;
+							final double in52 = image.get(cin); --cin.x;
+							final double in51 = image.get(cin); --cin.x;
+							final double in50 = image.get(cin);
+							anew[x] = (
+								wzm2*(wxm2*in00 + wxm1*in01 + wx00*in02 + wxp1*in03 + wxp2*in04 + wxp3*in05) +
+								wzm1*(wxm2*in10 + wxm1*in11 + wx00*in12 + wxp1*in13 + wxp2*in14 + wxp3*in15) +
+								wz00*(wxm2*in20 + wxm1*in21 + wx00*in22 + wxp1*in23 + wxp2*in24 + wxp3*in25) +
+								wzp1*(wxm2*in30 + wxm1*in31 + wx00*in32 + wxp1*in33 + wxp2*in34 + wxp3*in35) +
+								wzp2*(wxm2*in40 + wxm1*in41 + wx00*in42 + wxp1*in43 + wxp2*in44 + wxp3*in45) +
+								wzp3*(wxm2*in50 + wxm1*in51 + wx00*in52 + wxp1*in53 + wxp2*in54 + wxp3*in55)
+							);
 						}
-						rotated.set(cnew,anew);
-						progressor.step();
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -2461,103 +2506,105 @@ private void rotate_bspline5_x(final Image image, final Image rotated) {
 		} else image.mirror(borders);
 		
 		// Rotate using the inverse of the rotation matrix:
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[] anew = new double[newdims.x];
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=0; cnew.z<newdims.z; ++cnew.z) {
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = line % newdims.y;
+					cnew.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
 					final double dz = cnew.z - newzoffsetzc;
 					final double ycdzsinax = yc + dz*sinax;
 					final double zcdzcosax = zc + dz*cosax;
-					for (cnew.y=0; cnew.y<newdims.y; ++cnew.y) {
-						final double dy = cnew.y - newyoffsetyc;
-						final double ty = ycdzsinax + dy*cosax;
-						final double tz = zcdzcosax - dy*sinax;
-						final int iy = FMath.floor(ty);
-						final int iz = FMath.floor(tz);
-						if (iy < -1 || iy > maxy || iz < -1 || iz > maxz)
-							for (int x=0; x<newdims.x; ++x) anew[x] = background;
-						else {
-							final double ydiff = ty - iy;
-							final double ydiff2 = ydiff*ydiff;
-							final double ymdiff = 1 - ydiff;
-							final double ymdiff2 = ymdiff*ymdiff;
-							final double wym2 = f1o120*ymdiff2*ymdiff2*ymdiff;
-							final double wym1 = f1o120 + f1o24*ymdiff*(1 + ymdiff*(2 + ymdiff*(2 + ymdiff - ymdiff2)));
-							final double wy00 = f11o20 + ydiff2*((f1o4 - f1o12*ydiff)*ydiff2 - f1o2);
-							final double wyp1 = f11o20 + ymdiff2*((f1o4 - f1o12*ymdiff)*ymdiff2 - f1o2);
-							final double wyp2 = f1o120 + f1o24*ydiff*(1 + ydiff*(2 + ydiff*(2 + ydiff - ydiff2)));
-							final double wyp3 = f1o120*ydiff2*ydiff2*ydiff;
-							final double zdiff = tz - iz;
-							final double zdiff2 = zdiff*zdiff;
-							final double zmdiff = 1 - zdiff;
-							final double zmdiff2 = zmdiff*zmdiff;
-							final double wzm2 = f1o120*zmdiff2*zmdiff2*zmdiff;
-							final double wzm1 = f1o120 + f1o24*zmdiff*(1 + zmdiff*(2 + zmdiff*(2 + zmdiff - zmdiff2)));
-							final double wz00 = f11o20 + zdiff2*((f1o4 - f1o12*zdiff)*zdiff2 - f1o2);
-							final double wzp1 = f11o20 + zmdiff2*((f1o4 - f1o12*zmdiff)*zmdiff2 - f1o2);
-							final double wzp2 = f1o120 + f1o24*zdiff*(1 + zdiff*(2 + zdiff*(2 + zdiff - zdiff2)));
-							final double wzp3 = f1o120*zdiff2*zdiff2*zdiff;
-							cin.y = borders.y + iy - 2;
-							cin.z = borders.z + iz - 2;
-							cin.x = 0;
-							for (int x=0; x<newdims.x; ++x, ++cin.x) {
-								final double in00 = image.get(cin); ++cin.y;
-								final double in01 = image.get(cin); ++cin.y;
-								final double in02 = image.get(cin); ++cin.y;
-								final double in03 = image.get(cin); ++cin.y;
-								final double in04 = image.get(cin); ++cin.y;
-								final double in05 = image.get(cin); ++cin.z;
-								final double in15 = image.get(cin); --cin.y;
-								final double in14 = image.get(cin); --cin.y;
-								final double in13 = image.get(cin); --cin.y;
-								final double in12 = image.get(cin); --cin.y;
-								final double in11 = image.get(cin); --cin.y;
-								final double in10 = image.get(cin); ++cin.z;
-								final double in20 = image.get(cin); ++cin.y;
-								final double in21 = image.get(cin); ++cin.y;
-								final double in22 = image.get(cin); ++cin.y;
-								final double in23 = image.get(cin); ++cin.y;
-								final double in24 = image.get(cin); ++cin.y;
-								final double in25 = image.get(cin); ++cin.z;
-								final double in35 = image.get(cin); --cin.y;
-								final double in34 = image.get(cin); --cin.y;
-								final double in33 = image.get(cin); --cin.y;
-								final double in32 = image.get(cin); --cin.y;
-								final double in31 = image.get(cin); --cin.y;
-								final double in30 = image.get(cin); ++cin.z;
-								final double in40 = image.get(cin); ++cin.y;
-								final double in41 = image.get(cin); ++cin.y;
-								final double in42 = image.get(cin); ++cin.y;
-								final double in43 = image.get(cin); ++cin.y;
-								final double in44 = image.get(cin); ++cin.y;
-								final double in45 = image.get(cin); ++cin.z;
-								final double in55 = image.get(cin); --cin.y;
-								final double in54 = image.get(cin); --cin.y;
-								final double in53 = image.get(cin); --cin.y;
-								final double in52 = image.get(cin); --cin.y;
-								final double in51 = image.get(cin); --cin.y;
-								final double in50 = image.get(cin); cin.z -= 5;
-								anew[x] = (
-									wzm2*(wym2*in00 + wym1*in01 + wy00*in02 + wyp1*in03 + wyp2*in04 + wyp3*in05) +
-									wzm1*(wym2*in10 + wym1*in11 + wy00*in12 + wyp1*in13 + wyp2*in14 + wyp3*in15) +
-									wz00*(wym2*in20 + wym1*in21 + wy00*in22 + wyp1*in23 + wyp2*in24 + wyp3*in25) +
-									wzp1*(wym2*in30 + wym1*in31 + wy00*in32 + wyp1*in33 + wyp2*in34 + wyp3*in35) +
-									wzp2*(wym2*in40 + wym1*in41 + wy00*in42 + wyp1*in43 + wyp2*in44 + wyp3*in45) +
-									wzp3*(wym2*in50 + wym1*in51 + wy00*in52 + wyp1*in53 + wyp2*in54 + wyp3*in55)
-								);
-							}
+					final double dy = cnew.y - newyoffsetyc;
+					final double ty = ycdzsinax + dy*cosax;
+					final double tz = zcdzcosax - dy*sinax;
+					final int iy = FMath.floor(ty);
+					final int iz = FMath.floor(tz);
+					if (iy < -1 || iy > maxy || iz < -1 || iz > maxz)
+						for (int x=0; x<newdims.x; ++x) anew[x] = background;
+					else {
+						final double ydiff = ty - iy;
+						final double ydiff2 = ydiff*ydiff;
+						final double ymdiff = 1 - ydiff;
+						final double ymdiff2 = ymdiff*ymdiff;
+						final double wym2 = f1o120*ymdiff2*ymdiff2*ymdiff;
+						final double wym1 = f1o120 + f1o24*ymdiff*(1 + ymdiff*(2 + ymdiff*(2 + ymdiff - ymdiff2)));
+						final double wy00 = f11o20 + ydiff2*((f1o4 - f1o12*ydiff)*ydiff2 - f1o2);
+						final double wyp1 = f11o20 + ymdiff2*((f1o4 - f1o12*ymdiff)*ymdiff2 - f1o2);
+						final double wyp2 = f1o120 + f1o24*ydiff*(1 + ydiff*(2 + ydiff*(2 + ydiff - ydiff2)));
+						final double wyp3 = f1o120*ydiff2*ydiff2*ydiff;
+						final double zdiff = tz - iz;
+						final double zdiff2 = zdiff*zdiff;
+						final double zmdiff = 1 - zdiff;
+						final double zmdiff2 = zmdiff*zmdiff;
+						final double wzm2 = f1o120*zmdiff2*zmdiff2*zmdiff;
+						final double wzm1 = f1o120 + f1o24*zmdiff*(1 + zmdiff*(2 + zmdiff*(2 + zmdiff - zmdiff2)));
+						final double wz00 = f11o20 + zdiff2*((f1o4 - f1o12*zdiff)*zdiff2 - f1o2);
+						final double wzp1 = f11o20 + zmdiff2*((f1o4 - f1o12*zmdiff)*zmdiff2 - f1o2);
+						final double wzp2 = f1o120 + f1o24*zdiff*(1 + zdiff*(2 + zdiff*(2 + zdiff - zdiff2)));
+						final double wzp3 = f1o120*zdiff2*zdiff2*zdiff;
+						cin.y = borders.y + iy - 2;
+						cin.z = borders.z + iz - 2;
+						cin.x = 0;
+						for (int x=0; x<newdims.x; ++x, ++cin.x) {
+							final double in00 = image.get(cin); ++cin.y;
+							final double in01 = image.get(cin); ++cin.y;
+							final double in02 = image.get(cin); ++cin.y;
+							final double in03 = image.get(cin); ++cin.y;
+							final double in04 = image.get(cin); ++cin.y;
+							final double in05 = image.get(cin); ++cin.z;
+							final double in15 = image.get(cin); --cin.y;
+							final double in14 = image.get(cin); --cin.y;
+							final double in13 = image.get(cin); --cin.y;
+							final double in12 = image.get(cin); --cin.y;
+							final double in11 = image.get(cin); --cin.y;
+							final double in10 = image.get(cin); ++cin.z;
+							final double in20 = image.get(cin); ++cin.y;
+							final double in21 = image.get(cin); ++cin.y;
+							final double in22 = image.get(cin); ++cin.y;
+							final double in23 = image.get(cin); ++cin.y;
+							final double in24 = image.get(cin); ++cin.y;
+							final double in25 = image.get(cin); ++cin.z;
+							final double in35 = image.get(cin); --cin.y;
+							final double in34 = image.get(cin); --cin.y;
+							final double in33 = image.get(cin); --cin.y;
+							final double in32 = image.get(cin); --cin.y;
+							final double in31 = image.get(cin); --cin.y;
+							final double in30 = image.get(cin); ++cin.z;
+							final double in40 = image.get(cin); ++cin.y;
+							final double in41 = image.get(cin); ++cin.y;
+							final double in42 = image.get(cin); ++cin.y;
+							final double in43 = image.get(cin); ++cin.y;
+							final double in44 = image.get(cin); ++cin.y;
+							final double in45 = image.get(cin); ++cin.z;
+							final double in55 = image.get(cin); --cin.y;
+							final double in54 = image.get(cin); --cin.y;
+							final double in53 = image.get(cin); --cin.y;
+							final double in52 = image.get(cin); --cin.y;
+							final double in51 = image.get(cin); --cin.y;
+							final double in50 = image.get(cin); cin.z -= 5;
+							anew[x] = (
+								wzm2*(wym2*in00 + wym1*in01 + wy00*in02 + wyp1*in03 + wyp2*in04 + wyp3*in05) +
+								wzm1*(wym2*in10 + wym1*in11 + wy00*in12 + wyp1*in13 + wyp2*in14 + wyp3*in15) +
+								wz00*(wym2*in20 + wym1*in21 + wy00*in22 + wyp1*in23 + wyp2*in24 + wyp3*in25) +
+								wzp1*(wym2*in30 + wym1*in31 + wy00*in32 + wyp1*in33 + wyp2*in34 + wyp3*in35) +
+								wzp2*(wym2*in40 + wym1*in41 + wy00*in42 + wyp1*in43 + wyp2*in44 + wyp3*in45) +
+								wzp3*(wym2*in50 + wym1*in51 + wy00*in52 + wyp1*in53 + wyp2*in54 + wyp3*in55)
+							);
 						}
-						rotated.set(cnew,anew);
-						progressor.step();
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -2589,128 +2636,130 @@ private void rotate_bspline5_zyx(final Image image, final Image rotated) {
 		} else image.mirror(borders);
 		
 		// Rotate using the inverse of the rotation matrix:
-		final Coordinates cin = new Coordinates();
-		final Coordinates cnew = new Coordinates();
-		final double[][][] ain = new double[6][6][6];
-		final double[] anew = new double[newdims.x];
 		image.axes(Axes.X+Axes.Y+Axes.Z);
 		rotated.axes(Axes.X);
 		
 		progressor.start();
-		for (cnew.c=cin.c=0; cnew.c<newdims.c; ++cnew.c, ++cin.c) {
-			for (cnew.t=cin.t=0; cnew.t<newdims.t; ++cnew.t, ++cin.t) {
-				for (cnew.z=0; cnew.z<newdims.z; ++cnew.z) {
+		threader.lines(newdims.c*newdims.t*newdims.z*newdims.y, new Threader.Lines() {
+			public void run(final int begin, final int end) {
+				final Coordinates cin = new Coordinates();
+				final Coordinates cnew = new Coordinates();
+				final double[][][] ain = new double[6][6][6];
+				final double[] anew = new double[newdims.x];
+				for (int line=begin; line<end; ++line) {
+					cnew.y = line % newdims.y;
+					cnew.z = (line/newdims.y) % newdims.z;
+					cnew.t = cin.t = (line/(newdims.z*newdims.y)) % newdims.t;
+					cnew.c = cin.c = line/(newdims.t*newdims.z*newdims.y);
 					final double dz = cnew.z - newzoffsetzc;
 					final double xcdzinvxz = xc + dz*invxz;
 					final double ycdzinvyz = yc + dz*invyz;
 					final double zcdzinvzz = zc + dz*invzz;
-					for (cnew.y=0; cnew.y<newdims.y; ++cnew.y) {
-						final double dy = cnew.y - newyoffsetyc;
-						final double xcdzinvxzdyinvxy = xcdzinvxz + dy*invxy;
-						final double ycdzinvyzdyinvyy = ycdzinvyz + dy*invyy;
-						final double zcdzinvzzdyinvzy = zcdzinvzz + dy*invzy;
-						for (int x=0; x<newdims.x; ++x) {
-							final double dx = x - newxoffsetxc;
-							final double tx = xcdzinvxzdyinvxy + dx*invxx;
-							final double ty = ycdzinvyzdyinvyy + dx*invyx;
-							final double tz = zcdzinvzzdyinvzy + dx*invzx;
-							final int ix = FMath.floor(tx);
-							final int iy = FMath.floor(ty);
-							final int iz = FMath.floor(tz);
-							if (ix < -1 || ix > maxx || iy < -1 || iy > maxy || iz < -1 || iz > maxz)
-								anew[x] = background;
-							else {
-								final double xdiff = tx - ix;
-								final double xdiff2 = xdiff*xdiff;
-								final double xmdiff = 1 - xdiff;
-								final double xmdiff2 = xmdiff*xmdiff;
-								final double wxm2 = f1o120*xmdiff2*xmdiff2*xmdiff;
-								final double wxm1 = f1o120 + f1o24*xmdiff*(1 + xmdiff*(2 + xmdiff*(2 + xmdiff - xmdiff2)));
-								final double wx00 = f11o20 + xdiff2*((f1o4 - f1o12*xdiff)*xdiff2 - f1o2);
-								final double wxp1 = f11o20 + xmdiff2*((f1o4 - f1o12*xmdiff)*xmdiff2 - f1o2);
-								final double wxp2 = f1o120 + f1o24*xdiff*(1 + xdiff*(2 + xdiff*(2 + xdiff - xdiff2)));
-								final double wxp3 = f1o120*xdiff2*xdiff2*xdiff;
-								final double ydiff = ty - iy;
-								final double ydiff2 = ydiff*ydiff;
-								final double ymdiff = 1 - ydiff;
-								final double ymdiff2 = ymdiff*ymdiff;
-								final double wym2 = f1o120*ymdiff2*ymdiff2*ymdiff;
-								final double wym1 = f1o120 + f1o24*ymdiff*(1 + ymdiff*(2 + ymdiff*(2 + ymdiff - ymdiff2)));
-								final double wy00 = f11o20 + ydiff2*((f1o4 - f1o12*ydiff)*ydiff2 - f1o2);
-								final double wyp1 = f11o20 + ymdiff2*((f1o4 - f1o12*ymdiff)*ymdiff2 - f1o2);
-								final double wyp2 = f1o120 + f1o24*ydiff*(1 + ydiff*(2 + ydiff*(2 + ydiff - ydiff2)));
-								final double wyp3 = f1o120*ydiff2*ydiff2*ydiff;
-								final double zdiff = tz - iz;
-								final double zdiff2 = zdiff*zdiff;
-								final double zmdiff = 1 - zdiff;
-								final double zmdiff2 = zmdiff*zmdiff;
-								final double wzm2 = f1o120*zmdiff2*zmdiff2*zmdiff;
-								final double wzm1 = f1o120 + f1o24*zmdiff*(1 + zmdiff*(2 + zmdiff*(2 + zmdiff - zmdiff2)));
-								final double wz00 = f11o20 + zdiff2*((f1o4 - f1o12*zdiff)*zdiff2 - f1o2);
-								final double wzp1 = f11o20 + zmdiff2*((f1o4 - f1o12*zmdiff)*zmdiff2 - f1o2);
-								final double wzp2 = f1o120 + f1o24*zdiff*(1 + zdiff*(2 + zdiff*(2 + zdiff - zdiff2)));
-								final double wzp3 = f1o120*zdiff2*zdiff2*zdiff;
-								cin.x = borders.x + ix - 2;
-								cin.y = borders.y + iy - 2;
-								cin.z = borders.z + iz - 2;
-								image.get(cin,ain);
-								anew[x] = (
-									wzm2*(
-										wym2*(wxm2*ain[0][0][0] + wxm1*ain[0][0][1] + wx00*ain[0][0][2] + wxp1*ain[0][0][3] + wxp2*ain[0][0][4] + wxp3*ain[0][0][5]) +
-										wym1*(wxm2*ain[0][1][0] + wxm1*ain[0][1][1] + wx00*ain[0][1][2] + wxp1*ain[0][1][3] + wxp2*ain[0][1][4] + wxp3*ain[0][1][5]) +
-										wy00*(wxm2*ain[0][2][0] + wxm1*ain[0][2][1] + wx00*ain[0][2][2] + wxp1*ain[0][2][3] + wxp2*ain[0][2][4] + wxp3*ain[0][2][5]) +
-										wyp1*(wxm2*ain[0][3][0] + wxm1*ain[0][3][1] + wx00*ain[0][3][2] + wxp1*ain[0][3][3] + wxp2*ain[0][3][4] + wxp3*ain[0][3][5]) +
-										wyp2*(wxm2*ain[0][4][0] + wxm1*ain[0][4][1] + wx00*ain[0][4][2] + wxp1*ain[0][4][3] + wxp2*ain[0][4][4] + wxp3*ain[0][4][5]) +
-										wyp3*(wxm2*ain[0][5][0] + wxm1*ain[0][5][1] + wx00*ain[0][5][2] + wxp1*ain[0][5][3] + wxp2*ain[0][5][4] + wxp3*ain[0][5][5])
-									) +
-									wzm1*(
-										wym2*(wxm2*ain[1][0][0] + wxm1*ain[1][0][1] + wx00*ain[1][0][2] + wxp1*ain[1][0][3] + wxp2*ain[1][0][4] + wxp3*ain[1][0][5]) +
-										wym1*(wxm2*ain[1][1][0] + wxm1*ain[1][1][1] + wx00*ain[1][1][2] + wxp1*ain[1][1][3] + wxp2*ain[1][1][4] + wxp3*ain[1][1][5]) +
-										wy00*(wxm2*ain[1][2][0] + wxm1*ain[1][2][1] + wx00*ain[1][2][2] + wxp1*ain[1][2][3] + wxp2*ain[1][2][4] + wxp3*ain[1][2][5]) +
-										wyp1*(wxm2*ain[1][3][0] + wxm1*ain[1][3][1] + wx00*ain[1][3][2] + wxp1*ain[1][3][3] + wxp2*ain[1][3][4] + wxp3*ain[1][3][5]) +
-										wyp2*(wxm2*ain[1][4][0] + wxm1*ain[1][4][1] + wx00*ain[1][4][2] + wxp1*ain[1][4][3] + wxp2*ain[1][4][4] + wxp3*ain[1][4][5]) +
-										wyp3*(wxm2*ain[1][5][0] + wxm1*ain[1][5][1] + wx00*ain[1][5][2] + wxp1*ain[1][5][3] + wxp2*ain[1][5][4] + wxp3*ain[1][5][5])
-									) +
-									wz00*(
-										wym2*(wxm2*ain[2][0][0] + wxm1*ain[2][0][1] + wx00*ain[2][0][2] + wxp1*ain[2][0][3] + wxp2*ain[2][0][4] + wxp3*ain[2][0][5]) +
-										wym1*(wxm2*ain[2][1][0] + wxm1*ain[2][1][1] + wx00*ain[2][1][2] + wxp1*ain[2][1][3] + wxp2*ain[2][1][4] + wxp3*ain[2][1][5]) +
-										wy00*(wxm2*ain[2][2][0] + wxm1*ain[2][2][1] + wx00*ain[2][2][2] + wxp1*ain[2][2][3] + wxp2*ain[2][2][4] + wxp3*ain[2][2][5]) +
-										wyp1*(wxm2*ain[2][3][0] + wxm1*ain[2][3][1] + wx00*ain[2][3][2] + wxp1*ain[2][3][3] + wxp2*ain[2][3][4] + wxp3*ain[2][3][5]) +
-										wyp2*(wxm2*ain[2][4][0] + wxm1*ain[2][4][1] + wx00*ain[2][4][2] + wxp1*ain[2][4][3] + wxp2*ain[2][4][4] + wxp3*ain[2][4][5]) +
-										wyp3*(wxm2*ain[2][5][0] + wxm1*ain[2][5][1] + wx00*ain[2][5][2] + wxp1*ain[2][5][3] + wxp2*ain[2][5][4] + wxp3*ain[2][5][5])) +
-									wzp1*(
-										wym2*(wxm2*ain[3][0][0] + wxm1*ain[3][0][1] + wx00*ain[3][0][2] + wxp1*ain[3][0][3] + wxp2*ain[3][0][4] + wxp3*ain[3][0][5]) +
-										wym1*(wxm2*ain[3][1][0] + wxm1*ain[3][1][1] + wx00*ain[3][1][2] + wxp1*ain[3][1][3] + wxp2*ain[3][1][4] + wxp3*ain[3][1][5]) +
-										wy00*(wxm2*ain[3][2][0] + wxm1*ain[3][2][1] + wx00*ain[3][2][2] + wxp1*ain[3][2][3] + wxp2*ain[3][2][4] + wxp3*ain[3][2][5]) +
-										wyp1*(wxm2*ain[3][3][0] + wxm1*ain[3][3][1] + wx00*ain[3][3][2] + wxp1*ain[3][3][3] + wxp2*ain[3][3][4] + wxp3*ain[3][3][5]) +
-										wyp2*(wxm2*ain[3][4][0] + wxm1*ain[3][4][1] + wx00*ain[3][4][2] + wxp1*ain[3][4][3] + wxp2*ain[3][4][4] + wxp3*ain[3][4][5]) +
-										wyp3*(wxm2*ain[3][5][0] + wxm1*ain[3][5][1] + wx00*ain[3][5][2] + wxp1*ain[3][5][3] + wxp2*ain[3][5][4] + wxp3*ain[3][5][5])
-									) +
-									wzp2*(
-										wym2*(wxm2*ain[4][0][0] + wxm1*ain[4][0][1] + wx00*ain[4][0][2] + wxp1*ain[4][0][3] + wxp2*ain[4][0][4] + wxp3*ain[4][0][5]) +
-										wym1*(wxm2*ain[4][1][0] + wxm1*ain[4][1][1] + wx00*ain[4][1][2] + wxp1*ain[4][1][3] + wxp2*ain[4][1][4] + wxp3*ain[4][1][5]) +
-										wy00*(wxm2*ain[4][2][0] + wxm1*ain[4][2][1] + wx00*ain[4][2][2] + wxp1*ain[4][2][3] + wxp2*ain[4][2][4] + wxp3*ain[4][2][5]) +
-										wyp1*(wxm2*ain[4][3][0] + wxm1*ain[4][3][1] + wx00*ain[4][3][2] + wxp1*ain[4][3][3] + wxp2*ain[4][3][4] + wxp3*ain[4][3][5]) +
-										wyp2*(wxm2*ain[4][4][0] + wxm1*ain[4][4][1] + wx00*ain[4][4][2] + wxp1*ain[4][4][3] + wxp2*ain[4][4][4] + wxp3*ain[4][4][5]) +
-										wyp3*(wxm2*ain[4][5][0] + wxm1*ain[4][5][1] + wx00*ain[4][5][2] + wxp1*ain[4][5][3] + wxp2*ain[4][5][4] + wxp3*ain[4][5][5])
-									) +
-									wzp3*(
-										wym2*(wxm2*ain[5][0][0] + wxm1*ain[5][0][1] + wx00*ain[5][0][2] + wxp1*ain[5][0][3] + wxp2*ain[5][0][4] + wxp3*ain[5][0][5]) +
-										wym1*(wxm2*ain[5][1][0] + wxm1*ain[5][1][1] + wx00*ain[5][1][2] + wxp1*ain[5][1][3] + wxp2*ain[5][1][4] + wxp3*ain[5][1][5]) +
-										wy00*(wxm2*ain[5][2][0] + wxm1*ain[5][2][1] + wx00*ain[5][2][2] + wxp1*ain[5][2][3] + wxp2*ain[5][2][4] + wxp3*ain[5][2][5]) +
-										wyp1*(wxm2*ain[5][3][0] + wxm1*ain[5][3][1] + wx00*ain[5][3][2] + wxp1*ain[5][3][3] + wxp2*ain[5][3][4] + wxp3*ain[5][3][5]) +
-										wyp2*(wxm2*ain[5][4][0] + wxm1*ain[5][4][1] + wx00*ain[5][4][2] + wxp1*ain[5][4][3] + wxp2*ain[5][4][4] + wxp3*ain[5][4][5]) +
-										wyp3*(wxm2*ain[5][5][0] + wxm1*ain[5][5][1] + wx00*ain[5][5][2] + wxp1*ain[5][5][3] + wxp2*ain[5][5][4] + wxp3*ain[5][5][5])
-									)
-								);
-							}
+					final double dy = cnew.y - newyoffsetyc;
+					final double xcdzinvxzdyinvxy = xcdzinvxz + dy*invxy;
+					final double ycdzinvyzdyinvyy = ycdzinvyz + dy*invyy;
+					final double zcdzinvzzdyinvzy = zcdzinvzz + dy*invzy;
+					for (int x=0; x<newdims.x; ++x) {
+						final double dx = x - newxoffsetxc;
+						final double tx = xcdzinvxzdyinvxy + dx*invxx;
+						final double ty = ycdzinvyzdyinvyy + dx*invyx;
+						final double tz = zcdzinvzzdyinvzy + dx*invzx;
+						final int ix = FMath.floor(tx);
+						final int iy = FMath.floor(ty);
+						final int iz = FMath.floor(tz);
+						if (ix < -1 || ix > maxx || iy < -1 || iy > maxy || iz < -1 || iz > maxz)
+							anew[x] = background;
+						else {
+							final double xdiff = tx - ix;
+							final double xdiff2 = xdiff*xdiff;
+							final double xmdiff = 1 - xdiff;
+							final double xmdiff2 = xmdiff*xmdiff;
+							final double wxm2 = f1o120*xmdiff2*xmdiff2*xmdiff;
+							final double wxm1 = f1o120 + f1o24*xmdiff*(1 + xmdiff*(2 + xmdiff*(2 + xmdiff - xmdiff2)));
+							final double wx00 = f11o20 + xdiff2*((f1o4 - f1o12*xdiff)*xdiff2 - f1o2);
+							final double wxp1 = f11o20 + xmdiff2*((f1o4 - f1o12*xmdiff)*xmdiff2 - f1o2);
+							final double wxp2 = f1o120 + f1o24*xdiff*(1 + xdiff*(2 + xdiff*(2 + xdiff - xdiff2)));
+							final double wxp3 = f1o120*xdiff2*xdiff2*xdiff;
+							final double ydiff = ty - iy;
+							final double ydiff2 = ydiff*ydiff;
+							final double ymdiff = 1 - ydiff;
+							final double ymdiff2 = ymdiff*ymdiff;
+							final double wym2 = f1o120*ymdiff2*ymdiff2*ymdiff;
+							final double wym1 = f1o120 + f1o24*ymdiff*(1 + ymdiff*(2 + ymdiff*(2 + ymdiff - ymdiff2)));
+							final double wy00 = f11o20 + ydiff2*((f1o4 - f1o12*ydiff)*ydiff2 - f1o2);
+							final double wyp1 = f11o20 + ymdiff2*((f1o4 - f1o12*ymdiff)*ymdiff2 - f1o2);
+							final double wyp2 = f1o120 + f1o24*ydiff*(1 + ydiff*(2 + ydiff*(2 + ydiff - ydiff2)));
+							final double wyp3 = f1o120*ydiff2*ydiff2*ydiff;
+							final double zdiff = tz - iz;
+							final double zdiff2 = zdiff*zdiff;
+							final double zmdiff = 1 - zdiff;
+							final double zmdiff2 = zmdiff*zmdiff;
+							final double wzm2 = f1o120*zmdiff2*zmdiff2*zmdiff;
+							final double wzm1 = f1o120 + f1o24*zmdiff*(1 + zmdiff*(2 + zmdiff*(2 + zmdiff - zmdiff2)));
+							final double wz00 = f11o20 + zdiff2*((f1o4 - f1o12*zdiff)*zdiff2 - f1o2);
+							final double wzp1 = f11o20 + zmdiff2*((f1o4 - f1o12*zmdiff)*zmdiff2 - f1o2);
+							final double wzp2 = f1o120 + f1o24*zdiff*(1 + zdiff*(2 + zdiff*(2 + zdiff - zdiff2)));
+							final double wzp3 = f1o120*zdiff2*zdiff2*zdiff;
+							cin.x = borders.x + ix - 2;
+							cin.y = borders.y + iy - 2;
+							cin.z = borders.z + iz - 2;
+							image.get(cin,ain);
+							anew[x] = (
+								wzm2*(
+									wym2*(wxm2*ain[0][0][0] + wxm1*ain[0][0][1] + wx00*ain[0][0][2] + wxp1*ain[0][0][3] + wxp2*ain[0][0][4] + wxp3*ain[0][0][5]) +
+									wym1*(wxm2*ain[0][1][0] + wxm1*ain[0][1][1] + wx00*ain[0][1][2] + wxp1*ain[0][1][3] + wxp2*ain[0][1][4] + wxp3*ain[0][1][5]) +
+									wy00*(wxm2*ain[0][2][0] + wxm1*ain[0][2][1] + wx00*ain[0][2][2] + wxp1*ain[0][2][3] + wxp2*ain[0][2][4] + wxp3*ain[0][2][5]) +
+									wyp1*(wxm2*ain[0][3][0] + wxm1*ain[0][3][1] + wx00*ain[0][3][2] + wxp1*ain[0][3][3] + wxp2*ain[0][3][4] + wxp3*ain[0][3][5]) +
+									wyp2*(wxm2*ain[0][4][0] + wxm1*ain[0][4][1] + wx00*ain[0][4][2] + wxp1*ain[0][4][3] + wxp2*ain[0][4][4] + wxp3*ain[0][4][5]) +
+									wyp3*(wxm2*ain[0][5][0] + wxm1*ain[0][5][1] + wx00*ain[0][5][2] + wxp1*ain[0][5][3] + wxp2*ain[0][5][4] + wxp3*ain[0][5][5])
+								) +
+								wzm1*(
+									wym2*(wxm2*ain[1][0][0] + wxm1*ain[1][0][1] + wx00*ain[1][0][2] + wxp1*ain[1][0][3] + wxp2*ain[1][0][4] + wxp3*ain[1][0][5]) +
+									wym1*(wxm2*ain[1][1][0] + wxm1*ain[1][1][1] + wx00*ain[1][1][2] + wxp1*ain[1][1][3] + wxp2*ain[1][1][4] + wxp3*ain[1][1][5]) +
+									wy00*(wxm2*ain[1][2][0] + wxm1*ain[1][2][1] + wx00*ain[1][2][2] + wxp1*ain[1][2][3] + wxp2*ain[1][2][4] + wxp3*ain[1][2][5]) +
+									wyp1*(wxm2*ain[1][3][0] + wxm1*ain[1][3][1] + wx00*ain[1][3][2] + wxp1*ain[1][3][3] + wxp2*ain[1][3][4] + wxp3*ain[1][3][5]) +
+									wyp2*(wxm2*ain[1][4][0] + wxm1*ain[1][4][1] + wx00*ain[1][4][2] + wxp1*ain[1][4][3] + wxp2*ain[1][4][4] + wxp3*ain[1][4][5]) +
+									wyp3*(wxm2*ain[1][5][0] + wxm1*ain[1][5][1] + wx00*ain[1][5][2] + wxp1*ain[1][5][3] + wxp2*ain[1][5][4] + wxp3*ain[1][5][5])
+								) +
+								wz00*(
+									wym2*(wxm2*ain[2][0][0] + wxm1*ain[2][0][1] + wx00*ain[2][0][2] + wxp1*ain[2][0][3] + wxp2*ain[2][0][4] + wxp3*ain[2][0][5]) +
+									wym1*(wxm2*ain[2][1][0] + wxm1*ain[2][1][1] + wx00*ain[2][1][2] + wxp1*ain[2][1][3] + wxp2*ain[2][1][4] + wxp3*ain[2][1][5]) +
+									wy00*(wxm2*ain[2][2][0] + wxm1*ain[2][2][1] + wx00*ain[2][2][2] + wxp1*ain[2][2][3] + wxp2*ain[2][2][4] + wxp3*ain[2][2][5]) +
+									wyp1*(wxm2*ain[2][3][0] + wxm1*ain[2][3][1] + wx00*ain[2][3][2] + wxp1*ain[2][3][3] + wxp2*ain[2][3][4] + wxp3*ain[2][3][5]) +
+									wyp2*(wxm2*ain[2][4][0] + wxm1*ain[2][4][1] + wx00*ain[2][4][2] + wxp1*ain[2][4][3] + wxp2*ain[2][4][4] + wxp3*ain[2][4][5]) +
+									wyp3*(wxm2*ain[2][5][0] + wxm1*ain[2][5][1] + wx00*ain[2][5][2] + wxp1*ain[2][5][3] + wxp2*ain[2][5][4] + wxp3*ain[2][5][5])) +
+								wzp1*(
+									wym2*(wxm2*ain[3][0][0] + wxm1*ain[3][0][1] + wx00*ain[3][0][2] + wxp1*ain[3][0][3] + wxp2*ain[3][0][4] + wxp3*ain[3][0][5]) +
+									wym1*(wxm2*ain[3][1][0] + wxm1*ain[3][1][1] + wx00*ain[3][1][2] + wxp1*ain[3][1][3] + wxp2*ain[3][1][4] + wxp3*ain[3][1][5]) +
+									wy00*(wxm2*ain[3][2][0] + wxm1*ain[3][2][1] + wx00*ain[3][2][2] + wxp1*ain[3][2][3] + wxp2*ain[3][2][4] + wxp3*ain[3][2][5]) +
+									wyp1*(wxm2*ain[3][3][0] + wxm1*ain[3][3][1] + wx00*ain[3][3][2] + wxp1*ain[3][3][3] + wxp2*ain[3][3][4] + wxp3*ain[3][3][5]) +
+									wyp2*(wxm2*ain[3][4][0] + wxm1*ain[3][4][1] + wx00*ain[3][4][2] + wxp1*ain[3][4][3] + wxp2*ain[3][4][4] + wxp3*ain[3][4][5]) +
+									wyp3*(wxm2*ain[3][5][0] + wxm1*ain[3][5][1] + wx00*ain[3][5][2] + wxp1*ain[3][5][3] + wxp2*ain[3][5][4] + wxp3*ain[3][5][5])
+								) +
+								wzp2*(
+									wym2*(wxm2*ain[4][0][0] + wxm1*ain[4][0][1] + wx00*ain[4][0][2] + wxp1*ain[4][0][3] + wxp2*ain[4][0][4] + wxp3*ain[4][0][5]) +
+									wym1*(wxm2*ain[4][1][0] + wxm1*ain[4][1][1] + wx00*ain[4][1][2] + wxp1*ain[4][1][3] + wxp2*ain[4][1][4] + wxp3*ain[4][1][5]) +
+									wy00*(wxm2*ain[4][2][0] + wxm1*ain[4][2][1] + wx00*ain[4][2][2] + wxp1*ain[4][2][3] + wxp2*ain[4][2][4] + wxp3*ain[4][2][5]) +
+									wyp1*(wxm2*ain[4][3][0] + wxm1*ain[4][3][1] + wx00*ain[4][3][2] + wxp1*ain[4][3][3] + wxp2*ain[4][3][4] + wxp3*ain[4][3][5]) +
+									wyp2*(wxm2*ain[4][4][0] + wxm1*ain[4][4][1] + wx00*ain[4][4][2] + wxp1*ain[4][4][3] + wxp2*ain[4][4][4] + wxp3*ain[4][4][5]) +
+									wyp3*(wxm2*ain[4][5][0] + wxm1*ain[4][5][1] + wx00*ain[4][5][2] + wxp1*ain[4][5][3] + wxp2*ain[4][5][4] + wxp3*ain[4][5][5])
+								) +
+								wzp3*(
+									wym2*(wxm2*ain[5][0][0] + wxm1*ain[5][0][1] + wx00*ain[5][0][2] + wxp1*ain[5][0][3] + wxp2*ain[5][0][4] + wxp3*ain[5][0][5]) +
+									wym1*(wxm2*ain[5][1][0] + wxm1*ain[5][1][1] + wx00*ain[5][1][2] + wxp1*ain[5][1][3] + wxp2*ain[5][1][4] + wxp3*ain[5][1][5]) +
+									wy00*(wxm2*ain[5][2][0] + wxm1*ain[5][2][1] + wx00*ain[5][2][2] + wxp1*ain[5][2][3] + wxp2*ain[5][2][4] + wxp3*ain[5][2][5]) +
+									wyp1*(wxm2*ain[5][3][0] + wxm1*ain[5][3][1] + wx00*ain[5][3][2] + wxp1*ain[5][3][3] + wxp2*ain[5][3][4] + wxp3*ain[5][3][5]) +
+									wyp2*(wxm2*ain[5][4][0] + wxm1*ain[5][4][1] + wx00*ain[5][4][2] + wxp1*ain[5][4][3] + wxp2*ain[5][4][4] + wxp3*ain[5][4][5]) +
+									wyp3*(wxm2*ain[5][5][0] + wxm1*ain[5][5][1] + wx00*ain[5][5][2] + wxp1*ain[5][5][3] + wxp2*ain[5][5][4] + wxp3*ain[5][5][5])
+								)
+							);
 						}
-						rotated.set(cnew,anew);
-						progressor.step();
 					}
+					rotated.set(cnew,anew);
+					progressor.step();
 				}
 			}
-		}
+		});
 		progressor.stop();
 	}
 	
@@ -2737,6 +2786,9 @@ private String schemes(final int scheme) {
 	/** The object used for progress displaying. */
 	public final Progressor progressor = new Progressor();
 	
+	/** The object used for multi-threading. The output image is computed one line at a time, with the lines distributed over the number of threads indicated by this object. */
+	public final Threader threader = new Threader();
+	
 	private final Prefilter prefilter = new Prefilter();
 	
 	private Dimensions indims, newdims;
@@ -11,6 +11,7 @@
 import imagescience.utility.ImageScience;
 import imagescience.utility.Messenger;
 import imagescience.utility.Progressor;
+import imagescience.utility.Threader;
 import imagescience.utility.Timer;
 
 /** Scales images using different interpolation schemes.
@@ -180,148 +181,199 @@ private Image scale(final Image image) {
 			messenger.log("Scaling in x-dimension");
 			messenger.status("Scaling"+component+" in x-dimension...");
 			initialize(xscheme,newdims.x,xfactor,xshift);
-			final double[] ain = new double[indims.x + 2*borders.x];
-			final double[] anew = new double[newdims.x];
-			final Coordinates cin = new Coordinates(); cin.x = -borders.x;
-			final Coordinates cnew = new Coordinates();
 			final int maxbx = indims.x + 2*borders.x - 1;
-			ximage = Image.create(new Dimensions(newdims.x,indims.y,indims.z,indims.t,indims.c),image.type());
-			ximage.axes(Axes.X); image.axes(Axes.X);
+			final Image scaled = Image.create(new Dimensions(newdims.x,indims.y,indims.z,indims.t,indims.c),image.type());
+			scaled.axes(Axes.X); image.axes(Axes.X);
 			
 			switch (xscheme) {
 				case NEAREST: {
 					messenger.log("Applying nearest-neighbor sampling function in x-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.t=0, cnew.t=0; cin.t<indims.t; ++cin.t, ++cnew.t)
-							for (cin.z=0, cnew.z=0; cin.z<indims.z; ++cin.z, ++cnew.z)
-								for (cin.y=0, cnew.y=0; cin.y<indims.y; ++cin.y, ++cnew.y) {
-									image.get(cin,ain);
-									for (int x=0; x<newdims.x; ++x)
-										anew[x] = ain[pos[x]];
-									ximage.set(cnew,anew);
-									progressor.step(newdims.x);
-								}
+					threader.lines(indims.c*indims.t*indims.z*indims.y, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.x + 2*borders.x];
+							final double[] anew = new double[newdims.x];
+							final Coordinates cin = new Coordinates(); cin.x = -borders.x;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.y = cnew.y = line % indims.y;
+								cin.z = cnew.z = (line/indims.y) % indims.z;
+								cin.t = cnew.t = (line/(indims.z*indims.y)) % indims.t;
+								cin.c = cnew.c = line/(indims.t*indims.z*indims.y);
+								image.get(cin,ain);
+								for (int x=0; x<newdims.x; ++x)
+									anew[x] = ain[pos[x]];
+								scaled.set(cnew,anew);
+								progressor.step(newdims.x);
+							}
+						}
+					});
 								break;
 				}
 				case LINEAR: {
 					messenger.log("Applying linear sampling function in x-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.t=0, cnew.t=0; cin.t<indims.t; ++cin.t, ++cnew.t)
-							for (cin.z=0, cnew.z=0; cin.z<indims.z; ++cin.z, ++cnew.z)
-								for (cin.y=0, cnew.y=0; cin.y<indims.y; ++cin.y, ++cnew.y) {
-									image.get(cin,ain);
-									ain[0] = ain[2]; ain[maxbx] = ain[maxbx-2];
-									for (int x=0; x<newdims.x; ++x) {
-										final int lpos = borders.x + pos[x];
-										anew[x] = (
-											kernel[x][0]*ain[lpos] +
-											kernel[x][1]*ain[lpos+1]
-										);
-									}
-									ximage.set(cnew,anew);
-									progressor.step(newdims.x);
+					threader.lines(indims.c*indims.t*indims.z*indims.y, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.x + 2*borders.x];
+							final double[] anew = new double[newdims.x];
+							final Coordinates cin = new Coordinates(); cin.x = -borders.x;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.y = cnew.y = line % indims.y;
+								cin.z = cnew.z = (line/indims.y) % indims.z;
+								cin.t = cnew.t = (line/(indims.z*indims.y)) % indims.t;
+								cin.c = cnew.c = line/(indims.t*indims.z*indims.y);
+								image.get(cin,ain);
+								ain[0] = ain[2]; ain[maxbx] = ain[maxbx-2];
+								for (int x=0; x<newdims.x; ++x) {
+									final int lpos = borders.x + pos[x];
+									anew[x] = (
+										kernel[x][0]*ain[lpos] +
+										kernel[x][1]*ain[lpos+1]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.x);
+							}
+						}
+					});
 					break;
 				}
 				case CUBIC: {
 					messenger.log("Applying cubic convolution sampling function in x-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.t=0, cnew.t=0; cin.t<indims.t; ++cin.t, ++cnew.t)
-							for (cin.z=0, cnew.z=0; cin.z<indims.z; ++cin.z, ++cnew.z)
-								for (cin.y=0, cnew.y=0; cin.y<indims.y; ++cin.y, ++cnew.y) {
-									image.get(cin,ain);
-									ain[0] = ain[4]; ain[maxbx] = ain[maxbx-4];
-									ain[1] = ain[3]; ain[maxbx-1] = ain[maxbx-3];
-									for (int x=0; x<newdims.x; ++x) {
-										final int lpos = borders.x + pos[x];
-										anew[x] = (
-											kernel[x][0]*ain[lpos-1] +
-											kernel[x][1]*ain[lpos] +
-											kernel[x][2]*ain[lpos+1] +
-											kernel[x][3]*ain[lpos+2]
-										);
-									}
-									ximage.set(cnew,anew);
-									progressor.step(newdims.x);
+					threader.lines(indims.c*indims.t*indims.z*indims.y, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.x + 2*borders.x];
+							final double[] anew = new double[newdims.x];
+							final Coordinates cin = new Coordinates(); cin.x = -borders.x;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.y = cnew.y = line % indims.y;
+								cin.z = cnew.z = (line/indims.y) % indims.z;
+								cin.t = cnew.t = (line/(indims.z*indims.y)) % indims.t;
+								cin.c = cnew.c = line/(indims.t*indims.z*indims.y);
+								image.get(cin,ain);
+								ain[0] = ain[4]; ain[maxbx] = ain[maxbx-4];
+								ain[1] = ain[3]; ain[maxbx-1] = ain[maxbx-3];
+								for (int x=0; x<newdims.x; ++x) {
+									final int lpos = borders.x + pos[x];
+									anew[x] = (
+										kernel[x][0]*ain[lpos-1] +
+										kernel[x][1]*ain[lpos] +
+										kernel[x][2]*ain[lpos+1] +
+										kernel[x][3]*ain[lpos+2]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.x);
+							}
+						}
+					});
 					break;
 				}
 				case BSPLINE3: {
 					messenger.log("Applying cubic B-spline prefilter and sampling function in x-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.t=0, cnew.t=0; cin.t<indims.t; ++cin.t, ++cnew.t)
-							for (cin.z=0, cnew.z=0; cin.z<indims.z; ++cin.z, ++cnew.z)
-								for (cin.y=0, cnew.y=0; cin.y<indims.y; ++cin.y, ++cnew.y) {
-									image.get(cin,ain);
-									prefilter.bspline3(ain,borders.x);
-									ain[0] = ain[4]; ain[maxbx] = ain[maxbx-4];
-									ain[1] = ain[3]; ain[maxbx-1] = ain[maxbx-3];
-									for (int x=0; x<newdims.x; ++x) {
-										final int lpos = borders.x + pos[x];
-										anew[x] = (
-											kernel[x][0]*ain[lpos-1] +
-											kernel[x][1]*ain[lpos] +
-											kernel[x][2]*ain[lpos+1] +
-											kernel[x][3]*ain[lpos+2]
-										);
-									}
-									ximage.set(cnew,anew);
-									progressor.step(newdims.x);
+					threader.lines(indims.c*indims.t*indims.z*indims.y, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.x + 2*borders.x];
+							final double[] anew = new double[newdims.x];
+							final Coordinates cin = new Coordinates(); cin.x = -borders.x;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.y = cnew.y = line % indims.y;
+								cin.z = cnew.z = (line/indims.y) % indims.z;
+								cin.t = cnew.t = (line/(indims.z*indims.y)) % indims.t;
+								cin.c = cnew.c = line/(indims.t*indims.z*indims.y);
+								image.get(cin,ain);
+								prefilter.bspline3(ain,borders.x);
+								ain[0] = ain[4]; ain[maxbx] = ain[maxbx-4];
+								ain[1] = ain[3]; ain[maxbx-1] = ain[maxbx-3];
+								for (int x=0; x<newdims.x; ++x) {
+									final int lpos = borders.x + pos[x];
+									anew[x] = (
+										kernel[x][0]*ain[lpos-1] +
+										kernel[x][1]*ain[lpos] +
+										kernel[x][2]*ain[lpos+1] +
+										kernel[x][3]*ain[lpos+2]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.x);
+							}
+						}
+					});
 					break;
 				}
 				case OMOMS3: {
 					messenger.log("Applying cubic O-MOMS prefilter and sampling function in x-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.t=0, cnew.t=0; cin.t<indims.t; ++cin.t, ++cnew.t)
-							for (cin.z=0, cnew.z=0; cin.z<indims.z; ++cin.z, ++cnew.z)
-								for (cin.y=0, cnew.y=0; cin.y<indims.y; ++cin.y, ++cnew.y) {
-									image.get(cin,ain);
-									prefilter.omoms3(ain,borders.x);
-									ain[0] = ain[4]; ain[maxbx] = ain[maxbx-4];
-									ain[1] = ain[3]; ain[maxbx-1] = ain[maxbx-3];
-									for (int x=0; x<newdims.x; ++x) {
-										final int lpos = borders.x + pos[x];
-										anew[x] = (
-											kernel[x][0]*ain[lpos-1] +
-											kernel[x][1]*ain[lpos] +
-											kernel[x][2]*ain[lpos+1] +
-											kernel[x][3]*ain[lpos+2]
-										);
-									}
-									ximage.set(cnew,anew);
-									progressor.step(newdims.x);
+					threader.lines(indims.c*indims.t*indims.z*indims.y, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.x + 2*borders.x];
+							final double[] anew = new double[newdims.x];
+							final Coordinates cin = new Coordinates(); cin.x = -borders.x;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.y = cnew.y = line % indims.y;
+								cin.z = cnew.z = (line/indims.y) % indims.z;
+								cin.t = cnew.t = (line/(indims.z*indims.y)) % indims.t;
+								cin.c = cnew.c = line/(indims.t*indims.z*indims.y);
+								image.get(cin,ain);
+								prefilter.omoms3(ain,borders.x);
+								ain[0] = ain[4]; ain[maxbx] = ain[maxbx-4];
+								ain[1] = ain[3]; ain[maxbx-1] = ain[maxbx-3];
+								for (int x=0; x<newdims.x; ++x) {
+									final int lpos = borders.x + pos[x];
+									anew[x] = (
+										kernel[x][0]*ain[lpos-1] +
+										kernel[x][1]*ain[lpos] +
+										kernel[x][2]*ain[lpos+1] +
+										kernel[x][3]*ain[lpos+2]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.x);
+							}
+						}
+					});
 					break;
 				}
 				case BSPLINE5: {
 					messenger.log("Applying quintic B-spline prefilter and sampling function in x-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.t=0, cnew.t=0; cin.t<indims.t; ++cin.t, ++cnew.t)
-							for (cin.z=0, cnew.z=0; cin.z<indims.z; ++cin.z, ++cnew.z)
-								for (cin.y=0, cnew.y=0; cin.y<indims.y; ++cin.y, ++cnew.y) {
-									image.get(cin,ain);
-									prefilter.bspline5(ain,borders.x);
-									ain[0] = ain[6]; ain[maxbx] = ain[maxbx-6];
-									ain[1] = ain[5]; ain[maxbx-1] = ain[maxbx-5];
-									ain[2] = ain[4]; ain[maxbx-2] = ain[maxbx-4];
-									for (int x=0; x<newdims.x; ++x) {
-										final int lpos = borders.x + pos[x];
-										anew[x] = (
-											kernel[x][0]*ain[lpos-2] +
-											kernel[x][1]*ain[lpos-1] +
-											kernel[x][2]*ain[lpos] +
-											kernel[x][3]*ain[lpos+1] +
-											kernel[x][4]*ain[lpos+2] +
-											kernel[x][5]*ain[lpos+3]
-										);
-									}
-									ximage.set(cnew,anew);
-									progressor.step(newdims.x);
+					threader.lines(indims.c*indims.t*indims.z*indims.y, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.x + 2*borders.x];
+							final double[] anew = new double[newdims.x];
+							final Coordinates cin = new Coordinates(); cin.x = -borders.x;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.y = cnew.y = line % indims.y;
+								cin.z = cnew.z = (line/indims.y) % indims.z;
+								cin.t = cnew.t = (line/(indims.z*indims.y)) % indims.t;
+								cin.c = cnew.c = line/(indims.t*indims.z*indims.y);
+								image.get(cin,ain);
+								prefilter.bspline5(ain,borders.x);
+								ain[0] = ain[6]; ain[maxbx] = ain[maxbx-6];
+								ain[1] = ain[5]; ain[maxbx-1] = ain[maxbx-5];
+								ain[2] = ain[4]; ain[maxbx-2] = ain[maxbx-4];
+								for (int x=0; x<newdims.x; ++x) {
+									final int lpos = borders.x + pos[x];
+									anew[x] = (
+										kernel[x][0]*ain[lpos-2] +
+										kernel[x][1]*ain[lpos-1] +
+										kernel[x][2]*ain[lpos] +
+										kernel[x][3]*ain[lpos+1] +
+										kernel[x][4]*ain[lpos+2] +
+										kernel[x][5]*ain[lpos+3]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.x);
+							}
+						}
+					});
 					break;
 				}
 			}
+			ximage = scaled;
 		}
 		
 		// Scaling in y-dimension: *********************************************
@@ -332,148 +384,200 @@ private Image scale(final Image image) {
 			messenger.log("Scaling in y-dimension");
 			messenger.status("Scaling"+component+" in y-dimension...");
 			initialize(yscheme,newdims.y,yfactor,yshift);
-			final double[] ain = new double[indims.y + 2*borders.y];
-			final double[] anew = new double[newdims.y];
-			final Coordinates cin = new Coordinates(); cin.y = -borders.y;
-			final Coordinates cnew = new Coordinates();
 			final int maxby = indims.y + 2*borders.y - 1;
-			yimage = Image.create(new Dimensions(newdims.x,newdims.y,indims.z,indims.t,indims.c),image.type());
-			yimage.axes(Axes.Y); ximage.axes(Axes.Y);
+			final Image source = ximage;
+			final Image scaled = Image.create(new Dimensions(newdims.x,newdims.y,indims.z,indims.t,indims.c),image.type());
+			scaled.axes(Axes.Y); source.axes(Axes.Y);
 			
 			switch (yscheme) {
 				case NEAREST: {
 					messenger.log("Applying nearest-neighbor sampling function in y-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.t=0, cnew.t=0; cin.t<indims.t; ++cin.t, ++cnew.t)
-							for (cin.z=0, cnew.z=0; cin.z<indims.z; ++cin.z, ++cnew.z)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									ximage.get(cin,ain);
-									for (int y=0; y<newdims.y; ++y)
-										anew[y] = ain[pos[y]];
-									yimage.set(cnew,anew);
-									progressor.step(newdims.y);
-								}
+					threader.lines(indims.c*indims.t*indims.z*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.y + 2*borders.y];
+							final double[] anew = new double[newdims.y];
+							final Coordinates cin = new Coordinates(); cin.y = -borders.y;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.z = cnew.z = (line/newdims.x) % indims.z;
+								cin.t = cnew.t = (line/(indims.z*newdims.x)) % indims.t;
+								cin.c = cnew.c = line/(indims.t*indims.z*newdims.x);
+								source.get(cin,ain);
+								for (int y=0; y<newdims.y; ++y)
+									anew[y] = ain[pos[y]];
+								scaled.set(cnew,anew);
+								progressor.step(newdims.y);
+							}
+						}
+					});
 					break;
 				}
 				case LINEAR: {
 					messenger.log("Applying linear sampling function in y-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.t=0, cnew.t=0; cin.t<indims.t; ++cin.t, ++cnew.t)
-							for (cin.z=0, cnew.z=0; cin.z<indims.z; ++cin.z, ++cnew.z)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									ximage.get(cin,ain);
-									ain[0] = ain[2]; ain[maxby] = ain[maxby-2];
-									for (int y=0; y<newdims.y; ++y) {
-										final int lpos = borders.y + pos[y];
-										anew[y] = (
-											kernel[y][0]*ain[lpos] +
-											kernel[y][1]*ain[lpos+1]
-										);
-									}
-									yimage.set(cnew,anew);
-									progressor.step(newdims.y);
+					threader.lines(indims.c*indims.t*indims.z*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.y + 2*borders.y];
+							final double[] anew = new double[newdims.y];
+							final Coordinates cin = new Coordinates(); cin.y = -borders.y;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.z = cnew.z = (line/newdims.x) % indims.z;
+								cin.t = cnew.t = (line/(indims.z*newdims.x)) % indims.t;
+								cin.c = cnew.c = line/(indims.t*indims.z*newdims.x);
+								source.get(cin,ain);
+								ain[0] = ain[2]; ain[maxby] = ain[maxby-2];
+								for (int y=0; y<newdims.y; ++y) {
+									final int lpos = borders.y + pos[y];
+									anew[y] = (
+										kernel[y][0]*ain[lpos] +
+										kernel[y][1]*ain[lpos+1]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.y);
+							}
+						}
+					});
 					break;
 				}
 				case CUBIC: {
 					messenger.log("Applying cubic convolution sampling function in y-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.t=0, cnew.t=0; cin.t<indims.t; ++cin.t, ++cnew.t)
-							for (cin.z=0, cnew.z=0; cin.z<indims.z; ++cin.z, ++cnew.z)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									ximage.get(cin,ain);
-									ain[0] = ain[4]; ain[maxby] = ain[maxby-4];
-									ain[1] = ain[3]; ain[maxby-1] = ain[maxby-3];
-									for (int y=0; y<newdims.y; ++y) {
-										final int lpos = borders.y + pos[y];
-										anew[y] = (
-											kernel[y][0]*ain[lpos-1] +
-											kernel[y][1]*ain[lpos] +
-											kernel[y][2]*ain[lpos+1] +
-											kernel[y][3]*ain[lpos+2]
-										);
-									}
-									yimage.set(cnew,anew);
-									progressor.step(newdims.y);
+					threader.lines(indims.c*indims.t*indims.z*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.y + 2*borders.y];
+							final double[] anew = new double[newdims.y];
+							final Coordinates cin = new Coordinates(); cin.y = -borders.y;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.z = cnew.z = (line/newdims.x) % indims.z;
+								cin.t = cnew.t = (line/(indims.z*newdims.x)) % indims.t;
+								cin.c = cnew.c = line/(indims.t*indims.z*newdims.x);
+								source.get(cin,ain);
+								ain[0] = ain[4]; ain[maxby] = ain[maxby-4];
+								ain[1] = ain[3]; ain[maxby-1] = ain[maxby-3];
+								for (int y=0; y<newdims.y; ++y) {
+									final int lpos = borders.y + pos[y];
+									anew[y] = (
+										kernel[y][0]*ain[lpos-1] +
+										kernel[y][1]*ain[lpos] +
+										kernel[y][2]*ain[lpos+1] +
+										kernel[y][3]*ain[lpos+2]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.y);
+							}
+						}
+					});
 					break;
 				}
 				case BSPLINE3: {
 					messenger.log("Applying cubic B-spline prefilter and sampling function in y-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.t=0, cnew.t=0; cin.t<indims.t; ++cin.t, ++cnew.t)
-							for (cin.z=0, cnew.z=0; cin.z<indims.z; ++cin.z, ++cnew.z)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									ximage.get(cin,ain);
-									prefilter.bspline3(ain,borders.y);
-									ain[0] = ain[4]; ain[maxby] = ain[maxby-4];
-									ain[1] = ain[3]; ain[maxby-1] = ain[maxby-3];
-									for (int y=0; y<newdims.y; ++y) {
-										final int lpos = borders.y + pos[y];
-										anew[y] = (
-											kernel[y][0]*ain[lpos-1] +
-											kernel[y][1]*ain[lpos] +
-											kernel[y][2]*ain[lpos+1] +
-											kernel[y][3]*ain[lpos+2]
-										);
-									}
-									yimage.set(cnew,anew);
-									progressor.step(newdims.y);
+					threader.lines(indims.c*indims.t*indims.z*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.y + 2*borders.y];
+							final double[] anew = new double[newdims.y];
+							final Coordinates cin = new Coordinates(); cin.y = -borders.y;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.z = cnew.z = (line/newdims.x) % indims.z;
+								cin.t = cnew.t = (line/(indims.z*newdims.x)) % indims.t;
+								cin.c = cnew.c = line/(indims.t*indims.z*newdims.x);
+								source.get(cin,ain);
+								prefilter.bspline3(ain,borders.y);
+								ain[0] = ain[4]; ain[maxby] = ain[maxby-4];
+								ain[1] = ain[3]; ain[maxby-1] = ain[maxby-3];
+								for (int y=0; y<newdims.y; ++y) {
+									final int lpos = borders.y + pos[y];
+									anew[y] = (
+										kernel[y][0]*ain[lpos-1] +
+										kernel[y][1]*ain[lpos] +
+										kernel[y][2]*ain[lpos+1] +
+										kernel[y][3]*ain[lpos+2]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.y);
+							}
+						}
+					});
 					break;
 				}
 				case OMOMS3: {
 					messenger.log("Applying cubic O-MOMS prefilter and sampling function in y-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.t=0, cnew.t=0; cin.t<indims.t; ++cin.t, ++cnew.t)
-							for (cin.z=0, cnew.z=0; cin.z<indims.z; ++cin.z, ++cnew.z)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									ximage.get(cin,ain);
-									prefilter.omoms3(ain,borders.y);
-									ain[0] = ain[4]; ain[maxby] = ain[maxby-4];
-									ain[1] = ain[3]; ain[maxby-1] = ain[maxby-3];
-									for (int y=0; y<newdims.y; ++y) {
-										final int lpos = borders.y + pos[y];
-										anew[y] = (
-											kernel[y][0]*ain[lpos-1] +
-											kernel[y][1]*ain[lpos] +
-											kernel[y][2]*ain[lpos+1] +
-											kernel[y][3]*ain[lpos+2]
-										);
-									}
-									yimage.set(cnew,anew);
-									progressor.step(newdims.y);
+					threader.lines(indims.c*indims.t*indims.z*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.y + 2*borders.y];
+							final double[] anew = new double[newdims.y];
+							final Coordinates cin = new Coordinates(); cin.y = -borders.y;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.z = cnew.z = (line/newdims.x) % indims.z;
+								cin.t = cnew.t = (line/(indims.z*newdims.x)) % indims.t;
+								cin.c = cnew.c = line/(indims.t*indims.z*newdims.x);
+								source.get(cin,ain);
+								prefilter.omoms3(ain,borders.y);
+								ain[0] = ain[4]; ain[maxby] = ain[maxby-4];
+								ain[1] = ain[3]; ain[maxby-1] = ain[maxby-3];
+								for (int y=0; y<newdims.y; ++y) {
+									final int lpos = borders.y + pos[y];
+									anew[y] = (
+										kernel[y][0]*ain[lpos-1] +
+										kernel[y][1]*ain[lpos] +
+										kernel[y][2]*ain[lpos+1] +
+										kernel[y][3]*ain[lpos+2]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.y);
+							}
+						}
+					});
 					break;
 				}
 				case BSPLINE5: {
 					messenger.log("Applying quintic B-spline prefilter and sampling function in y-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.t=0, cnew.t=0; cin.t<indims.t; ++cin.t, ++cnew.t)
-							for (cin.z=0, cnew.z=0; cin.z<indims.z; ++cin.z, ++cnew.z)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									ximage.get(cin,ain);
-									prefilter.bspline5(ain,borders.y);
-									ain[0] = ain[6]; ain[maxby] = ain[maxby-6];
-									ain[1] = ain[5]; ain[maxby-1] = ain[maxby-5];
-									ain[2] = ain[4]; ain[maxby-2] = ain[maxby-4];
-									for (int y=0; y<newdims.y; ++y) {
-										final int lpos = borders.y + pos[y];
-										anew[y] = (
-											kernel[y][0]*ain[lpos-2] +
-											kernel[y][1]*ain[lpos-1] +
-											kernel[y][2]*ain[lpos] +
-											kernel[y][3]*ain[lpos+1] +
-											kernel[y][4]*ain[lpos+2] +
-											kernel[y][5]*ain[lpos+3]
-										);
-									}
-									yimage.set(cnew,anew);
-									progressor.step(newdims.y);
+					threader.lines(indims.c*indims.t*indims.z*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.y + 2*borders.y];
+							final double[] anew = new double[newdims.y];
+							final Coordinates cin = new Coordinates(); cin.y = -borders.y;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.z = cnew.z = (line/newdims.x) % indims.z;
+								cin.t = cnew.t = (line/(indims.z*newdims.x)) % indims.t;
+								cin.c = cnew.c = line/(indims.t*indims.z*newdims.x);
+								source.get(cin,ain);
+								prefilter.bspline5(ain,borders.y);
+								ain[0] = ain[6]; ain[maxby] = ain[maxby-6];
+								ain[1] = ain[5]; ain[maxby-1] = ain[maxby-5];
+								ain[2] = ain[4]; ain[maxby-2] = ain[maxby-4];
+								for (int y=0; y<newdims.y; ++y) {
+									final int lpos = borders.y + pos[y];
+									anew[y] = (
+										kernel[y][0]*ain[lpos-2] +
+										kernel[y][1]*ain[lpos-1] +
+										kernel[y][2]*ain[lpos] +
+										kernel[y][3]*ain[lpos+1] +
+										kernel[y][4]*ain[lpos+2] +
+										kernel[y][5]*ain[lpos+3]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.y);
+							}
+						}
+					});
 					break;
 				}
 			}
+			yimage = scaled;
 		}
 		// Disconnect handle so that the GC might release the memory:
 		ximage = null;
@@ -486,147 +590,199 @@ private Image scale(final Image image) {
 			messenger.log("Scaling in z-dimension");
 			messenger.status("Scaling"+component+" in z-dimension...");
 			initialize(zscheme,newdims.z,zfactor,zshift);
-			final double[] ain = new double[indims.z + 2*borders.z];
-			final double[] anew = new double[newdims.z];
-			final Coordinates cin = new Coordinates(); cin.z = -borders.z;
-			final Coordinates cnew = new Coordinates();
 			final int maxbz = indims.z + 2*borders.z - 1;
-			zimage = Image.create(new Dimensions(newdims.x,newdims.y,newdims.z,indims.t,indims.c),image.type());
-			zimage.axes(Axes.Z); yimage.axes(Axes.Z);
+			final Image source = yimage;
+			final Image scaled = Image.create(new Dimensions(newdims.x,newdims.y,newdims.z,indims.t,indims.c),image.type());
+			scaled.axes(Axes.Z); source.axes(Axes.Z);
 			
 			switch (zscheme) {
 				case NEAREST: {
 					messenger.log("Applying nearest-neighbor sampling function in z-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.t=0, cnew.t=0; cin.t<indims.t; ++cin.t, ++cnew.t)
-							for (cin.y=0, cnew.y=0; cin.y<newdims.y; ++cin.y, ++cnew.y)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									yimage.get(cin,ain);
-									for (int z=0; z<newdims.z; ++z) anew[z] = ain[pos[z]];
-									zimage.set(cnew,anew);
-									progressor.step(newdims.z);
-								}
+					threader.lines(indims.c*indims.t*newdims.y*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.z + 2*borders.z];
+							final double[] anew = new double[newdims.z];
+							final Coordinates cin = new Coordinates(); cin.z = -borders.z;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.y = cnew.y = (line/newdims.x) % newdims.y;
+								cin.t = cnew.t = (line/(newdims.y*newdims.x)) % indims.t;
+								cin.c = cnew.c = line/(indims.t*newdims.y*newdims.x);
+								source.get(cin,ain);
+								for (int z=0; z<newdims.z; ++z) anew[z] = ain[pos[z]];
+								scaled.set(cnew,anew);
+								progressor.step(newdims.z);
+							}
+						}
+					});
 					break;
 				}
 				case LINEAR: {
 					messenger.log("Applying linear sampling function in z-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.t=0, cnew.t=0; cin.t<indims.t; ++cin.t, ++cnew.t)
-							for (cin.y=0, cnew.y=0; cin.y<newdims.y; ++cin.y, ++cnew.y)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									yimage.get(cin,ain);
-									ain[0] = ain[2]; ain[maxbz] = ain[maxbz-2];
-									for (int z=0; z<newdims.z; ++z) {
-										final int lpos = borders.z + pos[z];
-										anew[z] = (
-											kernel[z][0]*ain[lpos] +
-											kernel[z][1]*ain[lpos+1]
-										);
-									}
-									zimage.set(cnew,anew);
-									progressor.step(newdims.z);
+					threader.lines(indims.c*indims.t*newdims.y*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.z + 2*borders.z];
+							final double[] anew = new double[newdims.z];
+							final Coordinates cin = new Coordinates(); cin.z = -borders.z;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.y = cnew.y = (line/newdims.x) % newdims.y;
+								cin.t = cnew.t = (line/(newdims.y*newdims.x)) % indims.t;
+								cin.c = cnew.c = line/(indims.t*newdims.y*newdims.x);
+								source.get(cin,ain);
+								ain[0] = ain[2]; ain[maxbz] = ain[maxbz-2];
+								for (int z=0; z<newdims.z; ++z) {
+									final int lpos = borders.z + pos[z];
+									anew[z] = (
+										kernel[z][0]*ain[lpos] +
+										kernel[z][1]*ain[lpos+1]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.z);
+							}
+						}
+					});
 					break;
 				}
 				case CUBIC: {
 					messenger.log("Applying cubic convolution sampling function in z-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.t=0, cnew.t=0; cin.t<indims.t; ++cin.t, ++cnew.t)
-							for (cin.y=0, cnew.y=0; cin.y<newdims.y; ++cin.y, ++cnew.y)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									yimage.get(cin,ain);
-									ain[0] = ain[4]; ain[maxbz] = ain[maxbz-4];
-									ain[1] = ain[3]; ain[maxbz-1] = ain[maxbz-3];
-									for (int z=0; z<newdims.z; ++z) {
-										final int lpos = borders.z + pos[z];
-										anew[z] = (
-											kernel[z][0]*ain[lpos-1] +
-											kernel[z][1]*ain[lpos] +
-											kernel[z][2]*ain[lpos+1] +
-											kernel[z][3]*ain[lpos+2]
-										);
-									}
-									zimage.set(cnew,anew);
-									progressor.step(newdims.z);
+					threader.lines(indims.c*indims.t*newdims.y*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.z + 2*borders.z];
+							final double[] anew = new double[newdims.z];
+							final Coordinates cin = new Coordinates(); cin.z = -borders.z;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.y = cnew.y = (line/newdims.x) % newdims.y;
+								cin.t = cnew.t = (line/(newdims.y*newdims.x)) % indims.t;
+								cin.c = cnew.c = line/(indims.t*newdims.y*newdims.x);
+								source.get(cin,ain);
+								ain[0] = ain[4]; ain[maxbz] = ain[maxbz-4];
+								ain[1] = ain[3]; ain[maxbz-1] = ain[maxbz-3];
+								for (int z=0; z<newdims.z; ++z) {
+									final int lpos = borders.z + pos[z];
+									anew[z] = (
+										kernel[z][0]*ain[lpos-1] +
+										kernel[z][1]*ain[lpos] +
+										kernel[z][2]*ain[lpos+1] +
+										kernel[z][3]*ain[lpos+2]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.z);
+							}
+						}
+					});
 					break;
 				}
 				case BSPLINE3: {
 					messenger.log("Applying cubic B-spline prefilter and sampling function in z-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.t=0, cnew.t=0; cin.t<indims.t; ++cin.t, ++cnew.t)
-							for (cin.y=0, cnew.y=0; cin.y<newdims.y; ++cin.y, ++cnew.y)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									yimage.get(cin,ain);
-									prefilter.bspline3(ain,borders.z);
-									ain[0] = ain[4]; ain[maxbz] = ain[maxbz-4];
-									ain[1] = ain[3]; ain[maxbz-1] = ain[maxbz-3];
-									for (int z=0; z<newdims.z; ++z) {
-										final int lpos = borders.z + pos[z];
-										anew[z] = (
-											kernel[z][0]*ain[lpos-1] +
-											kernel[z][1]*ain[lpos] +
-											kernel[z][2]*ain[lpos+1] +
-											kernel[z][3]*ain[lpos+2]
-										);
-									}
-									zimage.set(cnew,anew);
-									progressor.step(newdims.z);
+					threader.lines(indims.c*indims.t*newdims.y*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.z + 2*borders.z];
+							final double[] anew = new double[newdims.z];
+							final Coordinates cin = new Coordinates(); cin.z = -borders.z;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.y = cnew.y = (line/newdims.x) % newdims.y;
+								cin.t = cnew.t = (line/(newdims.y*newdims.x)) % indims.t;
+								cin.c = cnew.c = line/(indims.t*newdims.y*newdims.x);
+								source.get(cin,ain);
+								prefilter.bspline3(ain,borders.z);
+								ain[0] = ain[4]; ain[maxbz] = ain[maxbz-4];
+								ain[1] = ain[3]; ain[maxbz-1] = ain[maxbz-3];
+								for (int z=0; z<newdims.z; ++z) {
+									final int lpos = borders.z + pos[z];
+									anew[z] = (
+										kernel[z][0]*ain[lpos-1] +
+										kernel[z][1]*ain[lpos] +
+										kernel[z][2]*ain[lpos+1] +
+										kernel[z][3]*ain[lpos+2]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.z);
+							}
+						}
+					});
 					break;
 				}
 				case OMOMS3: {
 					messenger.log("Applying cubic O-MOMS prefilter and sampling function in z-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.t=0, cnew.t=0; cin.t<indims.t; ++cin.t, ++cnew.t)
-							for (cin.y=0, cnew.y=0; cin.y<newdims.y; ++cin.y, ++cnew.y)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									yimage.get(cin,ain);
-									prefilter.omoms3(ain,borders.z);
-									ain[0] = ain[4]; ain[maxbz] = ain[maxbz-4];
-									ain[1] = ain[3]; ain[maxbz-1] = ain[maxbz-3];
-									for (int z=0; z<newdims.z; ++z) {
-										final int lpos = borders.z + pos[z];
-										anew[z] = (
-											kernel[z][0]*ain[lpos-1] +
-											kernel[z][1]*ain[lpos] +
-											kernel[z][2]*ain[lpos+1] +
-											kernel[z][3]*ain[lpos+2]
-										);
-									}
-									zimage.set(cnew,anew);
-									progressor.step(newdims.z);
+					threader.lines(indims.c*indims.t*newdims.y*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.z + 2*borders.z];
+							final double[] anew = new double[newdims.z];
+							final Coordinates cin = new Coordinates(); cin.z = -borders.z;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.y = cnew.y = (line/newdims.x) % newdims.y;
+								cin.t = cnew.t = (line/(newdims.y*newdims.x)) % indims.t;
+								cin.c = cnew.c = line/(indims.t*newdims.y*newdims.x);
+								source.get(cin,ain);
+								prefilter.omoms3(ain,borders.z);
+								ain[0] = ain[4]; ain[maxbz] = ain[maxbz-4];
+								ain[1] = ain[3]; ain[maxbz-1] = ain[maxbz-3];
+								for (int z=0; z<newdims.z; ++z) {
+									final int lpos = borders.z + pos[z];
+									anew[z] = (
+										kernel[z][0]*ain[lpos-1] +
+										kernel[z][1]*ain[lpos] +
+										kernel[z][2]*ain[lpos+1] +
+										kernel[z][3]*ain[lpos+2]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.z);
+							}
+						}
+					});
 					break;
 				}
 				case BSPLINE5: {
 					messenger.log("Applying quintic B-spline prefilter and sampling function in z-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.t=0, cnew.t=0; cin.t<indims.t; ++cin.t, ++cnew.t)
-							for (cin.y=0, cnew.y=0; cin.y<newdims.y; ++cin.y, ++cnew.y)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									yimage.get(cin,ain);
-									prefilter.bspline5(ain,borders.z);
-									ain[0] = ain[6]; ain[maxbz] = ain[maxbz-6];
-									ain[1] = ain[5]; ain[maxbz-1] = ain[maxbz-5];
-									ain[2] = ain[4]; ain[maxbz-2] = ain[maxbz-4];
-									for (int z=0; z<newdims.z; ++z) {
-										final int lpos = borders.z + pos[z];
-										anew[z] = (
-											kernel[z][0]*ain[lpos-2] +
-											kernel[z][1]*ain[lpos-1] +
-											kernel[z][2]*ain[lpos] +
-											kernel[z][3]*ain[lpos+1] +
-											kernel[z][4]*ain[lpos+2] +
-											kernel[z][5]*ain[lpos+3]
-										);
-									}
-									zimage.set(cnew,anew);
-									progressor.step(newdims.z);
+					threader.lines(indims.c*indims.t*newdims.y*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.z + 2*borders.z];
+							final double[] anew = new double[newdims.z];
+							final Coordinates cin = new Coordinates(); cin.z = -borders.z;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.y = cnew.y = (line/newdims.x) % newdims.y;
+								cin.t = cnew.t = (line/(newdims.y*newdims.x)) % indims.t;
+								cin.c = cnew.c = line/(indims.t*newdims.y*newdims.x);
+								source.get(cin,ain);
+								prefilter.bspline5(ain,borders.z);
+								ain[0] = ain[6]; ain[maxbz] = ain[maxbz-6];
+								ain[1] = ain[5]; ain[maxbz-1] = ain[maxbz-5];
+								ain[2] = ain[4]; ain[maxbz-2] = ain[maxbz-4];
+								for (int z=0; z<newdims.z; ++z) {
+									final int lpos = borders.z + pos[z];
+									anew[z] = (
+										kernel[z][0]*ain[lpos-2] +
+										kernel[z][1]*ain[lpos-1] +
+										kernel[z][2]*ain[lpos] +
+										kernel[z][3]*ain[lpos+1] +
+										kernel[z][4]*ain[lpos+2] +
+										kernel[z][5]*ain[lpos+3]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.z);
+							}
+						}
+					});
 					break;
 				}
 			}
+			zimage = scaled;
 		}
 		// Disconnect handle so that the GC might release the memory:
 		yimage = null;
@@ -639,147 +795,199 @@ private Image scale(final Image image) {
 			messenger.log("Scaling in t-dimension");
 			messenger.status("Scaling"+component+" in t-dimension...");
 			initialize(tscheme,newdims.t,tfactor,tshift);
-			final double[] ain = new double[indims.t + 2*borders.t];
-			final double[] anew = new double[newdims.t];
-			final Coordinates cin = new Coordinates(); cin.t = -borders.t;
-			final Coordinates cnew = new Coordinates();
 			final int maxbt = indims.t + 2*borders.t - 1;
-			timage = Image.create(new Dimensions(newdims.x,newdims.y,newdims.z,newdims.t,indims.c),image.type());
-			timage.axes(Axes.T); zimage.axes(Axes.T);
+			final Image source = zimage;
+			final Image scaled = Image.create(new Dimensions(newdims.x,newdims.y,newdims.z,newdims.t,indims.c),image.type());
+			scaled.axes(Axes.T); source.axes(Axes.T);
 			
 			switch (tscheme) {
 				case NEAREST: {
 					messenger.log("Applying nearest-neighbor sampling function in t-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.z=0, cnew.z=0; cin.z<newdims.z; ++cin.z, ++cnew.z)
-							for (cin.y=0, cnew.y=0; cin.y<newdims.y; ++cin.y, ++cnew.y)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									zimage.get(cin,ain);
-									for (int t=0; t<newdims.t; ++t) anew[t] = ain[pos[t]];
-									timage.set(cnew,anew);
-									progressor.step(newdims.t);
-								}
+					threader.lines(indims.c*newdims.z*newdims.y*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.t + 2*borders.t];
+							final double[] anew = new double[newdims.t];
+							final Coordinates cin = new Coordinates(); cin.t = -borders.t;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.y = cnew.y = (line/newdims.x) % newdims.y;
+								cin.z = cnew.z = (line/(newdims.y*newdims.x)) % newdims.z;
+								cin.c = cnew.c = line/(newdims.z*newdims.y*newdims.x);
+								source.get(cin,ain);
+								for (int t=0; t<newdims.t; ++t) anew[t] = ain[pos[t]];
+								scaled.set(cnew,anew);
+								progressor.step(newdims.t);
+							}
+						}
+					});
 					break;
 				}
 				case LINEAR: {
 					messenger.log("Applying linear sampling function in t-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.z=0, cnew.z=0; cin.z<newdims.z; ++cin.z, ++cnew.z)
-							for (cin.y=0, cnew.y=0; cin.y<newdims.y; ++cin.y, ++cnew.y)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									zimage.get(cin,ain);
-									ain[0] = ain[2]; ain[maxbt] = ain[maxbt-2];
-									for (int t=0; t<newdims.t; ++t) {
-										final int lpos = borders.t + pos[t];
-										anew[t] = (
-											kernel[t][0]*ain[lpos] +
-											kernel[t][1]*ain[lpos+1]
-										);
-									}
-									timage.set(cnew,anew);
-									progressor.step(newdims.t);
+					threader.lines(indims.c*newdims.z*newdims.y*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.t + 2*borders.t];
+							final double[] anew = new double[newdims.t];
+							final Coordinates cin = new Coordinates(); cin.t = -borders.t;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.y = cnew.y = (line/newdims.x) % newdims.y;
+								cin.z = cnew.z = (line/(newdims.y*newdims.x)) % newdims.z;
+								cin.c = cnew.c = line/(newdims.z*newdims.y*newdims.x);
+								source.get(cin,ain);
+								ain[0] = ain[2]; ain[maxbt] = ain[maxbt-2];
+								for (int t=0; t<newdims.t; ++t) {
+									final int lpos = borders.t + pos[t];
+									anew[t] = (
+										kernel[t][0]*ain[lpos] +
+										kernel[t][1]*ain[lpos+1]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.t);
+							}
+						}
+					});
 					break;
 				}
 				case CUBIC: {
 					messenger.log("Applying cubic convolution sampling function in t-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.z=0, cnew.z=0; cin.z<newdims.z; ++cin.z, ++cnew.z)
-							for (cin.y=0, cnew.y=0; cin.y<newdims.y; ++cin.y, ++cnew.y)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									zimage.get(cin,ain);
-									ain[0] = ain[4]; ain[maxbt] = ain[maxbt-4];
-									ain[1] = ain[3]; ain[maxbt-1] = ain[maxbt-3];
-									for (int t=0; t<newdims.t; ++t) {
-										final int lpos = borders.t + pos[t];
-										anew[t] = (
-											kernel[t][0]*ain[lpos-1] +
-											kernel[t][1]*ain[lpos] +
-											kernel[t][2]*ain[lpos+1] +
-											kernel[t][3]*ain[lpos+2]
-										);
-									}
-									timage.set(cnew,anew);
-									progressor.step(newdims.t);
+					threader.lines(indims.c*newdims.z*newdims.y*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.t + 2*borders.t];
+							final double[] anew = new double[newdims.t];
+							final Coordinates cin = new Coordinates(); cin.t = -borders.t;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.y = cnew.y = (line/newdims.x) % newdims.y;
+								cin.z = cnew.z = (line/(newdims.y*newdims.x)) % newdims.z;
+								cin.c = cnew.c = line/(newdims.z*newdims.y*newdims.x);
+								source.get(cin,ain);
+								ain[0] = ain[4]; ain[maxbt] = ain[maxbt-4];
+								ain[1] = ain[3]; ain[maxbt-1] = ain[maxbt-3];
+								for (int t=0; t<newdims.t; ++t) {
+									final int lpos = borders.t + pos[t];
+									anew[t] = (
+										kernel[t][0]*ain[lpos-1] +
+										kernel[t][1]*ain[lpos] +
+										kernel[t][2]*ain[lpos+1] +
+										kernel[t][3]*ain[lpos+2]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.t);
+							}
+						}
+					});
 					break;
 				}
 				case BSPLINE3: {
 					messenger.log("Applying cubic B-spline prefilter and sampling function in t-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.z=0, cnew.z=0; cin.z<newdims.z; ++cin.z, ++cnew.z)
-							for (cin.y=0, cnew.y=0; cin.y<newdims.y; ++cin.y, ++cnew.y)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									zimage.get(cin,ain);
-									prefilter.bspline3(ain,borders.t);
-									ain[0] = ain[4]; ain[maxbt] = ain[maxbt-4];
-									ain[1] = ain[3]; ain[maxbt-1] = ain[maxbt-3];
-									for (int t=0; t<newdims.t; ++t) {
-										final int lpos = borders.t + pos[t];
-										anew[t] = (
-											kernel[t][0]*ain[lpos-1] +
-											kernel[t][1]*ain[lpos] +
-											kernel[t][2]*ain[lpos+1] +
-											kernel[t][3]*ain[lpos+2]
-										);
-									}
-									timage.set(cnew,anew);
-									progressor.step(newdims.t);
+					threader.lines(indims.c*newdims.z*newdims.y*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.t + 2*borders.t];
+							final double[] anew = new double[newdims.t];
+							final Coordinates cin = new Coordinates(); cin.t = -borders.t;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.y = cnew.y = (line/newdims.x) % newdims.y;
+								cin.z = cnew.z = (line/(newdims.y*newdims.x)) % newdims.z;
+								cin.c = cnew.c = line/(newdims.z*newdims.y*newdims.x);
+								source.get(cin,ain);
+								prefilter.bspline3(ain,borders.t);
+								ain[0] = ain[4]; ain[maxbt] = ain[maxbt-4];
+								ain[1] = ain[3]; ain[maxbt-1] = ain[maxbt-3];
+								for (int t=0; t<newdims.t; ++t) {
+									final int lpos = borders.t + pos[t];
+									anew[t] = (
+										kernel[t][0]*ain[lpos-1] +
+										kernel[t][1]*ain[lpos] +
+										kernel[t][2]*ain[lpos+1] +
+										kernel[t][3]*ain[lpos+2]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.t);
+							}
+						}
+					});
 					break;
 				}
 				case OMOMS3: {
 					messenger.log("Applying cubic O-MOMS prefilter and sampling function in t-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.z=0, cnew.z=0; cin.z<newdims.z; ++cin.z, ++cnew.z)
-							for (cin.y=0, cnew.y=0; cin.y<newdims.y; ++cin.y, ++cnew.y)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									zimage.get(cin,ain);
-									prefilter.omoms3(ain,borders.t);
-									ain[0] = ain[4]; ain[maxbt] = ain[maxbt-4];
-									ain[1] = ain[3]; ain[maxbt-1] = ain[maxbt-3];
-									for (int t=0; t<newdims.t; ++t) {
-										final int lpos = borders.t + pos[t];
-										anew[t] = (
-											kernel[t][0]*ain[lpos-1] +
-											kernel[t][1]*ain[lpos] +
-											kernel[t][2]*ain[lpos+1] +
-											kernel[t][3]*ain[lpos+2]
-										);
-									}
-									timage.set(cnew,anew);
-									progressor.step(newdims.t);
+					threader.lines(indims.c*newdims.z*newdims.y*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.t + 2*borders.t];
+							final double[] anew = new double[newdims.t];
+							final Coordinates cin = new Coordinates(); cin.t = -borders.t;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.y = cnew.y = (line/newdims.x) % newdims.y;
+								cin.z = cnew.z = (line/(newdims.y*newdims.x)) % newdims.z;
+								cin.c = cnew.c = line/(newdims.z*newdims.y*newdims.x);
+								source.get(cin,ain);
+								prefilter.omoms3(ain,borders.t);
+								ain[0] = ain[4]; ain[maxbt] = ain[maxbt-4];
+								ain[1] = ain[3]; ain[maxbt-1] = ain[maxbt-3];
+								for (int t=0; t<newdims.t; ++t) {
+									final int lpos = borders.t + pos[t];
+									anew[t] = (
+										kernel[t][0]*ain[lpos-1] +
+										kernel[t][1]*ain[lpos] +
+										kernel[t][2]*ain[lpos+1] +
+										kernel[t][3]*ain[lpos+2]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.t);
+							}
+						}
+					});
 					break;
 				}
 				case BSPLINE5: {
 					messenger.log("Applying quintic B-spline prefilter and sampling function in t-dimension");
-					for (cin.c=0, cnew.c=0; cin.c<indims.c; ++cin.c, ++cnew.c)
-						for (cin.z=0, cnew.z=0; cin.z<newdims.z; ++cin.z, ++cnew.z)
-							for (cin.y=0, cnew.y=0; cin.y<newdims.y; ++cin.y, ++cnew.y)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									zimage.get(cin,ain);
-									prefilter.bspline5(ain,borders.t);
-									ain[0] = ain[6]; ain[maxbt] = ain[maxbt-6];
-									ain[1] = ain[5]; ain[maxbt-1] = ain[maxbt-5];
-									ain[2] = ain[4]; ain[maxbt-2] = ain[maxbt-4];
-									for (int t=0; t<newdims.t; ++t) {
-										final int lpos = borders.t + pos[t];
-										anew[t] = (
-											kernel[t][0]*ain[lpos-2] +
-											kernel[t][1]*ain[lpos-1] +
-											kernel[t][2]*ain[lpos] +
-											kernel[t][3]*ain[lpos+1] +
-											kernel[t][4]*ain[lpos+2] +
-											kernel[t][5]*ain[lpos+3]
-										);
-									}
-									timage.set(cnew,anew);
-									progressor.step(newdims.t);
+					threader.lines(indims.c*newdims.z*newdims.y*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.t + 2*borders.t];
+							final double[] anew = new double[newdims.t];
+							final Coordinates cin = new Coordinates(); cin.t = -borders.t;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.y = cnew.y = (line/newdims.x) % newdims.y;
+								cin.z = cnew.z = (line/(newdims.y*newdims.x)) % newdims.z;
+								cin.c = cnew.c = line/(newdims.z*newdims.y*newdims.x);
+								source.get(cin,ain);
+								prefilter.bspline5(ain,borders.t);
+								ain[0] = ain[6]; ain[maxbt] = ain[maxbt-6];
+								ain[1] = ain[5]; ain[maxbt-1] = ain[maxbt-5];
+								ain[2] = ain[4]; ain[maxbt-2] = ain[maxbt-4];
+								for (int t=0; t<newdims.t; ++t) {
+									final int lpos = borders.t + pos[t];
+									anew[t] = (
+										kernel[t][0]*ain[lpos-2] +
+										kernel[t][1]*ain[lpos-1] +
+										kernel[t][2]*ain[lpos] +
+										kernel[t][3]*ain[lpos+1] +
+										kernel[t][4]*ain[lpos+2] +
+										kernel[t][5]*ain[lpos+3]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.t);
+							}
+						}
+					});
 					break;
 				}
 			}
+			timage = scaled;
 		}
 		// Disconnect handle so that the GC might release the memory:
 		zimage = null;
@@ -792,147 +1000,199 @@ private Image scale(final Image image) {
 			messenger.log("Scaling in c-dimension");
 			messenger.status("Scaling"+component+" in c-dimension...");
 			initialize(cscheme,newdims.c,cfactor,cshift);
-			final double[] ain = new double[indims.c + 2*borders.c];
-			final double[] anew = new double[newdims.c];
-			final Coordinates cin = new Coordinates(); cin.c = -borders.c;
-			final Coordinates cnew = new Coordinates();
 			final int maxbc = indims.c + 2*borders.c - 1;
-			cimage = Image.create(newdims,image.type());
-			cimage.axes(Axes.C); timage.axes(Axes.C);
+			final Image source = timage;
+			final Image scaled = Image.create(newdims,image.type());
+			scaled.axes(Axes.C); source.axes(Axes.C);
 			
 			switch (cscheme) {
 				case NEAREST: {
 					messenger.log("Applying nearest-neighbor sampling function in c-dimension");
-					for (cin.t=0, cnew.t=0; cin.t<newdims.t; ++cin.t, ++cnew.t)
-						for (cin.z=0, cnew.z=0; cin.z<newdims.z; ++cin.z, ++cnew.z)
-							for (cin.y=0, cnew.y=0; cin.y<newdims.y; ++cin.y, ++cnew.y)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									timage.get(cin,ain);
-									for (int c=0; c<newdims.c; ++c) anew[c] = ain[pos[c]];
-									cimage.set(cnew,anew);
-									progressor.step(newdims.c);
-								}
+					threader.lines(newdims.t*newdims.z*newdims.y*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.c + 2*borders.c];
+							final double[] anew = new double[newdims.c];
+							final Coordinates cin = new Coordinates(); cin.c = -borders.c;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.y = cnew.y = (line/newdims.x) % newdims.y;
+								cin.z = cnew.z = (line/(newdims.y*newdims.x)) % newdims.z;
+								cin.t = cnew.t = line/(newdims.z*newdims.y*newdims.x);
+								source.get(cin,ain);
+								for (int c=0; c<newdims.c; ++c) anew[c] = ain[pos[c]];
+								scaled.set(cnew,anew);
+								progressor.step(newdims.c);
+							}
+						}
+					});
 					break;
 				}
 				case LINEAR: {
 					messenger.log("Applying linear sampling function in c-dimension");
-					for (cin.t=0, cnew.t=0; cin.t<newdims.t; ++cin.t, ++cnew.t)
-						for (cin.z=0, cnew.z=0; cin.z<newdims.z; ++cin.z, ++cnew.z)
-							for (cin.y=0, cnew.y=0; cin.y<newdims.y; ++cin.y, ++cnew.y)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									timage.get(cin,ain);
-									ain[0] = ain[2]; ain[maxbc] = ain[maxbc-2];
-									for (int c=0; c<newdims.c; ++c) {
-										final int lpos = borders.c + pos[c];
-										anew[c] = (
-											kernel[c][0]*ain[lpos] +
-											kernel[c][1]*ain[lpos+1]
-										);
-									}
-									cimage.set(cnew,anew);
-									progressor.step(newdims.c);
+					threader.lines(newdims.t*newdims.z*newdims.y*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.c + 2*borders.c];
+							final double[] anew = new double[newdims.c];
+							final Coordinates cin = new Coordinates(); cin.c = -borders.c;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.y = cnew.y = (line/newdims.x) % newdims.y;
+								cin.z = cnew.z = (line/(newdims.y*newdims.x)) % newdims.z;
+								cin.t = cnew.t = line/(newdims.z*newdims.y*newdims.x);
+								source.get(cin,ain);
+								ain[0] = ain[2]; ain[maxbc] = ain[maxbc-2];
+								for (int c=0; c<newdims.c; ++c) {
+									final int lpos = borders.c + pos[c];
+									anew[c] = (
+										kernel[c][0]*ain[lpos] +
+										kernel[c][1]*ain[lpos+1]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.c);
+							}
+						}
+					});
 					break;
 				}
 				case CUBIC: {
 					messenger.log("Applying cubic convolution sampling function in c-dimension");
-					for (cin.t=0, cnew.t=0; cin.t<newdims.t; ++cin.t, ++cnew.t)
-						for (cin.z=0, cnew.z=0; cin.z<newdims.z; ++cin.z, ++cnew.z)
-							for (cin.y=0, cnew.y=0; cin.y<newdims.y; ++cin.y, ++cnew.y)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									timage.get(cin,ain);
-									ain[0] = ain[4]; ain[maxbc] = ain[maxbc-4];
-									ain[1] = ain[3]; ain[maxbc-1] = ain[maxbc-3];
-									for (int c=0; c<newdims.c; ++c) {
-										final int lpos = borders.c + pos[c];
-										anew[c] = (
-											kernel[c][0]*ain[lpos-1] +
-											kernel[c][1]*ain[lpos] +
-											kernel[c][2]*ain[lpos+1] +
-											kernel[c][3]*ain[lpos+2]
-										);
-									}
-									cimage.set(cnew,anew);
-									progressor.step(newdims.c);
+					threader.lines(newdims.t*newdims.z*newdims.y*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.c + 2*borders.c];
+							final double[] anew = new double[newdims.c];
+							final Coordinates cin = new Coordinates(); cin.c = -borders.c;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.y = cnew.y = (line/newdims.x) % newdims.y;
+								cin.z = cnew.z = (line/(newdims.y*newdims.x)) % newdims.z;
+								cin.t = cnew.t = line/(newdims.z*newdims.y*newdims.x);
+								source.get(cin,ain);
+								ain[0] = ain[4]; ain[maxbc] = ain[maxbc-4];
+								ain[1] = ain[3]; ain[maxbc-1] = ain[maxbc-3];
+								for (int c=0; c<newdims.c; ++c) {
+									final int lpos = borders.c + pos[c];
+									anew[c] = (
+										kernel[c][0]*ain[lpos-1] +
+										kernel[c][1]*ain[lpos] +
+										kernel[c][2]*ain[lpos+1] +
+										kernel[c][3]*ain[lpos+2]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.c);
+							}
+						}
+					});
 					break;
 				}
 				case BSPLINE3: {
 					messenger.log("Applying cubic B-spline prefilter and sampling function in c-dimension");
-					for (cin.t=0, cnew.t=0; cin.t<newdims.t; ++cin.t, ++cnew.t)
-						for (cin.z=0, cnew.z=0; cin.z<newdims.z; ++cin.z, ++cnew.z)
-							for (cin.y=0, cnew.y=0; cin.y<newdims.y; ++cin.y, ++cnew.y)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									timage.get(cin,ain);
-									prefilter.bspline3(ain,borders.c);
-									ain[0] = ain[4]; ain[maxbc] = ain[maxbc-4];
-									ain[1] = ain[3]; ain[maxbc-1] = ain[maxbc-3];
-									for (int c=0; c<newdims.c; ++c) {
-										final int lpos = borders.c + pos[c];
-										anew[c] = (
-											kernel[c][0]*ain[lpos-1] +
-											kernel[c][1]*ain[lpos] +
-											kernel[c][2]*ain[lpos+1] +
-											kernel[c][3]*ain[lpos+2]
-										);
-									}
-									cimage.set(cnew,anew);
-									progressor.step(newdims.c);
+					threader.lines(newdims.t*newdims.z*newdims.y*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.c + 2*borders.c];
+							final double[] anew = new double[newdims.c];
+							final Coordinates cin = new Coordinates(); cin.c = -borders.c;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.y = cnew.y = (line/newdims.x) % newdims.y;
+								cin.z = cnew.z = (line/(newdims.y*newdims.x)) % newdims.z;
+								cin.t = cnew.t = line/(newdims.z*newdims.y*newdims.x);
+								source.get(cin,ain);
+								prefilter.bspline3(ain,borders.c);
+								ain[0] = ain[4]; ain[maxbc] = ain[maxbc-4];
+								ain[1] = ain[3]; ain[maxbc-1] = ain[maxbc-3];
+								for (int c=0; c<newdims.c; ++c) {
+									final int lpos = borders.c + pos[c];
+									anew[c] = (
+										kernel[c][0]*ain[lpos-1] +
+										kernel[c][1]*ain[lpos] +
+										kernel[c][2]*ain[lpos+1] +
+										kernel[c][3]*ain[lpos+2]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.c);
+							}
+						}
+					});
 					break;
 				}
 				case OMOMS3: {
 					messenger.log("Applying cubic O-MOMS prefilter and sampling function in c-dimension");
-					for (cin.t=0, cnew.t=0; cin.t<newdims.t; ++cin.t, ++cnew.t)
-						for (cin.z=0, cnew.z=0; cin.z<newdims.z; ++cin.z, ++cnew.z)
-							for (cin.y=0, cnew.y=0; cin.y<newdims.y; ++cin.y, ++cnew.y)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									timage.get(cin,ain);
-									prefilter.omoms3(ain,borders.c);
-									ain[0] = ain[4]; ain[maxbc] = ain[maxbc-4];
-									ain[1] = ain[3]; ain[maxbc-1] = ain[maxbc-3];
-									for (int c=0; c<newdims.c; ++c) {
-										final int lpos = borders.c + pos[c];
-										anew[c] = (
-											kernel[c][0]*ain[lpos-1] +
-											kernel[c][1]*ain[lpos] +
-											kernel[c][2]*ain[lpos+1] +
-											kernel[c][3]*ain[lpos+2]
-										);
-									}
-									cimage.set(cnew,anew);
-									progressor.step(newdims.c);
+					threader.lines(newdims.t*newdims.z*newdims.y*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.c + 2*borders.c];
+							final double[] anew = new double[newdims.c];
+							final Coordinates cin = new Coordinates(); cin.c = -borders.c;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.y = cnew.y = (line/newdims.x) % newdims.y;
+								cin.z = cnew.z = (line/(newdims.y*newdims.x)) % newdims.z;
+								cin.t = cnew.t = line/(newdims.z*newdims.y*newdims.x);
+								source.get(cin,ain);
+								prefilter.omoms3(ain,borders.c);
+								ain[0] = ain[4]; ain[maxbc] = ain[maxbc-4];
+								ain[1] = ain[3]; ain[maxbc-1] = ain[maxbc-3];
+								for (int c=0; c<newdims.c; ++c) {
+									final int lpos = borders.c + pos[c];
+									anew[c] = (
+										kernel[c][0]*ain[lpos-1] +
+										kernel[c][1]*ain[lpos] +
+										kernel[c][2]*ain[lpos+1] +
+										kernel[c][3]*ain[lpos+2]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.c);
+							}
+						}
+					});
 					break;
 				}
 				case BSPLINE5: {
 					messenger.log("Applying quintic B-spline prefilter and sampling function in c-dimension");
-					for (cin.t=0, cnew.t=0; cin.t<newdims.t; ++cin.t, ++cnew.t)
-						for (cin.z=0, cnew.z=0; cin.z<newdims.z; ++cin.z, ++cnew.z)
-							for (cin.y=0, cnew.y=0; cin.y<newdims.y; ++cin.y, ++cnew.y)
-								for (cin.x=0, cnew.x=0; cin.x<newdims.x; ++cin.x, ++cnew.x) {
-									timage.get(cin,ain);
-									prefilter.bspline5(ain,borders.c);
-									ain[0] = ain[6]; ain[maxbc] = ain[maxbc-6];
-									ain[1] = ain[5]; ain[maxbc-1] = ain[maxbc-5];
-									ain[2] = ain[4]; ain[maxbc-2] = ain[maxbc-4];
-									for (int c=0; c<newdims.c; ++c) {
-										final int lpos = borders.c + pos[c];
-										anew[c] = (
-											kernel[c][0]*ain[lpos-2] +
-											kernel[c][1]*ain[lpos-1] +
-											kernel[c][2]*ain[lpos] +
-											kernel[c][3]*ain[lpos+1] +
-											kernel[c][4]*ain[lpos+2] +
-											kernel[c][5]*ain[lpos+3]
-										);
-									}
-									cimage.set(cnew,anew);
-									progressor.step(newdims.c);
+					threader.lines(newdims.t*newdims.z*newdims.y*newdims.x, new Threader.Lines() {
+						public void run(final int begin, final int end) {
+							final double[] ain = new double[indims.c + 2*borders.c];
+							final double[] anew = new double[newdims.c];
+							final Coordinates cin = new Coordinates(); cin.c = -borders.c;
+							final Coordinates cnew = new Coordinates();
+							for (int line=begin; line<end; ++line) {
+								cin.x = cnew.x = line % newdims.x;
+								cin.y = cnew.y = (line/newdims.x) % newdims.y;
+								cin.z = cnew.z = (line/(newdims.y*newdims.x)) % newdims.z;
+								cin.t = cnew.t = line/(newdims.z*newdims.y*newdims.x);
+								source.get(cin,ain);
+								prefilter.bspline5(ain,borders.c);
+								ain[0] = ain[6]; ain[maxbc] = ain[maxbc-6];
+								ain[1] = ain[5]; ain[maxbc-1] = ain[maxbc-5];
+								ain[2] = ain[4]; ain[maxbc-2] = ain[maxbc-4];
+								for (int c=0; c<newdims.c; ++c) {
+									final int lpos = borders.c + pos[c];
+									anew[c] = (
+										kernel[c][0]*ain[lpos-2] +
+										kernel[c][1]*ain[lpos-1] +
+										kernel[c][2]*ain[lpos] +
+										kernel[c][3]*ain[lpos+1] +
+										kernel[c][4]*ain[lpos+2] +
+										kernel[c][5]*ain[lpos+3]
+									);
 								}
+								scaled.set(cnew,anew);
+								progressor.step(newdims.c);
+							}
+						}
+					});
 					break;
 				}
 			}
+			cimage = scaled;
 		}
 		
 		progressor.stop();
@@ -1208,6 +1468,9 @@ private String schemes(final int scheme) {
 	/** The object used for progress displaying. */
 	public final Progressor progressor = new Progressor();
 	
+	/** The object used for multi-threading. The output image is computed one line at a time, with the lines distributed over the number of threads indicated by this object. */
+	public final Threader threader = new Threader();
+	
 	private final Prefilter prefilter = new Prefilter();
 	
 	private Dimensions newdims;
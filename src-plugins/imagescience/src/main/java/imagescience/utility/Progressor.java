@@ -55,8 +55,8 @@ public void steps(final int n) {
 	/** Returns the number of steps in the process. */
 	public double steps() { return steps; }
 	
-	/** Increases the internal step counter. */
-	public void step() {
+	/** Increases the internal step counter. This method may be called concurrently from multiple threads. */
+	public synchronized void step() {
 		
 		if (steps > 0) {
 			++step;
@@ -75,7 +75,7 @@ public void step() {
 		
 		@exception IllegalArgumentException if {@code n} is less than {@code 0}.
 	*/
-	public void step(final int n) {
+	public synchronized void step(final int n) {
 		
 		if (n < 0)
 			throw new IllegalArgumentException("Number of steps less than 0");
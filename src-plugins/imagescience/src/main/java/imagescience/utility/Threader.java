@@ -0,0 +1,114 @@
+package imagescience.utility;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Distributes line-wise image processing over multiple threads. Operators that process an image one line at a time, with each line computed independently of the others, hand the lines to {@link #lines(int,Lines)}, which splits them into chunks and processes the chunks concurrently. Since every line is computed exactly as it would be in a single thread, the results do not depend on the number of threads used. */
+public class Threader {
+	
+	private int threads = 0;
+	
+	private Threader parent = null;
+	
+	/** Default constructor. */
+	public Threader() { }
+	
+	/** Specifies the number of threads used for processing.
+		
+		@param n the number of threads. The default value {@code 0} means that as many threads are used as there are processors available to the Java virtual machine. A value of {@code 1} results in all processing being done in the calling thread.
+		
+		@exception IllegalArgumentException if {@code n} is less than {@code 0}.
+	*/
+	public void threads(final int n) {
+		
+		if (n < 0) throw new IllegalArgumentException("Number of threads less than 0");
+		threads = n;
+	}
+	
+	/** Returns the number of threads used for processing. If a parent object has been set using {@link #parent(Threader)}, that object instead determines the number of threads. The returned value is always larger than {@code 0}. */
+	public int threads() {
+		
+		if (parent != null) return parent.threads();
+		else if (threads == 0) return Runtime.getRuntime().availableProcessors();
+		else return threads;
+	}
+	
+	/** Sets the parent object for multi-threading. The default parent is {@code null} (no parent). If a parent object is specified, that object determines the number of threads used, overruling the value set using {@link #threads(int)}. */
+	public void parent(final Threader parent) {
+		
+		this.parent = parent;
+	}
+	
+	/** Returns the parent object for multi-threading. The returned value is either {@code null} (indicating no parent has been set) or a valid {@code Threader} object. */
+	public Threader parent() {
+		
+		return parent;
+	}
+	
+	/** Processes a range of lines. Implementations should allocate their line buffers and {@code Coordinates} objects in {@link #run(int,int)}, as different ranges may be processed concurrently. */
+	public static abstract class Lines {
+		
+		/** Processes the lines with index {@code begin} (inclusive) up to {@code end} (exclusive). */
+		public abstract void run(final int begin, final int end);
+	}
+	
+	/** Processes the given number of lines, using as many threads as indicated by {@link #threads()}. The lines are split into chunks that are handed out to the threads on demand, so that threads that finish early take over remaining work. This method returns when all lines have been processed.
+		
+		@param count the number of lines to be processed.
+		
+		@param lines the object processing the lines.
+		
+		@exception IllegalArgumentException if {@code count} is less than {@code 0}.
+		
+		@exception NullPointerException if {@code lines} is {@code null}.
+		
+		@exception RuntimeException if the processing of any of the lines failed, or if the calling thread was interrupted while waiting for the other threads.
+	*/
+	public void lines(final int count, final Lines lines) {
+		
+		if (count < 0) throw new IllegalArgumentException("Number of lines less than 0");
+		if (lines == null) throw new NullPointerException();
+		
+		final int nthreads = Math.min(threads(),count);
+		if (nthreads <= 1) { lines.run(0,count); return; }
+		
+		final int chunk = Math.max(1,count/(CHUNKS*nthreads));
+		final AtomicInteger next = new AtomicInteger(0);
+		final Throwable[] failure = new Throwable[1];
+		final Runnable runner = new Runnable() {
+			public void run() {
+				try {
+					int begin;
+					while ((begin = next.getAndAdd(chunk)) < count) {
+						synchronized (failure) { if (failure[0] != null) return; }
+						lines.run(begin,Math.min(begin + chunk,count));
+					}
+				} catch (Throwable e) {
+					synchronized (failure) { if (failure[0] == null) failure[0] = e; }
+				}
+			}
+		};
+		
+		final Thread[] workers = new Thread[nthreads - 1];
+		for (int i=0; i<workers.length; ++i) {
+			workers[i] = new Thread(runner,"Threader-"+i);
+			workers[i].start();
+		}
+		runner.run();
+		try {
+			for (int i=0; i<workers.length; ++i) workers[i].join();
+		} catch (InterruptedException e) {
+			synchronized (failure) { if (failure[0] == null) failure[0] = e; }
+			for (int i=0; i<workers.length; ++i) workers[i].interrupt();
+			Thread.currentThread().interrupt();
+		}
+		
+		final Throwable e;
+		synchronized (failure) { e = failure[0]; }
+		if (e instanceof RuntimeException) throw (RuntimeException)e;
+		else if (e instanceof Error) throw (Error)e;
+		else if (e != null) throw new RuntimeException(e);
+	}
+	
+	private static final int CHUNKS = 4;
+
+}